@@ -0,0 +1,224 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.benchmark;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.ibm.fhir.benchmark.runner.FHIRBenchmarkRunner;
+import com.ibm.fhir.database.utils.derby.DerbyMaster;
+import com.ibm.fhir.database.utils.pool.PoolConnectionProvider;
+import com.ibm.fhir.examples.ExamplesUtil;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRJsonParser;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.persistence.FHIRPersistence;
+import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
+import com.ibm.fhir.persistence.context.FHIRPersistenceContextFactory;
+import com.ibm.fhir.persistence.jdbc.cache.CommonTokenValuesCacheImpl;
+import com.ibm.fhir.persistence.jdbc.cache.FHIRPersistenceJDBCCacheImpl;
+import com.ibm.fhir.persistence.jdbc.cache.NameIdCache;
+import com.ibm.fhir.persistence.jdbc.dao.api.JDBCIdentityCache;
+import com.ibm.fhir.persistence.jdbc.impl.FHIRPersistenceJDBCImpl;
+import com.ibm.fhir.persistence.jdbc.util.InclusionQueryBuilder;
+import com.ibm.fhir.persistence.jdbc.util.SqlQueryData;
+import com.ibm.fhir.schema.derby.DerbyFhirDatabase;
+import com.ibm.fhir.search.context.FHIRSearchContext;
+import com.ibm.fhir.search.parameters.InclusionParameter;
+import com.ibm.fhir.search.util.SearchUtil;
+
+/**
+ * Measures a Patient $everything-style search with ten inclusions (one _include and nine _revinclude)
+ * against an embedded Derby database, along with the cost of building the inclusion statements.
+ * The size of the generated SQL is printed by {@link #main(String[])} before the benchmark is run.
+ */
+public class FHIRIncludeSearchBenchmark {
+    private static final String DB_NAME = "target/derby/benchmarkDB";
+    private static final String SCHEMA_NAME = "FHIRDATA";
+
+    // number of resources of each revinclude type referencing each patient
+    private static final int RESOURCES_PER_TYPE = 5;
+
+    // number of patients in the page
+    private static final int PAGE_SIZE = 10;
+
+    private static final List<String> INCLUDE = Collections.singletonList("Patient:organization");
+
+    // the referencing types, and the element used to reference the patient
+    private static final String[][] REVINCLUDE_TYPES = {
+            { "Observation", "subject" },
+            { "Condition", "subject" },
+            { "Encounter", "subject" },
+            { "Procedure", "subject" },
+            { "MedicationRequest", "subject" },
+            { "DiagnosticReport", "subject" },
+            { "CarePlan", "subject" },
+            { "AllergyIntolerance", "patient" },
+            { "Immunization", "patient" }
+    };
+
+    @State(Scope.Benchmark)
+    public static class FHIRIncludeSearchState {
+        public PoolConnectionProvider connectionPool;
+        public FHIRPersistence persistence;
+        public Map<String, List<String>> queryParameters;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            DerbyMaster.dropDatabase(DB_NAME);
+            DerbyFhirDatabase database = new DerbyFhirDatabase(DB_NAME);
+            connectionPool = new PoolConnectionProvider(database, 1);
+
+            Properties properties = new Properties();
+            properties.setProperty("schemaName", SCHEMA_NAME);
+            persistence = new FHIRPersistenceJDBCImpl(properties, connectionPool,
+                new FHIRPersistenceJDBCCacheImpl(new NameIdCache<Integer>(), new NameIdCache<Integer>(), new CommonTokenValuesCacheImpl(100, 100)));
+
+            FHIRPersistenceContext context = FHIRPersistenceContextFactory.createPersistenceContext(null);
+            persistence.getTransaction().begin();
+            try {
+                String orgId = persistence.create(context, readMinimal("Organization")).getResource().getId();
+                for (int i = 0; i < PAGE_SIZE; i++) {
+                    Resource patient = withReference(readJson("Patient"), "managingOrganization", "Organization/" + orgId);
+                    String patientId = persistence.create(context, patient).getResource().getId();
+                    for (String[] revIncludeType : REVINCLUDE_TYPES) {
+                        for (int j = 0; j < RESOURCES_PER_TYPE; j++) {
+                            persistence.create(context, withReference(readJson(revIncludeType[0]), revIncludeType[1], "Patient/" + patientId));
+                        }
+                    }
+                }
+            } finally {
+                persistence.getTransaction().end();
+            }
+
+            queryParameters = new HashMap<>();
+            queryParameters.put("_count", Collections.singletonList(Integer.toString(PAGE_SIZE)));
+            queryParameters.put("_include", INCLUDE);
+            List<String> revIncludes = new ArrayList<>();
+            for (String[] revIncludeType : REVINCLUDE_TYPES) {
+                revIncludes.add(revIncludeType[0] + ":patient");
+            }
+            queryParameters.put("_revinclude", revIncludes);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            if (connectionPool != null) {
+                connectionPool.close();
+            }
+        }
+    }
+
+    @Benchmark
+    public List<Resource> benchmarkSearchWithInclusions(FHIRIncludeSearchState state) throws Exception {
+        FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(Patient.class, state.queryParameters);
+        FHIRPersistenceContext context = FHIRPersistenceContextFactory.createPersistenceContext(null, searchContext);
+        state.persistence.getTransaction().begin();
+        try {
+            return state.persistence.search(context, Patient.class).getResource();
+        } finally {
+            state.persistence.getTransaction().end();
+        }
+    }
+
+    @Benchmark
+    public List<SqlQueryData> benchmarkBuildInclusionQueries() throws Exception {
+        return buildInclusionQueries();
+    }
+
+    /**
+     * Build the inclusion statements for a page of PAGE_SIZE patients, using fixed ids in
+     * place of the identity cache lookups
+     */
+    private static List<SqlQueryData> buildInclusionQueries() throws Exception {
+        InclusionQueryBuilder builder = new InclusionQueryBuilder(new JDBCIdentityCache() {
+            @Override
+            public Integer getResourceTypeId(String resourceType) {
+                return resourceType.length();
+            }
+
+            @Override
+            public Integer getCodeSystemId(String codeSystem) {
+                return codeSystem.length();
+            }
+
+            @Override
+            public Integer getParameterNameId(String parameterName) {
+                return parameterName.length();
+            }
+        });
+
+        Set<String> pageLogicalIds = new LinkedHashSet<>();
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            pageLogicalIds.add(String.format("%036d", i));
+        }
+
+        List<InclusionParameter> includeParameters = Arrays.asList(new InclusionParameter("Patient", "organization", "Organization"));
+        List<InclusionParameter> revIncludeParameters = new ArrayList<>();
+        Map<String, List<String>> targets = new HashMap<>();
+        for (String[] revIncludeType : REVINCLUDE_TYPES) {
+            revIncludeParameters.add(new InclusionParameter(revIncludeType[0], "patient", "Patient"));
+            List<String> logicalIds = new ArrayList<>();
+            for (int i = 0; i < PAGE_SIZE * RESOURCES_PER_TYPE; i++) {
+                logicalIds.add(String.format("%036d", i));
+            }
+            targets.put(revIncludeType[0], logicalIds);
+        }
+
+        List<SqlQueryData> result = new ArrayList<>();
+        result.add(builder.buildIncludeTargetQuery("Patient", includeParameters, pageLogicalIds, new HashMap<>()));
+        result.add(builder.buildRevIncludeTargetQuery(revIncludeParameters, pageLogicalIds, new HashMap<>()));
+        result.add(builder.buildIncludedResourcesQuery(targets));
+        return result;
+    }
+
+    private static Resource readMinimal(String resourceType) throws Exception {
+        try (Reader reader = ExamplesUtil.resourceReader("json/ibm/minimal/" + resourceType + "-1.json")) {
+            return FHIRParser.parser(Format.JSON).parse(reader);
+        }
+    }
+
+    private static JsonObject readJson(String resourceType) throws Exception {
+        try (Reader reader = ExamplesUtil.resourceReader("json/ibm/minimal/" + resourceType + "-1.json")) {
+            return Json.createReader(reader).readObject();
+        }
+    }
+
+    private static Resource withReference(JsonObject json, String elementName, String reference) throws Exception {
+        JsonObject result = Json.createObjectBuilder(json)
+                .add(elementName, Json.createObjectBuilder().add("reference", reference))
+                .build();
+        return FHIRParser.parser(Format.JSON).as(FHIRJsonParser.class).parse(result);
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (SqlQueryData query : buildInclusionQueries()) {
+            System.out.println("SQL length=" + query.getQueryString().length() + " bind variables=" + query.getBindVariables().size());
+        }
+        new FHIRBenchmarkRunner(FHIRIncludeSearchBenchmark.class).run();
+    }
+}
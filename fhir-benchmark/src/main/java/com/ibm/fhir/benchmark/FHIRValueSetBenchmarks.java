@@ -32,6 +32,8 @@ import com.ibm.fhir.model.type.Code;
 import com.ibm.fhir.model.type.DateTime;
 import com.ibm.fhir.model.type.Uri;
 import com.ibm.fhir.model.type.code.PublicationStatus;
+import com.ibm.fhir.term.util.ValueSetIndex;
+import com.ibm.fhir.term.util.ValueSetSupport;
 
 public class FHIRValueSetBenchmarks {
     @Benchmark
@@ -129,6 +131,17 @@ public class FHIRValueSetBenchmarks {
         return state.set.contains(vsState.concept.getSystem().getValue() + "|" + vsState.concept.getCode().getValue());
     }
 
+    @Benchmark
+    public ValueSetIndex buildIndex(FHIRValueSetState state) throws Exception {
+        return ValueSetIndex.of(ValueSetSupport.getContains(state.valueSet.getExpansion()));
+    }
+
+    @Benchmark
+    public boolean lookupInIndex(FHIRValueSetState state) throws Exception {
+        // includes the cost of finding the memoized index for the value set
+        return ValueSetSupport.getIndex(state.valueSet).contains(state.concept.getSystem().getValue(), null, state.concept.getCode().getValue());
+    }
+
     public static void main(String[] args) throws Exception {
 //      new FHIRBenchmarkRunner(FHIRValueSetBenchmark.class).run(BenchmarkUtil.getRandomSpecExampleName());
         Options opt = new OptionsBuilder()
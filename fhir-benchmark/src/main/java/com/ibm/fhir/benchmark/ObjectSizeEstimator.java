@@ -6,6 +6,7 @@
 
 package com.ibm.fhir.benchmark;
 
+import java.io.StringReader;
 import java.lang.instrument.Instrumentation;
 import java.math.BigDecimal;
 import java.time.LocalDate;
@@ -13,7 +14,17 @@ import java.time.LocalTime;
 import java.time.Year;
 import java.time.YearMonth;
 import java.time.ZonedDateTime;
-
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import com.ibm.fhir.benchmark.util.BenchmarkUtil;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.visitor.DefaultVisitor;
 import com.ibm.fhir.model.visitor.Visitable;
 
@@ -23,6 +34,10 @@ import com.ibm.fhir.model.visitor.Visitable;
  * 
  * <p>
  * {@code Java -javaagent:target/fhir-benchmark-4.1.1-SNAPSHOT.jar ...}
+ *
+ * <p>
+ * The {@link #main(String[])} method compares the retained size of the spec examples parsed with and without
+ * {@link FHIRParser#PROPERTY_INTERN_PRIMITIVES}.
  */
 public class ObjectSizeEstimator {
     private static ObjectSizeVisitor visitor = new ObjectSizeVisitor();
@@ -42,11 +57,56 @@ public class ObjectSizeEstimator {
     }
 
 
+    /**
+     * Compute the estimated retained size of the Visitables by traversing the structures and adding the estimated
+     * size of each distinct object; objects which are shared within or across the structures are only counted once
+     */
+    public static long getRetainedSize(Collection<? extends Visitable> visitables) {
+        ObjectSizeVisitor visitor = new ObjectSizeVisitor(Collections.newSetFromMap(new IdentityHashMap<>()));
+        for (Visitable visitable : visitables) {
+            visitable.accept(visitor);
+        }
+        return visitor.getResult();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (instrumentation == null) {
+            throw new IllegalStateException("The enclosing jar file must be configured as a java agent");
+        }
+        List<Resource> resources = new ArrayList<>();
+        List<Resource> internedResources = new ArrayList<>();
+        for (String exampleName : BenchmarkUtil.getSpecExampleNames()) {
+            String example = BenchmarkUtil.getSpecExample(Format.JSON, exampleName);
+            resources.add(FHIRParser.parser(Format.JSON).parse(new StringReader(example)));
+            FHIRParser parser = FHIRParser.parser(Format.JSON);
+            parser.setProperty(FHIRParser.PROPERTY_INTERN_PRIMITIVES, true);
+            internedResources.add(parser.parse(new StringReader(example)));
+        }
+        long size = getRetainedSize(resources);
+        long internedSize = getRetainedSize(internedResources);
+        System.out.println("examples: " + resources.size());
+        System.out.println("retained size: " + size);
+        System.out.println("retained size (interned): " + internedSize + " (" + (100 * (size - internedSize) / size) + "% smaller)");
+    }
+
     private static class ObjectSizeVisitor extends DefaultVisitor {
         long size = 0;
-        
+        // when set, each object is only counted (and traversed) once
+        final Set<Object> seen;
+
         public ObjectSizeVisitor() {
+            this(null);
+        }
+
+        public ObjectSizeVisitor(Set<Object> seen) {
             super(true);
+            this.seen = seen;
+        }
+
+        private void add(Object o) {
+            if (seen == null || seen.add(o)) {
+                size += instrumentation.getObjectSize(o);
+            }
         }
         
         public long getResult() {
@@ -55,53 +115,56 @@ public class ObjectSizeEstimator {
         
         @Override
         public boolean visit(String elementName, int elementIndex, Visitable visitable) {
+            if (seen != null && !seen.add(visitable)) {
+                return false;
+            }
             size += instrumentation.getObjectSize(visitable);
             return true;
         }
 
         @Override
         public void visit(java.lang.String elementName, BigDecimal value) {
-            size += instrumentation.getObjectSize(value);
+            add(value);
         }
 
         @Override
         public void visit(java.lang.String elementName, java.lang.Boolean value) {
-            size += instrumentation.getObjectSize(value);
+            add(value);
         }
 
         @Override
         public void visit(java.lang.String elementName, java.lang.Integer value) {
-            size += instrumentation.getObjectSize(value);
+            add(value);
         }
 
         @Override
         public void visit(java.lang.String elementName, LocalDate value) {
-            size += instrumentation.getObjectSize(value);
+            add(value);
         }
 
         @Override
         public void visit(java.lang.String elementName, LocalTime value) {
-            size += instrumentation.getObjectSize(value);
+            add(value);
         }
 
         @Override
         public void visit(java.lang.String elementName, java.lang.String value) {
-            size += instrumentation.getObjectSize(value);
+            add(value);
         }
 
         @Override
         public void visit(java.lang.String elementName, Year value) {
-            size += instrumentation.getObjectSize(value);
+            add(value);
         }
 
         @Override
         public void visit(java.lang.String elementName, YearMonth value) {
-            size += instrumentation.getObjectSize(value);
+            add(value);
         }
 
         @Override
         public void visit(java.lang.String elementName, ZonedDateTime value) {
-            size += instrumentation.getObjectSize(value);
+            add(value);
         }
     }
 }
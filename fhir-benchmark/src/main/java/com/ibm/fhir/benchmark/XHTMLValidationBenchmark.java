@@ -0,0 +1,94 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.benchmark;
+
+import static com.ibm.fhir.benchmark.runner.FHIRBenchmarkRunner.PROPERTY_EXAMPLE_NAME;
+
+import java.io.StringReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.ibm.fhir.benchmark.runner.FHIRBenchmarkRunner;
+import com.ibm.fhir.benchmark.util.BenchmarkUtil;
+import com.ibm.fhir.model.config.FHIRModelConfig;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.DomainResource;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.util.ValidationSupport;
+import com.ibm.fhir.model.util.XHTMLChecker;
+
+/**
+ * Compares the streaming narrative checker with full XHTML schema validation and with the trusted (unchecked) path
+ * used when reading stored resources
+ */
+public class XHTMLValidationBenchmark {
+    @State(Scope.Benchmark)
+    public static class XHTMLValidationState {
+        public static final String SPEC_EXAMPLE_NAME = System.getProperty(PROPERTY_EXAMPLE_NAME, "patient-example");
+        public static final String JSON_SPEC_EXAMPLE = BenchmarkUtil.getSpecExample(Format.JSON, SPEC_EXAMPLE_NAME);
+
+        public String div;
+
+        @Setup
+        public void setUp() throws Exception {
+            Resource resource = FHIRParser.parser(Format.JSON).parse(new StringReader(JSON_SPEC_EXAMPLE));
+            if (!(resource instanceof DomainResource) || ((DomainResource) resource).getText() == null) {
+                throw new IllegalStateException("Example: " + SPEC_EXAMPLE_NAME + " has no narrative");
+            }
+            div = ((DomainResource) resource).getText().getDiv().getValue();
+        }
+    }
+
+    @Benchmark
+    public void benchmarkXHTMLChecker(XHTMLValidationState state) throws Exception {
+        XHTMLChecker.check(state.div);
+    }
+
+    @Benchmark
+    public void benchmarkXHTMLSchemaValidation(XHTMLSchemaValidationState state) throws Exception {
+        ValidationSupport.checkXHTMLContent(state.div);
+    }
+
+    @Benchmark
+    public Resource benchmarkParse(XHTMLValidationState state) throws Exception {
+        return FHIRParser.parser(Format.JSON).parse(new StringReader(XHTMLValidationState.JSON_SPEC_EXAMPLE));
+    }
+
+    @Benchmark
+    public Resource benchmarkParseTrusted(XHTMLValidationState state) throws Exception {
+        boolean trusted = ValidationSupport.setXHTMLContentTrusted(true);
+        try {
+            return FHIRParser.parser(Format.JSON).parse(new StringReader(XHTMLValidationState.JSON_SPEC_EXAMPLE));
+        } finally {
+            ValidationSupport.setXHTMLContentTrusted(trusted);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class XHTMLSchemaValidationState extends XHTMLValidationState {
+        @Setup
+        public void enableSchemaValidation() {
+            FHIRModelConfig.setXHTMLSchemaValidation(true);
+        }
+
+        @TearDown
+        public void disableSchemaValidation() {
+            FHIRModelConfig.setXHTMLSchemaValidation(false);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new FHIRBenchmarkRunner(XHTMLValidationBenchmark.class)
+            .property(PROPERTY_EXAMPLE_NAME, XHTMLValidationState.SPEC_EXAMPLE_NAME)
+            .run();
+    }
+}
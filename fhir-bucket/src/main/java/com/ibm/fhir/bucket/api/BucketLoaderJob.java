@@ -33,8 +33,8 @@ public class BucketLoaderJob {
     // true while the file is being processed
     private volatile boolean fileProcessing = true;
     
-    // The number of entries read from the object
-    private volatile int entryCount;
+    // The number of entries read from the object. Blocks of the object may be read in parallel
+    private final AtomicInteger entryCount = new AtomicInteger(0);
     
     // The number of entries for which processing has been completed
     private final AtomicInteger completedCount = new AtomicInteger(0);
@@ -88,7 +88,7 @@ public class BucketLoaderJob {
     
     @Override
     public String toString() {
-        return bucketName + ":" + getObjectKey() + "[v" + version + "]: " + completedCount.get() + "/" + entryCount + " failed=" + failureCount.get();
+        return bucketName + ":" + getObjectKey() + "[v" + version + "]: " + completedCount.get() + "/" + entryCount.get() + " failed=" + failureCount.get();
     }
     
     public String getBucketName() {
@@ -136,7 +136,7 @@ public class BucketLoaderJob {
      * Increment the number of operations inflight
      */
     public void addEntry() {
-        this.entryCount++;
+        this.entryCount.incrementAndGet();
     }
 
     /**
@@ -149,7 +149,7 @@ public class BucketLoaderJob {
         }
 
         // If all the entries are done AND we've completed scanning the file
-        if (completedCount.addAndGet(1) == this.entryCount && !this.fileProcessing) {
+        if (completedCount.addAndGet(1) == this.entryCount.get() && !this.fileProcessing) {
             this.processingEndTime = System.nanoTime();
             
             if (this.jobCompleteCallback != null) {
@@ -169,7 +169,7 @@ public class BucketLoaderJob {
             
             // If we've also processed all the registered entries, then
             // we can make the call to signal to mark the job as done
-            if (completedCount.get() == this.entryCount) {
+            if (completedCount.get() == this.entryCount.get()) {
                 // job is done, so make the call
                 this.processingEndTime = System.nanoTime();
                 if (this.jobCompleteCallback != null) {
@@ -203,7 +203,7 @@ public class BucketLoaderJob {
      * If called before, the value may not representative of all the entries in the file
      */
     public int getEntryCount() {
-        return this.entryCount;
+        return this.entryCount.get();
     }
 
     /**
@@ -0,0 +1,62 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bucket.api;
+
+import java.io.BufferedReader;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * The source of the objects to load. Objects are organized by bucket
+ * and addressed by their key (item name) within the bucket.
+ */
+public interface IObjectStore {
+
+    /**
+     * Scan the bucket, feeding each non-empty item to the given consumer
+     * @param bucketName
+     * @param pathPrefix only include items with this prefix. Can be null
+     * @param fileTyper function to derive fileType from the item key value
+     * @param consumer target for each non-empty CosItem we find in the bucket
+     */
+    void scan(String bucketName, String pathPrefix, Function<String, FileType> fileTyper, Consumer<CosItem> consumer);
+
+    /**
+     * Read and process the object, feeding the content to the given consumer as a
+     * BufferedReader. The stream is closed when the consumer accept call returns
+     * @param bucketName
+     * @param itemName
+     * @param consumer
+     */
+    void process(String bucketName, String itemName, Consumer<BufferedReader> consumer);
+
+    /**
+     * Write the payload to the given bucket using objectName as the key
+     * @param bucketName
+     * @param objectName
+     * @param payload
+     */
+    void write(String bucketName, String objectName, String payload);
+
+    /**
+     * Split the object into at most maxBlocks blocks of whole lines which can
+     * be processed in parallel.
+     * @param bucketName
+     * @param itemName
+     * @param maxBlocks
+     * @return the blocks in order, or null if this store can't split objects
+     */
+    default List<LineBlock> splitLines(String bucketName, String itemName, int maxBlocks) {
+        return null;
+    }
+
+    /**
+     * Tell the store to stop. Can be used to get scan() to finish early
+     */
+    void signalStop();
+}
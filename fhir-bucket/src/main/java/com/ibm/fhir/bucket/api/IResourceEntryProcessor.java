@@ -16,6 +16,8 @@ public interface IResourceEntryProcessor {
     /**
      * Process the resource entry (usually called from within a thread-pool
      * @param re
+     * @return false if the processing failed in a way which suggests the target
+     *         is overloaded (server errors, timeouts), true otherwise
      */
-    void process(ResourceEntry re);
+    boolean process(ResourceEntry re);
 }
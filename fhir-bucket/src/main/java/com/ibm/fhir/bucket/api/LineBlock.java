@@ -0,0 +1,113 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bucket.api;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * A block of whole lines taken from an NDJSON object, together with the
+ * line number of its first line so that line numbers are the same no
+ * matter how the object is split.
+ */
+public class LineBlock {
+    private static final byte NEWLINE = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+
+    // The content of the block. We only ever read from a duplicate
+    private final ByteBuffer buffer;
+
+    // The line number (starting at 0) of the first line in this block
+    private final int firstLineNumber;
+
+    // The number of lines in this block
+    private final int lineCount;
+
+    /**
+     * Public constructor
+     * @param buffer the content, from position to limit
+     * @param firstLineNumber
+     */
+    public LineBlock(ByteBuffer buffer, int firstLineNumber) {
+        this.buffer = buffer.slice();
+        this.firstLineNumber = firstLineNumber;
+        this.lineCount = countLines(this.buffer);
+    }
+
+    /**
+     * Count the lines in the buffer. The last line doesn't need a terminator
+     * @param buffer
+     * @return
+     */
+    private static int countLines(ByteBuffer buffer) {
+        final int limit = buffer.limit();
+        int result = 0;
+        for (int i = 0; i < limit; i++) {
+            if (buffer.get(i) == NEWLINE) {
+                result++;
+            }
+        }
+
+        if (limit > 0 && buffer.get(limit-1) != NEWLINE) {
+            result++;
+        }
+        return result;
+    }
+
+    /**
+     * @return the line number of the first line in this block
+     */
+    public int getFirstLineNumber() {
+        return this.firstLineNumber;
+    }
+
+    /**
+     * @return the number of lines in this block
+     */
+    public int getLineCount() {
+        return this.lineCount;
+    }
+
+    /**
+     * @return the size of this block in bytes
+     */
+    public int getSize() {
+        return this.buffer.limit();
+    }
+
+    /**
+     * Decode each line in the block as UTF-8 and pass it to the consumer along with
+     * its line number. Line terminators (\n or \r\n) are removed. Safe to call from
+     * more than one thread.
+     * @param consumer
+     */
+    public void forEachLine(ObjIntConsumer<String> consumer) {
+        final ByteBuffer content = buffer.duplicate();
+        final int limit = content.limit();
+        int lineNumber = this.firstLineNumber;
+        int start = 0;
+        while (start < limit) {
+            int end = start;
+            while (end < limit && content.get(end) != NEWLINE) {
+                end++;
+            }
+
+            int lineEnd = end;
+            if (lineEnd > start && content.get(lineEnd-1) == CARRIAGE_RETURN) {
+                lineEnd--;
+            }
+
+            byte[] raw = new byte[lineEnd - start];
+            content.position(start);
+            content.get(raw);
+            consumer.accept(new String(raw, StandardCharsets.UTF_8), lineNumber++);
+
+            start = end + 1;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bucket.app;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.bucket.concurrency.AdaptiveConcurrencyLimit;
+
+/**
+ * Active object to periodically log the concurrency limits chosen for the FHIR
+ * requests and the throughput achieved with them
+ */
+public class ConcurrencyMetricsLogger {
+    private static final Logger logger = Logger.getLogger(ConcurrencyMetricsLogger.class.getName());
+
+    // The limits we're reporting on
+    private final List<AdaptiveConcurrencyLimit> limits;
+
+    // How often to log the metrics
+    private final long intervalMs;
+
+    // main thread control flag
+    private volatile boolean running = true;
+
+    // active object thread
+    private Thread mainLoopThread;
+
+    /**
+     * Public constructor
+     * @param limits
+     * @param intervalMs
+     */
+    public ConcurrencyMetricsLogger(Collection<AdaptiveConcurrencyLimit> limits, long intervalMs) {
+        this.limits = new ArrayList<>(limits);
+        this.intervalMs = intervalMs;
+    }
+
+    /**
+     * Start the logger thread
+     */
+    public void init() {
+        mainLoopThread = new Thread(() -> mainLoop());
+        mainLoopThread.setDaemon(true);
+        mainLoopThread.start();
+    }
+
+    /**
+     * Tell the main loop to stop
+     */
+    public void signalStop() {
+        this.running = false;
+        if (mainLoopThread != null) {
+            this.mainLoopThread.interrupt();
+        }
+    }
+
+    /**
+     * Tell the main loop thread to stop if it hasn't already and wait a reasonable time
+     * for the main thread loop to terminate
+     */
+    public void waitForStop() {
+        signalStop();
+
+        if (mainLoopThread != null) {
+            try {
+                mainLoopThread.join(5000);
+            } catch (InterruptedException x) {
+                logger.warning("Main loop thread did not terminate in 5000ms");
+            }
+        }
+
+        // One last report so we have the final numbers
+        report();
+    }
+
+    /**
+     * Log the current state of each limit
+     */
+    private void report() {
+        for (AdaptiveConcurrencyLimit limit: limits) {
+            logger.info("Concurrency " + limit.report());
+        }
+    }
+
+    /**
+     * The main loop running inside this active object's thread
+     */
+    protected void mainLoop() {
+        while (this.running) {
+            try {
+                Thread.sleep(intervalMs);
+            } catch (InterruptedException x) {
+                // probably time to stop
+                continue;
+            }
+
+            report();
+        }
+    }
+}
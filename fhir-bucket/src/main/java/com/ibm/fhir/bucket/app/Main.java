@@ -26,10 +26,14 @@ import java.util.stream.Collectors;
 
 import com.ibm.fhir.bucket.api.BucketPath;
 import com.ibm.fhir.bucket.api.FileType;
+import com.ibm.fhir.bucket.api.IObjectStore;
 import com.ibm.fhir.bucket.api.IResourceEntryProcessor;
 import com.ibm.fhir.bucket.client.ClientPropertyAdapter;
 import com.ibm.fhir.bucket.client.FHIRBucketClient;
+import com.ibm.fhir.bucket.concurrency.AdaptiveConcurrencyLimit;
+import com.ibm.fhir.bucket.concurrency.ThreadPools;
 import com.ibm.fhir.bucket.cos.COSClient;
+import com.ibm.fhir.bucket.local.LocalFileClient;
 import com.ibm.fhir.bucket.interop.InteropScenario;
 import com.ibm.fhir.bucket.interop.InteropWorkload;
 import com.ibm.fhir.bucket.persistence.FhirBucketSchema;
@@ -71,7 +75,11 @@ import com.ibm.fhir.task.core.service.TaskService;
 public class Main {
     private static final Logger logger = Logger.getLogger(Main.class.getName());
     private static final int DEFAULT_CONNECTION_POOL_SIZE = 10;
+    private static final int DEFAULT_POOL_METRICS_INTERVAL_SECONDS = 0;
     private static final int DEFAULT_MAX_FHIR_CONCURRENT_REQUESTS = 40;
+    private static final int DEFAULT_ADAPTIVE_INITIAL_LIMIT = 4;
+    private static final int DEFAULT_CONCURRENCY_METRICS_INTERVAL_SECONDS = 60;
+    private static final int DEFAULT_NDJSON_PARALLELISM = 4;
     private static final int DEFAULT_COS_SCAN_INTERVAL_MS = 300000; // 5 mins
     private static final String DEFAULT_SCHEMA_NAME = "FHIRBUCKET";
     private final Properties cosProperties = new Properties();
@@ -93,15 +101,45 @@ public class Main {
     // Database connection pool size
     private int connectionPoolSize = DEFAULT_CONNECTION_POOL_SIZE;
 
+    // Upper limit for adaptive connection pool sizing. Disabled if <= connectionPoolSize
+    private int connectionPoolMaxSize = -1;
+
+    // Report connections held for longer than this as possible leaks. 0 to disable
+    private int connectionLeakDetectionSeconds = 0;
+
+    // How often to log the connection pool metrics. 0 to disable
+    private int poolMetricsIntervalSeconds = DEFAULT_POOL_METRICS_INTERVAL_SECONDS;
+
+    // Periodically logs the connection pool metrics
+    private PoolMetricsLogger poolMetricsLogger;
+
     // How many JSON files can we process at the same time
     private int maxConcurrentJsonFiles = 10;
 
     // How many NDJSON files can we process at the same time (typically 1)
     private int maxConcurrentNdJsonFiles = 1;
 
+    // How many blocks each NDJSON file can be split into for parallel parsing (local files only)
+    private int ndjsonParallelism = DEFAULT_NDJSON_PARALLELISM;
+
     // How many FHIR requests should be allowed concurrently
     private int maxConcurrentFhirRequests = DEFAULT_MAX_FHIR_CONCURRENT_REQUESTS;
 
+    // Adjust the concurrent FHIR requests from the observed response times and errors. The configured values become upper limits
+    private boolean adaptiveConcurrency = false;
+
+    // How often to log the concurrency limits and throughput. 0 to disable
+    private int concurrencyMetricsIntervalSeconds = DEFAULT_CONCURRENCY_METRICS_INTERVAL_SECONDS;
+
+    // Periodically logs the concurrency limits and throughput
+    private ConcurrencyMetricsLogger concurrencyMetricsLogger;
+
+    // The concurrency limits we report on
+    private final List<AdaptiveConcurrencyLimit> concurrencyLimits = new ArrayList<>();
+
+    // Upper limit for the threads in the common pool. Derived from the other limits if <= 0
+    private int maxThreads = -1;
+
     // Just slightly over 2 minutes, which is just slightly longer than the FHIR default tx timeout
     private int poolShutdownTimeoutSeconds = 130;
 
@@ -112,7 +150,10 @@ public class Main {
     private ExecutorService commonPool;
 
     // Configured connection to IBM Cloud Object Storage (S3)
-    private COSClient cosClient;
+    private IObjectStore objectStore;
+
+    // Load from sub-directories of this directory instead of COS buckets
+    private String localBaseDir;
 
     // FHIR server requests go through this client
     private FHIRBucketClient fhirClient;
@@ -216,6 +257,13 @@ public class Main {
                     throw new IllegalArgumentException("missing value for --cos-properties");
                 }
                 break;
+            case "--local-base-dir":
+                if (i < args.length + 1) {
+                    this.localBaseDir = args[++i];
+                } else {
+                    throw new IllegalArgumentException("missing value for --local-base-dir");
+                }
+                break;
             case "--db-properties":
                 if (i < args.length + 1) {
                     loadDbProperties(args[++i]);
@@ -286,6 +334,13 @@ public class Main {
                     throw new IllegalArgumentException("missing value for --max-concurrent-ndjson-files");
                 }
                 break;
+            case "--ndjson-parallelism":
+                if (i < args.length + 1) {
+                    this.ndjsonParallelism = Integer.parseInt(args[++i]);
+                } else {
+                    throw new IllegalArgumentException("missing value for --ndjson-parallelism");
+                }
+                break;
             case "--connection-pool-size":
                 if (i < args.length + 1) {
                     this.connectionPoolSize = Integer.parseInt(args[++i]);
@@ -293,6 +348,44 @@ public class Main {
                     throw new IllegalArgumentException("missing value for --connection-pool-size");
                 }
                 break;
+            case "--connection-pool-max-size":
+                if (i < args.length + 1) {
+                    this.connectionPoolMaxSize = Integer.parseInt(args[++i]);
+                } else {
+                    throw new IllegalArgumentException("missing value for --connection-pool-max-size");
+                }
+                break;
+            case "--connection-leak-detection-seconds":
+                if (i < args.length + 1) {
+                    this.connectionLeakDetectionSeconds = Integer.parseInt(args[++i]);
+                } else {
+                    throw new IllegalArgumentException("missing value for --connection-leak-detection-seconds");
+                }
+                break;
+            case "--pool-metrics-interval-seconds":
+                if (i < args.length + 1) {
+                    this.poolMetricsIntervalSeconds = Integer.parseInt(args[++i]);
+                } else {
+                    throw new IllegalArgumentException("missing value for --pool-metrics-interval-seconds");
+                }
+                break;
+            case "--adaptive-concurrency":
+                this.adaptiveConcurrency = true;
+                break;
+            case "--concurrency-metrics-interval-seconds":
+                if (i < args.length + 1) {
+                    this.concurrencyMetricsIntervalSeconds = Integer.parseInt(args[++i]);
+                } else {
+                    throw new IllegalArgumentException("missing value for --concurrency-metrics-interval-seconds");
+                }
+                break;
+            case "--max-threads":
+                if (i < args.length + 1) {
+                    this.maxThreads = Integer.parseInt(args[++i]);
+                } else {
+                    throw new IllegalArgumentException("missing value for --max-threads");
+                }
+                break;
             case "--concurrent-payer-requests":
                 if (i < args.length + 1) {
                     this.concurrentPayerRequests = Integer.parseInt(args[++i]);
@@ -461,8 +554,8 @@ public class Main {
      */
     public void checkConfig() {
 
-        // If we have a COS configuration, then we also need a database configuration
-        if (this.createSchema || !cosProperties.isEmpty()) {
+        // If we have a COS or local configuration, then we also need a database configuration
+        if (this.createSchema || isLoading()) {
             if (dbType == null) {
                 throw new IllegalArgumentException("No --db-type given");
             }
@@ -478,6 +571,14 @@ public class Main {
         }
     }
 
+    /**
+     * Are we configured to load objects from COS or a local directory
+     * @return
+     */
+    private boolean isLoading() {
+        return !cosProperties.isEmpty() || this.localBaseDir != null;
+    }
+
     /**
      * Set up the database configuration we are going to use to coordinate
      * loading activities. Only one instance should be performing the schema
@@ -508,8 +609,45 @@ public class Main {
         }
 
         // We constrain the number of concurrent tasks which are inflight, so a breathable
-        // pool works nicely because it cannot grow unbounded
-        this.commonPool = Executors.newCachedThreadPool();
+        // pool works nicely. The thread cap is a safety net in case that ever breaks
+        if (this.maxThreads <= 0) {
+            this.maxThreads = this.maxConcurrentFhirRequests + this.maxConcurrentJsonFiles + this.maxConcurrentNdJsonFiles * Math.max(1, this.ndjsonParallelism);
+        }
+        this.commonPool = ThreadPools.newBoundedThreadPool(this.maxThreads);
+    }
+
+    /**
+     * Create the limit for a type of FHIR request. If adaptive concurrency is enabled, the
+     * configured value is the upper bound for the limit, otherwise it is used as is.
+     * @param name
+     * @param maxConcurrentRequests
+     * @return
+     */
+    protected AdaptiveConcurrencyLimit createConcurrencyLimit(String name, int maxConcurrentRequests) {
+        final AdaptiveConcurrencyLimit result;
+        if (this.adaptiveConcurrency) {
+            result = new AdaptiveConcurrencyLimit(name, Math.min(DEFAULT_ADAPTIVE_INITIAL_LIMIT, maxConcurrentRequests), 1, maxConcurrentRequests);
+        } else {
+            result = AdaptiveConcurrencyLimit.fixed(name, maxConcurrentRequests);
+        }
+        this.concurrencyLimits.add(result);
+        return result;
+    }
+
+    /**
+     * Apply the optional sizing, leak detection and metrics configuration to the
+     * connection pool
+     */
+    protected void configurePool() {
+        if (this.connectionPoolMaxSize > this.connectionPoolSize) {
+            this.connectionPool.setAdaptiveMaxPoolSize(this.connectionPoolMaxSize);
+        }
+
+        if (this.connectionLeakDetectionSeconds > 0) {
+            this.connectionPool.setLeakDetectionThreshold(this.connectionLeakDetectionSeconds * 1000L);
+        }
+
+        this.connectionPool.setStatementTiming(this.poolMetricsIntervalSeconds > 0);
     }
 
     /**
@@ -526,6 +664,7 @@ public class Main {
         IConnectionProvider cp = new JdbcConnectionProvider(new DerbyTranslator(), propertyAdapter);
         this.connectionPool = new PoolConnectionProvider(cp, connectionPoolSize);
         this.connectionPool.setCloseOnAnyError();
+        configurePool();
         this.adapter = new DerbyAdapter(connectionPool);
         this.transactionProvider = new SimpleTransactionProvider(connectionPool);
     }
@@ -549,6 +688,7 @@ public class Main {
         Db2PropertyAdapter propertyAdapter = new Db2PropertyAdapter(dbProperties);
         IConnectionProvider cp = new JdbcConnectionProvider(translator, propertyAdapter);
         this.connectionPool = new PoolConnectionProvider(cp, connectionPoolSize);
+        configurePool();
         this.adapter = new Db2Adapter(connectionPool);
         this.transactionProvider = new SimpleTransactionProvider(connectionPool);
     }
@@ -572,6 +712,7 @@ public class Main {
         PostgreSqlPropertyAdapter propertyAdapter = new PostgreSqlPropertyAdapter(dbProperties);
         IConnectionProvider cp = new JdbcConnectionProvider(translator, propertyAdapter);
         this.connectionPool = new PoolConnectionProvider(cp, connectionPoolSize);
+        configurePool();
         this.adapter = new PostgreSqlAdapter(connectionPool);
         this.transactionProvider = new SimpleTransactionProvider(connectionPool);
     }
@@ -732,6 +873,14 @@ public class Main {
             this.fhirClient.shutdown();
         }
 
+        if (this.poolMetricsLogger != null) {
+            this.poolMetricsLogger.waitForStop();
+        }
+
+        if (this.concurrencyMetricsLogger != null) {
+            this.concurrencyMetricsLogger.waitForStop();
+        }
+
         // Finally we can ask the common thread-pool to close up shop. Typically we
         // should wait for at least as long as the FHIR server transaction timeout
         // so that we don't lose any responses (and therefore fail to record the
@@ -773,10 +922,14 @@ public class Main {
             fhirClient.init(this.tenantName);
         }
 
-        // Only need to initialize the DataAccess layer if we're loading from COS
+        // Only need to initialize the DataAccess layer if we're loading from COS or a local directory
         DataAccess dataAccess = null;
-        if (cosProperties != null && cosProperties.size() > 0) {
-            cosClient = new COSClient(cosProperties);
+        if (isLoading()) {
+            if (this.localBaseDir != null) {
+                objectStore = new LocalFileClient(this.localBaseDir);
+            } else {
+                objectStore = new COSClient(cosProperties);
+            }
 
             // DataAccess hides the details of our interactions with the FHIRBUCKET tracking tables
             dataAccess = new DataAccess(this.adapter, this.transactionProvider, this.schemaName);
@@ -784,7 +937,7 @@ public class Main {
 
             // Set up the scanner to look for new COS objects and register them in our database
             if (this.runScanner) {
-                this.scanner = new CosScanner(cosClient, cosBucketList, dataAccess, this.fileTypes, pathPrefix, cosScanIntervalMs);
+                this.scanner = new CosScanner(objectStore, cosBucketList, dataAccess, this.fileTypes, pathPrefix, cosScanIntervalMs);
                 scanner.init();
             }
 
@@ -792,7 +945,7 @@ public class Main {
             IResourceEntryProcessor resourceEntryProcessor;
             if (this.targetBucket != null && this.targetBucket.length() > 0) {
                 // No fhirClient required here...process each resource locally
-                resourceEntryProcessor = new BundleBreakerResourceProcessor(cosClient, this.maxResourcesPerBundle, this.targetBucket, this.targetPrefix);
+                resourceEntryProcessor = new BundleBreakerResourceProcessor(objectStore, this.maxResourcesPerBundle, this.targetBucket, this.targetPrefix);
             } else {
                 // Process resources by sending them to a FHIR server
                 resourceEntryProcessor = new FHIRClientResourceProcessor(fhirClient, dataAccess);
@@ -800,23 +953,24 @@ public class Main {
 
             // Set up the handler to process resources as they are read from COS
             // Uses an internal pool to parallelize NDJSON work
-            this.resourceHandler = new ResourceHandler(this.commonPool, this.maxConcurrentFhirRequests, resourceEntryProcessor);
+            AdaptiveConcurrencyLimit fhirRequestLimit = createConcurrencyLimit("fhir-requests", this.maxConcurrentFhirRequests);
+            this.resourceHandler = new ResourceHandler(this.commonPool, fhirRequestLimit, resourceEntryProcessor);
 
             // Set up the COS reader and wire it to the resourceHandler
             if (fileTypes.contains(FileType.JSON)) {
-                this.jsonReader = new COSReader(commonPool, FileType.JSON, cosClient,
+                this.jsonReader = new COSReader(commonPool, FileType.JSON, objectStore,
                     resource -> resourceHandler.process(resource),
                     this.maxConcurrentJsonFiles, dataAccess, incremental, recycleSeconds,
-                    incrementalExact, this.bundleCostFactor, bucketPaths);
+                    incrementalExact, this.bundleCostFactor, bucketPaths, 1);
                 this.jsonReader.init();
             }
 
             if (fileTypes.contains(FileType.NDJSON)) {
-                this.jsonReader = new COSReader(commonPool, FileType.NDJSON, cosClient,
+                this.ndJsonReader = new COSReader(commonPool, FileType.NDJSON, objectStore,
                     resource -> resourceHandler.process(resource),
                     this.maxConcurrentNdJsonFiles, dataAccess, incremental, recycleSeconds,
-                    incrementalExact, this.bundleCostFactor, bucketPaths);
-                this.jsonReader.init();
+                    incrementalExact, this.bundleCostFactor, bucketPaths, this.ndjsonParallelism);
+                this.ndJsonReader.init();
             }
         }
 
@@ -825,16 +979,29 @@ public class Main {
         if (this.concurrentPayerRequests > 0 && fhirClient != null) {
             // set up the CMS payer thread to add some read-load to the system
             InteropScenario scenario = new InteropScenario(this.fhirClient);
-            cmsPayerWorkload = new InteropWorkload(dataAccess, scenario, concurrentPayerRequests, 500000);
+            cmsPayerWorkload = new InteropWorkload(dataAccess, scenario, createConcurrencyLimit("payer-requests", concurrentPayerRequests), 500000);
             cmsPayerWorkload.init();
         }
 
         // Optionally start the $reindex loops
         if (this.reindexTstampParam != null) {
-            this.driveReindexOperation = new DriveReindexOperation(fhirClient, reindexConcurrentRequests, reindexTstampParam, reindexResourceCount);
+            this.driveReindexOperation = new DriveReindexOperation(fhirClient, createConcurrencyLimit("reindex-requests", reindexConcurrentRequests),
+                reindexTstampParam, reindexResourceCount);
             this.driveReindexOperation.init();
         }
 
+        // Keep an eye on the connection pool
+        if (this.connectionPool != null && this.poolMetricsIntervalSeconds > 0) {
+            this.poolMetricsLogger = new PoolMetricsLogger(this.connectionPool, this.poolMetricsIntervalSeconds * 1000L);
+            this.poolMetricsLogger.init();
+        }
+
+        // Report the limits we're running with and the throughput they give us
+        if (!this.concurrencyLimits.isEmpty() && this.concurrencyMetricsIntervalSeconds > 0) {
+            this.concurrencyMetricsLogger = new ConcurrencyMetricsLogger(this.concurrencyLimits, this.concurrencyMetricsIntervalSeconds * 1000L);
+            this.concurrencyMetricsLogger.init();
+        }
+
         // JVM won't exit until the threads are stopped via the
         // shutdown hook
     }
@@ -0,0 +1,96 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bucket.app;
+
+import java.util.logging.Logger;
+
+import com.ibm.fhir.database.utils.pool.PoolConnectionProvider;
+
+/**
+ * Active object to periodically log the connection pool metrics, so we can tell
+ * if the loader threads are starving for database connections
+ */
+public class PoolMetricsLogger {
+    private static final Logger logger = Logger.getLogger(PoolMetricsLogger.class.getName());
+
+    // The pool we're reporting on
+    private final PoolConnectionProvider connectionPool;
+
+    // How often to log the metrics
+    private final long intervalMs;
+
+    // main thread control flag
+    private volatile boolean running = true;
+
+    // active object thread
+    private Thread mainLoopThread;
+
+    /**
+     * Public constructor
+     * @param connectionPool
+     * @param intervalMs
+     */
+    public PoolMetricsLogger(PoolConnectionProvider connectionPool, long intervalMs) {
+        this.connectionPool = connectionPool;
+        this.intervalMs = intervalMs;
+    }
+
+    /**
+     * Start the logger thread
+     */
+    public void init() {
+        mainLoopThread = new Thread(() -> mainLoop());
+        mainLoopThread.setDaemon(true);
+        mainLoopThread.start();
+    }
+
+    /**
+     * Tell the main loop to stop
+     */
+    public void signalStop() {
+        this.running = false;
+        if (mainLoopThread != null) {
+            this.mainLoopThread.interrupt();
+        }
+    }
+
+    /**
+     * Tell the main loop thread to stop if it hasn't already and wait a reasonable time
+     * for the main thread loop to terminate
+     */
+    public void waitForStop() {
+        signalStop();
+
+        if (mainLoopThread != null) {
+            try {
+                mainLoopThread.join(5000);
+            } catch (InterruptedException x) {
+                logger.warning("Main loop thread did not terminate in 5000ms");
+            }
+        }
+
+        // One last report so we have the final numbers
+        logger.info("Connection pool: " + connectionPool.getMetrics().summary());
+    }
+
+    /**
+     * The main loop running inside this active object's thread
+     */
+    protected void mainLoop() {
+        while (this.running) {
+            try {
+                Thread.sleep(intervalMs);
+            } catch (InterruptedException x) {
+                // probably time to stop
+                continue;
+            }
+
+            connectionPool.checkForLeaks();
+            logger.info("Connection pool: " + connectionPool.getMetrics().summary());
+        }
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bucket.concurrency;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.database.utils.pool.LatencyHistogram;
+
+/**
+ * Flow control for requests sent to the FHIR server. Callers acquire capacity
+ * before making a request and release it with the observed response time and
+ * outcome when the request completes.
+ *
+ * <p>If adaptive, the limit is adjusted after each window of completed requests
+ * using AIMD (additive increase, multiplicative decrease):
+ * <ul>
+ * <li>if the error rate of the window exceeds {@link #ERROR_RATE_THRESHOLD}, the
+ *     limit is halved;</li>
+ * <li>if the mean response time (per unit of cost) rises above
+ *     {@link #LATENCY_TOLERANCE} times the lowest response time seen so far, the
+ *     server is queueing our requests, so the limit is reduced a little;</li>
+ * <li>otherwise, if the window actually used the capacity available, the limit is
+ *     increased by one.</li>
+ * </ul>
+ * So the limit grows until the server latency starts to rise and then settles
+ * around that point.
+ *
+ * <p>Capacity is measured in units of cost so that a bundle can take a bigger share
+ * of the limit than a single resource.
+ */
+public class AdaptiveConcurrencyLimit {
+    private static final Logger logger = Logger.getLogger(AdaptiveConcurrencyLimit.class.getName());
+
+    // Back off when more than this fraction of the requests in a window fail
+    public static final double ERROR_RATE_THRESHOLD = 0.05;
+
+    // Back off when the mean response time rises above this multiple of the baseline
+    public static final double LATENCY_TOLERANCE = 1.5;
+
+    // Multiplicative decrease applied on errors
+    private static final double ERROR_BACKOFF = 0.5;
+
+    // Multiplicative decrease applied when the latency rises
+    private static final double LATENCY_BACKOFF = 0.9;
+
+    // The smallest number of samples in a window before we adjust the limit
+    private static final int MIN_WINDOW_SAMPLES = 5;
+
+    // How quickly the baseline follows the response time up (1/n of the difference per window)
+    private static final double BASELINE_DRIFT = 100.0;
+
+    // Name used when reporting
+    private final String name;
+
+    // The bounds of the limit. The limit is fixed if these are the same
+    private final int minLimit;
+    private final int maxLimit;
+
+    private final Lock lock = new ReentrantLock();
+    private final Condition capacityCondition = lock.newCondition();
+
+    // All the fields below are guarded by the lock
+
+    // The current limit (kept as a double so that small changes aren't lost to rounding)
+    private double limit;
+
+    // The cost currently in flight
+    private int inflight;
+
+    // Stats for the current adjustment window
+    private int windowSamples;
+    private int windowErrors;
+    private long windowCost;
+    private long windowNanos;
+    private int windowMaxInflight;
+
+    // Lowest mean response time per unit of cost observed, in nanos. 0 until the first window completes
+    private double baselineNanos;
+
+    private boolean running = true;
+
+    // Stats for the current reporting period
+    private long reportStartTime = System.nanoTime();
+    private long reportRequests;
+    private long reportErrors;
+    private long reportCost;
+    private LatencyHistogram reportLatency = new LatencyHistogram();
+
+    /**
+     * Public constructor
+     * @param name the name used in log messages
+     * @param initialLimit the starting limit
+     * @param minLimit the limit never drops below this value
+     * @param maxLimit the limit never grows beyond this value
+     */
+    public AdaptiveConcurrencyLimit(String name, int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Invalid limits for '" + name + "': require 1 <= min <= initial <= max");
+        }
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+    }
+
+    /**
+     * Create a limit which is never adjusted
+     * @param name
+     * @param limit
+     * @return
+     */
+    public static AdaptiveConcurrencyLimit fixed(String name, int limit) {
+        return new AdaptiveConcurrencyLimit(name, limit, limit, limit);
+    }
+
+    /**
+     * Is the limit adjusted from the observed response times and errors
+     * @return
+     */
+    public boolean isAdaptive() {
+        return minLimit < maxLimit;
+    }
+
+    /**
+     * Wait until there is capacity for a request of the given cost. A request which costs
+     * more than the limit is allowed when nothing else is in flight, so it can't block forever.
+     * @param cost
+     * @return true if the capacity was acquired, false if the limit was stopped or the thread interrupted
+     */
+    public boolean acquire(int cost) {
+        lock.lock();
+        try {
+            while (running && inflight > 0 && inflight + cost > currentLimit()) {
+                capacityCondition.await();
+            }
+
+            if (running) {
+                inflight += cost;
+                windowMaxInflight = Math.max(windowMaxInflight, inflight);
+                return true;
+            }
+        } catch (InterruptedException x) {
+            logger.info("Interrupted while waiting for capacity: " + name);
+        } finally {
+            lock.unlock();
+        }
+        return false;
+    }
+
+    /**
+     * Release the capacity taken by a request which has completed, recording its outcome
+     * @param cost the cost passed to {@link #acquire(int)}
+     * @param elapsedNanos the response time of the request
+     * @param success false if the request failed in a way which may indicate overload
+     *        (errors, timeouts or server-side failures)
+     */
+    public void release(int cost, long elapsedNanos, boolean success) {
+        lock.lock();
+        try {
+            inflight -= cost;
+            reportRequests++;
+            reportCost += cost;
+            reportLatency.record(elapsedNanos);
+            if (!success) {
+                reportErrors++;
+            }
+
+            if (isAdaptive()) {
+                windowSamples++;
+                windowCost += Math.max(1, cost);
+                windowNanos += elapsedNanos;
+                if (!success) {
+                    windowErrors++;
+                }
+
+                if (windowSamples >= Math.max(MIN_WINDOW_SAMPLES, (int) limit / 2)) {
+                    adjust();
+                }
+            }
+            capacityCondition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Give back capacity acquired for a request which was never sent. Nothing is recorded.
+     * @param cost the cost passed to {@link #acquire(int)}
+     */
+    public void cancel(int cost) {
+        lock.lock();
+        try {
+            inflight -= cost;
+            capacityCondition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adjust the limit based on the stats of the window just completed. Caller must hold the lock.
+     */
+    private void adjust() {
+        final double meanNanos = (double) windowNanos / windowCost;
+        final double errorRate = (double) windowErrors / windowSamples;
+        final double oldLimit = limit;
+
+        if (errorRate > ERROR_RATE_THRESHOLD) {
+            limit = Math.max(minLimit, limit * ERROR_BACKOFF);
+        } else {
+            if (baselineNanos == 0 || meanNanos < baselineNanos) {
+                baselineNanos = meanNanos;
+            } else {
+                // follow the response time up very slowly, in case the workload itself has changed
+                baselineNanos += (meanNanos - baselineNanos) / BASELINE_DRIFT;
+            }
+
+            if (meanNanos > baselineNanos * LATENCY_TOLERANCE) {
+                limit = Math.max(minLimit, limit * LATENCY_BACKOFF);
+            } else if (windowMaxInflight >= (int) limit) {
+                // only grow if we're actually using what we've got
+                limit = Math.min(maxLimit, limit + 1);
+            }
+        }
+
+        if (logger.isLoggable(Level.FINE) && (int) limit != (int) oldLimit) {
+            logger.fine(String.format("%s: limit %d -> %d [mean=%.3fms baseline=%.3fms errors=%.1f%%]", name, (int) oldLimit,
+                (int) limit, meanNanos / 1e6, baselineNanos / 1e6, errorRate * 100));
+        }
+
+        windowSamples = 0;
+        windowErrors = 0;
+        windowCost = 0;
+        windowNanos = 0;
+        windowMaxInflight = inflight;
+    }
+
+    /**
+     * The limit as a whole number. Caller must hold the lock.
+     * @return
+     */
+    private int currentLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Get the current limit
+     * @return
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return currentLimit();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the lower bound of the limit
+     * @return
+     */
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    /**
+     * Get the upper bound of the limit
+     * @return
+     */
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * Get the cost currently in flight
+     * @return
+     */
+    public int getInflight() {
+        lock.lock();
+        try {
+            return inflight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop handing out capacity and wake up any waiting threads
+     */
+    public void signalStop() {
+        lock.lock();
+        try {
+            running = false;
+            capacityCondition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Single line summary of the limit and the throughput since the previous report,
+     * suitable for periodic logging. Resets the reporting period.
+     * @return
+     */
+    public String report() {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            double elapsed = Math.max(1, now - reportStartTime) / 1e9;
+            String result = String.format("%s: limit=%d [%d..%d] inflight=%d rate=%.1f calls/s cost=%.1f/s errors=%d response[%s]",
+                name, currentLimit(), minLimit, maxLimit, inflight, reportRequests / elapsed, reportCost / elapsed, reportErrors, reportLatency);
+
+            reportStartTime = now;
+            reportRequests = 0;
+            reportErrors = 0;
+            reportCost = 0;
+            reportLatency = new LatencyHistogram();
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
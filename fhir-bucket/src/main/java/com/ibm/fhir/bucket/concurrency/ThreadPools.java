@@ -0,0 +1,41 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bucket.concurrency;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Factory for the thread pools used by the loader
+ */
+public class ThreadPools {
+
+    // How long an idle thread is kept before it is released
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private ThreadPools() {
+        // static only
+    }
+
+    /**
+     * Create a breathable thread pool which starts threads on demand and releases them
+     * when idle (like a cached thread pool), but never runs more than maxThreads threads.
+     * Tasks submitted while all the threads are busy are queued rather than rejected.
+     * @param maxThreads
+     * @return
+     */
+    public static ExecutorService newBoundedThreadPool(int maxThreads) {
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException("maxThreads must be > 0");
+        }
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxThreads, maxThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
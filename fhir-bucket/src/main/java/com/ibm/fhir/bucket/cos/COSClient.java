@@ -40,11 +40,12 @@ import com.ibm.cloud.objectstorage.services.s3.model.S3ObjectInputStream;
 import com.ibm.cloud.objectstorage.services.s3.model.S3ObjectSummary;
 import com.ibm.fhir.bucket.api.CosItem;
 import com.ibm.fhir.bucket.api.FileType;
+import com.ibm.fhir.bucket.api.IObjectStore;
 
 /**
  * Encapsulates the AmazonS3 client for interaction with IBM Cloud Object Storage (COS)
  */
-public class COSClient {
+public class COSClient implements IObjectStore {
     private static final Logger logger = Logger.getLogger(COSClient.class.getName());
 
     // Switch on to write to the local filesystem instead of COS
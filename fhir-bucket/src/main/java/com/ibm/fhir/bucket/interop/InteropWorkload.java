@@ -10,16 +10,14 @@ import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.ibm.fhir.bucket.concurrency.AdaptiveConcurrencyLimit;
+import com.ibm.fhir.bucket.concurrency.ThreadPools;
 import com.ibm.fhir.bucket.scanner.DataAccess;
 
 /**
@@ -33,13 +31,8 @@ public class InteropWorkload {
     // The scenario we use to process each randomly picked patient
     private final IPatientScenario patientScenario;
     
-    // the maximum number of requests we permit
-    private final int maxConcurrentRequests;
-    
-    private final Lock lock = new ReentrantLock();
-    private final Condition capacityCondition = lock.newCondition();
-    
-    private volatile int runningRequests;
+    // limits the number of requests we permit
+    private final AdaptiveConcurrencyLimit concurrencyLimit;
     
     private volatile boolean running = true;
 
@@ -53,7 +46,7 @@ public class InteropWorkload {
     private final DataAccess dataAccess;
 
     // thread pool for processing requests
-    private final ExecutorService pool = Executors.newCachedThreadPool();
+    private final ExecutorService pool;
     
     // for picking random patient ids
     private final SecureRandom random = new SecureRandom();
@@ -69,13 +62,14 @@ public class InteropWorkload {
     /**
      * Public constructor
      * @param client
-     * @param maxConcurrentRequests
+     * @param concurrencyLimit
      */
-    public InteropWorkload(DataAccess dataAccess, IPatientScenario patientScenario, int maxConcurrentRequests, int patientBufferSize) {
+    public InteropWorkload(DataAccess dataAccess, IPatientScenario patientScenario, AdaptiveConcurrencyLimit concurrencyLimit, int patientBufferSize) {
         this.dataAccess = dataAccess;
         this.patientScenario = patientScenario;
-        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.concurrencyLimit = concurrencyLimit;
         this.patientBufferSize = patientBufferSize;
+        this.pool = ThreadPools.newBoundedThreadPool(concurrencyLimit.getMaxLimit());
     }
     
 
@@ -94,13 +88,8 @@ public class InteropWorkload {
     public void signalStop() {
         this.running = false;
         
-        lock.lock();
-        try {
-            // wake up the thread if it's waiting on the capacity condition
-            capacityCondition.signalAll();
-        } finally {
-            lock.unlock();
-        }
+        // wake up the thread if it's waiting for capacity
+        concurrencyLimit.signalStop();
         
         
         // try to break into any IO operation for a quicker exit
@@ -149,38 +138,16 @@ public class InteropWorkload {
                     dataAccess.selectRandomPatientIds(patientIdBuffer, this.patientBufferSize);
                 }
     
-                // calculate how many requests we want to submit from the buffer, based
-                // on the maxConcurrentRequests.
-                int batchSize = 0;
-                lock.lock();
-                try {
-                    while (running && runningRequests == maxConcurrentRequests) {
-                        capacityCondition.await(5, TimeUnit.SECONDS);
-                    }
-                    
-                    // Submit as many requests as we have available. If we have a small 
-                    // patient buffer, then patients are more likely to be picked more than once
-                    int freeCapacity = maxConcurrentRequests - runningRequests;
-                    batchSize = Math.min(patientIdBuffer.size(), freeCapacity);
-                    runningRequests += batchSize;
-                } catch (InterruptedException x) {
-                    if (running) {
-                        running = false; // force termination so we don't get stuck here
-                        throw new IllegalStateException("Interrupted but still running. Use #shutdown() instead.");
-                    }
-                } finally {
-                    lock.unlock();
-                }
-    
-                // Submit a request for each allocated patient to the thread pool
-                for (int i=0; i<batchSize && running; i++) {
+                // Wait until the concurrencyLimit gives us room for another request. If we have a small
+                // patient buffer, then patients are more likely to be picked more than once
+                if (concurrencyLimit.acquire(1)) {
                     // pick a random patient id in the buffer
                     int bufferIndex = random.nextInt(patientIdBuffer.size());
                     final String patientId = patientIdBuffer.get(bufferIndex);
                     samples++; // track how many times we've sampled from the buffer
                     pool.submit(() -> processPatientThr(patientId));
                 }
-                
+    
                 long now = System.nanoTime();
                 if (now >= nextStatsReport) {
                     // Time to report average throughput stats
@@ -227,23 +194,20 @@ public class InteropWorkload {
      * @param patientId
      */
     private void processPatientThr(String patientId) {
+        boolean success = false;
+        long start = System.nanoTime();
         try {
             if (logger.isLoggable(Level.FINE)) {
                 logger.fine("Processing patient: '" + patientId + "'");
             }
             
             patientScenario.process(patientId, fhirRequests, fhirRequestTime, resourceCount);
+            success = true;
         } catch (Exception x) {
             logger.log(Level.SEVERE, "Processing patient '" + patientId + "'" , x);
         } finally {
             // free up capacity
-            lock.lock();
-            try {
-                runningRequests--;
-                capacityCondition.signal();
-            } finally {
-                lock.unlock();
-            }
+            concurrencyLimit.release(1, System.nanoTime() - start, success);
         }
     }
 }
@@ -0,0 +1,233 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bucket.local;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import com.ibm.fhir.bucket.api.CosItem;
+import com.ibm.fhir.bucket.api.FileType;
+import com.ibm.fhir.bucket.api.IObjectStore;
+import com.ibm.fhir.bucket.api.LineBlock;
+
+/**
+ * Serves objects from a directory on the local filesystem instead of COS. Each
+ * sub-directory of the base directory is a bucket, and the key of an item is its
+ * path relative to the bucket directory, using '/' as the separator.
+ */
+public class LocalFileClient implements IObjectStore {
+    private static final Logger logger = Logger.getLogger(LocalFileClient.class.getName());
+
+    // Don't bother splitting objects into blocks smaller than this
+    private static final long MIN_BLOCK_SIZE = 1024 * 1024;
+
+    // A mapped block can't be bigger than this
+    private static final long MAX_BLOCK_SIZE = Integer.MAX_VALUE;
+
+    // Buffer size used when searching for the end of a line
+    private static final int SEARCH_BUFFER_SIZE = 64 * 1024;
+
+    // The directory holding the buckets
+    private final Path baseDir;
+
+    // Set to false to tell a scan to return early
+    private volatile boolean running = true;
+
+    /**
+     * Public constructor
+     * @param baseDir the directory holding the buckets
+     */
+    public LocalFileClient(String baseDir) {
+        this.baseDir = Paths.get(baseDir).toAbsolutePath().normalize();
+        if (!Files.isDirectory(this.baseDir)) {
+            throw new IllegalArgumentException("Not a directory: '" + baseDir + "'");
+        }
+    }
+
+    @Override
+    public void signalStop() {
+        this.running = false;
+    }
+
+    /**
+     * Get the path of the given bucket, making sure it doesn't escape the base directory
+     * @param bucketName
+     * @return
+     */
+    private Path bucketDir(String bucketName) {
+        Path result = baseDir.resolve(bucketName).normalize();
+        if (!result.startsWith(baseDir) || result.equals(baseDir)) {
+            throw new IllegalArgumentException("Invalid bucket name: '" + bucketName + "'");
+        }
+        return result;
+    }
+
+    /**
+     * Get the path of the given item, making sure it doesn't escape the bucket directory
+     * @param bucketName
+     * @param itemName
+     * @return
+     */
+    private Path itemPath(String bucketName, String itemName) {
+        Path bucket = bucketDir(bucketName);
+        Path result = bucket.resolve(itemName).normalize();
+        if (!result.startsWith(bucket) || result.equals(bucket)) {
+            throw new IllegalArgumentException("Invalid item name: '" + bucketName + ":" + itemName + "'");
+        }
+        return result;
+    }
+
+    @Override
+    public void scan(String bucketName, String pathPrefix, Function<String, FileType> fileTyper, Consumer<CosItem> consumer) {
+        logger.info("Scanning directory: '" + bucketName + "'");
+        final Path bucket = bucketDir(bucketName);
+        if (!Files.isDirectory(bucket)) {
+            logger.warning("Bucket directory not found: '" + bucket + "'");
+            return;
+        }
+
+        try (Stream<Path> paths = Files.walk(bucket)) {
+            Iterator<Path> it = paths.iterator();
+            while (running && it.hasNext()) {
+                Path path = it.next();
+                BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                if (!attrs.isRegularFile() || attrs.size() == 0) {
+                    continue;
+                }
+
+                // keys always use '/' regardless of the platform
+                String itemName = bucket.relativize(path).toString().replace(path.getFileSystem().getSeparator(), "/");
+                if (pathPrefix != null && !itemName.startsWith(pathPrefix)) {
+                    continue;
+                }
+
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.fine("Local Item: {bucket=" + bucketName + ", item=" + itemName + ", bytes=" + attrs.size() + "}");
+                }
+
+                // There's no hash we can get cheaply, so the size and modification time
+                // stand in for the eTag so we can tell when a file has been changed
+                long lastModified = attrs.lastModifiedTime().toMillis();
+                String eTag = Long.toHexString(attrs.size()) + "-" + Long.toHexString(lastModified);
+                FileType ft = fileTyper.apply(itemName);
+                consumer.accept(new CosItem(bucketName, itemName, attrs.size(), ft, eTag, new Date(lastModified)));
+            }
+        } catch (IOException x) {
+            logger.log(Level.SEVERE, "error scanning '" + bucket + "'");
+            throw new IllegalStateException("error scanning directory", x);
+        }
+    }
+
+    @Override
+    public void process(String bucketName, String itemName, Consumer<BufferedReader> consumer) {
+        logger.info("Reading: " + bucketName + ":" + itemName);
+        try (BufferedReader br = Files.newBufferedReader(itemPath(bucketName, itemName), StandardCharsets.UTF_8)) {
+            consumer.accept(br);
+        } catch (IOException x) {
+            logger.log(Level.SEVERE, "error reading '" + bucketName + ":" + itemName + "'");
+            throw new IllegalStateException("error reading file", x);
+        }
+    }
+
+    @Override
+    public void write(String bucketName, String objectName, String payload) {
+        byte[] raw = payload.getBytes(StandardCharsets.UTF_8);
+        Path path = itemPath(bucketName, objectName);
+        logger.info("Writing to '" + path + "', bytes: " + raw.length);
+        try {
+            Files.createDirectories(path.getParent());
+            Files.write(path, raw);
+        } catch (IOException x) {
+            logger.log(Level.SEVERE, "Writing " + path, x);
+            throw new IllegalStateException("error writing file", x);
+        }
+    }
+
+    /**
+     * Map the file into memory and split it into blocks of roughly equal size, each
+     * ending on a line boundary. The page cache does the IO, so the blocks can be
+     * parsed in parallel without copying the file through a single reader.
+     */
+    @Override
+    public List<LineBlock> splitLines(String bucketName, String itemName, int maxBlocks) {
+        final Path path = itemPath(bucketName, itemName);
+        final List<LineBlock> result = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final long targetBlockSize = Math.min(MAX_BLOCK_SIZE, Math.max(MIN_BLOCK_SIZE, (size + maxBlocks - 1) / Math.max(1, maxBlocks)));
+
+            long start = 0;
+            int lineNumber = 0;
+            while (start < size) {
+                long end = start + targetBlockSize >= size ? size : findLineEnd(channel, start + targetBlockSize, size);
+                if (end - start > MAX_BLOCK_SIZE) {
+                    throw new IllegalStateException("line too long in '" + bucketName + ":" + itemName + "' at offset " + start);
+                }
+
+                // The mapping remains valid after the channel is closed
+                MappedByteBuffer mbb = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                LineBlock block = new LineBlock(mbb, lineNumber);
+                result.add(block);
+                lineNumber += block.getLineCount();
+                start = end;
+            }
+        } catch (IOException x) {
+            logger.log(Level.SEVERE, "error mapping '" + bucketName + ":" + itemName + "'");
+            throw new IllegalStateException("error mapping file", x);
+        }
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Split '" + bucketName + ":" + itemName + "' into " + result.size() + " blocks");
+        }
+        return result;
+    }
+
+    /**
+     * Find the offset just after the first newline at or beyond the given position
+     * @param channel
+     * @param position
+     * @param size
+     * @return the offset of the start of the next line, or size if there isn't one
+     * @throws IOException
+     */
+    private long findLineEnd(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SEARCH_BUFFER_SIZE);
+        long offset = position;
+        while (offset < size) {
+            buffer.clear();
+            int n = channel.read(buffer, offset);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (buffer.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += n;
+        }
+        return size;
+    }
+}
@@ -8,7 +8,6 @@ package com.ibm.fhir.bucket.reindex;
 
 import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
@@ -19,6 +18,8 @@ import org.apache.http.HttpStatus;
 import com.ibm.fhir.bucket.client.FHIRBucketClient;
 import com.ibm.fhir.bucket.client.FHIRBucketClientUtil;
 import com.ibm.fhir.bucket.client.FhirServerResponse;
+import com.ibm.fhir.bucket.concurrency.AdaptiveConcurrencyLimit;
+import com.ibm.fhir.bucket.concurrency.ThreadPools;
 import com.ibm.fhir.model.resource.OperationOutcome;
 import com.ibm.fhir.model.resource.OperationOutcome.Issue;
 import com.ibm.fhir.model.resource.Parameters;
@@ -32,8 +33,9 @@ import com.ibm.fhir.model.resource.Resource;
 public class DriveReindexOperation {
     private static final Logger logger = Logger.getLogger(DriveReindexOperation.class.getName());
 
-    // the maximum number of requests we permit
-    private final int maxConcurrentRequests;
+    // limits the number of requests we permit. We start one worker thread for each
+    // request allowed by the upper bound of the limit
+    private final AdaptiveConcurrencyLimit concurrencyLimit;
 
     // flag to indicate if we should be running
     private volatile boolean running = true;
@@ -44,7 +46,7 @@ public class DriveReindexOperation {
     private AtomicInteger currentlyRunning = new AtomicInteger();
 
     // thread pool for processing requests
-    private final ExecutorService pool = Executors.newCachedThreadPool();
+    private final ExecutorService pool;
 
     private final FHIRBucketClient fhirClient;
 
@@ -58,11 +60,12 @@ public class DriveReindexOperation {
     /**
      * Public constructor
      * @param client the FHIR client
-     * @param maxConcurrentRequests the number of threads to spin up
+     * @param concurrencyLimit limits the number of concurrent requests
      */
-    public DriveReindexOperation(FHIRBucketClient fhirClient, int maxConcurrentRequests, String tstampParam, int resourceCountParam) {
+    public DriveReindexOperation(FHIRBucketClient fhirClient, AdaptiveConcurrencyLimit concurrencyLimit, String tstampParam, int resourceCountParam) {
         this.fhirClient = fhirClient;
-        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.concurrencyLimit = concurrencyLimit;
+        this.pool = ThreadPools.newBoundedThreadPool(concurrencyLimit.getMaxLimit());
 
         Parameters parameters = Parameters.builder()
                 .parameter(Parameter.builder().name(str("tstamp")).value(str(tstampParam)).build())
@@ -122,7 +125,7 @@ public class DriveReindexOperation {
                         logger.info("Test probe successful - filling worker pool");
                         this.active = true;
 
-                        for (int i=0; i<this.maxConcurrentRequests && this.running && this.active; i++) {
+                        for (int i=0; i<this.concurrencyLimit.getMaxLimit() && this.running && this.active; i++) {
                             this.currentlyRunning.addAndGet(1);
                             pool.execute(() -> callReindexOperation());
 
@@ -166,6 +169,9 @@ public class DriveReindexOperation {
     public void signalStop() {
         this.running = false;
 
+        // wake up any workers waiting for capacity
+        this.concurrencyLimit.signalStop();
+
         // make sure the pool doesn't start new work
         pool.shutdown();
     }
@@ -199,7 +205,27 @@ public class DriveReindexOperation {
      */
     private void callReindexOperation() {
         while (this.running && this.active) {
-            boolean ok = callOnce();
+            // workers beyond the current limit wait here for their turn
+            if (!this.concurrencyLimit.acquire(1)) {
+                break;
+            }
+
+            if (!this.active) {
+                // another worker failed while we were waiting
+                this.concurrencyLimit.cancel(1);
+                break;
+            }
+
+            boolean ok = false;
+            long start = System.nanoTime();
+            try {
+                ok = callOnce();
+            } catch (Exception x) {
+                logger.log(Level.SEVERE, "reindex operation failed", x);
+            } finally {
+                this.concurrencyLimit.release(1, System.nanoTime() - start, ok);
+            }
+
             if (!ok) {
                 // stop everything on the first failure
                 this.active = false;
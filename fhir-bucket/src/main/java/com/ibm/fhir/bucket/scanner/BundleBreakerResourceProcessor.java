@@ -14,9 +14,9 @@ import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.ibm.fhir.bucket.api.IObjectStore;
 import com.ibm.fhir.bucket.api.IResourceEntryProcessor;
 import com.ibm.fhir.bucket.api.ResourceEntry;
-import com.ibm.fhir.bucket.cos.COSClient;
 import com.ibm.fhir.model.format.Format;
 import com.ibm.fhir.model.generator.FHIRGenerator;
 import com.ibm.fhir.model.generator.exception.FHIRGeneratorException;
@@ -42,7 +42,7 @@ public class BundleBreakerResourceProcessor implements IResourceEntryProcessor {
     private static final String LOCAL_REF_PREFIX = "urn:";
     
     // to write the processed bundles back to COS
-    private final COSClient cosClient;
+    private final IObjectStore cosClient;
 
     // The maximum number of resources we allow into a single bundle
     private final int maxBundleSize;
@@ -59,7 +59,7 @@ public class BundleBreakerResourceProcessor implements IResourceEntryProcessor {
      * @param maxBundleSize max number of resources we want in a bundle
      * @param targetPrefix target location (COS key prefix)
      */
-    public BundleBreakerResourceProcessor(COSClient cosClient, int maxBundleSize, String targetBucket, String targetPrefix) {
+    public BundleBreakerResourceProcessor(IObjectStore cosClient, int maxBundleSize, String targetBucket, String targetPrefix) {
         this.cosClient = cosClient;
         this.maxBundleSize = maxBundleSize;
         this.targetBucket = targetBucket;
@@ -67,7 +67,7 @@ public class BundleBreakerResourceProcessor implements IResourceEntryProcessor {
     }
 
     @Override
-    public void process(ResourceEntry re) {
+    public boolean process(ResourceEntry re) {
         boolean success = false;
         try {
             Resource r = re.getResource();
@@ -81,6 +81,9 @@ public class BundleBreakerResourceProcessor implements IResourceEntryProcessor {
             // Signal the processing is complete for this entry
             re.getJob().operationComplete(success);
         }
+
+        // no requests to the FHIR server here, so nothing to report
+        return true;
     }
     
     /**
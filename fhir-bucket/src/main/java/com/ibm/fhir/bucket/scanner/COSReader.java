@@ -14,6 +14,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -26,10 +27,11 @@ import java.util.stream.Stream;
 import com.ibm.fhir.bucket.api.BucketLoaderJob;
 import com.ibm.fhir.bucket.api.BucketPath;
 import com.ibm.fhir.bucket.api.FileType;
+import com.ibm.fhir.bucket.api.IObjectStore;
+import com.ibm.fhir.bucket.api.LineBlock;
 import com.ibm.fhir.bucket.api.ResourceBundleError;
 import com.ibm.fhir.bucket.api.ResourceEntry;
 import com.ibm.fhir.bucket.api.ResourceRef;
-import com.ibm.fhir.bucket.cos.COSClient;
 import com.ibm.fhir.exception.FHIROperationException;
 import com.ibm.fhir.model.format.Format;
 import com.ibm.fhir.model.parser.FHIRParser;
@@ -53,7 +55,7 @@ public class COSReader {
     private final FileType fileType;
     
     // Abstraction of our connection to cloud object storage
-    private final COSClient client;
+    private final IObjectStore client;
 
     // The handler which processes resources we've read from COS
     private final Consumer<ResourceEntry> resourceHandler;
@@ -94,6 +96,9 @@ public class COSReader {
     private final double bundleCostFactor;
     
     private final List<BucketPath> bucketPaths;
+
+    // Split each NDJSON object into up to this many blocks to be parsed in parallel, if the store supports it
+    private final int ndjsonParallelism;
     
     /**
      * Public constructor
@@ -105,9 +110,13 @@ public class COSReader {
      * @param da
      * @param incremental
      * @param recycleSeconds
+     * @param incrementalExact
+     * @param bundleCostFactor
+     * @param bucketPaths
+     * @param ndjsonParallelism the max number of blocks each NDJSON object is split into for parallel parsing
      */
-    public COSReader(ExecutorService commonPool, FileType fileType, COSClient client, Consumer<ResourceEntry> resourceHandler, int maxInflight, DataAccess da, boolean incremental, int recycleSeconds, boolean incrementalExact,
-        double bundleCostFactor, Collection<BucketPath> bucketPaths) {
+    public COSReader(ExecutorService commonPool, FileType fileType, IObjectStore client, Consumer<ResourceEntry> resourceHandler, int maxInflight, DataAccess da, boolean incremental, int recycleSeconds, boolean incrementalExact,
+        double bundleCostFactor, Collection<BucketPath> bucketPaths, int ndjsonParallelism) {
         this.pool = commonPool;
         this.fileType = fileType;
         this.client = client;
@@ -120,6 +129,7 @@ public class COSReader {
         this.incrementalExact = incrementalExact;
         this.bundleCostFactor = bundleCostFactor;
         this.bucketPaths = new ArrayList<>(bucketPaths);
+        this.ndjsonParallelism = ndjsonParallelism;
     }
     
     /**
@@ -319,8 +329,18 @@ public class COSReader {
             job.setProcessingStartTime(System.nanoTime());
             switch (job.getFileType()) {
             case NDJSON:
-                // Process the object using our NDJSON reader
-                client.process(job.getBucketName(), job.getObjectKey(), br -> processNDJSON(job, br));
+                // If the store can split the object into blocks of lines, we can parse them in parallel
+                List<LineBlock> blocks = null;
+                if (this.ndjsonParallelism > 1) {
+                    blocks = client.splitLines(job.getBucketName(), job.getObjectKey(), this.ndjsonParallelism);
+                }
+
+                if (blocks != null) {
+                    processNDJSON(job, blocks);
+                } else {
+                    // Process the object using our NDJSON reader
+                    client.process(job.getBucketName(), job.getObjectKey(), br -> processNDJSON(job, br));
+                }
                 break;
             case JSON:
                 // Process the object using our JSON reader
@@ -386,16 +406,7 @@ public class COSReader {
      */
     public void processNDJSON(final BucketLoaderJob job, final BufferedReader br) {
 
-        int skipLines = 0;
-        if (this.incremental && !incrementalExact) {
-            Integer maxLineNumber = getLastProcessedLineNumber(job);
-            if (maxLineNumber != null) {
-                // line numbers start at 0
-                skipLines = maxLineNumber + 1;
-                
-                logger.info(job.toString() + "; previously processed, so skipping lines: " + skipLines);
-            }
-        }
+        final int skipLines = getSkipLines(job);
         
         // Reading as a continuous stream appears to be problematic,
         // so we have to take a line-based approach
@@ -439,6 +450,91 @@ public class COSReader {
         }
     }
 
+
+    /**
+     * Process the NDJSON object which has been split into blocks of lines. Each block
+     * is parsed in its own pool thread, and the job's file processing is complete when
+     * the last block is done.
+     * @param job
+     * @param blocks
+     */
+    private void processNDJSON(final BucketLoaderJob job, final List<LineBlock> blocks) {
+        final int skipLines = getSkipLines(job);
+        if (blocks.isEmpty()) {
+            job.fileProcessingComplete();
+            return;
+        }
+
+        logger.info(job.toString() + "; parsing " + blocks.size() + " blocks in parallel");
+        final AtomicInteger remaining = new AtomicInteger(blocks.size());
+        for (LineBlock block: blocks) {
+            if (block.getFirstLineNumber() + block.getLineCount() <= skipLines) {
+                // all the lines in this block were processed by a previous run
+                if (remaining.decrementAndGet() == 0) {
+                    job.fileProcessingComplete();
+                }
+                continue;
+            }
+
+            pool.submit(() -> {
+                try {
+                    block.forEachLine((line, lineNumber) -> {
+                        if (running && lineNumber >= skipLines && !line.isEmpty()) {
+                            processLine(job, line, lineNumber);
+                        }
+                    });
+                } catch (Exception x) {
+                    logger.log(Level.SEVERE, "Error processing block at line " + block.getFirstLineNumber() + " of job: " + job.toString(), x);
+                } finally {
+                    if (remaining.decrementAndGet() == 0) {
+                        job.fileProcessingComplete();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Parse and process a single line of an NDJSON object
+     * @param job
+     * @param line
+     * @param lineNumber
+     */
+    private void processLine(final BucketLoaderJob job, final String line, final int lineNumber) {
+        // Skip this line if we can find logical ids have already been recorded for it
+        // (from a previous load run)
+        if (incrementalExact && getLogicalIdsForLine(job, lineNumber).size() > 0) {
+            return;
+        }
+
+        try {
+            process(job, FHIRParser.parser(Format.JSON).parse(new StringReader(line)), lineNumber, line);
+        } catch (FHIRParserException x) {
+            logger.log(Level.WARNING, line, x);
+            ResourceBundleError error = new ResourceBundleError(lineNumber, "Parse error: " + x.getMessage());
+            dataAccess.recordErrors(job.getResourceBundleLoadId(), lineNumber, Collections.singletonList(error));
+        }
+    }
+
+    /**
+     * Get the number of lines at the start of the object we can skip because they were
+     * processed by a previous run. Always 0 unless this is an incremental load.
+     * @param job
+     * @return
+     */
+    private int getSkipLines(final BucketLoaderJob job) {
+        int skipLines = 0;
+        if (this.incremental && !incrementalExact) {
+            Integer maxLineNumber = getLastProcessedLineNumber(job);
+            if (maxLineNumber != null) {
+                // line numbers start at 0
+                skipLines = maxLineNumber + 1;
+                
+                logger.info(job.toString() + "; previously processed, so skipping lines: " + skipLines);
+            }
+        }
+        return skipLines;
+    }
     
     /**
      * Process the resource parsed from the input stream
@@ -39,6 +39,9 @@ public class FHIRClientResourceProcessor implements IResourceEntryProcessor {
     // Nanos in a millisecond
     private static final long NANOS_MS = 1000000;
 
+    // Not defined by HttpStatus
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
     // Client for making FHIR server requests
     private final FHIRBucketClient fhirClient;
 
@@ -55,9 +58,11 @@ public class FHIRClientResourceProcessor implements IResourceEntryProcessor {
     }
 
     @Override
-    public void process(ResourceEntry re) {
+    public boolean process(ResourceEntry re) {
         
         boolean success = false;
+        // false if the failure indicates the server is struggling to keep up
+        boolean healthy = false;
         try {
             Resource resource = re.getResource();
             final String resourceType = resource.getClass().getSimpleName();
@@ -70,6 +75,8 @@ public class FHIRClientResourceProcessor implements IResourceEntryProcessor {
             PostResource post = new PostResource(resource);
             FhirServerResponse response = post.run(fhirClient);
             long end = System.nanoTime();
+            healthy = response.getStatusCode() < HttpStatus.SC_INTERNAL_SERVER_ERROR
+                    && response.getStatusCode() != SC_TOO_MANY_REQUESTS;
             switch (response.getStatusCode()) {
             case HttpStatus.SC_OK:
             case HttpStatus.SC_CREATED:
@@ -114,6 +121,7 @@ public class FHIRClientResourceProcessor implements IResourceEntryProcessor {
             // Signal the processing is complete for this entry
             re.getJob().operationComplete(success);
         }
+        return healthy;
     }
 
     /**
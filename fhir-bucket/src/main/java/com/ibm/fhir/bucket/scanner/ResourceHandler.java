@@ -7,15 +7,13 @@
 package com.ibm.fhir.bucket.scanner;
 
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.ibm.fhir.bucket.api.IResourceEntryProcessor;
 import com.ibm.fhir.bucket.api.IResourceHandler;
 import com.ibm.fhir.bucket.api.ResourceEntry;
+import com.ibm.fhir.bucket.concurrency.AdaptiveConcurrencyLimit;
 
 /**
  * Calls the FHIR REST API to create resources, supported by a thread pool
@@ -23,19 +21,12 @@ import com.ibm.fhir.bucket.api.ResourceEntry;
 public class ResourceHandler implements IResourceHandler {
     private static final Logger logger = Logger.getLogger(ResourceHandler.class.getName());
     
-    // The number of concurrent FHIR requests we allow
-    private final int maxConcurrentFhirRequests;
+    // Flow control for the FHIR requests, so we don't overload the thread pool queue or the server
+    private final AdaptiveConcurrencyLimit concurrencyLimit;
     
     // The thread pool
     private final ExecutorService pool;
 
-    // flow control so we don't overload the thread pool queue
-    private final Lock lock = new ReentrantLock();
-    private final Condition capacityCondition = lock.newCondition();
-    
-    // how many resources are currently queued or being processed
-    private int inflight;
-    
     // flag used to handle shutdown
     private volatile boolean running = true;
 
@@ -44,10 +35,12 @@ public class ResourceHandler implements IResourceHandler {
     
     /**
      * Public constructor
-     * @param poolSize
+     * @param commonPool
+     * @param concurrencyLimit limits the cost of the entries being processed at the same time
+     * @param rep
      */
-    public ResourceHandler(ExecutorService commonPool, int maxConcurrentFhirRequests, IResourceEntryProcessor rep) {
-        this.maxConcurrentFhirRequests = maxConcurrentFhirRequests;
+    public ResourceHandler(ExecutorService commonPool, AdaptiveConcurrencyLimit concurrencyLimit, IResourceEntryProcessor rep) {
+        this.concurrencyLimit = concurrencyLimit;
         this.pool = commonPool;
         this.resourceEntryProcessor = rep;
     }
@@ -62,12 +55,7 @@ public class ResourceHandler implements IResourceHandler {
         }
         
         // Wake up anything which may be blocked
-        lock.lock();
-        try {
-            capacityCondition.signalAll();
-        } finally {
-            lock.unlock();
-        }
+        concurrencyLimit.signalStop();
     }
     
     /**
@@ -83,41 +71,24 @@ public class ResourceHandler implements IResourceHandler {
     public boolean process(ResourceEntry entry) {
         boolean result = false;
 
-        lock.lock();
-        try {
-            while (running && inflight >= maxConcurrentFhirRequests) {
-                capacityCondition.await();
-            }
-            
-            if (running) {
-                inflight += entry.getCost(); // Grab the capacity while we're locked
-                entry.getJob().addEntry(); // Add to row count so we can track when the job completes
-                result = true;
-            }
-        } catch (InterruptedException x) {
-            logger.info("Interrupted while waiting for capacity");
-        }
-        finally {
-            lock.unlock();
+        if (running && concurrencyLimit.acquire(entry.getCost())) {
+            entry.getJob().addEntry(); // Add to row count so we can track when the job completes
+            result = true;
         }
 
         // only submit to the pool if we have permission
-        if (running && result) {
+        if (result) {
             pool.submit(() -> {
+                boolean success = false;
+                long start = System.nanoTime();
                 try {
-                    this.resourceEntryProcessor.process(entry);
+                    success = this.resourceEntryProcessor.process(entry);
                 } catch (Exception x) {
                     // don't let exceptions propagate to the thread-pool
                     logger.log(Level.SEVERE, entry.toString(), x);
                 } finally {
-                    lock.lock();
-                    try {
-                        // Free up the capacity consumed by this entry
-                        inflight -= entry.getCost();
-                        capacityCondition.signalAll();
-                    } finally {
-                        lock.unlock();
-                    }
+                    // Free up the capacity consumed by this entry
+                    concurrencyLimit.release(entry.getCost(), System.nanoTime() - start, success);
                 }
             });
         }
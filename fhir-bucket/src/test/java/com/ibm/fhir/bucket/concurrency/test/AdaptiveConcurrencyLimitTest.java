@@ -0,0 +1,102 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bucket.concurrency.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.bucket.concurrency.AdaptiveConcurrencyLimit;
+
+/**
+ * Unit tests for the {@link AdaptiveConcurrencyLimit}
+ */
+public class AdaptiveConcurrencyLimitTest {
+    private static final long MS = 1000000L;
+
+    /**
+     * Run one window of requests, using all the capacity available
+     * @param limit
+     * @param elapsedNanos
+     * @param success
+     */
+    private void runWindow(AdaptiveConcurrencyLimit limit, long elapsedNanos, boolean success) {
+        int n = limit.getLimit();
+        for (int i = 0; i < n; i++) {
+            assertTrue(limit.acquire(1));
+        }
+        for (int i = 0; i < n; i++) {
+            limit.release(1, elapsedNanos, success);
+        }
+        // make sure the window is complete even for small limits
+        for (int i = n; i < 5; i++) {
+            assertTrue(limit.acquire(1));
+            limit.release(1, elapsedNanos, success);
+        }
+    }
+
+    @Test
+    public void testIncreaseWhileLatencyFlat() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("test", 4, 1, 20);
+        for (int i = 0; i < 50; i++) {
+            runWindow(limit, 10 * MS, true);
+        }
+        assertEquals(limit.getLimit(), 20);
+        assertEquals(limit.getInflight(), 0);
+    }
+
+    @Test
+    public void testStopIncreasingWhenLatencyRises() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("test", 4, 1, 100);
+        for (int i = 0; i < 10; i++) {
+            runWindow(limit, 10 * MS, true);
+        }
+        int reached = limit.getLimit();
+        assertTrue(reached > 4);
+
+        // server starts queueing
+        for (int i = 0; i < 5; i++) {
+            runWindow(limit, 30 * MS, true);
+        }
+        assertTrue(limit.getLimit() < reached);
+    }
+
+    @Test
+    public void testBackOffOnErrors() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("test", 16, 2, 32);
+        runWindow(limit, 10 * MS, false);
+        assertTrue(limit.getLimit() <= 8);
+        runWindow(limit, 10 * MS, false);
+        runWindow(limit, 10 * MS, false);
+        runWindow(limit, 10 * MS, false);
+        assertEquals(limit.getLimit(), 2);
+    }
+
+    @Test
+    public void testFixed() {
+        AdaptiveConcurrencyLimit limit = AdaptiveConcurrencyLimit.fixed("test", 3);
+        assertFalse(limit.isAdaptive());
+        runWindow(limit, 10 * MS, false);
+        runWindow(limit, 10 * MS, true);
+        assertEquals(limit.getLimit(), 3);
+    }
+
+    @Test
+    public void testCostlyRequestWhenIdle() {
+        AdaptiveConcurrencyLimit limit = AdaptiveConcurrencyLimit.fixed("test", 2);
+        // more than the limit, but nothing else is running
+        assertTrue(limit.acquire(5));
+        assertEquals(limit.getInflight(), 5);
+        limit.cancel(5);
+        assertEquals(limit.getInflight(), 0);
+
+        limit.signalStop();
+        assertFalse(limit.acquire(1));
+    }
+}
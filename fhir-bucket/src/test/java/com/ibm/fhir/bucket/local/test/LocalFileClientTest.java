@@ -0,0 +1,134 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bucket.local.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.bucket.api.CosItem;
+import com.ibm.fhir.bucket.api.FileType;
+import com.ibm.fhir.bucket.api.LineBlock;
+import com.ibm.fhir.bucket.local.LocalFileClient;
+
+/**
+ * Unit tests for the {@link LocalFileClient}
+ */
+public class LocalFileClientTest {
+    private static final String BUCKET = "bucket1";
+    private static final int LINE_COUNT = 40000;
+
+    private Path baseDir;
+    private LocalFileClient client;
+
+    @BeforeClass
+    public void setup() throws IOException {
+        baseDir = Files.createTempDirectory("fhirbucket");
+        Path bucket = Files.createDirectories(baseDir.resolve(BUCKET).resolve("dir"));
+
+        // Big enough to be split, with lines of varying length and a multi-byte character
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < LINE_COUNT; i++) {
+            content.append(line(i)).append('\n');
+        }
+        Files.write(bucket.resolve("big.ndjson"), content.toString().getBytes(StandardCharsets.UTF_8));
+        Files.write(bucket.resolve("small.ndjson"), "{\"a\":1}\r\n\r\n{\"b\":2}".getBytes(StandardCharsets.UTF_8));
+        Files.write(bucket.resolve("empty.ndjson"), new byte[0]);
+
+        client = new LocalFileClient(baseDir.toString());
+    }
+
+    @AfterClass
+    public void teardown() throws IOException {
+        try (Stream<Path> paths = Files.walk(baseDir)) {
+            for (Path p: paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    private static String line(int i) {
+        StringBuilder result = new StringBuilder("{\"resourceType\":\"Patient\",\"id\":\"p" + i + "\",\"name\":\"é");
+        for (int j = 0; j < i % 97; j++) {
+            result.append('x');
+        }
+        return result.append("\"}").toString();
+    }
+
+    @Test
+    public void testSplit() {
+        List<LineBlock> blocks = client.splitLines(BUCKET, "dir/big.ndjson", 4);
+        assertEquals(blocks.size(), 4);
+
+        List<String> lines = new ArrayList<>();
+        int expectedFirstLine = 0;
+        for (LineBlock block: blocks) {
+            assertEquals(block.getFirstLineNumber(), expectedFirstLine);
+            expectedFirstLine += block.getLineCount();
+            block.forEachLine((line, lineNumber) -> {
+                assertEquals(lineNumber, lines.size());
+                lines.add(line);
+            });
+        }
+
+        assertEquals(lines.size(), LINE_COUNT);
+        for (int i = 0; i < LINE_COUNT; i++) {
+            assertEquals(lines.get(i), line(i));
+        }
+    }
+
+    @Test
+    public void testSmallFile() {
+        // too small to be worth splitting
+        List<LineBlock> blocks = client.splitLines(BUCKET, "dir/small.ndjson", 4);
+        assertEquals(blocks.size(), 1);
+        assertEquals(blocks.get(0).getLineCount(), 3);
+
+        List<String> lines = new ArrayList<>();
+        blocks.get(0).forEachLine((line, lineNumber) -> lines.add(lineNumber + ":" + line));
+        assertEquals(lines.size(), 3);
+        assertEquals(lines.get(0), "0:{\"a\":1}");
+        assertEquals(lines.get(1), "1:");
+        assertEquals(lines.get(2), "2:{\"b\":2}");
+
+        assertTrue(client.splitLines(BUCKET, "dir/empty.ndjson", 4).isEmpty());
+    }
+
+    @Test
+    public void testScan() {
+        List<CosItem> items = new ArrayList<>();
+        client.scan(BUCKET, "dir/", key -> FileType.NDJSON, items::add);
+
+        // empty files are ignored
+        List<String> names = items.stream().map(CosItem::getItemName).sorted().collect(Collectors.toList());
+        assertEquals(names.size(), 2);
+        assertEquals(names.get(0), "dir/big.ndjson");
+        assertEquals(names.get(1), "dir/small.ndjson");
+
+        items.clear();
+        client.scan(BUCKET, "other/", key -> FileType.NDJSON, items::add);
+        assertTrue(items.isEmpty());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testEscape() {
+        client.process(BUCKET, "../../outside.ndjson", br -> {});
+    }
+}
@@ -41,6 +41,7 @@ import com.ibm.fhir.model.resource.Patient;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.util.ModelSupport;
 import com.ibm.fhir.persistence.FHIRPersistence;
+import com.ibm.fhir.persistence.ResourcePayload;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContextFactory;
 import com.ibm.fhir.persistence.helper.FHIRPersistenceHelper;
@@ -194,37 +195,30 @@ public class ChunkReader extends AbstractItemReader {
                         FHIRTransactionHelper txn = new FHIRTransactionHelper(fhirPersistence.getTransaction());
                         FHIRPersistenceContext persistenceContext = FHIRPersistenceContextFactory.createPersistenceContext(null, searchContext);
 
-                        List<Resource> resources;
+                        // The stored JSON is copied as-is, so the resources are not parsed and re-generated.
+                        List<ResourcePayload> payloads;
                         txn.begin();
                         try {
-                            resources = fhirPersistence.search(persistenceContext, resourceType).getResource();
+                            payloads = fhirPersistence.searchPayloads(persistenceContext, resourceType);
                         } finally {
                             txn.end();
                         }
                         compartmentPageNum++;
 
-                        for (Resource res : resources) {
-                            if (res == null || (isDoDuplicationCheck && loadedResourceIds.contains(res.getId()))) {
+                        for (ResourcePayload payload : payloads) {
+                            if (isDoDuplicationCheck && loadedResourceIds.contains(payload.getLogicalId())) {
                                 continue;
                             }
                             try {
                                 // No need to fill buffer for parquet because we're letting spark write to COS;
                                 // we don't need to control the Multi-part upload like in the NDJSON case
                                 if (!FHIRMediaType.APPLICATION_PARQUET.equals(fhirExportFormat)) {
-                                    FHIRGenerator.generator(Format.JSON).generate(res, chunkData.getBufferStream());
+                                    payload.writeTo(chunkData.getBufferStream());
                                     chunkData.getBufferStream().write(Constants.NDJSON_LINESEPERATOR);
                                 }
                                 resSubTotal++;
                                 if (isDoDuplicationCheck) {
-                                    loadedResourceIds.add(res.getId());
-                                }
-                            } catch (FHIRGeneratorException e) {
-                                if (res.getId() != null) {
-                                    logger.log(Level.WARNING, "fillChunkDataBuffer: Error while writing resources with id '"
-                                            + res.getId() + "'", e);
-                                } else {
-                                    logger.log(Level.WARNING,
-                                            "fillChunkDataBuffer: Error while writing resources with unknown id", e);
+                                    loadedResourceIds.add(payload.getLogicalId());
                                 }
                             } catch (IOException e) {
                                 logger.warning("fillChunkDataBuffer: chunkDataBuffer written error!");
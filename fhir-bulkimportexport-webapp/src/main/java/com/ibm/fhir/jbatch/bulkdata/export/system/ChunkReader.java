@@ -31,12 +31,10 @@ import com.ibm.fhir.jbatch.bulkdata.common.BulkDataUtils;
 import com.ibm.fhir.jbatch.bulkdata.common.Constants;
 import com.ibm.fhir.jbatch.bulkdata.export.common.CheckPointUserData;
 import com.ibm.fhir.jbatch.bulkdata.export.common.TransientUserData;
-import com.ibm.fhir.model.format.Format;
-import com.ibm.fhir.model.generator.FHIRGenerator;
-import com.ibm.fhir.model.generator.exception.FHIRGeneratorException;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.util.ModelSupport;
 import com.ibm.fhir.persistence.FHIRPersistence;
+import com.ibm.fhir.persistence.ResourcePayload;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContextFactory;
 import com.ibm.fhir.persistence.helper.FHIRPersistenceHelper;
@@ -134,6 +132,10 @@ public class ChunkReader extends AbstractItemReader {
         super();
     }
 
+    /**
+     * Counts the resources of the current page for a parquet export; no need to fill the buffer for parquet because
+     * we're letting spark write to COS, we don't need to control the Multi-part upload like in the NDJSON case.
+     */
     private void fillChunkDataBuffer(List<Resource> resources) throws Exception {
         TransientUserData chunkData = (TransientUserData) stepCtx.getTransientUserData();
         int resSubTotal = 0;
@@ -146,32 +148,47 @@ public class ChunkReader extends AbstractItemReader {
             if (res == null || (isDoDuplicationCheck && loadedResourceIds.contains(res.getId()))) {
                 continue;
             }
+            resSubTotal++;
+            if (isDoDuplicationCheck && res.getId() != null) {
+                loadedResourceIds.add(res.getId());
+            }
+        }
+        updateChunkData(chunkData, resSubTotal);
+    }
+
+    /**
+     * Copies the stored JSON of the resources of the current page into the buffer for an NDJSON export,
+     * without parsing and re-generating each resource.
+     */
+    private void fillChunkDataBufferWithPayloads(List<ResourcePayload> payloads) throws Exception {
+        TransientUserData chunkData = (TransientUserData) stepCtx.getTransientUserData();
+        int resSubTotal = 0;
+        if (chunkData == null) {
+            logger.warning("fillChunkDataBuffer: chunkData is null, this should never happen!");
+            throw new Exception("fillChunkDataBuffer: chunkData is null, this should never happen!");
+        }
+
+        for (ResourcePayload payload : payloads) {
+            if (isDoDuplicationCheck && loadedResourceIds.contains(payload.getLogicalId())) {
+                continue;
+            }
 
             try {
-                // No need to fill buffer for parquet because we're letting spark write to COS;
-                // we don't need to control the Multi-part upload like in the NDJSON case
-                if (!FHIRMediaType.APPLICATION_PARQUET.equals(fhirExportFormat)) {
-                    FHIRGenerator.generator(Format.JSON).generate(res, chunkData.getBufferStream());
-                    chunkData.getBufferStream().write(Constants.NDJSON_LINESEPERATOR);
-                }
+                payload.writeTo(chunkData.getBufferStream());
+                chunkData.getBufferStream().write(Constants.NDJSON_LINESEPERATOR);
                 resSubTotal++;
-                if (isDoDuplicationCheck && res.getId() != null) {
-                    loadedResourceIds.add(res.getId());
-                }
-            } catch (FHIRGeneratorException e) {
-                // TODO write OperationOutcome to COS for these errors
-                if (res.getId() != null) {
-                    logger.log(Level.WARNING, "fillChunkDataBuffer: Error while writing resources with id '"
-                            + res.getId() + "'", e);
-                } else {
-                    logger.log(Level.WARNING,
-                            "fillChunkDataBuffer: Error while writing resources with no id", e);
+                if (isDoDuplicationCheck) {
+                    loadedResourceIds.add(payload.getLogicalId());
                 }
             } catch (IOException e) {
                 logger.warning("fillChunkDataBuffer: chunkDataBuffer written error!");
                 throw e;
             }
         }
+        updateChunkData(chunkData, resSubTotal);
+    }
+
+    private void updateChunkData(TransientUserData chunkData, int resSubTotal) {
         chunkData.setCurrentUploadResourceNum(chunkData.getCurrentUploadResourceNum() + resSubTotal);
         chunkData.setCurrentUploadSize(chunkData.getCurrentUploadSize() + chunkData.getBufferStream().size());
         chunkData.setTotalResourcesNum(chunkData.getTotalResourcesNum() + resSubTotal);
@@ -224,11 +241,16 @@ public class ChunkReader extends AbstractItemReader {
         searchContext.setPageSize(pageSize);
         searchContext.setPageNumber(pageNum);
         List<Resource> resources = null;
+        List<ResourcePayload> payloads = null;
         FHIRTransactionHelper txn = new FHIRTransactionHelper(fhirPersistence.getTransaction());
         txn.begin();
         try {
             persistenceContext = FHIRPersistenceContextFactory.createPersistenceContext(null, searchContext);
-            resources = fhirPersistence.search(persistenceContext, resourceType).getResource();
+            if (FHIRMediaType.APPLICATION_PARQUET.equals(fhirExportFormat)) {
+                resources = fhirPersistence.search(persistenceContext, resourceType).getResource();
+            } else {
+                payloads = fhirPersistence.searchPayloads(persistenceContext, resourceType);
+            }
         } finally {
             txn.end();
         }
@@ -262,11 +284,16 @@ public class ChunkReader extends AbstractItemReader {
                 logger.fine("readItem: loaded " + resources.size() + " resources");
             }
             fillChunkDataBuffer(resources);
+        } else if (payloads != null) {
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("readItem: loaded " + payloads.size() + " resources");
+            }
+            fillChunkDataBufferWithPayloads(payloads);
         } else {
             logger.fine("readItem: End of reading!");
         }
 
-        return resources;
+        return (resources != null) ? resources : payloads;
     }
 
     @Override
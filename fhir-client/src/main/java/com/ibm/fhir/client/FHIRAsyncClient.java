@@ -0,0 +1,201 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.client;
+
+import java.util.concurrent.CompletionStage;
+
+import com.ibm.fhir.model.resource.Bundle;
+import com.ibm.fhir.model.resource.Resource;
+
+/**
+ * This interface provides an asynchronous client API for invoking the FHIR Server's REST API.
+ *
+ * <p>Each operation returns immediately with a CompletionStage that is completed when the response arrives, so
+ * a few threads can keep many requests in flight. Requests are sent over a pool of persistent connections by a
+ * non-blocking HTTP transport. The number of requests in flight is bounded by {@link #PROPNAME_MAX_IN_FLIGHT}: when
+ * the window is full, the operations queue the request and return without blocking the calling thread; the request
+ * is sent when a previous one frees its slot.
+ *
+ * <p>The response body is not read before the stage completes; the resource is parsed from the response stream
+ * by {@link FHIRResponse#getResource(Class)}. A request holds its slot of the window until its response entity has
+ * been read or the response (see {@link FHIRResponse#getResponse()}) closed, so every response with a body must be
+ * either read or closed.
+ *
+ * <p>An FHIRAsyncClient is configured with the same properties as an {@link FHIRClient}, plus the properties
+ * defined below, and must be closed when no longer needed.
+ */
+public interface FHIRAsyncClient extends AutoCloseable {
+
+    /**
+     * The maximum number of requests in flight. Defaults to 64.
+     */
+    public static final String PROPNAME_MAX_IN_FLIGHT = "fhirclient.async.maxInFlight";
+
+    /**
+     * The maximum number of pooled connections. Defaults to the maximum number of requests in flight.
+     */
+    public static final String PROPNAME_MAX_CONNECTIONS = "fhirclient.async.maxConnections";
+
+    /**
+     * The maximum number of pooled connections per host. Defaults to the maximum number of pooled connections.
+     */
+    public static final String PROPNAME_MAX_CONNECTIONS_PER_HOST = "fhirclient.async.maxConnectionsPerHost";
+
+    /**
+     * The time, in milliseconds, after which an idle pooled connection is closed. Defaults to 60,000ms (60s)
+     */
+    public static final String PROPNAME_CONNECTION_MAX_IDLE = "fhirclient.async.connectionMaxIdle";
+
+    /**
+     * The time, in milliseconds, after which an attempt to open a connection fails. Defaults to 10,000ms (10s).
+     * The time to wait for a response is set by {@link FHIRClient#PROPNAME_HTTP_TIMEOUT}.
+     */
+    public static final String PROPNAME_CONNECT_TIMEOUT = "fhirclient.async.connectTimeout";
+
+    /**
+     * Invokes the 'metadata' FHIR REST API operation.
+     * @param headers an optional list of request headers to be added to the request
+     * @return a stage completed with the FHIRResponse that contains a Conformance object which describes the
+     * FHIR Server's capabilities
+     */
+    CompletionStage<FHIRResponse> metadata(FHIRRequestHeader... headers);
+
+    /**
+     * Invokes the 'create' FHIR REST API operation.
+     * @param resource the FHIR resource to be created
+     * @param headers an optional list of request headers to be added to the request
+     * @return a stage completed with the FHIRResponse that contains the results of the 'create' operation
+     */
+    CompletionStage<FHIRResponse> create(Resource resource, FHIRRequestHeader... headers);
+
+    /**
+     * Invokes the 'conditional create' FHIR REST API operation.
+     * @param resource the FHIR resource to be created
+     * @param parameters search-related query parameters to be included in the request
+     * @param headers an optional list of request headers to be added to the request
+     * @return a stage completed with the FHIRResponse that contains the results of the 'conditional create' operation
+     */
+    CompletionStage<FHIRResponse> conditionalCreate(Resource resource, FHIRParameters parameters, FHIRRequestHeader... headers);
+
+    /**
+     * Invokes the 'update' FHIR REST API operation.
+     * @param resource the resource to be updated
+     * @param headers an optional list of request headers to be added to the request
+     * @return a stage completed with the FHIRResponse that contains the results of the 'update' operation
+     */
+    CompletionStage<FHIRResponse> update(Resource resource, FHIRRequestHeader... headers);
+
+    /**
+     * Invokes the 'conditional update' FHIR REST API operation.
+     * @param resource the resource to be updated
+     * @param parameters search-related query parameters to be included in the request
+     * @param headers an optional list of request headers to be added to the request
+     * @return a stage completed with the FHIRResponse that contains the results of the 'conditional update' operation
+     */
+    CompletionStage<FHIRResponse> conditionalUpdate(Resource resource, FHIRParameters parameters, FHIRRequestHeader... headers);
+
+    /**
+     * Invokes the 'delete' FHIR REST API operation.
+     * @param resourceType a string representing the name of the resource type
+     * to be deleted (e.g. "Patient")
+     * @param resourceId the id of the resource to be deleted
+     * @param headers an optional list of request headers to be added to the request
+     * @return a stage completed with the FHIRResponse that contains the results of the 'delete' operation
+     */
+    CompletionStage<FHIRResponse> delete(String resourceType, String resourceId, FHIRRequestHeader... headers);
+
+    /**
+     * Invokes the 'conditional delete' FHIR REST API operation.
+     * @param resourceType a string representing the name of the resource type
+     * to be deleted (e.g. "Patient")
+     * @param parameters search-related query parameters to be included in the request
+     * @param headers an optional list of request headers to be added to the request
+     * @return a stage completed with the FHIRResponse that contains the results of the 'conditional delete' operation
+     */
+    CompletionStage<FHIRResponse> conditionalDelete(String resourceType, FHIRParameters parameters, FHIRRequestHeader... headers);
+
+    /**
+     * Invokes the 'read' FHIR REST API operation.
+     * @param resourceType a string representing the name of the resource type
+     * to be retrieved (e.g. "Patient")
+     * @param resourceId the id of the resource to be retrieved
+     * @param headers an optional list of request headers to be added to the request
+     * @return a stage completed with the FHIRResponse that contains the results of the 'read' operation
+     */
+    CompletionStage<FHIRResponse> read(String resourceType, String resourceId, FHIRRequestHeader... headers);
+
+    /**
+     * Invokes the 'vread' FHIR REST API operation.
+     * @param resourceType a string representing the name of the resource type
+     * to be retrieved (e.g. "Patient")
+     * @param resourceId the id of the resource to be retrieved
+     * @param versionId the version id of the resource to be retrieved
+     * @param headers an optional list of request headers to be added to the request
+     * @return a stage completed with the FHIRResponse that contains the results of the 'vread' operation
+     */
+    CompletionStage<FHIRResponse> vread(String resourceType, String resourceId, String versionId, FHIRRequestHeader... headers);
+
+    /**
+     * Invokes the 'history' FHIR REST API operation.
+     * @param resourceType a string representing the name of the resource type
+     * to be retrieved (e.g. "Patient")
+     * @param resourceId the id of the resource to be retrieved
+     * @param parameters an optional collection of request parameters for the 'history' operation;
+     * may be specified as null if no parameters need to be passed to the 'history' operation
+     * @param headers an optional list of request headers to be added to the request
+     * @return a stage completed with the FHIRResponse that contains the results of the 'history' operation
+     */
+    CompletionStage<FHIRResponse> history(String resourceType, String resourceId, FHIRParameters parameters, FHIRRequestHeader... headers);
+
+    /**
+     * Invokes the 'search' FHIR REST API operation.
+     * @param resourceType a string representing the name of the resource type to search for (e.g. "Patient")
+     * @param parameters an optional collection of request parameters for the 'search' operation;
+     * may be specified as null if no parameters need to be passed to the 'search' operation
+     * @param headers an optional list of request headers to be added to the request
+     * @return a stage completed with the FHIRResponse that contains the results of the 'search' operation
+     */
+    CompletionStage<FHIRResponse> search(String resourceType, FHIRParameters parameters, FHIRRequestHeader... headers);
+
+    /**
+     * Invokes the 'search' FHIR REST API operation via HTTP POST.
+     * @param resourceType a string representing the name of the resource type to search for (e.g. "Patient")
+     * @param parameters an optional collection of request parameters for the 'search' operation;
+     * may be specified as null if no parameters need to be passed to the 'search' operation
+     * @param headers an optional list of request headers to be added to the request
+     * @return a stage completed with the FHIRResponse that contains the results of the 'search' operation
+     */
+    CompletionStage<FHIRResponse> _search(String resourceType, FHIRParameters parameters, FHIRRequestHeader... headers);
+
+    /**
+     * Invokes the 'batch/transaction' FHIR REST API operation for a request bundle of type 'batch'.
+     * @param bundle the Bundle containing the individual requests
+     * @param headers an optional list of request headers to be added to the request
+     * @return a stage completed with the FHIRResponse that contains the results of the 'batch' operation
+     */
+    CompletionStage<FHIRResponse> batch(Bundle bundle, FHIRRequestHeader... headers);
+
+    /**
+     * Invokes the 'batch/transaction' FHIR REST API operation for a request bundle of type 'transaction'.
+     * @param bundle the Bundle containing the individual requests
+     * @param headers an optional list of request headers to be added to the request
+     * @return a stage completed with the FHIRResponse that contains the results of the 'transaction' operation
+     */
+    CompletionStage<FHIRResponse> transaction(Bundle bundle, FHIRRequestHeader... headers);
+
+    /**
+     * @return the number of requests which hold a slot of the in-flight window: sent, but either not yet completed or
+     * completed with a response whose entity was neither read nor closed
+     */
+    int getInFlightCount();
+
+    /**
+     * Close the client and its connection pool; requests still in flight may fail
+     */
+    @Override
+    void close();
+}
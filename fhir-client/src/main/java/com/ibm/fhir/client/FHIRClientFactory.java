@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2016,2019
+ * (C) Copyright IBM Corp. 2016, 2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -8,10 +8,11 @@ package com.ibm.fhir.client;
 
 import java.util.Properties;
 
+import com.ibm.fhir.client.impl.FHIRAsyncClientImpl;
 import com.ibm.fhir.client.impl.FHIRClientImpl;
 
 /**
- * This factory can be used to obtain instances of the FHIRClient interface.
+ * This factory can be used to obtain instances of the FHIRClient and FHIRAsyncClient interfaces.
  */
 public class FHIRClientFactory {
 
@@ -21,4 +22,8 @@ public class FHIRClientFactory {
     public static FHIRClient getClient(Properties properties) throws Exception {
         return new FHIRClientImpl(properties);
     }
+
+    public static FHIRAsyncClient getAsyncClient(Properties properties) throws Exception {
+        return new FHIRAsyncClientImpl(properties);
+    }
 }
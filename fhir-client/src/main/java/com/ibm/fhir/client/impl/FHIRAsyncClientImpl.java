@@ -0,0 +1,421 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.client.impl;
+
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.InvocationCallback;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Response;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.BusFactory;
+import org.apache.cxf.transport.http.asyncclient.AsyncHTTPConduitFactory;
+
+import com.ibm.fhir.client.FHIRAsyncClient;
+import com.ibm.fhir.client.FHIRParameters;
+import com.ibm.fhir.client.FHIRRequestHeader;
+import com.ibm.fhir.client.FHIRResponse;
+import com.ibm.fhir.model.resource.Bundle;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.code.BundleType;
+
+/**
+ * Provides an implementation of the FHIRAsyncClient interface.
+ *
+ * <p>Requests are built exactly like those of {@link FHIRClientImpl}, but are sent through the Apache CXF
+ * Async HTTP conduit, whose pooled connections are shared by all requests of this client. The conduit is
+ * configured through a CXF Bus owned by this client, so that its pool settings do not leak into other clients
+ * of the same JVM.
+ *
+ * <p>A request which finds the in-flight window full is queued, and is sent by whichever thread frees a slot.
+ * The slot of a request is freed when it fails, or when the entity of its response has been read or the response
+ * closed, because until then the response stream holds a pooled connection.
+ */
+public class FHIRAsyncClientImpl implements FHIRAsyncClient {
+    private static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+    // CXF JAX-RS client properties applied to the HTTP conduit of each request
+    private static final String CONNECTION_TIMEOUT = "http.connection.timeout";
+    private static final String RECEIVE_TIMEOUT = "http.receive.timeout";
+
+    private final AsyncTransportClient transport;
+    private final Bus bus;
+    private final int maxInFlight;
+    private final long connectTimeout;
+    private final Semaphore inFlight;
+
+    // requests waiting for a slot of the in-flight window
+    private final Queue<QueuedRequest> pending = new ConcurrentLinkedQueue<>();
+
+    // the number of drain() calls still to be served by the thread currently draining the queue
+    private final AtomicInteger drainRequests = new AtomicInteger();
+
+    public FHIRAsyncClientImpl(Properties props) throws Exception {
+        transport = new AsyncTransportClient(props);
+        maxInFlight = Integer.parseInt(props.getProperty(PROPNAME_MAX_IN_FLIGHT, Integer.toString(DEFAULT_MAX_IN_FLIGHT)));
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("The '" + PROPNAME_MAX_IN_FLIGHT + "' property must be a positive integer.");
+        }
+        connectTimeout = Long.parseUnsignedLong(props.getProperty(PROPNAME_CONNECT_TIMEOUT, "10000"));
+        inFlight = new Semaphore(maxInFlight);
+        bus = createBus(props);
+    }
+
+    /**
+     * Create the Bus which holds the connection pool settings of the Async HTTP conduit. The pool itself is created
+     * with the conduit factory on first use.
+     */
+    private Bus createBus(Properties props) {
+        // make sure that the new Bus does not become the default Bus of the JVM or of the current thread
+        BusFactory.getDefaultBus(true);
+        Bus previousBus = BusFactory.getThreadDefaultBus(false);
+        try {
+            Bus bus = BusFactory.newInstance().createBus();
+            String maxConnections = props.getProperty(PROPNAME_MAX_CONNECTIONS, Integer.toString(maxInFlight));
+            bus.setProperty(AsyncHTTPConduitFactory.MAX_CONNECTIONS, maxConnections);
+            bus.setProperty(AsyncHTTPConduitFactory.MAX_PER_HOST_CONNECTIONS,
+                props.getProperty(PROPNAME_MAX_CONNECTIONS_PER_HOST, maxConnections));
+            bus.setProperty(AsyncHTTPConduitFactory.CONNECTION_MAX_IDLE, props.getProperty(PROPNAME_CONNECTION_MAX_IDLE, "60000"));
+            return bus;
+        } finally {
+            BusFactory.setThreadDefaultBus(previousBus);
+        }
+    }
+
+    @Override
+    public CompletionStage<FHIRResponse> metadata(FHIRRequestHeader... headers) {
+        return send(HttpMethod.GET, null, endpoint -> endpoint.path("metadata"), headers);
+    }
+
+    @Override
+    public CompletionStage<FHIRResponse> create(Resource resource, FHIRRequestHeader... headers) {
+        if (resource == null) {
+            throw new IllegalArgumentException("The 'resource' argument is required but was null.");
+        }
+        return _create(resource, null, headers);
+    }
+
+    @Override
+    public CompletionStage<FHIRResponse> conditionalCreate(Resource resource, FHIRParameters parameters, FHIRRequestHeader... headers) {
+        if (resource == null) {
+            throw new IllegalArgumentException("The 'resource' argument is required but was null.");
+        }
+        if (parameters == null || parameters.getParameterMap() == null || parameters.getParameterMap().isEmpty()) {
+            throw new IllegalArgumentException("The 'parameters' argument must be non-null and must contain at least one search query parameter");
+        }
+        return _create(resource, parameters, headers);
+    }
+
+    private CompletionStage<FHIRResponse> _create(Resource resource, FHIRParameters parameters, FHIRRequestHeader... headers) {
+        String resourceType = resource.getClass().getSimpleName();
+        headers = transport.addIfNoneExistHeader(headers, parameters);
+        headers = transport.addHttpPreferHeader(headers, transport.getHttpReturnPref());
+        return send(HttpMethod.POST, resource, endpoint -> endpoint.path(resourceType), headers);
+    }
+
+    @Override
+    public CompletionStage<FHIRResponse> update(Resource resource, FHIRRequestHeader... headers) {
+        if (resource == null) {
+            throw new IllegalArgumentException("The 'resource' argument is required but was null.");
+        }
+        String resourceId = resource.getId();
+        if (resourceId == null || resourceId.isEmpty()) {
+            throw new IllegalArgumentException("Unable to retrieve the resource id from the resource.");
+        }
+        return _update(resource, resourceId, null, headers);
+    }
+
+    @Override
+    public CompletionStage<FHIRResponse> conditionalUpdate(Resource resource, FHIRParameters parameters, FHIRRequestHeader... headers) {
+        if (resource == null) {
+            throw new IllegalArgumentException("The 'resource' argument is required but was null.");
+        }
+        if (parameters == null || parameters.getParameterMap() == null || parameters.getParameterMap().isEmpty()) {
+            throw new IllegalArgumentException("The 'parameters' argument must be non-null and must contain at least one search query parameter");
+        }
+        return _update(resource, null, parameters, headers);
+    }
+
+    private CompletionStage<FHIRResponse> _update(Resource resource, String resourceId, FHIRParameters parameters, FHIRRequestHeader... headers) {
+        String resourceType = resource.getClass().getSimpleName();
+        return send(HttpMethod.PUT, resource, endpoint -> {
+            endpoint = endpoint.path(resourceType);
+            if (resourceId != null) {
+                return endpoint.path(resourceId);
+            }
+            return transport.addParametersToWebTarget(endpoint, parameters);
+        }, headers);
+    }
+
+    @Override
+    public CompletionStage<FHIRResponse> delete(String resourceType, String resourceId, FHIRRequestHeader... headers) {
+        if (resourceType == null) {
+            throw new IllegalArgumentException("The 'resourceType' argument is required but was null.");
+        }
+        if (resourceId == null) {
+            throw new IllegalArgumentException("The 'resourceId' argument is required but was null.");
+        }
+        return send(HttpMethod.DELETE, null, endpoint -> endpoint.path(resourceType).path(resourceId), headers);
+    }
+
+    @Override
+    public CompletionStage<FHIRResponse> conditionalDelete(String resourceType, FHIRParameters parameters, FHIRRequestHeader... headers) {
+        if (resourceType == null) {
+            throw new IllegalArgumentException("The 'resourceType' argument is required but was null.");
+        }
+        if (parameters == null || parameters.getParameterMap() == null || parameters.getParameterMap().isEmpty()) {
+            throw new IllegalArgumentException("The 'parameters' argument must be non-null and must contain at least one search query parameter");
+        }
+        return send(HttpMethod.DELETE, null, endpoint -> transport.addParametersToWebTarget(endpoint.path(resourceType), parameters), headers);
+    }
+
+    @Override
+    public CompletionStage<FHIRResponse> read(String resourceType, String resourceId, FHIRRequestHeader... headers) {
+        if (resourceType == null) {
+            throw new IllegalArgumentException("The 'resourceType' argument is required but was null.");
+        }
+        if (resourceId == null) {
+            throw new IllegalArgumentException("The 'resourceId' argument is required but was null.");
+        }
+        return send(HttpMethod.GET, null, endpoint -> endpoint.path(resourceType).path(resourceId), headers);
+    }
+
+    @Override
+    public CompletionStage<FHIRResponse> vread(String resourceType, String resourceId, String versionId, FHIRRequestHeader... headers) {
+        if (resourceType == null) {
+            throw new IllegalArgumentException("The 'resourceType' argument is required but was null.");
+        }
+        if (resourceId == null) {
+            throw new IllegalArgumentException("The 'resourceId' argument is required but was null.");
+        }
+        if (versionId == null) {
+            throw new IllegalArgumentException("The 'versionId' argument is required but was null.");
+        }
+        return send(HttpMethod.GET, null, endpoint -> endpoint.path(resourceType).path(resourceId).path("_history").path(versionId), headers);
+    }
+
+    @Override
+    public CompletionStage<FHIRResponse> history(String resourceType, String resourceId, FHIRParameters parameters, FHIRRequestHeader... headers) {
+        if (resourceType == null) {
+            throw new IllegalArgumentException("The 'resourceType' argument is required but was null.");
+        }
+        if (resourceId == null) {
+            throw new IllegalArgumentException("The 'resourceId' argument is required but was null.");
+        }
+        return send(HttpMethod.GET, null,
+            endpoint -> transport.addParametersToWebTarget(endpoint.path(resourceType).path(resourceId).path("_history"), parameters), headers);
+    }
+
+    @Override
+    public CompletionStage<FHIRResponse> search(String resourceType, FHIRParameters parameters, FHIRRequestHeader... headers) {
+        if (resourceType == null) {
+            throw new IllegalArgumentException("The 'resourceType' argument is required but was null.");
+        }
+        return send(HttpMethod.GET, null, endpoint -> transport.addParametersToWebTarget(endpoint.path(resourceType), parameters), headers);
+    }
+
+    @Override
+    public CompletionStage<FHIRResponse> _search(String resourceType, FHIRParameters parameters, FHIRRequestHeader... headers) {
+        if (resourceType == null) {
+            throw new IllegalArgumentException("The 'resourceType' argument is required but was null.");
+        }
+        return send(HttpMethod.POST, Entity.form(transport.buildForm(parameters)), endpoint -> endpoint.path(resourceType).path("_search"), headers);
+    }
+
+    @Override
+    public CompletionStage<FHIRResponse> batch(Bundle bundle, FHIRRequestHeader... headers) {
+        if (bundle == null) {
+            throw new IllegalArgumentException("The 'bundle' argument is required but was null.");
+        }
+        return send(HttpMethod.POST, bundle.toBuilder().type(BundleType.BATCH).build(), endpoint -> endpoint, headers);
+    }
+
+    @Override
+    public CompletionStage<FHIRResponse> transaction(Bundle bundle, FHIRRequestHeader... headers) {
+        if (bundle == null) {
+            throw new IllegalArgumentException("The 'bundle' argument is required but was null.");
+        }
+        return send(HttpMethod.POST, bundle.toBuilder().type(BundleType.TRANSACTION).build(), endpoint -> endpoint, headers);
+    }
+
+    @Override
+    public int getInFlightCount() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    @Override
+    public void close() {
+        // the queued requests will never be sent; they hold no slot of the in-flight window
+        QueuedRequest request;
+        while ((request = pending.poll()) != null) {
+            request.callback.result.completeExceptionally(new IllegalStateException("The client was closed before the request was sent."));
+        }
+        try {
+            transport.getClient().close();
+        } catch (Exception e) {
+            // the client could not be created, so there is nothing to close
+        } finally {
+            bus.shutdown(false);
+        }
+    }
+
+    /**
+     * Send a request asynchronously as soon as a slot of the in-flight window is available; the calling thread
+     * never waits for a slot.
+     *
+     * @param method
+     *     the HTTP method of the request
+     * @param body
+     *     the request body; either an Entity, a resource to be serialized in the default mimetype, or null
+     * @param target
+     *     resolves the target of the request relative to the base URL
+     * @param headers
+     *     the request headers
+     * @return
+     *     a stage completed with the response, or exceptionally if the request could not be sent or failed
+     */
+    private CompletionStage<FHIRResponse> send(String method, Object body, TargetResolver target, FHIRRequestHeader... headers) {
+        QueuedRequest request = new QueuedRequest(method, body, target, headers);
+        pending.add(request);
+        drain();
+        return request.callback.result;
+    }
+
+    /**
+     * Send the queued requests while slots of the in-flight window are available. Only one thread drains the
+     * queue at a time; a thread which calls this method while another one is draining leaves the work to it, so
+     * that requests which fail while being sent do not recurse into this method.
+     */
+    private void drain() {
+        if (drainRequests.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            while (!pending.isEmpty() && inFlight.tryAcquire()) {
+                QueuedRequest request = pending.poll();
+                if (request == null) {
+                    inFlight.release();
+                } else {
+                    request.run();
+                }
+            }
+            missed = drainRequests.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * Resolves the target of a request relative to the base URL of the client
+     */
+    @FunctionalInterface
+    private interface TargetResolver {
+        WebTarget resolve(WebTarget baseTarget) throws Exception;
+    }
+
+    /**
+     * A request waiting for a slot of the in-flight window; runs once the slot has been acquired for it.
+     */
+    private class QueuedRequest implements Runnable {
+        private final String method;
+        private final Object body;
+        private final TargetResolver target;
+        private final FHIRRequestHeader[] headers;
+        private final ResponseCallback callback = new ResponseCallback();
+
+        QueuedRequest(String method, Object body, TargetResolver target, FHIRRequestHeader[] headers) {
+            this.method = method;
+            this.body = body;
+            this.target = target;
+            this.headers = headers;
+        }
+
+        @Override
+        public void run() {
+            // the JAX-RS client binds each request to the default Bus of the current thread
+            Bus previousBus = BusFactory.getAndSetThreadDefaultBus(bus);
+            try {
+                WebTarget endpoint = target.resolve(transport.getWebTarget())
+                        .property(CONNECTION_TIMEOUT, connectTimeout)
+                        .property(RECEIVE_TIMEOUT, (long) transport.getHttpTimeout());
+                Invocation.Builder builder = endpoint.request(transport.getDefaultMimeType());
+                builder = transport.addRequestHeaders(builder, headers);
+                if (body == null) {
+                    builder.async().method(method, callback);
+                } else {
+                    Entity<?> entity = (body instanceof Entity) ? (Entity<?>) body : Entity.entity(body, transport.getDefaultMimeType());
+                    builder.async().method(method, entity, callback);
+                }
+            } catch (Throwable t) {
+                callback.failed(t);
+            } finally {
+                BusFactory.setThreadDefaultBus(previousBus);
+            }
+        }
+    }
+
+    /**
+     * Completes the stage of a request. The response entity is left unread so that the resource is parsed from
+     * the response stream when requested; the slot of the request is freed once that happens, or right away if
+     * the request failed or the response has no entity.
+     */
+    private class ResponseCallback implements InvocationCallback<Response> {
+        private final CompletableFuture<FHIRResponse> result = new CompletableFuture<>();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        @Override
+        public void completed(Response response) {
+            FHIRResponseImpl fhirResponse = new FHIRResponseImpl(response);
+            if (fhirResponse.isEmpty()) {
+                release();
+            } else {
+                fhirResponse = new FHIRResponseImpl(new ReleasingResponse(response, this::release));
+            }
+            result.complete(fhirResponse);
+        }
+
+        @Override
+        public void failed(Throwable throwable) {
+            release();
+            result.completeExceptionally(throwable);
+        }
+
+        /**
+         * Free the slot of the request, at most once, and send the next queued request
+         */
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                inFlight.release();
+                drain();
+            }
+        }
+    }
+
+    /**
+     * A FHIRClientImpl which builds its requests for the Async HTTP conduit
+     */
+    private static class AsyncTransportClient extends FHIRClientImpl {
+        AsyncTransportClient(Properties props) throws Exception {
+            super(props);
+        }
+
+        @Override
+        protected boolean isAsyncHttpConduitEnabled() {
+            return true;
+        }
+    }
+}
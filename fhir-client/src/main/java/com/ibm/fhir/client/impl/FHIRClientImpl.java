@@ -177,7 +177,7 @@ public class FHIRClientImpl implements FHIRClient {
      * @param ifNoneExistQuery a string representing the search query to be used for a conditional create operation
      * @return a new array of FHIRRequestHeader objects containing the additional "If-None-Exist" request header
      */
-    private FHIRRequestHeader[] addIfNoneExistHeader(FHIRRequestHeader[] headers, FHIRParameters ifNoneExistQuery) {
+    protected FHIRRequestHeader[] addIfNoneExistHeader(FHIRRequestHeader[] headers, FHIRParameters ifNoneExistQuery) {
         if (ifNoneExistQuery == null) {
             return headers;
         }
@@ -206,7 +206,7 @@ public class FHIRClientImpl implements FHIRClient {
      * @param  returnPref a value representing the HTTP return preference to be used for the request
      * @return a new array of FHIRRequestHeader objects containing the additional "Prefer" request header
      */
-    private FHIRRequestHeader[] addHttpPreferHeader(FHIRRequestHeader[] headers, HTTPReturnPreference returnPref) {
+    protected FHIRRequestHeader[] addHttpPreferHeader(FHIRRequestHeader[] headers, HTTPReturnPreference returnPref) {
         if (headers != null ) {
             for (FHIRRequestHeader fhirRequestHeader : headers) {
                 if ("Prefer".equals(fhirRequestHeader.getName())) {
@@ -676,7 +676,7 @@ public class FHIRClientImpl implements FHIRClient {
      * @param parameters
      *            the FHIRParameters object that contains the query parameters to be added
      */
-    private WebTarget addParametersToWebTarget(WebTarget endpoint, FHIRParameters parameters) {
+    protected WebTarget addParametersToWebTarget(WebTarget endpoint, FHIRParameters parameters) {
         if (parameters != null) {
             MultivaluedMap<String, String> parameterMap = parameters.getParameterMap();
             if (parameterMap != null && !parameterMap.isEmpty()) {
@@ -694,7 +694,7 @@ public class FHIRClientImpl implements FHIRClient {
         return endpoint;
     }
 
-    private Form buildForm(FHIRParameters parameters) {
+    protected Form buildForm(FHIRParameters parameters) {
         Form form = new Form();
         if (parameters != null) {
             MultivaluedMap<String, String> parameterMap = parameters.getParameterMap();
@@ -717,7 +717,7 @@ public class FHIRClientImpl implements FHIRClient {
      * @param headers
      *            the array of headers to be added to the request
      */
-    private Builder addRequestHeaders(Builder builder, FHIRRequestHeader[] headers) {
+    protected Builder addRequestHeaders(Builder builder, FHIRRequestHeader[] headers) {
         if (headers != null) {
             for (FHIRRequestHeader header : headers) {
                 if (header.getName() != null && header.getValue() != null) {
@@ -784,7 +784,7 @@ public class FHIRClientImpl implements FHIRClient {
             // false(default): To avoid the http async client time out issue (http://mail-archives.apache.org
             // /mod_mbox/hc-dev/201909.mbox/%3CJIRA.13256372.1568301069000.62179.1568450580088@Atlassian.JIRA%3E),
             // please set this to false.
-            cb.property("use.async.http.conduit", false);
+            cb.property("use.async.http.conduit", isAsyncHttpConduitEnabled());
 
             // Add request/response logging if enabled.
             if (isLoggingEnabled()) {
@@ -797,6 +797,13 @@ public class FHIRClientImpl implements FHIRClient {
         return client;
     }
 
+    /**
+     * Indicates whether the Client should use the Apache CXF Async HTTP conduit; false by default, see getClient().
+     */
+    protected boolean isAsyncHttpConduitEnabled() {
+        return false;
+    }
+
     @Override
     public WebTarget getWebTarget() throws Exception {
         return getClient().target(getBaseEndpointURL());
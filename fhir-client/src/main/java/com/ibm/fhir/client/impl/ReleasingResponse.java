@@ -0,0 +1,202 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.client.impl;
+
+import java.lang.annotation.Annotation;
+import java.net.URI;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.Link;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.NewCookie;
+import javax.ws.rs.core.Response;
+
+/**
+ * A Response which runs a release action once its entity has been read, buffered or closed; used by the
+ * {@link FHIRAsyncClientImpl} to free the slot of a request in its in-flight window only when the response
+ * stream no longer holds the pooled connection.
+ */
+class ReleasingResponse extends Response {
+    private final Response delegate;
+    private final Runnable release;
+
+    /**
+     * @param delegate
+     *     the response received from the server
+     * @param release
+     *     the action to run once the entity has been consumed; must be idempotent
+     */
+    ReleasingResponse(Response delegate, Runnable release) {
+        this.delegate = delegate;
+        this.release = release;
+    }
+
+    @Override
+    public int getStatus() {
+        return delegate.getStatus();
+    }
+
+    @Override
+    public StatusType getStatusInfo() {
+        return delegate.getStatusInfo();
+    }
+
+    @Override
+    public Object getEntity() {
+        return delegate.getEntity();
+    }
+
+    @Override
+    public <T> T readEntity(Class<T> entityType) {
+        try {
+            return delegate.readEntity(entityType);
+        } finally {
+            release.run();
+        }
+    }
+
+    @Override
+    public <T> T readEntity(GenericType<T> entityType) {
+        try {
+            return delegate.readEntity(entityType);
+        } finally {
+            release.run();
+        }
+    }
+
+    @Override
+    public <T> T readEntity(Class<T> entityType, Annotation[] annotations) {
+        try {
+            return delegate.readEntity(entityType, annotations);
+        } finally {
+            release.run();
+        }
+    }
+
+    @Override
+    public <T> T readEntity(GenericType<T> entityType, Annotation[] annotations) {
+        try {
+            return delegate.readEntity(entityType, annotations);
+        } finally {
+            release.run();
+        }
+    }
+
+    @Override
+    public boolean hasEntity() {
+        return delegate.hasEntity();
+    }
+
+    @Override
+    public boolean bufferEntity() {
+        try {
+            return delegate.bufferEntity();
+        } finally {
+            release.run();
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            delegate.close();
+        } finally {
+            release.run();
+        }
+    }
+
+    @Override
+    public MediaType getMediaType() {
+        return delegate.getMediaType();
+    }
+
+    @Override
+    public Locale getLanguage() {
+        return delegate.getLanguage();
+    }
+
+    @Override
+    public int getLength() {
+        return delegate.getLength();
+    }
+
+    @Override
+    public Set<String> getAllowedMethods() {
+        return delegate.getAllowedMethods();
+    }
+
+    @Override
+    public Map<String, NewCookie> getCookies() {
+        return delegate.getCookies();
+    }
+
+    @Override
+    public EntityTag getEntityTag() {
+        return delegate.getEntityTag();
+    }
+
+    @Override
+    public Date getDate() {
+        return delegate.getDate();
+    }
+
+    @Override
+    public Date getLastModified() {
+        return delegate.getLastModified();
+    }
+
+    @Override
+    public URI getLocation() {
+        return delegate.getLocation();
+    }
+
+    @Override
+    public Set<Link> getLinks() {
+        return delegate.getLinks();
+    }
+
+    @Override
+    public boolean hasLink(String relation) {
+        return delegate.hasLink(relation);
+    }
+
+    @Override
+    public Link getLink(String relation) {
+        return delegate.getLink(relation);
+    }
+
+    @Override
+    public Link.Builder getLinkBuilder(String relation) {
+        return delegate.getLinkBuilder(relation);
+    }
+
+    @Override
+    public MultivaluedMap<String, Object> getMetadata() {
+        return delegate.getMetadata();
+    }
+
+    @Override
+    public MultivaluedMap<String, Object> getHeaders() {
+        return delegate.getHeaders();
+    }
+
+    @Override
+    public MultivaluedMap<String, String> getStringHeaders() {
+        return delegate.getStringHeaders();
+    }
+
+    @Override
+    public String getHeaderString(String name) {
+        return delegate.getHeaderString(name);
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.client.test.testng;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.client.FHIRAsyncClient;
+import com.ibm.fhir.client.FHIRClient;
+import com.ibm.fhir.client.FHIRClientFactory;
+import com.ibm.fhir.client.FHIRResponse;
+import com.ibm.fhir.core.FHIRMediaType;
+import com.ibm.fhir.model.resource.Patient;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests the FHIRAsyncClient against an embedded HTTP stub of the FHIR REST API.
+ */
+public class FHIRAsyncClientTest {
+    private static final int MAX_IN_FLIGHT = 4;
+    private static final int REQUEST_COUNT = 32;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+
+    @BeforeClass
+    public void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/fhir-server/api/v4/Patient", this::handle);
+        // more threads than the in-flight window, so that only the client can limit the concurrency
+        serverExecutor = Executors.newFixedThreadPool(MAX_IN_FLIGHT * 4);
+        server.setExecutor(serverExecutor);
+        server.start();
+    }
+
+    @AfterClass
+    public void stopServer() throws Exception {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        int current = active.incrementAndGet();
+        maxActive.accumulateAndGet(current, Math::max);
+        try {
+            try (InputStream in = exchange.getRequestBody()) {
+                while (in.read() != -1) {
+                    // drain the request body
+                }
+            }
+            // keep the request in flight long enough for the others to pile up
+            Thread.sleep(20);
+
+            String path = exchange.getRequestURI().getPath();
+            if ("POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().add("Location", "http://localhost/fhir-server/api/v4/Patient/created/_history/1");
+                exchange.sendResponseHeaders(201, -1);
+            } else {
+                String id = path.substring(path.lastIndexOf('/') + 1);
+                byte[] body = ("{\"resourceType\":\"Patient\",\"id\":\"" + id + "\"}").getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", FHIRMediaType.APPLICATION_FHIR_JSON);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            active.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private FHIRAsyncClient createClient() throws Exception {
+        return createClient(MAX_IN_FLIGHT);
+    }
+
+    private FHIRAsyncClient createClient(int maxInFlight) throws Exception {
+        Properties props = new Properties();
+        props.setProperty(FHIRClient.PROPNAME_BASE_URL, "http://localhost:" + server.getAddress().getPort() + "/fhir-server/api/v4");
+        props.setProperty(FHIRAsyncClient.PROPNAME_MAX_IN_FLIGHT, Integer.toString(maxInFlight));
+        return FHIRClientFactory.getAsyncClient(props);
+    }
+
+    @Test
+    public void testReadWithinWindow() throws Exception {
+        maxActive.set(0);
+        try (FHIRAsyncClient client = createClient()) {
+            List<CompletableFuture<String>> results = new ArrayList<>();
+            for (int i = 0; i < REQUEST_COUNT; i++) {
+                assertTrue(client.getInFlightCount() <= MAX_IN_FLIGHT);
+                CompletionStage<FHIRResponse> stage = client.read("Patient", "p" + i);
+                results.add(stage.thenApply(response -> {
+                    assertEquals(response.getStatus(), 200);
+                    try {
+                        return response.getResource(Patient.class).getId();
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }).toCompletableFuture());
+            }
+            for (int i = 0; i < REQUEST_COUNT; i++) {
+                assertEquals(results.get(i).get(10, TimeUnit.SECONDS), "p" + i);
+            }
+            assertEquals(client.getInFlightCount(), 0);
+        }
+        assertTrue(maxActive.get() >= 1);
+        assertTrue(maxActive.get() <= MAX_IN_FLIGHT, "max concurrent requests: " + maxActive.get());
+    }
+
+    @Test
+    public void testCreate() throws Exception {
+        try (FHIRAsyncClient client = createClient()) {
+            Patient patient = Patient.builder().id("ignored").build();
+            List<CompletableFuture<FHIRResponse>> results = new ArrayList<>();
+            for (int i = 0; i < REQUEST_COUNT / 4; i++) {
+                results.add(client.create(patient).toCompletableFuture());
+            }
+            for (CompletableFuture<FHIRResponse> result : results) {
+                FHIRResponse response = result.get(10, TimeUnit.SECONDS);
+                assertEquals(response.getStatus(), 201);
+                assertEquals(response.getLocation(), "http://localhost/fhir-server/api/v4/Patient/created/_history/1");
+            }
+        }
+    }
+
+    @Test
+    public void testConnectionFailure() throws Exception {
+        Properties props = new Properties();
+        // nothing listens on the port of a stopped server
+        HttpServer stopped = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        int port = stopped.getAddress().getPort();
+        stopped.stop(0);
+        props.setProperty(FHIRClient.PROPNAME_BASE_URL, "http://localhost:" + port + "/fhir-server/api/v4");
+        props.setProperty(FHIRAsyncClient.PROPNAME_MAX_IN_FLIGHT, "1");
+        props.setProperty(FHIRAsyncClient.PROPNAME_CONNECT_TIMEOUT, "2000");
+        try (FHIRAsyncClient client = FHIRClientFactory.getAsyncClient(props)) {
+            // all requests but the first are queued; each failure frees the slot for the next one
+            List<CompletableFuture<FHIRResponse>> results = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                results.add(client.read("Patient", "p" + i).toCompletableFuture());
+            }
+            for (CompletableFuture<FHIRResponse> result : results) {
+                try {
+                    result.get(10, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    // expected
+                }
+                assertTrue(result.isCompletedExceptionally());
+            }
+            assertEquals(client.getInFlightCount(), 0);
+        }
+    }
+
+    @Test
+    public void testSlotHeldUntilResponseConsumed() throws Exception {
+        try (FHIRAsyncClient client = createClient(1)) {
+            // the window is full after the first request, but the caller is not blocked
+            CompletableFuture<FHIRResponse> first = client.read("Patient", "q0").toCompletableFuture();
+            CompletableFuture<FHIRResponse> second = client.read("Patient", "q1").toCompletableFuture();
+            CompletableFuture<FHIRResponse> third = client.read("Patient", "q2").toCompletableFuture();
+
+            // the unread response of the first request still holds the slot
+            FHIRResponse response = first.get(10, TimeUnit.SECONDS);
+            Thread.sleep(200);
+            assertFalse(second.isDone());
+            assertEquals(client.getInFlightCount(), 1);
+
+            // closing the response sends the second request, reading it sends the third
+            response.getResponse().close();
+            assertEquals(second.get(10, TimeUnit.SECONDS).getResource(Patient.class).getId(), "q1");
+            assertEquals(third.get(10, TimeUnit.SECONDS).getResource(Patient.class).getId(), "q2");
+            assertEquals(client.getInFlightCount(), 0);
+        }
+    }
+
+    @Test
+    public void testCloseFailsQueuedRequests() throws Exception {
+        CompletableFuture<FHIRResponse> first;
+        CompletableFuture<FHIRResponse> queued;
+        try (FHIRAsyncClient client = createClient(1)) {
+            first = client.read("Patient", "r0").toCompletableFuture();
+            queued = client.read("Patient", "r1").toCompletableFuture();
+            first.get(10, TimeUnit.SECONDS);
+        }
+        assertTrue(queued.isCompletedExceptionally());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMissingArgument() throws Exception {
+        try (FHIRAsyncClient client = createClient()) {
+            client.read("Patient", null);
+        }
+    }
+}
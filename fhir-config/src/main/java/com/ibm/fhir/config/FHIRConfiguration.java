@@ -32,6 +32,8 @@ public class FHIRConfiguration {
     public static final String PROPERTY_ALLOW_CLIENT_HANDLING_PREF = "fhirServer/core/allowClientHandlingPref";
     public static final String PROPERTY_CHECK_REFERENCE_TYPES = "fhirServer/core/checkReferenceTypes";
     public static final String PROPERTY_CONDITIONAL_DELETE_MAX_NUMBER = "fhirServer/core/conditionalDeleteMaxNumber";
+    public static final String PROPERTY_CONDITIONAL_CREATE_IDENTIFIER_LOOKUP = "fhirServer/core/conditionalCreateIdentifierLookup";
+    public static final String PROPERTY_CONDITIONAL_CREATE_IDENTIFIER_LOCK = "fhirServer/core/conditionalCreateIdentifierLock";
     public static final String PROPERTY_SERVER_REGISTRY_RESOURCE_PROVIDER_ENABLED = "fhirServer/core/serverRegistryResourceProviderEnabled";
     public static final String PROPERTY_CAPABILITY_STATEMENT_CACHE = "fhirServer/core/capabilityStatementCacheTimeout";
     public static final String PROPERTY_EXTENDED_CODEABLE_CONCEPT_VALIDATION = "fhirServer/core/extendedCodeableConceptValidation";
@@ -48,6 +50,7 @@ public class FHIRConfiguration {
     public static final String PROPERTY_FIELD_RESOURCES_PROFILES = "profiles";
     public static final String PROPERTY_FIELD_RESOURCES_PROFILES_AT_LEAST_ONE = "atLeastOne";
     public static final String PROPERTY_USE_STORED_COMPARTMENT_PARAM = "fhirServer/search/useStoredCompartmentParam";
+    public static final String PROPERTY_USE_COMPARTMENT_MEMBERSHIP_INDEX = "fhirServer/search/useCompartmentMembershipIndex";
 
     // Auth and security properties
     public static final String PROPERTY_SECURITY_CORS = "fhirServer/security/cors";
@@ -104,9 +107,13 @@ public class FHIRConfiguration {
     public static final String PROPERTY_JDBC_ENABLE_RESOURCE_TYPES_CACHE = "fhirServer/persistence/jdbc/enableResourceTypesCache";
     public static final String PROPERTY_JDBC_EXTERNAL_REF_SYSTEM_CACHE_SIZE = "fhirServer/persistence/jdbc/externalRefSystemCacheSize";
     public static final String PROPERTY_JDBC_EXTERNAL_REF_VALUE_CACHE_SIZE = "fhirServer/persistence/jdbc/externalRefValueCacheSize";
+    public static final String PROPERTY_JDBC_TRUST_STORED_XHTML = "fhirServer/persistence/jdbc/trustStoredXhtml";
+    public static final String PROPERTY_JDBC_ENABLE_SEARCH_QUERY_TEMPLATE_CACHE = "fhirServer/persistence/jdbc/enableSearchQueryTemplateCache";
+    public static final String PROPERTY_JDBC_CHANGE_LOG_SETTLE_SECONDS = "fhirServer/persistence/jdbc/changeLogSettleSeconds";
 
     // fhir-search - Bounding area
     public static final String PROPERTY_SEARCH_BOUNDING_AREA_RADIUS_TYPE = "fhirServer/search/useBoundingRadius";
+    public static final String PROPERTY_SEARCH_USE_SPATIAL_INDEX = "fhirServer/search/useSpatialIndex";
 
     // bulkdata
     // JavaBatch Job id encryption key
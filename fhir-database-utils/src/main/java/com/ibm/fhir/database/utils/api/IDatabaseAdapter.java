@@ -74,9 +74,10 @@ public interface IDatabaseAdapter {
      * @param primaryKey
      * @param identity
      * @param tablespaceName
+     * @param rangePartitionColumnName optional timestamp column used to range-partition the table by month
      */
     public void createTable(String schemaName, String name, String tenantColumnName, List<ColumnBase> columns,
-            PrimaryKeyDef primaryKey, IdentityDef identity, String tablespaceName);
+            PrimaryKeyDef primaryKey, IdentityDef identity, String tablespaceName, String rangePartitionColumnName);
     
     /**
      * Add a new column to an existing table
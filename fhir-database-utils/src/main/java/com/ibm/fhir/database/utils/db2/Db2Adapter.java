@@ -12,6 +12,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -34,6 +35,7 @@ import com.ibm.fhir.database.utils.api.PartitionInfo;
 import com.ibm.fhir.database.utils.api.UndefinedNameException;
 import com.ibm.fhir.database.utils.common.CommonDatabaseAdapter;
 import com.ibm.fhir.database.utils.common.DataDefinitionUtil;
+import com.ibm.fhir.database.utils.common.DateMath;
 import com.ibm.fhir.database.utils.common.DropColumn;
 import com.ibm.fhir.database.utils.model.ColumnBase;
 import com.ibm.fhir.database.utils.model.IdentityDef;
@@ -69,7 +71,7 @@ public class Db2Adapter extends CommonDatabaseAdapter {
 
     @Override
     public void createTable(String schemaName, String name, String tenantColumnName, List<ColumnBase> columns, PrimaryKeyDef primaryKey,
-            IdentityDef identity, String tablespaceName) {
+            IdentityDef identity, String tablespaceName, String rangePartitionColumnName) {
 
         // With DB2 we can implement support for multi-tenancy, which we do by injecting a MT_ID column
         // to the definition and partitioning on that column
@@ -103,6 +105,18 @@ public class Db2Adapter extends CommonDatabaseAdapter {
                     + "(STARTING 0 INCLUSIVE "
                     + "   ENDING 0 INCLUSIVE )";
 
+            // The tenant partitioning scheme takes precedence
+            if (rangePartitionColumnName != null) {
+                logger.warning("Table " + name + " is partitioned by " + tenantColumnName
+                        + "; ignoring range partition column " + rangePartitionColumnName);
+            }
+        } else if (rangePartitionColumnName != null) {
+            // Monthly partitions are added ahead of time by Db2PartitionControl, so here we only
+            // need the first partition to hold everything before the current month
+            final String firstMonth = DateMath.format(DateMath.truncateToMonth(new Date()));
+            ddl = ddl + " PARTITION BY RANGE (" + rangePartitionColumnName + ") "
+                    + "(PARTITION PMIN STARTING MINVALUE "
+                    + "   ENDING AT '" + firstMonth + "' EXCLUSIVE )";
         }
 
         runStatement(ddl);
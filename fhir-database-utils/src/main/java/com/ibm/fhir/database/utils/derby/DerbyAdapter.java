@@ -75,12 +75,17 @@ public class DerbyAdapter extends CommonDatabaseAdapter {
 
     @Override
     public void createTable(String schemaName, String name, String tenantColumnName, List<ColumnBase> columns, PrimaryKeyDef primaryKey,
-            IdentityDef identity, String tablespaceName) {
+            IdentityDef identity, String tablespaceName, String rangePartitionColumnName) {
         // Derby doesn't support partitioning, so we ignore tenantColumnName
         if (tenantColumnName != null) {
             warnOnce(MessageKey.MULTITENANCY, "Derby does not support multi-tenancy on: [" + name + "]");
         }
 
+        // ...or the range partitioning column
+        if (rangePartitionColumnName != null) {
+            warnOnce(MessageKey.PARTITIONING, "Derby does not support range partitioning on: [" + name + "]");
+        }
+
         // We also ignore tablespace for Derby
         String ddl = buildCreateTableStatement(schemaName, name, columns, primaryKey, identity, null);
         runStatement(ddl);
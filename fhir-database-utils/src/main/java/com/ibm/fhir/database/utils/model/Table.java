@@ -47,6 +47,9 @@ public class Table extends BaseObject {
     // The column to use when making this table multi-tenant (if supported by the the target)
     private final String tenantColumnName;
 
+    // The timestamp column to use when range-partitioning this table by month (if supported by the target)
+    private final String rangePartitionColumnName;
+
     /**
      * Public constructor
      *
@@ -54,6 +57,7 @@ public class Table extends BaseObject {
      * @param name
      * @param version
      * @param tenantColumnName
+     * @param rangePartitionColumnName
      * @param columns
      * @param pk
      * @param identity
@@ -65,12 +69,13 @@ public class Table extends BaseObject {
      * @param tags
      * @param privileges
      */
-    public Table(String schemaName, String name, int version, String tenantColumnName, Collection<ColumnBase> columns, PrimaryKeyDef pk,
+    public Table(String schemaName, String name, int version, String tenantColumnName, String rangePartitionColumnName, Collection<ColumnBase> columns, PrimaryKeyDef pk,
             IdentityDef identity, Collection<IndexDef> indexes, Collection<ForeignKeyConstraint> fkConstraints,
             SessionVariableDef accessControlVar, Tablespace tablespace, List<IDatabaseObject> dependencies, Map<String,String> tags,
             Collection<GroupPrivilege> privileges, List<Migration> migrations) {
         super(schemaName, name, DatabaseObjectType.TABLE, version, migrations);
         this.tenantColumnName = tenantColumnName;
+        this.rangePartitionColumnName = rangePartitionColumnName;
         this.columns.addAll(columns);
         this.primaryKey = pk;
         this.identity = identity;
@@ -111,10 +116,19 @@ public class Table extends BaseObject {
         return this.tenantColumnName;
     }
 
+    /**
+     * Getter for the optional range partition column name
+     * @return
+     */
+    public String getRangePartitionColumnName() {
+        return this.rangePartitionColumnName;
+    }
+
     @Override
     public void apply(IDatabaseAdapter target) {
         final String tsName = this.tablespace == null ? null : this.tablespace.getName();
-        target.createTable(getSchemaName(), getObjectName(), this.tenantColumnName, this.columns, this.primaryKey, this.identity, tsName);
+        target.createTable(getSchemaName(), getObjectName(), this.tenantColumnName, this.columns, this.primaryKey, this.identity, tsName,
+                this.rangePartitionColumnName);
 
         // Now add any indexes associated with this table
         for (IndexDef idx: this.indexes) {
@@ -212,6 +226,9 @@ public class Table extends BaseObject {
         // Is this table multi-tenant when supported?
         private String tenantColumnName;
 
+        // Is this table range-partitioned by month when supported?
+        private String rangePartitionColumnName;
+
         // A map of tags
         private Map<String,String> tags = new HashMap<>();
 
@@ -662,7 +679,7 @@ public class Table extends BaseObject {
 
             // Our schema objects are immutable by design, so all initialization takes place
             // through the constructor
-            return new Table(getSchemaName(), getObjectName(), this.version, this.tenantColumnName, buildColumns(), this.primaryKey, this.identity, this.indexes.values(),
+            return new Table(getSchemaName(), getObjectName(), this.version, this.tenantColumnName, this.rangePartitionColumnName, buildColumns(), this.primaryKey, this.identity, this.indexes.values(),
                     this.fkConstraints.values(), this.accessControlVar, this.tablespace, allDependencies, tags, privileges, migrations);
 
         }
@@ -776,6 +793,18 @@ public class Table extends BaseObject {
             return this;
         }
 
+        /**
+         * Setter to range-partition this table by month on the given timestamp column. Like
+         * multitenancy, support depends on the target. The partitions are only created along
+         * with the table, so this has no effect on tables which already exist.
+         * @param name
+         * @return
+         */
+        public Builder setRangePartitionColumnName(String name) {
+            this.rangePartitionColumnName = name;
+            return this;
+        }
+
         @Override
         public Builder addMigration(Migration... migration) {
             super.addMigration(migration);
@@ -0,0 +1,80 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.database.utils.pool;
+
+/**
+ * Runtime metrics describing the behavior of a connection pool, used to tell
+ * whether threads are starving for connections, holding them for too long
+ * or not giving them back at all.
+ */
+public interface IPoolMetrics {
+
+    /**
+     * The configured maximum number of connections
+     * @return
+     */
+    public int getMaxPoolSize();
+
+    /**
+     * The current limit on the number of connections, which may have grown beyond
+     * {@link #getMaxPoolSize()} if adaptive sizing is enabled
+     * @return
+     */
+    public int getCurrentMaxPoolSize();
+
+    /**
+     * The number of physical connections currently allocated (free + in use)
+     * @return
+     */
+    public int getAllocated();
+
+    /**
+     * The number of connections currently borrowed by a thread
+     * @return
+     */
+    public int getInUse();
+
+    /**
+     * The number of threads currently blocked waiting for a connection
+     * @return
+     */
+    public int getWaiting();
+
+    /**
+     * The total number of connections flagged as possible leaks
+     * @return
+     */
+    public long getLeakCount();
+
+    /**
+     * The time threads wait to obtain a connection
+     * @return
+     */
+    public LatencyHistogram getBorrowWaitTime();
+
+    /**
+     * The time connections are held from borrow until the transaction completes
+     * @return
+     */
+    public LatencyHistogram getHoldTime();
+
+    /**
+     * The time spent executing statements, if statement timing is enabled
+     * @return
+     */
+    public LatencyHistogram getStatementTime();
+
+    /**
+     * Single line summary of the metrics, suitable for periodic logging
+     * @return
+     */
+    public default String summary() {
+        return String.format("pool[max=%d/%d allocated=%d inUse=%d waiting=%d leaks=%d] wait[%s] hold[%s] statement[%s]",
+            getCurrentMaxPoolSize(), getMaxPoolSize(), getAllocated(), getInUse(), getWaiting(), getLeakCount(),
+            getBorrowWaitTime(), getHoldTime(), getStatementTime());
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.database.utils.pool;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A simple lock-free histogram of elapsed times. Values are collected into
+ * buckets of increasing powers of two microseconds, which is plenty of
+ * resolution to see where the time is going without the cost of a proper
+ * (sorted) reservoir. Percentiles are reported as the upper bound of the
+ * bucket in which they fall.
+ */
+public class LatencyHistogram {
+    // Bucket n holds values < 2^n microseconds. The last bucket catches everything else (> 1 hour)
+    private static final int BUCKETS = 33;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Record a single elapsed time
+     * @param elapsedNanos
+     */
+    public void record(long elapsedNanos) {
+        if (elapsedNanos < 0) {
+            elapsedNanos = 0;
+        }
+
+        long micros = elapsedNanos / 1000;
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        totalNanos.addAndGet(elapsedNanos);
+
+        long max = maxNanos.get();
+        while (elapsedNanos > max && !maxNanos.compareAndSet(max, elapsedNanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    /**
+     * Get the number of values recorded
+     * @return
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Get the mean of the recorded values in milliseconds
+     * @return
+     */
+    public double getMeanMillis() {
+        long n = count.get();
+        return n > 0 ? totalNanos.get() / 1e6 / n : 0.0;
+    }
+
+    /**
+     * Get the largest value recorded in milliseconds
+     * @return
+     */
+    public double getMaxMillis() {
+        return maxNanos.get() / 1e6;
+    }
+
+    /**
+     * Get the upper bound in milliseconds of the bucket containing the given percentile
+     * @param percentile between 0 and 100
+     * @return
+     */
+    public double getPercentileMillis(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0.0;
+        }
+
+        long target = (long) Math.ceil(n * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            seen += buckets.get(i);
+            if (seen >= target) {
+                // don't report more than we've actually seen
+                return Math.min((1L << i) / 1000.0, getMaxMillis());
+            }
+        }
+        return getMaxMillis();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.3fms p50<=%.3fms p95<=%.3fms p99<=%.3fms max=%.3fms",
+            getCount(), getMeanMillis(), getPercentileMillis(50), getPercentileMillis(95), getPercentileMillis(99), getMaxMillis());
+    }
+}
@@ -8,12 +8,17 @@ package com.ibm.fhir.database.utils.pool;
 
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.util.LinkedList;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.ibm.fhir.database.utils.api.DataAccessException;
@@ -27,21 +32,36 @@ import com.ibm.fhir.database.utils.api.IDatabaseTranslator;
  * to provide a JEE-flavored experience, and makes it easy to write
  * code which will work in both J2SE and JEE environments.
  * 
+ * Borrowing and returning connections is lock-free. The lock is only
+ * used to park threads when the pool is exhausted. The pool also collects
+ * metrics (see {@link #getMetrics()}), can detect connections which have
+ * been held for too long, and can grow beyond its configured size up to
+ * a configured limit when threads would otherwise have to wait.
+ * 
  * Does not support distributed transactions.
  */
 public class PoolConnectionProvider implements IConnectionProvider {
     private static final Logger logger = Logger.getLogger(PoolConnectionProvider.class.getName());
-        
-    // Concurrency control for the pool
+
+    // How long the pool must go without running out of connections before an adaptive pool shrinks
+    private static final long ADAPTIVE_SHRINK_DELAY_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    // Only used to park threads waiting for a connection when the pool is exhausted
     private final Lock lock = new ReentrantLock();
     private final Condition waitForConnectionCondition = lock.newCondition();
-    
+
     // The number of connections allocated
-    int allocated;
-    
+    private final AtomicInteger allocated = new AtomicInteger();
+
+    // The number of threads waiting for a connection
+    private final AtomicInteger waiting = new AtomicInteger();
+
     // The list of free connections, available to be allocated
-    private Queue<Connection> free = new LinkedList<>();
-    
+    private final Queue<Connection> free = new ConcurrentLinkedQueue<>();
+
+    // The connections currently borrowed, so we can look for leaks
+    private final Set<PooledConnection> inUse = ConcurrentHashMap.newKeySet();
+
     // The connection provider we are decorating with pooling abilities
     private final IConnectionProvider connectionProvider;
 
@@ -51,9 +71,32 @@ public class PoolConnectionProvider implements IConnectionProvider {
     // The maximum number of connections allowed to be active
     private final int maxPoolSize;
 
+    // The current limit, which can grow up to adaptiveMaxPoolSize
+    private final AtomicInteger currentMaxPoolSize;
+
+    // The upper limit for adaptive sizing. Same as maxPoolSize if adaptive sizing is disabled
+    private volatile int adaptiveMaxPoolSize;
+
+    // The last time (System.nanoTime) a thread found the pool exhausted
+    private volatile long lastExhaustedTime = System.nanoTime();
+
+    // Connections held longer than this are reported as possible leaks. 0 to disable
+    private volatile long leakDetectionThresholdNanos = 0;
+
+    // Number of connections reported as possible leaks
+    private final AtomicLong leakCount = new AtomicLong();
+
     // Should we reuse connections after an exception, or close them instead of returning them to the pool
     private boolean closeOnAnyError = false;
 
+    // Metrics
+    private final LatencyHistogram borrowWaitTime = new LatencyHistogram();
+    private final LatencyHistogram holdTime = new LatencyHistogram();
+    private final LatencyHistogram statementTime = new LatencyHistogram();
+
+    // Statement timing requires each statement to be wrapped, so is off by default
+    private volatile boolean statementTiming = false;
+
     /**
      * Public constructor
      * @param cp
@@ -62,6 +105,8 @@ public class PoolConnectionProvider implements IConnectionProvider {
     public PoolConnectionProvider(IConnectionProvider cp, int maxPoolSize) {
         this.connectionProvider = cp;
         this.maxPoolSize = maxPoolSize;
+        this.currentMaxPoolSize = new AtomicInteger(maxPoolSize);
+        this.adaptiveMaxPoolSize = maxPoolSize;
     }
 
     /**
@@ -73,6 +118,37 @@ public class PoolConnectionProvider implements IConnectionProvider {
         this.closeOnAnyError = true;
     }
 
+    /**
+     * Allow the pool to grow beyond its configured size, one connection at a time,
+     * when threads would otherwise have to wait for a connection. The pool shrinks
+     * back towards its configured size once it hasn't been exhausted for a while.
+     * @param adaptiveMaxPoolSize the upper limit for the pool size
+     */
+    public void setAdaptiveMaxPoolSize(int adaptiveMaxPoolSize) {
+        if (adaptiveMaxPoolSize < this.maxPoolSize) {
+            throw new IllegalArgumentException("adaptiveMaxPoolSize must be >= maxPoolSize");
+        }
+        this.adaptiveMaxPoolSize = adaptiveMaxPoolSize;
+    }
+
+    /**
+     * Report connections held longer than the given threshold, along with the stack
+     * of the thread which borrowed them. Capturing the stack adds a little overhead
+     * to each borrow, so this is disabled by default.
+     * @param thresholdMs the threshold in milliseconds, or 0 to disable
+     */
+    public void setLeakDetectionThreshold(long thresholdMs) {
+        this.leakDetectionThresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMs);
+    }
+
+    /**
+     * Enable collection of statement execution times
+     * @param statementTiming
+     */
+    public void setStatementTiming(boolean statementTiming) {
+        this.statementTiming = statementTiming;
+    }
+
     @Override
     public Connection getConnection() throws SQLException {
         // We use the same connection on a given thread each time it is requested
@@ -86,49 +162,16 @@ public class PoolConnectionProvider implements IConnectionProvider {
         }
         
         // No connection currently on this thread, so try to obtain the underlying
-        // connection from the pool
+        // connection from the pool. If we get null back, we have been granted an
+        // allocation and need to create a new connection
         long startTime = System.nanoTime();
-        Connection c = null;
-        lock.lock();
-        try {
-            // log warning after 5 seconds waiting for a free connection
-            long logLongWaitTimeSeconds = 5;
-            boolean assigned = false;
-            while (!assigned) {
-                if (free.isEmpty()) {
-                    if (this.allocated < this.maxPoolSize) {
-                        this.allocated++;
-                        assigned = true; // get connection outside of lock
-                    }
-                    else {
-                        // block until a free connection is available
-                        logger.info("Max connections allocated, waiting for connection to be freed");
-                        if (!this.waitForConnectionCondition.await(logLongWaitTimeSeconds, TimeUnit.SECONDS)) {
-                            logger.warning("Long wait for free connection. Consider increasing pool size");
-                            if (logLongWaitTimeSeconds < 30) {
-                                logLongWaitTimeSeconds = 30; // increase the log interval after the first message
-                            }
-                        }
-                    }
-                }
-                else {
-                    // simply take the next connection from the head of the list
-                    logger.fine("Using db connection from pool");
-                    c = free.poll();
-                    logger.fine("Got db connection from pool: " + c.toString());
-                    assigned = true;
-                }
-            }
-        }
-        catch (InterruptedException x) {
-            throw new DataAccessException("Interrupted waiting for connection");
-        }
-        finally {
-            lock.unlock();
+        Connection c = free.poll();
+        if (c == null) {
+            c = waitForConnection();
         }
         
-        // It might take a while to establish a new connection, so we do this after
-        // releasing the above lock to try and maximize concurrency.
+        // It might take a while to establish a new connection, so we do this outside
+        // of any locks to try and maximize concurrency.
         if (c == null) {
             try {
                 c = connectionProvider.getConnection();
@@ -136,19 +179,16 @@ public class PoolConnectionProvider implements IConnectionProvider {
             catch (SQLException x) {
                 // Failed to acquire a connection, so we need to relinquish
                 // our allocation and give others a chance
-                lock.lock();
-                try {
-                    this.allocated--;
-                    this.waitForConnectionCondition.signal();
-                }
-                finally {
-                    lock.unlock();
-                }
+                release();
                 throw x;
             }
         }
+        else if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Got db connection from pool: " + c.toString());
+        }
         
         long endTime = System.nanoTime();
+        borrowWaitTime.record(endTime - startTime);
         double elapsed = (endTime-startTime) / 1e9;
         if (elapsed > 1.0) {
             // If it takes over a second to acquire a connection, warn about it
@@ -157,13 +197,159 @@ public class PoolConnectionProvider implements IConnectionProvider {
 
         // Wrap the connection, and set it as active on this thread so we will always
         // use it until the current transaction is complete
-        result = new PooledConnection(this, c, this.closeOnAnyError);
+        Throwable borrower = this.leakDetectionThresholdNanos > 0 ? new Throwable("Connection borrowed here") : null;
+        result = new PooledConnection(this, c, this.closeOnAnyError, borrower);
         result.incOpenCount();
         activeConnection.set(result);
+        inUse.add(result);
         
         return result;
     }
-    
+
+    /**
+     * Slow path for when the free list is empty. Either get an allocation to create a new
+     * connection, or wait until a connection is returned to the pool
+     * @return a free connection, or null if the caller should create a new connection
+     */
+    private Connection waitForConnection() {
+        // log warning after 5 seconds waiting for a free connection
+        long logLongWaitTimeSeconds = 5;
+        while (true) {
+            // another thread may have returned a connection since we last looked
+            Connection c = free.poll();
+            if (c != null) {
+                return c;
+            }
+            
+            if (tryAllocate()) {
+                return null;
+            }
+            
+            // The pool is exhausted. See if we're allowed to grow
+            this.lastExhaustedTime = System.nanoTime();
+            if (tryGrow()) {
+                continue;
+            }
+            
+            // take the opportunity to report anyone hogging connections
+            checkForLeaks();
+            
+            // Block until a connection is returned. We register as a waiter before checking
+            // again under the lock, so a thread returning a connection will always see us
+            // and signal, and we can't miss the wake-up
+            waiting.incrementAndGet();
+            lock.lock();
+            try {
+                c = free.poll();
+                if (c != null) {
+                    return c;
+                }
+                
+                if (tryAllocate()) {
+                    return null;
+                }
+                
+                logger.info("Max connections allocated, waiting for connection to be freed");
+                if (!this.waitForConnectionCondition.await(logLongWaitTimeSeconds, TimeUnit.SECONDS)) {
+                    logger.warning("Long wait for free connection. Consider increasing pool size");
+                    if (logLongWaitTimeSeconds < 30) {
+                        logLongWaitTimeSeconds = 30; // increase the log interval after the first message
+                    }
+                }
+            }
+            catch (InterruptedException x) {
+                throw new DataAccessException("Interrupted waiting for connection");
+            }
+            finally {
+                lock.unlock();
+                waiting.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Try to increase the allocated count without exceeding the current pool size limit
+     * @return true if the allocation was granted
+     */
+    private boolean tryAllocate() {
+        int current = allocated.get();
+        while (current < currentMaxPoolSize.get()) {
+            if (allocated.compareAndSet(current, current + 1)) {
+                return true;
+            }
+            current = allocated.get();
+        }
+        return false;
+    }
+
+    /**
+     * Try to increase the current pool size limit by one if adaptive sizing is enabled
+     * @return true if the pool size limit was increased
+     */
+    private boolean tryGrow() {
+        int current = currentMaxPoolSize.get();
+        while (current < this.adaptiveMaxPoolSize) {
+            if (currentMaxPoolSize.compareAndSet(current, current + 1)) {
+                logger.info("Pool exhausted, increasing pool size to " + (current + 1));
+                return true;
+            }
+            current = currentMaxPoolSize.get();
+        }
+        return false;
+    }
+
+    /**
+     * Give up an allocation, waking a waiting thread so it can have a go
+     */
+    private void release() {
+        allocated.decrementAndGet();
+        signalWaiter();
+    }
+
+    /**
+     * Wake up a thread waiting for an available connection, if there is one
+     */
+    private void signalWaiter() {
+        if (waiting.get() > 0) {
+            lock.lock();
+            try {
+                this.waitForConnectionCondition.signal();
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Log a warning, including the borrower stack, for each connection which has been
+     * held longer than the leak detection threshold. Each connection is reported once.
+     * Called when the pool is exhausted, and can also be called periodically.
+     */
+    public void checkForLeaks() {
+        final long threshold = this.leakDetectionThresholdNanos;
+        if (threshold <= 0) {
+            return;
+        }
+
+        final long now = System.nanoTime();
+        for (PooledConnection pc: inUse) {
+            if (now - pc.getBorrowTime() > threshold && pc.markLeakReported()) {
+                leakCount.incrementAndGet();
+                logger.log(Level.WARNING, String.format("Possible connection leak: connection held for %.3f seconds",
+                    (now - pc.getBorrowTime()) / 1e9), pc.getBorrower());
+            }
+        }
+    }
+
+    /**
+     * Get the histogram used to record statement times
+     * @return the histogram, or null if statement timing is disabled
+     */
+    protected LatencyHistogram getStatementTimeHistogram() {
+        return this.statementTiming ? this.statementTime : null;
+    }
+
     /**
      * Called when the connection is closed, which in this case is pretty much a NOP,
      * because this connection will stay active on this thread until the transaction
@@ -208,31 +394,52 @@ public class PoolConnectionProvider implements IConnectionProvider {
             }
 
             // Update the pool
-            lock.lock();
-            try {
-                if (pc.isReusable()) {
-                    // underlying connection should still be good, so add it back into the pool
-                    logger.fine("Adding connection back to pool");
-                    free.add(pc.getWrapped());
-                }
-                else {
-                    // Connection appears to be broken, so just close it and walk away
-                    logger.fine("Connection is broken, so closing it");
-                    pc.forceClosed();
-                    // We now have one less allocated connection, so need to reduce our
-                    // count accordingly, which might unblock another thread waiting to
-                    // create a new connection
-                    this.allocated--;
-                }
-                
-                // Wake up a thread waiting for an available connection
-                this.waitForConnectionCondition.signal();
+            inUse.remove(pc);
+            holdTime.record(System.nanoTime() - pc.getBorrowTime());
+            if (!pc.isReusable()) {
+                // Connection appears to be broken, so just close it and walk away
+                logger.fine("Connection is broken, so closing it");
+                pc.forceClosed();
+                // We now have one less allocated connection, so need to reduce our
+                // count accordingly, which might unblock another thread waiting to
+                // create a new connection
+                release();
             }
-            finally {
-                lock.unlock();
+            else if (shrink()) {
+                // the pool has grown but isn't busy any more, so this connection can go
+                logger.fine("Closing connection to shrink the pool");
+                pc.forceClosed();
+                release();
+            }
+            else {
+                // underlying connection should still be good, so add it back into the pool
+                logger.fine("Adding connection back to pool");
+                free.add(pc.getWrapped());
+                signalWaiter();
             }
         }
     }
+
+    /**
+     * If the pool has grown beyond its configured size and hasn't been exhausted for a
+     * while, reduce the pool size limit by one
+     * @return true if the pool size limit was reduced
+     */
+    private boolean shrink() {
+        if (waiting.get() > 0 || System.nanoTime() - this.lastExhaustedTime < ADAPTIVE_SHRINK_DELAY_NANOS) {
+            return false;
+        }
+
+        int current = currentMaxPoolSize.get();
+        while (current > this.maxPoolSize) {
+            if (currentMaxPoolSize.compareAndSet(current, current - 1)) {
+                logger.info("Reducing pool size to " + (current - 1));
+                return true;
+            }
+            current = currentMaxPoolSize.get();
+        }
+        return false;
+    }
     
     /**
      * Simple check to see if the exception is related to a connection error,
@@ -306,6 +513,60 @@ public class PoolConnectionProvider implements IConnectionProvider {
         return this.maxPoolSize;
     }
 
+    /**
+     * Get the metrics describing the current state and history of this pool
+     * @return
+     */
+    public IPoolMetrics getMetrics() {
+        return new IPoolMetrics() {
+
+            @Override
+            public int getMaxPoolSize() {
+                return maxPoolSize;
+            }
+
+            @Override
+            public int getCurrentMaxPoolSize() {
+                return currentMaxPoolSize.get();
+            }
+
+            @Override
+            public int getAllocated() {
+                return allocated.get();
+            }
+
+            @Override
+            public int getInUse() {
+                return inUse.size();
+            }
+
+            @Override
+            public int getWaiting() {
+                return waiting.get();
+            }
+
+            @Override
+            public long getLeakCount() {
+                return leakCount.get();
+            }
+
+            @Override
+            public LatencyHistogram getBorrowWaitTime() {
+                return borrowWaitTime;
+            }
+
+            @Override
+            public LatencyHistogram getHoldTime() {
+                return holdTime;
+            }
+
+            @Override
+            public LatencyHistogram getStatementTime() {
+                return statementTime;
+            }
+        };
+    }
+
     /**
      * The caller is telling us they no longer need to use the pool so we can free
      * any internal resources. This also let's us check for anything currently
@@ -318,8 +579,8 @@ public class PoolConnectionProvider implements IConnectionProvider {
             throw new IllegalStateException("transaction still active");
         }
 
-        if (this.free.size() != this.allocated) {
-            throw new IllegalStateException(String.format("Connections still in use [free=%d, allocated=%d]", this.free.size(), this.allocated));
+        if (this.free.size() != this.allocated.get()) {
+            throw new IllegalStateException(String.format("Connections still in use [free=%d, allocated=%d]", this.free.size(), this.allocated.get()));
         }
     }
-}
\ No newline at end of file
+}
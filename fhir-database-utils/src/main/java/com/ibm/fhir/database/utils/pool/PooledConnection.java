@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019
+ * (C) Copyright IBM Corp. 2019, 2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -24,6 +24,7 @@ import java.sql.Struct;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 
 /**
@@ -50,7 +51,15 @@ public class PooledConnection implements Connection {
 
     // Track the open/close pairing
     private int openCount = 0;
-    
+
+    // When the connection was borrowed from the pool (System.nanoTime)
+    private final long borrowTime = System.nanoTime();
+
+    // Where the connection was borrowed, captured only when leak detection is enabled
+    private final Throwable borrower;
+
+    // So we only report each leak once
+    private final AtomicBoolean leakReported = new AtomicBoolean();
 
     /**
      * Public constructor
@@ -59,9 +68,21 @@ public class PooledConnection implements Connection {
      * @param closeOnAnyError
      */
     public PooledConnection(PoolConnectionProvider cp, Connection wrappee, boolean closeOnAnyError) {
+        this(cp, wrappee, closeOnAnyError, null);
+    }
+
+    /**
+     * Public constructor
+     * @param cp
+     * @param wrappee
+     * @param closeOnAnyError
+     * @param borrower the stack of the thread borrowing the connection, or null
+     */
+    public PooledConnection(PoolConnectionProvider cp, Connection wrappee, boolean closeOnAnyError, Throwable borrower) {
         this.pool = cp;
         this.wrapped = wrappee;
         this.closeOnAnyError = closeOnAnyError;
+        this.borrower = borrower;
     }
 
     /**
@@ -72,6 +93,30 @@ public class PooledConnection implements Connection {
         return this.wrapped;
     }
 
+    /**
+     * Get the time (System.nanoTime) when this connection was borrowed from the pool
+     * @return
+     */
+    public long getBorrowTime() {
+        return this.borrowTime;
+    }
+
+    /**
+     * Get the stack captured when this connection was borrowed from the pool
+     * @return the borrower stack, or null if leak detection wasn't enabled
+     */
+    public Throwable getBorrower() {
+        return this.borrower;
+    }
+
+    /**
+     * Flag this connection as having been reported as a possible leak
+     * @return true if this is the first time the leak has been reported
+     */
+    public boolean markLeakReported() {
+        return this.leakReported.compareAndSet(false, true);
+    }
+
     /**
      * Getter for the broken connection flag
      * @return
@@ -199,7 +244,7 @@ public class PooledConnection implements Connection {
     @Override
     public Statement createStatement() throws SQLException {
         try {
-            return wrapped.createStatement();
+            return timed(wrapped.createStatement(), Statement.class);
         }
         catch (SQLException x) {
             updateReusable(x);
@@ -211,7 +256,7 @@ public class PooledConnection implements Connection {
     public Statement createStatement(int resultSetType, int resultSetConcurrency)
                     throws SQLException {
         try {
-            return wrapped.createStatement(resultSetType, resultSetConcurrency);
+            return timed(wrapped.createStatement(resultSetType, resultSetConcurrency), Statement.class);
         }
         catch (SQLException x) {
             updateReusable(x);
@@ -224,7 +269,7 @@ public class PooledConnection implements Connection {
                     int resultSetConcurrency, int resultSetHoldability)
                     throws SQLException {
         try {
-            return wrapped.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
+            return timed(wrapped.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability), Statement.class);
         }
         catch (SQLException x) {
             updateReusable(x);
@@ -390,7 +435,7 @@ public class PooledConnection implements Connection {
     @Override
     public CallableStatement prepareCall(String sql) throws SQLException {
         try {
-            return wrapped.prepareCall(sql);
+            return timed(wrapped.prepareCall(sql), CallableStatement.class);
         }
         catch (SQLException x) {
             updateReusable(x);
@@ -402,7 +447,7 @@ public class PooledConnection implements Connection {
     public CallableStatement prepareCall(String sql, int resultSetType,
                     int resultSetConcurrency) throws SQLException {
         try {
-            return wrapped.prepareCall(sql, resultSetType, resultSetConcurrency);
+            return timed(wrapped.prepareCall(sql, resultSetType, resultSetConcurrency), CallableStatement.class);
         }
         catch (SQLException x) {
             updateReusable(x);
@@ -415,7 +460,7 @@ public class PooledConnection implements Connection {
                     int resultSetConcurrency, int resultSetHoldability)
                     throws SQLException {
         try {
-            return wrapped.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+            return timed(wrapped.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability), CallableStatement.class);
         }
         catch (SQLException x) {
             updateReusable(x);
@@ -426,7 +471,7 @@ public class PooledConnection implements Connection {
     @Override
     public PreparedStatement prepareStatement(String sql) throws SQLException {
         try {
-            return wrapped.prepareStatement(sql);
+            return timed(wrapped.prepareStatement(sql), PreparedStatement.class);
         }
         catch (SQLException x) {
             updateReusable(x);
@@ -438,7 +483,7 @@ public class PooledConnection implements Connection {
     public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys)
                     throws SQLException {
         try {
-            return wrapped.prepareStatement(sql, autoGeneratedKeys);
+            return timed(wrapped.prepareStatement(sql, autoGeneratedKeys), PreparedStatement.class);
         }
         catch (SQLException x) {
             updateReusable(x);
@@ -450,7 +495,7 @@ public class PooledConnection implements Connection {
     public PreparedStatement prepareStatement(String sql, int[] columnIndexes)
                     throws SQLException {
         try {
-            return wrapped.prepareStatement(sql, columnIndexes);
+            return timed(wrapped.prepareStatement(sql, columnIndexes), PreparedStatement.class);
         }
         catch (SQLException x) {
             updateReusable(x);
@@ -462,7 +507,7 @@ public class PooledConnection implements Connection {
     public PreparedStatement prepareStatement(String sql, String[] columnNames)
                     throws SQLException {
         try {
-            return wrapped.prepareStatement(sql, columnNames);
+            return timed(wrapped.prepareStatement(sql, columnNames), PreparedStatement.class);
         }
         catch (SQLException x) {
             updateReusable(x);
@@ -474,7 +519,7 @@ public class PooledConnection implements Connection {
     public PreparedStatement prepareStatement(String sql, int resultSetType,
                     int resultSetConcurrency) throws SQLException {
         try {
-            return wrapped.prepareStatement(sql, resultSetType, resultSetConcurrency);
+            return timed(wrapped.prepareStatement(sql, resultSetType, resultSetConcurrency), PreparedStatement.class);
         }
         catch (SQLException x) {
             updateReusable(x);
@@ -487,7 +532,7 @@ public class PooledConnection implements Connection {
                     int resultSetConcurrency, int resultSetHoldability)
                     throws SQLException {
         try {
-            return wrapped.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+            return timed(wrapped.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability), PreparedStatement.class);
         }
         catch (SQLException x) {
             updateReusable(x);
@@ -662,6 +707,18 @@ public class PooledConnection implements Connection {
         }
     }
 
+    /**
+     * Wrap the statement so that the pool can record its execution time, if
+     * statement timing is enabled
+     * @param statement
+     * @param iface
+     * @return
+     */
+    private <T extends Statement> T timed(T statement, Class<T> iface) {
+        LatencyHistogram histogram = pool.getStatementTimeHistogram();
+        return histogram != null ? TimedStatementHandler.wrap(statement, iface, histogram) : statement;
+    }
+
     /**
      * Reduced visibility so that only the connection pool gets to
      * close the underlying connection.
@@ -0,0 +1,64 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.database.utils.pool;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Statement;
+
+/**
+ * Dynamic proxy handler used to record the time taken by the execute* methods
+ * of a statement. Everything else is passed straight through to the statement.
+ */
+public class TimedStatementHandler implements InvocationHandler {
+
+    // The statement we're timing
+    private final Statement wrapped;
+
+    // Where to record the execution times
+    private final LatencyHistogram histogram;
+
+    /**
+     * Public constructor
+     * @param wrapped
+     * @param histogram
+     */
+    public TimedStatementHandler(Statement wrapped, LatencyHistogram histogram) {
+        this.wrapped = wrapped;
+        this.histogram = histogram;
+    }
+
+    /**
+     * Wrap the statement in a proxy implementing the given interface
+     * @param statement
+     * @param iface Statement, PreparedStatement or CallableStatement
+     * @param histogram
+     * @return
+     */
+    public static <T extends Statement> T wrap(T statement, Class<T> iface, LatencyHistogram histogram) {
+        return iface.cast(Proxy.newProxyInstance(TimedStatementHandler.class.getClassLoader(), new Class<?>[] { iface },
+            new TimedStatementHandler(statement, histogram)));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        final boolean timed = method.getName().startsWith("execute");
+        final long start = timed ? System.nanoTime() : 0;
+        try {
+            return method.invoke(wrapped, args);
+        } catch (InvocationTargetException x) {
+            // callers expect to see the SQLException, not the reflection wrapper
+            throw x.getCause();
+        } finally {
+            if (timed) {
+                histogram.record(System.nanoTime() - start);
+            }
+        }
+    }
+}
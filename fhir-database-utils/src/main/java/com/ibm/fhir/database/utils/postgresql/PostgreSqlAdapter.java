@@ -10,6 +10,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -25,6 +26,7 @@ import com.ibm.fhir.database.utils.api.IDatabaseTarget;
 import com.ibm.fhir.database.utils.common.AddForeignKeyConstraint;
 import com.ibm.fhir.database.utils.common.CommonDatabaseAdapter;
 import com.ibm.fhir.database.utils.common.DataDefinitionUtil;
+import com.ibm.fhir.database.utils.common.DateMath;
 import com.ibm.fhir.database.utils.model.ColumnBase;
 import com.ibm.fhir.database.utils.model.ForeignKeyConstraint;
 import com.ibm.fhir.database.utils.model.IdentityDef;
@@ -89,7 +91,7 @@ public class PostgreSqlAdapter extends CommonDatabaseAdapter {
 
     @Override
     public void createTable(String schemaName, String name, String tenantColumnName, List<ColumnBase> columns, PrimaryKeyDef primaryKey,
-            IdentityDef identity, String tablespaceName) {
+            IdentityDef identity, String tablespaceName, String rangePartitionColumnName) {
 
         // PostgreSql doesn't support partitioning, so we ignore tenantColumnName
         if (tenantColumnName != null) {
@@ -98,7 +100,23 @@ public class PostgreSqlAdapter extends CommonDatabaseAdapter {
 
         // We also ignore tablespace for PostgreSql
         String ddl = buildCreateTableStatement(schemaName, name, columns, primaryKey, identity, null);
+        if (rangePartitionColumnName != null) {
+            ddl = ddl + " PARTITION BY RANGE (" + rangePartitionColumnName + ")";
+        }
         runStatement(ddl);
+
+        if (rangePartitionColumnName != null) {
+            // Monthly partitions are added ahead of time by Db2PartitionControl (using PostgreSqlCatalogAccess),
+            // so here we only need the first partition to hold everything before the current month. Unlike
+            // DB2, we can also add a default partition so that inserts never fail if the partitions
+            // haven't been rolled forward in time
+            final String qualifiedName = DataDefinitionUtil.getQualifiedName(schemaName, name);
+            final String firstMonth = DateMath.format(DateMath.truncateToMonth(new Date()));
+            runStatement("CREATE TABLE " + DataDefinitionUtil.getQualifiedName(schemaName, name + "_PMIN")
+                    + " PARTITION OF " + qualifiedName + " FOR VALUES FROM (MINVALUE) TO ('" + firstMonth + "')");
+            runStatement("CREATE TABLE " + DataDefinitionUtil.getQualifiedName(schemaName, name + "_DEFAULT")
+                    + " PARTITION OF " + qualifiedName + " DEFAULT");
+        }
     }
 
     @Override
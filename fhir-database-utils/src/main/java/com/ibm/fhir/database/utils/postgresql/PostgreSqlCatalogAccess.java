@@ -0,0 +1,92 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.database.utils.postgresql;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.database.utils.api.DataAccessException;
+import com.ibm.fhir.database.utils.api.ICatalogAccess;
+import com.ibm.fhir.database.utils.api.PartitionInfo;
+import com.ibm.fhir.database.utils.common.DateMath;
+
+/**
+ * PostgreSql implementation of the partition maintenance operations, so that
+ * the same business logic (Db2PartitionControl) can manage the range-partitioned
+ * tables in both databases
+ */
+public class PostgreSqlCatalogAccess implements ICatalogAccess {
+    private static final Logger logger = Logger.getLogger(PostgreSqlCatalogAccess.class.getName());
+
+    private Connection connection;
+    private PostgreSqlCatalogDAO dao = new PostgreSqlCatalogDAO();
+
+    public PostgreSqlCatalogAccess(Connection c) {
+        this.connection = c;
+    }
+
+    @Override
+    public List<PartitionInfo> getPartitionList(String schema, String table) {
+        try {
+            return dao.getPartitionList(connection, schema, table);
+        }
+        catch (SQLException x) {
+            throw new DataAccessException(x);
+        }
+    }
+
+    @Override
+    public void addMonthPartition(String schema, String table, Date lowValue) {
+        try {
+            logger.info("Adding partition 'M"  + DateMath.format2(lowValue) + "' to " + schema + "." + table);
+            dao.addPartition(connection, "M", schema, table, lowValue, DateMath.addMonths(lowValue, 1));
+        }
+        catch (SQLException x) {
+            throw new DataAccessException(x);
+        }
+    }
+
+    @Override
+    public void addDayPartition(String schema, String table, Date lowValue) {
+        try {
+            logger.info("Adding partition 'D"  + DateMath.format2(lowValue) + "' to " + schema + "." + table);
+            dao.addPartition(connection, "D", schema, table, lowValue, DateMath.addDays(lowValue, 1));
+        }
+        catch (SQLException x) {
+            throw new DataAccessException(x);
+        }
+    }
+
+    @Override
+    public void dropPartition(String schema, String table, PartitionInfo pi) {
+        try {
+            logger.info("Dropping partition '" + pi.getDataPartitionName() + "' from " + schema + "." + table);
+            dao.dropPartition(connection, schema, pi.getDataPartitionName());
+        }
+        catch (SQLException x) {
+            throw new DataAccessException(x);
+        }
+    }
+
+    @Override
+    public void dropDetachedPartitions(String schema, String table, int partMaintBatchSize) {
+        // NOP. PostgreSql partitions are dropped directly, so nothing is left behind
+    }
+
+    @Override
+    public void commitBatch() {
+        try {
+            logger.info("Committing batch partition maintanence operations!");
+            this.connection.commit();
+        } catch (SQLException x) {
+            throw new DataAccessException(x);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.database.utils.postgresql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.ibm.fhir.database.utils.api.PartitionInfo;
+import com.ibm.fhir.database.utils.common.DataDefinitionUtil;
+import com.ibm.fhir.database.utils.common.DateMath;
+
+/**
+ * Access to the PostgreSql catalog tables for range-partitioned tables
+ */
+public class PostgreSqlCatalogDAO {
+
+    // FOR VALUES FROM ('2020-01-01 00:00:00') TO ('2020-02-01 00:00:00')
+    private static final Pattern RANGE_BOUND = Pattern.compile("FOR VALUES FROM \\((.+)\\) TO \\((.+)\\)");
+
+    /**
+     * Get the list of range partitions, ordered by their upper bound. The default
+     * partition (if any) is not included. The partition bound is described by
+     * an expression like this:
+     * <CODE>
+        FOR VALUES FROM (MINVALUE) TO ('2020-01-01 00:00:00')
+        FOR VALUES FROM ('2020-01-01 00:00:00') TO ('2020-02-01 00:00:00')
+        DEFAULT
+       </CODE>
+     * @param c
+     * @param schema
+     * @param tableName
+     * @return
+     * @throws SQLException
+     */
+    public List<PartitionInfo> getPartitionList(Connection c, String schema, String tableName) throws SQLException {
+        final String SQL = ""
+                + "SELECT c.relname, pg_get_expr(c.relpartbound, c.oid) "
+                + "  FROM pg_catalog.pg_inherits i "
+                + "  JOIN pg_catalog.pg_class c ON c.oid = i.inhrelid "
+                + "  JOIN pg_catalog.pg_class p ON p.oid = i.inhparent "
+                + "  JOIN pg_catalog.pg_namespace n ON n.oid = p.relnamespace "
+                + " WHERE n.nspname = LOWER(?) "
+                + "   AND p.relname = LOWER(?)";
+
+        List<PartitionInfo> result = new ArrayList<>();
+        try (PreparedStatement ps = c.prepareStatement(SQL)) {
+            ps.setString(1, schema);
+            ps.setString(2, tableName);
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                PartitionInfo pi = toPartitionInfo(tableName, rs.getString(1), rs.getString(2));
+                if (pi != null) {
+                    result.add(pi);
+                }
+            }
+        }
+
+        result.sort(Comparator.comparing(PartitionInfo::getHighValue));
+        for (int i = 0; i < result.size(); i++) {
+            result.get(i).setSeqno(i);
+        }
+        return result;
+    }
+
+    /**
+     * Convert the partition bound expression to a PartitionInfo
+     * @param tableName
+     * @param partitionName
+     * @param bound
+     * @return the partition info, or null if this isn't a range partition
+     */
+    public static PartitionInfo toPartitionInfo(String tableName, String partitionName, String bound) {
+        if (bound == null) {
+            return null;
+        }
+
+        Matcher m = RANGE_BOUND.matcher(bound);
+        if (!m.matches()) {
+            return null;
+        }
+
+        PartitionInfo pi = new PartitionInfo();
+        pi.setTableName(tableName);
+        pi.setDataPartitionName(partitionName);
+        pi.setLowInclusive(true);
+        pi.setLowValue(unwrap(m.group(1)));
+        pi.setHighInclusive(false);
+        pi.setHighValue(unwrap(m.group(2)));
+        return pi;
+    }
+
+    /**
+     * The bound values look like this: '2017-01-01 00:00:00'.
+     * We want this: 2017-01-01
+     * @param value
+     * @return
+     */
+    public static String unwrap(final String value) {
+        if (value.charAt(0) == '\'' && value.length() >= 11) {
+            return value.substring(1, 11);
+        } else {
+            return value;
+        }
+    }
+
+    /**
+     * Bolt on a new partition to the given table
+     * @param c
+     * @param prefix
+     * @param schema
+     * @param table
+     * @param lowValue
+     * @param highValue
+     * @throws SQLException
+     */
+    public void addPartition(Connection c, final String prefix, final String schema, final String table, final Date lowValue, final Date highValue) throws SQLException {
+        final String partitionName = table + "_" + prefix + DateMath.format2(lowValue);
+        final String ddl = "CREATE TABLE " + DataDefinitionUtil.getQualifiedName(schema, partitionName)
+            + " PARTITION OF " + DataDefinitionUtil.getQualifiedName(schema, table)
+            + " FOR VALUES FROM ('" + DateMath.format(lowValue) + "') TO ('" + DateMath.format(highValue) + "')";
+
+        try (Statement s = c.createStatement()) {
+            s.executeUpdate(ddl);
+        }
+    }
+
+    /**
+     * Drop the named partition table. Unlike DB2, PostgreSql drops the partition
+     * immediately, so there's no need to detach it first
+     * @param c
+     * @param schema
+     * @param partitionName
+     * @throws SQLException
+     */
+    public void dropPartition(Connection c, final String schema, final String partitionName) throws SQLException {
+        final String ddl = "DROP TABLE " + DataDefinitionUtil.getQualifiedName(schema, partitionName);
+        try (Statement s = c.createStatement()) {
+            s.executeUpdate(ddl);
+        }
+    }
+}
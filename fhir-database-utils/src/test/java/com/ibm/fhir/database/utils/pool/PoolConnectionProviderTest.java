@@ -0,0 +1,224 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.database.utils.pool;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.database.utils.api.IConnectionProvider;
+import com.ibm.fhir.database.utils.api.IDatabaseTranslator;
+import com.ibm.fhir.database.utils.derby.DerbyTranslator;
+
+/**
+ * Unit test for the {@link PoolConnectionProvider} using fake connections
+ */
+public class PoolConnectionProviderTest {
+
+    @Test
+    public void testReuse() throws Exception {
+        MockConnectionProvider cp = new MockConnectionProvider();
+        PoolConnectionProvider pool = new PoolConnectionProvider(cp, 2);
+
+        Connection c1 = pool.getConnection();
+        c1.close();
+        Connection c2 = pool.getConnection();
+        c2.close();
+
+        // same connection for the whole transaction on this thread
+        assertSame(c2, c1);
+        assertEquals(pool.getMetrics().getInUse(), 1);
+        pool.commitTransaction();
+
+        // and the physical connection is reused for the next transaction
+        Connection c3 = pool.getConnection();
+        assertNotSame(c3, c1);
+        c3.close();
+        pool.commitTransaction();
+        assertEquals(cp.created.get(), 1);
+
+        IPoolMetrics metrics = pool.getMetrics();
+        assertEquals(metrics.getAllocated(), 1);
+        assertEquals(metrics.getInUse(), 0);
+        assertEquals(metrics.getBorrowWaitTime().getCount(), 2);
+        assertEquals(metrics.getHoldTime().getCount(), 2);
+        pool.close();
+    }
+
+    @Test
+    public void testRollbackDiscardsConnection() throws Exception {
+        MockConnectionProvider cp = new MockConnectionProvider();
+        PoolConnectionProvider pool = new PoolConnectionProvider(cp, 1);
+
+        pool.getConnection().close();
+        pool.rollbackTransaction();
+        assertEquals(pool.getMetrics().getAllocated(), 0);
+
+        pool.getConnection().close();
+        pool.commitTransaction();
+        assertEquals(cp.created.get(), 2);
+        pool.close();
+    }
+
+    @Test
+    public void testWaitForConnection() throws Exception {
+        MockConnectionProvider cp = new MockConnectionProvider();
+        PoolConnectionProvider pool = new PoolConnectionProvider(cp, 1);
+        pool.getConnection();
+
+        // Another thread has to wait until we commit
+        CountDownLatch done = new CountDownLatch(1);
+        Thread t = new Thread(() -> {
+            try {
+                pool.getConnection().close();
+                pool.commitTransaction();
+                done.countDown();
+            } catch (SQLException x) {
+                throw new IllegalStateException(x);
+            }
+        });
+        t.start();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (pool.getMetrics().getWaiting() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(pool.getMetrics().getWaiting(), 1);
+
+        pool.commitTransaction();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        t.join();
+        assertEquals(cp.created.get(), 1);
+        assertEquals(pool.getMetrics().getWaiting(), 0);
+        pool.close();
+    }
+
+    @Test
+    public void testAdaptiveSize() throws Exception {
+        MockConnectionProvider cp = new MockConnectionProvider();
+        PoolConnectionProvider pool = new PoolConnectionProvider(cp, 1);
+        pool.setAdaptiveMaxPoolSize(2);
+        pool.getConnection();
+
+        // The second thread grows the pool instead of waiting
+        Thread t = new Thread(() -> {
+            try {
+                pool.getConnection().close();
+                pool.commitTransaction();
+            } catch (SQLException x) {
+                throw new IllegalStateException(x);
+            }
+        });
+        t.start();
+        t.join(10000);
+
+        assertEquals(cp.created.get(), 2);
+        assertEquals(pool.getMetrics().getCurrentMaxPoolSize(), 2);
+        assertEquals(pool.getMetrics().getMaxPoolSize(), 1);
+        pool.commitTransaction();
+        pool.close();
+    }
+
+    @Test
+    public void testLeakDetection() throws Exception {
+        MockConnectionProvider cp = new MockConnectionProvider();
+        PoolConnectionProvider pool = new PoolConnectionProvider(cp, 1);
+        pool.setLeakDetectionThreshold(1);
+        pool.getConnection();
+        Thread.sleep(20);
+
+        pool.checkForLeaks();
+        assertEquals(pool.getMetrics().getLeakCount(), 1);
+
+        // only reported once
+        pool.checkForLeaks();
+        assertEquals(pool.getMetrics().getLeakCount(), 1);
+        pool.commitTransaction();
+        pool.close();
+    }
+
+    @Test
+    public void testStatementTiming() throws Exception {
+        MockConnectionProvider cp = new MockConnectionProvider();
+        PoolConnectionProvider pool = new PoolConnectionProvider(cp, 1);
+        pool.setStatementTiming(true);
+
+        try (Connection c = pool.getConnection()) {
+            try (PreparedStatement ps = c.prepareStatement("SELECT 1 FROM SYSIBM.SYSDUMMY1")) {
+                ps.setInt(1, 1);
+                ps.executeUpdate();
+                ps.executeUpdate();
+            }
+        }
+        pool.commitTransaction();
+        assertEquals(pool.getMetrics().getStatementTime().getCount(), 2);
+        pool.close();
+    }
+
+    @Test
+    public void testHistogram() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            h.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        assertEquals(h.getCount(), 100);
+        assertEquals(h.getMeanMillis(), 50.5, 0.001);
+        assertEquals(h.getMaxMillis(), 100.0, 0.001);
+
+        // percentiles are reported as bucket upper bounds (powers of 2 micros)
+        assertEquals(h.getPercentileMillis(50), 65.536, 0.001);
+        assertEquals(h.getPercentileMillis(99), 100.0, 0.001);
+    }
+
+    /**
+     * Creates fake connections which accept and ignore everything
+     */
+    private static class MockConnectionProvider implements IConnectionProvider {
+        final AtomicInteger created = new AtomicInteger();
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            created.incrementAndGet();
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+                (proxy, method, args) -> {
+                    if ("prepareStatement".equals(method.getName())) {
+                        return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { PreparedStatement.class },
+                            (p, m, a) -> m.getReturnType() == int.class ? 0 : null);
+                    }
+                    return null;
+                });
+        }
+
+        @Override
+        public IDatabaseTranslator getTranslator() {
+            return new DerbyTranslator();
+        }
+
+        @Override
+        public void commitTransaction() throws SQLException {
+        }
+
+        @Override
+        public void rollbackTransaction() throws SQLException {
+        }
+
+        @Override
+        public void describe(String prefix, StringBuilder cfg, String key) {
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.database.utils.postgresql;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.database.utils.api.ICatalogAccess;
+import com.ibm.fhir.database.utils.api.PartitionInfo;
+import com.ibm.fhir.database.utils.api.PartitionUnit;
+import com.ibm.fhir.database.utils.common.DateMath;
+import com.ibm.fhir.database.utils.db2.Db2PartitionControl;
+
+/**
+ * Tests for the PostgreSql range partition catalog handling
+ */
+public class PostgreSqlCatalogDAOTest {
+
+    @Test
+    public void testRangeBound() {
+        PartitionInfo pi = PostgreSqlCatalogDAO.toPartitionInfo("t1", "t1_m20200101",
+            "FOR VALUES FROM ('2020-01-01 00:00:00') TO ('2020-02-01 00:00:00')");
+        assertEquals(pi.getDataPartitionName(), "t1_m20200101");
+        assertEquals(pi.getLowValue(), "2020-01-01");
+        assertEquals(pi.getHighValue(), "2020-02-01");
+        assertTrue(pi.isLowInclusive());
+        assertFalse(pi.isHighInclusive());
+    }
+
+    @Test
+    public void testMinValueBound() {
+        PartitionInfo pi = PostgreSqlCatalogDAO.toPartitionInfo("t1", "t1_pmin",
+            "FOR VALUES FROM (MINVALUE) TO ('2020-01-01 00:00:00')");
+        assertEquals(pi.getLowValue(), "MINVALUE");
+        assertEquals(pi.getHighValue(), "2020-01-01");
+    }
+
+    @Test
+    public void testDefaultBound() {
+        assertNull(PostgreSqlCatalogDAO.toPartitionInfo("t1", "t1_default", "DEFAULT"));
+    }
+
+    @Test
+    public void testPushAheadFromFirstPartition() {
+        // The table starts out with just the MINVALUE partition created along with the table
+        final List<Date> added = new ArrayList<>();
+        ICatalogAccess catalog = new ICatalogAccess() {
+            @Override
+            public List<PartitionInfo> getPartitionList(String schema, String table) {
+                List<PartitionInfo> result = new ArrayList<>();
+                result.add(PostgreSqlCatalogDAO.toPartitionInfo(table, table + "_pmin",
+                    "FOR VALUES FROM (MINVALUE) TO ('2020-01-01 00:00:00')"));
+                return result;
+            }
+
+            @Override
+            public void addMonthPartition(String schema, String table, Date lowValue) {
+                added.add(lowValue);
+            }
+
+            @Override
+            public void addDayPartition(String schema, String table, Date lowValue) {
+                added.add(lowValue);
+            }
+
+            @Override
+            public void dropPartition(String schema, String table, PartitionInfo pi) {
+                throw new IllegalStateException("unexpected drop");
+            }
+
+            @Override
+            public void dropDetachedPartitions(String schema, String table, int partMaintBatchSize) {
+                // NOP
+            }
+
+            @Override
+            public void commitBatch() {
+                // NOP
+            }
+        };
+
+        Db2PartitionControl control = new Db2PartitionControl(catalog, DateMath.parse("2020-01-15"));
+        control.pushAhead("s1", "t1", 3, PartitionUnit.MONTHS, 0, 100);
+        assertEquals(added.size(), 3);
+        assertEquals(DateMath.format(added.get(0)), "2020-01-01");
+        assertEquals(DateMath.format(added.get(2)), "2020-03-01");
+    }
+}
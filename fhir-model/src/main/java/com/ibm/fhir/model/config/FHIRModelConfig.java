@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019
+ * (C) Copyright IBM Corp. 2019, 2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -46,11 +46,18 @@ public final class FHIRModelConfig {
      */
     public static final String PROPERTY_EXTENDED_CODEABLE_CONCEPT_VALIDATION = "com.ibm.fhir.model.extendedCodeableConceptValidation";
 
+    /**
+     * Used to determine whether XHTML content is validated against the full XHTML schema (instead of the streaming
+     * narrative checker) during object construction
+     */
+    public static final String PROPERTY_XHTML_SCHEMA_VALIDATION = "com.ibm.fhir.model.xhtmlSchemaValidation";
+
     private static final Format DEFAULT_TO_STRING_FORMAT = Format.JSON;
     private static final int DEFAULT_TO_STRING_INDENT_AMOUNT = 2;
     private static final boolean DEFAULT_TO_STRING_PRETTY_PRINTING = true;
     private static final boolean DEFAULT_CHECK_REFERENCE_TYPES = true;
     private static final boolean DEFAULT_EXTENDED_CODEABLE_CONCEPT_VALIDATION = true;
+    private static final boolean DEFAULT_XHTML_SCHEMA_VALIDATION = false;
 
     private static final Map<String, Object> properties = new ConcurrentHashMap<>();
    
@@ -95,6 +102,14 @@ public final class FHIRModelConfig {
     public static boolean getExtendedCodeableConceptValidation() {
         return getPropertyOrDefault(PROPERTY_EXTENDED_CODEABLE_CONCEPT_VALIDATION, DEFAULT_EXTENDED_CODEABLE_CONCEPT_VALIDATION, Boolean.class);
     }
+
+    public static void setXHTMLSchemaValidation(boolean xhtmlSchemaValidation) {
+        setProperty(PROPERTY_XHTML_SCHEMA_VALIDATION, xhtmlSchemaValidation);
+    }
+
+    public static boolean getXHTMLSchemaValidation() {
+        return getPropertyOrDefault(PROPERTY_XHTML_SCHEMA_VALIDATION, DEFAULT_XHTML_SCHEMA_VALIDATION, Boolean.class);
+    }
    
     public static void setProperty(String name, Object value) {
         properties.put(requireNonNull(name), requireNonNull(value));
@@ -14,6 +14,8 @@ import java.util.Objects;
 
 import com.ibm.fhir.model.parser.exception.FHIRParserException;
 import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.Element;
+import com.ibm.fhir.model.util.InternSupport;
 
 public abstract class FHIRAbstractParser implements FHIRParser {
     protected Map<String, Object> properties = new HashMap<>();
@@ -55,8 +57,22 @@ public abstract class FHIRAbstractParser implements FHIRParser {
     
     @Override
     public boolean isPropertySupported(String name) {
+        if (FHIRParser.PROPERTY_INTERN_PRIMITIVES.equals(name)) {
+            return true;
+        }
         return false;
     }
+
+    /**
+     * @return the shared instance of the passed element if {@link FHIRParser#PROPERTY_INTERN_PRIMITIVES} is set,
+     *     otherwise the passed element
+     */
+    protected <T extends Element> T intern(T element) {
+        if (Boolean.TRUE.equals(properties.get(FHIRParser.PROPERTY_INTERN_PRIMITIVES))) {
+            return InternSupport.intern(element);
+        }
+        return element;
+    }
     
     @Override
     public <T extends FHIRParser> T as(Class<T> parserClass) {
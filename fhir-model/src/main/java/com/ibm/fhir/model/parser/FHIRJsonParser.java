@@ -116,7 +116,7 @@ public class FHIRJsonParser extends FHIRAbstractParser {
         if (FHIRParser.PROPERTY_IGNORE_UNRECOGNIZED_ELEMENTS.equals(name)) {
             return true;
         }
-        return false;
+        return super.isPropertySupported(name);
     }
 
     private Resource parseResource(java.lang.String elementName, JsonObject jsonObject, int elementIndex) {
@@ -18999,7 +18999,7 @@ public class FHIRJsonParser extends FHIRAbstractParser {
             throw new IllegalArgumentException("Expected: STRING but found: " + jsonValue.getValueType() + " for element: " + elementName);
         }
         stackPop();
-        return builder.build();
+        return intern(builder.build());
     }
 
     private String parseString(java.lang.String elementName, JsonValue jsonValue, JsonValue _jsonValue, int elementIndex) {
@@ -21823,7 +21823,7 @@ public class FHIRJsonParser extends FHIRAbstractParser {
             throw new IllegalArgumentException("Expected: STRING but found: " + jsonValue.getValueType() + " for element: " + elementName);
         }
         stackPop();
-        return builder.build();
+        return intern(builder.build());
     }
 
     private Uri parseUri(java.lang.String elementName, JsonValue jsonValue, JsonValue _jsonValue, int elementIndex) {
@@ -21,6 +21,14 @@ public interface FHIRParser {
      * Property name for a property that controls whether the parser will ignore or throw an exception on unrecognized elements
      */
     public static final String PROPERTY_IGNORE_UNRECOGNIZED_ELEMENTS = "com.ibm.fhir.model.parser.ignoreUnrecognizedElements";
+
+    /**
+     * Property name for a property that controls whether the parser will share (intern) repeated Uri, Canonical, Code
+     * and enumerated code values
+     *
+     * @see com.ibm.fhir.model.util.InternSupport
+     */
+    public static final String PROPERTY_INTERN_PRIMITIVES = "com.ibm.fhir.model.parser.internPrimitives";
     
     /**
      * Read a resource from the passed InputStream. This method does not close the passed InputStream.
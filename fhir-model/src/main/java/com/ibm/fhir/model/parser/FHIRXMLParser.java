@@ -42355,7 +42355,7 @@ public class FHIRXMLParser extends FHIRAbstractParser {
             case XMLStreamReader.END_ELEMENT:
                 if (reader.getLocalName().equals(elementName)) {
                     stackPop();
-                    return builder.build();
+                    return intern(builder.build());
                 }
                 break;
             }
@@ -49950,7 +49950,7 @@ public class FHIRXMLParser extends FHIRAbstractParser {
             case XMLStreamReader.END_ELEMENT:
                 if (reader.getLocalName().equals(elementName)) {
                     stackPop();
-                    return builder.build();
+                    return intern(builder.build());
                 }
                 break;
             }
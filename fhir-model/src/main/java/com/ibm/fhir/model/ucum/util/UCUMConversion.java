@@ -0,0 +1,71 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.model.ucum.util;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Objects;
+
+/**
+ * The conversion of a UCUM unit to its canonical form: a factor to apply to values expressed in the unit, and the
+ * canonical unit string of the result.
+ *
+ * <p>Units of the same kind (e.g. mmol/L and umol/L, or min and h) share the same canonical unit, which makes their
+ * values directly comparable once converted.
+ *
+ * @see UCUMUtil#getCanonicalConversion(String)
+ */
+public final class UCUMConversion {
+    private final BigDecimal factor;
+    private final String canonicalUnit;
+
+    UCUMConversion(BigDecimal factor, String canonicalUnit) {
+        this.factor = Objects.requireNonNull(factor);
+        this.canonicalUnit = Objects.requireNonNull(canonicalUnit);
+    }
+
+    /**
+     * @return
+     *     the factor which converts a value in the original unit to a value in the canonical unit
+     */
+    public BigDecimal getFactor() {
+        return factor;
+    }
+
+    /**
+     * @return
+     *     the canonical unit string, e.g. {@code mol.m-3} for {@code mmol/L}
+     */
+    public String getCanonicalUnit() {
+        return canonicalUnit;
+    }
+
+    /**
+     * Convert a value in the original unit to the canonical unit
+     *
+     * @param value
+     *     the value in the original unit
+     * @return
+     *     the value in the canonical unit
+     */
+    public BigDecimal convert(BigDecimal value) {
+        return value.multiply(factor, MathContext.DECIMAL64);
+    }
+
+    /**
+     * Convert a value in the original unit to the canonical unit, keeping the number of significant digits of the
+     * original value so that the implicit precision of the value is carried over to the result
+     *
+     * @param value
+     *     the value in the original unit
+     * @return
+     *     the value in the canonical unit, rounded to the precision of the passed value
+     */
+    public BigDecimal convertKeepingPrecision(BigDecimal value) {
+        return value.multiply(factor).round(new MathContext(value.precision()));
+    }
+}
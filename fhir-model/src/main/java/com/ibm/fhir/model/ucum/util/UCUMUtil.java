@@ -6,6 +6,17 @@
 
 package com.ibm.fhir.model.ucum.util;
 
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import org.antlr.v4.runtime.ANTLRErrorListener;
 import org.antlr.v4.runtime.BaseErrorListener;
 import org.antlr.v4.runtime.CharStreams;
@@ -16,7 +27,10 @@ import org.antlr.v4.runtime.misc.ParseCancellationException;
 
 import com.ibm.fhir.model.ucum.UCUMLexer;
 import com.ibm.fhir.model.ucum.UCUMParser;
+import com.ibm.fhir.model.ucum.UCUMParser.AnnotatableContext;
+import com.ibm.fhir.model.ucum.UCUMParser.ComponentContext;
 import com.ibm.fhir.model.ucum.UCUMParser.MainTermContext;
+import com.ibm.fhir.model.ucum.UCUMParser.TermContext;
 
 /**
  * Utility class for UCUM.
@@ -31,6 +45,67 @@ public class UCUMUtil {
         }
     };
 
+    // the base dimensions of the canonical units; mol is kept as a dimension of its own (rather than the
+    // dimensionless 6.0221367e23 of the UCUM specification) so that amounts of substance stay readable and comparable
+    private static final String[] BASE_UNITS = { "mol", "g", "m", "s", "rad", "K", "C", "cd" };
+
+    private static final Pattern POWER_OF_TEN = Pattern.compile("10[*^]([+-]?[0-9]+)");
+    private static final Pattern TRAILING_EXPONENT = Pattern.compile("(.*[^0-9+-])([+-]?[0-9]+)");
+
+    private static final Map<String, BigDecimal> PREFIXES = buildPrefixes();
+    private static final Map<String, Unit> METRIC_ATOMS = new HashMap<>();
+    private static final Map<String, Unit> NON_METRIC_ATOMS = new HashMap<>();
+    static {
+        // base units
+        metric("mol", Unit.base(0));
+        metric("g", Unit.base(1));
+        metric("m", Unit.base(2));
+        metric("s", Unit.base(3));
+        metric("rad", Unit.base(4));
+        metric("K", Unit.base(5));
+        metric("C", Unit.base(6));
+        metric("cd", Unit.base(7));
+
+        // derived metric units
+        metric("L", unit("1e-3", "m", 3));
+        metric("l", unit("1e-3", "m", 3));
+        metric("t", unit("1e6", "g", 1));
+        metric("Hz", unit("1", "s", -1));
+        metric("N", unit("1e3", "g", 1, "m", 1, "s", -2));
+        metric("Pa", unit("1e3", "g", 1, "m", -1, "s", -2));
+        metric("bar", unit("1e8", "g", 1, "m", -1, "s", -2));
+        metric("J", unit("1e3", "g", 1, "m", 2, "s", -2));
+        metric("W", unit("1e3", "g", 1, "m", 2, "s", -3));
+        metric("A", unit("1", "C", 1, "s", -1));
+        metric("V", unit("1e3", "g", 1, "m", 2, "s", -2, "C", -1));
+        metric("kat", unit("1", "mol", 1, "s", -1));
+        metric("U", unit("1e-6", "mol", 1, "s", -1).divide(unit("60")));
+        metric("m[Hg]", unit("133322e3", "g", 1, "m", -1, "s", -2));
+        metric("m[H2O]", unit("9806.65e3", "g", 1, "m", -1, "s", -2));
+        metric("cal", unit("4184", "g", 1, "m", 2, "s", -2));
+
+        // non-metric units
+        nonMetric("min", unit("60", "s", 1));
+        nonMetric("h", unit("3600", "s", 1));
+        nonMetric("d", unit("86400", "s", 1));
+        nonMetric("wk", unit("604800", "s", 1));
+        nonMetric("mo", unit("2629800", "s", 1));
+        nonMetric("a", unit("31557600", "s", 1));
+        nonMetric("%", unit("1e-2"));
+        nonMetric("[ppth]", unit("1e-3"));
+        nonMetric("[ppm]", unit("1e-6"));
+        nonMetric("[ppb]", unit("1e-9"));
+        nonMetric("[in_i]", unit("0.0254", "m", 1));
+        nonMetric("[ft_i]", unit("0.3048", "m", 1));
+        nonMetric("[lb_av]", unit("453.59237", "g", 1));
+        nonMetric("[oz_av]", unit("28.349523125", "g", 1));
+        nonMetric("[in_i'Hg]", unit("3386.38815789e3", "g", 1, "m", -1, "s", -2));
+    }
+
+    // the conversions computed so far, keyed by unit string (empty if the unit cannot be converted)
+    private static final int MAX_CACHED_CONVERSIONS = 1024;
+    private static final Map<String, Optional<UCUMConversion>> CONVERSION_CACHE = new ConcurrentHashMap<>();
+
     private UCUMUtil() {
     }
 
@@ -43,20 +118,247 @@ public class UCUMUtil {
      */
     public static boolean isValidUcum(String ucumString) {
         try {
-            UCUMLexer lexer = new UCUMLexer(CharStreams.fromString(ucumString));
-            lexer.removeErrorListeners();
-            lexer.addErrorListener(SYNTAX_ERROR_LISTENER);
+            MainTermContext expression = parse(ucumString);
+            return expression != null;
+        } catch (ParseCancellationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Get the conversion of a UCUM unit to its canonical form, e.g. a factor of 1e-3 and a canonical unit of
+     * {@code mol.m-3} for {@code umol/L}.
+     *
+     * <p>Conversions are computed from a built-in table of the common UCUM atoms and prefixes and are cached per unit
+     * string. Units with an offset (e.g. Cel), arbitrary units (e.g. [IU]) and units which are not in the table cannot
+     * be converted.
+     *
+     * @param ucumString
+     *            the UCUM unit string
+     * @return the conversion, or null if the string is not a valid UCUM unit or cannot be converted
+     */
+    public static UCUMConversion getCanonicalConversion(String ucumString) {
+        if (ucumString == null || ucumString.isEmpty()) {
+            return null;
+        }
+        Optional<UCUMConversion> conversion = CONVERSION_CACHE.get(ucumString);
+        if (conversion == null) {
+            conversion = Optional.ofNullable(computeConversion(ucumString));
+            if (CONVERSION_CACHE.size() < MAX_CACHED_CONVERSIONS) {
+                CONVERSION_CACHE.put(ucumString, conversion);
+            }
+        }
+        return conversion.orElse(null);
+    }
 
-            CommonTokenStream tokens = new CommonTokenStream(lexer);
+    private static MainTermContext parse(String ucumString) {
+        UCUMLexer lexer = new UCUMLexer(CharStreams.fromString(ucumString));
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(SYNTAX_ERROR_LISTENER);
 
-            UCUMParser parser = new UCUMParser(tokens);
-            parser.removeErrorListeners();
-            parser.addErrorListener(SYNTAX_ERROR_LISTENER);
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
 
-            MainTermContext expression = parser.mainTerm();
-            return expression != null;
+        UCUMParser parser = new UCUMParser(tokens);
+        parser.removeErrorListeners();
+        parser.addErrorListener(SYNTAX_ERROR_LISTENER);
+
+        return parser.mainTerm();
+    }
+
+    private static UCUMConversion computeConversion(String ucumString) {
+        try {
+            Unit unit = toUnit(parse(ucumString).term());
+            return (unit != null) ? new UCUMConversion(unit.factor, unit.getCanonicalUnit()) : null;
         } catch (ParseCancellationException e) {
-            return false;
+            return null;
+        }
+    }
+
+    /**
+     * The grammar is right-recursive but UCUM operators are applied from left to right, so a term is flattened
+     * into its components before they are combined
+     */
+    private static Unit toUnit(TermContext term) {
+        Unit result = Unit.ONE;
+        boolean divide = false;
+        while (term != null) {
+            if (term.component() == null) {
+                // '/' term
+                divide = true;
+                term = term.term();
+                continue;
+            }
+            Unit unit = toUnit(term.component());
+            if (unit == null) {
+                return null;
+            }
+            result = divide ? result.divide(unit) : result.multiply(unit);
+            if (term.term() != null) {
+                divide = "/".equals(term.getChild(1).getText());
+            }
+            term = term.term();
+        }
+        return result;
+    }
+
+    private static Unit toUnit(ComponentContext component) {
+        if (component.term() != null) {
+            // '(' term ')' with an optional annotation
+            return toUnit(component.term());
+        }
+        if (component.annotatable() != null) {
+            return toUnit(component.annotatable());
+        }
+        if (component.digitSymbols() != null) {
+            return new Unit(new BigDecimal(component.digitSymbols().getText()), new int[BASE_UNITS.length]);
+        }
+        // annotation only, e.g. {cells}
+        return Unit.ONE;
+    }
+
+    private static Unit toUnit(AnnotatableContext annotatable) {
+        String symbol = annotatable.simpleUnit().getText();
+        Integer exponent = (annotatable.exponent() != null) ? parseExponent(annotatable.exponent().getText()) : null;
+
+        if (exponent != null && ("10*".equals(symbol) || "10^".equals(symbol))) {
+            return unit("1e" + exponent);
+        }
+        Matcher matcher = POWER_OF_TEN.matcher(symbol);
+        if (matcher.matches()) {
+            return unit("1e" + parseExponent(matcher.group(1))).pow((exponent != null) ? exponent : 1);
+        }
+
+        Unit unit = lookup(symbol);
+        if (unit == null && exponent == null) {
+            // the grammar does not separate the exponent of a simple unit such as m2 from its symbol
+            matcher = TRAILING_EXPONENT.matcher(symbol);
+            if (matcher.matches()) {
+                unit = lookup(matcher.group(1));
+                exponent = parseExponent(matcher.group(2));
+            }
+        }
+        if (unit == null) {
+            return null;
+        }
+        return (exponent != null) ? unit.pow(exponent) : unit;
+    }
+
+    private static int parseExponent(String exponent) {
+        return Integer.parseInt(exponent.startsWith("+") ? exponent.substring(1) : exponent);
+    }
+
+    private static Unit lookup(String symbol) {
+        Unit unit = METRIC_ATOMS.get(symbol);
+        if (unit == null) {
+            unit = NON_METRIC_ATOMS.get(symbol);
+        }
+        if (unit == null) {
+            for (Map.Entry<String, BigDecimal> prefix : PREFIXES.entrySet()) {
+                if (symbol.length() > prefix.getKey().length() && symbol.startsWith(prefix.getKey())) {
+                    Unit atom = METRIC_ATOMS.get(symbol.substring(prefix.getKey().length()));
+                    if (atom != null) {
+                        return atom.scale(prefix.getValue());
+                    }
+                }
+            }
+        }
+        return unit;
+    }
+
+    private static Map<String, BigDecimal> buildPrefixes() {
+        Map<String, BigDecimal> prefixes = new HashMap<>();
+        String[] symbols = { "Y", "Z", "E", "P", "T", "G", "M", "k", "h", "da", "d", "c", "m", "u", "n", "p", "f", "a", "z", "y" };
+        int[] exponents = { 24, 21, 18, 15, 12, 9, 6, 3, 2, 1, -1, -2, -3, -6, -9, -12, -15, -18, -21, -24 };
+        for (int i = 0; i < symbols.length; i++) {
+            prefixes.put(symbols[i], BigDecimal.ONE.scaleByPowerOfTen(exponents[i]));
+        }
+        return Collections.unmodifiableMap(prefixes);
+    }
+
+    private static void metric(String symbol, Unit unit) {
+        METRIC_ATOMS.put(symbol, unit);
+    }
+
+    private static void nonMetric(String symbol, Unit unit) {
+        NON_METRIC_ATOMS.put(symbol, unit);
+    }
+
+    /**
+     * Create a unit from a factor and pairs of base unit symbol and exponent
+     */
+    private static Unit unit(String factor, Object... dimensions) {
+        int[] exponents = new int[BASE_UNITS.length];
+        for (int i = 0; i < dimensions.length; i += 2) {
+            exponents[Arrays.asList(BASE_UNITS).indexOf(dimensions[i])] = (Integer) dimensions[i + 1];
+        }
+        return new Unit(new BigDecimal(factor), exponents);
+    }
+
+    /**
+     * A factor applied to a product of powers of the base units
+     */
+    private static final class Unit {
+        private static final Unit ONE = new Unit(BigDecimal.ONE, new int[BASE_UNITS.length]);
+
+        private final BigDecimal factor;
+        private final int[] exponents;
+
+        private Unit(BigDecimal factor, int[] exponents) {
+            this.factor = factor;
+            this.exponents = exponents;
+        }
+
+        private static Unit base(int index) {
+            int[] exponents = new int[BASE_UNITS.length];
+            exponents[index] = 1;
+            return new Unit(BigDecimal.ONE, exponents);
+        }
+
+        private Unit scale(BigDecimal scale) {
+            return new Unit(factor.multiply(scale), exponents);
+        }
+
+        private Unit multiply(Unit other) {
+            int[] result = new int[BASE_UNITS.length];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = exponents[i] + other.exponents[i];
+            }
+            return new Unit(factor.multiply(other.factor, MathContext.DECIMAL64), result);
+        }
+
+        private Unit divide(Unit other) {
+            int[] result = new int[BASE_UNITS.length];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = exponents[i] - other.exponents[i];
+            }
+            return new Unit(factor.divide(other.factor, MathContext.DECIMAL64), result);
+        }
+
+        private Unit pow(int exponent) {
+            int[] result = new int[BASE_UNITS.length];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = exponents[i] * exponent;
+            }
+            return new Unit(factor.pow(exponent, MathContext.DECIMAL64), result);
+        }
+
+        /**
+         * @return the canonical unit string, e.g. g.m-3; "1" for a dimensionless unit
+         */
+        private String getCanonicalUnit() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < exponents.length; i++) {
+                if (exponents[i] != 0) {
+                    if (sb.length() > 0) {
+                        sb.append('.');
+                    }
+                    sb.append(BASE_UNITS[i]);
+                    if (exponents[i] != 1) {
+                        sb.append(exponents[i]);
+                    }
+                }
+            }
+            return (sb.length() > 0) ? sb.toString() : "1";
         }
     }
 }
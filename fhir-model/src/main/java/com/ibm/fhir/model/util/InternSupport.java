@@ -0,0 +1,132 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.model.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.ibm.fhir.model.type.Canonical;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.Element;
+import com.ibm.fhir.model.type.String;
+import com.ibm.fhir.model.type.Uri;
+
+/**
+ * Static helper methods for sharing (interning) immutable primitive elements which repeat across and within resources
+ * (e.g. Coding.system values and common codes).
+ *
+ * <p>Only elements without an id and without extensions are interned:
+ * <ul>
+ * <li>instances of an enumerated code subtype (e.g. {@link com.ibm.fhir.model.type.code.AdministrativeGender}) are
+ * replaced by the matching pre-built constant of that subtype</li>
+ * <li>instances of {@link Uri}, {@link Canonical} and {@link Code} are replaced by the first equal instance seen; each
+ * of these canonicalization tables is bounded at {@link #MAX_ENTRIES} values and, once full, no new values are added</li>
+ * </ul>
+ * All other elements are returned as-is.
+ */
+public final class InternSupport {
+    public static final int MAX_ENTRIES = 16384;
+
+    private static final Map<Class<?>, Map<java.lang.String, Element>> TABLES = buildTables();
+    private static final ClassValue<Map<java.lang.String, Element>> CONSTANTS = new ClassValue<Map<java.lang.String, Element>>() {
+        @Override
+        protected Map<java.lang.String, Element> computeValue(Class<?> type) {
+            return buildConstants(type);
+        }
+    };
+
+    private InternSupport() { }
+
+    /**
+     * Get the shared instance for the passed element
+     *
+     * @param <T>
+     *     the element type
+     * @param element
+     *     the element (may be null)
+     * @return
+     *     a shared instance equal to the passed element, or the passed element itself if it is not eligible for
+     *     interning or the canonicalization table for its type is full
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Element> T intern(T element) {
+        if (element == null || element.getId() != null || !element.getExtension().isEmpty()) {
+            return element;
+        }
+        Class<?> type = element.getClass();
+        Map<java.lang.String, Element> table = TABLES.get(type);
+        if (table != null) {
+            java.lang.String value = getValue(element);
+            if (value == null) {
+                return element;
+            }
+            Element interned = table.get(value);
+            if (interned != null) {
+                return (T) interned;
+            }
+            if (table.size() < MAX_ENTRIES) {
+                interned = table.putIfAbsent(value, element);
+                return (interned != null) ? (T) interned : element;
+            }
+            return element;
+        }
+        if (type.getSuperclass() == Code.class) {
+            java.lang.String value = ((Code) element).getValue();
+            Element constant = (value != null) ? CONSTANTS.get(type).get(value) : null;
+            return (constant != null) ? (T) constant : element;
+        }
+        return element;
+    }
+
+    /**
+     * Remove all values from the canonicalization tables; the pre-built constants of enumerated code subtypes are
+     * not affected
+     */
+    public static void clear() {
+        for (Map<java.lang.String, Element> table : TABLES.values()) {
+            table.clear();
+        }
+    }
+
+    private static java.lang.String getValue(Element element) {
+        if (element instanceof Uri) {
+            return ((Uri) element).getValue();
+        }
+        return ((String) element).getValue();
+    }
+
+    private static Map<Class<?>, Map<java.lang.String, Element>> buildTables() {
+        Map<Class<?>, Map<java.lang.String, Element>> tables = new HashMap<>();
+        tables.put(Uri.class, new ConcurrentHashMap<>());
+        tables.put(Canonical.class, new ConcurrentHashMap<>());
+        tables.put(Code.class, new ConcurrentHashMap<>());
+        return Collections.unmodifiableMap(tables);
+    }
+
+    /**
+     * The public static final fields of an enumerated code subtype are its pre-built constants
+     */
+    private static Map<java.lang.String, Element> buildConstants(Class<?> type) {
+        Map<java.lang.String, Element> constants = new HashMap<>();
+        for (Field field : type.getFields()) {
+            int modifiers = field.getModifiers();
+            if (field.getType() == type && Modifier.isStatic(modifiers) && Modifier.isFinal(modifiers)) {
+                try {
+                    Code constant = (Code) field.get(null);
+                    constants.put(constant.getValue(), constant);
+                } catch (IllegalAccessException e) {
+                    throw new Error(e);
+                }
+            }
+        }
+        return Collections.unmodifiableMap(constants);
+    }
+}
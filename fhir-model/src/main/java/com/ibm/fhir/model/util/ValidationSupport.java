@@ -66,6 +66,12 @@ public final class ValidationSupport {
             return SCHEMA.newValidator();
         }
     };
+    private static final ThreadLocal<Boolean> THREAD_LOCAL_TRUSTED_XHTML_CONTENT = new ThreadLocal<Boolean>() {
+        @Override
+        public Boolean initialValue() {
+            return Boolean.FALSE;
+        }
+    };
     private static final Set<Character> WHITESPACE = new HashSet<>(Arrays.asList(' ', '\t', '\r', '\n'));
     private static final char [] BASE64_CHARS = {
         'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H', 'I', 'J', 'K', 'L', 'M', 'N', 'O', 'P',
@@ -290,9 +296,21 @@ public final class ValidationSupport {
     }
 
     /**
+     * Checks the passed String value with the streaming {@link XHTMLChecker} or, if
+     * {@link FHIRModelConfig#getXHTMLSchemaValidation()} is set, against the full XHTML schema. No check is made while
+     * XHTML content is trusted on the current thread.
+     *
      * @throws IllegalStateException if the passed String value is not valid XHTML
+     * @see #setXHTMLContentTrusted(boolean)
      */
     public static void checkXHTMLContent(String value) {
+        if (THREAD_LOCAL_TRUSTED_XHTML_CONTENT.get()) {
+            return;
+        }
+        if (!FHIRModelConfig.getXHTMLSchemaValidation()) {
+            XHTMLChecker.check(value);
+            return;
+        }
         try {
             Validator validator = THREAD_LOCAL_VALIDATOR.get();
             validator.reset();
@@ -302,6 +320,38 @@ public final class ValidationSupport {
         }
     }
 
+    /**
+     * Indicates whether XHTML content built on the current thread should be trusted (not checked). This is intended
+     * for content which was already checked before it was stored, like a resource payload read back from persistence.
+     * Callers should restore the previous value when they are done, e.g.:
+     * <pre>
+     * boolean trusted = ValidationSupport.setXHTMLContentTrusted(true);
+     * try {
+     *     resource = parser.parse(in);
+     * } finally {
+     *     ValidationSupport.setXHTMLContentTrusted(trusted);
+     * }
+     * </pre>
+     *
+     * @param trusted
+     *     true if XHTML content should be trusted, false otherwise
+     * @return
+     *     the previous value
+     */
+    public static boolean setXHTMLContentTrusted(boolean trusted) {
+        boolean previous = THREAD_LOCAL_TRUSTED_XHTML_CONTENT.get();
+        THREAD_LOCAL_TRUSTED_XHTML_CONTENT.set(trusted);
+        return previous;
+    }
+
+    /**
+     * @return
+     *     true if XHTML content is trusted on the current thread, false otherwise
+     */
+    public static boolean isXHTMLContentTrusted() {
+        return THREAD_LOCAL_TRUSTED_XHTML_CONTENT.get();
+    }
+
     private static Schema createSchema() {
         try {
             StreamSource[] sources = new StreamSource[3];
@@ -0,0 +1,221 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.model.util;
+
+import static com.ibm.fhir.model.util.XMLSupport.XHTML_NS_URI;
+
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * A single pass, streaming checker for the XHTML content of a FHIR narrative.
+ *
+ * <p>The checker enforces the rules from the FHIR specification (and the fhir-xhtml.xsd schema that ships with this
+ * module) which matter for safety and interoperability:
+ * <ul>
+ * <li>the content is well-formed XML without a DTD or external entities</li>
+ * <li>the root element is a {@code div} in the XHTML namespace</li>
+ * <li>all elements are XHTML elements that are allowed in a narrative (no head, body, scripts, forms, objects, etc.)</li>
+ * <li>all attributes are allowed for the element they appear on (in particular, no event attributes)</li>
+ * <li>required attributes are present and list, definition list, table and image map children appear within the
+ * expected parent</li>
+ * </ul>
+ *
+ * <p>It does not enforce the complete content model of the schema (e.g. block versus inline nesting) or the lexical
+ * form of attribute values. Use
+ * {@link com.ibm.fhir.model.config.FHIRModelConfig#setXHTMLSchemaValidation(boolean)} to fall back to full schema
+ * validation where that is required.
+ */
+public final class XHTMLChecker {
+    private static final Set<String> CORE_ATTRS = set("id", "class", "style", "title");
+    private static final Set<String> I18N = set("lang", "xml:lang", "dir");
+    private static final Set<String> ATTRS = union(CORE_ATTRS, I18N);
+    private static final Set<String> CELL_ALIGN = set("align", "char", "charoff", "valign");
+
+    private static final Map<String, Set<String>> ALLOWED_ATTRIBUTES = buildAllowedAttributes();
+    private static final Map<String, Set<String>> REQUIRED_ATTRIBUTES = buildRequiredAttributes();
+    private static final Map<String, Set<String>> REQUIRED_PARENTS = buildRequiredParents();
+
+    private XHTMLChecker() { }
+
+    /**
+     * Check the passed XHTML content against the FHIR narrative rules
+     *
+     * @param value
+     *     the XHTML content
+     * @throws IllegalStateException
+     *     if the content is not valid narrative XHTML
+     */
+    public static void check(String value) {
+        XMLStreamReader reader = null;
+        try {
+            reader = XMLSupport.createXMLStreamReader(new StringReader(value));
+            Deque<String> stack = new ArrayDeque<>();
+            boolean root = false;
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                case XMLStreamReader.START_ELEMENT:
+                    String localName = reader.getLocalName();
+                    if (!XHTML_NS_URI.equals(reader.getNamespaceURI())) {
+                        throw new IllegalStateException(String.format("Invalid XHTML content: element '%s' is not in the XHTML namespace", localName));
+                    }
+                    if (stack.isEmpty()) {
+                        if (root) {
+                            throw new IllegalStateException("Invalid XHTML content: more than one root element");
+                        }
+                        if (!"div".equals(localName)) {
+                            throw new IllegalStateException(String.format("Invalid XHTML content: root element must be 'div' but was '%s'", localName));
+                        }
+                        root = true;
+                    }
+                    checkElement(reader, localName, stack.peek());
+                    stack.push(localName);
+                    break;
+                case XMLStreamReader.END_ELEMENT:
+                    stack.pop();
+                    break;
+                case XMLStreamReader.DTD:
+                    throw new IllegalStateException("Invalid XHTML content: DOCTYPE is not allowed");
+                default:
+                    break;
+                }
+            }
+            if (!root) {
+                throw new IllegalStateException("Invalid XHTML content: missing root 'div' element");
+            }
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException(String.format("Invalid XHTML content: %s", e.getMessage()), e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private static void checkElement(XMLStreamReader reader, String localName, String parent) {
+        Set<String> allowedAttributes = ALLOWED_ATTRIBUTES.get(localName);
+        if (allowedAttributes == null) {
+            throw new IllegalStateException(String.format("Invalid XHTML content: element '%s' is not allowed", localName));
+        }
+
+        Set<String> requiredParents = REQUIRED_PARENTS.get(localName);
+        if (requiredParents != null && !requiredParents.contains(parent)) {
+            throw new IllegalStateException(String.format("Invalid XHTML content: element '%s' is not allowed within element '%s'", localName, parent));
+        }
+
+        Set<String> requiredAttributes = REQUIRED_ATTRIBUTES.getOrDefault(localName, Collections.emptySet());
+        int found = 0;
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String attributeName = attributeName(reader.getAttributeNamespace(i), reader.getAttributeLocalName(i));
+            if (!allowedAttributes.contains(attributeName)) {
+                if (attributeName.startsWith("on")) {
+                    throw new IllegalStateException(String.format("Invalid XHTML content: event attribute '%s' is not allowed on element '%s'", attributeName, localName));
+                }
+                throw new IllegalStateException(String.format("Invalid XHTML content: attribute '%s' is not allowed on element '%s'", attributeName, localName));
+            }
+            if (requiredAttributes.contains(attributeName)) {
+                found++;
+            }
+        }
+        if (found < requiredAttributes.size()) {
+            throw new IllegalStateException(String.format("Invalid XHTML content: element '%s' is missing one or more required attributes: %s", localName, requiredAttributes));
+        }
+    }
+
+    private static String attributeName(String namespaceURI, String localName) {
+        if (namespaceURI == null || namespaceURI.isEmpty()) {
+            return localName;
+        }
+        if (XMLConstants.XML_NS_URI.equals(namespaceURI)) {
+            return "xml:" + localName;
+        }
+        return "{" + namespaceURI + "}" + localName;
+    }
+
+    private static Map<String, Set<String>> buildAllowedAttributes() {
+        Map<String, Set<String>> allowedAttributes = new HashMap<>();
+        for (String localName : Arrays.asList(
+                "div", "p", "h1", "h2", "h3", "h4", "h5", "h6", "ul", "ol", "li", "dl", "dt", "dd", "address", "hr",
+                "span", "em", "strong", "dfn", "code", "samp", "kbd", "var", "cite", "abbr", "acronym", "sub", "sup",
+                "tt", "i", "b", "big", "small", "caption")) {
+            allowedAttributes.put(localName, ATTRS);
+        }
+        allowedAttributes.put("pre", union(ATTRS, set("xml:space")));
+        allowedAttributes.put("blockquote", union(ATTRS, set("cite")));
+        allowedAttributes.put("q", union(ATTRS, set("cite")));
+        allowedAttributes.put("a", union(ATTRS, set("accesskey", "tabindex", "charset", "type", "name", "href", "hreflang", "rel", "rev", "shape", "coords")));
+        allowedAttributes.put("bdo", ATTRS);
+        allowedAttributes.put("br", CORE_ATTRS);
+        allowedAttributes.put("img", union(ATTRS, set("src", "alt", "longdesc", "height", "width", "usemap", "ismap")));
+        allowedAttributes.put("map", union(ATTRS, set("name")));
+        allowedAttributes.put("area", union(ATTRS, set("accesskey", "tabindex", "shape", "coords", "href", "nohref", "alt")));
+        allowedAttributes.put("table", union(ATTRS, set("summary", "width", "border", "frame", "rules", "cellspacing", "cellpadding")));
+        allowedAttributes.put("colgroup", union(ATTRS, CELL_ALIGN, set("span", "width")));
+        allowedAttributes.put("col", union(ATTRS, CELL_ALIGN, set("span", "width")));
+        for (String localName : Arrays.asList("thead", "tfoot", "tbody", "tr")) {
+            allowedAttributes.put(localName, union(ATTRS, CELL_ALIGN));
+        }
+        allowedAttributes.put("th", union(ATTRS, CELL_ALIGN, set("abbr", "axis", "headers", "scope", "rowspan", "colspan")));
+        allowedAttributes.put("td", union(ATTRS, CELL_ALIGN, set("abbr", "axis", "headers", "scope", "rowspan", "colspan")));
+        return Collections.unmodifiableMap(allowedAttributes);
+    }
+
+    private static Map<String, Set<String>> buildRequiredAttributes() {
+        Map<String, Set<String>> requiredAttributes = new HashMap<>();
+        requiredAttributes.put("img", set("src", "alt"));
+        requiredAttributes.put("area", set("alt"));
+        requiredAttributes.put("bdo", set("dir"));
+        requiredAttributes.put("map", set("id"));
+        return Collections.unmodifiableMap(requiredAttributes);
+    }
+
+    private static Map<String, Set<String>> buildRequiredParents() {
+        Map<String, Set<String>> requiredParents = new HashMap<>();
+        requiredParents.put("li", set("ul", "ol"));
+        requiredParents.put("dt", set("dl"));
+        requiredParents.put("dd", set("dl"));
+        requiredParents.put("caption", set("table"));
+        requiredParents.put("colgroup", set("table"));
+        requiredParents.put("col", set("table", "colgroup"));
+        requiredParents.put("thead", set("table"));
+        requiredParents.put("tfoot", set("table"));
+        requiredParents.put("tbody", set("table"));
+        requiredParents.put("tr", set("table", "thead", "tfoot", "tbody"));
+        requiredParents.put("th", set("tr"));
+        requiredParents.put("td", set("tr"));
+        requiredParents.put("area", set("map"));
+        return Collections.unmodifiableMap(requiredParents);
+    }
+
+    private static Set<String> set(String... values) {
+        return Collections.unmodifiableSet(new HashSet<>(Arrays.asList(values)));
+    }
+
+    @SafeVarargs
+    private static Set<String> union(Set<String>... sets) {
+        Set<String> result = new HashSet<>();
+        for (Set<String> set : sets) {
+            result.addAll(set);
+        }
+        return Collections.unmodifiableSet(result);
+    }
+}
@@ -7,12 +7,14 @@
 package com.ibm.fhir.model.ucum.util.test;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
@@ -20,6 +22,7 @@ import java.util.stream.Collectors;
 
 import org.testng.annotations.Test;
 
+import com.ibm.fhir.model.ucum.util.UCUMConversion;
 import com.ibm.fhir.model.ucum.util.UCUMUtil;
 
 /**
@@ -57,6 +60,47 @@ public class UCUMUtilTest {
         assertEquals(numInvalid, lines.size());
     }
 
+    @Test
+    public void testCanonicalConversion() throws Exception {
+        assertCanonical("mmol/L", "5.4", "mol.m-3", "5.4");
+        assertCanonical("umol/L", "5400", "mol.m-3", "5.4");
+        assertCanonical("mg/dL", "100", "g.m-3", "1000");
+        assertCanonical("kg/m2", "22", "g.m-2", "22000");
+        assertCanonical("mm[Hg]", "120", "g.m-1.s-2", "15998640");
+        assertCanonical("min", "2", "s", "120");
+        assertCanonical("/min", "60", "s-1", "1");
+        assertCanonical("10*9/L", "4.5", "m-3", "4.5E+12");
+        assertCanonical("{cells}/uL", "2", "m-3", "2E+9");
+        assertCanonical("%", "50", "1", "0.5");
+        assertCanonical("cm", "180", "m", "1.8");
+        assertCanonical("[lb_av]", "1", "g", "453.59237");
+        assertCanonical("m.s-1", "3", "m.s-1", "3");
+        assertCanonical("kg.m/s2", "1", "g.m.s-2", "1000");
+    }
+
+    @Test
+    public void testCanonicalConversionNotSupported() throws Exception {
+        assertNull(UCUMUtil.getCanonicalConversion("Cel"));
+        assertNull(UCUMUtil.getCanonicalConversion("[IU]/L"));
+        assertNull(UCUMUtil.getCanonicalConversion("mg/"));
+        assertNull(UCUMUtil.getCanonicalConversion(""));
+        assertNull(UCUMUtil.getCanonicalConversion(null));
+    }
+
+    @Test
+    public void testConvertKeepingPrecision() throws Exception {
+        UCUMConversion conversion = UCUMUtil.getCanonicalConversion("mg/dL");
+        assertEquals(conversion.convertKeepingPrecision(new BigDecimal("5.4")), new BigDecimal("54"));
+        conversion = UCUMUtil.getCanonicalConversion("/min");
+        assertEquals(conversion.convertKeepingPrecision(new BigDecimal("5")), new BigDecimal("0.08"));
+    }
+
+    private static void assertCanonical(String unit, String value, String canonicalUnit, String canonicalValue) {
+        UCUMConversion conversion = UCUMUtil.getCanonicalConversion(unit);
+        assertEquals(conversion.getCanonicalUnit(), canonicalUnit, unit);
+        assertEquals(conversion.convert(new BigDecimal(value)).compareTo(new BigDecimal(canonicalValue)), 0, unit);
+    }
+
     /**
      * Returns the lines from the file of UCUM codes.
      * 
@@ -0,0 +1,94 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.model.util.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+import java.io.StringReader;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.Observation;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.type.Canonical;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.Coding;
+import com.ibm.fhir.model.type.Extension;
+import com.ibm.fhir.model.type.Uri;
+import com.ibm.fhir.model.type.code.AdministrativeGender;
+import com.ibm.fhir.model.util.InternSupport;
+
+/**
+ * InternSupport Test
+ */
+public class InternSupportTest {
+    private static final String OBSERVATION_JSON = "{\"resourceType\":\"Observation\",\"status\":\"final\","
+            + "\"code\":{\"coding\":[{\"system\":\"http://loinc.org\",\"code\":\"8310-5\"}]},"
+            + "\"category\":[{\"coding\":[{\"system\":\"http://loinc.org\",\"code\":\"8310-5\"}]}]}";
+    private static final String PATIENT_XML = "<Patient xmlns=\"http://hl7.org/fhir\">"
+            + "<identifier><system value=\"http://example.com\"/></identifier>"
+            + "<identifier><system value=\"http://example.com\"/></identifier>"
+            + "<gender value=\"female\"/></Patient>";
+
+    @Test
+    public void testIntern() {
+        Uri uri = InternSupport.intern(Uri.of("http://loinc.org"));
+        assertSame(InternSupport.intern(Uri.of("http://loinc.org")), uri);
+
+        // tables are per type
+        Canonical canonical = InternSupport.intern(Canonical.of("http://loinc.org"));
+        assertNotSame(canonical, uri);
+        assertSame(InternSupport.intern(Canonical.of("http://loinc.org")), canonical);
+
+        Code code = InternSupport.intern(Code.of("8310-5"));
+        assertSame(InternSupport.intern(Code.of("8310-5")), code);
+
+        // enumerated codes map to the pre-built constants
+        assertSame(InternSupport.intern(AdministrativeGender.builder().value("female").build()), AdministrativeGender.FEMALE);
+
+        // elements with an id or extensions are not interned
+        Uri withId = Uri.builder().id("x").value("http://loinc.org").build();
+        assertSame(InternSupport.intern(withId), withId);
+        Code withExtension = Code.builder()
+                .value("8310-5")
+                .extension(Extension.builder().url("http://example.com").value(Code.of("x")).build())
+                .build();
+        assertSame(InternSupport.intern(withExtension), withExtension);
+    }
+
+    @Test
+    public void testParseJson() throws Exception {
+        Observation observation = FHIRParser.parser(Format.JSON)
+                .parse(new StringReader(OBSERVATION_JSON));
+        Coding coding = observation.getCode().getCoding().get(0);
+        Coding categoryCoding = observation.getCategory().get(0).getCoding().get(0);
+        assertNotSame(categoryCoding.getSystem(), coding.getSystem());
+
+        FHIRParser parser = FHIRParser.parser(Format.JSON);
+        parser.setProperty(FHIRParser.PROPERTY_INTERN_PRIMITIVES, true);
+        Observation interned = parser.parse(new StringReader(OBSERVATION_JSON));
+        assertEquals(interned, observation);
+        coding = interned.getCode().getCoding().get(0);
+        categoryCoding = interned.getCategory().get(0).getCoding().get(0);
+        assertSame(categoryCoding.getSystem(), coding.getSystem());
+        assertSame(categoryCoding.getCode(), coding.getCode());
+        assertSame(interned.getStatus(), com.ibm.fhir.model.type.code.ObservationStatus.FINAL);
+    }
+
+    @Test
+    public void testParseXML() throws Exception {
+        FHIRParser parser = FHIRParser.parser(Format.XML);
+        parser.setProperty(FHIRParser.PROPERTY_INTERN_PRIMITIVES, true);
+        Patient patient = parser.parse(new StringReader(PATIENT_XML));
+        assertSame(patient.getIdentifier().get(1).getSystem(), patient.getIdentifier().get(0).getSystem());
+        assertSame(patient.getGender(), AdministrativeGender.FEMALE);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.model.util.test;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.config.FHIRModelConfig;
+import com.ibm.fhir.model.type.Xhtml;
+import com.ibm.fhir.model.util.ValidationSupport;
+import com.ibm.fhir.model.util.XHTMLChecker;
+
+/**
+ * XHTMLChecker Test
+ */
+public class XHTMLCheckerTest {
+    private static final String DIV_OPEN = "<div xmlns=\"http://www.w3.org/1999/xhtml\">";
+    private static final String DIV_CLOSE = "</div>";
+
+    @DataProvider
+    public static Object[][] valid() {
+        return new Object[][] {
+            { DIV_OPEN + DIV_CLOSE },
+            { DIV_OPEN + "Narrative TBD" + DIV_CLOSE },
+            { DIV_OPEN + "<p><b>Generated Narrative</b></p>" + DIV_CLOSE },
+            { "<h:div xmlns:h=\"http://www.w3.org/1999/xhtml\"><h:p>Prefixed</h:p></h:div>" },
+            { DIV_OPEN + "<p id=\"p1\" class=\"a b\" style=\"color: red\" xml:lang=\"en\" dir=\"ltr\">text</p>" + DIV_CLOSE },
+            { DIV_OPEN + "<a href=\"http://example.com\" name=\"link\">link</a><br/><img src=\"a.png\" alt=\"a\"/>" + DIV_CLOSE },
+            { DIV_OPEN + "<ul><li>one</li><li>two</li></ul><dl><dt>term</dt><dd>definition</dd></dl>" + DIV_CLOSE },
+            { DIV_OPEN + "<table border=\"1\"><caption>c</caption><thead><tr><th scope=\"col\">h</th></tr></thead>"
+                    + "<tbody><tr><td colspan=\"2\" valign=\"top\">d</td></tr></tbody></table>" + DIV_CLOSE },
+            { DIV_OPEN + "<pre xml:space=\"preserve\">  code  </pre><!-- comment --><![CDATA[ <cdata> ]]>&lt;&amp;" + DIV_CLOSE }
+        };
+    }
+
+    @DataProvider
+    public static Object[][] invalid() {
+        return new Object[][] {
+            { "" },
+            { "text" },
+            { "<div>no namespace</div>" },
+            { "<p xmlns=\"http://www.w3.org/1999/xhtml\">not a div</p>" },
+            { DIV_OPEN + "<p>unclosed" + DIV_CLOSE },
+            { DIV_OPEN + "<script>alert('x')</script>" + DIV_CLOSE },
+            { DIV_OPEN + "<p onclick=\"alert('x')\">click</p>" + DIV_CLOSE },
+            { DIV_OPEN + "<form><input type=\"text\"/></form>" + DIV_CLOSE },
+            { DIV_OPEN + "<object data=\"x\"></object>" + DIV_CLOSE },
+            { DIV_OPEN + "<iframe src=\"x\"></iframe>" + DIV_CLOSE },
+            { DIV_OPEN + "<body>body</body>" + DIV_CLOSE },
+            { DIV_OPEN + "<p href=\"x\">wrong attribute</p>" + DIV_CLOSE },
+            { DIV_OPEN + "<img src=\"a.png\"/>" + DIV_CLOSE },
+            { DIV_OPEN + "<li>no list</li>" + DIV_CLOSE },
+            { DIV_OPEN + "<td>no row</td>" + DIV_CLOSE },
+            { DIV_OPEN + "<x:p xmlns:x=\"urn:other\">other namespace</x:p>" + DIV_CLOSE },
+            { DIV_OPEN + "<p xmlns:x=\"urn:other\" x:a=\"b\">other namespace</p>" + DIV_CLOSE },
+            { "<!DOCTYPE div [<!ENTITY e \"e\">]>" + DIV_OPEN + "&e;" + DIV_CLOSE },
+            { DIV_OPEN + "&nbsp;" + DIV_CLOSE }
+        };
+    }
+
+    @Test(dataProvider = "valid")
+    public void testValid(String value) {
+        XHTMLChecker.check(value);
+    }
+
+    @Test(dataProvider = "invalid")
+    public void testInvalid(String value) {
+        try {
+            XHTMLChecker.check(value);
+            fail();
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().startsWith("Invalid XHTML content:"), e.getMessage());
+        }
+    }
+
+    @Test(dataProvider = "valid")
+    public void testValidSchema(String value) {
+        // the schema accepts everything the checker accepts, so the checker is not looser than the schema for these inputs
+        FHIRModelConfig.setXHTMLSchemaValidation(true);
+        try {
+            ValidationSupport.checkXHTMLContent(value);
+        } finally {
+            FHIRModelConfig.setXHTMLSchemaValidation(false);
+        }
+    }
+
+    @Test
+    public void testTrusted() {
+        String value = DIV_OPEN + "<script>alert('x')</script>" + DIV_CLOSE;
+        assertFalse(ValidationSupport.isXHTMLContentTrusted());
+        boolean trusted = ValidationSupport.setXHTMLContentTrusted(true);
+        try {
+            Xhtml.of(value);
+        } finally {
+            ValidationSupport.setXHTMLContentTrusted(trusted);
+        }
+        assertFalse(ValidationSupport.isXHTMLContentTrusted());
+        try {
+            Xhtml.of(value);
+            fail();
+        } catch (IllegalStateException e) {}
+    }
+}
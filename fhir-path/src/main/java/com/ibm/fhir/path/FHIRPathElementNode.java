@@ -6,6 +6,7 @@
 
 package com.ibm.fhir.path;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Objects;
 
@@ -90,8 +91,8 @@ public class FHIRPathElementNode extends FHIRPathAbstractNode {
     public Builder toBuilder() {
         Builder builder = new Builder(type, element);
         builder.name = name;
-        builder.value = value;
-        builder.children = children;
+        builder.value = getValue();
+        builder.children = new ArrayList<>(children());
         return builder;
     }
 
@@ -235,7 +236,7 @@ public class FHIRPathElementNode extends FHIRPathAbstractNode {
     @Override
     public String toString() {
         if (hasValue()) {
-            return "FHIRPathElementNode: [type: " + type() + ", value: " + value.toString() + "]";
+            return "FHIRPathElementNode: [type: " + type() + ", value: " + getValue().toString() + "]";
         }
         return super.toString();
     }
@@ -6,6 +6,7 @@
 
 package com.ibm.fhir.path;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Objects;
 
@@ -18,7 +19,7 @@ import com.ibm.fhir.path.visitor.FHIRPathNodeVisitor;
 public class FHIRPathResourceNode extends FHIRPathAbstractNode {
     private final Resource resource;
     
-    private FHIRPathResourceNode(Builder builder) {
+    protected FHIRPathResourceNode(Builder builder) {
         super(builder);
         this.resource = builder.resource;
     }
@@ -80,8 +81,8 @@ public class FHIRPathResourceNode extends FHIRPathAbstractNode {
     public Builder toBuilder() {
         Builder builder = new Builder(type, resource);
         builder.name = name;
-        builder.value = value;
-        builder.children = children;
+        builder.value = getValue();
+        builder.children = new ArrayList<>(children());
         return builder;
     }
     
@@ -6,36 +6,44 @@
 
 package com.ibm.fhir.path;
 
+import static com.ibm.fhir.model.util.ModelSupport.delimit;
+import static com.ibm.fhir.model.util.ModelSupport.getTypeName;
+import static com.ibm.fhir.model.util.ModelSupport.isKeyword;
+
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.Year;
 import java.time.YearMonth;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Stack;
 import java.util.stream.Collectors;
 
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.type.Element;
 import com.ibm.fhir.model.type.Quantity;
-import com.ibm.fhir.model.visitor.PathAwareVisitor;
+import com.ibm.fhir.model.visitor.DefaultVisitor;
+import com.ibm.fhir.model.visitor.Visitable;
 
 /**
  * A tree of {@link FHIRPathNode} nodes created from a {@link Resource} or an {@link Element}
+ *
+ * <p>The tree is materialized lazily: the children (and the primitive value) of a node are created the first time
+ * the node is navigated and the path of a node is computed the first time it is requested. Expressions that only
+ * touch a few elements of a large resource therefore only pay for the nodes they actually visit.
  */
 public class FHIRPathTree {
     private final FHIRPathNode root;
-    private final Map<String, FHIRPathNode> pathNodeMap;
 
-    private FHIRPathTree(FHIRPathNode root, Map<String, FHIRPathNode> pathNodeMap) {
+    private FHIRPathTree(FHIRPathNode root) {
         this.root = root;
-        this.pathNodeMap = Collections.unmodifiableMap(pathNodeMap);
     }
 
     /**
@@ -57,7 +65,28 @@ public class FHIRPathTree {
      *     the node at the location given by the path parameter if exists, otherwise null
      */
     public FHIRPathNode getNode(String path) {
-        return pathNodeMap.get(path);
+        if (path == null) {
+            return null;
+        }
+
+        String[] segments = path.split("\\.");
+        if (!segments[0].equals(root.path())) {
+            return null;
+        }
+
+        FHIRPathNode node = root;
+        for (int i = 1; i < segments.length && node != null; i++) {
+            node = getChild(node, segments[i]);
+        }
+
+        return node;
+    }
+
+    private FHIRPathNode getChild(FHIRPathNode node, String segment) {
+        if (node instanceof LazyNode) {
+            return ((LazyNode) node).expansion().child(node, segment);
+        }
+        return null;
     }
 
     /**
@@ -73,9 +102,14 @@ public class FHIRPathTree {
             return null;
         }
 
+        if (node instanceof LazyNode) {
+            return ((LazyNode) node).expansion().parent;
+        }
+
+        // not a node of this tree (e.g. a copy created from one of its nodes); look the parent up by path
         int index = node.path().lastIndexOf(".");
         if (index != -1) {
-            return pathNodeMap.get(node.path().substring(0, index));
+            return getNode(node.path().substring(0, index));
         }
 
         return null;
@@ -143,10 +177,7 @@ public class FHIRPathTree {
     public static FHIRPathTree tree(Resource resource) {
         Objects.requireNonNull(resource);
 
-        BuildingVisitor visitor = new BuildingVisitor();
-        resource.accept(visitor);
-
-        return new FHIRPathTree(visitor.getRoot(), visitor.getPathNodeMap());
+        return new FHIRPathTree(createNode(null, getTypeName(resource.getClass()), -1, resource));
     }
 
     /**
@@ -160,117 +191,299 @@ public class FHIRPathTree {
     public static FHIRPathTree tree(Element element) {
         Objects.requireNonNull(element);
 
-        BuildingVisitor visitor = new BuildingVisitor();
-        element.accept(visitor);
+        return new FHIRPathTree(createNode(null, getTypeName(element.getClass()), -1, element));
+    }
 
-        return new FHIRPathTree(visitor.getRoot(), visitor.getPathNodeMap());
+    private static FHIRPathNode createNode(FHIRPathNode parent, String elementName, int elementIndex, Element element) {
+        if (element instanceof Quantity) {
+            Quantity quantity = (Quantity) element;
+            Expansion expansion = new Expansion(parent, elementName, elementIndex, element, FHIRPathQuantityValue.quantityValue(quantity));
+            return new LazyQuantityNode(FHIRPathQuantityNode.builder(quantity).name(elementName), expansion);
+        }
+        Expansion expansion = new Expansion(parent, elementName, elementIndex, element, null);
+        return new LazyElementNode(FHIRPathElementNode.builder(element).name(elementName), expansion);
     }
 
-    private static class BuildingVisitor extends PathAwareVisitor {
-        private Stack<FHIRPathNode.Builder> builderStack = new Stack<>();
-        private FHIRPathNode root;
-        private Map<String, FHIRPathNode> pathNodeMap = new HashMap<>();
+    private static FHIRPathNode createNode(FHIRPathNode parent, String elementName, int elementIndex, Resource resource) {
+        Expansion expansion = new Expansion(parent, elementName, elementIndex, resource, null);
+        return new LazyResourceNode(FHIRPathResourceNode.builder(resource).name(elementName), expansion);
+    }
 
-        private void build() {
-            String path = getPath();
+    /**
+     * A node whose path, value and children are computed on demand by its {@link Expansion}
+     */
+    private interface LazyNode {
+        Expansion expansion();
+    }
 
-            FHIRPathNode.Builder builder = builderStack.pop();
-            FHIRPathNode node = builder.path(path).build();
+    /**
+     * The location of a lazy node in the tree along with its (once computed) path, value and children
+     */
+    private static class Expansion {
+        private final FHIRPathNode parent;
+        private final String elementName;
+        private final int elementIndex;
+        private final String segment;
+        private final Visitable visitable;
+        private final FHIRPathSystemValue initialValue;
+
+        private String path;
+        private FHIRPathSystemValue value;
+        private Collection<FHIRPathNode> children;
+        private Map<String, FHIRPathNode> childrenBySegment;
+
+        private Expansion(FHIRPathNode parent, String elementName, int elementIndex, Visitable visitable, FHIRPathSystemValue initialValue) {
+            this.parent = parent;
+            this.elementName = elementName;
+            this.elementIndex = elementIndex;
+            this.visitable = visitable;
+            this.initialValue = initialValue;
+            String name = isKeyword(elementName) ? delimit(elementName) : elementName;
+            this.segment = (elementIndex != -1) ? name + "[" + elementIndex + "]" : name;
+        }
 
-            pathNodeMap.put(path, node);
+        private synchronized String path() {
+            if (path == null) {
+                path = (parent != null) ? parent.path() + "." + segment : segment;
+            }
+            return path;
+        }
+
+        private synchronized FHIRPathSystemValue value(FHIRPathNode node) {
+            expand(node);
+            return value;
+        }
 
-            if (!builderStack.isEmpty()) {
-                builderStack.peek().children(node);
-            } else {
-                root = node;
+        private synchronized Collection<FHIRPathNode> children(FHIRPathNode node) {
+            expand(node);
+            return children;
+        }
+
+        private synchronized FHIRPathNode child(FHIRPathNode node, String segment) {
+            expand(node);
+            return childrenBySegment.get(segment);
+        }
+
+        private void expand(FHIRPathNode node) {
+            if (children == null) {
+                ExpandingVisitor visitor = new ExpandingVisitor(node, initialValue);
+                visitable.accept(elementName, elementIndex, visitor);
+                value = visitor.value;
+                children = Collections.unmodifiableList(visitor.children);
+                // index the child nodes by path segment so that getNode(path) doesn't scan the children of each node
+                childrenBySegment = new HashMap<>();
+                for (FHIRPathNode child : visitor.children) {
+                    if (child instanceof LazyNode) {
+                        childrenBySegment.put(((LazyNode) child).expansion().segment, child);
+                    }
+                }
             }
         }
+    }
 
-        private Map<String, FHIRPathNode> getPathNodeMap() {
-            return pathNodeMap;
+    /**
+     * Creates the direct children of a single node without descending any further; the value handling mirrors
+     * {@link FHIRPathAbstractNode.Builder#value(FHIRPathSystemValue)} so that the lazy nodes look exactly like built ones
+     */
+    private static class ExpandingVisitor extends DefaultVisitor {
+        private final FHIRPathNode node;
+        private final List<FHIRPathNode> children = new ArrayList<>();
+        private FHIRPathSystemValue value;
+        private int depth = 0;
+
+        private ExpandingVisitor(FHIRPathNode node, FHIRPathSystemValue initialValue) {
+            super(true);
+            this.node = node;
+            if (initialValue != null) {
+                value(initialValue);
+            }
         }
 
-        private FHIRPathNode getRoot() {
-            return root;
+        private void value(FHIRPathSystemValue value) {
+            children.remove(this.value);
+            this.value = value;
+            children.add(this.value);
         }
 
         @Override
-        protected void doVisitEnd(String elementName, int elementIndex, Element element) {
-            build();
+        public boolean visit(java.lang.String elementName, int elementIndex, Visitable visitable) {
+            return depth == 1;
         }
 
         @Override
-        protected void doVisitEnd(String elementName, int elementIndex, Resource resource) {
-            build();
+        public void visitStart(java.lang.String elementName, int elementIndex, Element element) {
+            if (++depth == 2) {
+                children.add(createNode(node, elementName, elementIndex, element));
+            }
         }
 
         @Override
-        protected void doVisitStart(String elementName, int elementIndex, Element element) {
-            if (element instanceof Quantity) {
-                Quantity quantity = (Quantity) element;
-                builderStack.push(FHIRPathQuantityNode.builder(quantity).name(elementName));
-                FHIRPathQuantityValue value = FHIRPathQuantityValue.quantityValue(quantity);
-                if (value != null) {
-                    builderStack.peek().value(value);
-                }
-            } else {
-                builderStack.push(FHIRPathElementNode.builder(element).name(elementName));
+        public void visitStart(java.lang.String elementName, int elementIndex, Resource resource) {
+            if (++depth == 2) {
+                children.add(createNode(node, elementName, elementIndex, resource));
             }
         }
 
         @Override
-        protected void doVisitStart(String elementName, int elementIndex, Resource resource) {
-            builderStack.push(FHIRPathResourceNode.builder(resource).name(elementName));
+        public void visitEnd(java.lang.String elementName, int elementIndex, Element element) {
+            depth--;
+        }
+
+        @Override
+        public void visitEnd(java.lang.String elementName, int elementIndex, Resource resource) {
+            depth--;
         }
 
         @Override
         public void visit(java.lang.String elementName, BigDecimal value) {
-            builderStack.peek().value(FHIRPathDecimalValue.decimalValue(elementName, value));
+            value(FHIRPathDecimalValue.decimalValue(elementName, value));
         }
 
         @Override
         public void visit(java.lang.String elementName, byte[] value) {
-            builderStack.peek().value(FHIRPathStringValue.stringValue(elementName, Base64.getEncoder().encodeToString(value)));
+            value(FHIRPathStringValue.stringValue(elementName, Base64.getEncoder().encodeToString(value)));
         }
 
         @Override
         public void visit(java.lang.String elementName, java.lang.Boolean value) {
-            builderStack.peek().value(FHIRPathBooleanValue.booleanValue(elementName, value));
+            value(FHIRPathBooleanValue.booleanValue(elementName, value));
         }
 
         @Override
         public void visit(java.lang.String elementName, java.lang.Integer value) {
-            builderStack.peek().value(FHIRPathIntegerValue.integerValue(elementName, value));
+            value(FHIRPathIntegerValue.integerValue(elementName, value));
         }
 
         @Override
-        public void doVisit(java.lang.String elementName, java.lang.String value) {
-            builderStack.peek().value(FHIRPathStringValue.stringValue(elementName, value));
+        public void visit(java.lang.String elementName, java.lang.String value) {
+            value(FHIRPathStringValue.stringValue(elementName, value));
         }
 
         @Override
         public void visit(java.lang.String elementName, LocalDate value) {
-            builderStack.peek().value(FHIRPathDateTimeValue.dateTimeValue(elementName, value));
+            value(FHIRPathDateTimeValue.dateTimeValue(elementName, value));
         }
 
         @Override
         public void visit(java.lang.String elementName, LocalTime value) {
-            builderStack.peek().value(FHIRPathTimeValue.timeValue(elementName, value));
+            value(FHIRPathTimeValue.timeValue(elementName, value));
         }
 
         @Override
         public void visit(java.lang.String elementName, Year value) {
-            builderStack.peek().value(FHIRPathDateTimeValue.dateTimeValue(elementName, value));
+            value(FHIRPathDateTimeValue.dateTimeValue(elementName, value));
         }
 
         @Override
         public void visit(java.lang.String elementName, YearMonth value) {
-            builderStack.peek().value(FHIRPathDateTimeValue.dateTimeValue(elementName, value));
+            value(FHIRPathDateTimeValue.dateTimeValue(elementName, value));
         }
 
         @Override
         public void visit(java.lang.String elementName, ZonedDateTime value) {
-            builderStack.peek().value(FHIRPathDateTimeValue.dateTimeValue(elementName, value));
+            value(FHIRPathDateTimeValue.dateTimeValue(elementName, value));
+        }
+    }
+
+    private static class LazyElementNode extends FHIRPathElementNode implements LazyNode {
+        private final Expansion expansion;
+
+        private LazyElementNode(FHIRPathElementNode.Builder builder, Expansion expansion) {
+            super(builder);
+            this.expansion = expansion;
+        }
+
+        @Override
+        public Expansion expansion() {
+            return expansion;
+        }
+
+        @Override
+        public String path() {
+            return expansion.path();
+        }
+
+        @Override
+        public boolean hasValue() {
+            return expansion.value(this) != null;
+        }
+
+        @Override
+        public FHIRPathSystemValue getValue() {
+            return expansion.value(this);
+        }
+
+        @Override
+        public Collection<FHIRPathNode> children() {
+            return expansion.children(this);
+        }
+    }
+
+    private static class LazyQuantityNode extends FHIRPathQuantityNode implements LazyNode {
+        private final Expansion expansion;
+
+        private LazyQuantityNode(FHIRPathQuantityNode.Builder builder, Expansion expansion) {
+            super(builder);
+            this.expansion = expansion;
+        }
+
+        @Override
+        public Expansion expansion() {
+            return expansion;
+        }
+
+        @Override
+        public String path() {
+            return expansion.path();
+        }
+
+        @Override
+        public boolean hasValue() {
+            return expansion.value(this) != null;
+        }
+
+        @Override
+        public FHIRPathSystemValue getValue() {
+            return expansion.value(this);
+        }
+
+        @Override
+        public Collection<FHIRPathNode> children() {
+            return expansion.children(this);
+        }
+    }
+
+    private static class LazyResourceNode extends FHIRPathResourceNode implements LazyNode {
+        private final Expansion expansion;
+
+        private LazyResourceNode(FHIRPathResourceNode.Builder builder, Expansion expansion) {
+            super(builder);
+            this.expansion = expansion;
+        }
+
+        @Override
+        public Expansion expansion() {
+            return expansion;
+        }
+
+        @Override
+        public String path() {
+            return expansion.path();
+        }
+
+        @Override
+        public boolean hasValue() {
+            return expansion.value(this) != null;
+        }
+
+        @Override
+        public FHIRPathSystemValue getValue() {
+            return expansion.value(this);
+        }
+
+        @Override
+        public Collection<FHIRPathNode> children() {
+            return expansion.children(this);
         }
     }
 }
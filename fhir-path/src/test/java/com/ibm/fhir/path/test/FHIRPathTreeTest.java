@@ -1,15 +1,26 @@
 /*
- * (C) Copyright IBM Corp. 2019
+ * (C) Copyright IBM Corp. 2019, 2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
 
 package com.ibm.fhir.path.test;
 
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
 import java.io.FilterOutputStream;
 import java.time.LocalDate;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.stream.Collectors;
+
+import org.testng.annotations.Test;
 
 import com.ibm.fhir.model.format.Format;
 import com.ibm.fhir.model.generator.FHIRGenerator;
@@ -23,11 +34,84 @@ import com.ibm.fhir.model.type.Instant;
 import com.ibm.fhir.model.type.Integer;
 import com.ibm.fhir.model.type.Meta;
 import com.ibm.fhir.model.type.String;
+import com.ibm.fhir.model.visitor.PathAwareVisitor;
 import com.ibm.fhir.path.FHIRPathNode;
 import com.ibm.fhir.path.FHIRPathTree;
 
 public class FHIRPathTreeTest {
     public static void main(java.lang.String[] args) throws Exception {
+        Patient patient = buildPatient();
+
+        FilterOutputStream out = new FilterOutputStream(System.out) {
+            @Override
+            public void close() {
+                // do nothing
+            }
+        };
+
+        FHIRGenerator.generator(Format.JSON, true).generate(patient, out);
+
+        System.out.println("");
+
+        FHIRPathTree tree = FHIRPathTree.tree(patient);
+        tree.getRoot().stream().forEach(FHIRPathTreeTest::print);
+
+        FHIRPathNode node = tree.getNode("Patient.id.extension[0]");
+        print(node);
+    }
+
+    @Test
+    public void testNodePaths() throws Exception {
+        Patient patient = buildPatient();
+
+        // the paths of all elements as computed by a full traversal of the resource
+        List<java.lang.String> expected = new ArrayList<>();
+        patient.accept(new PathAwareVisitor() {
+            @Override
+            protected void doVisitStart(java.lang.String elementName, int elementIndex, com.ibm.fhir.model.type.Element element) {
+                expected.add(getPath());
+            }
+
+            @Override
+            protected void doVisitStart(java.lang.String elementName, int elementIndex, com.ibm.fhir.model.resource.Resource resource) {
+                expected.add(getPath());
+            }
+        });
+
+        FHIRPathTree tree = FHIRPathTree.tree(patient);
+
+        // navigating to a node by path materializes only the nodes along the way
+        FHIRPathNode given = tree.getNode("Patient.name[0].given[1]");
+        assertNotNull(given);
+        assertEquals(given.name(), "given");
+        assertEquals(given.path(), "Patient.name[0].given[1]");
+        assertEquals(tree.getParent(given).path(), "Patient.name[0]");
+        assertSame(tree.getParent(given), tree.getNode("Patient.name[0]"));
+        assertEquals(tree.getSiblings(given, "family").size(), 1);
+        assertNull(tree.getNode("Patient.name[1]"));
+        assertNull(tree.getNode("Observation.id"));
+
+        List<java.lang.String> actual = tree.getRoot().stream()
+                .filter(node -> node.isElementNode() || node.isResourceNode())
+                .map(FHIRPathNode::path)
+                .collect(Collectors.toList());
+        assertEquals(actual, expected);
+
+        for (java.lang.String path : expected) {
+            FHIRPathNode node = tree.getNode(path);
+            assertNotNull(node, path);
+            assertEquals(node.path(), path);
+            if (node != tree.getRoot()) {
+                assertTrue(tree.getParent(node).children().contains(node), path);
+            }
+        }
+
+        FHIRPathNode birthDate = tree.getNode("Patient.birthDate");
+        assertTrue(birthDate.hasValue());
+        assertTrue(birthDate.getValue().isTemporalValue());
+    }
+
+    private static Patient buildPatient() {
         java.lang.String id = UUID.randomUUID().toString();
 
         Meta meta = Meta.builder().versionId(Id.of("1"))
@@ -65,22 +149,7 @@ public class FHIRPathTreeTest {
                 .birthDate(Date.of(LocalDate.now()))
                 .build();
 
-        FilterOutputStream out = new FilterOutputStream(System.out) {
-            @Override
-            public void close() {
-                // do nothing
-            }
-        };
-
-        FHIRGenerator.generator(Format.JSON, true).generate(patient, out);
-
-        System.out.println("");
-
-        FHIRPathTree tree = FHIRPathTree.tree(patient);
-        tree.getRoot().stream().forEach(FHIRPathTreeTest::print);
-
-        FHIRPathNode node = tree.getNode("Patient.id.extension[0]");
-        print(node);
+        return patient;
     }
 
     public static void print(FHIRPathNode node) {
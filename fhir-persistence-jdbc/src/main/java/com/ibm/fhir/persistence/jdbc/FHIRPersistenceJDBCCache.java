@@ -10,6 +10,7 @@ import java.sql.Connection;
 
 import com.ibm.fhir.persistence.jdbc.dao.api.ICommonTokenValuesCache;
 import com.ibm.fhir.persistence.jdbc.dao.api.INameIdCache;
+import com.ibm.fhir.persistence.jdbc.dao.api.ISearchQueryTemplateCache;
 
 /**
  * Manages caches separated by tenant
@@ -42,6 +43,12 @@ public interface FHIRPersistenceJDBCCache {
      */
     INameIdCache<Integer> getParameterNameCache();
 
+    /**
+     * Getter for the cache of SQL built for searches
+     * @return
+     */
+    ISearchQueryTemplateCache getSearchQueryTemplateCache();
+
     /**
      * Tell any caches that the transaction on the current thread has just committed
      */
@@ -36,6 +36,7 @@ public class JDBCConstants {
     public static final String DATE_END = "DATE_END";
     public static final String LATITUDE_VALUE = "LATITUDE_VALUE";
     public static final String LONGITUDE_VALUE = "LONGITUDE_VALUE";
+    public static final String GEOHASH_VALUE = "GEOHASH_VALUE";
     public static final String _RESOURCES = "_RESOURCES";
     public static final String _LOGICAL_RESOURCES = "_LOGICAL_RESOURCES";
     public static final String RESOURCE_ID = "RESOURCE_ID";
@@ -43,6 +44,10 @@ public class JDBCConstants {
     public static final String LOGICAL_RESOURCE_ID = "LOGICAL_RESOURCE_ID";
     public static final String CURRENT_RESOURCE_ID = "CURRENT_RESOURCE_ID";
     public static final String PARAMETER_NAME_ID = "PARAMETER_NAME_ID";
+    public static final String COMPARTMENT_MEMBERSHIPS = "COMPARTMENT_MEMBERSHIPS";
+    public static final String COMPARTMENT_NAME_ID = "COMPARTMENT_NAME_ID";
+    public static final String COMPARTMENT_LOGICAL_ID = "COMPARTMENT_LOGICAL_ID";
+    public static final String RESOURCE_TYPE_ID = "RESOURCE_TYPE_ID";
     public static final String IS_DELETED_NO = "IS_DELETED = 'N'";
 
     // Generic SQL query string constants
@@ -12,6 +12,7 @@ import java.util.logging.Logger;
 import com.ibm.fhir.persistence.jdbc.FHIRPersistenceJDBCCache;
 import com.ibm.fhir.persistence.jdbc.dao.api.ICommonTokenValuesCache;
 import com.ibm.fhir.persistence.jdbc.dao.api.INameIdCache;
+import com.ibm.fhir.persistence.jdbc.dao.api.ISearchQueryTemplateCache;
 
 /**
  * Aggregates and manages the individual caches used for a tenant
@@ -25,6 +26,8 @@ public class FHIRPersistenceJDBCCacheImpl implements FHIRPersistenceJDBCCache {
     
     private final ICommonTokenValuesCache resourceReferenceCache;
 
+    private final ISearchQueryTemplateCache searchQueryTemplateCache;
+
     // flag to allow one lucky caller to get the opportunity to prefill
     private final AtomicBoolean needToPrefillFlag = new AtomicBoolean(true);
     
@@ -35,9 +38,22 @@ public class FHIRPersistenceJDBCCacheImpl implements FHIRPersistenceJDBCCache {
      * @param resourceReferenceCache
      */
     public FHIRPersistenceJDBCCacheImpl(INameIdCache<Integer> resourceTypeCache, INameIdCache<Integer> parameterNameCache, ICommonTokenValuesCache resourceReferenceCache) {
+        this(resourceTypeCache, parameterNameCache, resourceReferenceCache, new SearchQueryTemplateCacheImpl());
+    }
+
+    /**
+     * Public constructor
+     * @param resourceTypeCache
+     * @param parameterNameCache
+     * @param resourceReferenceCache
+     * @param searchQueryTemplateCache
+     */
+    public FHIRPersistenceJDBCCacheImpl(INameIdCache<Integer> resourceTypeCache, INameIdCache<Integer> parameterNameCache, ICommonTokenValuesCache resourceReferenceCache,
+            ISearchQueryTemplateCache searchQueryTemplateCache) {
         this.resourceTypeCache = resourceTypeCache;
         this.parameterNameCache = parameterNameCache;
         this.resourceReferenceCache = resourceReferenceCache;
+        this.searchQueryTemplateCache = searchQueryTemplateCache;
     }
 
     /**
@@ -59,6 +75,11 @@ public class FHIRPersistenceJDBCCacheImpl implements FHIRPersistenceJDBCCache {
         return parameterNameCache;
     }
     
+    @Override
+    public ISearchQueryTemplateCache getSearchQueryTemplateCache() {
+        return this.searchQueryTemplateCache;
+    }
+
     @Override
     public void transactionCommitted() {
         logger.fine("Transaction committed - updating cache shared maps");
@@ -0,0 +1,82 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.cache;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.ibm.fhir.persistence.jdbc.dao.api.ISearchQueryTemplateCache;
+import com.ibm.fhir.persistence.jdbc.util.SearchQueryTemplate;
+
+/**
+ * Implementation of the {@link ISearchQueryTemplateCache}. The number of distinct
+ * search shapes is unbounded, so the least recently used templates are evicted
+ * when the cache is full.
+ */
+public class SearchQueryTemplateCacheImpl implements ISearchQueryTemplateCache {
+
+    // The default number of templates we keep
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    // The default time after which a template is built again
+    public static final long DEFAULT_REFRESH_SECONDS = 600;
+
+    private final Map<String, SearchQueryTemplate> templates;
+
+    private final long refreshNanos;
+
+    /**
+     * Create a cache using the default size and refresh interval
+     */
+    public SearchQueryTemplateCacheImpl() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_REFRESH_SECONDS);
+    }
+
+    /**
+     * Public constructor
+     * @param maxSize the maximum number of templates to keep
+     * @param refreshSeconds how long a template is used before it is built again
+     */
+    public SearchQueryTemplateCacheImpl(int maxSize, long refreshSeconds) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be > 0");
+        }
+        this.refreshNanos = TimeUnit.SECONDS.toNanos(refreshSeconds);
+
+        // LinkedHashMap in access order gives us LRU eviction
+        this.templates = Collections.synchronizedMap(new LinkedHashMap<String, SearchQueryTemplate>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SearchQueryTemplate> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    @Override
+    public SearchQueryTemplate getTemplate(String key) {
+        SearchQueryTemplate result = templates.get(key);
+        if (result != null && System.nanoTime() - result.getCreateTime() > refreshNanos) {
+            // stale, so the caller should build it again
+            result = null;
+        }
+        return result;
+    }
+
+    @Override
+    public void putTemplate(String key, SearchQueryTemplate template) {
+        templates.put(key, template);
+    }
+
+    @Override
+    public void clear() {
+        templates.clear();
+    }
+}
@@ -8,10 +8,13 @@ package com.ibm.fhir.persistence.jdbc.connection;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.sql.DataSource;
+import javax.transaction.Synchronization;
 import javax.transaction.TransactionSynchronizationRegistry;
 
 import com.ibm.fhir.config.FHIRConfigHelper;
@@ -120,39 +123,121 @@ public abstract class FHIRDbConnectionStrategyBase implements FHIRDbConnectionSt
     }
     
     /**
-     * Get a connection configured for the given tenant and datasourceId
+     * Get a connection configured for the given tenant and datasourceId. Within a
+     * transaction, the first connection obtained from the datasource is configured
+     * and then handed out again for every subsequent request in that transaction,
+     * so the datasource is only hit once. The physical connection is closed when
+     * the transaction completes.
      * @param datasource
      * @param tenantId
      * @param dsId
      * @return
      */
     protected Connection getConnection(DataSource datasource, String tenantId, String dsId) throws SQLException, FHIRPersistenceException {
-        // Now use the dsId/tenantId specific JEE datasource to get a connection
+        if (trxSyncRegistry.getTransactionKey() == null) {
+            // No transaction, so nothing to hang on to the connection. Configure every time
+            Connection connection = openConnection(datasource, tenantId, dsId);
+            try {
+                configure(connection, tenantId, dsId);
+            } catch (Throwable t) {
+                closeQuietly(connection);
+                throw t;
+            }
+            return connection;
+        }
+
+        final Map<String, FHIRDbTransactionConnection> connectionMap = getTransactionConnections();
+        final String connectionKey = tenantId + "/" + dsId + "/" + System.identityHashCode(datasource);
+        FHIRDbTransactionConnection result = connectionMap.get(connectionKey);
+        if (result == null) {
+            Connection connection = openConnection(datasource, tenantId, dsId);
+            try {
+                // first time we've seen this connection in the transaction, so it always needs the actions
+                if (log.isLoggable(Level.FINE)) {
+                    log.fine("Configuring new connection in this transaction. Key='" + connectionKey + "'");
+                }
+                newConnectionAction.performOn(this.flavor, connection);
+            } catch (Throwable t) {
+                closeQuietly(connection);
+                throw t;
+            }
+
+            result = new FHIRDbTransactionConnection(connection);
+            connectionMap.put(connectionKey, result);
+        } else if (log.isLoggable(Level.FINE)) {
+            log.fine("Reusing connection for this transaction. Key='" + connectionKey + "'");
+        }
+
+        return result;
+    }
+
+    /**
+     * Get the map of connections we're holding for the current transaction, creating it (and
+     * registering the synchronization to close the connections) if necessary. There's only
+     * ever one thread working on a transaction, so no need for synchronization here.
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, FHIRDbTransactionConnection> getTransactionConnections() {
+        final String key = this.getClass().getName() + "/connections";
+        Map<String, FHIRDbTransactionConnection> result = (Map<String, FHIRDbTransactionConnection>) trxSyncRegistry.getResource(key);
+        if (result == null) {
+            final Map<String, FHIRDbTransactionConnection> connectionMap = new HashMap<>();
+            trxSyncRegistry.putResource(key, connectionMap);
+            trxSyncRegistry.registerInterposedSynchronization(new Synchronization() {
+
+                @Override
+                public void beforeCompletion() {
+                    // NOP
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    for (FHIRDbTransactionConnection c: connectionMap.values()) {
+                        c.closeWrapped();
+                    }
+                    connectionMap.clear();
+                }
+            });
+            result = connectionMap;
+        }
+        return result;
+    }
+
+    /**
+     * Obtain a new connection from the datasource, with autocommit disabled
+     * @param datasource
+     * @param tenantId
+     * @param dsId
+     * @return
+     * @throws SQLException
+     */
+    protected Connection openConnection(DataSource datasource, String tenantId, String dsId) throws SQLException {
         Connection connection = datasource.getConnection();
-        
         try {
             // always
             connection.setAutoCommit(false);
-            
-            // configure the connection if it's the first time we've accessed it in this transaction
-            configure(connection, tenantId, dsId);
         } catch (Throwable t) {
-            // clean up if something goes wrong during configuration
-            try {
-                connection.close();
-            } catch (Throwable x) {
-                // NOP...something bad is going on anyway, so don't confuse things
-                // by throwing a different exception and hiding the original
-            } finally {
-                // just to prevent future coding mistakes
-                connection = null;
-            }
+            closeQuietly(connection);
             throw t;
         }
-        
         return connection;
     }
 
+    /**
+     * Close the connection after a failure, without hiding the original exception
+     * @param connection
+     */
+    protected void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (Throwable x) {
+            // Don't confuse things by propagating this exception...we want the original exception
+            // to be the cause of failure. But log anyway, in case it's useful
+            log.log(Level.FINEST, "close failed", x);
+        }
+    }
+
     @Override
     public FHIRDbFlavor getFlavor() throws FHIRPersistenceDataAccessException {
         return this.flavor;
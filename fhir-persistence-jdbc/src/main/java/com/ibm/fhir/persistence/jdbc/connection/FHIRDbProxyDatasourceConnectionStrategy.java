@@ -18,7 +18,6 @@ import javax.transaction.TransactionSynchronizationRegistry;
 import com.ibm.fhir.config.FHIRConfiguration;
 import com.ibm.fhir.config.FHIRRequestContext;
 import com.ibm.fhir.exception.FHIRException;
-import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
 import com.ibm.fhir.persistence.jdbc.dao.impl.FHIRDbDAOImpl;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDBConnectException;
 
@@ -130,31 +129,16 @@ public class FHIRDbProxyDatasourceConnectionStrategy extends FHIRDbConnectionStr
     }
 
     @Override
-    protected Connection getConnection(DataSource datasource, String tenantId, String dsId) throws SQLException, FHIRPersistenceException {
-        // Now use the dsId/tenantId specific JEE datasource to get a connection
+    protected Connection openConnection(DataSource datasource, String tenantId, String dsId) throws SQLException {
+        // Use the username/password interface to pass the tenantId and datasource id
         Connection connection = datasource.getConnection(tenantId, dsId);
-
         try {
             // always
             connection.setAutoCommit(false);
-
-            // configure the connection if it's the first time we've accessed it in this transaction
-            configure(connection, tenantId, dsId);
         } catch (Throwable t) {
-            // clean up if something goes wrong during configuration
-            try {
-                connection.close();
-            } catch (Throwable x) {
-                // Don't confuse things by propagating this exception...we want the original exception
-                // to be the cause of failure. But log anyway, in case it's useful
-                log.log(Level.FINEST, "close failed", x);
-            } finally {
-                // just to prevent future coding mistakes
-                connection = null;
-            }
+            closeQuietly(connection);
             throw t;
         }
-
         return connection;
     }
 }
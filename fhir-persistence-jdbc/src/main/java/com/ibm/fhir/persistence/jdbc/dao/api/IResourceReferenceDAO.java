@@ -67,4 +67,13 @@ public interface IResourceReferenceDAO {
      */
     void persist(Collection<ResourceTokenValueRec> records);
 
+    /**
+     * Lock the common_token_values row for the given token until the end of the current
+     * transaction, creating the row first if necessary. Transactions which lock the same
+     * token are serialized.
+     * @param codeSystemId
+     * @param tokenValue
+     */
+    void lockCommonTokenValue(int codeSystemId, String tokenValue);
+
 }
@@ -0,0 +1,37 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.dao.api;
+
+import com.ibm.fhir.persistence.jdbc.util.SearchQueryTemplate;
+
+/**
+ * A cache of the SQL built for searches, keyed by the shape of the search
+ * (see {@link SearchQueryTemplate#key}). The templates embed parameter name ids,
+ * so there is one cache per tenant/datastore. Entries expire, so a template is
+ * built again from time to time instead of being kept for the life of the server.
+ */
+public interface ISearchQueryTemplateCache {
+
+    /**
+     * Get the template for the given key
+     * @param key
+     * @return the template, or null if there is none or it has expired
+     */
+    SearchQueryTemplate getTemplate(String key);
+
+    /**
+     * Add or replace the template for the given key
+     * @param key
+     * @param template
+     */
+    void putTemplate(String key, SearchQueryTemplate template);
+
+    /**
+     * Throw away all the templates in the cache
+     */
+    void clear();
+}
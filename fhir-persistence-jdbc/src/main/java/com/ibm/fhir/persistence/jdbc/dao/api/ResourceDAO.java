@@ -6,15 +6,19 @@
 
 package com.ibm.fhir.persistence.jdbc.dao.api;
 
+import java.io.IOException;
 import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceVersionIdMismatchException;
 import com.ibm.fhir.persistence.jdbc.dto.ExtractedParameterValue;
 import com.ibm.fhir.persistence.jdbc.dto.Resource;
+import com.ibm.fhir.persistence.jdbc.dto.ResourceChange;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDBConnectException;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDataAccessException;
 import com.ibm.fhir.persistence.jdbc.util.SqlQueryData;
@@ -36,6 +40,33 @@ public interface ResourceDAO extends FHIRDbDAO {
     Resource read(String logicalId, String resourceType)
             throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
 
+    /**
+     * Reads and returns the latest version of each Resource with one of the passed logical ids and the passed resource type.
+     * Logical ids for which no matching resource is found are ignored; the returned list is in no particular order.
+     * @param logicalIds
+     * @param resourceType
+     * @return List<Resource> - The most recent version of each matching Resource, including those that are deleted.
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     */
+    List<Resource> readMany(Collection<String> logicalIds, String resourceType)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
+
+    /**
+     * Reads and returns the latest version of each non-deleted Resource of the passed type which is indexed with
+     * the passed token value for the passed search parameter.
+     * @param resourceType
+     * @param parameterNameId the id of the token search parameter
+     * @param codeSystemId the id of the token system
+     * @param tokenValue the token value
+     * @param maxResults the maximum number of resources to return
+     * @return List<Resource> - The most recent version of each matching Resource, in no particular order.
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     */
+    List<Resource> readByToken(String resourceType, int parameterNameId, int codeSystemId, String tokenValue, int maxResults)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
+
     /**
      * Reads and returns the version of the Resource with the passed logical id, resource type, and version id.
      * If no matching resource is found, null is returned.
@@ -63,6 +94,21 @@ public interface ResourceDAO extends FHIRDbDAO {
     List<Resource> history(String resourceType, String logicalId, Timestamp fromDateTime, int offset, int maxResults)
             throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
 
+    /**
+     * Reads the versions of the Resource with the passed logicalId like
+     * {@link #history(String, String, Timestamp, int, int)}, but passes each version to the passed consumer while
+     * the result set is read instead of returning them as a list.
+     * @param resourceType - The name of a FHIR Resource type
+     * @param logicalId - The logical id of a FHIR Resource
+     * @param fromDateTime - The starting date/time of the version history.
+     * @param consumer - Receives the Resource versions, ordered by descending version id.
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     * @throws IOException - if thrown by the consumer
+     */
+    void history(String resourceType, String logicalId, Timestamp fromDateTime, int offset, int maxResults, ResourceDTOConsumer consumer)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException, IOException;
+
     /**
      * Reads and returns the COUNT of all versions of the Resource with the passed logicalId.
      * If non-null, the passed fromDateTime is used to limit the count of Resource versions to those that were updated after the fromDateTime.
@@ -85,6 +131,18 @@ public interface ResourceDAO extends FHIRDbDAO {
      */
     List<Resource> search(SqlQueryData queryData) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
 
+    /**
+     * Executes the search contained in the passed SqlQueryData like {@link #search(SqlQueryData)}, but passes each
+     * Resource to the passed consumer while the result set is read instead of returning them as a list.
+     * @param queryData - Contains a search string and (optionally) bind variables.
+     * @param consumer - Receives the FHIR Resources satisfying the passed search, in result set order.
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     * @throws IOException - if thrown by the consumer
+     */
+    void search(SqlQueryData queryData, ResourceDTOConsumer consumer)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException, IOException;
+
     /**
      * Executes the search contained in the passed SqlQueryData, using it's encapsulated search string and bind variables.
      * @param queryData - Contains a search string and (optionally) bind variables.
@@ -97,6 +155,18 @@ public interface ResourceDAO extends FHIRDbDAO {
      */
     List<String> searchStringValues(SqlQueryData queryData) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
 
+    /**
+     * Executes the passed inclusion target query, which must select an integer key in the first column
+     * and a logical id in the second column.
+     * @param queryData - Contains a search string and (optionally) bind variables.
+     * @return Map<Integer, Set<String>> the distinct logical ids returned by the query, grouped by key.
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     * @implNote This method is used within searches which have _include or _revinclude parameters
+     *           to resolve the distinct set of resources to be included with the response.
+     */
+    Map<Integer, Set<String>> searchInclusionTargets(SqlQueryData queryData) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
+
 
     /**
      * Executes the passed fully-formed SQL Select statement and returns the results
@@ -130,6 +200,23 @@ public interface ResourceDAO extends FHIRDbDAO {
      */
     List<Resource> searchByIds(String resourceType, List<Long> resourceIds) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
 
+    /**
+     * Reads a page of the resource change log, in the order the resource versions were stored. The page
+     * starts after the version identified by (afterTstamp, afterResourceId), so the caller can continue
+     * from the last change of the previous page without counting or skipping rows.
+     * @param resourceType - The type of the FHIR Resource, or null for all types
+     * @param afterTstamp - The timestamp of the last change already read, or null to start at the beginning
+     * @param afterResourceId - The resource id of the last change already read. Use -1 with a timestamp to
+     *        include all the changes made at that time
+     * @param beforeTstamp - Only the changes with an earlier timestamp are returned, or null for no limit
+     * @param maxResults - The maximum number of changes to return
+     * @return List<ResourceChange> - The changes, ordered by CHANGE_TSTAMP, RESOURCE_ID
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     */
+    List<ResourceChange> changes(String resourceType, Timestamp afterTstamp, long afterResourceId, Timestamp beforeTstamp, int maxResults)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
+
     /**
      * Executes a count query based on the data contained in the passed SqlQueryData, using it's encapsulated search string and bind variables.
      * @param queryData - Contains a search string and (optionally) bind variables.
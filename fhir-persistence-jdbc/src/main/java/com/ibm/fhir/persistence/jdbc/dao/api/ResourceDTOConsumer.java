@@ -0,0 +1,26 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.dao.api;
+
+import java.io.IOException;
+
+import com.ibm.fhir.persistence.jdbc.dto.Resource;
+
+/**
+ * Receives the Resource DTOs of a query one at a time, while the DAO reads its result set.
+ */
+@FunctionalInterface
+public interface ResourceDTOConsumer {
+
+    /**
+     * @param resource
+     *     the DTO of the current row
+     * @throws IOException
+     *     if the DTO could not be written to the output of the caller; the DAO stops reading and rethrows it
+     */
+    void accept(Resource resource) throws IOException;
+}
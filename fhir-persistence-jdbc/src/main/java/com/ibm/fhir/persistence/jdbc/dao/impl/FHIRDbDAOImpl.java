@@ -6,6 +6,7 @@
 
 package com.ibm.fhir.persistence.jdbc.dao.impl;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -25,6 +26,7 @@ import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
 import com.ibm.fhir.persistence.jdbc.JDBCConstants;
 import com.ibm.fhir.persistence.jdbc.connection.FHIRDbFlavor;
 import com.ibm.fhir.persistence.jdbc.dao.api.FHIRDbDAO;
+import com.ibm.fhir.persistence.jdbc.dao.api.ResourceDTOConsumer;
 import com.ibm.fhir.persistence.jdbc.dto.Resource;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDBCleanupException;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDBConnectException;
@@ -228,6 +230,68 @@ public class FHIRDbDAOImpl implements FHIRDbDAO {
         return fhirObjects;
     }
 
+    /**
+     * Creates and executes a PreparedStatement using the passed parameters, and passes the FHIR Data Transfer Object
+     * of each row to the passed consumer while reading the result set, so that the rows are not held in memory.
+     *
+     * @param sql        - The SQL template to execute.
+     * @param consumer   - Receives the DTO of each row, in result set order.
+     * @param searchArgs - An array of arguments to be substituted into the SQL template.
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     * @throws IOException - if thrown by the consumer
+     */
+    protected void runQuery(String sql, ResourceDTOConsumer consumer, Object... searchArgs)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException, IOException {
+        final String METHODNAME = "runQuery(String,ResourceDTOConsumer,Object...)";
+        log.entering(CLASSNAME, METHODNAME);
+
+        PreparedStatement stmt = null;
+        ResultSet resultSet = null;
+        String errMsg;
+        long dbCallStartTime;
+        double dbCallDuration;
+
+        try {
+            stmt = connection.prepareStatement(sql);
+            // Inject arguments into the prepared stmt.
+            for (int i = 0; i < searchArgs.length; i++) {
+                if (searchArgs[i] instanceof Timestamp) {
+                    stmt.setTimestamp(i + 1, (Timestamp) searchArgs[i], JDBCConstants.UTC);
+                } else {
+                    stmt.setObject(i + 1, searchArgs[i]);
+                }
+            }
+            dbCallStartTime = System.nanoTime();
+            resultSet = stmt.executeQuery();
+            dbCallDuration = (System.nanoTime() - dbCallStartTime) / 1e6;
+            int count = 0;
+            while (resultSet.next()) {
+                Resource dto = this.createDTO(resultSet);
+                if (dto != null) {
+                    consumer.accept(dto);
+                    count++;
+                }
+            }
+
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("Successfully streamed " + count + " FHIR objects. SQL=" + sql + "  searchArgs="
+                        + Arrays.toString(searchArgs) + " executionTime=" + dbCallDuration + "ms");
+            }
+        } catch (FHIRPersistenceException | IOException e) {
+            throw e;
+        } catch (Throwable e) {
+            // avoid leaking SQL because the exception message might be returned to a client
+            FHIRPersistenceDataAccessException fx =
+                    new FHIRPersistenceDataAccessException("Failure retrieving FHIR objects");
+            errMsg = "Failure retrieving FHIR objects. SQL=" + sql + "  searchArgs=" + Arrays.toString(searchArgs);
+            throw severe(log, fx, errMsg, e);
+        } finally {
+            this.cleanup(resultSet, stmt);
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+    }
+
     /**
      * Creates and executes a PreparedStatement for the passed sql containing a 'SELECT COUNT...'.
      * The count value is extracted from the ResultSet and returned as an int.
@@ -17,7 +17,9 @@ import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -37,7 +39,10 @@ import com.ibm.fhir.persistence.jdbc.dto.StringParmVal;
 import com.ibm.fhir.persistence.jdbc.dto.TokenParmVal;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDataAccessException;
 import com.ibm.fhir.persistence.jdbc.impl.ParameterTransactionDataImpl;
+import com.ibm.fhir.persistence.jdbc.util.CompartmentNames;
 import com.ibm.fhir.schema.control.FhirSchemaConstants;
+import com.ibm.fhir.search.compartment.CompartmentUtil;
+import com.ibm.fhir.search.location.util.Geohash;
 import com.ibm.fhir.search.util.ReferenceValue;
 import com.ibm.fhir.search.util.ReferenceValue.ReferenceType;
 
@@ -100,6 +105,11 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
     private final PreparedStatement resourceTokens;
     private int resourceTokenCount;
 
+    // The compartments the resource belongs to, from the ibm-internal compartment reference parameters
+    private final PreparedStatement compartmentMemberships;
+    private int compartmentMembershipCount;
+    private final Set<String> compartmentMembershipKeys = new HashSet<>();
+
     // DAO for handling parameters stored as token values
     private final IResourceReferenceDAO resourceReferenceDAO;
 
@@ -165,8 +175,8 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
                 "INSERT INTO " + tablePrefix + "_quantity_values (parameter_name_id, code_system_id, code, quantity_value, quantity_value_low, quantity_value_high, logical_resource_id) VALUES (?,?,?,?,?,?,?)";
         quantities = c.prepareStatement(insertQuantity);
 
-        insertLocation = multitenant ? "INSERT INTO " + tablePrefix + "_latlng_values (mt_id, parameter_name_id, latitude_value, longitude_value, logical_resource_id) VALUES (" + adminSchemaName + ".sv_tenant_id,?,?,?,?)"
-                : "INSERT INTO " + tablePrefix + "_latlng_values (parameter_name_id, latitude_value, longitude_value, logical_resource_id) VALUES (?,?,?,?)";
+        insertLocation = multitenant ? "INSERT INTO " + tablePrefix + "_latlng_values (mt_id, parameter_name_id, latitude_value, longitude_value, geohash_value, logical_resource_id) VALUES (" + adminSchemaName + ".sv_tenant_id,?,?,?,?,?)"
+                : "INSERT INTO " + tablePrefix + "_latlng_values (parameter_name_id, latitude_value, longitude_value, geohash_value, logical_resource_id) VALUES (?,?,?,?,?)";
 
         String insertComposite = multitenant ?
                 "INSERT INTO " + tablePrefix + "_composites (mt_id, parameter_name_id, logical_resource_id, "
@@ -202,6 +212,13 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
                 :
                 "INSERT INTO resource_token_values (parameter_name_id, code_system_id, token_value, logical_resource_id) VALUES (?,?,?,?)";
         resourceTokens = c.prepareStatement(insertResourceToken);
+
+        // Compartment membership
+        String insertCompartmentMembership = multitenant ?
+                "INSERT INTO compartment_memberships (mt_id, compartment_name_id, compartment_logical_id, resource_type_id, logical_resource_id) VALUES (" + adminSchemaName + ".sv_tenant_id,?,?,?,?)"
+                :
+                "INSERT INTO compartment_memberships (compartment_name_id, compartment_logical_id, resource_type_id, logical_resource_id) VALUES (?,?,?,?)";
+        compartmentMemberships = c.prepareStatement(insertCompartmentMembership);
     }
 
     /**
@@ -518,7 +535,9 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
         insert.setInt(1, parameterNameId);
         insert.setDouble(2, lat);
         insert.setDouble(3, lng);
-        insert.setLong(4, logicalResourceId);
+        // the geohash cell id supports the spatial index path for near searches
+        insert.setString(4, Geohash.encode(lat, lng, Geohash.MAX_PRECISION));
+        insert.setLong(5, logicalResourceId);
     }
 
     @Override
@@ -692,6 +711,11 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
                 resourceTokenCount = 0;
             }
 
+            if (compartmentMembershipCount > 0) {
+                compartmentMemberships.executeBatch();
+                compartmentMembershipCount = 0;
+            }
+
         }
         catch (SQLException x) {
             SQLException batchException = x.getNextException();
@@ -718,6 +742,7 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
         closeStatement(resourceStrings);
         closeStatement(resourceDates);
         closeStatement(resourceTokens);
+        closeStatement(compartmentMemberships);
     }
 
     /**
@@ -783,5 +808,46 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
         } else {
             this.tokenValueRecs.add(rec);
         }
+
+        // The compartment reference parameters also record the membership of the resource
+        if (refResourceType != null && rpv.getName().equals(CompartmentUtil.makeCompartmentParamName(refResourceType))) {
+            CompartmentNames compartment = CompartmentNames.fromName(refResourceType);
+            if (compartment != null) {
+                addCompartmentMembership(compartment, refLogicalId, resourceTypeId);
+            }
+        }
+    }
+
+    /**
+     * Add the resource to the compartment_memberships table, ignoring duplicates
+     * @param compartment
+     * @param compartmentLogicalId
+     * @param resourceTypeId
+     * @throws FHIRPersistenceException
+     */
+    private void addCompartmentMembership(CompartmentNames compartment, String compartmentLogicalId, int resourceTypeId) throws FHIRPersistenceException {
+        if (!compartmentMembershipKeys.add(compartment.getId() + "/" + compartmentLogicalId)) {
+            return;
+        }
+
+        try {
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("compartmentMembership: " + compartment.name() + "/" + compartmentLogicalId);
+            }
+
+            compartmentMemberships.setInt(1, compartment.getId());
+            compartmentMemberships.setString(2, compartmentLogicalId);
+            compartmentMemberships.setInt(3, resourceTypeId);
+            compartmentMemberships.setLong(4, logicalResourceId);
+            compartmentMemberships.addBatch();
+
+            if (++compartmentMembershipCount == this.batchSize) {
+                compartmentMemberships.executeBatch();
+                compartmentMembershipCount = 0;
+            }
+        }
+        catch (SQLException x) {
+            throw new FHIRPersistenceDataAccessException(compartment.name() + "/" + compartmentLogicalId, x);
+        }
     }
 }
\ No newline at end of file
@@ -11,6 +11,7 @@ import static com.ibm.fhir.persistence.jdbc.JDBCConstants.THEN;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.UTC;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.WHEN;
 
+import java.io.IOException;
 import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -21,10 +22,14 @@ import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -40,8 +45,10 @@ import com.ibm.fhir.persistence.jdbc.dao.api.IResourceReferenceDAO;
 import com.ibm.fhir.persistence.jdbc.dao.api.JDBCIdentityCache;
 import com.ibm.fhir.persistence.jdbc.dao.api.ParameterDAO;
 import com.ibm.fhir.persistence.jdbc.dao.api.ResourceDAO;
+import com.ibm.fhir.persistence.jdbc.dao.api.ResourceDTOConsumer;
 import com.ibm.fhir.persistence.jdbc.dto.ExtractedParameterValue;
 import com.ibm.fhir.persistence.jdbc.dto.Resource;
+import com.ibm.fhir.persistence.jdbc.dto.ResourceChange;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDBConnectException;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDataAccessException;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceFKVException;
@@ -71,6 +78,25 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
             "FROM %s_RESOURCES R, %s_LOGICAL_RESOURCES LR WHERE " +
             "LR.LOGICAL_ID = ? AND R.RESOURCE_ID = LR.CURRENT_RESOURCE_ID";
 
+    // Read the current version of each of a batch of resources; the bind markers for the logical ids are appended
+    private static final String SQL_READ_MANY = "SELECT R.RESOURCE_ID, R.LOGICAL_RESOURCE_ID, R.VERSION_ID, R.LAST_UPDATED, R.IS_DELETED, R.DATA, LR.LOGICAL_ID " +
+            "FROM %s_RESOURCES R, %s_LOGICAL_RESOURCES LR WHERE " +
+            "R.RESOURCE_ID = LR.CURRENT_RESOURCE_ID AND LR.LOGICAL_ID IN ";
+
+    // The maximum number of logical ids bound to a single SQL_READ_MANY statement
+    private static final int READ_MANY_BATCH_SIZE = 1000;
+
+    // Read the current version of the resources indexed with a token value. The subquery is a single probe of
+    // the unique token value index followed by the token refs index, and avoids duplicates if a resource has
+    // the same token more than once
+    private static final String SQL_READ_BY_TOKEN = "SELECT R.RESOURCE_ID, R.LOGICAL_RESOURCE_ID, R.VERSION_ID, R.LAST_UPDATED, R.IS_DELETED, R.DATA, LR.LOGICAL_ID " +
+            "FROM %s_RESOURCES R, %s_LOGICAL_RESOURCES LR WHERE " +
+            "R.RESOURCE_ID = LR.CURRENT_RESOURCE_ID AND R.IS_DELETED = 'N' AND LR.LOGICAL_RESOURCE_ID IN (" +
+            "SELECT REF.LOGICAL_RESOURCE_ID FROM COMMON_TOKEN_VALUES CTV, %s_RESOURCE_TOKEN_REFS REF WHERE " +
+            "CTV.TOKEN_VALUE = ? AND CTV.CODE_SYSTEM_ID = ? AND REF.COMMON_TOKEN_VALUE_ID = CTV.COMMON_TOKEN_VALUE_ID " +
+            "AND REF.PARAMETER_NAME_ID = ?) " +
+            "FETCH FIRST %d ROWS ONLY";
+
     // Read a specific version of the resource
     private static final String SQL_VERSION_READ =
             "SELECT R.RESOURCE_ID, R.LOGICAL_RESOURCE_ID, R.VERSION_ID, R.LAST_UPDATED, R.IS_DELETED, R.DATA, LR.LOGICAL_ID " +
@@ -116,6 +142,15 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
 
     private static final String SQL_ORDER_BY_IDS = "ORDER BY CASE R.RESOURCE_ID ";
 
+    // Read a page of the change log. The keyset predicate and the resource type filter are added as needed, so
+    // the query is a range scan of the (CHANGE_TSTAMP, RESOURCE_ID) or (RESOURCE_TYPE_ID, CHANGE_TSTAMP, RESOURCE_ID) index
+    private static final String SQL_CHANGES = "SELECT C.RESOURCE_ID, C.CHANGE_TSTAMP, C.VERSION_ID, C.CHANGE_TYPE, RT.RESOURCE_TYPE " +
+            "FROM RESOURCE_CHANGE_LOG C, RESOURCE_TYPES RT WHERE RT.RESOURCE_TYPE_ID = C.RESOURCE_TYPE_ID";
+    private static final String SQL_CHANGES_TYPE = " AND RT.RESOURCE_TYPE = ?";
+    private static final String SQL_CHANGES_AFTER = " AND (C.CHANGE_TSTAMP > ? OR (C.CHANGE_TSTAMP = ? AND C.RESOURCE_ID > ?))";
+    private static final String SQL_CHANGES_BEFORE = " AND C.CHANGE_TSTAMP < ?";
+    private static final String SQL_CHANGES_ORDER = " ORDER BY C.CHANGE_TSTAMP, C.RESOURCE_ID FETCH FIRST %d ROWS ONLY";
+
     private static final String DERBY_PAGINATION_PARMS = "OFFSET ? ROWS FETCH NEXT ? ROWS ONLY";
 
     private static final String DB2_PAGINATION_PARMS = "LIMIT ? OFFSET ?";
@@ -206,6 +241,45 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
         return resource;
     }
 
+    @Override
+    public List<Resource> readMany(Collection<String> logicalIds, String resourceType) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
+        final String METHODNAME = "readMany";
+        log.entering(CLASSNAME, METHODNAME);
+
+        List<Resource> resources = new ArrayList<>();
+        List<String> distinctIds = new ArrayList<>(new LinkedHashSet<>(logicalIds));
+
+        try {
+            for (int start = 0; start < distinctIds.size(); start += READ_MANY_BATCH_SIZE) {
+                List<String> batch = distinctIds.subList(start, Math.min(start + READ_MANY_BATCH_SIZE, distinctIds.size()));
+                StringBuilder stmtString = new StringBuilder(String.format(SQL_READ_MANY, resourceType, resourceType));
+                stmtString.append("(");
+                for (int i = 0; i < batch.size(); i++) {
+                    stmtString.append(i == 0 ? "?" : ",?");
+                }
+                stmtString.append(")");
+                resources.addAll(this.runQuery(stmtString.toString(), batch.toArray()));
+            }
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+        return resources;
+    }
+
+    @Override
+    public List<Resource> readByToken(String resourceType, int parameterNameId, int codeSystemId, String tokenValue, int maxResults)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
+        final String METHODNAME = "readByToken";
+        log.entering(CLASSNAME, METHODNAME);
+
+        try {
+            String stmtString = String.format(SQL_READ_BY_TOKEN, resourceType, resourceType, resourceType, maxResults);
+            return this.runQuery(stmtString, tokenValue, codeSystemId, parameterNameId);
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+    }
+
     @Override
     public Resource versionRead(String logicalId, String resourceType, int versionId) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
         final String METHODNAME = "versionRead";
@@ -266,34 +340,56 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
         log.entering(CLASSNAME, METHODNAME);
 
         List<Resource> resources = null;
-        String stmtString = null;
 
         try {
-            if (fromDateTime != null) {
-                stmtString = String.format(SQL_HISTORY_FROM_DATETIME, resourceType, resourceType);
-                if (isDb2Database()) {
-                    stmtString = stmtString + DB2_PAGINATION_PARMS;
-                    resources = this.runQuery(stmtString, logicalId, fromDateTime, maxResults, offset);
-                } else {
-                    stmtString = stmtString + DERBY_PAGINATION_PARMS;
-                    resources = this.runQuery(stmtString, logicalId, fromDateTime, offset, maxResults);
-                }
-            } else {
-                stmtString = String.format(SQL_HISTORY, resourceType, resourceType);
-                if (isDb2Database()) {
-                    stmtString = stmtString + DB2_PAGINATION_PARMS;
-                    resources = this.runQuery(stmtString, logicalId, maxResults, offset);
-                } else {
-                    stmtString = stmtString + DERBY_PAGINATION_PARMS;
-                    resources = this.runQuery(stmtString, logicalId, offset, maxResults);
-                }
-            }
+            SqlQueryData query = buildHistoryQuery(resourceType, logicalId, fromDateTime, offset, maxResults);
+            resources = this.runQuery(query.getQueryString(), query.getBindVariables().toArray());
         } finally {
             log.exiting(CLASSNAME, METHODNAME, Arrays.toString(new Object[] { resources }));
         }
         return resources;
     }
 
+    @Override
+    public void history(String resourceType, String logicalId, Timestamp fromDateTime, int offset, int maxResults,
+            ResourceDTOConsumer consumer) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException, IOException {
+        final String METHODNAME = "history(ResourceDTOConsumer)";
+        log.entering(CLASSNAME, METHODNAME);
+
+        try {
+            SqlQueryData query = buildHistoryQuery(resourceType, logicalId, fromDateTime, offset, maxResults);
+            this.runQuery(query.getQueryString(), consumer, query.getBindVariables().toArray());
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+    }
+
+    /**
+     * Builds the query for a page of the versions of the passed resource, with the pagination bind variables in the
+     * order of the database flavor.
+     */
+    private SqlQueryData buildHistoryQuery(String resourceType, String logicalId, Timestamp fromDateTime, int offset, int maxResults) {
+        String stmtString;
+        List<Object> bindVariables = new ArrayList<>();
+        bindVariables.add(logicalId);
+        if (fromDateTime != null) {
+            stmtString = String.format(SQL_HISTORY_FROM_DATETIME, resourceType, resourceType);
+            bindVariables.add(fromDateTime);
+        } else {
+            stmtString = String.format(SQL_HISTORY, resourceType, resourceType);
+        }
+        if (isDb2Database()) {
+            stmtString = stmtString + DB2_PAGINATION_PARMS;
+            bindVariables.add(maxResults);
+            bindVariables.add(offset);
+        } else {
+            stmtString = stmtString + DERBY_PAGINATION_PARMS;
+            bindVariables.add(offset);
+            bindVariables.add(maxResults);
+        }
+        return new SqlQueryData(stmtString, bindVariables);
+    }
+
     @Override
     public int historyCount(String resourceType, String logicalId, Timestamp fromDateTime)
             throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
@@ -335,6 +431,19 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
         return resources;
     }
 
+    @Override
+    public void search(SqlQueryData queryData, ResourceDTOConsumer consumer)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException, IOException {
+        final String METHODNAME = "search(SqlQueryData,ResourceDTOConsumer)";
+        log.entering(CLASSNAME, METHODNAME);
+
+        try {
+            this.runQuery(queryData.getQueryString(), consumer, queryData.getBindVariables().toArray());
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+    }
+
     @Override
     public int searchCount(SqlQueryData queryData) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
         final String METHODNAME = "searchCount(SqlQueryData)";
@@ -714,6 +823,60 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
         return resources;
     }
 
+    @Override
+    public List<ResourceChange> changes(String resourceType, Timestamp afterTstamp, long afterResourceId, Timestamp beforeTstamp,
+            int maxResults)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
+        final String METHODNAME = "changes";
+        log.entering(CLASSNAME, METHODNAME);
+
+        final Connection connection = getConnection(); // do not close
+        List<ResourceChange> changes = new ArrayList<>();
+        StringBuilder query = new StringBuilder(SQL_CHANGES);
+        if (resourceType != null) {
+            query.append(SQL_CHANGES_TYPE);
+        }
+        if (afterTstamp != null) {
+            query.append(SQL_CHANGES_AFTER);
+        }
+        if (beforeTstamp != null) {
+            query.append(SQL_CHANGES_BEFORE);
+        }
+        query.append(String.format(SQL_CHANGES_ORDER, maxResults));
+
+        try (PreparedStatement stmt = connection.prepareStatement(query.toString())) {
+            int a = 1;
+            if (resourceType != null) {
+                stmt.setString(a++, resourceType);
+            }
+            if (afterTstamp != null) {
+                stmt.setTimestamp(a++, afterTstamp, UTC);
+                stmt.setTimestamp(a++, afterTstamp, UTC);
+                stmt.setLong(a++, afterResourceId);
+            }
+            if (beforeTstamp != null) {
+                stmt.setTimestamp(a++, beforeTstamp, UTC);
+            }
+
+            long dbCallStartTime = System.nanoTime();
+            ResultSet resultSet = stmt.executeQuery();
+            while (resultSet.next()) {
+                changes.add(new ResourceChange(resultSet.getString(5), resultSet.getLong(1), resultSet.getTimestamp(2, UTC),
+                    resultSet.getInt(3), resultSet.getString(4).charAt(0)));
+            }
+            if (log.isLoggable(Level.FINE)) {
+                double dbCallDuration = (System.nanoTime() - dbCallStartTime) / 1e6;
+                log.fine("DB read changes complete. SQL=[" + query + "]  executionTime=" + dbCallDuration + "ms");
+            }
+        } catch (SQLException e) {
+            FHIRPersistenceDataAccessException fx = new FHIRPersistenceDataAccessException("Failure reading the resource change log");
+            throw severe(log, fx, "Failure reading the resource change log. SQL=[" + query + "]", e);
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+        return changes;
+    }
+
     protected String getSearchByIdsSql(String resourceType) {
         return String.format(SQL_SEARCH_BY_IDS, resourceType, resourceType);
     }
@@ -748,6 +911,55 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
         }
     }
 
+    @Override
+    public Map<Integer, Set<String>> searchInclusionTargets(SqlQueryData queryData)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
+        final String METHODNAME = "searchInclusionTargets";
+        log.entering(CLASSNAME, METHODNAME);
+
+        final Connection connection = getConnection(); // do not close
+        final String sql = queryData.getQueryString();
+        final List<? extends Object> bindVariables = queryData.getBindVariables();
+        Map<Integer, Set<String>> result = new HashMap<>();
+        PreparedStatement stmt = null;
+        ResultSet resultSet = null;
+        long dbCallStartTime;
+        double dbCallDuration;
+
+        try {
+            stmt = connection.prepareStatement(sql);
+            for (int i = 0; i < bindVariables.size(); i++) {
+                stmt.setObject(i + 1, bindVariables.get(i));
+            }
+            dbCallStartTime = System.nanoTime();
+            resultSet = stmt.executeQuery();
+            dbCallDuration = (System.nanoTime() - dbCallStartTime) / 1e6;
+
+            int rowCount = 0;
+            while (resultSet.next()) {
+                String logicalId = resultSet.getString(2);
+                if (logicalId != null) {
+                    result.computeIfAbsent(resultSet.getInt(1), k -> new HashSet<>()).add(logicalId);
+                }
+                rowCount++;
+            }
+
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("Successfully retrieved inclusion targets. SQL=" + sql + "  searchArgs=" + bindVariables
+                        + " rows=" + rowCount + " executionTime=" + dbCallDuration + "ms");
+            }
+        } catch (Throwable e) {
+            // avoid leaking SQL because the exception message might be returned to a client
+            FHIRPersistenceDataAccessException fx = new FHIRPersistenceDataAccessException("Failure retrieving inclusion targets");
+            final String errMsg = "Failure retrieving inclusion targets. SQL=" + sql + "  searchArgs=" + bindVariables;
+            throw severe(log, fx, errMsg, e);
+        } finally {
+            this.cleanup(resultSet, stmt);
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+        return result;
+    }
+
     /**
      * Getter for access to the {@link FHIRPersistenceJDBCCache} from subclasses
      *
@@ -13,6 +13,7 @@ import java.sql.SQLException;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -545,6 +546,25 @@ public abstract class ResourceReferenceDAO implements IResourceReferenceDAO, Aut
      */
     protected abstract void doCommonTokenValuesUpsert(String paramList, Collection<CommonTokenValue> tokenValues);
 
+    @Override
+    public void lockCommonTokenValue(int codeSystemId, String tokenValue) {
+        // Make sure the row exists, so there's something to lock
+        final String paramList = "(CAST(? AS VARCHAR(" + FhirSchemaConstants.MAX_TOKEN_VALUE_BYTES + ")),CAST(? AS INT))";
+        doCommonTokenValuesUpsert(paramList, Collections.singleton(new CommonTokenValue(codeSystemId, tokenValue)));
+
+        // A no-op update is the simplest way to take an exclusive row lock which is held
+        // until the transaction ends on all our database platforms
+        final String DML = "UPDATE common_token_values SET token_value = token_value WHERE token_value = ? AND code_system_id = ?";
+        try (PreparedStatement ps = connection.prepareStatement(DML)) {
+            ps.setString(1, tokenValue);
+            ps.setInt(2, codeSystemId);
+            ps.executeUpdate();
+        } catch (SQLException x) {
+            logger.log(Level.SEVERE, DML, x);
+            throw translator.translate(x);
+        }
+    }
+
     @Override
     public void persist(Collection<ResourceTokenValueRec> records) {
         // Grab the ids for all the code-systems, and upsert any misses
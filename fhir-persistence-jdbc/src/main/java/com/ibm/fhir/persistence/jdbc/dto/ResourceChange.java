@@ -0,0 +1,89 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.dto;
+
+import java.sql.Timestamp;
+
+/**
+ * DTO holding one row of the RESOURCE_CHANGE_LOG table: a resource version
+ * in the order it was stored.
+ */
+public class ResourceChange {
+
+    // The resource type name, e.g. Patient
+    private final String resourceType;
+
+    // The RESOURCE_ID of the version in the xx_RESOURCES table
+    private final long resourceId;
+
+    // When the version was stored (its LAST_UPDATED)
+    private final Timestamp changeTstamp;
+
+    // The version number of the resource
+    private final int versionId;
+
+    // C (create), U (update) or D (delete)
+    private final char changeType;
+
+    /**
+     * Public constructor
+     * @param resourceType
+     * @param resourceId
+     * @param changeTstamp
+     * @param versionId
+     * @param changeType
+     */
+    public ResourceChange(String resourceType, long resourceId, Timestamp changeTstamp, int versionId, char changeType) {
+        this.resourceType = resourceType;
+        this.resourceId = resourceId;
+        this.changeTstamp = changeTstamp;
+        this.versionId = versionId;
+        this.changeType = changeType;
+    }
+
+    /**
+     * @return the resource type name
+     */
+    public String getResourceType() {
+        return resourceType;
+    }
+
+    /**
+     * @return the id of the resource version
+     */
+    public long getResourceId() {
+        return resourceId;
+    }
+
+    /**
+     * @return when the version was stored
+     */
+    public Timestamp getChangeTstamp() {
+        return changeTstamp;
+    }
+
+    /**
+     * @return the version number of the resource
+     */
+    public int getVersionId() {
+        return versionId;
+    }
+
+    /**
+     * @return C (create), U (update) or D (delete)
+     */
+    public char getChangeType() {
+        return changeType;
+    }
+
+    /**
+     * @return true if the version marks the deletion of the resource
+     */
+    public boolean isDeleted() {
+        return changeType == 'D';
+    }
+}
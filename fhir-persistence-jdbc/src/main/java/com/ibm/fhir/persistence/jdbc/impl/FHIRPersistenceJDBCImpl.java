@@ -6,9 +6,12 @@
 
 package com.ibm.fhir.persistence.jdbc.impl;
 
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_CHANGE_LOG_SETTLE_SECONDS;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_ENABLE_CODE_SYSTEMS_CACHE;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_ENABLE_PARAMETER_NAMES_CACHE;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_ENABLE_RESOURCE_TYPES_CACHE;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_ENABLE_SEARCH_QUERY_TEMPLATE_CACHE;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_TRUST_STORED_XHTML;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_UPDATE_CREATE_ENABLED;
 import static com.ibm.fhir.model.type.String.string;
 import static com.ibm.fhir.model.util.ModelSupport.getResourceType;
@@ -18,6 +21,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Timestamp;
@@ -28,6 +32,8 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -36,6 +42,7 @@ import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -75,6 +82,7 @@ import com.ibm.fhir.model.type.code.IssueType;
 import com.ibm.fhir.model.type.code.SearchParamType;
 import com.ibm.fhir.model.util.FHIRUtil;
 import com.ibm.fhir.model.util.JsonSupport;
+import com.ibm.fhir.model.util.ValidationSupport;
 import com.ibm.fhir.model.visitor.Visitable;
 import com.ibm.fhir.path.FHIRPathNode;
 import com.ibm.fhir.path.FHIRPathSystemValue;
@@ -83,6 +91,8 @@ import com.ibm.fhir.path.evaluator.FHIRPathEvaluator.EvaluationContext;
 import com.ibm.fhir.persistence.FHIRPersistence;
 import com.ibm.fhir.persistence.FHIRPersistenceTransaction;
 import com.ibm.fhir.persistence.MultiResourceResult;
+import com.ibm.fhir.persistence.ResourcePayload;
+import com.ibm.fhir.persistence.ResourcePayloadConsumer;
 import com.ibm.fhir.persistence.SingleResourceResult;
 import com.ibm.fhir.persistence.context.FHIRHistoryContext;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
@@ -111,6 +121,7 @@ import com.ibm.fhir.persistence.jdbc.dao.api.IResourceReferenceDAO;
 import com.ibm.fhir.persistence.jdbc.dao.api.JDBCIdentityCache;
 import com.ibm.fhir.persistence.jdbc.dao.api.ParameterDAO;
 import com.ibm.fhir.persistence.jdbc.dao.api.ResourceDAO;
+import com.ibm.fhir.persistence.jdbc.dao.api.ResourceDTOConsumer;
 import com.ibm.fhir.persistence.jdbc.dao.api.ResourceIndexRecord;
 import com.ibm.fhir.persistence.jdbc.dao.impl.JDBCIdentityCacheImpl;
 import com.ibm.fhir.persistence.jdbc.dao.impl.ParameterDAOImpl;
@@ -122,16 +133,20 @@ import com.ibm.fhir.persistence.jdbc.dto.ExtractedParameterValue;
 import com.ibm.fhir.persistence.jdbc.dto.NumberParmVal;
 import com.ibm.fhir.persistence.jdbc.dto.QuantityParmVal;
 import com.ibm.fhir.persistence.jdbc.dto.ReferenceParmVal;
+import com.ibm.fhir.persistence.jdbc.dto.ResourceChange;
 import com.ibm.fhir.persistence.jdbc.dto.StringParmVal;
 import com.ibm.fhir.persistence.jdbc.dto.TokenParmVal;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDBConnectException;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDataAccessException;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceFKVException;
+import com.ibm.fhir.persistence.jdbc.util.ChangeLogCursor;
 import com.ibm.fhir.persistence.jdbc.util.CodeSystemsCache;
+import com.ibm.fhir.persistence.jdbc.util.InclusionQueryBuilder;
 import com.ibm.fhir.persistence.jdbc.util.JDBCParameterBuildingVisitor;
 import com.ibm.fhir.persistence.jdbc.util.JDBCQueryBuilder;
 import com.ibm.fhir.persistence.jdbc.util.ParameterNamesCache;
 import com.ibm.fhir.persistence.jdbc.util.ResourceTypesCache;
+import com.ibm.fhir.persistence.jdbc.util.SqlParameterEncoder;
 import com.ibm.fhir.persistence.jdbc.util.SqlQueryData;
 import com.ibm.fhir.persistence.jdbc.util.TimestampPrefixedUUID;
 import com.ibm.fhir.persistence.util.FHIRPersistenceUtil;
@@ -168,12 +183,30 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
     // The following are filtered as they are handled specifically by the persistence layer:
     private static final List<String> SPECIAL_HANDLING = Arrays.asList("_id", "_lastUpdated");
 
+    // The minimum number of resources read by readMany or changes for which the payloads are decoded in parallel
+    private static final int PARALLEL_DECODE_THRESHOLD = 8;
+
+    // The default number of seconds a change must be old before it is returned by changes
+    private static final int DEFAULT_CHANGE_LOG_SETTLE_SECONDS = 10;
+
+    // The token search parameter used by searchByIdentifier
+    private static final String IDENTIFIER_PARAMETER = "identifier";
+
     private final TransactionSynchronizationRegistry trxSynchRegistry;
     private List<OperationOutcome.Issue> supplementalIssues = new ArrayList<>();
 
     protected UserTransaction userTransaction = null;
     protected Boolean updateCreateEnabled = null;
 
+    // Skip the XHTML narrative check when parsing payloads which were already validated when they were stored
+    private final boolean trustStoredXhtml;
+
+    // Reuse the SQL built for searches with the same shape
+    private final boolean searchQueryTemplateCache;
+
+    // Changes more recent than this are left out of the change feed because their transaction may not have committed
+    private final int changeLogSettleSeconds;
+
     // The strategy used to obtain database connections
     private final FHIRDbConnectionStrategy connectionStrategy;
 
@@ -211,6 +244,9 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
             throw new IllegalStateException("Unable to load the default fhir-server-config.json");
         }
         this.updateCreateEnabled = fhirConfig.getBooleanProperty(PROPERTY_UPDATE_CREATE_ENABLED, Boolean.TRUE);
+        this.trustStoredXhtml = fhirConfig.getBooleanProperty(PROPERTY_JDBC_TRUST_STORED_XHTML, Boolean.TRUE);
+        this.searchQueryTemplateCache = fhirConfig.getBooleanProperty(PROPERTY_JDBC_ENABLE_SEARCH_QUERY_TEMPLATE_CACHE, Boolean.FALSE);
+        this.changeLogSettleSeconds = fhirConfig.getIntProperty(PROPERTY_JDBC_CHANGE_LOG_SETTLE_SECONDS, DEFAULT_CHANGE_LOG_SETTLE_SECONDS);
         this.userTransaction = retrieveUserTransaction(TXN_JNDI_NAME);
 
         if (userTransaction != null) {
@@ -283,6 +319,10 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
 
         this.cache = cache;
         this.updateCreateEnabled = Boolean.parseBoolean(configProps.getProperty("updateCreateEnabled"));
+        this.trustStoredXhtml = Boolean.parseBoolean(configProps.getProperty("trustStoredXhtml", "true"));
+        this.searchQueryTemplateCache = Boolean.parseBoolean(configProps.getProperty("enableSearchQueryTemplateCache", "false"));
+        this.changeLogSettleSeconds = Integer.parseInt(configProps.getProperty("changeLogSettleSeconds",
+            Integer.toString(DEFAULT_CHANGE_LOG_SETTLE_SECONDS)));
 
         // not running inside a JEE container
         this.trxSynchRegistry = null;
@@ -600,85 +640,57 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         List<Resource> resources = Collections.emptyList();
         MultiResourceResult.Builder<Resource> resultBuilder = new MultiResourceResult.Builder<>();
         FHIRSearchContext searchContext = context.getSearchContext();
-        JDBCQueryBuilder queryBuilder;
-        List<Long> sortedIdList;
-        List<com.ibm.fhir.persistence.jdbc.dto.Resource> unsortedResultsList;
-        int searchResultCount = 0;
-        SqlQueryData countQuery;
-        SqlQueryData query;
 
         try (Connection connection = openConnection()) {
             ResourceDAO resourceDao = makeResourceDAO(connection);
             ParameterDAO parameterDao = makeParameterDAO(connection);
             JDBCIdentityCache identityCache = new JDBCIdentityCacheImpl(cache, resourceDao, parameterDao);
 
-            checkModifiers(searchContext, isSystemLevelSearch(resourceType));
-            queryBuilder = new JDBCQueryBuilder(parameterDao, resourceDao, connectionStrategy.getQueryHints(), identityCache);
+            List<OperationOutcome.Issue> issues = new ArrayList<>();
+            List<com.ibm.fhir.persistence.jdbc.dto.Resource> resourceDTOList =
+                    searchPage(resourceDao, parameterDao, identityCache, resourceType, searchContext, issues);
+            if (!issues.isEmpty()) {
+                resultBuilder.outcome(OperationOutcome.builder()
+                    .issue(issues)
+                    .build());
+            }
+            if (resourceDTOList == null) {
+                return resultBuilder.success(false).build();
+            }
 
-            countQuery = queryBuilder.buildCountQuery(resourceType, searchContext);
-            if (countQuery != null) {
-                searchResultCount = resourceDao.searchCount(countQuery);
-                if (log.isLoggable(Level.FINE)) {
-                    log.fine("searchResultCount = " + searchResultCount);
-                }
-                searchContext.setTotalCount(searchResultCount);
-
-                List<OperationOutcome.Issue> issues = validatePagingContext(searchContext);
-                if (!issues.isEmpty()) {
-                    resultBuilder.outcome(OperationOutcome.builder()
-                        .issue(issues)
-                        .build());
-                    if (!searchContext.isLenient()) {
-                        return resultBuilder.success(false).build();
+            if (!resourceDTOList.isEmpty()) {
+                List<String> elements = searchContext.getElementsParameters();
+
+                //Only consider _summary if _elements parameter is empty
+                if (elements == null && searchContext.hasSummaryParameter()) {
+                    Set<String> summaryElements = null;
+                    SummaryValueSet summary = searchContext.getSummaryParameter();
+
+                    switch (summary) {
+                    case TRUE:
+                        summaryElements = JsonSupport.getSummaryElementNames(resourceType);
+                        break;
+                    case TEXT:
+                        summaryElements = SearchUtil.getSummaryTextElementNames(resourceType);
+                        break;
+                    case DATA:
+                        summaryElements = JsonSupport.getSummaryDataElementNames(resourceType);
+                        break;
+                    default:
+                        break;
                     }
-                }
-
-                // For _summary=count or pageSize == 0, we return only the count
-                if (searchResultCount > 0
-                        && !SummaryValueSet.COUNT.equals(searchContext.getSummaryParameter())
-                        && searchContext.getPageSize() > 0) {
-                    query = queryBuilder.buildQuery(resourceType, searchContext);
-
-                    List<String> elements = searchContext.getElementsParameters();
-
-                    //Only consider _summary if _elements parameter is empty
-                    if (elements == null && searchContext.hasSummaryParameter()) {
-                        Set<String> summaryElements = null;
-                        SummaryValueSet summary = searchContext.getSummaryParameter();
-
-                        switch (summary) {
-                        case TRUE:
-                            summaryElements = JsonSupport.getSummaryElementNames(resourceType);
-                            break;
-                        case TEXT:
-                            summaryElements = SearchUtil.getSummaryTextElementNames(resourceType);
-                            break;
-                        case DATA:
-                            summaryElements = JsonSupport.getSummaryDataElementNames(resourceType);
-                            break;
-                        default:
-                            break;
-                        }
 
-                        if (summaryElements != null) {
-                            elements = new ArrayList<>();
-                            elements.addAll(summaryElements);
-                        }
+                    if (summaryElements != null) {
+                        elements = new ArrayList<>();
+                        elements.addAll(summaryElements);
                     }
+                }
 
-                    if (searchContext.hasSortParameters()) {
-                        // Sorting results of a system-level search is limited, and has a different logic path
-                        // than other sorted searches.
-                        if (resourceType.equals(Resource.class)) {
-                           resources = this.convertResourceDTOList(resourceDao.search(query), resourceType, elements);
-                        } else {
-                            sortedIdList = resourceDao.searchForIds(query);
-                            resources = this.buildSortedFhirResources(resourceDao, context, resourceType, sortedIdList, elements);
-                        }
-                    } else {
-                        unsortedResultsList = resourceDao.search(query);
-                        resources = this.convertResourceDTOList(unsortedResultsList, resourceType, elements);
-                    }
+                resources = this.convertResourceDTOList(resourceDTOList, resourceType, elements);
+
+                if (!isSystemLevelSearch(resourceType)
+                        && (searchContext.hasIncludeParameters() || searchContext.hasRevIncludeParameters())) {
+                    resources = this.addIncludedResources(resourceDao, identityCache, resourceType, searchContext, resources, elements);
                 }
             }
 
@@ -697,6 +709,242 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         }
     }
 
+    @Override
+    public List<ResourcePayload> searchPayloads(FHIRPersistenceContext context, Class<? extends Resource> resourceType)
+            throws FHIRPersistenceException {
+        if (!isStoredPayloadSearch(context.getSearchContext())) {
+            return FHIRPersistence.super.searchPayloads(context, resourceType);
+        }
+        List<ResourcePayload> payloads = new ArrayList<>();
+        try {
+            searchPayloads(context, resourceType, payloads::add);
+        } catch (IOException e) {
+            // not thrown by the list
+            throw new IllegalStateException(e);
+        }
+        return payloads;
+    }
+
+    @Override
+    public void searchPayloads(FHIRPersistenceContext context, Class<? extends Resource> resourceType, ResourcePayloadConsumer consumer)
+            throws FHIRPersistenceException, IOException {
+        FHIRSearchContext searchContext = context.getSearchContext();
+        if (!isStoredPayloadSearch(searchContext)) {
+            // The stored payloads would need to be transformed, so parse and re-generate them as usual.
+            for (ResourcePayload payload : FHIRPersistence.super.searchPayloads(context, resourceType)) {
+                consumer.accept(payload);
+            }
+            return;
+        }
+
+        final String METHODNAME = "searchPayloads";
+        log.entering(CLASSNAME, METHODNAME);
+
+        try (Connection connection = openConnection()) {
+            ResourceDAO resourceDao = makeResourceDAO(connection);
+            ParameterDAO parameterDao = makeParameterDAO(connection);
+            JDBCIdentityCache identityCache = new JDBCIdentityCacheImpl(cache, resourceDao, parameterDao);
+
+            List<OperationOutcome.Issue> issues = new ArrayList<>();
+            boolean valid = searchPage(resourceDao, parameterDao, identityCache, resourceType, searchContext, issues, resourceDTO -> {
+                if (!resourceDTO.isDeleted()) {
+                    consumer.accept(toPayload(resourceDTO));
+                }
+            });
+            if (!valid) {
+                throw FHIRPersistenceUtil.searchFailed(resourceType, issues);
+            }
+        } catch (FHIRPersistenceException | IOException e) {
+            throw e;
+        } catch (Throwable e) {
+            FHIRPersistenceException fx = new FHIRPersistenceException("Unexpected error while performing a search operation.");
+            log.log(Level.SEVERE, fx.getMessage(), e);
+            throw fx;
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+    }
+
+    /**
+     * @return true if the resources of the passed search are returned as they are stored, so that their stored
+     *     payloads can be used as they are; false if _elements, _summary, _include or _revinclude apply
+     */
+    private boolean isStoredPayloadSearch(FHIRSearchContext searchContext) {
+        return !searchContext.hasElementsParameters()
+                && !(searchContext.hasSummaryParameter() && !SummaryValueSet.FALSE.equals(searchContext.getSummaryParameter()))
+                && !searchContext.hasIncludeParameters() && !searchContext.hasRevIncludeParameters();
+    }
+
+    /**
+     * Decompresses the stored payload of the passed DTO. A payload which can't be decompressed is a data access
+     * failure, not a failure of the output the payload is written to, so it isn't reported as an IOException.
+     */
+    private ResourcePayload toPayload(com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO) {
+        try {
+            return new ResourcePayload(resourceDTO.getLogicalId(), decompressPayload(resourceDTO.getData()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Runs the count query for the passed search context, validates the paging context against the count and,
+     * unless only the count is wanted, reads the resource DTOs of the requested page.
+     * Shared by {@link #search(FHIRPersistenceContext, Class)} and {@link #searchPayloads(FHIRPersistenceContext, Class)}.
+     * @param resourceDao
+     * @param parameterDao
+     * @param identityCache
+     * @param resourceType - The type of resource being searched for.
+     * @param searchContext - The search context; its total count is set from the count query.
+     * @param issues - Receives the issues found while validating the paging context.
+     * @return List - The resource DTOs of the page in result order, or null if the paging context is invalid and the
+     *         search is not lenient.
+     * @throws Exception
+     */
+    private List<com.ibm.fhir.persistence.jdbc.dto.Resource> searchPage(ResourceDAO resourceDao, ParameterDAO parameterDao,
+            JDBCIdentityCache identityCache, Class<? extends Resource> resourceType, FHIRSearchContext searchContext,
+            List<OperationOutcome.Issue> issues) throws Exception {
+        List<com.ibm.fhir.persistence.jdbc.dto.Resource> resourceDTOList = new ArrayList<>();
+        if (!searchPage(resourceDao, parameterDao, identityCache, resourceType, searchContext, issues, resourceDTOList::add)) {
+            return null;
+        }
+        return resourceDTOList;
+    }
+
+    /**
+     * Runs the count query for the passed search context, validates the paging context against the count and,
+     * unless only the count is wanted, passes the resource DTOs of the requested page to the passed consumer while
+     * they are read. The DTOs of a sorted type level search are read (and held) before they are passed, since the
+     * page is read by id and then put in sort order.
+     * @param resourceDao
+     * @param parameterDao
+     * @param identityCache
+     * @param resourceType - The type of resource being searched for.
+     * @param searchContext - The search context; its total count is set from the count query.
+     * @param issues - Receives the issues found while validating the paging context.
+     * @param consumer - Receives the resource DTOs of the page in result order.
+     * @return boolean - false if the paging context is invalid and the search is not lenient.
+     * @throws Exception
+     */
+    private boolean searchPage(ResourceDAO resourceDao, ParameterDAO parameterDao, JDBCIdentityCache identityCache,
+            Class<? extends Resource> resourceType, FHIRSearchContext searchContext, List<OperationOutcome.Issue> issues,
+            ResourceDTOConsumer consumer) throws Exception {
+
+        checkModifiers(searchContext, isSystemLevelSearch(resourceType));
+        JDBCQueryBuilder queryBuilder = newQueryBuilder(parameterDao, resourceDao, identityCache);
+
+        SqlQueryData countQuery = queryBuilder.buildCountQuery(resourceType, searchContext);
+        if (countQuery == null) {
+            return true;
+        }
+
+        int searchResultCount = resourceDao.searchCount(countQuery);
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("searchResultCount = " + searchResultCount);
+        }
+        searchContext.setTotalCount(searchResultCount);
+
+        issues.addAll(validatePagingContext(searchContext));
+        if (!issues.isEmpty() && !searchContext.isLenient()) {
+            return false;
+        }
+
+        // For _summary=count or pageSize == 0, we return only the count
+        if (searchResultCount == 0
+                || SummaryValueSet.COUNT.equals(searchContext.getSummaryParameter())
+                || searchContext.getPageSize() <= 0) {
+            return true;
+        }
+
+        SqlQueryData query = queryBuilder.buildQuery(resourceType, searchContext);
+
+        // Sorting results of a system-level search is limited, and has a different logic path
+        // than other sorted searches.
+        if (searchContext.hasSortParameters() && !resourceType.equals(Resource.class)) {
+            List<Long> sortedIdList = resourceDao.searchForIds(query);
+            for (com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO :
+                    sortResourceDTOs(getResourceDTOs(resourceDao, resourceType, sortedIdList), sortedIdList)) {
+                consumer.accept(resourceDTO);
+            }
+        } else {
+            resourceDao.search(query, consumer);
+        }
+        return true;
+    }
+
+    /**
+     * Orders the passed resource DTOs by the position of their resource id in the passed sorted id list.
+     * @param resourceDTOList
+     * @param sortedIdList
+     * @return List - The resource DTOs in sorted order
+     */
+    private List<com.ibm.fhir.persistence.jdbc.dto.Resource> sortResourceDTOs(List<com.ibm.fhir.persistence.jdbc.dto.Resource> resourceDTOList,
+            List<Long> sortedIdList) {
+        Map<Long, Integer> idPositionMap = new HashMap<>();
+        for (int i = 0; i < sortedIdList.size(); i++) {
+            idPositionMap.put(sortedIdList.get(i), i);
+        }
+        com.ibm.fhir.persistence.jdbc.dto.Resource[] sortedResourceDTOs = new com.ibm.fhir.persistence.jdbc.dto.Resource[sortedIdList.size()];
+        for (com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO : resourceDTOList) {
+            sortedResourceDTOs[idPositionMap.get(resourceDTO.getId())] = resourceDTO;
+        }
+        List<com.ibm.fhir.persistence.jdbc.dto.Resource> result = new ArrayList<>(resourceDTOList.size());
+        for (com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO : sortedResourceDTOs) {
+            if (resourceDTO != null) {
+                result.add(resourceDTO);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Decompresses a stored resource payload. The payload was generated without pretty printing; any line separator
+     * that it nevertheless contains can only be insignificant whitespace (JSON strings cannot contain raw line
+     * separators), so removing them yields the single-line form.
+     * @param data - The gzipped JSON representation of a resource
+     * @return byte[] - The single-line JSON representation of the resource
+     * @throws IOException
+     */
+    private byte[] decompressPayload(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            byte[] buffer = new byte[8192];
+            int count;
+            boolean hasLineSeparator = false;
+            while ((count = in.read(buffer)) != -1) {
+                for (int i = 0; i < count && !hasLineSeparator; i++) {
+                    hasLineSeparator = buffer[i] == '\n' || buffer[i] == '\r';
+                }
+                out.write(buffer, 0, count);
+            }
+            if (!hasLineSeparator) {
+                return out.toByteArray();
+            }
+        }
+
+        byte[] json = out.toByteArray();
+        int length = 0;
+        for (byte b : json) {
+            if (b != '\n' && b != '\r') {
+                json[length++] = b;
+            }
+        }
+        return Arrays.copyOf(json, length);
+    }
+
+    /**
+     * Create a query builder for a search, configured to reuse the SQL built for
+     * searches with the same shape if enabled
+     * @param parameterDao
+     * @param resourceDao
+     * @param identityCache
+     * @return
+     */
+    private JDBCQueryBuilder newQueryBuilder(ParameterDAO parameterDao, ResourceDAO resourceDao, JDBCIdentityCache identityCache) {
+        return new JDBCQueryBuilder(parameterDao, resourceDao, connectionStrategy.getQueryHints(), identityCache,
+            searchQueryTemplateCache ? cache.getSearchQueryTemplateCache() : null);
+    }
+
     /**
      * @return true if this instance represents a FHIR system level search
      */
@@ -924,6 +1172,105 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         }
     }
 
+    @Override
+    public <T extends Resource> MultiResourceResult<T> readMany(FHIRPersistenceContext context, Class<T> resourceType,
+            Collection<String> logicalIds) throws FHIRPersistenceException {
+        final String METHODNAME = "readMany";
+        log.entering(CLASSNAME, METHODNAME);
+
+        try (Connection connection = openConnection()) {
+            ResourceDAO resourceDao = makeResourceDAO(connection);
+
+            List<com.ibm.fhir.persistence.jdbc.dto.Resource> resourceDTOs = resourceDao.readMany(logicalIds, resourceType.getSimpleName());
+            if (!context.includeDeleted()) {
+                resourceDTOs.removeIf(resourceDTO -> resourceDTO.isDeleted());
+            }
+
+            // Decompressing and parsing the payloads is CPU bound and independent of the connection, so spread
+            // larger batches over the common pool
+            Stream<com.ibm.fhir.persistence.jdbc.dto.Resource> stream = resourceDTOs.size() >= PARALLEL_DECODE_THRESHOLD
+                    ? resourceDTOs.parallelStream() : resourceDTOs.stream();
+            List<T> resources = stream.map(resourceDTO -> {
+                try {
+                    return this.convertResourceDTO(resourceDTO, resourceType, null);
+                } catch (FHIRException | IOException e) {
+                    throw new IllegalStateException("Unable to convert the stored payload of resource '" +
+                            resourceType.getSimpleName() + "/" + resourceDTO.getLogicalId() + "'", e);
+                }
+            }).collect(Collectors.toList());
+
+            MultiResourceResult<T> result = new MultiResourceResult.Builder<T>()
+                    .success(true)
+                    .resource(resources)
+                    .build();
+
+            return result;
+        }
+        catch(Throwable e) {
+            FHIRPersistenceException fx = new FHIRPersistenceException("Unexpected error while performing a read operation.");
+            log.log(Level.SEVERE, fx.getMessage(), e);
+            throw fx;
+        }
+        finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+    }
+
+    @Override
+    public boolean isIdentifierSearchSupported() {
+        return true;
+    }
+
+    @Override
+    public <T extends Resource> MultiResourceResult<T> searchByIdentifier(FHIRPersistenceContext context, Class<T> resourceType,
+            String system, String value, int maxResults, boolean lock) throws FHIRPersistenceException {
+        final String METHODNAME = "searchByIdentifier";
+        log.entering(CLASSNAME, METHODNAME);
+
+        try (Connection connection = openConnection()) {
+            ResourceDAO resourceDao = makeResourceDAO(connection);
+            ParameterDAO parameterDao = makeParameterDAO(connection);
+            JDBCIdentityCache identityCache = new JDBCIdentityCacheImpl(cache, resourceDao, parameterDao);
+
+            // Same encoding as the token values of a search so we match the same resources
+            final String tokenValue = SqlParameterEncoder.encode(value);
+            final int codeSystemId = identityCache.getCodeSystemId(system);
+            if (lock) {
+                // Serialize with any other transaction using the same identifier. The lock must be
+                // taken before the lookup, so a concurrent create either commits before we look, or
+                // waits until we're done
+                IResourceReferenceDAO rrd = makeResourceReferenceDAO(connection);
+                rrd.lockCommonTokenValue(codeSystemId, tokenValue);
+            }
+
+            List<com.ibm.fhir.persistence.jdbc.dto.Resource> resourceDTOs = resourceDao.readByToken(resourceType.getSimpleName(),
+                identityCache.getParameterNameId(IDENTIFIER_PARAMETER), codeSystemId, tokenValue, maxResults);
+
+            List<T> resources = new ArrayList<>(resourceDTOs.size());
+            for (com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO : resourceDTOs) {
+                resources.add(this.convertResourceDTO(resourceDTO, resourceType, null));
+            }
+
+            MultiResourceResult<T> result = new MultiResourceResult.Builder<T>()
+                    .success(true)
+                    .resource(resources)
+                    .build();
+
+            return result;
+        }
+        catch(FHIRPersistenceException e) {
+            throw e;
+        }
+        catch(Throwable e) {
+            FHIRPersistenceException fx = new FHIRPersistenceException("Unexpected error while performing an identifier search.");
+            log.log(Level.SEVERE, fx.getMessage(), e);
+            throw fx;
+        }
+        finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+    }
+
     @Override
     public <T extends Resource> MultiResourceResult<T> history(FHIRPersistenceContext context, Class<T> resourceType,
             String logicalId) throws FHIRPersistenceException {
@@ -995,6 +1342,150 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         }
     }
 
+    @Override
+    public void historyPayloads(FHIRPersistenceContext context, Class<? extends Resource> resourceType, String logicalId,
+            ResourcePayloadConsumer consumer) throws FHIRPersistenceException, IOException {
+        final String METHODNAME = "historyPayloads";
+        log.entering(CLASSNAME, METHODNAME);
+
+        try (Connection connection = openConnection()) {
+            ResourceDAO resourceDao = makeResourceDAO(connection);
+
+            FHIRHistoryContext historyContext = context.getHistoryContext();
+            Map<String,List<Integer>> deletedResourceVersions = new HashMap<>();
+            historyContext.setDeletedResources(deletedResourceVersions);
+            Timestamp fromDateTime = null;
+            if (historyContext.getSince() != null) {
+                fromDateTime = FHIRUtilities.convertToTimestamp(historyContext.getSince().getValue());
+            }
+
+            int resourceCount = resourceDao.historyCount(resourceType.getSimpleName(), logicalId, fromDateTime);
+            historyContext.setTotalCount(resourceCount);
+
+            List<OperationOutcome.Issue> issues = validatePagingContext(historyContext);
+            if (!issues.isEmpty() && !historyContext.isLenient()) {
+                throw FHIRPersistenceUtil.historyFailed(resourceType, logicalId, issues);
+            }
+
+            if (resourceCount > 0) {
+                int offset = (historyContext.getPageNumber() - 1) * historyContext.getPageSize();
+                resourceDao.history(resourceType.getSimpleName(), logicalId, fromDateTime, offset, historyContext.getPageSize(), resourceDTO -> {
+                    if (resourceDTO.isDeleted()) {
+                        deletedResourceVersions.computeIfAbsent(logicalId, k -> new ArrayList<>()).add(resourceDTO.getVersionId());
+                    }
+                    consumer.accept(toPayload(resourceDTO));
+                });
+            }
+        } catch (FHIRPersistenceException | IOException e) {
+            throw e;
+        } catch (Throwable e) {
+            FHIRPersistenceException fx = new FHIRPersistenceException("Unexpected error while performing a history operation.");
+            log.log(Level.SEVERE, fx.getMessage(), e);
+            throw fx;
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+    }
+
+    @Override
+    public boolean isChangesSupported() {
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends Resource> MultiResourceResult<T> changes(FHIRPersistenceContext context, Class<T> resourceType)
+            throws FHIRPersistenceException {
+        final String METHODNAME = "changes";
+        log.entering(CLASSNAME, METHODNAME);
+
+        try (Connection connection = openConnection()) {
+            ResourceDAO resourceDao = makeResourceDAO(connection);
+
+            FHIRHistoryContext historyContext = context.getHistoryContext();
+            Map<String,List<Integer>> deletedResourceVersions = new HashMap<>();
+            historyContext.setDeletedResources(deletedResourceVersions);
+            final int pageSize = Math.min(Math.max(historyContext.getPageSize(), 1), SearchConstants.MAX_PAGE_SIZE);
+            historyContext.setPageSize(pageSize);
+
+            // Continue after the last change of the previous page, or start at _since (inclusive)
+            Timestamp afterTstamp = null;
+            long afterResourceId = -1;
+            if (historyContext.getCursor() != null) {
+                ChangeLogCursor cursor = ChangeLogCursor.decode(historyContext.getCursor());
+                afterTstamp = cursor.getChangeTstamp();
+                afterResourceId = cursor.getResourceId();
+            } else if (historyContext.getSince() != null) {
+                afterTstamp = FHIRUtilities.convertToTimestamp(historyContext.getSince().getValue());
+            }
+
+            // CHANGE_TSTAMP is the LAST_UPDATED set before the version is stored, so a transaction may commit a change
+            // with a timestamp older than changes already read. Leave out the recent changes, which may still be in flight.
+            Timestamp beforeTstamp = null;
+            if (changeLogSettleSeconds > 0) {
+                beforeTstamp = Timestamp.from(java.time.Instant.now().minusSeconds(changeLogSettleSeconds));
+            }
+
+            final String resourceTypeName = Resource.class.equals(resourceType) ? null : resourceType.getSimpleName();
+            List<ResourceChange> changes = resourceDao.changes(resourceTypeName, afterTstamp, afterResourceId, beforeTstamp, pageSize);
+            // Resume after the last change returned, even when the page isn't full, so the client can poll for the
+            // changes made since. An empty page resumes where it started (with _since still inclusive).
+            if (!changes.isEmpty()) {
+                ResourceChange last = changes.get(changes.size() - 1);
+                historyContext.setNextCursor(new ChangeLogCursor(last.getChangeTstamp(), last.getResourceId()).encode());
+            } else if (afterTstamp != null) {
+                historyContext.setNextCursor(new ChangeLogCursor(afterTstamp, afterResourceId).encode());
+            }
+
+            // Read the versions in the page with one query per resource type
+            Map<String, List<Long>> resourceIdsByType = new LinkedHashMap<>();
+            for (ResourceChange change: changes) {
+                resourceIdsByType.computeIfAbsent(change.getResourceType(), k -> new ArrayList<>()).add(change.getResourceId());
+            }
+            Map<Long, com.ibm.fhir.persistence.jdbc.dto.Resource> resourceDTOs = new HashMap<>();
+            for (Entry<String, List<Long>> entry: resourceIdsByType.entrySet()) {
+                for (com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO: resourceDao.searchByIds(entry.getKey(), entry.getValue())) {
+                    resourceDTOs.put(resourceDTO.getId(), resourceDTO);
+                    if (resourceDTO.isDeleted()) {
+                        // system level pages mix resource types, so the key includes the type
+                        deletedResourceVersions.computeIfAbsent(entry.getKey() + "/" + resourceDTO.getLogicalId(), k -> new ArrayList<>())
+                            .add(resourceDTO.getVersionId());
+                    }
+                }
+            }
+
+            // Decode the payloads in parallel, keeping the order of the change log
+            Stream<ResourceChange> stream = changes.size() >= PARALLEL_DECODE_THRESHOLD ? changes.parallelStream() : changes.stream();
+            List<T> resources = stream
+                    .filter(change -> resourceDTOs.containsKey(change.getResourceId()))
+                    .map(change -> {
+                        com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO = resourceDTOs.get(change.getResourceId());
+                        try {
+                            return (T) this.convertResourceDTO(resourceDTO, getResourceType(change.getResourceType()), null);
+                        } catch (FHIRException | IOException e) {
+                            throw new IllegalStateException("Unable to convert the stored payload of resource '" +
+                                    change.getResourceType() + "/" + resourceDTO.getLogicalId() + "'", e);
+                        }
+                    }).collect(Collectors.toList());
+
+            return new MultiResourceResult.Builder<T>()
+                    .success(true)
+                    .resource(resources)
+                    .build();
+        }
+        catch(FHIRPersistenceException e) {
+            throw e;
+        }
+        catch(Throwable e) {
+            FHIRPersistenceException fx = new FHIRPersistenceException("Unexpected error while performing a history operation.");
+            log.log(Level.SEVERE, fx.getMessage(), e);
+            throw fx;
+        }
+        finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+    }
+
     /**
      * Validate pageSize and pageNumber in the FHIRPagingContext instance and update
      * paging context parameters accordingly.
@@ -1095,55 +1586,87 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
     }
 
     /**
-     * This method takes the passed list of sorted Resource ids, acquires the Resource corresponding to each id, and returns those Resources in a List,
-     * sorted according to the input sorted ids.
-     * @param context - The FHIR persistence context for the current request.
-     * @param resourceType - The type of Resource that each id in the passed list represents.
-     * @param sortedIdList - A list of Resource ids representing the proper sort order for the list of Resources to be returned.
+     * Processes the _include and _revinclude search result parameters for the current page of matching resources.
+     * The targets referenced by (or referencing) the page are resolved with a single query, de-duplicated, and
+     * then fetched in one batched query per {@link InclusionQueryBuilder#MAX_BATCH_SIZE} targets.
+     * @param resourceDao
+     * @param identityCache
+     * @param resourceType - The type of resource being searched for.
+     * @param searchContext - The search context holding the inclusion parameters.
+     * @param matchResources - The current page of resources matching the search.
      * @param elements - An optional list of element names to include in the resources. If null, filtering will be skipped.
-     * @return List<Resource> - A list of Resources of the passed resourceType, sorted according the order of ids in the passed sortedIdList.
-     * @throws FHIRPersistenceException
-     * @throws IOException
+     * @return List<Resource> - The matching resources followed by the distinct set of included resources.
+     * @throws Exception
      */
-    protected List<Resource> buildSortedFhirResources(ResourceDAO resourceDao, FHIRPersistenceContext context, Class<? extends Resource> resourceType, List<Long> sortedIdList,
-            List<String> elements) throws FHIRException, FHIRPersistenceException, IOException {
-        final String METHOD_NAME = "buildSortedFhirResources";
-        log.entering(this.getClass().getName(), METHOD_NAME);
-
-        long resourceId;
-        Resource[] sortedFhirResources = new Resource[sortedIdList.size()];
-        Resource fhirResource;
-        int sortIndex;
-        List<Resource> sortedResourceList = new ArrayList<>();
-        List<com.ibm.fhir.persistence.jdbc.dto.Resource> resourceDTOList;
-        Map<Long,Integer> idPositionMap = new HashMap<>();
+    private List<Resource> addIncludedResources(ResourceDAO resourceDao, JDBCIdentityCache identityCache, Class<? extends Resource> resourceType,
+            FHIRSearchContext searchContext, List<Resource> matchResources, List<String> elements) throws Exception {
+        final String METHODNAME = "addIncludedResources";
+        log.entering(CLASSNAME, METHODNAME);
+
+        final String resourceTypeName = resourceType.getSimpleName();
+        final InclusionQueryBuilder inclusionQueryBuilder = new InclusionQueryBuilder(identityCache);
+
+        // The logical ids of the current page are the input for both _include and _revinclude
+        Set<String> pageLogicalIds = new LinkedHashSet<>();
+        for (Resource resource : matchResources) {
+            pageLogicalIds.add(resource.getId());
+        }
 
-        // This loop builds a Map where key=resourceId, and value=its proper position in the returned sorted collection.
-        for(int i = 0; i < sortedIdList.size(); i++) {
-            resourceId = sortedIdList.get(i);
-            idPositionMap.put(Long.valueOf(resourceId), Integer.valueOf(i));
+        // The distinct set of inclusion targets, keyed by resource type
+        Map<String, Set<String>> targets = new LinkedHashMap<>();
+        if (searchContext.hasIncludeParameters()) {
+            Map<Integer, String> codeSystemTargets = new HashMap<>();
+            SqlQueryData includeQuery = inclusionQueryBuilder.buildIncludeTargetQuery(resourceTypeName,
+                    searchContext.getIncludeParameters(), pageLogicalIds, codeSystemTargets);
+            if (includeQuery != null) {
+                addInclusionTargets(targets, codeSystemTargets, resourceDao.searchInclusionTargets(includeQuery));
+            }
         }
 
-        resourceDTOList = this.getResourceDTOs(resourceDao, resourceType, sortedIdList);
+        if (searchContext.hasRevIncludeParameters()) {
+            Map<Integer, String> resourceTypeTargets = new HashMap<>();
+            SqlQueryData revIncludeQuery = inclusionQueryBuilder.buildRevIncludeTargetQuery(
+                    searchContext.getRevIncludeParameters(), pageLogicalIds, resourceTypeTargets);
+            if (revIncludeQuery != null) {
+                addInclusionTargets(targets, resourceTypeTargets, resourceDao.searchInclusionTargets(revIncludeQuery));
+            }
+        }
 
+        // No need to fetch anything which is already part of the page
+        Set<String> sameTypeTargets = targets.get(resourceTypeName);
+        if (sameTypeTargets != null) {
+            sameTypeTargets.removeAll(pageLogicalIds);
+        }
 
-        // Convert the returned JPA Resources to FHIR Resources, and store each FHIRResource in its proper position
-        // in the returned sorted resource list.
-        for (com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO : resourceDTOList) {
-            fhirResource = this.convertResourceDTO(resourceDTO, resourceType, elements);
-            if (fhirResource != null) {
-                sortIndex = idPositionMap.get(resourceDTO.getId());
-                sortedFhirResources[sortIndex] = fhirResource;
+        List<Resource> result = new ArrayList<>(matchResources);
+        for (Map<String, List<String>> batch : InclusionQueryBuilder.toBatches(targets)) {
+            SqlQueryData includedResourcesQuery = inclusionQueryBuilder.buildIncludedResourcesQuery(batch);
+            if (includedResourcesQuery != null) {
+                result.addAll(this.convertResourceDTOList(resourceDao.search(includedResourcesQuery), resourceType, elements));
             }
         }
 
-        for (int i = 0; i <sortedFhirResources.length; i++) {
-            if (sortedFhirResources[i] != null) {
-                sortedResourceList.add(sortedFhirResources[i]);
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Included " + (result.size() - matchResources.size()) + " resources for " + matchResources.size() + " matches");
+        }
+        log.exiting(CLASSNAME, METHODNAME);
+        return result;
+    }
+
+    /**
+     * Merge the inclusion targets returned by the database into the set of targets for each resource type
+     * @param targets - the distinct set of inclusion targets keyed by resource type
+     * @param keyToResourceType - maps the integer key used by the query to a resource type
+     * @param queryResult - the logical ids returned by the query, grouped by integer key
+     */
+    private void addInclusionTargets(Map<String, Set<String>> targets, Map<Integer, String> keyToResourceType,
+            Map<Integer, Set<String>> queryResult) {
+        for (Map.Entry<Integer, Set<String>> entry : queryResult.entrySet()) {
+            String targetType = keyToResourceType.get(entry.getKey());
+            if (targetType != null) {
+                targets.computeIfAbsent(targetType, k -> new LinkedHashSet<>()).addAll(entry.getValue());
             }
         }
-        log.exiting(this.getClass().getName(), METHOD_NAME);
-        return sortedResourceList;
     }
 
     /**
@@ -1657,15 +2180,21 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         try {
             if (resourceDTO != null) {
                 InputStream in = new GZIPInputStream(new ByteArrayInputStream(resourceDTO.getData()));
-                if (elements != null) {
-                    // parse/filter the resource using elements
-                    resource = FHIRParser.parser(Format.JSON).as(FHIRJsonParser.class).parseAndFilter(in, elements);
-                    if (resourceType.equals(resource.getClass()) && !FHIRUtil.hasTag(resource, SearchConstants.SUBSETTED_TAG)) {
-                        // add a SUBSETTED tag to this resource to indicate that its elements have been filtered
-                        resource = FHIRUtil.addTag(resource, SearchConstants.SUBSETTED_TAG);
+                // the narrative was checked before the resource was stored, so there is no need to check it again
+                boolean trusted = ValidationSupport.setXHTMLContentTrusted(trustStoredXhtml);
+                try {
+                    if (elements != null) {
+                        // parse/filter the resource using elements
+                        resource = FHIRParser.parser(Format.JSON).as(FHIRJsonParser.class).parseAndFilter(in, elements);
+                        if (resourceType.equals(resource.getClass()) && !FHIRUtil.hasTag(resource, SearchConstants.SUBSETTED_TAG)) {
+                            // add a SUBSETTED tag to this resource to indicate that its elements have been filtered
+                            resource = FHIRUtil.addTag(resource, SearchConstants.SUBSETTED_TAG);
+                        }
+                    } else {
+                        resource = FHIRParser.parser(Format.JSON).parse(in);
                     }
-                } else {
-                    resource = FHIRParser.parser(Format.JSON).parse(in);
+                } finally {
+                    ValidationSupport.setXHTMLContentTrusted(trusted);
                 }
                 in.close();
             }
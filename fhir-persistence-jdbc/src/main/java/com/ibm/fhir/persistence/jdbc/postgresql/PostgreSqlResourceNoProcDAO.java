@@ -366,6 +366,7 @@ public class PostgreSqlResourceNoProcDAO extends ResourceDAOImpl {
                 deleteFromParameterTable(conn, tablePrefix + "_latlng_values", v_logical_resource_id);
                 deleteFromParameterTable(conn, tablePrefix + "_resource_token_refs", v_logical_resource_id); // replaces _token_values
                 deleteFromParameterTable(conn, tablePrefix + "_quantity_values", v_logical_resource_id);
+                deleteFromParameterTable(conn, "compartment_memberships", v_logical_resource_id);
             }
         }
 
@@ -408,6 +409,19 @@ public class PostgreSqlResourceNoProcDAO extends ResourceDAOImpl {
             stmt.executeUpdate();
         }
 
+        // Record the new version in the change log read by type and system level history
+        String sqlChange = "INSERT INTO resource_change_log (resource_id, resource_type_id, logical_resource_id, change_tstamp, version_id, change_type) "
+                + "VALUES (?,?,?,?,?,?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sqlChange)) {
+            stmt.setLong(1, v_resource_id);
+            stmt.setInt(2, v_resource_type_id);
+            stmt.setLong(3, v_logical_resource_id);
+            stmt.setTimestamp(4, p_last_updated, UTC);
+            stmt.setInt(5, v_insert_version);
+            stmt.setString(6, p_is_deleted ? "D" : v_insert_version == 1 ? "C" : "U");
+            stmt.executeUpdate();
+        }
+
         if (p_version == null || p_version > v_version) {
             //only update the logical resource if the resource we are adding supercedes the
             //current resource
@@ -0,0 +1,81 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.util;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Base64;
+
+import com.ibm.fhir.model.type.code.IssueType;
+import com.ibm.fhir.model.util.FHIRUtil;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
+
+/**
+ * The position in the resource change log after which the next page of a type or
+ * system level history starts: the CHANGE_TSTAMP and RESOURCE_ID of the last change
+ * read. Clients see it as an opaque, URL safe string.
+ */
+public class ChangeLogCursor {
+
+    // Separates the timestamp from the resource id in the decoded value
+    private static final String SEP = "|";
+
+    private final Timestamp changeTstamp;
+    private final long resourceId;
+
+    /**
+     * Public constructor
+     * @param changeTstamp
+     * @param resourceId
+     */
+    public ChangeLogCursor(Timestamp changeTstamp, long resourceId) {
+        this.changeTstamp = changeTstamp;
+        this.resourceId = resourceId;
+    }
+
+    /**
+     * @return the timestamp of the last change read
+     */
+    public Timestamp getChangeTstamp() {
+        return changeTstamp;
+    }
+
+    /**
+     * @return the resource id of the last change read
+     */
+    public long getResourceId() {
+        return resourceId;
+    }
+
+    /**
+     * Render the cursor as the opaque value given to the client
+     * @return
+     */
+    public String encode() {
+        String value = changeTstamp.toInstant().toString() + SEP + resourceId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parse a cursor value given by a client
+     * @param cursor
+     * @return
+     * @throws FHIRPersistenceException if the value wasn't produced by {@link #encode()}
+     */
+    public static ChangeLogCursor decode(String cursor) throws FHIRPersistenceException {
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = value.indexOf(SEP);
+            Timestamp changeTstamp = Timestamp.from(Instant.parse(value.substring(0, sep)));
+            return new ChangeLogCursor(changeTstamp, Long.parseLong(value.substring(sep + 1)));
+        } catch (RuntimeException e) {
+            String msg = "Invalid '_cursor' parameter value: '" + cursor + "'";
+            throw new FHIRPersistenceException(msg, e).withIssue(FHIRUtil.buildOperationOutcomeIssue(msg, IssueType.INVALID));
+        }
+    }
+}
@@ -37,4 +37,18 @@ public enum CompartmentNames {
     public int getId() {
         return this.id;
     }
+
+    /**
+     * Find the compartment with the given name
+     * @param compartmentName
+     * @return the compartment, or null if there is no compartment with this name
+     */
+    public static CompartmentNames fromName(String compartmentName) {
+        for (CompartmentNames c: values()) {
+            if (c.name().equals(compartmentName)) {
+                return c;
+            }
+        }
+        return null;
+    }
 }
@@ -0,0 +1,278 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.util;
+
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.AND;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.BIND_VAR;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.COMMA;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.LEFT_PAREN;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.OR;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.RIGHT_PAREN;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.UNION;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
+import com.ibm.fhir.persistence.jdbc.dao.api.JDBCIdentityCache;
+import com.ibm.fhir.search.parameters.InclusionParameter;
+
+/**
+ * Builds the statements used to process the _include and _revinclude search result
+ * parameters for a single page of matching resources. Rather than wrapping the match
+ * query in one large UNION ALL per inclusion parameter, inclusion is processed as a
+ * short pipeline:
+ * <ol>
+ * <li>resolve the logical ids of every inclusion target referenced by (or referencing)
+ * the current page, using a single query against the token values views;
+ * <li>de-duplicate those targets in Java, skipping resources already in the page;
+ * <li>fetch the payloads for the distinct set of targets using a single batched query.
+ * </ol>
+ * The match query itself is built by the regular {@link QuerySegmentAggregator} (or
+ * {@link SortedQuerySegmentAggregator}), so each inclusion statement only carries the
+ * ids of the current page rather than a copy of the search predicates.
+ */
+public class InclusionQueryBuilder {
+    private static final String CLASSNAME = InclusionQueryBuilder.class.getName();
+    private static final Logger log = java.util.logging.Logger.getLogger(CLASSNAME);
+
+    /**
+     * Upper bound on the number of ids bound into a single IN list. Pages are limited
+     * to 1000 resources, but the number of distinct inclusion targets is not, so larger
+     * sets are fetched in more than one batch to stay clear of driver limits.
+     */
+    public static final int MAX_BATCH_SIZE = 1000;
+
+    private static final String SELECT_RESOURCES =
+            "SELECT R.RESOURCE_ID, R.LOGICAL_RESOURCE_ID, R.VERSION_ID, R.LAST_UPDATED, R.IS_DELETED, R.DATA, LR.LOGICAL_ID ";
+
+    private final JDBCIdentityCache identityCache;
+
+    /**
+     * Public constructor
+     * @param identityCache
+     */
+    public InclusionQueryBuilder(JDBCIdentityCache identityCache) {
+        this.identityCache = identityCache;
+    }
+
+    /**
+     * Builds a query that resolves all _include targets for the given page in one round trip.
+     * Each row contains the CODE_SYSTEM_ID of the reference (which identifies the target
+     * resource type) and the TOKEN_VALUE holding the logical id of the target. For example:
+     *
+     * <pre>
+     * SELECT DISTINCT P1.CODE_SYSTEM_ID, P1.TOKEN_VALUE
+     *   FROM Patient_TOKEN_VALUES_V P1
+     *   JOIN Patient_LOGICAL_RESOURCES LR ON LR.LOGICAL_RESOURCE_ID = P1.LOGICAL_RESOURCE_ID
+     *  WHERE LR.LOGICAL_ID IN (?, ?, ...)
+     *    AND ((P1.PARAMETER_NAME_ID = 19 AND P1.CODE_SYSTEM_ID = 7)
+     *      OR (P1.PARAMETER_NAME_ID = 23 AND P1.CODE_SYSTEM_ID = 9))
+     * </pre>
+     *
+     * @param resourceType the type of the resources in the page
+     * @param includeParameters the _include parameters to process
+     * @param logicalIds the logical ids of the resources in the page
+     * @param codeSystemTargets populated with the mapping from CODE_SYSTEM_ID to target resource type
+     * @return the query, or null if none of the parameters can match anything
+     * @throws FHIRPersistenceException
+     */
+    public SqlQueryData buildIncludeTargetQuery(String resourceType, List<InclusionParameter> includeParameters,
+            Collection<String> logicalIds, Map<Integer, String> codeSystemTargets) throws FHIRPersistenceException {
+        final String METHODNAME = "buildIncludeTargetQuery";
+        log.entering(CLASSNAME, METHODNAME);
+
+        StringBuilder predicates = new StringBuilder();
+        for (InclusionParameter includeParm : includeParameters) {
+            Integer parameterNameId = identityCache.getParameterNameId(includeParm.getSearchParameter());
+            Integer codeSystemId = identityCache.getCodeSystemId(includeParm.getSearchParameterTargetType());
+            if (parameterNameId == null || codeSystemId == null) {
+                // nothing has ever been stored for this reference, so it can't match
+                continue;
+            }
+            codeSystemTargets.put(codeSystemId, includeParm.getSearchParameterTargetType());
+
+            if (predicates.length() > 0) {
+                predicates.append(OR);
+            }
+            predicates.append("(P1.PARAMETER_NAME_ID = ").append(parameterNameId)
+                    .append(" AND P1.CODE_SYSTEM_ID = ").append(codeSystemId).append(RIGHT_PAREN);
+        }
+
+        SqlQueryData result = null;
+        if (predicates.length() > 0) {
+            List<Object> bindVariables = new ArrayList<>(logicalIds);
+            StringBuilder query = new StringBuilder();
+            query.append("SELECT DISTINCT P1.CODE_SYSTEM_ID, P1.TOKEN_VALUE FROM ")
+                    .append(resourceType).append("_TOKEN_VALUES_V P1 JOIN ")
+                    .append(resourceType).append("_LOGICAL_RESOURCES LR ON LR.LOGICAL_RESOURCE_ID = P1.LOGICAL_RESOURCE_ID ")
+                    .append("WHERE LR.LOGICAL_ID IN ");
+            appendBindMarkers(query, logicalIds.size());
+            query.append(AND).append(LEFT_PAREN).append(predicates).append(RIGHT_PAREN);
+            result = new SqlQueryData(query.toString(), bindVariables);
+        }
+
+        log.exiting(CLASSNAME, METHODNAME);
+        return result;
+    }
+
+    /**
+     * Builds a query that resolves all _revinclude targets for the given page in one round trip.
+     * Each row contains the RESOURCE_TYPE_ID of the referencing resource type and its LOGICAL_ID.
+     * The UNION (rather than UNION ALL) removes duplicates in the database. For example:
+     *
+     * <pre>
+     * SELECT 12, LR.LOGICAL_ID
+     *   FROM Observation_TOKEN_VALUES_V P1
+     *   JOIN Observation_LOGICAL_RESOURCES LR ON LR.LOGICAL_RESOURCE_ID = P1.LOGICAL_RESOURCE_ID
+     *  WHERE P1.PARAMETER_NAME_ID = 29 AND P1.CODE_SYSTEM_ID = 7 AND P1.TOKEN_VALUE IN (?, ?, ...)
+     * UNION
+     * SELECT 31, LR.LOGICAL_ID
+     *   FROM Device_TOKEN_VALUES_V P1
+     *   ...
+     * </pre>
+     *
+     * @param revIncludeParameters the _revinclude parameters to process
+     * @param logicalIds the logical ids of the resources in the page
+     * @param resourceTypeTargets populated with the mapping from RESOURCE_TYPE_ID to the referencing resource type
+     * @return the query, or null if none of the parameters can match anything
+     * @throws FHIRPersistenceException
+     */
+    public SqlQueryData buildRevIncludeTargetQuery(List<InclusionParameter> revIncludeParameters,
+            Collection<String> logicalIds, Map<Integer, String> resourceTypeTargets) throws FHIRPersistenceException {
+        final String METHODNAME = "buildRevIncludeTargetQuery";
+        log.entering(CLASSNAME, METHODNAME);
+
+        StringBuilder query = new StringBuilder();
+        List<Object> bindVariables = new ArrayList<>();
+        for (InclusionParameter revIncludeParm : revIncludeParameters) {
+            final String joinResourceType = revIncludeParm.getJoinResourceType();
+            Integer parameterNameId = identityCache.getParameterNameId(revIncludeParm.getSearchParameter());
+            Integer codeSystemId = identityCache.getCodeSystemId(revIncludeParm.getSearchParameterTargetType());
+            Integer resourceTypeId = identityCache.getResourceTypeId(joinResourceType);
+            if (parameterNameId == null || codeSystemId == null || resourceTypeId == null) {
+                continue;
+            }
+            resourceTypeTargets.put(resourceTypeId, joinResourceType);
+
+            if (query.length() > 0) {
+                // Plain UNION to let the database remove duplicates
+                query.append(" UNION ");
+            }
+            query.append("SELECT ").append(resourceTypeId).append(" AS RESOURCE_TYPE_ID, LR.LOGICAL_ID FROM ")
+                    .append(joinResourceType).append("_TOKEN_VALUES_V P1 JOIN ")
+                    .append(joinResourceType).append("_LOGICAL_RESOURCES LR ON LR.LOGICAL_RESOURCE_ID = P1.LOGICAL_RESOURCE_ID ")
+                    .append("WHERE P1.PARAMETER_NAME_ID = ").append(parameterNameId)
+                    .append(" AND P1.CODE_SYSTEM_ID = ").append(codeSystemId)
+                    .append(" AND P1.TOKEN_VALUE IN ");
+            appendBindMarkers(query, logicalIds.size());
+            bindVariables.addAll(logicalIds);
+        }
+
+        SqlQueryData result = query.length() > 0 ? new SqlQueryData(query.toString(), bindVariables) : null;
+        log.exiting(CLASSNAME, METHODNAME);
+        return result;
+    }
+
+    /**
+     * Builds the batched query which fetches the current version of each distinct inclusion
+     * target. One branch is generated per target resource type, each of which probes the
+     * logical resources table by LOGICAL_ID:
+     *
+     * <pre>
+     * SELECT R.RESOURCE_ID, R.LOGICAL_RESOURCE_ID, R.VERSION_ID, R.LAST_UPDATED, R.IS_DELETED, R.DATA, LR.LOGICAL_ID
+     *   FROM Organization_LOGICAL_RESOURCES LR
+     *   JOIN Organization_RESOURCES R ON R.RESOURCE_ID = LR.CURRENT_RESOURCE_ID AND R.IS_DELETED = 'N'
+     *  WHERE LR.LOGICAL_ID IN (?, ?)
+     * UNION ALL
+     * SELECT ... FROM Observation_LOGICAL_RESOURCES LR ...
+     * </pre>
+     *
+     * Callers are expected to have split the targets into batches of at most {@link #MAX_BATCH_SIZE}.
+     *
+     * @param logicalIdsByType the distinct logical ids to fetch, keyed by resource type
+     * @return the query, or null if there is nothing to fetch
+     */
+    public SqlQueryData buildIncludedResourcesQuery(Map<String, ? extends Collection<String>> logicalIdsByType) {
+        final String METHODNAME = "buildIncludedResourcesQuery";
+        log.entering(CLASSNAME, METHODNAME);
+
+        StringBuilder query = new StringBuilder();
+        List<Object> bindVariables = new ArrayList<>();
+        for (Map.Entry<String, ? extends Collection<String>> entry : logicalIdsByType.entrySet()) {
+            final String targetType = entry.getKey();
+            final Collection<String> logicalIds = entry.getValue();
+            if (logicalIds.isEmpty()) {
+                continue;
+            }
+
+            if (query.length() > 0) {
+                query.append(UNION);
+            }
+            query.append(SELECT_RESOURCES)
+                    .append("FROM ").append(targetType).append("_LOGICAL_RESOURCES LR JOIN ")
+                    .append(targetType).append("_RESOURCES R ON R.RESOURCE_ID = LR.CURRENT_RESOURCE_ID AND R.IS_DELETED = 'N' ")
+                    .append("WHERE LR.LOGICAL_ID IN ");
+            appendBindMarkers(query, logicalIds.size());
+            bindVariables.addAll(logicalIds);
+        }
+
+        SqlQueryData result = query.length() > 0 ? new SqlQueryData(query.toString(), bindVariables) : null;
+        log.exiting(CLASSNAME, METHODNAME);
+        return result;
+    }
+
+    /**
+     * Splits the de-duplicated inclusion targets into batches, each holding no more than
+     * {@link #MAX_BATCH_SIZE} ids in total. In the common case a single batch is returned.
+     *
+     * @param logicalIdsByType
+     * @return
+     */
+    public static List<Map<String, List<String>>> toBatches(Map<String, ? extends Set<String>> logicalIdsByType) {
+        List<Map<String, List<String>>> result = new ArrayList<>();
+        Map<String, List<String>> batch = new HashMap<>();
+        int batchSize = 0;
+        for (Map.Entry<String, ? extends Set<String>> entry : logicalIdsByType.entrySet()) {
+            for (String logicalId : entry.getValue()) {
+                if (batchSize == MAX_BATCH_SIZE) {
+                    result.add(batch);
+                    batch = new HashMap<>();
+                    batchSize = 0;
+                }
+                batch.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).add(logicalId);
+                batchSize++;
+            }
+        }
+
+        if (batchSize > 0) {
+            result.add(batch);
+        }
+        return result;
+    }
+
+    /**
+     * Append a parenthesized list of bind markers, e.g. {@code (?, ?, ?)}
+     * @param query
+     * @param count
+     */
+    private static void appendBindMarkers(StringBuilder query, int count) {
+        query.append(LEFT_PAREN);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                query.append(COMMA);
+            }
+            query.append(BIND_VAR);
+        }
+        query.append(RIGHT_PAREN);
+    }
+}
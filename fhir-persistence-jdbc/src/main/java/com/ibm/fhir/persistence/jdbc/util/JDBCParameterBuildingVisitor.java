@@ -44,7 +44,10 @@ import com.ibm.fhir.model.type.Reference;
 import com.ibm.fhir.model.type.Timing;
 import com.ibm.fhir.model.type.Uri;
 import com.ibm.fhir.model.type.code.SearchParamType;
+import com.ibm.fhir.model.ucum.util.UCUMConversion;
+import com.ibm.fhir.model.ucum.util.UCUMUtil;
 import com.ibm.fhir.model.util.ModelSupport;
+import com.ibm.fhir.model.util.ValidationSupport;
 import com.ibm.fhir.model.visitor.DefaultVisitor;
 import com.ibm.fhir.model.visitor.Visitable;
 import com.ibm.fhir.persistence.jdbc.dto.DateParmVal;
@@ -61,6 +64,7 @@ import com.ibm.fhir.search.exception.FHIRSearchException;
 import com.ibm.fhir.search.util.ReferenceUtil;
 import com.ibm.fhir.search.util.ReferenceValue;
 import com.ibm.fhir.search.util.ReferenceValue.ReferenceType;
+import com.ibm.fhir.search.util.SearchUtil;
 
 /**
  * This class is the JDBC persistence layer implementation for transforming
@@ -518,6 +522,7 @@ public class JDBCParameterBuildingVisitor extends DefaultVisitor {
                     p.setValueSystem(quantity.getSystem().getValue());
                 }
                 result.add(p);
+                addCanonicalQuantity(p);
             }
             if (quantity.getUnit() != null && quantity.getUnit().hasValue()) {
                 String displayUnit = quantity.getUnit().getValue();
@@ -563,6 +568,7 @@ public class JDBCParameterBuildingVisitor extends DefaultVisitor {
             }
 
             result.add(p);
+            addCanonicalQuantity(p);
         } else if (range.getHigh() != null && range.getHigh().getValue() != null
                 && range.getHigh().getValue().getValue() != null) {
             if (range.getHigh().getSystem() != null) {
@@ -575,10 +581,43 @@ public class JDBCParameterBuildingVisitor extends DefaultVisitor {
             }
             p.setValueNumberHigh(range.getHigh().getValue().getValue());
             result.add(p);
+            addCanonicalQuantity(p);
         }
         return false;
     }
 
+    /**
+     * Add a second parameter value for a UCUM quantity, converted to its canonical unit (e.g. mol.m-3 for mmol/L),
+     * so that a quantity search with a UCUM system finds the values recorded in any unit of the same kind.
+     * The canonical value is stored under its own parameter name (see {@link SearchUtil#makeCanonicalQuantityParamName(String)})
+     * so that it is only seen by those searches. Nothing is added when the unit cannot be converted.
+     *
+     * @param p the quantity parameter value as recorded
+     */
+    private void addCanonicalQuantity(QuantityParmVal p) {
+        if (!ValidationSupport.UCUM_CODE_SYSTEM_URL.equals(p.getValueSystem())) {
+            return;
+        }
+        UCUMConversion conversion = UCUMUtil.getCanonicalConversion(p.getValueCode());
+        if (conversion == null) {
+            return;
+        }
+        QuantityParmVal canonical = new QuantityParmVal();
+        canonical.setName(SearchUtil.makeCanonicalQuantityParamName(p.getName()));
+        canonical.setValueSystem(p.getValueSystem());
+        canonical.setValueCode(conversion.getCanonicalUnit());
+        if (p.getValueNumber() != null) {
+            canonical.setValueNumber(conversion.convert(p.getValueNumber()));
+        }
+        if (p.getValueNumberLow() != null) {
+            canonical.setValueNumberLow(conversion.convert(p.getValueNumberLow()));
+        }
+        if (p.getValueNumberHigh() != null) {
+            canonical.setValueNumberHigh(conversion.convert(p.getValueNumberHigh()));
+        }
+        result.add(canonical);
+    }
+
     @Override
     public boolean visit(java.lang.String elementName, int elementIndex, Identifier identifier) {
         if (!TOKEN.equals(searchParamType)) {
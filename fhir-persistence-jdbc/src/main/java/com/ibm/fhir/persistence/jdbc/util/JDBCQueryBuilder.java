@@ -11,6 +11,8 @@ import static com.ibm.fhir.persistence.jdbc.JDBCConstants.AS;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.BIND_VAR;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.CODE_SYSTEM_ID;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.COMMA;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.COMPARTMENT_LOGICAL_ID;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.COMPARTMENT_NAME_ID;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.CURRENT_RESOURCE_ID;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.DOT;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.EQ;
@@ -35,6 +37,7 @@ import static com.ibm.fhir.persistence.jdbc.JDBCConstants.PARAMETER_NAME_ID;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.PARAMETER_TABLE_ALIAS;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.PERCENT_WILDCARD;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.RESOURCE_ID;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.RESOURCE_TYPE_ID;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.RIGHT_PAREN;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.SELECT;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.SPACE;
@@ -59,10 +62,12 @@ import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import com.ibm.fhir.model.resource.Location;
+import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.util.ModelSupport;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceNotSupportedException;
 import com.ibm.fhir.persistence.jdbc.connection.QueryHints;
+import com.ibm.fhir.persistence.jdbc.dao.api.ISearchQueryTemplateCache;
 import com.ibm.fhir.persistence.jdbc.dao.api.JDBCIdentityCache;
 import com.ibm.fhir.persistence.jdbc.dao.api.ParameterDAO;
 import com.ibm.fhir.persistence.jdbc.dao.api.ResourceDAO;
@@ -126,6 +131,9 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
     // Hints to use for certain queries
     private final QueryHints queryHints;
 
+    // The SQL built for previous searches, keyed by their shape. Null if disabled
+    private final ISearchQueryTemplateCache templateCache;
+
     // Table alias prefixes
     private static final String CR = "CR";
     private static final String CLR = "CLR";
@@ -139,10 +147,25 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
      * @param identityCache
      */
     public JDBCQueryBuilder(ParameterDAO parameterDao, ResourceDAO resourceDao, QueryHints queryHints, JDBCIdentityCache identityCache) {
+        this(parameterDao, resourceDao, queryHints, identityCache, null);
+    }
+
+    /**
+     * Public constructor
+     * @param parameterDao
+     * @param resourceDao
+     * @param queryHints
+     * @param identityCache
+     * @param templateCache the SQL built for previous searches, or null to build the SQL
+     *        for every search
+     */
+    public JDBCQueryBuilder(ParameterDAO parameterDao, ResourceDAO resourceDao, QueryHints queryHints, JDBCIdentityCache identityCache,
+            ISearchQueryTemplateCache templateCache) {
         this.parameterDao = parameterDao;
         this.resourceDao  = resourceDao;
         this.queryHints = queryHints;
         this.identityCache = identityCache;
+        this.templateCache = templateCache;
     }
 
     /**
@@ -165,9 +188,23 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
         QuerySegmentAggregator helper;
         SqlQueryData query = null;
 
-        helper = this.buildQueryCommon(resourceType, searchContext);
+        final String templateKey = this.templateCache != null ? SearchQueryTemplate.key(resourceType, searchContext, true) : null;
+        if (templateKey != null) {
+            query = this.buildFromTemplate(templateKey, resourceType, searchContext, true);
+            if (query != null) {
+                log.exiting(CLASSNAME, METHODNAME);
+                return query;
+            }
+        }
+
+        List<SearchQueryTemplate.Step> steps = templateKey != null ? new ArrayList<>() : null;
+        helper = this.buildQueryCommon(resourceType, searchContext, steps);
         if (helper != null) {
             query = helper.buildCountQuery();
+            if (templateKey != null && helper.isReusable()) {
+                this.templateCache.putTemplate(templateKey,
+                    new SearchQueryTemplate(query.getQueryString(), "", steps));
+            }
         }
 
         log.exiting(CLASSNAME, METHODNAME);
@@ -183,15 +220,134 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
         SqlQueryData query = null;
         QuerySegmentAggregator helper;
 
-        helper = this.buildQueryCommon(resourceType, searchContext);
+        final String templateKey = this.templateCache != null ? SearchQueryTemplate.key(resourceType, searchContext, false) : null;
+        if (templateKey != null) {
+            query = this.buildFromTemplate(templateKey, resourceType, searchContext, false);
+            if (query != null) {
+                log.exiting(CLASSNAME, METHODNAME);
+                return query;
+            }
+        }
+
+        List<SearchQueryTemplate.Step> steps = templateKey != null ? new ArrayList<>() : null;
+        helper = this.buildQueryCommon(resourceType, searchContext, steps);
         if (helper != null) {
             query = helper.buildQuery();
+            if (templateKey != null && helper.isReusable()) {
+                // Keep the pagination clause out of the template so that it can be used for any page
+                final String queryString = query.getQueryString();
+                final String paginationClause = helper.getPaginationClause();
+                int paginationIndex = queryString.lastIndexOf(paginationClause);
+                if (paginationIndex >= 0) {
+                    this.templateCache.putTemplate(templateKey,
+                        new SearchQueryTemplate(queryString.substring(0, paginationIndex),
+                            queryString.substring(paginationIndex + paginationClause.length()), steps));
+                }
+            }
         }
 
         log.exiting(CLASSNAME, METHODNAME);
         return query;
     }
 
+    /**
+     * Build the query from the template cached for the shape of this search. The
+     * parameters are processed in the order recorded in the template to collect
+     * their bind variables, and each where clause fragment must match the one
+     * in the template. The joins, the ordering of the parameters and the rest of
+     * the query are taken from the template. Each parameter is still processed by
+     * {@link #buildQueryParm}, because that is where its bind variables come from;
+     * the template saves the aggregation of the query.
+     *
+     * @param templateKey
+     * @param resourceType
+     * @param searchContext
+     * @param countQuery
+     * @return the query, or null if there's no template or the search doesn't fit it
+     * @throws Exception
+     */
+    private SqlQueryData buildFromTemplate(String templateKey, Class<?> resourceType, FHIRSearchContext searchContext, boolean countQuery)
+            throws Exception {
+        final String METHODNAME = "buildFromTemplate";
+        log.entering(CLASSNAME, METHODNAME);
+
+        SearchQueryTemplate template = this.templateCache.getTemplate(templateKey);
+        if (template == null) {
+            log.exiting(CLASSNAME, METHODNAME);
+            return null;
+        }
+
+        // Match the parameters to the steps of the template. Parameters with the
+        // same shape build the same SQL, so it doesn't matter which one is picked
+        List<QueryParameter> searchParameters = searchContext.getSearchParameters();
+        List<QueryParameter> remaining = new ArrayList<>(searchParameters);
+        List<QueryParameter> ordered = new ArrayList<>(searchParameters.size());
+        for (SearchQueryTemplate.Step step : template.getSteps()) {
+            QueryParameter match = null;
+            for (QueryParameter queryParameter : remaining) {
+                if (step.getShape().equals(SearchQueryTemplate.shape(queryParameter))) {
+                    match = queryParameter;
+                    break;
+                }
+            }
+            if (match == null) {
+                log.exiting(CLASSNAME, METHODNAME);
+                return null;
+            }
+            remaining.remove(match);
+            ordered.add(match);
+        }
+
+        int pageSize = searchContext.getPageSize();
+        int offset = (searchContext.getPageNumber() - 1) * pageSize;
+        QuerySegmentAggregator helper =
+                QuerySegmentAggregatorFactory.buildQuerySegmentAggregator(resourceType, offset, pageSize,
+                        this.parameterDao, this.resourceDao, searchContext, this.queryHints, this.identityCache);
+
+        for (int i = 0; i < ordered.size(); i++) {
+            SearchQueryTemplate.Step step = template.getSteps().get(i);
+            QueryParameter queryParameter = ordered.get(i);
+            SqlQueryData querySegment = this.buildQueryParm(resourceType, queryParameter, PARAMETER_TABLE_ALIAS);
+            String fragment = fragment(queryParameter, querySegment);
+            if (fragment == null ? step.getFragment() != null : !fragment.equals(step.getFragment())) {
+                if (log.isLoggable(Level.FINE)) {
+                    log.fine("Search does not fit template '" + templateKey + "': " + fragment);
+                }
+                log.exiting(CLASSNAME, METHODNAME);
+                return null;
+            }
+            if (querySegment != null) {
+                helper.addQueryData(querySegment, queryParameter);
+            }
+        }
+
+        // Same order as building the query would leave behind
+        searchParameters.clear();
+        searchParameters.addAll(ordered);
+
+        String queryString = template.getQueryString(countQuery ? "" : helper.getPaginationClause());
+        SqlQueryData result = new SqlQueryData(queryString, helper.collectBindVariables(countQuery));
+        log.exiting(CLASSNAME, METHODNAME, result);
+        return result;
+    }
+
+    /**
+     * The where clause fragment recorded in a template for the given parameter. For
+     * _lastUpdated, the segment isn't used because the predicates are built by the
+     * {@link QuerySegmentAggregator}.
+     * @param queryParameter
+     * @param querySegment
+     * @return the fragment, or null if there is no segment
+     */
+    private static String fragment(QueryParameter queryParameter, SqlQueryData querySegment) {
+        if (LastUpdatedParmBehaviorUtil.LAST_UPDATED.equals(queryParameter.getCode())) {
+            StringBuilder result = new StringBuilder();
+            new LastUpdatedParmBehaviorUtil().executeBehavior(result, queryParameter);
+            return result.toString();
+        }
+        return querySegment != null ? querySegment.getQueryString() : null;
+    }
+
     /**
      * Contains logic common to the building of both 'count' resource queries and
      * 'regular' resource queries.
@@ -200,12 +356,15 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
      *                      The type of FHIR resource being searched for.
      * @param searchContext
      *                      The search context containing search parameters.
+     * @param steps
+     *                      If not null, the steps of a {@link SearchQueryTemplate} for this
+     *                      search are added to this list.
      * @return QuerySegmentAggregator - A query builder helper containing processed
      *         query segments.
      * @throws Exception
      */
-    private QuerySegmentAggregator buildQueryCommon(Class<?> resourceType, FHIRSearchContext searchContext)
-            throws Exception {
+    private QuerySegmentAggregator buildQueryCommon(Class<?> resourceType, FHIRSearchContext searchContext,
+            List<SearchQueryTemplate.Step> steps) throws Exception {
         final String METHODNAME = "buildQueryCommon";
         log.entering(CLASSNAME, METHODNAME,
                 new Object[] { resourceType.getSimpleName(), searchContext.getSearchParameters() });
@@ -262,6 +421,10 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
                 helper.addQueryData(querySegment, queryParameter);
                 isValidQuery = true;
             }
+            if (steps != null) {
+                steps.add(new SearchQueryTemplate.Step(SearchQueryTemplate.shape(queryParameter),
+                    fragment(queryParameter, querySegment)));
+            }
         }
         if (!isValidQuery) {
             helper = null;
@@ -375,6 +538,8 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
                         databaseQueryParm = this.processReverseChainedReferenceParm(resourceType, queryParm);
                     } else if (queryParm.isChained()) {
                         databaseQueryParm = this.processChainedReferenceParm(queryParm);
+                    } else if (QuerySegmentAggregator.isCompartmentMembership(queryParm)) {
+                        databaseQueryParm = this.processCompartmentMembership(resourceType, queryParm);
                     } else if (queryParm.isInclusionCriteria()) {
                         databaseQueryParm = this.processInclusionCriteria(queryParm);
                     } else {
@@ -391,7 +556,7 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
                     databaseQueryParm = this.processNumberParm(resourceType, queryParm, tableAlias);
                     break;
                 case QUANTITY:
-                    databaseQueryParm = this.processQuantityParm(resourceType, queryParm, tableAlias);
+                    databaseQueryParm = this.processQuantityParm(resourceType, queryParm, tableAlias, true);
                     break;
                 case URI:
                     databaseQueryParm = this.processUriParm(queryParm, tableAlias);
@@ -1051,6 +1216,51 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
         return queryData;
     }
 
+    /**
+     * Builds the filter on the compartment_memberships table used for compartment
+     * searches in place of the inclusion criteria when
+     * {@link QuerySegmentAggregator#isCompartmentMembership(QueryParameter)} is true.
+     * The table is joined like a parameter table, so the filter is a range scan of its
+     * unique index:
+     *
+     * <pre>
+     * (pX.COMPARTMENT_NAME_ID = 0 AND pX.COMPARTMENT_LOGICAL_ID = ? AND pX.RESOURCE_TYPE_ID = 12)
+     * </pre>
+     *
+     * The resource type is left out for system-level searches, because the table is
+     * joined to the logical resources of each resource type in turn.
+     *
+     * @param resourceType
+     * @param queryParm
+     * @return
+     * @throws Exception
+     */
+    protected SqlQueryData processCompartmentMembership(Class<?> resourceType, QueryParameter queryParm) throws Exception {
+        final String METHODNAME = "processCompartmentMembership";
+        log.entering(CLASSNAME, METHODNAME, queryParm.toString());
+
+        String[] compartment = QuerySegmentAggregator.getCompartment(queryParm);
+        StringBuilder whereClauseSegment = new StringBuilder();
+        whereClauseSegment.append(LEFT_PAREN)
+                .append(PARAMETER_TABLE_ALIAS).append(DOT).append(COMPARTMENT_NAME_ID).append(EQ)
+                .append(CompartmentNames.fromName(compartment[0]).getId())
+                .append(AND)
+                .append(PARAMETER_TABLE_ALIAS).append(DOT).append(COMPARTMENT_LOGICAL_ID).append(EQ).append(BIND_VAR);
+
+        if (!Resource.class.equals(resourceType)) {
+            Integer resourceTypeId = identityCache.getResourceTypeId(resourceType.getSimpleName());
+            whereClauseSegment.append(AND)
+                    .append(PARAMETER_TABLE_ALIAS).append(DOT).append(RESOURCE_TYPE_ID).append(EQ).append(resourceTypeId);
+        }
+        whereClauseSegment.append(RIGHT_PAREN);
+
+        List<Object> bindVariables = new ArrayList<>();
+        bindVariables.add(compartment[1]);
+        SqlQueryData queryData = new SqlQueryData(whereClauseSegment.toString(), bindVariables);
+        log.exiting(CLASSNAME, METHODNAME, whereClauseSegment.toString());
+        return queryData;
+    }
+
     @Override
     protected SqlQueryData processDateParm(Class<?> resourceType, QueryParameter queryParm) throws Exception {
         return processDateParm(resourceType, queryParm, PARAMETER_TABLE_ALIAS);
@@ -1117,6 +1327,8 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
                     } else {
                         whereClauseSegment.append(AND);
                     }
+                    // A bind variable rather than a literal, so that searches with different systems
+                    // build the same SQL and can share a SearchQueryTemplate
                     whereClauseSegment.append(tableAlias).append(DOT).append(CODE_SYSTEM_ID).append(operator)
                             .append(BIND_VAR);
 
@@ -1167,17 +1379,61 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
 
     @Override
     protected SqlQueryData processQuantityParm(Class<?> resourceType, QueryParameter queryParm) throws Exception {
-        return processQuantityParm(resourceType, queryParm, PARAMETER_TABLE_ALIAS);
+        return processQuantityParm(resourceType, queryParm, PARAMETER_TABLE_ALIAS, true);
     }
 
-    private SqlQueryData processQuantityParm(Class<?> resourceType, QueryParameter queryParm, String tableAlias)
-            throws Exception {
+    /**
+     * @param resourceType
+     * @param queryParm
+     * @param tableAlias
+     * @param canonical - true if values with a UCUM system are to be searched in their canonical unit
+     * @return
+     * @throws Exception
+     */
+    private SqlQueryData processQuantityParm(Class<?> resourceType, QueryParameter queryParm, String tableAlias,
+            boolean canonical) throws Exception {
         final String METHODNAME = "processQuantityParm";
         log.entering(CLASSNAME, METHODNAME, queryParm.toString());
 
         StringBuilder whereClauseSegment = new StringBuilder();
         List<Object> bindVariables = new ArrayList<>();
 
+        // Every value is searched as recorded. Values with a UCUM system are also searched in their canonical unit,
+        // against the canonical values which are stored under their own parameter name (see
+        // JDBCParameterBuildingVisitor), so the canonical match only adds the resources recorded in another unit.
+        // Resources indexed before the canonical values were added are still found in the unit they were recorded in.
+        // Composite components are only stored as recorded.
+        QueryParameter recordedParm = new QueryParameter(queryParm.getType(), queryParm.getCode(), queryParm.getModifier(),
+                queryParm.getModifierResourceTypeName());
+        QueryParameter canonicalParm = new QueryParameter(queryParm.getType(),
+                SearchUtil.makeCanonicalQuantityParamName(queryParm.getCode()), queryParm.getModifier(),
+                queryParm.getModifierResourceTypeName());
+        for (QueryParameterValue value : queryParm.getValues()) {
+            QueryParameterValue canonicalValue = canonical ? SearchUtil.getCanonicalQuantityValue(value) : null;
+            if (canonicalValue != null) {
+                canonicalParm.getValues().add(canonicalValue);
+            }
+            recordedParm.getValues().add(value);
+        }
+
+        if (!canonicalParm.getValues().isEmpty()) {
+            // ((P1.PARAMETER_NAME_ID = x AND ...) OR (P1.PARAMETER_NAME_ID = y AND ...))
+            whereClauseSegment.append(LEFT_PAREN);
+            appendQuantitySegment(whereClauseSegment, bindVariables, recordedParm, tableAlias);
+            whereClauseSegment.append(OR);
+            appendQuantitySegment(whereClauseSegment, bindVariables, canonicalParm, tableAlias);
+            whereClauseSegment.append(RIGHT_PAREN);
+        } else {
+            appendQuantitySegment(whereClauseSegment, bindVariables, recordedParm, tableAlias);
+        }
+        SqlQueryData queryData = new SqlQueryData(whereClauseSegment.toString(), bindVariables);
+
+        log.exiting(CLASSNAME, METHODNAME, whereClauseSegment.toString());
+        return queryData;
+    }
+
+    private void appendQuantitySegment(StringBuilder whereClauseSegment, List<Object> bindVariables, QueryParameter queryParm,
+            String tableAlias) throws Exception {
         // Build this piece of the segment:
         // (P1.PARAMETER_NAME_ID = x AND
         this.populateNameIdSubSegment(whereClauseSegment, queryParm.getCode(), tableAlias);
@@ -1186,10 +1442,6 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
         // selection criteria.
         QuantityParmBehaviorUtil behaviorUtil = new QuantityParmBehaviorUtil();
         behaviorUtil.executeBehavior(whereClauseSegment, queryParm, bindVariables, tableAlias, parameterDao);
-        SqlQueryData queryData = new SqlQueryData(whereClauseSegment.toString(), bindVariables);
-
-        log.exiting(CLASSNAME, METHODNAME, whereClauseSegment.toString());
-        return queryData;
     }
 
     @Override
@@ -1257,8 +1509,13 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
             for (int componentNum = 1; componentNum <= components.size(); componentNum++) {
                 try {
                     QueryParameter component = components.get(componentNum - 1);
-                    SqlQueryData subQueryData =
-                            buildQueryParm(resourceType, component, tableAlias + "_p" + componentNum);
+                    SqlQueryData subQueryData;
+                    if (Type.QUANTITY.equals(component.getType()) && !Modifier.MISSING.equals(component.getModifier())) {
+                        // composite components are only stored in the recorded unit
+                        subQueryData = processQuantityParm(resourceType, component, tableAlias + "_p" + componentNum, false);
+                    } else {
+                        subQueryData = buildQueryParm(resourceType, component, tableAlias + "_p" + componentNum);
+                    }
                     whereClauseSegment.append(componentSeparator + subQueryData.getQueryString());
                     bindVariables.addAll(subQueryData.getBindVariables());
                 } catch (Exception e) {
@@ -1287,7 +1544,7 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
         StringBuilder populateNameIdSubSegment = new StringBuilder();
         this.populateNameIdSubSegment(populateNameIdSubSegment, parmName, paramTableAlias);
 
-        LocationParmBehaviorUtil behaviorUtil = new LocationParmBehaviorUtil();
+        LocationParmBehaviorUtil behaviorUtil = new LocationParmBehaviorUtil(LocationUtil.useSpatialIndex());
         behaviorUtil.buildLocationSearchQuery(populateNameIdSubSegment.toString(), whereClauseSegment, bindVariables, boundingAreas, paramTableAlias);
 
         SqlQueryData queryData = new SqlQueryData(whereClauseSegment.toString(), bindVariables);
@@ -9,6 +9,7 @@ package com.ibm.fhir.persistence.jdbc.util;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.AND;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.AS;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.COMBINED_RESULTS;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.COMPARTMENT_MEMBERSHIPS;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.DEFAULT_ORDERING;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.EQ;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.FROM;
@@ -40,6 +41,7 @@ import com.ibm.fhir.search.SearchConstants.Modifier;
 import com.ibm.fhir.search.SearchConstants.Type;
 import com.ibm.fhir.search.parameters.QueryParameter;
 import com.ibm.fhir.search.parameters.QueryParameterValue;
+import com.ibm.fhir.search.util.SearchUtil;
 
 /**
  * This class assists the JDBCQueryBuilder. Its purpose is to aggregate SQL
@@ -201,20 +203,15 @@ public class QuerySegmentAggregator {
             queryString.append(" AND R.RESOURCE_ID = LR.CURRENT_RESOURCE_ID ");
             queryString.append(" AND R.IS_DELETED = 'N'");
 
-
-            // An important step here is to add _id, _lastUpdated, and then values table bind variables
-            List<Object> allBindVariables = new ArrayList<>();
-            allBindVariables.addAll(idsObjects);
-            allBindVariables.addAll(lastUpdatedObjects);
-            for (SqlQueryData querySegment : this.querySegments) {
-                allBindVariables.addAll(querySegment.getBindVariables());
-            }
+            // Repeat the _lastUpdated predicates on the outer join so that they can be used for
+            // partition elimination when the resources table is range-partitioned by LAST_UPDATED
+            processJoinClauseForLastUpdated(queryString);
 
             // Add default ordering
             queryString.append(DEFAULT_ORDERING);
             this.addPaginationClauses(queryString);
             addOptimizerHint(queryString);
-            queryData = new SqlQueryData(queryString.toString(), allBindVariables);
+            queryData = new SqlQueryData(queryString.toString(), collectBindVariables(false));
         }
 
         log.exiting(CLASSNAME, METHODNAME, queryData);
@@ -271,16 +268,8 @@ public class QuerySegmentAggregator {
             buildFromClause(queryString, simpleName);
             buildWhereClause(queryString, null);
 
-            // An important step here is to add _id, _lastUpdated, and then values table bind variables
-            List<Object> allBindVariables = new ArrayList<>();
-            allBindVariables.addAll(idsObjects);
-            allBindVariables.addAll(lastUpdatedObjects);
-            for (SqlQueryData querySegment : this.querySegments) {
-                allBindVariables.addAll(querySegment.getBindVariables());
-            }
-
             addOptimizerHint(queryString);
-            queryData = new SqlQueryData(queryString.toString(), allBindVariables);
+            queryData = new SqlQueryData(queryString.toString(), collectBindVariables(true));
         }
 
         log.exiting(CLASSNAME, METHODNAME, queryData);
@@ -288,6 +277,45 @@ public class QuerySegmentAggregator {
 
     }
 
+    /**
+     * Collects the bind variables for the query built by {@link #buildQuery()} or
+     * {@link #buildCountQuery()}, in the order their markers appear in the query string:
+     * _id, _lastUpdated, and then the values table bind variables. This only depends on
+     * the query parameters added so far, so it can be used without building the query
+     * string again. Not used for system level searches.
+     *
+     * @param countQuery true for the count query
+     * @return the bind variables
+     */
+    protected List<Object> collectBindVariables(boolean countQuery) {
+        List<Object> allBindVariables = new ArrayList<>();
+        for (QueryParameter queryParamId : queryParamIds) {
+            for (QueryParameterValue value : queryParamId.getValues()) {
+                allBindVariables.add(SqlParameterEncoder.encode(value.getValueCode()));
+            }
+        }
+
+        List<Object> lastUpdatedBindVariables = new ArrayList<>();
+        if (!queryParmLastUpdateds.isEmpty()) {
+            LastUpdatedParmBehaviorUtil behaviorUtil = new LastUpdatedParmBehaviorUtil();
+            for (QueryParameter queryParm : queryParmLastUpdateds) {
+                behaviorUtil.executeBehavior(new StringBuilder(), queryParm);
+            }
+            lastUpdatedBindVariables.addAll(behaviorUtil.getBindVariables());
+        }
+        allBindVariables.addAll(lastUpdatedBindVariables);
+
+        for (SqlQueryData querySegment : this.querySegments) {
+            allBindVariables.addAll(querySegment.getBindVariables());
+        }
+
+        if (!countQuery) {
+            // the _lastUpdated predicates are repeated on the join to the resources table
+            allBindVariables.addAll(lastUpdatedBindVariables);
+        }
+        return allBindVariables;
+    }
+
     /**
      * Build a system level query or count query, based upon the encapsulated query
      * segments and bind variables and
@@ -514,6 +542,23 @@ public class QuerySegmentAggregator {
         }
     }
 
+    /**
+     * Adds the _lastUpdated predicates (if any) to the join condition for the resources
+     * table R. Their bind variables are added by {@link #collectBindVariables(boolean)}
+     * @param joinClause
+     */
+    protected void processJoinClauseForLastUpdated(StringBuilder joinClause) {
+        if (!queryParmLastUpdateds.isEmpty()) {
+            LastUpdatedParmBehaviorUtil behaviorUtil = new LastUpdatedParmBehaviorUtil();
+            for (QueryParameter queryParm : queryParmLastUpdateds) {
+                StringBuilder predicate = new StringBuilder();
+                behaviorUtil.executeBehavior(predicate, queryParm);
+                joinClause.append(AND).append(predicate.toString().replaceAll(LastUpdatedParmBehaviorUtil.LAST_UPDATED_COLUMN_NAME,
+                        "R." + LastUpdatedParmBehaviorUtil.LAST_UPDATED_COLUMN_NAME));
+            }
+        }
+    }
+
     /**
      * Builds the WHERE clause for the query being generated. This method aggregates
      * the contained query segments, and ties those segments back
@@ -664,6 +709,9 @@ public class QuerySegmentAggregator {
         case TOKEN:
             if (param.isReverseChained()) {
                 name.append("_LOGICAL_RESOURCES");
+            } else if (isCompartmentMembership(param)) {
+                // system-level table, so no resource type prefix
+                return COMPARTMENT_MEMBERSHIPS + " ";
             } else {
                 name.append("_TOKEN_VALUES_V "); // uses view to hide new issue #1366 schema
             }
@@ -675,6 +723,36 @@ public class QuerySegmentAggregator {
         return name.toString();
     }
 
+    /**
+     * Is the parameter a compartment search answered from the compartment_memberships
+     * table instead of the inclusion criteria. See {@link SearchUtil#useCompartmentMembershipIndex()}.
+     * @param param
+     * @return
+     */
+    public static boolean isCompartmentMembership(QueryParameter param) {
+        return param.isInclusionCriteria()
+                && getCompartment(param) != null
+                && SearchUtil.useCompartmentMembershipIndex();
+    }
+
+    /**
+     * Get the compartment searched by the inclusion criteria parameter. Every parameter
+     * in the chain has the same value: compartmentName/compartmentLogicalId
+     * @param param
+     * @return the compartment name and logical id, or null if the value doesn't name
+     *         a compartment stored in the compartment_memberships table
+     */
+    public static String[] getCompartment(QueryParameter param) {
+        if (param.getValues() == null || param.getValues().isEmpty() || param.getValues().get(0).getValueString() == null) {
+            return null;
+        }
+        String[] parts = param.getValues().get(0).getValueString().split("/");
+        if (parts.length != 2 || CompartmentNames.fromName(parts[0]) == null) {
+            return null;
+        }
+        return parts;
+    }
+
     /**
      * Get the abbreviation used for composites
      * @param param
@@ -719,12 +797,34 @@ public class QuerySegmentAggregator {
      * @throws Exception
      */
     protected void addPaginationClauses(StringBuilder queryString) throws Exception {
+        queryString.append(getPaginationClause());
+    }
 
+    /**
+     * Gets the pagination clause for the page of results requested, based on the type
+     * of database we're running against.
+     *
+     * @return the pagination clause, which starts with a space
+     * @throws Exception
+     */
+    protected String getPaginationClause() throws Exception {
+        StringBuilder result = new StringBuilder();
         if (this.parameterDao.isDb2Database()) {
-            queryString.append(" LIMIT ").append(this.pageSize).append(" OFFSET ").append(this.offset);
+            result.append(" LIMIT ").append(this.pageSize).append(" OFFSET ").append(this.offset);
         } else {
-            queryString.append(" OFFSET ").append(this.offset).append(" ROWS")
+            result.append(" OFFSET ").append(this.offset).append(" ROWS")
                     .append(" FETCH NEXT ").append(this.pageSize).append(" ROWS ONLY");
         }
+        return result.toString();
+    }
+
+    /**
+     * Can the query built by this aggregator be reused for other searches with the
+     * same parameter shape. The query string must only depend on the shape of the
+     * query parameters and on ids which can't change.
+     * @return
+     */
+    protected boolean isReusable() {
+        return true;
     }
 }
\ No newline at end of file
@@ -34,11 +34,8 @@ public class QuerySegmentAggregatorFactory {
         
         QuerySegmentAggregator qsa;
         
-        if (searchContext.hasIncludeParameters() || searchContext.hasRevIncludeParameters()) {
-            qsa = new InclusionQuerySegmentAggregator(resourceType, offset, pageSize, parameterDao, resourceDao, 
-                                                      searchContext.getIncludeParameters(), searchContext.getRevIncludeParameters(), queryHints, identityCache);
-        }
-        else if (searchContext.hasSortParameters()) {
+        // _include and _revinclude are processed after the match query by the InclusionQueryBuilder
+        if (searchContext.hasSortParameters()) {
             qsa = new SortedQuerySegmentAggregator(resourceType, offset, pageSize, parameterDao, resourceDao, searchContext.getSortParameters(), queryHints);
         }
         else {
@@ -0,0 +1,228 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.search.SearchConstants.Modifier;
+import com.ibm.fhir.search.SearchConstants.Type;
+import com.ibm.fhir.search.context.FHIRSearchContext;
+import com.ibm.fhir.search.location.util.LocationUtil;
+import com.ibm.fhir.search.parameters.QueryParameter;
+import com.ibm.fhir.search.parameters.QueryParameterValue;
+import com.ibm.fhir.search.parameters.SortParameter;
+
+/**
+ * The SQL generated by the {@link JDBCQueryBuilder} for a search, kept so that it can be
+ * reused for other searches with the same shape: the same resource type, parameters,
+ * modifiers, prefixes, sort and page size, but different values.
+ *
+ * <p>The template holds the order in which the parameters were processed, along with
+ * the where clause fragment each parameter produced. To reuse the template, the
+ * query builder processes the parameters of the new search in the same order to get
+ * their bind variables, and checks that each fragment is identical to the one recorded
+ * here. So the shape key only needs to capture what is likely to change the SQL,
+ * and a search which doesn't fit the template falls back to building the query.
+ *
+ * <p>A template saves the ordering of the parameters and the aggregation of the query,
+ * but not the building of the where clause fragment of each parameter, which is also
+ * how its bind variables are collected.
+ *
+ * <p>The pagination clause is rendered with literals, so it is kept out of the template
+ * and added for the page requested.
+ */
+public class SearchQueryTemplate {
+
+    // Separates the parts of the key
+    private static final String SEP = "|";
+
+    // The query text before and after the pagination clause
+    private final String queryPrefix;
+    private final String querySuffix;
+
+    // The parameters in the order they were processed
+    private final List<Step> steps;
+
+    // When the template was built (System.nanoTime())
+    private final long createTime;
+
+    /**
+     * One parameter of the template
+     */
+    public static class Step {
+        private final String shape;
+        private final String fragment;
+
+        /**
+         * Public constructor
+         * @param shape the shape of the parameter, see {@link SearchQueryTemplate#shape(QueryParameter)}
+         * @param fragment the where clause fragment built for the parameter, can be null
+         */
+        public Step(String shape, String fragment) {
+            this.shape = shape;
+            this.fragment = fragment;
+        }
+
+        /**
+         * @return the shape of the parameter
+         */
+        public String getShape() {
+            return shape;
+        }
+
+        /**
+         * @return the where clause fragment built for the parameter, or null
+         */
+        public String getFragment() {
+            return fragment;
+        }
+    }
+
+    /**
+     * Public constructor
+     * @param queryPrefix the query text before the pagination clause
+     * @param querySuffix the query text after the pagination clause, empty if there is none
+     * @param steps
+     */
+    public SearchQueryTemplate(String queryPrefix, String querySuffix, List<Step> steps) {
+        this.queryPrefix = queryPrefix;
+        this.querySuffix = querySuffix;
+        this.steps = Collections.unmodifiableList(new ArrayList<>(steps));
+        this.createTime = System.nanoTime();
+    }
+
+    /**
+     * Render the query text
+     * @param paginationClause the pagination clause for the page requested, empty if there is none
+     * @return
+     */
+    public String getQueryString(String paginationClause) {
+        return queryPrefix + paginationClause + querySuffix;
+    }
+
+    /**
+     * @return the parameters in the order they must be processed
+     */
+    public List<Step> getSteps() {
+        return steps;
+    }
+
+    /**
+     * @return when the template was built, from System.nanoTime()
+     */
+    public long getCreateTime() {
+        return createTime;
+    }
+
+    /**
+     * Build the key for the template of the given search, or return null if the search
+     * can't use a template. Parameters which build their SQL from other resource types
+     * or from their values (chained, reverse chained, inclusion criteria, composites,
+     * :missing, :above and Location near) are not supported.
+     *
+     * <p>The order of the parameters doesn't matter because the query builder orders
+     * them before processing them.
+     *
+     * @param resourceType
+     * @param searchContext
+     * @param countQuery true for the count query
+     * @return the key, or null
+     */
+    public static String key(Class<?> resourceType, FHIRSearchContext searchContext, boolean countQuery) {
+        if (Resource.class.equals(resourceType)) {
+            // system level searches depend on the resource types in the database
+            return null;
+        }
+
+        List<String> shapes = new ArrayList<>(searchContext.getSearchParameters().size());
+        for (QueryParameter parameter: searchContext.getSearchParameters()) {
+            if (!isSupported(resourceType, parameter)) {
+                return null;
+            }
+            shapes.add(shape(parameter));
+        }
+        Collections.sort(shapes);
+
+        StringBuilder result = new StringBuilder();
+        result.append(countQuery ? "count" : "query").append(SEP).append(resourceType.getSimpleName());
+        if (!countQuery) {
+            result.append(SEP).append(searchContext.getPageSize());
+            if (searchContext.hasSortParameters()) {
+                for (SortParameter sortParameter: searchContext.getSortParameters()) {
+                    result.append(SEP).append("_sort=").append(sortParameter.getCode())
+                        .append(":").append(sortParameter.getType())
+                        .append(":").append(sortParameter.getDirection());
+                }
+            }
+        }
+        for (String shape: shapes) {
+            result.append(SEP).append(shape);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Is the parameter supported by templates
+     * @param resourceType
+     * @param parameter
+     * @return
+     */
+    private static boolean isSupported(Class<?> resourceType, QueryParameter parameter) {
+        if (parameter.isChained() || parameter.isReverseChained() || parameter.isInclusionCriteria()) {
+            return false;
+        }
+        if (Type.COMPOSITE.equals(parameter.getType()) || LocationUtil.isLocation(resourceType, parameter)) {
+            return false;
+        }
+        return !Modifier.MISSING.equals(parameter.getModifier()) && !Modifier.ABOVE.equals(parameter.getModifier());
+    }
+
+    /**
+     * The shape of a parameter is everything except its values which may change the
+     * SQL built for it. For each value, that's the prefix and which parts of the value
+     * are present.
+     * @param parameter
+     * @return
+     */
+    public static String shape(QueryParameter parameter) {
+        StringBuilder result = new StringBuilder();
+        result.append(parameter.getCode()).append(":").append(parameter.getType());
+        if (parameter.getModifier() != null) {
+            result.append(":").append(parameter.getModifier().value());
+        }
+        if (parameter.getModifierResourceTypeName() != null) {
+            result.append(":").append(parameter.getModifierResourceTypeName());
+        }
+
+        result.append("[");
+        for (QueryParameterValue value: parameter.getValues()) {
+            result.append(value.getPrefix() != null ? value.getPrefix().value() : "");
+            result.append(value.getValueString() != null ? "s" : "");
+            if (Type.REFERENCE.equals(parameter.getType()) && value.getValueString() != null) {
+                // the code system id of the target resource type is a literal
+                String[] parts = value.getValueString().split("/");
+                if (parts.length == 2) {
+                    result.append("@").append(parts[0]);
+                }
+            }
+            result.append(value.getValueCode() != null ? "c" : "");
+            // the code system id of a token or quantity system is a bind variable, so only its presence matters
+            result.append(value.getValueSystem() != null && !value.getValueSystem().isEmpty() ? "y" : "");
+            result.append(value.getValueNumber() != null ? "n" : "");
+            if (value.getValueDateLowerBound() != null) {
+                // an instant is matched with an equals predicate instead of a range
+                result.append(value.getValueDateLowerBound().equals(value.getValueDateUpperBound()) ? "i" : "d");
+            }
+            result.append(",");
+        }
+        result.append("]");
+        return result.toString();
+    }
+}
@@ -52,6 +52,9 @@ public class SortedQuerySegmentAggregator extends QuerySegmentAggregator {
 
     private List<SortParameter> sortParameters;
 
+    // true if a sort parameter name isn't known yet, so the sort join uses a placeholder id
+    private boolean unknownSortParameter = false;
+
     /**
      * Constructs a new SortedQuerySegmentAggregator
      *
@@ -67,6 +70,19 @@ public class SortedQuerySegmentAggregator extends QuerySegmentAggregator {
         this.sortParameters = sortParms;
     }
 
+    @Override
+    protected List<Object> collectBindVariables(boolean countQuery) {
+        // The sorted query doesn't repeat the _lastUpdated predicates, so its bind
+        // variables are the same as those of the count query
+        return super.collectBindVariables(true);
+    }
+
+    @Override
+    protected boolean isReusable() {
+        // the placeholder id would stick after the parameter name is created
+        return !unknownSortParameter;
+    }
+
     /**
      * Builds a complete SQL Query based upon the encapsulated query segments and
      * bind variables. This query
@@ -122,15 +138,6 @@ public class SortedQuerySegmentAggregator extends QuerySegmentAggregator {
             // Build FROM clause
             buildFromClause(sqlSortQuery, resourceType.getSimpleName());
 
-            // Gather up all bind variables from the query segments
-            // An important step here is to add _id and _lastUpdated
-            List<Object> allBindVariables = new ArrayList<>();
-            allBindVariables.addAll(idsObjects);
-            allBindVariables.addAll(lastUpdatedObjects);
-            for (SqlQueryData querySegment : this.querySegments) {
-                allBindVariables.addAll(querySegment.getBindVariables());
-            }
-
             // Build the WHERE clause...this needs to appear before the outer join part
             buildWhereClause(sqlSortQuery, null);
 
@@ -149,7 +156,7 @@ public class SortedQuerySegmentAggregator extends QuerySegmentAggregator {
 
             addOptimizerHint(sqlSortQuery);
 
-            queryData = new SqlQueryData(sqlSortQuery.toString(), allBindVariables);
+            queryData = new SqlQueryData(sqlSortQuery.toString(), collectBindVariables(false));
         }
 
         log.exiting(CLASSNAME, METHODNAME, queryData);
@@ -308,6 +315,7 @@ public class SortedQuerySegmentAggregator extends QuerySegmentAggregator {
                     this.parameterDao.addParameterNamesCacheCandidate(sortParm.getCode(), sortParameterNameId);
                 } else {
                     sortParameterNameId = -1; // so we don't break the query syntax
+                    unknownSortParameter = true;
                 }
             }
 
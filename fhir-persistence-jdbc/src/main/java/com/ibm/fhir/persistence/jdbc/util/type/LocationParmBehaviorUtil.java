@@ -9,16 +9,19 @@ package com.ibm.fhir.persistence.jdbc.util.type;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.AND;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.BIND_VAR;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.DOT;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.GEOHASH_VALUE;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.GTE;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.LATITUDE_VALUE;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.LEFT_PAREN;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.LONGITUDE_VALUE;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.LT;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.LTE;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.OR;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.PARAMETER_TABLE_ALIAS;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.RIGHT_PAREN;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.SPACE;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -27,6 +30,7 @@ import com.ibm.fhir.search.location.bounding.BoundingBox;
 import com.ibm.fhir.search.location.bounding.BoundingMissing;
 import com.ibm.fhir.search.location.bounding.BoundingRadius;
 import com.ibm.fhir.search.location.bounding.BoundingType;
+import com.ibm.fhir.search.location.util.Geohash;
 
 /**
  * Location Behavior Util generates SQL and loads the variables into bind
@@ -34,8 +38,21 @@ import com.ibm.fhir.search.location.bounding.BoundingType;
  */
 public class LocationParmBehaviorUtil {
 
+    // The maximum number of geohash cells used to cover a bounding box
+    private static final int MAX_CELLS = 32;
+
+    // Restrict bounding box searches to the covering geohash cells
+    private final boolean useSpatialIndex;
+
     public LocationParmBehaviorUtil() {
-        // No Operation
+        this(false);
+    }
+
+    /**
+     * @param useSpatialIndex true to add geohash cell range predicates for bounding boxes
+     */
+    public LocationParmBehaviorUtil(boolean useSpatialIndex) {
+        this.useSpatialIndex = useSpatialIndex;
     }
 
     /**
@@ -115,6 +132,37 @@ public class LocationParmBehaviorUtil {
      */
     public void buildQueryForBoundingBox(StringBuilder whereClauseSegment, List<Object> bindVariables,
             BoundingBox boundingBox, String paramTableAlias) {
+        List<Geohash.Range> ranges = Collections.emptyList();
+        if (useSpatialIndex) {
+            ranges = Geohash.coveringRanges(boundingBox.getMinLatitude(), boundingBox.getMaxLatitude(),
+                    boundingBox.getMinLongitude(), boundingBox.getMaxLongitude(), MAX_CELLS);
+        }
+
+        if (!ranges.isEmpty()) {
+            // Build the cell range lookups, which the exact comparison below then filters:
+            // ((G >= ? AND G < ?) OR (G >= ?) ...) AND
+            whereClauseSegment.append(LEFT_PAREN).append(LEFT_PAREN);
+            boolean first = true;
+            for (Geohash.Range range : ranges) {
+                if (!first) {
+                    whereClauseSegment.append(OR);
+                }
+                first = false;
+                whereClauseSegment.append(LEFT_PAREN)
+                        .append(paramTableAlias).append(DOT).append(GEOHASH_VALUE).append(GTE)
+                        .append(BIND_VAR);
+                bindVariables.add(range.getLow());
+                if (range.getHigh() != null) {
+                    whereClauseSegment.append(AND)
+                            .append(paramTableAlias).append(DOT).append(GEOHASH_VALUE).append(LT)
+                            .append(BIND_VAR);
+                    bindVariables.add(range.getHigh());
+                }
+                whereClauseSegment.append(RIGHT_PAREN);
+            }
+            whereClauseSegment.append(RIGHT_PAREN).append(AND);
+        }
+
         // Now build the piece that compares the BoundingBox longitude and latitude values
         // to the persisted longitude and latitude parameters.
         whereClauseSegment
@@ -141,6 +189,10 @@ public class LocationParmBehaviorUtil {
         bindVariables.add(boundingBox.getMaxLatitude());
         bindVariables.add(boundingBox.getMinLongitude());
         bindVariables.add(boundingBox.getMaxLongitude());
+
+        if (!ranges.isEmpty()) {
+            whereClauseSegment.append(RIGHT_PAREN);
+        }
     }
 
     /**
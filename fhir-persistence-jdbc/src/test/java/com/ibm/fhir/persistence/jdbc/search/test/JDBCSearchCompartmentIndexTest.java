@@ -0,0 +1,48 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.search.test;
+
+import static org.testng.Assert.assertTrue;
+import static org.testng.AssertJUnit.assertEquals;
+
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.model.resource.Basic;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.search.util.SearchUtil;
+
+/**
+ * Runs the compartment searches using the compartment_memberships table.
+ * The "compartment-index" tenant configuration enables fhirServer/search/useCompartmentMembershipIndex.
+ */
+public class JDBCSearchCompartmentIndexTest extends JDBCSearchCompartmentTest {
+
+    public JDBCSearchCompartmentIndexTest() throws Exception {
+        super();
+    }
+
+    @Override
+    protected void setTenant() throws Exception {
+        FHIRRequestContext.get().setTenantId("compartment-index");
+        createReference();
+    }
+
+    @Test
+    public void testCompartmentMembershipIndexEnabled() {
+        assertTrue(SearchUtil.useCompartmentMembershipIndex());
+    }
+
+    @Test
+    public void testSearchOtherCompartment() throws Exception {
+        List<Resource> results = runQueryTest("Patient", "456",
+            Basic.class, "Reference-relative", "Patient/123");
+        assertEquals(0, results.size());
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.search.test;
+
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.search.location.util.LocationUtil;
+
+/**
+ * Runs the near searches using the geohash cell ids stored for each position.
+ * The "spatial" tenant configuration enables fhirServer/search/useSpatialIndex.
+ */
+public class JDBCSearchNearSpatialIndexTest extends JDBCSearchNearTest {
+
+    @Override
+    @BeforeClass
+    public void startup() throws Exception {
+        super.startup();
+        FHIRRequestContext.get().setTenantId("spatial");
+    }
+
+    @Test
+    public void testSpatialIndexEnabled() {
+        assertTrue(LocationUtil.useSpatialIndex());
+    }
+}
@@ -6,6 +6,8 @@
 
 package com.ibm.fhir.persistence.jdbc.search.test;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.util.Properties;
 
 import org.testng.annotations.Test;
@@ -32,13 +34,14 @@ public class JDBCSearchQuantityTest extends AbstractSearchQuantityTest {
     
     private FHIRPersistenceJDBCCache cache;
 
+    private DerbyInitializer derbyInit;
+
     public JDBCSearchQuantityTest() throws Exception {
         this.testProps = TestUtil.readTestProperties("test.jdbc.properties");
     }
 
     @Override
     public void bootstrapDatabase() throws Exception {
-        DerbyInitializer derbyInit;
         String dbDriverName = this.testProps.getProperty("dbDriverName");
         if (dbDriverName != null && dbDriverName.contains("derby")) {
             derbyInit = new DerbyInitializer(this.testProps);
@@ -67,6 +70,30 @@ public class JDBCSearchQuantityTest extends AbstractSearchQuantityTest {
     }
 
 
+    /**
+     * Resources indexed before the canonical values were stored are still found by a UCUM search in the unit they
+     * were recorded in. Runs last, since it removes the canonical values of the saved resource.
+     */
+    @Test(priority = 1)
+    public void testSearchQuantity_WithoutCanonicalValues() throws Exception {
+        if (derbyInit == null) {
+            return;
+        }
+        final String DELETE = "DELETE FROM FHIRDATA.Basic_QUANTITY_VALUES"
+                + " WHERE LOGICAL_RESOURCE_ID = (SELECT LOGICAL_RESOURCE_ID FROM FHIRDATA.Basic_LOGICAL_RESOURCES WHERE LOGICAL_ID = ?)"
+                + " AND PARAMETER_NAME_ID IN (SELECT PARAMETER_NAME_ID FROM FHIRDATA.PARAMETER_NAMES WHERE PARAMETER_NAME LIKE 'ibm-internal-%-Canonical')";
+        try (Connection c = derbyInit.getConnection()) {
+            try (PreparedStatement ps = c.prepareStatement(DELETE)) {
+                ps.setString(1, savedResource.getId());
+                ps.executeUpdate();
+            }
+            c.commit();
+        }
+
+        assertSearchReturnsSavedResource("Quantity-withExponent", "120|http://unitsofmeasure.org|mm[Hg]");
+        assertSearchDoesntReturnSavedResource("Quantity-withExponent", "16|http://unitsofmeasure.org|kPa");
+    }
+
     /*
      * Currently, documented in our conformance statement. We do not support
      * modifiers on chained parameters.
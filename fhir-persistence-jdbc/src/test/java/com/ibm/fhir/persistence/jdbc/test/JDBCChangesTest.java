@@ -0,0 +1,103 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.time.ZonedDateTime;
+import java.util.Properties;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.database.utils.api.IConnectionProvider;
+import com.ibm.fhir.database.utils.pool.PoolConnectionProvider;
+import com.ibm.fhir.model.resource.Device;
+import com.ibm.fhir.model.test.TestUtil;
+import com.ibm.fhir.model.type.Instant;
+import com.ibm.fhir.persistence.FHIRPersistence;
+import com.ibm.fhir.persistence.context.FHIRHistoryContext;
+import com.ibm.fhir.persistence.context.FHIRPersistenceContextFactory;
+import com.ibm.fhir.persistence.jdbc.FHIRPersistenceJDBCCache;
+import com.ibm.fhir.persistence.jdbc.cache.CommonTokenValuesCacheImpl;
+import com.ibm.fhir.persistence.jdbc.cache.FHIRPersistenceJDBCCacheImpl;
+import com.ibm.fhir.persistence.jdbc.cache.NameIdCache;
+import com.ibm.fhir.persistence.jdbc.dao.api.ICommonTokenValuesCache;
+import com.ibm.fhir.persistence.jdbc.impl.FHIRPersistenceJDBCImpl;
+import com.ibm.fhir.persistence.jdbc.test.util.DerbyInitializer;
+import com.ibm.fhir.persistence.test.common.AbstractChangesTest;
+
+/**
+ * Concrete subclass for the change feed tests run against the JDBC schema.
+ */
+public class JDBCChangesTest extends AbstractChangesTest {
+
+    // test properties
+    private Properties testProps;
+    
+    // Connection pool used to provide connections for the FHIRPersistenceJDBCImpl
+    private PoolConnectionProvider connectionPool;
+    
+    private FHIRPersistenceJDBCCache cache;
+    
+    public JDBCChangesTest() throws Exception {
+        this.testProps = TestUtil.readTestProperties("test.jdbc.properties");
+    }
+
+    @Override
+    public void bootstrapDatabase() throws Exception {
+        DerbyInitializer derbyInit;
+        String dbDriverName = this.testProps.getProperty("dbDriverName");
+        if (dbDriverName != null && dbDriverName.contains("derby")) {
+            derbyInit = new DerbyInitializer(this.testProps);
+            IConnectionProvider cp = derbyInit.getConnectionProvider(false);
+            this.connectionPool = new PoolConnectionProvider(cp, 1);
+            ICommonTokenValuesCache rrc = new CommonTokenValuesCacheImpl(100, 100);
+            cache = new FHIRPersistenceJDBCCacheImpl(new NameIdCache<Integer>(), new NameIdCache<Integer>(), rrc);
+        }
+    }
+    
+    @Override
+    public FHIRPersistence getPersistenceImpl() throws Exception {
+        if (this.connectionPool == null) {
+            throw new IllegalStateException("Database not bootstrapped");
+        }
+        return new FHIRPersistenceJDBCImpl(this.testProps, this.connectionPool, cache);
+    }
+    
+    @Test
+    public void testSettleWindow() throws Exception {
+        Properties props = new Properties();
+        props.putAll(this.testProps);
+        props.setProperty("changeLogSettleSeconds", "3600");
+        FHIRPersistence settled = new FHIRPersistenceJDBCImpl(props, this.connectionPool, cache);
+
+        // the changes made by the test class are too recent to be returned
+        FHIRHistoryContext historyContext = FHIRPersistenceContextFactory.createHistoryContext();
+        historyContext.setPageSize(10);
+        historyContext.setSince(Instant.of(ZonedDateTime.now().minusMinutes(10)));
+        assertTrue(settled.changes(getPersistenceContextForHistory(historyContext), Device.class).getResource().isEmpty());
+
+        // the page is empty, so the client resumes from _since, and gets the changes once they have settled
+        String cursor = historyContext.getNextCursor();
+        assertNotNull(cursor);
+        historyContext = FHIRPersistenceContextFactory.createHistoryContext();
+        historyContext.setPageSize(10);
+        historyContext.setCursor(cursor);
+        assertFalse(persistence.changes(getPersistenceContextForHistory(historyContext), Device.class).getResource().isEmpty());
+    }
+
+    @Override
+    protected void shutdownPools() throws Exception {
+        // Mark the pool as no longer in use. This allows the pool to check for
+        // lingering open connections/transactions.
+        if (this.connectionPool != null) {
+            this.connectionPool.close();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test.connection;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+import javax.transaction.Status;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.config.FHIRConfiguration;
+import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
+import com.ibm.fhir.persistence.jdbc.connection.Action;
+import com.ibm.fhir.persistence.jdbc.connection.FHIRDbConnectionStrategyBase;
+import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDBConnectException;
+
+/**
+ * Unit test for the connection reuse within a transaction in {@link FHIRDbConnectionStrategyBase}
+ */
+public class FHIRDbConnectionStrategyBaseTest {
+
+    @BeforeClass
+    public void setup() throws Exception {
+        FHIRConfiguration.setConfigHome("../fhir-persistence/target/test-classes");
+        FHIRRequestContext.get().setTenantId("connection");
+    }
+
+    @AfterClass
+    public void tearDown() throws Exception {
+        FHIRRequestContext.get().setTenantId("default");
+    }
+
+    @Test(groups = {"jdbc"})
+    public void testReuseInTransaction() throws Exception {
+        MockTransactionSynchronizationRegistry sync = new MockTransactionSynchronizationRegistry();
+        AtomicInteger actions = new AtomicInteger();
+        TestStrategy strategy = new TestStrategy(sync, (flavor, c) -> actions.incrementAndGet());
+        MockDataSource ds = new MockDataSource();
+
+        sync.begin();
+        Connection c1 = strategy.getConnection(ds, "default", "default");
+        c1.close();
+        Connection c2 = strategy.getConnection(ds, "default", "default");
+        c2.close();
+        assertSame(c2, c1);
+        assertEquals(ds.opened.get(), 1);
+        assertEquals(ds.closed.get(), 0);
+        assertEquals(actions.get(), 1);
+
+        // a different datasource in the same transaction gets its own configured connection
+        MockDataSource roDs = new MockDataSource();
+        Connection c3 = strategy.getConnection(roDs, "default", "default");
+        assertNotSame(c3, c1);
+        assertEquals(roDs.opened.get(), 1);
+        assertEquals(actions.get(), 2);
+
+        sync.complete(Status.STATUS_COMMITTED);
+        assertEquals(ds.closed.get(), 1);
+        assertEquals(roDs.closed.get(), 1);
+
+        // next transaction starts with a fresh connection
+        sync.begin();
+        Connection c4 = strategy.getConnection(ds, "default", "default");
+        assertNotSame(c4, c1);
+        assertEquals(ds.opened.get(), 2);
+        assertEquals(actions.get(), 3);
+        sync.complete(Status.STATUS_ROLLEDBACK);
+        assertEquals(ds.closed.get(), 2);
+    }
+
+    @Test(groups = {"jdbc"})
+    public void testNoTransaction() throws Exception {
+        MockTransactionSynchronizationRegistry sync = new MockTransactionSynchronizationRegistry();
+        AtomicInteger actions = new AtomicInteger();
+        TestStrategy strategy = new TestStrategy(sync, (flavor, c) -> actions.incrementAndGet());
+        MockDataSource ds = new MockDataSource();
+
+        // without a transaction, every call gets a new connection which the caller closes
+        Connection c1 = strategy.getConnection(ds, "default", "default");
+        c1.close();
+        Connection c2 = strategy.getConnection(ds, "default", "default");
+        c2.close();
+        assertEquals(ds.opened.get(), 2);
+        assertEquals(ds.closed.get(), 2);
+        assertEquals(actions.get(), 2);
+    }
+
+    @Test(groups = {"jdbc"})
+    public void testActionFailure() throws Exception {
+        MockTransactionSynchronizationRegistry sync = new MockTransactionSynchronizationRegistry();
+        TestStrategy strategy = new TestStrategy(sync, (flavor, c) -> {
+            throw new FHIRPersistenceDBConnectException("test");
+        });
+        MockDataSource ds = new MockDataSource();
+
+        sync.begin();
+        try {
+            strategy.getConnection(ds, "default", "default");
+        } catch (FHIRPersistenceDBConnectException x) {
+            // expected
+        }
+
+        // the connection we failed to configure is closed straight away, and not reused
+        assertEquals(ds.closed.get(), 1);
+        try {
+            strategy.getConnection(ds, "default", "default");
+        } catch (FHIRPersistenceDBConnectException x) {
+            // expected
+        }
+        assertEquals(ds.opened.get(), 2);
+        sync.complete(Status.STATUS_ROLLEDBACK);
+        assertEquals(ds.closed.get(), 2);
+    }
+
+    /**
+     * Exposes the protected getConnection method
+     */
+    private static class TestStrategy extends FHIRDbConnectionStrategyBase {
+
+        public TestStrategy(MockTransactionSynchronizationRegistry sync, Action action) throws Exception {
+            super(sync, action);
+        }
+
+        @Override
+        public Connection getConnection() throws FHIRPersistenceDBConnectException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Connection getConnection(DataSource datasource, String tenantId, String dsId) throws SQLException, FHIRPersistenceException {
+            return super.getConnection(datasource, tenantId, dsId);
+        }
+    }
+
+    /**
+     * Counts the connections opened and closed. Only the methods needed by the
+     * connection strategy are supported.
+     */
+    private static class MockDataSource implements DataSource {
+        final AtomicInteger opened = new AtomicInteger();
+        final AtomicInteger closed = new AtomicInteger();
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            opened.incrementAndGet();
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+                (proxy, method, args) -> {
+                    if ("close".equals(method.getName())) {
+                        closed.incrementAndGet();
+                    }
+                    return null;
+                });
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return getConnection();
+        }
+
+        @Override
+        public java.io.PrintWriter getLogWriter() throws SQLException {
+            return null;
+        }
+
+        @Override
+        public void setLogWriter(java.io.PrintWriter out) throws SQLException {
+        }
+
+        @Override
+        public void setLoginTimeout(int seconds) throws SQLException {
+        }
+
+        @Override
+        public int getLoginTimeout() throws SQLException {
+            return 0;
+        }
+
+        @Override
+        public java.util.logging.Logger getParentLogger() {
+            return null;
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> iface) throws SQLException {
+            return null;
+        }
+
+        @Override
+        public boolean isWrapperFor(Class<?> iface) throws SQLException {
+            return false;
+        }
+    }
+}
@@ -6,6 +6,12 @@
 
 package com.ibm.fhir.persistence.jdbc.test.connection;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.transaction.Status;
 import javax.transaction.Synchronization;
 import javax.transaction.TransactionSynchronizationRegistry;
 
@@ -14,30 +20,74 @@ import com.ibm.fhir.persistence.jdbc.connection.FHIRUserTransactionAdapter;
 
 /**
  * Mock implementation of {@link TransactionSynchronizationRegistry} for testing the {@link FHIRUserTransactionAdapter}
+ * and the connection strategies. There's no transaction until {@link #begin()} is called.
  */
 public class MockTransactionSynchronizationRegistry implements TransactionSynchronizationRegistry {
 
+    // key of the current transaction, or null if there isn't one
+    private Object transactionKey;
+
+    private final Map<Object, Object> resources = new HashMap<>();
+
+    private final List<Synchronization> syncs = new ArrayList<>();
+
+    /**
+     * Start a new (mock) transaction
+     */
+    public void begin() {
+        if (transactionKey != null) {
+            throw new IllegalStateException("Transaction already active");
+        }
+        transactionKey = new Object();
+    }
+
+    /**
+     * End the current (mock) transaction, calling any registered synchronizations
+     * @param status the completion status passed to the synchronizations
+     */
+    public void complete(int status) {
+        if (transactionKey == null) {
+            throw new IllegalStateException("No transaction active");
+        }
+
+        for (Synchronization sync: syncs) {
+            sync.beforeCompletion();
+        }
+        for (Synchronization sync: syncs) {
+            sync.afterCompletion(status);
+        }
+        syncs.clear();
+        resources.clear();
+        transactionKey = null;
+    }
+
     @Override
     public Object getTransactionKey() {
-        return null;
+        return transactionKey;
     }
 
     @Override
     public void putResource(Object key, Object value) {
+        if (transactionKey != null) {
+            resources.put(key, value);
+        }
     }
 
     @Override
     public Object getResource(Object key) {
-        return null;
+        return resources.get(key);
     }
 
     @Override
     public void registerInterposedSynchronization(Synchronization sync) {
+        if (transactionKey != null) {
+            syncs.add(sync);
+        }
     }
 
     @Override
     public int getTransactionStatus() {
-        return 0;
+        return transactionKey != null ? Status.STATUS_ACTIVE : Status.STATUS_NO_TRANSACTION;
     }
 
     @Override
@@ -48,4 +98,4 @@ public class MockTransactionSynchronizationRegistry implements TransactionSynchr
     public boolean getRollbackOnly() {
         return false;
     }
-}
\ No newline at end of file
+}
@@ -7,6 +7,7 @@
 package com.ibm.fhir.persistence.jdbc.test.util;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -149,6 +150,30 @@ public class LocationParmBehaviorUtilTest {
         runTestBoundingBox(expectedBindVariables, expectedSql, boundingBox);
     }
 
+    @Test
+    public void testBoundingBoxSpatialIndex() throws FHIRPersistenceException {
+        // A small box which is covered by a single geohash range
+        BoundingBox boundingBox =
+                BoundingBox.builder().maxLatitude(42.26).minLatitude(42.25).maxLongitude(-83.69).minLongitude(-83.70)
+                        .build();
+
+        StringBuilder actualWhereClauseSegment = new StringBuilder();
+        List<Object> actualBindVariables = new ArrayList<>();
+
+        LocationParmBehaviorUtil util = new LocationParmBehaviorUtil(true);
+        util.buildQueryForBoundingBox(actualWhereClauseSegment, actualBindVariables, boundingBox, JDBCConstants.PARAMETER_TABLE_ALIAS);
+
+        String sql = actualWhereClauseSegment.toString();
+        assertTrue(sql.startsWith("(((pX.GEOHASH_VALUE >= ? AND pX.GEOHASH_VALUE < ?)"));
+        assertTrue(sql.endsWith(" AND (pX.LATITUDE_VALUE >= ? AND pX.LATITUDE_VALUE <= ? AND pX.LONGITUDE_VALUE >= ? AND pX.LONGITUDE_VALUE <= ?))"));
+
+        // every bind marker has a value, and the cell ranges come first
+        assertEquals(actualBindVariables.size(), sql.length() - sql.replace("?", "").length());
+        assertTrue(actualBindVariables.get(0) instanceof String);
+        assertEquals(actualBindVariables.subList(actualBindVariables.size() - 4, actualBindVariables.size()),
+                Arrays.asList(42.25, 42.26, -83.70, -83.69));
+    }
+
     @Test(expectedExceptions = {})
     public void testBoundingRadius() throws FHIRPersistenceException {
         List<Object> expectedBindVariables = new ArrayList<>();
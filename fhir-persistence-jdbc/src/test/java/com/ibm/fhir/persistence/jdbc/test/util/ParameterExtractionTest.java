@@ -64,6 +64,7 @@ import com.ibm.fhir.persistence.jdbc.dto.ReferenceParmVal;
 import com.ibm.fhir.persistence.jdbc.dto.StringParmVal;
 import com.ibm.fhir.persistence.jdbc.dto.TokenParmVal;
 import com.ibm.fhir.persistence.jdbc.util.JDBCParameterBuildingVisitor;
+import com.ibm.fhir.search.util.SearchUtil;
 
 /**
  * Tests all valid combinations of search paramter types and data types
@@ -305,6 +306,17 @@ public class ParameterExtractionTest {
         assertNullValueReturnsNoParameters(uriSearchParam, Uri.builder());
     }
 
+    /**
+     * A UCUM quantity is followed by its copy in the canonical unit (here the same unit) under its own parameter name
+     */
+    private void assertCanonicalCopy(List<ExtractedParameterValue> params) {
+        assertEquals(params.size(), 2, "Number of extracted parameters");
+        QuantityParmVal recordedParam = (QuantityParmVal) params.get(0);
+        QuantityParmVal canonicalParam = (QuantityParmVal) params.get(1);
+        assertEquals(canonicalParam.getName(), SearchUtil.makeCanonicalQuantityParamName(recordedParam.getName()));
+        assertEquals(canonicalParam.getValueCode(), recordedParam.getValueCode());
+    }
+
     private void assertNullValueReturnsNoParameters(SearchParameter sp, Element.Builder builder) {
         JDBCParameterBuildingVisitor parameterBuilder = new JDBCParameterBuildingVisitor(sp);
         builder.extension(SAMPLE_EXTENSION).build().accept(parameterBuilder);
@@ -348,12 +360,20 @@ public class ParameterExtractionTest {
            .build()
            .accept(parameterBuilder);
         List<ExtractedParameterValue> params = parameterBuilder.getResult();
-        assertEquals(params.size(), 1, "Number of extracted parameters");
+        assertEquals(params.size(), 2, "Number of extracted parameters");
         assertTrue(params.get(0) instanceof QuantityParmVal);
         QuantityParmVal quantParam = (QuantityParmVal) params.get(0);
         assertEquals(quantParam.getValueNumber().intValue(), 1);
         assertEquals(quantParam.getValueSystem(), UNITSOFMEASURE);
         assertEquals(quantParam.getValueCode(), "a");
+
+        // the UCUM quantity is also extracted in its canonical unit, under its own parameter name
+        assertTrue(params.get(1) instanceof QuantityParmVal);
+        QuantityParmVal canonicalParam = (QuantityParmVal) params.get(1);
+        assertEquals(canonicalParam.getName(), SearchUtil.makeCanonicalQuantityParamName(quantParam.getName()));
+        assertEquals(canonicalParam.getValueNumber().intValue(), 31557600);
+        assertEquals(canonicalParam.getValueSystem(), UNITSOFMEASURE);
+        assertEquals(canonicalParam.getValueCode(), "s");
     }
 
     @Test
@@ -432,7 +452,7 @@ public class ParameterExtractionTest {
                 .build()
                 .accept(parameterBuilder);
         List<ExtractedParameterValue> params = parameterBuilder.getResult();
-        assertEquals(params.size(), 1, "Number of extracted parameters");
+        assertCanonicalCopy(params);
         assertEquals(((QuantityParmVal) params.get(0)).getValueNumber().intValue(), 1);
         assertEquals(((QuantityParmVal) params.get(0)).getValueSystem(), UNITSOFMEASURE);
         assertEquals(((QuantityParmVal) params.get(0)).getValueCode(), SAMPLE_UNIT);
@@ -559,7 +579,7 @@ public class ParameterExtractionTest {
                 .build()
                 .accept(parameterBuilder);
         List<ExtractedParameterValue> params = parameterBuilder.getResult();
-        assertEquals(params.size(), 1, "Number of extracted parameters");
+        assertCanonicalCopy(params);
         assertEquals(((QuantityParmVal) params.get(0)).getValueNumber().intValue(), 1);
         assertEquals(((QuantityParmVal) params.get(0)).getValueSystem(), UNITSOFMEASURE);
         assertEquals(((QuantityParmVal) params.get(0)).getValueCode(), SAMPLE_UNIT);
@@ -589,7 +609,7 @@ public class ParameterExtractionTest {
                            .build();
         range.accept(parameterBuilder);
         List<ExtractedParameterValue> params = parameterBuilder.getResult();
-        assertEquals(params.size(), 1, "Number of extracted parameters");
+        assertCanonicalCopy(params);
         assertTrue(params.get(0) instanceof QuantityParmVal);
         QuantityParmVal quantParam = (QuantityParmVal) params.get(0);
         assertEquals(quantParam.getValueNumberLow(), BigDecimal.valueOf(1));
@@ -610,7 +630,7 @@ public class ParameterExtractionTest {
                            .build();
         range.accept(parameterBuilder);
         List<ExtractedParameterValue> params = parameterBuilder.getResult();
-        assertEquals(params.size(), 1, "Number of extracted parameters");
+        assertCanonicalCopy(params);
         assertTrue(params.get(0) instanceof QuantityParmVal);
         QuantityParmVal quantParam = (QuantityParmVal) params.get(0);
         assertEquals(quantParam.getValueNumberLow(), BigDecimal.valueOf(1));
@@ -631,7 +651,7 @@ public class ParameterExtractionTest {
                            .build();
         range.accept(parameterBuilder);
         List<ExtractedParameterValue> params = parameterBuilder.getResult();
-        assertEquals(params.size(), 1, "Number of extracted parameters");
+        assertCanonicalCopy(params);
         assertTrue(params.get(0) instanceof QuantityParmVal);
         QuantityParmVal quantParam = (QuantityParmVal) params.get(0);
         assertNull(quantParam.getValueNumberLow());
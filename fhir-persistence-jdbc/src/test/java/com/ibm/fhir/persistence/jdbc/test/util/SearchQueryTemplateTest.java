@@ -0,0 +1,217 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.database.utils.model.DbType;
+import com.ibm.fhir.model.resource.Observation;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
+import com.ibm.fhir.persistence.jdbc.cache.SearchQueryTemplateCacheImpl;
+import com.ibm.fhir.persistence.jdbc.connection.FHIRDbFlavorImpl;
+import com.ibm.fhir.persistence.jdbc.dao.api.ISearchQueryTemplateCache;
+import com.ibm.fhir.persistence.jdbc.dao.api.JDBCIdentityCache;
+import com.ibm.fhir.persistence.jdbc.dao.api.ParameterDAO;
+import com.ibm.fhir.persistence.jdbc.dao.api.ResourceDAO;
+import com.ibm.fhir.persistence.jdbc.util.JDBCQueryBuilder;
+import com.ibm.fhir.persistence.jdbc.util.SearchQueryTemplate;
+import com.ibm.fhir.persistence.jdbc.util.SqlQueryData;
+import com.ibm.fhir.search.context.FHIRSearchContext;
+import com.ibm.fhir.search.util.SearchUtil;
+
+/**
+ * Unit tests for the reuse of the SQL built for searches with the same shape
+ */
+public class SearchQueryTemplateTest {
+
+    private ParameterDAO parameterDao;
+    private ResourceDAO resourceDao;
+    private JDBCIdentityCache identityCache;
+    private ISearchQueryTemplateCache templateCache;
+    private final AtomicInteger templateHits = new AtomicInteger();
+
+    @BeforeMethod
+    public void setUp() {
+        templateHits.set(0);
+        final List<String> names = Arrays.asList("code", "status", "subject", "date", "_lastUpdated", "_id");
+
+        parameterDao = (ParameterDAO) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ParameterDAO.class },
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                case "isDb2Database":
+                    return false;
+                case "readParameterNameId":
+                    return names.indexOf(args[0]) + 1;
+                case "addParameterNamesCacheCandidate":
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+
+        resourceDao = (ResourceDAO) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ResourceDAO.class },
+            (proxy, method, args) -> {
+                if ("getFlavor".equals(method.getName())) {
+                    return new FHIRDbFlavorImpl(DbType.DERBY, false);
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+
+        identityCache = new JDBCIdentityCache() {
+            @Override
+            public Integer getResourceTypeId(String resourceType) throws FHIRPersistenceException {
+                return 1;
+            }
+
+            @Override
+            public Integer getCodeSystemId(String codeSystem) throws FHIRPersistenceException {
+                return 100 + Math.abs(codeSystem.hashCode() % 100);
+            }
+
+            @Override
+            public Integer getParameterNameId(String parameterName) throws FHIRPersistenceException {
+                return names.indexOf(parameterName) + 1;
+            }
+        };
+
+        final SearchQueryTemplateCacheImpl impl = new SearchQueryTemplateCacheImpl();
+        templateCache = new ISearchQueryTemplateCache() {
+            @Override
+            public SearchQueryTemplate getTemplate(String key) {
+                SearchQueryTemplate result = impl.getTemplate(key);
+                if (result != null) {
+                    templateHits.incrementAndGet();
+                }
+                return result;
+            }
+
+            @Override
+            public void putTemplate(String key, SearchQueryTemplate template) {
+                impl.putTemplate(key, template);
+            }
+
+            @Override
+            public void clear() {
+                impl.clear();
+            }
+        };
+    }
+
+    private static FHIRSearchContext context(String... nameValues) throws Exception {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        for (int i = 0; i < nameValues.length; i += 2) {
+            queryParameters.put(nameValues[i], Collections.singletonList(nameValues[i + 1]));
+        }
+        return SearchUtil.parseQueryParameters(Observation.class, queryParameters, false);
+    }
+
+    /**
+     * Build the queries with and without the template cache and check they're the same
+     * @param searchContext
+     * @param expectHit
+     * @return the query built
+     * @throws Exception
+     */
+    private SqlQueryData check(FHIRSearchContext searchContext, boolean expectHit) throws Exception {
+        int hits = templateHits.get();
+        JDBCQueryBuilder cached = new JDBCQueryBuilder(parameterDao, resourceDao, null, identityCache, templateCache);
+        SqlQueryData countQuery = cached.buildCountQuery(Observation.class, searchContext);
+        SqlQueryData query = cached.buildQuery(Observation.class, searchContext);
+        assertEquals(templateHits.get(), expectHit ? hits + 2 : hits);
+
+        JDBCQueryBuilder uncached = new JDBCQueryBuilder(parameterDao, resourceDao, null, identityCache, null);
+        SqlQueryData expectedCountQuery = uncached.buildCountQuery(Observation.class, searchContext);
+        SqlQueryData expectedQuery = uncached.buildQuery(Observation.class, searchContext);
+
+        assertEquals(countQuery.getQueryString(), expectedCountQuery.getQueryString());
+        assertEquals(countQuery.getBindVariables(), expectedCountQuery.getBindVariables());
+        assertEquals(query.getQueryString(), expectedQuery.getQueryString());
+        assertEquals(query.getBindVariables(), expectedQuery.getBindVariables());
+        return query;
+    }
+
+    @Test
+    public void testSameShape() throws Exception {
+        check(context("code", "http://loinc.org|1234-5", "status", "final", "date", "ge2019-01-01", "_lastUpdated", "gt2020-01-01"), false);
+        SqlQueryData query = check(context("code", "http://snomed.info/sct|999", "status", "amended", "date", "ge2018-06-30",
+            "_lastUpdated", "gt2020-02-02"), true);
+        assertTrue(query.getBindVariables().contains("999"));
+        assertTrue(query.getBindVariables().contains("amended"));
+        // the code system id of the token system is bound, not rendered in the SQL
+        assertTrue(query.getBindVariables().contains(identityCache.getCodeSystemId("http://snomed.info/sct")));
+    }
+
+    @Test
+    public void testTokenSystems() throws Exception {
+        check(context("code", "http://loinc.org|1234-5"), false);
+        check(context("code", "http://snomed.info/sct|1234-5"), true);
+        check(context("code", "urn:oid:1.2.3|1234-5"), true);
+
+        // a code without a system is a different shape
+        check(context("code", "1234-5"), false);
+    }
+
+    @Test
+    public void testDifferentShape() throws Exception {
+        check(context("status", "final", "_id", "a"), false);
+        // a different prefix, an extra value or an extra parameter change the shape
+        check(context("status", "final,amended", "_id", "a"), false);
+        check(context("status", "final", "_id", "a,b"), false);
+        check(context("status", "final", "_id", "a", "code", "1234-5"), false);
+        check(context("status", "final", "_id", "b"), true);
+    }
+
+    @Test
+    public void testPaging() throws Exception {
+        check(context("subject", "Patient/1", "_sort", "date", "_count", "10"), false);
+        SqlQueryData query = check(context("subject", "Patient/2", "_sort", "date", "_count", "10", "_page", "3"), true);
+        assertTrue(query.getQueryString().contains(" OFFSET 20 ROWS FETCH NEXT 10 ROWS ONLY"));
+
+        // the target resource type is a literal in the SQL
+        check(context("subject", "Group/2", "_sort", "date", "_count", "10"), false);
+    }
+
+    @Test
+    public void testNotSupported() throws Exception {
+        assertNull(SearchQueryTemplate.key(Observation.class, context("subject:Patient.name", "x"), false));
+        assertNull(SearchQueryTemplate.key(Observation.class, context("code:missing", "true"), false));
+        assertNotNull(SearchQueryTemplate.key(Observation.class, context("code:not", "x"), false));
+    }
+
+    @Test
+    public void testTemplateMismatch() throws Exception {
+        FHIRSearchContext searchContext = context("status", "final");
+        String key = SearchQueryTemplate.key(Observation.class, searchContext, true);
+        List<SearchQueryTemplate.Step> steps = Collections.singletonList(
+            new SearchQueryTemplate.Step(SearchQueryTemplate.shape(searchContext.getSearchParameters().get(0)), "(bogus)"));
+        templateCache.putTemplate(key, new SearchQueryTemplate("SELECT bogus", "", steps));
+
+        // the fragment doesn't match, so the query is built and replaces the template
+        JDBCQueryBuilder cached = new JDBCQueryBuilder(parameterDao, resourceDao, null, identityCache, templateCache);
+        JDBCQueryBuilder uncached = new JDBCQueryBuilder(parameterDao, resourceDao, null, identityCache, null);
+        assertEquals(cached.buildCountQuery(Observation.class, searchContext).getQueryString(),
+            uncached.buildCountQuery(Observation.class, searchContext).getQueryString());
+
+        SqlQueryData countQuery = cached.buildCountQuery(Observation.class, context("status", "amended"));
+        assertEquals(countQuery.getQueryString(), uncached.buildCountQuery(Observation.class, searchContext).getQueryString());
+        assertEquals(countQuery.getBindVariables(), Collections.singletonList("amended"));
+    }
+}
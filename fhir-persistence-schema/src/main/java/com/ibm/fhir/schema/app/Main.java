@@ -25,6 +25,7 @@ import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
@@ -37,17 +38,21 @@ import java.util.stream.Collectors;
 
 import com.ibm.fhir.database.utils.api.DataAccessException;
 import com.ibm.fhir.database.utils.api.DatabaseNotReadyException;
+import com.ibm.fhir.database.utils.api.ICatalogAccess;
 import com.ibm.fhir.database.utils.api.IDatabaseAdapter;
 import com.ibm.fhir.database.utils.api.IDatabaseTranslator;
 import com.ibm.fhir.database.utils.api.ITransaction;
 import com.ibm.fhir.database.utils.api.ITransactionProvider;
+import com.ibm.fhir.database.utils.api.PartitionUnit;
 import com.ibm.fhir.database.utils.api.TenantStatus;
 import com.ibm.fhir.database.utils.common.DataDefinitionUtil;
 import com.ibm.fhir.database.utils.common.JdbcConnectionProvider;
 import com.ibm.fhir.database.utils.common.JdbcPropertyAdapter;
 import com.ibm.fhir.database.utils.common.JdbcTarget;
 import com.ibm.fhir.database.utils.db2.Db2Adapter;
+import com.ibm.fhir.database.utils.db2.Db2CatalogAccess;
 import com.ibm.fhir.database.utils.db2.Db2GetTenantVariable;
+import com.ibm.fhir.database.utils.db2.Db2PartitionControl;
 import com.ibm.fhir.database.utils.db2.Db2SetTenantVariable;
 import com.ibm.fhir.database.utils.db2.Db2Translator;
 import com.ibm.fhir.database.utils.derby.DerbyTranslator;
@@ -57,6 +62,7 @@ import com.ibm.fhir.database.utils.model.PhysicalDataModel;
 import com.ibm.fhir.database.utils.model.Table;
 import com.ibm.fhir.database.utils.model.Tenant;
 import com.ibm.fhir.database.utils.pool.PoolConnectionProvider;
+import com.ibm.fhir.database.utils.postgresql.PostgreSqlCatalogAccess;
 import com.ibm.fhir.database.utils.postgresql.PostgreSqlTranslator;
 import com.ibm.fhir.database.utils.tenant.AddTenantKeyDAO;
 import com.ibm.fhir.database.utils.tenant.GetTenantDAO;
@@ -64,7 +70,9 @@ import com.ibm.fhir.database.utils.transaction.SimpleTransactionProvider;
 import com.ibm.fhir.database.utils.transaction.TransactionFactory;
 import com.ibm.fhir.database.utils.version.CreateVersionHistory;
 import com.ibm.fhir.database.utils.version.VersionHistoryService;
+import com.ibm.fhir.model.type.code.FHIRResourceType;
 import com.ibm.fhir.schema.app.util.TenantKeyFileUtil;
+import com.ibm.fhir.schema.control.BackfillResourceChangeLog;
 import com.ibm.fhir.schema.control.DisableForeignKey;
 import com.ibm.fhir.schema.control.EnableForeignKey;
 import com.ibm.fhir.schema.control.FhirSchemaConstants;
@@ -158,6 +166,11 @@ public class Main {
     private boolean dropDetached;
     private boolean deleteTenantMeta;
 
+    // Range partitioning of the resources tables by LAST_UPDATED
+    private Set<String> partitionedResourceTypes = Collections.emptySet();
+    private boolean rollPartitions;
+    private int futurePartitions = FhirSchemaConstants.DEFAULT_FUTURE_PARTITIONS;
+
     // Tenant Key Output or Input File
     private String tenantKeyFileName;
     private TenantKeyFileUtil tenantKeyFileUtil = new TenantKeyFileUtil();
@@ -216,6 +229,7 @@ public class Main {
     protected void buildCommonModel(PhysicalDataModel pdm, boolean fhirSchema, boolean oauthSchema, boolean javaBatchSchema) {
         if (fhirSchema) {
             FhirSchemaGenerator gen = new FhirSchemaGenerator(schema.getAdminSchemaName(), schema.getSchemaName(), isMultitenant());
+            gen.setPartitionedResourceTypes(partitionedResourceTypes);
             gen.buildSchema(pdm);
             switch (dbType) {
             case DB2:
@@ -354,6 +368,10 @@ public class Main {
         boolean newDb = vhs.getVersion(schema.getSchemaName(), DatabaseObjectType.TABLE.name(), "PARAMETER_NAMES") == null ||
                 vhs.getVersion(schema.getSchemaName(), DatabaseObjectType.TABLE.name(), "PARAMETER_NAMES") == 0;
 
+        // Same check for the change log, which needs to be filled from the existing resources when it is added
+        Integer changeLogVersion = vhs.getVersion(schema.getSchemaName(), DatabaseObjectType.TABLE.name(), FhirSchemaConstants.RESOURCE_CHANGE_LOG);
+        boolean newChangeLog = changeLogVersion == null || changeLogVersion == 0;
+
         applyModel(pdm, adapter, collector, vhs);
         // There is a working data model at this point.
 
@@ -363,9 +381,100 @@ public class Main {
             populateResourceTypeAndParameterNameTableEntries(null);
         }
 
+        // The versions stored before the change log was added are copied into it, so that
+        // type and system level history return them too
+        if (updateFhirSchema && !newDb && newChangeLog) {
+            if (MULTITENANT_FEATURE_ENABLED.contains(dbType)) {
+                for (TenantInfo ti: getTenantList()) {
+                    if (schema.getSchemaName().equalsIgnoreCase(ti.getTenantSchema())) {
+                        backfillResourceChangeLog(ti.getTenantId());
+                    }
+                }
+            } else {
+                backfillResourceChangeLog(null);
+            }
+        }
+
         // Let's refresh the procedures and functions.
         logger.info("Refreshing procedures and functions");
         updateProcedures();
+
+        // Any newly partitioned tables only have the catch-all partition for earlier
+        // data, so we need to add partitions for the current month and beyond
+        if (updateFhirSchema && !partitionedResourceTypes.isEmpty()) {
+            rollPartitions();
+        }
+    }
+
+    /**
+     * Make sure the range-partitioned resources tables have partitions for the current
+     * month and the configured number of future months. Old partitions are never rolled
+     * off, because they hold the current version of any resource which hasn't been
+     * updated since.
+     */
+    protected void rollPartitions() {
+        if (partitionedResourceTypes.isEmpty()) {
+            throw new IllegalArgumentException("[ERROR] No resource types given by --partition-resource-types");
+        }
+
+        try (Connection c = createConnection()) {
+            try {
+                ICatalogAccess catalog;
+                switch (dbType) {
+                case POSTGRESQL:
+                    catalog = new PostgreSqlCatalogAccess(c);
+                    break;
+                case DB2:
+                    if (!isMultitenant()) {
+                        catalog = new Db2CatalogAccess(c);
+                        break;
+                    }
+                    // Multi-tenant tables are partitioned by tenant instead
+                default:
+                    logger.warning("Range partitioning is not supported for db type: " + dbType);
+                    return;
+                }
+
+                Db2PartitionControl control = new Db2PartitionControl(catalog, new Date());
+                for (String resourceType: partitionedResourceTypes) {
+                    final String tableName = resourceType.toUpperCase() + "_RESOURCES";
+                    logger.info("Rolling partitions for " + schema.getSchemaName() + "." + tableName);
+                    control.pushAhead(schema.getSchemaName(), tableName, futurePartitions, PartitionUnit.MONTHS, 0,
+                            FhirSchemaConstants.PARTITION_MAINT_BATCH_SIZE);
+                }
+            } catch (DataAccessException x) {
+                c.rollback();
+                throw x;
+            }
+            c.commit();
+        } catch (SQLException x) {
+            throw translator.translate(x);
+        }
+    }
+
+    /**
+     * Adds the versions of each resource type which are missing from the RESOURCE_CHANGE_LOG
+     * table. Each resource type is copied in its own transaction, to keep them small.
+     *
+     * @param tenantId the mt_id of the tenant whose resources are copied.
+     *                 passing in null signals not multi-tenant.
+     */
+    protected void backfillResourceChangeLog(Integer tenantId) {
+        String logTenantId = tenantId != null ? Integer.toString(tenantId) : "default";
+        logger.info("tenantId [" + logTenantId + "] resource versions are being added to the resource change log.");
+        IDatabaseAdapter adapter = getDbAdapter(dbType, connectionPool);
+        for (FHIRResourceType.ValueSet rt: FHIRResourceType.ValueSet.values()) {
+            try (ITransaction tx = TransactionFactory.openTransaction(connectionPool)) {
+                try {
+                    adapter.runStatement(new BackfillResourceChangeLog(schema.getAdminSchemaName(), schema.getSchemaName(), rt.value(), tenantId));
+                } catch (DataAccessException x) {
+                    // Something went wrong, so mark the transaction as failed
+                    tx.setRollbackOnly();
+                    throw x;
+                }
+            }
+        }
+        logger.info("Finished adding the resource versions to the resource change log");
     }
 
     /**
@@ -1409,6 +1518,24 @@ public class Main {
                     throw new IllegalArgumentException("Missing value for argument at posn: " + i);
                 }
                 break;
+            case "--partition-resource-types":
+                if (++i < args.length) {
+                    // Validate the names so we don't silently skip a misspelled resource type
+                    this.partitionedResourceTypes = Arrays.stream(args[i].split(","))
+                            .map(String::trim)
+                            .map(rt -> FHIRResourceType.ValueSet.from(rt).value())
+                            .collect(Collectors.toSet());
+                } else {
+                    throw new IllegalArgumentException("Missing value for argument at posn: " + i);
+                }
+                break;
+            case "--roll-partitions":
+                this.rollPartitions = true;
+                if (nextIdx < args.length && !args[nextIdx].startsWith("--")) {
+                    this.futurePartitions = Integer.parseInt(args[nextIdx]);
+                    i++;
+                }
+                break;
             case "--delete-tenant-meta":
                 if (++i < args.length) {
                     this.tenantName = args[i];
@@ -1509,6 +1636,8 @@ public class Main {
             freezeTenant();
         } else if (this.dropDetached) {
             dropDetachedPartitionTables();
+        } else if (this.rollPartitions) {
+            rollPartitions();
         } else if (this.deleteTenantMeta) {
             deleteTenantMeta();
         } else if (this.dropTenant) {
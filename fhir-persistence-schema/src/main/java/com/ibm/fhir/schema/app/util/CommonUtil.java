@@ -134,6 +134,13 @@ public final class CommonUtil {
         ps.println("--delete-tenant-meta tenantName");
         ps.println(" * deletes tenant metadata given the tenantName");
 
+        // Range partitioning of the resources tables
+        ps.println("--partition-resource-types Observation,Encounter");
+        ps.println(" * range-partitions the resources tables of the given types by month when they are created");
+
+        ps.println("--roll-partitions [months]");
+        ps.println(" * adds partitions up to the given number of months ahead (default 3) for the '--partition-resource-types'");
+
         ps.println("--list-tenants");
         ps.println(" * fetches list of tenants and current status");
 
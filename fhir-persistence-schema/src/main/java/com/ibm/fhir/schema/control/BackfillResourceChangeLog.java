@@ -0,0 +1,85 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.schema.control;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.database.utils.api.IDatabaseStatement;
+import com.ibm.fhir.database.utils.api.IDatabaseTranslator;
+
+/**
+ * Fills the RESOURCE_CHANGE_LOG table with the versions of one resource type
+ * which were stored before the table was added to the schema. Versions which
+ * are already in the change log are skipped, so the statement can be run again
+ * (or while the server is storing new versions) without adding duplicates.
+ *
+ * @implNote This class supports the multi-tenant schema and the single tenant.
+ */
+public class BackfillResourceChangeLog implements IDatabaseStatement {
+
+    private static final Logger LOGGER = Logger.getLogger(BackfillResourceChangeLog.class.getName());
+    private final String adminSchemaName;
+    private final String schemaName;
+    private final String resourceType;
+    private final Integer tenantId;
+
+    /**
+     * Public constructor
+     * @param adminSchemaName
+     * @param schemaName
+     * @param resourceType the resource type whose versions are added to the change log
+     * @param tenantId the mt_id of the tenant, or null if the schema is not multi-tenant
+     */
+    public BackfillResourceChangeLog(String adminSchemaName, String schemaName, String resourceType, Integer tenantId) {
+        this.adminSchemaName = adminSchemaName;
+        this.schemaName = schemaName;
+        this.resourceType = resourceType;
+        this.tenantId = tenantId;
+    }
+
+    @Override
+    public void run(IDatabaseTranslator translator, Connection c) {
+        final String tablePrefix = schemaName + "." + resourceType;
+        final String mtIdColumn = tenantId != null ? "mt_id, " : "";
+        final String mtIdValue = tenantId != null ? adminSchemaName + ".sv_tenant_id, " : "";
+
+        // The change type is derived the same way as by the add_any_resource procedure
+        final String sql = "INSERT INTO " + schemaName + ".resource_change_log "
+                + "(" + mtIdColumn + "resource_id, resource_type_id, logical_resource_id, change_tstamp, version_id, change_type) "
+                + "SELECT " + mtIdValue + "r.resource_id, rt.resource_type_id, r.logical_resource_id, r.last_updated, r.version_id, "
+                + "       CASE WHEN r.is_deleted = 'Y' THEN 'D' WHEN r.version_id = 1 THEN 'C' ELSE 'U' END "
+                + "  FROM " + tablePrefix + "_resources r, " + schemaName + ".resource_types rt "
+                + " WHERE rt.resource_type = ? "
+                + "   AND NOT EXISTS ("
+                + "       SELECT 1 FROM " + schemaName + ".resource_change_log rcl "
+                + "        WHERE rcl.change_tstamp = r.last_updated "
+                + "          AND rcl.resource_id = r.resource_id)";
+
+        try {
+            // Only if it's multitenant is tenantId not null.
+            if (tenantId != null) {
+                try (Statement s = c.createStatement()) {
+                    s.execute(String.format("SET %s.SV_TENANT_ID = %d", adminSchemaName, tenantId));
+                }
+            }
+
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                ps.setString(1, resourceType);
+                int rows = ps.executeUpdate();
+                if (rows > 0) {
+                    LOGGER.info("Added " + rows + " " + resourceType + " versions to " + schemaName + ".RESOURCE_CHANGE_LOG");
+                }
+            }
+        } catch (SQLException x) {
+            throw translator.translate(x);
+        }
+    }
+}
@@ -21,6 +21,8 @@ import static com.ibm.fhir.schema.control.FhirSchemaConstants.DATE_END;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.DATE_START;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.DATE_VALUE_DROPPED_COLUMN;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.FK;
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.GEOHASH_VALUE;
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.GEOHASH_VALUE_BYTES;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.IDX;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.IS_DELETED;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.ITEM_LOGICAL_ID;
@@ -109,6 +111,9 @@ public class FhirResourceTableGroup {
     // Privileges to be granted to each of the resource tables created by this class
     private final Collection<GroupPrivilege> resourceTablePrivileges;
 
+    // The resource types (upper case) whose resources tables are range-partitioned by LAST_UPDATED
+    private final Set<String> partitionedResourceTypes;
+
     private static final String _LOGICAL_RESOURCES = "_LOGICAL_RESOURCES";
     private static final String _RESOURCES = "_RESOURCES";
 
@@ -135,7 +140,8 @@ public class FhirResourceTableGroup {
      * Public constructor
      */
     public FhirResourceTableGroup(PhysicalDataModel model, String schemaName, boolean multitenant, SessionVariableDef sessionVariable,
-            Set<IDatabaseObject> procedureDependencies, Tablespace fhirTablespace, Collection<GroupPrivilege> privileges) {
+            Set<IDatabaseObject> procedureDependencies, Tablespace fhirTablespace, Collection<GroupPrivilege> privileges,
+            Set<String> partitionedResourceTypes) {
         this.model = model;
         this.schemaName = schemaName;
         this.multitenant = multitenant;
@@ -143,6 +149,7 @@ public class FhirResourceTableGroup {
         this.procedureDependencies = procedureDependencies;
         this.fhirTablespace = fhirTablespace;
         this.resourceTablePrivileges = privileges;
+        this.partitionedResourceTypes = partitionedResourceTypes;
     }
 
     /**
@@ -244,18 +251,23 @@ public class FhirResourceTableGroup {
 
   CREATE UNIQUE INDEX device_resource_prf_in1    ON device_resources (resource_id) INCLUDE (logical_resource_id, version_id, is_deleted);
      * </pre>
+     * If the resource type is configured for partitioning, the table is range-partitioned
+     * by month on last_updated, which then has to be part of the primary key and unique
+     * index.
      * @param group
      * @param prefix
      */
     public void addResources(List<IDatabaseObject> group, String prefix) {
 
         // The index which also used by the database to support the primary key constraint
-        final List<String> prfIndexCols = Arrays.asList(RESOURCE_ID);
+        final boolean partitioned = partitionedResourceTypes.contains(prefix);
+        final List<String> prfIndexCols = partitioned ? Arrays.asList(RESOURCE_ID, LAST_UPDATED) : Arrays.asList(RESOURCE_ID);
         final List<String> prfIncludeCols = Arrays.asList(LOGICAL_RESOURCE_ID, VERSION_ID, IS_DELETED);
         final String tableName = prefix + _RESOURCES;
 
         Table tbl = Table.builder(schemaName, tableName)
                 .setTenantColumnName(MT_ID)
+                .setRangePartitionColumnName(partitioned ? LAST_UPDATED : null)
                 .addTag(FhirSchemaTags.RESOURCE_TYPE, prefix)
                 .addBigIntColumn(        RESOURCE_ID,              false)
                 .addBigIntColumn(LOGICAL_RESOURCE_ID,              false)
@@ -265,7 +277,7 @@ public class FhirResourceTableGroup {
                 .addBlobColumn(                 DATA,  2147483647,  10240,   true)
                 .addUniqueIndex(tableName + "_PRF_IN1", prfIndexCols, prfIncludeCols)
                 .addIndex(IDX + tableName + LOGICAL_RESOURCE_ID, LOGICAL_RESOURCE_ID)
-                .addPrimaryKey(tableName + "_PK", RESOURCE_ID)
+                .addPrimaryKey(tableName + "_PK", prfIndexCols.toArray(new String[0]))
                 .setTablespace(fhirTablespace)
                 .addPrivileges(resourceTablePrivileges)
                 .enableAccessControl(this.sessionVariable)
@@ -652,8 +664,10 @@ ALTER TABLE device_latlng_values ADD CONSTRAINT fk_device_latlng_values_r  FOREI
                 .addDoubleColumn(     LATITUDE_VALUE,       true)
                 .addDoubleColumn(    LONGITUDE_VALUE,       true)
                 .addBigIntColumn(LOGICAL_RESOURCE_ID,      false)
+                .addVarcharColumn(     GEOHASH_VALUE, GEOHASH_VALUE_BYTES, true) // new column for V0007
                 .addIndex(IDX + tableName + "_PNNLV", PARAMETER_NAME_ID, LATITUDE_VALUE, LOGICAL_RESOURCE_ID)
                 .addIndex(IDX + tableName + "_PNNHV", PARAMETER_NAME_ID, LONGITUDE_VALUE, LOGICAL_RESOURCE_ID)
+                .addIndex(IDX + tableName + "_PNGH", PARAMETER_NAME_ID, GEOHASH_VALUE, LOGICAL_RESOURCE_ID)
                 .addIndex(IDX + tableName + "_RPLAT", LOGICAL_RESOURCE_ID, PARAMETER_NAME_ID, LATITUDE_VALUE)
                 .addIndex(IDX + tableName + "_RPLNG", LOGICAL_RESOURCE_ID, PARAMETER_NAME_ID, LONGITUDE_VALUE)
                 .addPrimaryKey(PK + tableName, ROW_ID)
@@ -663,6 +677,30 @@ ALTER TABLE device_latlng_values ADD CONSTRAINT fk_device_latlng_values_r  FOREI
                 .setTablespace(fhirTablespace)
                 .addPrivileges(resourceTablePrivileges)
                 .enableAccessControl(this.sessionVariable)
+                .setVersion(FhirSchemaVersion.V0007.vid())
+                .addMigration(priorVersion -> {
+                    List<IDatabaseStatement> statements = new ArrayList<>();
+                    if (priorVersion < FhirSchemaVersion.V0007.vid()) {
+                        // Add the geohash cell id column and its index. Existing rows are populated by reindex
+                        List<ColumnBase> columns = new ColumnDefBuilder()
+                                .addVarcharColumn(GEOHASH_VALUE, GEOHASH_VALUE_BYTES, true)
+                                .buildColumns();
+                        statements.add(new AddColumn(schemaName, tableName, columns.get(0)));
+
+                        CreateIndex geohashIdx = CreateIndex.builder()
+                                .setSchemaName(schemaName)
+                                .setTableName(tableName)
+                                .setTenantColumnName(this.multitenant ? MT_ID : null)
+                                .setIndexName(IDX + tableName + "_PNGH")
+                                .setVersion(FhirSchemaVersion.V0007.vid())
+                                .addColumn(PARAMETER_NAME_ID)
+                                .addColumn(GEOHASH_VALUE)
+                                .addColumn(LOGICAL_RESOURCE_ID)
+                                .build();
+                        statements.add(geohashIdx.createStatement());
+                    }
+                    return statements;
+                })
                 .build(model)
                 ;
 
@@ -18,6 +18,12 @@ public class FhirSchemaConstants {
     // Standard connection/thread pool size
     public static final int DEFAULT_POOL_SIZE = 1;
 
+    // Number of future monthly partitions maintained for range-partitioned resources tables
+    public static final int DEFAULT_FUTURE_PARTITIONS = 3;
+
+    // Number of partition maintenance operations per commit
+    public static final int PARTITION_MAINT_BATCH_SIZE = 12;
+
     // Size of string columns in the search tables. DSTU2 was 511
     public static final int MAX_SEARCH_STRING_BYTES = 1024;
     public static final int MAX_TOKEN_VALUE_BYTES = 1024;
@@ -110,6 +116,8 @@ public class FhirSchemaConstants {
     public static final String NUMBER_VALUE_HIGH = "NUMBER_VALUE_HIGH";
     public static final String LATITUDE_VALUE = "LATITUDE_VALUE";
     public static final String LONGITUDE_VALUE = "LONGITUDE_VALUE";
+    public static final String GEOHASH_VALUE = "GEOHASH_VALUE";
+    public static final int GEOHASH_VALUE_BYTES = 12;
 
     public static final String QUANTITY_VALUE = "QUANTITY_VALUE";
     public static final String QUANTITY_VALUE_LOW = "QUANTITY_VALUE_LOW";
@@ -157,4 +165,13 @@ public class FhirSchemaConstants {
     public static final String LOGICAL_RESOURCE_COMPARTMENTS = "LOGICAL_RESOURCE_COMPARTMENTS";
     public static final String COMPARTMENT_LOGICAL_RESOURCE_ID = "COMPARTMENT_LOGICAL_RESOURCE_ID";
     public static final String COMPARTMENT_NAME_ID = "COMPARTMENT_NAME_ID";
-}
\ No newline at end of file
+
+    // For V0008 the membership of each resource in the compartments, keyed by the compartment logical id
+    public static final String COMPARTMENT_MEMBERSHIPS = "COMPARTMENT_MEMBERSHIPS";
+    public static final String COMPARTMENT_LOGICAL_ID = "COMPARTMENT_LOGICAL_ID";
+
+    // For V0009 the log of the resource versions in the order they were stored, for type and system level history
+    public static final String RESOURCE_CHANGE_LOG = "RESOURCE_CHANGE_LOG";
+    public static final String CHANGE_TSTAMP = "CHANGE_TSTAMP";
+    public static final String CHANGE_TYPE = "CHANGE_TYPE";
+}
@@ -7,11 +7,15 @@
 package com.ibm.fhir.schema.control;
 
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.CODE_SYSTEMS;
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.CHANGE_TSTAMP;
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.CHANGE_TYPE;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.CODE_SYSTEM_ID;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.CODE_SYSTEM_NAME;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.COMMON_TOKEN_VALUES;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.COMMON_TOKEN_VALUE_ID;
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.COMPARTMENT_LOGICAL_ID;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.COMPARTMENT_LOGICAL_RESOURCE_ID;
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.COMPARTMENT_MEMBERSHIPS;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.COMPARTMENT_NAME_ID;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.DATE_END;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.DATE_START;
@@ -36,6 +40,8 @@ import static com.ibm.fhir.schema.control.FhirSchemaConstants.PARAMETER_NAME_ID;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.REF_VERSION_ID;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.REINDEX_TSTAMP;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.REINDEX_TXID;
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.RESOURCE_CHANGE_LOG;
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.RESOURCE_ID;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.RESOURCE_TOKEN_REFS;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.RESOURCE_TYPE;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.RESOURCE_TYPES;
@@ -53,9 +59,11 @@ import static com.ibm.fhir.schema.control.FhirSchemaConstants.TENANT_SEQUENCE;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.TENANT_STATUS;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.TOKEN_VALUE;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.TOKEN_VALUES;
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.VERSION_ID;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -135,6 +143,9 @@ public class FhirSchemaGenerator {
     // The resource types to generate schema for
     private final Set<String> resourceTypes;
 
+    // The resource types (upper case) whose resources tables are range-partitioned by LAST_UPDATED
+    private Set<String> partitionedResourceTypes = Collections.emptySet();
+
     // The common sequence used for allocated resource ids
     private Sequence fhirSequence;
 
@@ -217,6 +228,19 @@ public class FhirSchemaGenerator {
         this.resourceTypes = resourceTypes;
     }
 
+    /**
+     * Range-partition the resources table of each of the given resource types by month on
+     * LAST_UPDATED. Partitioning is applied only when the table is first created, and the
+     * future partitions are maintained by Db2PartitionControl (see the --roll-partitions
+     * option of the schema tool). The parameter tables don't carry a timestamp and hold
+     * only the current version of each resource, so they are not partitioned.
+     *
+     * @param resourceTypes
+     */
+    public void setPartitionedResourceTypes(Set<String> resourceTypes) {
+        this.partitionedResourceTypes = resourceTypes.stream().map(String::toUpperCase).collect(Collectors.toSet());
+    }
+
     /**
      * Build the admin part of the schema. One admin schema can support multiple FHIRDATA
      * schemas. It is also possible to have multiple admin schemas (on a dev system,
@@ -357,6 +381,8 @@ public class FhirSchemaGenerator {
         addLogicalResources(model); // for system-level parameter search
         addReferencesSequence(model);
         addLogicalResourceCompartments(model);
+        addCompartmentMemberships(model); // for compartment searches
+        addResourceChangeLog(model); // for type and system level history
 
         Table globalTokenValues = addResourceTokenValues(model); // for system-level _tag and _security parameters
         Table globalStrValues = addResourceStrValues(model); // for system-level _profile parameters
@@ -410,7 +436,7 @@ public class FhirSchemaGenerator {
 
         pd = model.addProcedure(this.schemaName,
                 ADD_ANY_RESOURCE,
-                FhirSchemaVersion.V0001.vid(),
+                FhirSchemaVersion.V0009.vid(),
                 () -> SchemaGeneratorUtil.readTemplate(adminSchemaName, schemaName, ROOT_DIR + ADD_ANY_RESOURCE.toLowerCase() + ".sql", null),
                 Arrays.asList(fhirSequence, resourceTypesTable, allTablesComplete),
                 procedurePrivileges);
@@ -447,7 +473,7 @@ public class FhirSchemaGenerator {
 
         fd = model.addFunction(this.schemaName,
                 ADD_ANY_RESOURCE,
-                FhirSchemaVersion.V0001.vid(),
+                FhirSchemaVersion.V0009.vid(),
                 () -> SchemaGeneratorUtil.readTemplate(adminSchemaName, schemaName, ROOT_DIR + ADD_ANY_RESOURCE.toLowerCase()
                         + ".sql", null),
                 Arrays.asList(fhirSequence, resourceTypesTable, allTablesComplete), procedurePrivileges);
@@ -547,6 +573,104 @@ public class FhirSchemaGenerator {
         return tbl;
     }
 
+    /**
+     * Adds the system level compartment_memberships table which records the compartments
+     * each resource belongs to, keyed by the logical id of the compartment resource (e.g.
+     * the id of the Patient). Unlike logical_resource_compartments, the compartment
+     * resource doesn't need to exist, so the rows can be written from the references
+     * extracted from the resource. A compartment search is then a range scan of the
+     * unique index for a given compartment and resource type.
+     * <pre>
+CREATE TABLE compartment_memberships (
+  compartment_name_id       INT NOT NULL,
+  compartment_logical_id    VARCHAR(255) NOT NULL,
+  resource_type_id          INT NOT NULL,
+  logical_resource_id    BIGINT NOT NULL
+);
+CREATE UNIQUE INDEX idx_compartment_memberships_nmlirt ON compartment_memberships(compartment_name_id, compartment_logical_id, resource_type_id, logical_resource_id);
+CREATE INDEX idx_compartment_memberships_lr ON compartment_memberships(logical_resource_id);
+     * </pre>
+     * @param pdm
+     * @return Table the table that was added to the PhysicalDataModel
+     */
+    public Table addCompartmentMemberships(PhysicalDataModel pdm) {
+        final String tableName = COMPARTMENT_MEMBERSHIPS;
+
+        Table tbl = Table.builder(schemaName, tableName)
+                .setVersion(FhirSchemaVersion.V0008.vid())
+                .setTenantColumnName(MT_ID)
+                .addIntColumn(        COMPARTMENT_NAME_ID,                   false)
+                .addVarcharColumn( COMPARTMENT_LOGICAL_ID, LOGICAL_ID_BYTES, false)
+                .addIntColumn(           RESOURCE_TYPE_ID,                   false)
+                .addBigIntColumn(     LOGICAL_RESOURCE_ID,                   false)
+                .addUniqueIndex(IDX + tableName + "_NMLIRT", COMPARTMENT_NAME_ID, COMPARTMENT_LOGICAL_ID, RESOURCE_TYPE_ID, LOGICAL_RESOURCE_ID)
+                .addIndex(IDX + tableName + "_LR", LOGICAL_RESOURCE_ID)
+                .addForeignKeyConstraint(FK + tableName + "_LR", schemaName, LOGICAL_RESOURCES, LOGICAL_RESOURCE_ID)
+                .addForeignKeyConstraint(FK + tableName + "_RT", schemaName, RESOURCE_TYPES, RESOURCE_TYPE_ID)
+                .setTablespace(fhirTablespace)
+                .addPrivileges(resourceTablePrivileges)
+                .enableAccessControl(this.sessionVariable)
+                .build(pdm);
+
+        // TODO should not need to add as a table and an object. Get the table to add itself?
+        tbl.addTag(SCHEMA_GROUP_TAG, FHIRDATA_GROUP);
+        this.procedureDependencies.add(tbl); // the add_any_resource procedure deletes from this table
+        pdm.addTable(tbl);
+        pdm.addObject(tbl);
+
+        return tbl;
+    }
+
+    /**
+     * Adds the system level resource_change_log table which records each resource version
+     * in the order it was stored. The type and system level history interactions page
+     * through the change log with a keyset (CHANGE_TSTAMP, RESOURCE_ID) instead of counting
+     * and sorting the resources, so reading the next page of changes is a range scan of
+     * one of the two indexes.
+     * <pre>
+CREATE TABLE resource_change_log (
+  resource_id              BIGINT NOT NULL,
+  resource_type_id            INT NOT NULL,
+  logical_resource_id      BIGINT NOT NULL,
+  change_tstamp         TIMESTAMP NOT NULL,
+  version_id                  INT NOT NULL,
+  change_type             CHAR(1) NOT NULL
+);
+CREATE UNIQUE INDEX idx_resource_change_log_ctri ON resource_change_log(change_tstamp, resource_id);
+CREATE INDEX idx_resource_change_log_rtctri ON resource_change_log(resource_type_id, change_tstamp, resource_id);
+     * </pre>
+     * change_type is 'C' for a create, 'U' for an update and 'D' for a delete.
+     * @param pdm
+     * @return Table the table that was added to the PhysicalDataModel
+     */
+    public Table addResourceChangeLog(PhysicalDataModel pdm) {
+        final String tableName = RESOURCE_CHANGE_LOG;
+
+        Table tbl = Table.builder(schemaName, tableName)
+                .setVersion(FhirSchemaVersion.V0009.vid())
+                .setTenantColumnName(MT_ID)
+                .addBigIntColumn(         RESOURCE_ID,    false)
+                .addIntColumn(       RESOURCE_TYPE_ID,    false)
+                .addBigIntColumn( LOGICAL_RESOURCE_ID,    false)
+                .addTimestampColumn(    CHANGE_TSTAMP,    false)
+                .addIntColumn(             VERSION_ID,    false)
+                .addCharColumn(           CHANGE_TYPE, 1, false)
+                .addUniqueIndex(IDX + tableName + "_CTRI", CHANGE_TSTAMP, RESOURCE_ID)
+                .addIndex(IDX + tableName + "_RTCTRI", RESOURCE_TYPE_ID, CHANGE_TSTAMP, RESOURCE_ID)
+                .addForeignKeyConstraint(FK + tableName + "_RT", schemaName, RESOURCE_TYPES, RESOURCE_TYPE_ID)
+                .setTablespace(fhirTablespace)
+                .addPrivileges(resourceTablePrivileges)
+                .enableAccessControl(this.sessionVariable)
+                .build(pdm);
+
+        tbl.addTag(SCHEMA_GROUP_TAG, FHIRDATA_GROUP);
+        this.procedureDependencies.add(tbl); // the add_any_resource procedure inserts into this table
+        pdm.addTable(tbl);
+        pdm.addObject(tbl);
+
+        return tbl;
+    }
+
     /**
      * Adds the system level logical_resource_compartments table which identifies to
      * which compartments a give resource belongs. A resource may belong to many
@@ -714,7 +838,8 @@ public class FhirSchemaGenerator {
 
         // The sessionVariable is used to enable access control on every table, so we
         // provide it as a dependency
-        FhirResourceTableGroup frg = new FhirResourceTableGroup(model, this.schemaName, this.multitenant, sessionVariable, this.procedureDependencies, this.fhirTablespace, this.resourceTablePrivileges);
+        FhirResourceTableGroup frg = new FhirResourceTableGroup(model, this.schemaName, this.multitenant, sessionVariable, this.procedureDependencies, this.fhirTablespace, this.resourceTablePrivileges,
+                this.partitionedResourceTypes);
         for (String resourceType: this.resourceTypes) {
             ObjectGroup group = frg.addResourceType(resourceType);
             group.addTag(SCHEMA_GROUP_TAG, FHIRDATA_GROUP);
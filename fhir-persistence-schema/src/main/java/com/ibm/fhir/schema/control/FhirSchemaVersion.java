@@ -21,6 +21,9 @@ public enum FhirSchemaVersion {
     ,V0004(4, "row_id sequence cache 20 to 1000")
     ,V0005(5, "issue-1331 add index for resource.last_updated")
     ,V0006(6, "issue-1366 normalized schema for storing resource references")
+    ,V0007(7, "geohash cell ids for location near searches")
+    ,V0008(8, "compartment membership table for compartment searches")
+    ,V0009(9, "resource change log for type and system level history")
     ;
     
     // The version number recorded in the VERSION_HISTORY
@@ -163,6 +163,8 @@ BEGIN
       EXECUTE stmt USING v_logical_resource_id;
       PREPARE stmt FROM 'DELETE FROM ' || v_schema_name || '.' || p_resource_type || '_quantity_values     WHERE logical_resource_id = ?';
       EXECUTE stmt USING v_logical_resource_id;
+      PREPARE stmt FROM 'DELETE FROM ' || v_schema_name || '.compartment_memberships WHERE logical_resource_id = ?';
+      EXECUTE stmt USING v_logical_resource_id;
     END IF;
 
   END IF;
@@ -184,6 +186,13 @@ BEGIN
       || ' VALUES ( ?, ?, ?, ?, ?, ?, ?)';
   EXECUTE stmt USING {{ADMIN_SCHEMA_NAME}}.sv_tenant_id, v_resource_id, v_logical_resource_id, v_insert_version, p_payload, p_last_updated, p_is_deleted;
 
+  -- Record the new version in the change log read by type and system level history
+  PREPARE stmt FROM
+         'INSERT INTO ' || v_schema_name || '.resource_change_log (mt_id, resource_id, resource_type_id, logical_resource_id, change_tstamp, version_id, change_type) '
+      || ' VALUES ( ?, ?, ?, ?, ?, ?, ?)';
+  EXECUTE stmt USING {{ADMIN_SCHEMA_NAME}}.sv_tenant_id, v_resource_id, v_resource_type_id, v_logical_resource_id, p_last_updated, v_insert_version,
+    CASE WHEN p_is_deleted = 'Y' THEN 'D' WHEN v_insert_version = 1 THEN 'C' ELSE 'U' END;
+
   IF p_version IS NULL OR p_version > v_version
   THEN
     -- only update the logical resource if the resource we are adding supercedes the
@@ -143,6 +143,8 @@ BEGIN
         USING v_logical_resource_id;
       EXECUTE 'DELETE FROM ' || v_schema_name || '.' || p_resource_type || '_quantity_values     WHERE logical_resource_id = $1'
         USING v_logical_resource_id;
+      EXECUTE 'DELETE FROM ' || v_schema_name || '.compartment_memberships WHERE logical_resource_id = $1'
+        USING v_logical_resource_id;
     END IF;
 
   END IF;
@@ -164,6 +166,11 @@ BEGIN
       || ' VALUES ($1, $2, $3, $4, $5, $6)'
     USING v_resource_id, v_logical_resource_id, v_insert_version, p_payload, p_last_updated, p_is_deleted;
 
+  -- Record the new version in the change log read by type and system level history
+  INSERT INTO {{SCHEMA_NAME}}.resource_change_log (resource_id, resource_type_id, logical_resource_id, change_tstamp, version_id, change_type)
+       VALUES (v_resource_id, v_resource_type_id, v_logical_resource_id, p_last_updated, v_insert_version,
+               CASE WHEN p_is_deleted = 'Y' THEN 'D' WHEN v_insert_version = 1 THEN 'C' ELSE 'U' END);
+
   IF p_version IS NULL OR p_version > v_version
   THEN
     -- only update the logical resource if the resource we are adding supercedes the
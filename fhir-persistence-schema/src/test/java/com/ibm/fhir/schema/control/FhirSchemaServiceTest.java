@@ -6,7 +6,13 @@
 
 package com.ibm.fhir.schema.control;
 
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -15,12 +21,17 @@ import java.util.logging.Logger;
 
 import org.testng.annotations.Test;
 
+import com.ibm.fhir.database.utils.api.IDatabaseStatement;
+import com.ibm.fhir.database.utils.api.IDatabaseSupplier;
+import com.ibm.fhir.database.utils.api.IDatabaseTarget;
+import com.ibm.fhir.database.utils.api.IDatabaseTranslator;
 import com.ibm.fhir.database.utils.common.PrintTarget;
 import com.ibm.fhir.database.utils.db2.Db2Adapter;
 import com.ibm.fhir.database.utils.db2.Db2Translator;
 import com.ibm.fhir.database.utils.derby.DerbyAdapter;
 import com.ibm.fhir.database.utils.model.PhysicalDataModel;
 import com.ibm.fhir.database.utils.model.Table;
+import com.ibm.fhir.database.utils.postgresql.PostgreSqlAdapter;
 import com.ibm.fhir.database.utils.version.CreateVersionHistory;
 import com.ibm.fhir.schema.control.FhirSchemaConstants;
 import com.ibm.fhir.schema.control.FhirSchemaGenerator;
@@ -97,6 +108,50 @@ public class FhirSchemaServiceTest {
         model.apply(adapter);
     }
 
+    @Test
+    public void testPostgreSqlRangePartitioning() {
+        FhirSchemaGenerator gen = new FhirSchemaGenerator(ADMIN_SCHEMA_NAME, SCHEMA_NAME, false);
+        gen.setPartitionedResourceTypes(Collections.singleton("Observation"));
+        PhysicalDataModel model = new PhysicalDataModel();
+        gen.buildSchema(model);
+
+        // The partitioning column has to be part of the primary key
+        Table observations = model.findTable(SCHEMA_NAME, "OBSERVATION_RESOURCES");
+        assertEquals(observations.getRangePartitionColumnName(), "LAST_UPDATED");
+        assertEquals(observations.getPrimaryKey().getColumns(), Arrays.asList("RESOURCE_ID", "LAST_UPDATED"));
+        assertNull(model.findTable(SCHEMA_NAME, "PATIENT_RESOURCES").getRangePartitionColumnName());
+        assertNull(model.findTable(SCHEMA_NAME, "OBSERVATION_TOKEN_VALUES").getRangePartitionColumnName());
+
+        // Capture the statements instead of executing them against a database
+        List<String> statements = new ArrayList<>();
+        PrintTarget tgt = new PrintTarget(new IDatabaseTarget() {
+            @Override
+            public void runStatement(IDatabaseTranslator translator, String ddl) {
+                statements.add(ddl);
+            }
+
+            @Override
+            public void runStatementWithInt(IDatabaseTranslator translator, String sql, int value) {
+                statements.add(sql);
+            }
+
+            @Override
+            public void runStatement(IDatabaseTranslator translator, IDatabaseStatement statement) {
+                // NOP
+            }
+
+            @Override
+            public <T> T runStatement(IDatabaseTranslator translator, IDatabaseSupplier<T> supplier) {
+                return null;
+            }
+        }, logger.isLoggable(Level.FINE));
+
+        observations.apply(new PostgreSqlAdapter(tgt));
+        assertTrue(statements.get(0).endsWith(" PARTITION BY RANGE (LAST_UPDATED)"));
+        assertTrue(statements.get(1).contains(" PARTITION OF PTNG.OBSERVATION_RESOURCES FOR VALUES FROM (MINVALUE) TO ('"));
+        assertTrue(statements.get(2).endsWith(" PARTITION OF PTNG.OBSERVATION_RESOURCES DEFAULT"));
+    }
+
     @Test
     public void testTenantPartitioning() {
 
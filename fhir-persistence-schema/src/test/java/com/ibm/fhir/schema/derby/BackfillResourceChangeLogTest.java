@@ -0,0 +1,114 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.schema.derby;
+
+import static org.testng.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.database.utils.derby.DerbyMaster;
+import com.ibm.fhir.database.utils.derby.DerbyTranslator;
+import com.ibm.fhir.schema.control.BackfillResourceChangeLog;
+
+/**
+ * Unit test for the backfill of the RESOURCE_CHANGE_LOG table
+ */
+public class BackfillResourceChangeLogTest {
+    private static final String DB_NAME = "target/derby/backfillDB";
+    private static final String SCHEMA_NAME = "FHIRDATA";
+    private static final String ADMIN_SCHEMA_NAME = "FHIR_ADMIN";
+
+    @Test
+    public void testBackfill() throws Exception {
+        DerbyMaster.dropDatabase(DB_NAME);
+        try (DerbyFhirDatabase db = new DerbyFhirDatabase(DB_NAME)) {
+            try (Connection c = db.getConnection()) {
+                try {
+                    // Three versions of a Patient stored without a change log entry, as they
+                    // would have been before the change log was added
+                    addPatient(c, 1001L, "backfill-1");
+                    addVersion(c, 2001L, 1001L, 1, "N", Timestamp.valueOf("2020-06-01 10:00:00"));
+                    addVersion(c, 2002L, 1001L, 2, "N", Timestamp.valueOf("2020-06-01 11:00:00"));
+                    addVersion(c, 2003L, 1001L, 3, "Y", Timestamp.valueOf("2020-06-01 12:00:00"));
+
+                    DerbyTranslator translator = new DerbyTranslator();
+                    new BackfillResourceChangeLog(ADMIN_SCHEMA_NAME, SCHEMA_NAME, "Patient", null).run(translator, c);
+                    assertEquals(getChanges(c), expectedChanges());
+
+                    // A second run must not add the versions again
+                    new BackfillResourceChangeLog(ADMIN_SCHEMA_NAME, SCHEMA_NAME, "Patient", null).run(translator, c);
+                    assertEquals(getChanges(c), expectedChanges());
+                    c.commit();
+                } catch (Throwable t) {
+                    c.rollback();
+                    throw t;
+                }
+            }
+        }
+    }
+
+    private List<String> expectedChanges() {
+        List<String> result = new ArrayList<>();
+        result.add("2001/1001/1/C");
+        result.add("2002/1001/2/U");
+        result.add("2003/1001/3/D");
+        return result;
+    }
+
+    private void addPatient(Connection c, long logicalResourceId, String logicalId) throws SQLException {
+        final String sql1 = "INSERT INTO " + SCHEMA_NAME + ".logical_resources (logical_resource_id, resource_type_id, logical_id) "
+                + "SELECT ?, resource_type_id, ? FROM " + SCHEMA_NAME + ".resource_types WHERE resource_type = 'Patient'";
+        try (PreparedStatement ps = c.prepareStatement(sql1)) {
+            ps.setLong(1, logicalResourceId);
+            ps.setString(2, logicalId);
+            ps.executeUpdate();
+        }
+
+        final String sql2 = "INSERT INTO " + SCHEMA_NAME + ".patient_logical_resources (logical_resource_id, logical_id) VALUES (?, ?)";
+        try (PreparedStatement ps = c.prepareStatement(sql2)) {
+            ps.setLong(1, logicalResourceId);
+            ps.setString(2, logicalId);
+            ps.executeUpdate();
+        }
+    }
+
+    private void addVersion(Connection c, long resourceId, long logicalResourceId, int versionId, String isDeleted,
+        Timestamp lastUpdated) throws SQLException {
+        final String sql = "INSERT INTO " + SCHEMA_NAME + ".patient_resources (resource_id, logical_resource_id, version_id, last_updated, is_deleted) "
+                + "VALUES (?, ?, ?, ?, ?)";
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setLong(1, resourceId);
+            ps.setLong(2, logicalResourceId);
+            ps.setInt(3, versionId);
+            ps.setTimestamp(4, lastUpdated);
+            ps.setString(5, isDeleted);
+            ps.executeUpdate();
+        }
+    }
+
+    private List<String> getChanges(Connection c) throws SQLException {
+        final String sql = "SELECT resource_id, logical_resource_id, version_id, change_type "
+                + "  FROM " + SCHEMA_NAME + ".resource_change_log ORDER BY change_tstamp, resource_id";
+        List<String> result = new ArrayList<>();
+        try (Statement s = c.createStatement()) {
+            ResultSet rs = s.executeQuery(sql);
+            while (rs.next()) {
+                result.add(rs.getLong(1) + "/" + rs.getLong(2) + "/" + rs.getInt(3) + "/" + rs.getString(4));
+            }
+        }
+        return result;
+    }
+}
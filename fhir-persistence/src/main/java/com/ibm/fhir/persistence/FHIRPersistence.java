@@ -6,13 +6,24 @@
 
 package com.ibm.fhir.persistence;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.generator.FHIRGenerator;
+import com.ibm.fhir.model.generator.exception.FHIRGeneratorException;
 import com.ibm.fhir.model.resource.OperationOutcome;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceNotSupportedException;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceResourceDeletedException;
+import com.ibm.fhir.persistence.util.FHIRPersistenceUtil;
 
 /**
  * This interface defines the contract between the FHIR Server's REST API layer and the underlying
@@ -45,6 +56,39 @@ public interface FHIRPersistence {
     <T extends Resource> SingleResourceResult<T> read(FHIRPersistenceContext context, Class<T> resourceType, String logicalId)
             throws FHIRPersistenceException;
 
+    /**
+     * Retrieves the most recent version of several FHIR Resources of the same type from the datastore.
+     *
+     * <p>Logical ids which do not exist are skipped, as are deleted resources unless
+     * FHIRPersistenceContext.includeDeleted() is set. The default implementation reads each resource
+     * in turn; implementations should override it to fetch all of the resources in a single round trip.
+     *
+     * @param context the FHIRPersistenceContext instance associated with the current request
+     * @param resourceType the resource type of the Resource instances to be retrieved
+     * @param logicalIds the logical ids of the Resource instances to be retrieved
+     * @return a MultiResourceResult with the FHIR Resources that were retrieved from the datastore, in no particular order, and/or
+     *         an OperationOutcome with hints, warnings, or errors related to the interaction
+     * @throws FHIRPersistenceException
+     */
+    default <T extends Resource> MultiResourceResult<T> readMany(FHIRPersistenceContext context, Class<T> resourceType, Collection<String> logicalIds)
+            throws FHIRPersistenceException {
+        List<T> resources = new ArrayList<>();
+        for (String logicalId : logicalIds) {
+            try {
+                T resource = read(context, resourceType, logicalId).getResource();
+                if (resource != null) {
+                    resources.add(resource);
+                }
+            } catch (FHIRPersistenceResourceDeletedException e) {
+                // deleted resources are skipped
+            }
+        }
+        return new MultiResourceResult.Builder<T>()
+                .success(true)
+                .resource(resources)
+                .build();
+    }
+
     /**
      * Retrieves a specific version of a FHIR Resource from the datastore.
      *
@@ -97,6 +141,34 @@ public interface FHIRPersistence {
      */
     <T extends Resource> MultiResourceResult<T> history(FHIRPersistenceContext context, Class<T> resourceType, String logicalId) throws FHIRPersistenceException;
 
+    /**
+     * Retrieves a page of the versions of all the FHIR Resources of a type (or of all types) in the order
+     * they were stored, oldest first. This is the change feed behind the type and system level history
+     * interactions.
+     *
+     * <p>Unlike {@link #history(FHIRPersistenceContext, Class, String)}, the total isn't counted and
+     * pages aren't numbered: the page starts after the position given by
+     * {@link com.ibm.fhir.persistence.context.FHIRHistoryContext#getCursor()} (or at _since), and the
+     * implementation sets {@link com.ibm.fhir.persistence.context.FHIRHistoryContext#setNextCursor(String)}
+     * to the position of the last change in the page, so the next page can be read now or later.
+     *
+     * @param context the FHIRPersistenceContext instance associated with the current request
+     * @param resourceType the resource type of the changes to retrieve, or Resource.class for all types
+     * @return a MultiResourceResult with the versions in the page, in the order they were stored, and/or
+     *         an OperationOutcome with hints, warnings, or errors related to the interaction
+     * @throws FHIRPersistenceException
+     */
+    default <T extends Resource> MultiResourceResult<T> changes(FHIRPersistenceContext context, Class<T> resourceType) throws FHIRPersistenceException {
+        throw new FHIRPersistenceNotSupportedException("The persistence layer does not support type or system level history");
+    }
+
+    /**
+     * Returns true iff the persistence layer implementation supports {@link #changes(FHIRPersistenceContext, Class)}
+     */
+    default boolean isChangesSupported() {
+        return false;
+    }
+
     /**
      * Performs a search on the specified target resource type using the specified search parameters.
      *
@@ -108,6 +180,103 @@ public interface FHIRPersistence {
      */
     MultiResourceResult<Resource> search(FHIRPersistenceContext context, Class<? extends Resource> resourceType) throws FHIRPersistenceException;
 
+    /**
+     * Performs a search on the specified target resource type using the specified search parameters, returning the
+     * JSON representation of each resource in the result set instead of the parsed resource. Callers which only copy
+     * the resources to an output (e.g. bulk export) can use this to avoid a parse/generate round trip when the
+     * persistence layer stores resources in JSON form.
+     *
+     * <p>The default implementation generates the JSON from the result of
+     * {@link #search(FHIRPersistenceContext, Class)}.
+     *
+     * @param context the FHIRPersistenceContext instance associated with the current request
+     * @param resourceType the resource type which is the target of the search
+     * @return the single-line JSON representation of the FHIR Resources in the search result set, in result set order
+     * @throws FHIRPersistenceException if the search is not successful (e.g. the paging parameters are invalid and the
+     *         search context is not lenient); the exception carries the issues of the search outcome
+     */
+    default List<ResourcePayload> searchPayloads(FHIRPersistenceContext context, Class<? extends Resource> resourceType)
+            throws FHIRPersistenceException {
+        List<ResourcePayload> payloads = new ArrayList<>();
+        FHIRGenerator generator = FHIRGenerator.generator(Format.JSON, false);
+        MultiResourceResult<Resource> result = search(context, resourceType);
+        if (!result.isSuccess()) {
+            throw FHIRPersistenceUtil.searchFailed(resourceType,
+                result.getOutcome() != null ? result.getOutcome().getIssue() : Collections.emptyList());
+        }
+        for (Resource resource : result.getResource()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                generator.generate(resource, out);
+            } catch (FHIRGeneratorException e) {
+                throw new FHIRPersistenceException("Unable to generate the JSON representation of resource '"
+                        + resourceType.getSimpleName() + "/" + resource.getId() + "'", e);
+            }
+            payloads.add(new ResourcePayload(resource.getId(), out.toByteArray()));
+        }
+        return payloads;
+    }
+
+    /**
+     * Performs a search like {@link #searchPayloads(FHIRPersistenceContext, Class)}, but passes each payload to the
+     * specified consumer as soon as it is read instead of returning them as a list. The total count of the search
+     * context is set before the first payload is passed.
+     *
+     * <p>The default implementation passes the payloads of {@link #searchPayloads(FHIRPersistenceContext, Class)};
+     * implementations should override it to read the payloads of the page one at a time.
+     *
+     * @param context the FHIRPersistenceContext instance associated with the current request
+     * @param resourceType the resource type which is the target of the search
+     * @param consumer receives the single-line JSON representation of the FHIR Resources in the search result set,
+     *        in result set order
+     * @throws FHIRPersistenceException if the search is not successful; the exception carries the issues of the search outcome
+     * @throws IOException if thrown by the consumer
+     */
+    default void searchPayloads(FHIRPersistenceContext context, Class<? extends Resource> resourceType, ResourcePayloadConsumer consumer)
+            throws FHIRPersistenceException, IOException {
+        for (ResourcePayload payload : searchPayloads(context, resourceType)) {
+            consumer.accept(payload);
+        }
+    }
+
+    /**
+     * Retrieves the versions of the specified FHIR Resource like {@link #history(FHIRPersistenceContext, Class, String)},
+     * but passes the single-line JSON representation of each version to the specified consumer as soon as it is read.
+     * The total count of the history context is set before the first payload is passed; each deleted version is
+     * added to the deleted resources of the history context at the latest when its payload is passed.
+     *
+     * <p>The default implementation generates the JSON from the result of
+     * {@link #history(FHIRPersistenceContext, Class, String)}; implementations should override it to read the
+     * versions of the page one at a time.
+     *
+     * @param context the FHIRPersistenceContext instance associated with the current request
+     * @param resourceType the resource type of the Resource instances to be retrieved
+     * @param logicalId the logical id of the Resource instances to be retrieved
+     * @param consumer receives the versions of the page, most recent first
+     * @throws FHIRPersistenceException if the history is not successful (e.g. the paging parameters are invalid and the
+     *         history context is not lenient); the exception carries the issues of the history outcome
+     * @throws IOException if thrown by the consumer
+     */
+    default void historyPayloads(FHIRPersistenceContext context, Class<? extends Resource> resourceType, String logicalId,
+            ResourcePayloadConsumer consumer) throws FHIRPersistenceException, IOException {
+        FHIRGenerator generator = FHIRGenerator.generator(Format.JSON, false);
+        MultiResourceResult<? extends Resource> result = history(context, resourceType, logicalId);
+        if (!result.isSuccess()) {
+            throw FHIRPersistenceUtil.historyFailed(resourceType, logicalId,
+                result.getOutcome() != null ? result.getOutcome().getIssue() : Collections.emptyList());
+        }
+        for (Resource resource : result.getResource()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                generator.generate(resource, out);
+            } catch (FHIRGeneratorException e) {
+                throw new FHIRPersistenceException("Unable to generate the JSON representation of resource '"
+                        + resourceType.getSimpleName() + "/" + resource.getId() + "'", e);
+            }
+            consumer.accept(new ResourcePayload(resource.getId(), out.toByteArray()));
+        }
+    }
+
     /**
      * Returns true iff the persistence layer implementation supports transactions.
      */
@@ -133,6 +302,34 @@ public interface FHIRPersistence {
         return false;
     }
 
+    /**
+     * Returns true iff the persistence layer implementation supports {@link #searchByIdentifier}
+     */
+    default boolean isIdentifierSearchSupported() {
+        return false;
+    }
+
+    /**
+     * Finds the current version of each resource of the passed type which has an identifier with the passed
+     * system and value. This matches the same resources as a search for identifier=system|value, but is a
+     * direct lookup in the token index which neither counts nor sorts the matches. Deleted resources are
+     * never returned.
+     * @param context the FHIRPersistenceContext instance associated with the current request.
+     * @param resourceType the resource type of the resources to be found
+     * @param system the identifier system
+     * @param value the identifier value
+     * @param maxResults the maximum number of resources to return
+     * @param lock if true, the identifier is locked until the end of the current transaction before the lookup is
+     *        made, so that concurrent transactions looking up the same identifier are serialized. A conditional
+     *        create can then check for a match and create the resource without racing other creates.
+     * @return a MultiResourceResult with at most maxResults resources, in no particular order
+     * @throws FHIRPersistenceException
+     */
+    default <T extends Resource> MultiResourceResult<T> searchByIdentifier(FHIRPersistenceContext context, Class<T> resourceType,
+            String system, String value, int maxResults, boolean lock) throws FHIRPersistenceException {
+        throw new FHIRPersistenceNotSupportedException("The persistence layer does not support searchByIdentifier");
+    }
+
     /**
      * Generates a resource ID.
      *
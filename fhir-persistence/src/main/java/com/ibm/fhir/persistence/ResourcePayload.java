@@ -0,0 +1,56 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Objects;
+
+/**
+ * The JSON representation of a resource, serialized on a single line and encoded in UTF-8.
+ * Instances are returned by {@link FHIRPersistence#searchPayloads} for callers which copy resources
+ * to an output without needing to inspect them.
+ */
+public class ResourcePayload {
+    private final String logicalId;
+    private final byte[] json;
+
+    /**
+     * @param logicalId
+     *     the logical id of the resource
+     * @param json
+     *     the single-line JSON representation of the resource; the array is not copied
+     */
+    public ResourcePayload(String logicalId, byte[] json) {
+        this.logicalId = Objects.requireNonNull(logicalId, "logicalId");
+        this.json = Objects.requireNonNull(json, "json");
+    }
+
+    /**
+     * @return the logical id of the resource
+     */
+    public String getLogicalId() {
+        return logicalId;
+    }
+
+    /**
+     * @return the length in bytes of the JSON representation
+     */
+    public int length() {
+        return json.length;
+    }
+
+    /**
+     * Write the JSON representation (without a line separator) to the passed output stream
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(json);
+    }
+}
@@ -0,0 +1,25 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence;
+
+import java.io.IOException;
+
+/**
+ * Receives the payloads of a search or history page one at a time, in result order, while the persistence layer
+ * reads them; used to write a page to an output without holding all of its resources in memory.
+ */
+@FunctionalInterface
+public interface ResourcePayloadConsumer {
+
+    /**
+     * @param payload
+     *     the next payload of the page
+     * @throws IOException
+     *     if the payload could not be written; the persistence layer stops reading the page and rethrows it
+     */
+    void accept(ResourcePayload payload) throws IOException;
+}
@@ -19,7 +19,7 @@ public interface FHIRHistoryContext extends FHIRPagingContext {
     
     /**
      * Returns a Map indicating the deletion history of a resource.
-     * The map key is the logical resource id. The value is a List of deleted versions of the resource. 
+     * The map key is the logical resource id (resourceType/logicalId for type and system level history). The value is a List of deleted versions of the resource. 
      * Note there can be more than one deleted version, since a deleted resource can be brought back to life by a subsequent update.
      * @return deleted resources Map
      */
@@ -32,4 +32,23 @@ public interface FHIRHistoryContext extends FHIRPagingContext {
      * @param deletedResources
      */
     void setDeletedResources(Map<String,List<Integer>> deletedResources);
+
+    /**
+     * Returns the opaque cursor given by the _cursor parameter of a type or system level history
+     * request, which marks the position in the change feed after which the page starts.
+     * @return the cursor, or null to start at the beginning of the feed (or at _since)
+     */
+    String getCursor();
+    void setCursor(String cursor);
+
+    /**
+     * Returns the opaque cursor to continue a type or system level history request from the
+     * last change of the current page. Set by the persistence layer whether or not the page is
+     * full, because more changes may be stored later; for an empty page, it is the position
+     * the page started from.
+     * @return the cursor for the next page, or null if the page was empty and started at the
+     *         beginning of the feed
+     */
+    String getNextCursor();
+    void setNextCursor(String nextCursor);
 }
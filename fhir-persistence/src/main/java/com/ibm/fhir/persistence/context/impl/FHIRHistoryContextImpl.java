@@ -17,6 +17,8 @@ import com.ibm.fhir.persistence.context.FHIRHistoryContext;
 public class FHIRHistoryContextImpl extends FHIRPagingContextImpl implements FHIRHistoryContext {
     private Instant since = null;
     private Map<String,List<Integer>> deletedResources = new HashMap<>();
+    private String cursor = null;
+    private String nextCursor = null;
     
     public FHIRHistoryContextImpl() {
     }
@@ -42,4 +44,24 @@ public class FHIRHistoryContextImpl extends FHIRPagingContextImpl implements FHI
         this.deletedResources = deletedResources;
         
     }
+
+    @Override
+    public String getCursor() {
+        return cursor;
+    }
+
+    @Override
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    @Override
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    @Override
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
 }
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2016,2019
+ * (C) Copyright IBM Corp. 2016, 2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -181,4 +181,37 @@ public class FHIRPersistenceInterceptorMgr {
             interceptor.afterSearch(event);
         }
     }
+
+    /**
+     * @return true if a registered interceptor implements the 'afterSearch' method, which needs the complete
+     *     search result bundle
+     */
+    public boolean hasAfterSearchInterceptors() {
+        return hasInterceptors("afterSearch");
+    }
+
+    /**
+     * @return true if a registered interceptor implements the 'afterHistory' method, which needs the complete
+     *     history bundle
+     */
+    public boolean hasAfterHistoryInterceptors() {
+        return hasInterceptors("afterHistory");
+    }
+
+    /**
+     * @return true if a registered interceptor overrides the default (empty) implementation of the passed method
+     */
+    private boolean hasInterceptors(String methodName) {
+        for (FHIRPersistenceInterceptor interceptor : interceptors) {
+            try {
+                if (!FHIRPersistenceInterceptor.class.equals(
+                        interceptor.getClass().getMethod(methodName, FHIRPersistenceEvent.class).getDeclaringClass())) {
+                    return true;
+                }
+            } catch (NoSuchMethodException e) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
@@ -0,0 +1,32 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.memory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.persistence.FHIRPersistence;
+import com.ibm.fhir.persistence.FHIRPersistenceFactory;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
+
+/**
+ * Factory for the in-memory persistence layer.
+ *
+ * <p>Each tenant/datastore combination gets its own {@link MemoryStore}, which lives for as long as this factory
+ * (i.e. until the server stops). To use it, set fhirServer/persistence/factoryClassname to the name of this class.
+ */
+public class FHIRPersistenceMemoryFactory implements FHIRPersistenceFactory {
+    private final Map<String, MemoryStore> stores = new ConcurrentHashMap<>();
+
+    @Override
+    public FHIRPersistence getInstance() throws FHIRPersistenceException {
+        FHIRRequestContext requestContext = FHIRRequestContext.get();
+        String key = requestContext.getTenantId() + "/" + requestContext.getDataStoreId();
+        return new FHIRPersistenceMemoryImpl(stores.computeIfAbsent(key, k -> new MemoryStore()));
+    }
+}
@@ -0,0 +1,842 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.memory;
+
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_UPDATE_CREATE_ENABLED;
+import static com.ibm.fhir.model.type.String.string;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.config.FHIRConfigHelper;
+import com.ibm.fhir.core.context.FHIRPagingContext;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.generator.FHIRGenerator;
+import com.ibm.fhir.model.parser.FHIRJsonParser;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.OperationOutcome;
+import com.ibm.fhir.model.resource.OperationOutcome.Issue;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.CodeableConcept;
+import com.ibm.fhir.model.type.Extension;
+import com.ibm.fhir.model.type.Id;
+import com.ibm.fhir.model.type.Instant;
+import com.ibm.fhir.model.type.Meta;
+import com.ibm.fhir.model.type.code.IssueSeverity;
+import com.ibm.fhir.model.type.code.IssueType;
+import com.ibm.fhir.model.util.FHIRUtil;
+import com.ibm.fhir.model.util.JsonSupport;
+import com.ibm.fhir.model.util.ValidationSupport;
+import com.ibm.fhir.persistence.FHIRPersistence;
+import com.ibm.fhir.persistence.FHIRPersistenceTransaction;
+import com.ibm.fhir.persistence.MultiResourceResult;
+import com.ibm.fhir.persistence.SingleResourceResult;
+import com.ibm.fhir.persistence.context.FHIRHistoryContext;
+import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceNotSupportedException;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceResourceDeletedException;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceResourceNotFoundException;
+import com.ibm.fhir.persistence.memory.IndexValue.DateValue;
+import com.ibm.fhir.persistence.memory.IndexValue.NumberValue;
+import com.ibm.fhir.persistence.memory.IndexValue.ReferenceValue;
+import com.ibm.fhir.persistence.memory.IndexValue.StringValue;
+import com.ibm.fhir.persistence.memory.IndexValue.TokenValue;
+import com.ibm.fhir.persistence.memory.MemoryStore.LogicalResource;
+import com.ibm.fhir.persistence.memory.MemoryStore.ResourceTable;
+import com.ibm.fhir.persistence.memory.MemoryStore.ResourceVersion;
+import com.ibm.fhir.search.SearchConstants;
+import com.ibm.fhir.search.SearchConstants.Modifier;
+import com.ibm.fhir.search.SearchConstants.Type;
+import com.ibm.fhir.search.SummaryValueSet;
+import com.ibm.fhir.search.context.FHIRSearchContext;
+import com.ibm.fhir.search.parameters.InclusionParameter;
+import com.ibm.fhir.search.parameters.QueryParameter;
+import com.ibm.fhir.search.parameters.SortParameter;
+import com.ibm.fhir.search.sort.Sort;
+import com.ibm.fhir.search.util.SearchUtil;
+
+/**
+ * A FHIRPersistence implementation which keeps all resource versions in memory.
+ *
+ * <p>This implementation is intended for load-testing the REST tier in isolation from the database: resources are
+ * held as the (immutable) model objects passed in, and search parameter values are extracted into an in-memory index
+ * when a version is stored. The token, reference and string/uri values of the current versions are also held in an
+ * inverted index per resource type, which narrows the candidates of a search before each one is fully matched. Search
+ * results follow the JDBC persistence layer as closely as possible, including the same set of unsupported modifiers.
+ *
+ * <p>Nothing is written to disk and the persistence layer is not transactional; the contents of the store are lost
+ * when the server stops.
+ */
+public class FHIRPersistenceMemoryImpl implements FHIRPersistence {
+    private static final Logger log = Logger.getLogger(FHIRPersistenceMemoryImpl.class.getName());
+
+    // the modifiers supported by the JDBC persistence layer, per search parameter type
+    private static final Map<Type, Set<Modifier>> SUPPORTED_MODIFIERS = buildSupportedModifiers();
+
+    private static final FHIRPersistenceTransaction NO_TRANSACTION = new FHIRPersistenceTransaction() {
+        @Override
+        public boolean isTransactional() {
+            return false;
+        }
+
+        @Override
+        public void begin() { }
+
+        @Override
+        public void end() { }
+
+        @Override
+        public void setRollbackOnly() { }
+    };
+
+    private final MemoryStore store;
+    private final boolean updateCreateEnabled;
+
+    /**
+     * Construct a persistence layer with its own (empty) store
+     */
+    public FHIRPersistenceMemoryImpl() {
+        this(new MemoryStore());
+    }
+
+    /**
+     * Construct a persistence layer over the passed store
+     *
+     * @param store
+     *     the store which holds the resources of the current tenant/datastore
+     */
+    public FHIRPersistenceMemoryImpl(MemoryStore store) {
+        this.store = store;
+        this.updateCreateEnabled = FHIRConfigHelper.getBooleanProperty(PROPERTY_UPDATE_CREATE_ENABLED, Boolean.TRUE);
+    }
+
+    @Override
+    public <T extends Resource> SingleResourceResult<T> create(FHIRPersistenceContext context, T resource) throws FHIRPersistenceException {
+        // As for the JDBC persistence layer, any id in the given resource is replaced by a system-generated value
+        String logicalId = generateResourceId();
+        String resourceType = resource.getClass().getSimpleName();
+        ResourceTable table = store.getTable(resourceType);
+        LogicalResource logicalResource = table.getOrCreate(logicalId);
+        synchronized (logicalResource) {
+            T updatedResource = storeVersion(table, logicalResource, resource, logicalId, 1, false);
+            return new SingleResourceResult.Builder<T>()
+                    .success(true)
+                    .resource(updatedResource)
+                    .build();
+        }
+    }
+
+    @Override
+    public <T extends Resource> SingleResourceResult<T> update(FHIRPersistenceContext context, String logicalId, T resource)
+            throws FHIRPersistenceException {
+        String resourceType = resource.getClass().getSimpleName();
+        ResourceTable table = store.getTable(resourceType);
+        LogicalResource logicalResource = updateCreateEnabled ? table.getOrCreate(logicalId) : table.get(logicalId);
+        if (logicalResource == null) {
+            throw notFound(resourceType, logicalId);
+        }
+        synchronized (logicalResource) {
+            int newVersionNumber = logicalResource.getVersions().size() + 1;
+
+            // If this logical resource didn't exist and the "updateCreate" feature is not enabled,
+            // then this is an error.
+            if (newVersionNumber == 1 && !updateCreateEnabled) {
+                throw notFound(resourceType, logicalId);
+            }
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("Storing new FHIR Resource '" + resourceType + "/" + logicalId + "', version=" + newVersionNumber);
+            }
+            T updatedResource = storeVersion(table, logicalResource, resource, logicalId, newVersionNumber, false);
+            return new SingleResourceResult.Builder<T>()
+                    .success(true)
+                    .resource(updatedResource)
+                    .build();
+        }
+    }
+
+    @Override
+    public <T extends Resource> SingleResourceResult<T> delete(FHIRPersistenceContext context, Class<T> resourceType, String logicalId)
+            throws FHIRPersistenceException {
+        LogicalResource logicalResource = findLogicalResource(resourceType, logicalId);
+        if (logicalResource == null) {
+            throw new FHIRPersistenceResourceNotFoundException("resource does not exist: " + resourceType.getSimpleName() + "/" + logicalId);
+        }
+        synchronized (logicalResource) {
+            ResourceVersion current = logicalResource.getCurrent();
+            T existingResource = resourceType.cast(current.getResource());
+            if (current.isDeleted()) {
+                return new SingleResourceResult.Builder<T>()
+                        .success(true)
+                        .resource(existingResource)
+                        .outcome(OperationOutcome.builder()
+                            .issue(Issue.builder()
+                                .severity(IssueSeverity.WARNING)
+                                .code(IssueType.DELETED)
+                                .details(CodeableConcept.builder()
+                                    .text(string("Resource of type'" + resourceType.getSimpleName() + "' with id '" + logicalId + "' is already deleted."))
+                                    .build())
+                                .build())
+                            .build())
+                        .build();
+            }
+            T updatedResource = storeVersion(store.getTable(resourceType.getSimpleName()), logicalResource, existingResource, logicalId, current.getVersionId() + 1, true);
+            return new SingleResourceResult.Builder<T>()
+                    .success(true)
+                    .resource(updatedResource)
+                    .build();
+        }
+    }
+
+    @Override
+    public <T extends Resource> SingleResourceResult<T> read(FHIRPersistenceContext context, Class<T> resourceType, String logicalId)
+            throws FHIRPersistenceException {
+        FHIRSearchContext searchContext = context.getSearchContext();
+        List<String> elements = null;
+        if (searchContext != null && searchContext.hasSummaryParameter()) {
+            elements = getSummaryElements(resourceType, searchContext.getSummaryParameter());
+        }
+
+        LogicalResource logicalResource = findLogicalResource(resourceType, logicalId);
+        ResourceVersion version = (logicalResource != null) ? logicalResource.getCurrent() : null;
+        if (version != null && version.isDeleted() && !context.includeDeleted()) {
+            throw new FHIRPersistenceResourceDeletedException("Resource '" + resourceType.getSimpleName() + "/" + logicalId + "' is deleted.");
+        }
+        return new SingleResourceResult.Builder<T>()
+                .success(true)
+                .resource(version != null ? filter(resourceType.cast(version.getResource()), resourceType, elements) : null)
+                .build();
+    }
+
+    @Override
+    public <T extends Resource> SingleResourceResult<T> vread(FHIRPersistenceContext context, Class<T> resourceType, String logicalId, String versionId)
+            throws FHIRPersistenceException {
+        int version;
+        try {
+            version = Integer.parseInt(versionId);
+        } catch (NumberFormatException e) {
+            throw new FHIRPersistenceException("Invalid version id specified for vread operation: " + versionId);
+        }
+
+        LogicalResource logicalResource = findLogicalResource(resourceType, logicalId);
+        ResourceVersion resourceVersion = (logicalResource != null) ? logicalResource.getVersion(version) : null;
+        if (resourceVersion != null && resourceVersion.isDeleted() && !context.includeDeleted()) {
+            throw new FHIRPersistenceResourceDeletedException("Resource '" + resourceType.getSimpleName() + "/" + logicalId
+                    + "' version " + versionId + " is deleted.");
+        }
+        return new SingleResourceResult.Builder<T>()
+                .success(true)
+                .resource(resourceVersion != null ? resourceType.cast(resourceVersion.getResource()) : null)
+                .build();
+    }
+
+    @Override
+    public <T extends Resource> MultiResourceResult<T> history(FHIRPersistenceContext context, Class<T> resourceType, String logicalId)
+            throws FHIRPersistenceException {
+        MultiResourceResult.Builder<T> resultBuilder = new MultiResourceResult.Builder<>();
+        Map<String, List<Integer>> deletedResourceVersions = new HashMap<>();
+        FHIRHistoryContext historyContext = context.getHistoryContext();
+        historyContext.setDeletedResources(deletedResourceVersions);
+
+        // newest version first, as for the JDBC persistence layer
+        List<ResourceVersion> versions = new ArrayList<>();
+        LogicalResource logicalResource = findLogicalResource(resourceType, logicalId);
+        if (logicalResource != null) {
+            Instant since = historyContext.getSince();
+            java.time.Instant from = (since != null) ? since.getValue().toInstant() : null;
+            for (ResourceVersion version : logicalResource.getVersions()) {
+                if (from == null || !version.getLastUpdated().isBefore(from)) {
+                    versions.add(version);
+                }
+            }
+            Collections.reverse(versions);
+        }
+        historyContext.setTotalCount(versions.size());
+
+        List<Issue> issues = validatePagingContext(historyContext);
+        if (!issues.isEmpty()) {
+            resultBuilder.outcome(OperationOutcome.builder()
+                .issue(issues)
+                .build());
+            if (!historyContext.isLenient()) {
+                return resultBuilder.success(false).build();
+            }
+        }
+
+        List<T> resources = new ArrayList<>();
+        for (ResourceVersion version : page(versions, historyContext)) {
+            if (version.isDeleted()) {
+                deletedResourceVersions.computeIfAbsent(logicalId, k -> new ArrayList<>()).add(version.getVersionId());
+            }
+            resources.add(resourceType.cast(version.getResource()));
+        }
+        return resultBuilder
+                .success(true)
+                .resource(resources)
+                .build();
+    }
+
+    @Override
+    public MultiResourceResult<Resource> search(FHIRPersistenceContext context, Class<? extends Resource> resourceType)
+            throws FHIRPersistenceException {
+        MultiResourceResult.Builder<Resource> resultBuilder = new MultiResourceResult.Builder<>();
+        FHIRSearchContext searchContext = context.getSearchContext();
+        boolean isSystemLevelSearch = Resource.class.equals(resourceType);
+        checkModifiers(searchContext, isSystemLevelSearch);
+
+        List<Match> matches = findMatches(resourceType, searchContext);
+        searchContext.setTotalCount(matches.size());
+
+        List<Issue> issues = validatePagingContext(searchContext);
+        if (!issues.isEmpty()) {
+            resultBuilder.outcome(OperationOutcome.builder()
+                .issue(issues)
+                .build());
+            if (!searchContext.isLenient()) {
+                return resultBuilder.success(false).build();
+            }
+        }
+
+        // For _summary=count or pageSize == 0, we return only the count
+        List<Resource> resources = new ArrayList<>();
+        if (!matches.isEmpty()
+                && !SummaryValueSet.COUNT.equals(searchContext.getSummaryParameter())
+                && searchContext.getPageSize() > 0) {
+            List<String> elements = searchContext.getElementsParameters();
+            if (elements == null && searchContext.hasSummaryParameter()) {
+                elements = getSummaryElements(resourceType, searchContext.getSummaryParameter());
+            }
+
+            if (searchContext.hasSortParameters()) {
+                matches.sort(buildComparator(searchContext.getSortParameters()));
+            }
+            List<Match> pageMatches = page(matches, searchContext);
+            for (Match match : pageMatches) {
+                resources.add(filter(match.version.getResource(), resourceType, elements));
+            }
+
+            if (!isSystemLevelSearch && (searchContext.hasIncludeParameters() || searchContext.hasRevIncludeParameters())) {
+                for (ResourceVersion included : findIncludedResources(resourceType.getSimpleName(), searchContext, pageMatches)) {
+                    resources.add(filter(included.getResource(), resourceType, elements));
+                }
+            }
+        }
+
+        return resultBuilder
+                .success(true)
+                .resource(resources)
+                .build();
+    }
+
+    @Override
+    public boolean isTransactional() {
+        return false;
+    }
+
+    @Override
+    public OperationOutcome getHealth() throws FHIRPersistenceException {
+        return FHIRUtil.buildOperationOutcome("All OK", IssueType.INFORMATIONAL, IssueSeverity.INFORMATION);
+    }
+
+    @Override
+    public FHIRPersistenceTransaction getTransaction() {
+        return NO_TRANSACTION;
+    }
+
+    @Override
+    public boolean isDeleteSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean isReindexSupported() {
+        return true;
+    }
+
+    @Override
+    public int reindex(FHIRPersistenceContext context, OperationOutcome.Builder operationOutcomeResult, java.time.Instant tstamp,
+            String resourceLogicalId) throws FHIRPersistenceException {
+        if (tstamp.isAfter(java.time.Instant.now())) {
+            // protect against setting a future timestamp, which could otherwise disable the ability to reindex anything
+            throw new FHIRPersistenceException("Reindex tstamp cannot be in the future");
+        }
+
+        // Restrict reindex to a specific resource type or resource e.g. "Patient" or "Patient/abc123"
+        Collection<String> resourceTypes = store.getResourceTypes();
+        String logicalId = null;
+        if (resourceLogicalId != null) {
+            String[] parts = resourceLogicalId.split("/");
+            resourceTypes = Collections.singleton(parts[0]);
+            if (parts.length == 2) {
+                logicalId = parts[1];
+            }
+        }
+
+        for (String resourceType : resourceTypes) {
+            ResourceTable table = store.findTable(resourceType);
+            if (table == null) {
+                continue;
+            }
+            Collection<LogicalResource> candidates = table.values();
+            if (logicalId != null) {
+                LogicalResource logicalResource = table.get(logicalId);
+                candidates = (logicalResource != null) ? Collections.singleton(logicalResource) : Collections.emptyList();
+            }
+            for (LogicalResource logicalResource : candidates) {
+                synchronized (logicalResource) {
+                    ResourceVersion current = logicalResource.getCurrent();
+                    java.time.Instant reindexTstamp = logicalResource.getReindexTstamp();
+                    if (current == null || current.isDeleted() || (reindexTstamp != null && !reindexTstamp.isBefore(tstamp))) {
+                        continue;
+                    }
+                    log.info("Reindexing FHIR Resource '" + resourceType + "/" + logicalResource.getLogicalId() + "'");
+                    table.reindexCurrent(logicalResource, buildIndex(current.getResource()), tstamp);
+                }
+                final String diag = "Processed " + resourceType + "/" + logicalResource.getLogicalId();
+                operationOutcomeResult.issue(Issue.builder()
+                    .code(IssueType.INFORMATIONAL)
+                    .severity(IssueSeverity.INFORMATION)
+                    .diagnostics(string(diag))
+                    .build());
+                return 1;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public String generateResourceId() {
+        return UUID.randomUUID().toString();
+    }
+
+    /**
+     * Build the next version of the passed logical resource and add it to the store; callers must hold the monitor
+     * of the logical resource
+     */
+    private <T extends Resource> T storeVersion(ResourceTable table, LogicalResource logicalResource, T resource, String logicalId,
+            int versionId, boolean deleted) throws FHIRPersistenceException {
+        Instant lastUpdated = Instant.now(ZoneOffset.UTC);
+        Meta meta = resource.getMeta();
+        Meta.Builder metaBuilder = (meta == null) ? Meta.builder() : meta.toBuilder();
+        metaBuilder.versionId(Id.of(Integer.toString(versionId)));
+        metaBuilder.lastUpdated(lastUpdated);
+
+        @SuppressWarnings("unchecked")
+        T updatedResource = (T) resource.toBuilder()
+                .id(logicalId)
+                .meta(metaBuilder.build())
+                .build();
+
+        // deleted versions are never returned by a search, so they are not indexed
+        Map<String, List<IndexValue>> index = deleted ? Collections.emptyMap() : buildIndex(updatedResource);
+        table.addVersion(logicalResource, new ResourceVersion(updatedResource, versionId, lastUpdated.getValue().toInstant(), deleted, index));
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Persisted FHIR Resource '" + resource.getClass().getSimpleName() + "/" + logicalId + "', version=" + versionId);
+        }
+        return updatedResource;
+    }
+
+    private FHIRPersistenceResourceNotFoundException notFound(String resourceType, String logicalId) {
+        String msg = "Resource '" + resourceType + "/" + logicalId + "' not found.";
+        log.log(Level.SEVERE, msg);
+        return new FHIRPersistenceResourceNotFoundException(msg);
+    }
+
+    private Map<String, List<IndexValue>> buildIndex(Resource resource) throws FHIRPersistenceException {
+        try {
+            return SearchIndexer.index(resource);
+        } catch (FHIRPersistenceException e) {
+            throw e;
+        } catch (Exception e) {
+            FHIRPersistenceException fx = new FHIRPersistenceException("Unexpected error while extracting search parameter values.");
+            log.log(Level.SEVERE, fx.getMessage(), e);
+            throw fx;
+        }
+    }
+
+    private LogicalResource findLogicalResource(Class<? extends Resource> resourceType, String logicalId) {
+        ResourceTable table = store.findTable(resourceType.getSimpleName());
+        LogicalResource logicalResource = (table != null) ? table.get(logicalId) : null;
+        return (logicalResource != null && logicalResource.getCurrent() != null) ? logicalResource : null;
+    }
+
+    /**
+     * @return the current, non-deleted versions which match the search parameters, in creation order
+     */
+    private List<Match> findMatches(Class<? extends Resource> resourceType, FHIRSearchContext searchContext)
+            throws FHIRPersistenceException {
+        Collection<String> resourceTypes;
+        if (Resource.class.equals(resourceType)) {
+            resourceTypes = (searchContext.getSearchResourceTypes() != null && !searchContext.getSearchResourceTypes().isEmpty())
+                    ? searchContext.getSearchResourceTypes() : store.getResourceTypes();
+        } else {
+            resourceTypes = Collections.singleton(resourceType.getSimpleName());
+        }
+
+        SearchMatcher matcher = new SearchMatcher(store);
+        List<Match> matches = new ArrayList<>();
+        for (String type : resourceTypes) {
+            ResourceTable table = store.findTable(type);
+            if (table == null) {
+                continue;
+            }
+            for (LogicalResource logicalResource : findCandidates(matcher, table, searchContext.getSearchParameters())) {
+                ResourceVersion current = logicalResource.getCurrent();
+                if (current != null && !current.isDeleted()
+                        && matcher.matches(type, logicalResource.getLogicalId(), current, searchContext.getSearchParameters())) {
+                    matches.add(new Match(logicalResource, current));
+                }
+            }
+        }
+        if (resourceTypes.size() > 1) {
+            matches.sort(Comparator.comparingLong(match -> match.logicalResource.getSequence()));
+        }
+        return matches;
+    }
+
+    /**
+     * @return the logical resources of the passed table which may match the passed parameters, in creation order
+     */
+    private Collection<LogicalResource> findCandidates(SearchMatcher matcher, ResourceTable table, List<QueryParameter> queryParms) {
+        Set<String> logicalIds = matcher.findCandidates(table, queryParms);
+        if (logicalIds == null) {
+            return table.values();
+        }
+        List<LogicalResource> candidates = new ArrayList<>(logicalIds.size());
+        for (String logicalId : logicalIds) {
+            LogicalResource logicalResource = table.get(logicalId);
+            if (logicalResource != null) {
+                candidates.add(logicalResource);
+            }
+        }
+        candidates.sort(Comparator.comparingLong(LogicalResource::getSequence));
+        return candidates;
+    }
+
+    /**
+     * @return the current, non-deleted versions of the _include and _revinclude targets of the passed page, without
+     *     duplicates and without the resources of the page itself
+     */
+    private Collection<ResourceVersion> findIncludedResources(String resourceType, FHIRSearchContext searchContext,
+            List<Match> pageMatches) {
+        Map<String, ResourceVersion> included = new LinkedHashMap<>();
+        Set<String> pageKeys = new HashSet<>();
+        for (Match match : pageMatches) {
+            pageKeys.add(resourceType + "/" + match.logicalResource.getLogicalId());
+        }
+
+        if (searchContext.hasIncludeParameters()) {
+            for (InclusionParameter includeParm : searchContext.getIncludeParameters()) {
+                String targetType = includeParm.getSearchParameterTargetType();
+                for (Match match : pageMatches) {
+                    for (IndexValue indexValue : match.version.getValues(includeParm.getSearchParameter())) {
+                        if (indexValue instanceof ReferenceValue
+                                && targetType.equals(((ReferenceValue) indexValue).getTargetResourceType())) {
+                            addIncluded(included, pageKeys, targetType, ((ReferenceValue) indexValue).getValue());
+                        }
+                    }
+                }
+            }
+        }
+
+        if (searchContext.hasRevIncludeParameters()) {
+            for (InclusionParameter revIncludeParm : searchContext.getRevIncludeParameters()) {
+                if (!resourceType.equals(revIncludeParm.getSearchParameterTargetType())) {
+                    continue;
+                }
+                ResourceTable table = store.findTable(revIncludeParm.getJoinResourceType());
+                if (table == null) {
+                    continue;
+                }
+                for (LogicalResource logicalResource : table.values()) {
+                    ResourceVersion current = logicalResource.getCurrent();
+                    if (current == null || current.isDeleted()) {
+                        continue;
+                    }
+                    for (IndexValue indexValue : current.getValues(revIncludeParm.getSearchParameter())) {
+                        if (indexValue instanceof ReferenceValue
+                                && resourceType.equals(((ReferenceValue) indexValue).getTargetResourceType())
+                                && pageKeys.contains(resourceType + "/" + ((ReferenceValue) indexValue).getValue())) {
+                            addIncluded(included, pageKeys, revIncludeParm.getJoinResourceType(), logicalResource.getLogicalId());
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        return included.values();
+    }
+
+    private void addIncluded(Map<String, ResourceVersion> included, Set<String> pageKeys, String resourceType, String logicalId) {
+        String key = resourceType + "/" + logicalId;
+        if (pageKeys.contains(key) || included.containsKey(key)) {
+            return;
+        }
+        ResourceTable table = store.findTable(resourceType);
+        LogicalResource logicalResource = (table != null) ? table.get(logicalId) : null;
+        ResourceVersion current = (logicalResource != null) ? logicalResource.getCurrent() : null;
+        if (current != null && !current.isDeleted()) {
+            included.put(key, current);
+        }
+    }
+
+    /**
+     * Build a comparator which orders matches by the passed sort parameters; as for the JDBC persistence layer, the
+     * smallest value of a resource is used for an ascending sort and the largest value for a descending sort, and
+     * resources without a value are sorted last
+     */
+    private Comparator<Match> buildComparator(List<SortParameter> sortParms) throws FHIRPersistenceException {
+        Comparator<Match> comparator = null;
+        for (SortParameter sortParm : sortParms) {
+            if (Type.COMPOSITE.equals(sortParm.getType()) || Type.SPECIAL.equals(sortParm.getType())) {
+                throw buildNotSupportedException("Sorting by search parameter '" + sortParm.getCode() + "' of type "
+                        + sortParm.getType() + " is not supported");
+            }
+            boolean descending = Sort.Direction.DECREASING.equals(sortParm.getDirection());
+            Comparator<Comparable<Object>> order = descending ? Comparator.reverseOrder() : Comparator.naturalOrder();
+            Comparator<Match> next = Comparator.comparing(match -> getSortKey(match, sortParm, descending), Comparator.nullsLast(order));
+            comparator = (comparator == null) ? next : comparator.thenComparing(next);
+        }
+        return comparator;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Comparable<Object> getSortKey(Match match, SortParameter sortParm, boolean descending) {
+        if ("_id".equals(sortParm.getCode())) {
+            return (Comparable<Object>) (Comparable<?>) match.logicalResource.getLogicalId();
+        }
+        if ("_lastUpdated".equals(sortParm.getCode())) {
+            return (Comparable<Object>) (Comparable<?>) match.version.getLastUpdated();
+        }
+        Comparable<Object> result = null;
+        for (IndexValue indexValue : match.version.getValues(sortParm.getCode())) {
+            Comparable<Object> key = (Comparable<Object>) getSortKey(indexValue);
+            if (key != null && (result == null || (descending ? key.compareTo(result) > 0 : key.compareTo(result) < 0))) {
+                result = key;
+            }
+        }
+        return result;
+    }
+
+    private static Comparable<?> getSortKey(IndexValue indexValue) {
+        if (indexValue instanceof StringValue) {
+            return ((StringValue) indexValue).getValue();
+        }
+        if (indexValue instanceof TokenValue) {
+            return ((TokenValue) indexValue).getCode();
+        }
+        if (indexValue instanceof ReferenceValue) {
+            return ((ReferenceValue) indexValue).getValue();
+        }
+        if (indexValue instanceof DateValue) {
+            return ((DateValue) indexValue).getStart();
+        }
+        if (indexValue instanceof NumberValue) {
+            return ((NumberValue) indexValue).getNumber();
+        }
+        return null;
+    }
+
+    /**
+     * @return the elements of the passed resource type to include for the passed _summary value, or null if the
+     *     resource should not be filtered
+     */
+    private static List<String> getSummaryElements(Class<? extends Resource> resourceType, SummaryValueSet summary) {
+        Set<String> summaryElements = null;
+        switch (summary) {
+        case TRUE:
+            summaryElements = JsonSupport.getSummaryElementNames(resourceType);
+            break;
+        case TEXT:
+            summaryElements = SearchUtil.getSummaryTextElementNames(resourceType);
+            break;
+        case DATA:
+            summaryElements = JsonSupport.getSummaryDataElementNames(resourceType);
+            break;
+        default:
+            break;
+        }
+        return (summaryElements != null) ? new ArrayList<>(summaryElements) : null;
+    }
+
+    /**
+     * Filter the passed resource to the passed elements, marking it with the SUBSETTED tag
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends Resource> T filter(T resource, Class<? extends Resource> resourceType, List<String> elements)
+            throws FHIRPersistenceException {
+        if (resource == null || elements == null) {
+            return resource;
+        }
+        // the narrative was checked before the resource was stored, so there is no need to check it again
+        boolean trusted = ValidationSupport.setXHTMLContentTrusted(true);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            FHIRGenerator.generator(Format.JSON, false).generate(resource, out);
+            T filtered = (T) FHIRParser.parser(Format.JSON).as(FHIRJsonParser.class)
+                    .parseAndFilter(new ByteArrayInputStream(out.toByteArray()), elements);
+            if (resourceType.equals(filtered.getClass()) && !FHIRUtil.hasTag(filtered, SearchConstants.SUBSETTED_TAG)) {
+                // add a SUBSETTED tag to this resource to indicate that its elements have been filtered
+                filtered = FHIRUtil.addTag(filtered, SearchConstants.SUBSETTED_TAG);
+            }
+            return filtered;
+        } catch (Exception e) {
+            FHIRPersistenceException fx = new FHIRPersistenceException("Unexpected error while filtering a resource.");
+            log.log(Level.SEVERE, fx.getMessage(), e);
+            throw fx;
+        } finally {
+            ValidationSupport.setXHTMLContentTrusted(trusted);
+        }
+    }
+
+    /**
+     * @return the items of the current page
+     */
+    private static <E> List<E> page(List<E> items, FHIRPagingContext pagingContext) {
+        int offset = (pagingContext.getPageNumber() - 1) * pagingContext.getPageSize();
+        if (offset >= items.size()) {
+            return Collections.emptyList();
+        }
+        return items.subList(offset, Math.min(offset + pagingContext.getPageSize(), items.size()));
+    }
+
+    /**
+     * Validate pageSize and pageNumber in the FHIRPagingContext instance and update
+     * paging context parameters accordingly.
+     *
+     * @param pagingContext
+     *     the FHIRPagingContext instance (FHIRSearchContext or FHIRHistoryContext)
+     * @return
+     *     a list of operation outcome issues if the paging context has invalid parameters
+     */
+    private static List<Issue> validatePagingContext(FHIRPagingContext pagingContext) {
+        List<Issue> issues = new ArrayList<>();
+
+        int pageSize = pagingContext.getPageSize();
+        if (pageSize < 0) {
+            issues.add(Issue.builder()
+                .severity(pagingContext.isLenient() ? IssueSeverity.WARNING : IssueSeverity.ERROR)
+                .code(IssueType.INVALID)
+                .details(CodeableConcept.builder()
+                    .text(string("Invalid page size: " + pageSize))
+                    .build())
+                .build());
+            pageSize = 10;
+            pagingContext.setPageSize(pageSize);
+        }
+
+        int lastPageNumber = (pageSize > 0) ? Math.max(((pagingContext.getTotalCount() + pageSize - 1) / pageSize), 1) : 1;
+        pagingContext.setLastPageNumber(lastPageNumber);
+
+        int pageNumber = pagingContext.getPageNumber();
+        if (pageNumber < 1) {
+            issues.add(Issue.builder()
+                .severity(pagingContext.isLenient() ? IssueSeverity.WARNING : IssueSeverity.ERROR)
+                .code(IssueType.INVALID)
+                .details(CodeableConcept.builder()
+                    .text(string("Invalid page number: " + pageNumber))
+                    .build())
+                .build());
+            pagingContext.setPageNumber(1);
+        } else if (pageNumber > lastPageNumber) {
+            issues.add(Issue.builder()
+                .severity(pagingContext.isLenient() ? IssueSeverity.WARNING : IssueSeverity.ERROR)
+                .code(IssueType.INVALID)
+                .details(CodeableConcept.builder()
+                    .text(string("Specified page number: " + pageNumber + " is greater than last page number: " + lastPageNumber))
+                    .build())
+                .build());
+            pagingContext.setPageNumber(lastPageNumber);
+        }
+
+        return issues;
+    }
+
+    /**
+     * @throws FHIRPersistenceNotSupportedException if the search context contains one or more modifiers which are not
+     *     supported by the JDBC persistence layer either
+     */
+    private static void checkModifiers(FHIRSearchContext searchContext, boolean isSystemLevelSearch) throws FHIRPersistenceNotSupportedException {
+        for (QueryParameter param : searchContext.getSearchParameters()) {
+            if (param.getChain().isEmpty()) {
+                if (isSystemLevelSearch && param.getModifier() == Modifier.MISSING) {
+                    // modifiers are not supported for whole-system searches
+                    throw buildNotSupportedException("Modifier '" + param.getModifier() + "' is not yet supported "
+                            + "for whole-system search [code=" + param.getCode() + "]");
+                }
+            } else {
+                if (param.getChain().getLast().getModifier() == Modifier.MISSING) {
+                    // modifiers on the last parameter in the chain are not yet supported
+                    throw buildNotSupportedException("Modifier '" + Modifier.MISSING.value() + "' is not yet supported "
+                            + "for chained parameters [code=" + param.getCode() + "]");
+                }
+            }
+
+            do {
+                if (param.getModifier() != null && !SUPPORTED_MODIFIERS.get(param.getType()).contains(param.getModifier())) {
+                    throw buildNotSupportedException("Found unsupported modifier '" + param.getModifier() + "'"
+                            + " for search parameter '" + param.getCode() + "' of type " + param.getType());
+                }
+                param = param.getNextParameter();
+            } while (param != null);
+        }
+    }
+
+    static FHIRPersistenceNotSupportedException buildNotSupportedException(String msg) {
+        return new FHIRPersistenceNotSupportedException(msg).withIssue(Issue.builder()
+                .severity(IssueSeverity.FATAL)
+                .code(IssueType.NOT_SUPPORTED.toBuilder()
+                        .extension(Extension.builder()
+                            .url("http://ibm.com/fhir/extension/not-supported-detail")
+                            .value(Code.of("interaction"))
+                            .build())
+                        .build())
+                .details(CodeableConcept.builder().text(string(msg)).build())
+                .build());
+    }
+
+    private static Map<Type, Set<Modifier>> buildSupportedModifiers() {
+        Map<Type, Set<Modifier>> supportedModifiers = new HashMap<>();
+        supportedModifiers.put(Type.STRING, EnumSet.of(Modifier.EXACT, Modifier.CONTAINS, Modifier.MISSING));
+        supportedModifiers.put(Type.REFERENCE, EnumSet.of(Modifier.TYPE, Modifier.MISSING));
+        supportedModifiers.put(Type.URI, EnumSet.of(Modifier.BELOW, Modifier.ABOVE, Modifier.MISSING));
+        for (Type type : Arrays.asList(Type.TOKEN, Type.NUMBER, Type.DATE, Type.QUANTITY, Type.COMPOSITE, Type.SPECIAL)) {
+            supportedModifiers.put(type, EnumSet.of(Modifier.MISSING));
+        }
+        return Collections.unmodifiableMap(supportedModifiers);
+    }
+
+    /**
+     * A search match: the current version of a logical resource
+     */
+    private static class Match {
+        private final LogicalResource logicalResource;
+        private final ResourceVersion version;
+
+        private Match(LogicalResource logicalResource, ResourceVersion version) {
+            this.logicalResource = logicalResource;
+            this.version = version;
+        }
+    }
+}
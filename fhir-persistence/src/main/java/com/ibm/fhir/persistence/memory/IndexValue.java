@@ -0,0 +1,186 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.memory;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+
+import com.ibm.fhir.search.util.SearchUtil;
+
+/**
+ * A single search parameter value extracted from a resource version and held in the in-memory search index.
+ *
+ * <p>The subclasses mirror the parameter value tables of the JDBC persistence layer so that both implementations
+ * produce the same search results.
+ */
+public abstract class IndexValue {
+    /**
+     * The start of an open-ended period
+     */
+    public static final Instant SMALLEST_INSTANT = Instant.MIN;
+
+    /**
+     * The end of an open-ended period
+     */
+    public static final Instant LARGEST_INSTANT = Instant.MAX;
+
+    private IndexValue() { }
+
+    /**
+     * A string or uri value
+     */
+    public static final class StringValue extends IndexValue {
+        private final String value;
+        private final String normalized;
+
+        public StringValue(String value) {
+            this.value = value;
+            this.normalized = SearchUtil.normalizeForSearch(value);
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * @return the value with accents removed and converted to lower case
+         */
+        public String getNormalized() {
+            return normalized;
+        }
+    }
+
+    /**
+     * A token value; the system may be null
+     */
+    public static final class TokenValue extends IndexValue {
+        private final String system;
+        private final String code;
+
+        public TokenValue(String system, String code) {
+            this.system = system;
+            this.code = code;
+        }
+
+        public String getSystem() {
+            return system;
+        }
+
+        public String getCode() {
+            return code;
+        }
+    }
+
+    /**
+     * A reference value; the target resource type is null for logical references and for absolute references
+     * without a type
+     */
+    public static final class ReferenceValue extends IndexValue {
+        private final String targetResourceType;
+        private final String value;
+
+        public ReferenceValue(String targetResourceType, String value) {
+            this.targetResourceType = targetResourceType;
+            this.value = value;
+        }
+
+        public String getTargetResourceType() {
+            return targetResourceType;
+        }
+
+        public String getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * A date value, represented as the range of instants that it covers
+     */
+    public static final class DateValue extends IndexValue {
+        private final Instant start;
+        private final Instant end;
+
+        public DateValue(Instant start, Instant end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public Instant getStart() {
+            return start;
+        }
+
+        public Instant getEnd() {
+            return end;
+        }
+    }
+
+    /**
+     * A number value with its implicit range; the number itself is null for a Range with only a low or a high value
+     */
+    public static class NumberValue extends IndexValue {
+        private final BigDecimal number;
+        private final BigDecimal low;
+        private final BigDecimal high;
+
+        public NumberValue(BigDecimal number, BigDecimal low, BigDecimal high) {
+            this.number = number;
+            this.low = low;
+            this.high = high;
+        }
+
+        public BigDecimal getNumber() {
+            return number;
+        }
+
+        public BigDecimal getLow() {
+            return low;
+        }
+
+        public BigDecimal getHigh() {
+            return high;
+        }
+    }
+
+    /**
+     * A quantity value; the system and code may be null
+     */
+    public static final class QuantityValue extends NumberValue {
+        private final String system;
+        private final String code;
+
+        public QuantityValue(BigDecimal number, BigDecimal low, BigDecimal high, String system, String code) {
+            super(number, low, high);
+            this.system = system;
+            this.code = code;
+        }
+
+        public String getSystem() {
+            return system;
+        }
+
+        public String getCode() {
+            return code;
+        }
+    }
+
+    /**
+     * A composite value; one component value per component of the composite search parameter
+     */
+    public static final class CompositeValue extends IndexValue {
+        private final List<IndexValue> components;
+
+        public CompositeValue(List<IndexValue> components) {
+            this.components = Collections.unmodifiableList(components);
+        }
+
+        public List<IndexValue> getComponents() {
+            return components;
+        }
+    }
+}
@@ -0,0 +1,352 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.memory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.persistence.memory.IndexValue.ReferenceValue;
+import com.ibm.fhir.persistence.memory.IndexValue.StringValue;
+import com.ibm.fhir.persistence.memory.IndexValue.TokenValue;
+
+/**
+ * The versioned resources of a single tenant/datastore held by the in-memory persistence layer.
+ *
+ * <p>Each resource type has its own table of logical resources, keyed by logical id. Each logical resource holds an
+ * immutable list of its versions, which is replaced (never modified) when a new version is added, so readers never
+ * need to lock. Writers of a given logical resource are serialized by synchronizing on the {@link LogicalResource}.
+ *
+ * <p>Each table also keeps an inverted index of the token, reference and string/uri values of the current versions,
+ * which searches use to narrow the candidates before each candidate is fully matched. The index is updated before a
+ * new version is published and pruned after, so it may briefly hold stale entries but never misses a current value.
+ */
+public class MemoryStore {
+    private final Map<String, ResourceTable> tables = new ConcurrentHashMap<>();
+
+    // orders the logical resources of each type by creation, which keeps unsorted search results (and paging) stable
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * @param resourceType
+     *     the resource type name
+     * @return
+     *     the table for the passed resource type, created on first use
+     */
+    public ResourceTable getTable(String resourceType) {
+        return tables.computeIfAbsent(resourceType, k -> new ResourceTable());
+    }
+
+    /**
+     * @param resourceType
+     *     the resource type name
+     * @return
+     *     the table for the passed resource type, or null if no resource of that type was ever stored
+     */
+    public ResourceTable findTable(String resourceType) {
+        return tables.get(resourceType);
+    }
+
+    /**
+     * @return
+     *     the names of the resource types for which at least one resource was stored
+     */
+    public Set<String> getResourceTypes() {
+        return Collections.unmodifiableSet(tables.keySet());
+    }
+
+    /**
+     * Remove all resources from the store
+     */
+    public void clear() {
+        tables.clear();
+    }
+
+    /**
+     * The logical resources of a single resource type
+     */
+    public class ResourceTable {
+        private final Map<String, LogicalResource> byLogicalId = new ConcurrentHashMap<>();
+        private final ConcurrentSkipListMap<Long, LogicalResource> bySequence = new ConcurrentSkipListMap<>();
+
+        // search parameter code -> indexed value -> logical ids
+        private final Map<String, Map<String, Set<String>>> postings = new ConcurrentHashMap<>();
+
+        private ResourceTable() { }
+
+        /**
+         * @return the logical resource with the passed logical id, or null if there is none
+         */
+        public LogicalResource get(String logicalId) {
+            return byLogicalId.get(logicalId);
+        }
+
+        /**
+         * @return the logical resource with the passed logical id, created (without any versions) if there is none
+         */
+        public LogicalResource getOrCreate(String logicalId) {
+            return byLogicalId.computeIfAbsent(logicalId, k -> {
+                LogicalResource logicalResource = new LogicalResource(k, sequence.incrementAndGet());
+                bySequence.put(logicalResource.sequence, logicalResource);
+                return logicalResource;
+            });
+        }
+
+        /**
+         * @return the logical resources of this table, in the order they were created
+         */
+        public Collection<LogicalResource> values() {
+            return Collections.unmodifiableCollection(bySequence.values());
+        }
+
+        /**
+         * @param code
+         *     the search parameter code
+         * @param key
+         *     the indexed value, as returned by {@link MemoryStore#indexKey(IndexValue)}
+         * @return
+         *     the logical ids of the resources whose current version may have the passed value (never null)
+         */
+        public Set<String> lookup(String code, String key) {
+            Map<String, Set<String>> values = postings.get(code);
+            Set<String> logicalIds = (values != null) ? values.get(key) : null;
+            return (logicalIds != null) ? Collections.unmodifiableSet(logicalIds) : Collections.emptySet();
+        }
+
+        /**
+         * Add a new version to the passed logical resource of this table and update the inverted index; callers must
+         * hold the monitor of the logical resource and pass the next version id
+         */
+        void addVersion(LogicalResource logicalResource, ResourceVersion version) {
+            ResourceVersion previous = logicalResource.getCurrent();
+            Map<String, Set<String>> added = addPostings(logicalResource.logicalId, version.getIndex());
+            logicalResource.addVersion(version);
+            if (previous != null) {
+                removePostings(logicalResource.logicalId, previous.getIndex(), added);
+            }
+        }
+
+        /**
+         * Replace the search index of the current version of the passed logical resource and update the inverted
+         * index; callers must hold the monitor of the logical resource
+         */
+        void reindexCurrent(LogicalResource logicalResource, Map<String, List<IndexValue>> index, Instant tstamp) {
+            ResourceVersion previous = logicalResource.getCurrent();
+            Map<String, Set<String>> added = addPostings(logicalResource.logicalId, index);
+            logicalResource.reindexCurrent(index, tstamp);
+            removePostings(logicalResource.logicalId, previous.getIndex(), added);
+        }
+
+        /**
+         * @return the keys added, per search parameter code
+         */
+        private Map<String, Set<String>> addPostings(String logicalId, Map<String, List<IndexValue>> index) {
+            Map<String, Set<String>> added = new HashMap<>();
+            for (Map.Entry<String, List<IndexValue>> entry : index.entrySet()) {
+                for (IndexValue indexValue : entry.getValue()) {
+                    String key = indexKey(indexValue);
+                    if (key != null && added.computeIfAbsent(entry.getKey(), k -> new HashSet<>()).add(key)) {
+                        // add under the lock of the key, so it can't race with the removal of an empty posting list
+                        postings.computeIfAbsent(entry.getKey(), k -> new ConcurrentHashMap<>())
+                            .compute(key, (k, logicalIds) -> {
+                                Set<String> result = (logicalIds != null) ? logicalIds : ConcurrentHashMap.newKeySet();
+                                result.add(logicalId);
+                                return result;
+                            });
+                    }
+                }
+            }
+            return added;
+        }
+
+        /**
+         * Remove the postings of the passed index which are not in the passed (just added) keys
+         */
+        private void removePostings(String logicalId, Map<String, List<IndexValue>> index, Map<String, Set<String>> keep) {
+            for (Map.Entry<String, List<IndexValue>> entry : index.entrySet()) {
+                Set<String> kept = keep.getOrDefault(entry.getKey(), Collections.emptySet());
+                Map<String, Set<String>> values = postings.get(entry.getKey());
+                if (values == null) {
+                    continue;
+                }
+                for (IndexValue indexValue : entry.getValue()) {
+                    String key = indexKey(indexValue);
+                    if (key != null && !kept.contains(key)) {
+                        // drop the posting list when it becomes empty
+                        values.computeIfPresent(key, (k, logicalIds) -> {
+                            logicalIds.remove(logicalId);
+                            return logicalIds.isEmpty() ? null : logicalIds;
+                        });
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the key under which the passed value is held in the inverted index of its table, or null if values of
+     *     its type are not indexed: the code of a token (any system), the logical id (or full value) of a reference and
+     *     the exact value of a string or uri
+     */
+    static String indexKey(IndexValue indexValue) {
+        if (indexValue instanceof TokenValue) {
+            return ((TokenValue) indexValue).getCode();
+        }
+        if (indexValue instanceof ReferenceValue) {
+            return ((ReferenceValue) indexValue).getValue();
+        }
+        if (indexValue instanceof StringValue) {
+            return ((StringValue) indexValue).getValue();
+        }
+        return null;
+    }
+
+    /**
+     * A logical resource and its versions
+     */
+    public static class LogicalResource {
+        private final String logicalId;
+        private final long sequence;
+
+        // oldest version first; replaced as a whole when a version is added
+        private volatile List<ResourceVersion> versions = Collections.emptyList();
+
+        // the tstamp of the last reindex operation which processed this logical resource
+        private volatile Instant reindexTstamp;
+
+        private LogicalResource(String logicalId, long sequence) {
+            this.logicalId = logicalId;
+            this.sequence = sequence;
+        }
+
+        public String getLogicalId() {
+            return logicalId;
+        }
+
+        /**
+         * @return the position of this logical resource in the creation order of the store
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * @return the current version, or null if the logical resource does not have any versions yet
+         */
+        public ResourceVersion getCurrent() {
+            List<ResourceVersion> versions = this.versions;
+            return versions.isEmpty() ? null : versions.get(versions.size() - 1);
+        }
+
+        /**
+         * @return the passed version, or null if there is no such version
+         */
+        public ResourceVersion getVersion(int versionId) {
+            List<ResourceVersion> versions = this.versions;
+            return (versionId >= 1 && versionId <= versions.size()) ? versions.get(versionId - 1) : null;
+        }
+
+        /**
+         * @return all versions, oldest first
+         */
+        public List<ResourceVersion> getVersions() {
+            return versions;
+        }
+
+        /**
+         * Add a new version; callers must hold the monitor of this logical resource and pass the next version id
+         */
+        void addVersion(ResourceVersion version) {
+            if (version.getVersionId() != versions.size() + 1) {
+                throw new IllegalStateException("Unexpected version " + version.getVersionId() + " for logical resource " + logicalId);
+            }
+            List<ResourceVersion> newVersions = new ArrayList<>(versions.size() + 1);
+            newVersions.addAll(versions);
+            newVersions.add(version);
+            versions = Collections.unmodifiableList(newVersions);
+        }
+
+        /**
+         * @return the tstamp of the last reindex operation which processed this logical resource, or null if none did
+         */
+        public Instant getReindexTstamp() {
+            return reindexTstamp;
+        }
+
+        /**
+         * Replace the search index of the current version; callers must hold the monitor of this logical resource
+         */
+        void reindexCurrent(Map<String, List<IndexValue>> index, Instant tstamp) {
+            ResourceVersion current = getCurrent();
+            List<ResourceVersion> newVersions = new ArrayList<>(versions);
+            newVersions.set(newVersions.size() - 1,
+                new ResourceVersion(current.getResource(), current.getVersionId(), current.getLastUpdated(), current.isDeleted(), index));
+            versions = Collections.unmodifiableList(newVersions);
+            reindexTstamp = tstamp;
+        }
+    }
+
+    /**
+     * A single (immutable) version of a logical resource
+     */
+    public static class ResourceVersion {
+        private final Resource resource;
+        private final int versionId;
+        private final Instant lastUpdated;
+        private final boolean deleted;
+        private final Map<String, List<IndexValue>> index;
+
+        public ResourceVersion(Resource resource, int versionId, Instant lastUpdated, boolean deleted, Map<String, List<IndexValue>> index) {
+            this.resource = resource;
+            this.versionId = versionId;
+            this.lastUpdated = lastUpdated;
+            this.deleted = deleted;
+            this.index = index;
+        }
+
+        public Resource getResource() {
+            return resource;
+        }
+
+        public int getVersionId() {
+            return versionId;
+        }
+
+        public Instant getLastUpdated() {
+            return lastUpdated;
+        }
+
+        public boolean isDeleted() {
+            return deleted;
+        }
+
+        /**
+         * @return the extracted search parameter values keyed by search parameter code (empty for deleted versions)
+         */
+        public Map<String, List<IndexValue>> getIndex() {
+            return index;
+        }
+
+        /**
+         * @return the extracted values of the passed search parameter (never null)
+         */
+        public List<IndexValue> getValues(String code) {
+            List<IndexValue> values = index.get(code);
+            return (values != null) ? values : Collections.emptyList();
+        }
+    }
+}
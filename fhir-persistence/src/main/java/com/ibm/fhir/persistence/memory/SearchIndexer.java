@@ -0,0 +1,532 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.memory;
+
+import static com.ibm.fhir.model.type.code.SearchParamType.DATE;
+import static com.ibm.fhir.model.type.code.SearchParamType.NUMBER;
+import static com.ibm.fhir.model.type.code.SearchParamType.QUANTITY;
+import static com.ibm.fhir.model.type.code.SearchParamType.REFERENCE;
+import static com.ibm.fhir.model.type.code.SearchParamType.STRING;
+import static com.ibm.fhir.model.type.code.SearchParamType.TOKEN;
+import static com.ibm.fhir.model.type.code.SearchParamType.URI;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.resource.SearchParameter;
+import com.ibm.fhir.model.resource.SearchParameter.Component;
+import com.ibm.fhir.model.type.Address;
+import com.ibm.fhir.model.type.CodeableConcept;
+import com.ibm.fhir.model.type.Coding;
+import com.ibm.fhir.model.type.ContactPoint;
+import com.ibm.fhir.model.type.Extension;
+import com.ibm.fhir.model.type.HumanName;
+import com.ibm.fhir.model.type.Identifier;
+import com.ibm.fhir.model.type.Money;
+import com.ibm.fhir.model.type.Period;
+import com.ibm.fhir.model.type.Quantity;
+import com.ibm.fhir.model.type.Range;
+import com.ibm.fhir.model.type.Reference;
+import com.ibm.fhir.model.type.Timing;
+import com.ibm.fhir.model.type.Uri;
+import com.ibm.fhir.model.type.code.SearchParamType;
+import com.ibm.fhir.model.ucum.util.UCUMConversion;
+import com.ibm.fhir.model.ucum.util.UCUMUtil;
+import com.ibm.fhir.model.util.ModelSupport;
+import com.ibm.fhir.model.visitor.DefaultVisitor;
+import com.ibm.fhir.model.visitor.Visitable;
+import com.ibm.fhir.path.FHIRPathNode;
+import com.ibm.fhir.path.FHIRPathSystemValue;
+import com.ibm.fhir.path.evaluator.FHIRPathEvaluator;
+import com.ibm.fhir.path.evaluator.FHIRPathEvaluator.EvaluationContext;
+import com.ibm.fhir.persistence.memory.IndexValue.CompositeValue;
+import com.ibm.fhir.persistence.memory.IndexValue.DateValue;
+import com.ibm.fhir.persistence.memory.IndexValue.NumberValue;
+import com.ibm.fhir.persistence.memory.IndexValue.QuantityValue;
+import com.ibm.fhir.persistence.memory.IndexValue.ReferenceValue;
+import com.ibm.fhir.persistence.memory.IndexValue.StringValue;
+import com.ibm.fhir.persistence.memory.IndexValue.TokenValue;
+import com.ibm.fhir.search.compartment.CompartmentUtil;
+import com.ibm.fhir.search.date.DateTimeHandler;
+import com.ibm.fhir.search.reference.value.CompartmentReference;
+import com.ibm.fhir.search.util.ReferenceUtil;
+import com.ibm.fhir.search.util.ReferenceValue.ReferenceType;
+import com.ibm.fhir.search.util.SearchUtil;
+
+/**
+ * Builds the in-memory search index for a resource version from the nodes selected by
+ * {@link SearchUtil#extractParameterValues(Resource)}.
+ *
+ * <p>Values are extracted the same way as the JDBC persistence layer extracts them, including the internal
+ * compartment membership parameters (see {@link CompartmentUtil#makeCompartmentParamName(String)}).
+ */
+public final class SearchIndexer {
+    private static final Logger log = Logger.getLogger(SearchIndexer.class.getName());
+
+    private static final String SPECIAL_VALUES_SYSTEM = "http://terminology.hl7.org/CodeSystem/special-values";
+    private static final String UCUM_SYSTEM = "http://unitsofmeasure.org";
+
+    // _id and _lastUpdated are matched against the resource version itself
+    private static final List<String> SPECIAL_HANDLING = Arrays.asList("_id", "_lastUpdated");
+
+    private SearchIndexer() { }
+
+    /**
+     * Extract the search parameter values of the passed resource
+     *
+     * @param resource
+     *     the resource
+     * @return
+     *     the extracted values keyed by search parameter code
+     * @throws Exception
+     *     if the search parameter values could not be extracted
+     */
+    public static Map<String, List<IndexValue>> index(Resource resource) throws Exception {
+        Map<String, List<IndexValue>> index = new HashMap<>();
+        String resourceType = resource.getClass().getSimpleName();
+
+        for (Map.Entry<SearchParameter, List<FHIRPathNode>> entry : SearchUtil.extractParameterValues(resource).entrySet()) {
+            SearchParameter sp = entry.getKey();
+            String code = sp.getCode().getValue();
+            if (SPECIAL_HANDLING.contains(code)) {
+                continue;
+            }
+
+            List<IndexValue> values = new ArrayList<>();
+            List<IndexValue> canonicalValues = new ArrayList<>();
+            for (FHIRPathNode node : entry.getValue()) {
+                if (SearchParamType.COMPOSITE.equals(sp.getType())) {
+                    IndexValue value = extractComposite(resourceType, sp, node);
+                    if (value != null) {
+                        values.add(value);
+                    }
+                } else {
+                    values.addAll(extract(sp.getType(), node, canonicalValues));
+                }
+            }
+            if (!values.isEmpty()) {
+                index.computeIfAbsent(code, k -> new ArrayList<>()).addAll(values);
+            }
+            if (!canonicalValues.isEmpty()) {
+                index.computeIfAbsent(SearchUtil.makeCanonicalQuantityParamName(code), k -> new ArrayList<>()).addAll(canonicalValues);
+            }
+        }
+
+        // the compartment membership of the resource, used for compartment searches
+        Map<String, Set<String>> compartmentRefParams = CompartmentUtil.getCompartmentParamsForResourceType(resourceType);
+        Map<String, Set<CompartmentReference>> compartmentMap = SearchUtil.extractCompartmentParameterValues(resource, compartmentRefParams);
+        for (Map.Entry<String, Set<CompartmentReference>> entry : compartmentMap.entrySet()) {
+            String compartmentName = entry.getKey();
+            List<IndexValue> values = index.computeIfAbsent(CompartmentUtil.makeCompartmentParamName(compartmentName), k -> new ArrayList<>());
+            for (CompartmentReference compartmentRef : entry.getValue()) {
+                values.add(new ReferenceValue(compartmentName, compartmentRef.getReferenceResourceValue()));
+            }
+        }
+
+        for (Map.Entry<String, List<IndexValue>> entry : index.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+        return Collections.unmodifiableMap(index);
+    }
+
+    /**
+     * @param canonicalValues
+     *     receives the values of UCUM quantities converted to their canonical unit, or null if they are not wanted
+     */
+    private static List<IndexValue> extract(SearchParamType type, FHIRPathNode node, List<IndexValue> canonicalValues) {
+        if (node.isElementNode()) {
+            ValueBuilder builder = new ValueBuilder(type, canonicalValues);
+            node.asElementNode().element().accept(builder);
+            return builder.result;
+        }
+        if (node.isSystemValue()) {
+            IndexValue value = extract(node.asSystemValue());
+            return (value != null) ? Collections.singletonList(value) : Collections.emptyList();
+        }
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Unable to extract value from '" + node.path() + "'; search parameter value extraction can only be performed on Elements and primitive values.");
+        }
+        return Collections.emptyList();
+    }
+
+    private static IndexValue extract(FHIRPathSystemValue systemValue) {
+        if (systemValue.isBooleanValue()) {
+            return new TokenValue(null, systemValue.asBooleanValue()._boolean() ? "true" : "false");
+        } else if (systemValue.isTemporalValue()) {
+            Instant instant = DateTimeHandler.generateValue(systemValue.asTemporalValue().temporal());
+            return new DateValue(instant, instant);
+        } else if (systemValue.isStringValue()) {
+            return new StringValue(systemValue.asStringValue().string());
+        } else if (systemValue.isNumberValue()) {
+            BigDecimal number = systemValue.asNumberValue().decimal();
+            return new NumberValue(number, number, number);
+        } else if (systemValue.isQuantityValue()) {
+            BigDecimal number = systemValue.asQuantityValue().value();
+            return new QuantityValue(number, number, number, UCUM_SYSTEM, systemValue.asQuantityValue().unit());
+        }
+        return null;
+    }
+
+    /**
+     * Only composites where every component selects a value are indexed; where a component selects more than one
+     * value, the first one is used (like the JDBC persistence layer)
+     */
+    private static IndexValue extractComposite(String resourceType, SearchParameter sp, FHIRPathNode node) throws Exception {
+        EvaluationContext context;
+        if (node.isResourceNode()) {
+            context = new EvaluationContext(node.asResourceNode().resource());
+        } else if (node.isElementNode()) {
+            context = new EvaluationContext(node.asElementNode().element());
+        } else {
+            throw new IllegalStateException("Composite parameter expression must select one or more FHIR elements");
+        }
+
+        List<IndexValue> components = new ArrayList<>();
+        for (Component component : sp.getComponent()) {
+            Collection<FHIRPathNode> nodes = FHIRPathEvaluator.evaluator().evaluate(context, component.getExpression().getValue());
+            if (nodes.isEmpty()) {
+                return null;
+            }
+            SearchParameter componentSP = SearchUtil.getSearchParameter(resourceType, component.getDefinition());
+            List<IndexValue> values = extract(componentSP.getType(), nodes.iterator().next(), null);
+            if (values.isEmpty()) {
+                return null;
+            }
+            components.add(values.get(0));
+        }
+        return new CompositeValue(components);
+    }
+
+    /**
+     * Implicit range of a decimal value based on its precision, e.g. [1.95, 2.05) for 2.0
+     */
+    static BigDecimal generateLowerBound(BigDecimal original) {
+        return original.subtract(new BigDecimal("5e" + -1 * (original.scale() + 1)));
+    }
+
+    static BigDecimal generateUpperBound(BigDecimal original) {
+        return original.add(new BigDecimal("5e" + -1 * (original.scale() + 1)));
+    }
+
+    /**
+     * Converts the elements selected by a search parameter expression into index values; combinations of search
+     * parameter type and element type which are not meaningful are skipped
+     */
+    private static class ValueBuilder extends DefaultVisitor {
+        private final SearchParamType type;
+        private final List<IndexValue> result = new ArrayList<>();
+        private final List<IndexValue> canonicalResult;
+
+        ValueBuilder(SearchParamType type, List<IndexValue> canonicalResult) {
+            super(false);
+            this.type = type;
+            this.canonicalResult = canonicalResult;
+        }
+
+        @Override
+        public boolean visit(java.lang.String elementName, int elementIndex, Visitable visitable) {
+            return false;
+        }
+
+        @Override
+        public boolean visit(java.lang.String elementName, int elementIndex, com.ibm.fhir.model.type.Boolean _boolean) {
+            if (_boolean.hasValue() && TOKEN.equals(type)) {
+                result.add(new TokenValue(SPECIAL_VALUES_SYSTEM, _boolean.getValue() ? "true" : "false"));
+            }
+            return false;
+        }
+
+        @Override
+        public boolean visit(java.lang.String elementName, int elementIndex, com.ibm.fhir.model.type.Canonical canonical) {
+            return visit(elementName, elementIndex, (Uri) canonical);
+        }
+
+        @Override
+        public boolean visit(java.lang.String elementName, int elementIndex, com.ibm.fhir.model.type.Code code) {
+            if (code.hasValue() && TOKEN.equals(type)) {
+                result.add(new TokenValue(ModelSupport.getSystem(code), code.getValue()));
+            }
+            return false;
+        }
+
+        @Override
+        public boolean visit(java.lang.String elementName, int elementIndex, com.ibm.fhir.model.type.Date date) {
+            if (date.hasValue() && DATE.equals(type)) {
+                result.add(new DateValue(DateTimeHandler.generateValue(date.getValue()), DateTimeHandler.generateUpperBound(date)));
+            }
+            return false;
+        }
+
+        @Override
+        public boolean visit(java.lang.String elementName, int elementIndex, com.ibm.fhir.model.type.DateTime dateTime) {
+            if (dateTime.hasValue() && DATE.equals(type)) {
+                result.add(new DateValue(DateTimeHandler.generateValue(dateTime.getValue()), DateTimeHandler.generateUpperBound(dateTime)));
+            }
+            return false;
+        }
+
+        @Override
+        public boolean visit(java.lang.String elementName, int elementIndex, com.ibm.fhir.model.type.Decimal decimal) {
+            if (decimal.hasValue() && NUMBER.equals(type)) {
+                BigDecimal value = decimal.getValue();
+                result.add(new NumberValue(value, generateLowerBound(value), generateUpperBound(value)));
+            }
+            return false;
+        }
+
+        @Override
+        public boolean visit(java.lang.String elementName, int elementIndex, com.ibm.fhir.model.type.Id id) {
+            if (id.hasValue() && TOKEN.equals(type)) {
+                result.add(new TokenValue(null, id.getValue()));
+            }
+            return false;
+        }
+
+        @Override
+        public boolean visit(java.lang.String elementName, int elementIndex, com.ibm.fhir.model.type.Instant instant) {
+            if (instant.hasValue() && DATE.equals(type)) {
+                Instant value = instant.getValue().toInstant();
+                result.add(new DateValue(value, value));
+            }
+            return false;
+        }
+
+        @Override
+        public boolean visit(java.lang.String elementName, int elementIndex, com.ibm.fhir.model.type.Integer integer) {
+            if (integer.hasValue() && NUMBER.equals(type)) {
+                BigDecimal value = new BigDecimal(integer.getValue());
+                result.add(new NumberValue(value, value, value));
+            }
+            return false;
+        }
+
+        @Override
+        public boolean visit(java.lang.String elementName, int elementIndex, com.ibm.fhir.model.type.String value) {
+            if (value.hasValue()) {
+                if (STRING.equals(type)) {
+                    result.add(new StringValue(value.getValue()));
+                } else if (TOKEN.equals(type)) {
+                    result.add(new TokenValue(null, value.getValue()));
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean visit(java.lang.String elementName, int elementIndex, Uri uri) {
+            if (uri.hasValue()) {
+                if (URI.equals(type)) {
+                    result.add(new StringValue(uri.getValue()));
+                } else if (REFERENCE.equals(type)) {
+                    result.add(new ReferenceValue(null, uri.getValue()));
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean visit(java.lang.String elementName, int elementIndex, Address address) {
+            if (STRING.equals(type)) {
+                for (com.ibm.fhir.model.type.String line : address.getLine()) {
+                    addString(line);
+                }
+                addString(address.getCity());
+                addString(address.getDistrict());
+                addString(address.getState());
+                addString(address.getCountry());
+                addString(address.getPostalCode());
+                addString(address.getText());
+            }
+            return false;
+        }
+
+        @Override
+        public boolean visit(java.lang.String elementName, int elementIndex, CodeableConcept codeableConcept) {
+            if (TOKEN.equals(type)) {
+                for (Coding coding : codeableConcept.getCoding()) {
+                    visit(elementName, elementIndex, coding);
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean visit(java.lang.String elementName, int elementIndex, Coding coding) {
+            if (TOKEN.equals(type) && coding.getCode() != null && coding.getCode().hasValue()) {
+                String system = (coding.getSystem() != null) ? coding.getSystem().getValue() : null;
+                result.add(new TokenValue(system, coding.getCode().getValue()));
+            }
+            return false;
+        }
+
+        @Override
+        public boolean visit(java.lang.String elementName, int elementIndex, ContactPoint contactPoint) {
+            if (TOKEN.equals(type) && contactPoint.getValue() != null && contactPoint.getValue().hasValue()) {
+                result.add(new TokenValue(null, contactPoint.getValue().getValue()));
+            }
+            return false;
+        }
+
+        @Override
+        public boolean visit(java.lang.String elementName, int elementIndex, HumanName humanName) {
+            if (STRING.equals(type)) {
+                addString(humanName.getFamily());
+                for (com.ibm.fhir.model.type.String given : humanName.getGiven()) {
+                    addString(given);
+                }
+                for (com.ibm.fhir.model.type.String prefix : humanName.getPrefix()) {
+                    addString(prefix);
+                }
+                for (com.ibm.fhir.model.type.String suffix : humanName.getSuffix()) {
+                    addString(suffix);
+                }
+                addString(humanName.getText());
+            }
+            return false;
+        }
+
+        @Override
+        public boolean visit(java.lang.String elementName, int elementIndex, Money money) {
+            if (QUANTITY.equals(type) && money.getValue() != null && money.getValue().hasValue()) {
+                BigDecimal value = money.getValue().getValue();
+                String currency = (money.getCurrency() != null) ? money.getCurrency().getValue() : null;
+                result.add(new QuantityValue(value, null, null, null, currency));
+            }
+            return false;
+        }
+
+        @Override
+        public boolean visit(java.lang.String elementName, int elementIndex, Period period) {
+            if (DATE.equals(type) && (period.getStart() != null || period.getEnd() != null)) {
+                Instant start = (period.getStart() == null || period.getStart().getValue() == null) ?
+                        IndexValue.SMALLEST_INSTANT : DateTimeHandler.generateValue(period.getStart().getValue());
+                Instant end = (period.getEnd() == null || period.getEnd().getValue() == null) ?
+                        IndexValue.LARGEST_INSTANT : DateTimeHandler.generateValue(period.getEnd().getValue());
+                result.add(new DateValue(start, end));
+            }
+            return false;
+        }
+
+        @Override
+        public boolean visit(java.lang.String elementName, int elementIndex, Quantity quantity) {
+            if (QUANTITY.equals(type) && quantity.getValue() != null && quantity.getValue().hasValue()) {
+                BigDecimal value = quantity.getValue().getValue();
+                BigDecimal low = generateLowerBound(value);
+                BigDecimal high = generateUpperBound(value);
+                String code = (quantity.getCode() != null) ? quantity.getCode().getValue() : null;
+                if (code != null) {
+                    String system = (quantity.getSystem() != null) ? quantity.getSystem().getValue() : null;
+                    result.add(new QuantityValue(value, low, high, system, code));
+                    addCanonicalValue(value, low, high, system, code);
+                }
+                // the display unit is indexed too, unless it is the same as the coded unit
+                if (quantity.getUnit() != null && quantity.getUnit().hasValue() && !quantity.getUnit().getValue().equals(code)) {
+                    result.add(new QuantityValue(value, low, high, null, quantity.getUnit().getValue()));
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean visit(java.lang.String elementName, int elementIndex, Range range) {
+            if (QUANTITY.equals(type)) {
+                Quantity low = range.getLow();
+                Quantity high = range.getHigh();
+                BigDecimal lowValue = (low != null && low.getValue() != null) ? low.getValue().getValue() : null;
+                BigDecimal highValue = (high != null && high.getValue() != null) ? high.getValue().getValue() : null;
+                Quantity unitSource = (lowValue != null) ? low : high;
+                if (lowValue != null || highValue != null) {
+                    String system = (unitSource.getSystem() != null) ? unitSource.getSystem().getValue() : null;
+                    String code = (unitSource.getCode() != null) ? unitSource.getCode().getValue() :
+                        (unitSource.getUnit() != null) ? unitSource.getUnit().getValue() : null;
+                    result.add(new QuantityValue(null, lowValue, highValue, system, code));
+                    addCanonicalValue(null, lowValue, highValue, system, code);
+                }
+            }
+            return false;
+        }
+
+        /**
+         * UCUM quantities are also indexed in their canonical unit, under their own parameter name, which is what
+         * quantity searches with a UCUM system are matched against
+         */
+        private void addCanonicalValue(BigDecimal value, BigDecimal low, BigDecimal high, String system, String code) {
+            if (canonicalResult != null && UCUM_SYSTEM.equals(system)) {
+                UCUMConversion conversion = UCUMUtil.getCanonicalConversion(code);
+                if (conversion != null) {
+                    canonicalResult.add(new QuantityValue(convert(conversion, value), convert(conversion, low), convert(conversion, high),
+                        system, conversion.getCanonicalUnit()));
+                }
+            }
+        }
+
+        private BigDecimal convert(UCUMConversion conversion, BigDecimal value) {
+            return (value != null) ? conversion.convert(value) : null;
+        }
+
+        @Override
+        public boolean visit(java.lang.String elementName, int elementIndex, Identifier identifier) {
+            if (TOKEN.equals(type) && identifier.getValue() != null && identifier.getValue().hasValue()) {
+                String system = (identifier.getSystem() != null) ? identifier.getSystem().getValue() : null;
+                result.add(new TokenValue(system, identifier.getValue().getValue()));
+            }
+            return false;
+        }
+
+        @Override
+        public boolean visit(java.lang.String elementName, int elementIndex, Reference reference) {
+            if (REFERENCE.equals(type)) {
+                try {
+                    com.ibm.fhir.search.util.ReferenceValue refValue = ReferenceUtil.createReferenceValueFrom(reference, ReferenceUtil.getBaseUrl(null));
+                    if (refValue.getType() != ReferenceType.INVALID && refValue.getType() != ReferenceType.DISPLAY_ONLY) {
+                        result.add(new ReferenceValue(refValue.getTargetResourceType(), refValue.getValue()));
+                    }
+                } catch (Exception e) {
+                    log.log(Level.WARNING, "Error processing reference", e);
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean visit(java.lang.String elementName, int elementIndex, Timing timing) {
+            if (DATE.equals(type)) {
+                // only the bounds of the repeat are indexed; the events are expected to be selected by the expression
+                if (timing.getRepeat() != null && timing.getRepeat().getBounds() != null) {
+                    timing.getRepeat().getBounds().accept(this);
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean visit(java.lang.String elementName, int elementIndex, Extension extension) {
+            if (extension.getValue() != null) {
+                extension.getValue().accept(this);
+                return false;
+            }
+            return true;
+        }
+
+        private void addString(com.ibm.fhir.model.type.String value) {
+            if (value != null && value.hasValue()) {
+                result.add(new StringValue(value.getValue()));
+            }
+        }
+    }
+}
@@ -0,0 +1,522 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.memory;
+
+import static com.ibm.fhir.persistence.memory.FHIRPersistenceMemoryImpl.buildNotSupportedException;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
+import com.ibm.fhir.persistence.memory.IndexValue.CompositeValue;
+import com.ibm.fhir.persistence.memory.IndexValue.DateValue;
+import com.ibm.fhir.persistence.memory.IndexValue.NumberValue;
+import com.ibm.fhir.persistence.memory.IndexValue.QuantityValue;
+import com.ibm.fhir.persistence.memory.IndexValue.ReferenceValue;
+import com.ibm.fhir.persistence.memory.IndexValue.StringValue;
+import com.ibm.fhir.persistence.memory.IndexValue.TokenValue;
+import com.ibm.fhir.persistence.memory.MemoryStore.LogicalResource;
+import com.ibm.fhir.persistence.memory.MemoryStore.ResourceTable;
+import com.ibm.fhir.persistence.memory.MemoryStore.ResourceVersion;
+import com.ibm.fhir.search.SearchConstants.Modifier;
+import com.ibm.fhir.search.SearchConstants.Prefix;
+import com.ibm.fhir.search.SearchConstants.Type;
+import com.ibm.fhir.search.parameters.QueryParameter;
+import com.ibm.fhir.search.parameters.QueryParameterValue;
+import com.ibm.fhir.search.util.SearchUtil;
+
+/**
+ * Evaluates search parameters against the search index of a single resource version.
+ *
+ * <p>The matching rules follow those of the JDBC query builder (and its DateParmBehaviorUtil,
+ * LastUpdatedParmBehaviorUtil and NumberParmBehaviorUtil helpers) so that both persistence layers return the same
+ * results. A matcher is created per search; the targets of reverse chained parameters are computed once per search
+ * rather than once per candidate resource.
+ */
+class SearchMatcher {
+    private static final String ID = "_id";
+    private static final String LAST_UPDATED = "_lastUpdated";
+
+    private final MemoryStore store;
+    private final Map<QueryParameter, Set<String>> reverseChainTargets = new HashMap<>();
+
+    SearchMatcher(MemoryStore store) {
+        this.store = store;
+    }
+
+    /**
+     * @return true if the passed resource version matches all of the passed parameters
+     */
+    boolean matches(String resourceType, String logicalId, ResourceVersion version, List<QueryParameter> queryParms)
+            throws FHIRPersistenceException {
+        for (QueryParameter queryParm : queryParms) {
+            if (!matches(resourceType, logicalId, version, queryParm)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Use the inverted index of the passed table to narrow the resources which can match the passed parameters
+     *
+     * @return the logical ids of the candidates, a superset of the resources which match, or null if none of the
+     *     parameters can be answered from the index and every resource of the table is a candidate
+     */
+    Set<String> findCandidates(ResourceTable table, List<QueryParameter> queryParms) {
+        Set<String> result = null;
+        for (QueryParameter queryParm : queryParms) {
+            Set<String> candidates = findCandidates(table, queryParm);
+            if (candidates == null) {
+                continue;
+            }
+            if (result == null) {
+                result = candidates;
+            } else {
+                Set<String> smaller = (candidates.size() < result.size()) ? candidates : result;
+                Set<String> larger = (smaller == candidates) ? result : candidates;
+                result = new HashSet<>(smaller);
+                result.retainAll(larger);
+            }
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the candidates of a single parameter (the union over its values), or null if the parameter can't be
+     *     answered from the index
+     */
+    private Set<String> findCandidates(ResourceTable table, QueryParameter queryParm) {
+        if (queryParm.isReverseChained() || queryParm.isChained()) {
+            return null;
+        }
+        Set<String> result = new HashSet<>();
+        if (queryParm.isInclusionCriteria()) {
+            for (QueryParameter currentParm = queryParm; currentParm != null; currentParm = currentParm.getNextParameter()) {
+                if (currentParm.getCode().contains(".")) {
+                    return null;
+                }
+                for (QueryParameterValue value : currentParm.getValues()) {
+                    String[] parts = value.getValueString().split("/");
+                    result.addAll(table.lookup(currentParm.getCode(), (parts.length == 2) ? parts[1] : value.getValueString()));
+                }
+            }
+            return result;
+        }
+
+        String code = queryParm.getCode();
+        Modifier modifier = queryParm.getModifier();
+        if (ID.equals(code)) {
+            for (QueryParameterValue value : queryParm.getValues()) {
+                if (value.getValueCode() != null) {
+                    result.add(value.getValueCode());
+                }
+            }
+            return result;
+        }
+        for (QueryParameterValue value : queryParm.getValues()) {
+            String key;
+            if (Type.TOKEN.equals(queryParm.getType()) && modifier == null) {
+                key = value.getValueCode();
+            } else if (Type.REFERENCE.equals(queryParm.getType()) && (modifier == null || Modifier.TYPE.equals(modifier))) {
+                String[] parts = value.getValueString().split("/");
+                key = (parts.length == 2) ? parts[1] : value.getValueString();
+            } else if ((Type.STRING.equals(queryParm.getType()) && Modifier.EXACT.equals(modifier))
+                    || (Type.URI.equals(queryParm.getType()) && modifier == null)) {
+                key = value.getValueString();
+            } else {
+                return null;
+            }
+            if (key != null) {
+                result.addAll(table.lookup(code, key));
+            }
+        }
+        return result;
+    }
+
+    private boolean matches(String resourceType, String logicalId, ResourceVersion version, QueryParameter queryParm)
+            throws FHIRPersistenceException {
+        if (queryParm.isReverseChained()) {
+            return matchesReverseChain(resourceType, logicalId, queryParm);
+        }
+        if (queryParm.isChained()) {
+            return matchesChain(version, queryParm);
+        }
+        if (queryParm.isInclusionCriteria()) {
+            return matchesInclusionCriteria(version, queryParm);
+        }
+
+        String code = queryParm.getCode();
+        if (ID.equals(code)) {
+            for (QueryParameterValue value : queryParm.getValues()) {
+                if (logicalId.equals(value.getValueCode())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (LAST_UPDATED.equals(code)) {
+            for (QueryParameterValue value : queryParm.getValues()) {
+                if (matchesLastUpdated(version.getLastUpdated(), value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        List<IndexValue> indexValues = version.getValues(code);
+        if (Modifier.MISSING.equals(queryParm.getModifier())) {
+            for (QueryParameterValue value : queryParm.getValues()) {
+                if (Boolean.parseBoolean(value.getValueCode()) == indexValues.isEmpty()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (Type.SPECIAL.equals(queryParm.getType())) {
+            throw buildNotSupportedException("Search parameter '" + code + "' of type 'special' is not supported");
+        }
+
+        for (QueryParameterValue value : queryParm.getValues()) {
+            // UCUM quantities are also matched in their canonical unit against the canonical values added by the
+            // SearchIndexer, in addition to the values as recorded
+            QueryParameterValue canonicalValue = Type.QUANTITY.equals(queryParm.getType()) ? SearchUtil.getCanonicalQuantityValue(value) : null;
+            if (canonicalValue != null) {
+                for (IndexValue indexValue : version.getValues(SearchUtil.makeCanonicalQuantityParamName(code))) {
+                    if (matches(queryParm, canonicalValue, indexValue)) {
+                        return true;
+                    }
+                }
+            }
+            for (IndexValue indexValue : indexValues) {
+                if (matches(queryParm, value, indexValue)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A chained parameter (e.g. subject:Patient.name=x) matches if one of the resources referenced by this resource
+     * matches the next parameter in the chain
+     */
+    private boolean matchesChain(ResourceVersion version, QueryParameter queryParm) throws FHIRPersistenceException {
+        String targetType = queryParm.getModifierResourceTypeName();
+        QueryParameter nextParm = queryParm.getNextParameter();
+        for (IndexValue indexValue : version.getValues(queryParm.getCode())) {
+            if (!(indexValue instanceof ReferenceValue)) {
+                continue;
+            }
+            ReferenceValue ref = (ReferenceValue) indexValue;
+            String refType = ref.getTargetResourceType();
+            if (refType == null || (targetType != null && !targetType.equals(refType))) {
+                continue;
+            }
+            ResourceVersion target = getCurrent(refType, ref.getValue());
+            if (target != null && matches(refType, ref.getValue(), target, nextParm)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A reverse chained parameter (e.g. _has:Observation:patient:code=x) matches if a resource of the referencing type
+     * refers to this resource and matches the next parameter in the chain
+     */
+    private boolean matchesReverseChain(String resourceType, String logicalId, QueryParameter queryParm)
+            throws FHIRPersistenceException {
+        Set<String> targets = reverseChainTargets.get(queryParm);
+        if (targets == null) {
+            targets = new HashSet<>();
+            String referencingType = queryParm.getModifierResourceTypeName();
+            ResourceTable table = store.findTable(referencingType);
+            if (table != null) {
+                for (LogicalResource logicalResource : table.values()) {
+                    ResourceVersion current = logicalResource.getCurrent();
+                    if (current == null || current.isDeleted()
+                            || !matches(referencingType, logicalResource.getLogicalId(), current, queryParm.getNextParameter())) {
+                        continue;
+                    }
+                    for (IndexValue indexValue : current.getValues(queryParm.getCode())) {
+                        if (indexValue instanceof ReferenceValue) {
+                            ReferenceValue ref = (ReferenceValue) indexValue;
+                            targets.add(ref.getTargetResourceType() + "/" + ref.getValue());
+                        }
+                    }
+                }
+            }
+            reverseChainTargets.put(queryParm, targets);
+        }
+        return targets.contains(resourceType + "/" + logicalId);
+    }
+
+    /**
+     * Compartment inclusion criteria are a chain of reference parameters, any of which must refer to the compartment
+     */
+    private boolean matchesInclusionCriteria(ResourceVersion version, QueryParameter queryParm) throws FHIRPersistenceException {
+        for (QueryParameter currentParm = queryParm; currentParm != null; currentParm = currentParm.getNextParameter()) {
+            if (currentParm.getCode().contains(".")) {
+                throw buildNotSupportedException("Chained compartment inclusion criteria are not supported: " + currentParm.getCode());
+            }
+            for (QueryParameterValue value : currentParm.getValues()) {
+                String[] parts = value.getValueString().split("/");
+                String compartmentType = (parts.length == 2) ? parts[0] : null;
+                String compartmentId = (parts.length == 2) ? parts[1] : value.getValueString();
+                for (IndexValue indexValue : version.getValues(currentParm.getCode())) {
+                    if (indexValue instanceof ReferenceValue) {
+                        ReferenceValue ref = (ReferenceValue) indexValue;
+                        if (compartmentId.equals(ref.getValue())
+                                && (compartmentType == null || compartmentType.equals(ref.getTargetResourceType()))) {
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean matches(QueryParameter queryParm, QueryParameterValue value, IndexValue indexValue)
+            throws FHIRPersistenceException {
+        switch (queryParm.getType()) {
+        case STRING:
+            return (indexValue instanceof StringValue) && matchesString(queryParm.getModifier(), value, (StringValue) indexValue);
+        case URI:
+            return (indexValue instanceof StringValue) && matchesUri(queryParm.getModifier(), value, (StringValue) indexValue);
+        case TOKEN:
+            return (indexValue instanceof TokenValue) && matchesToken(value, (TokenValue) indexValue);
+        case REFERENCE:
+            return (indexValue instanceof ReferenceValue) && matchesReference(queryParm, value, (ReferenceValue) indexValue);
+        case DATE:
+            return (indexValue instanceof DateValue) && matchesDate(value, (DateValue) indexValue);
+        case NUMBER:
+            return (indexValue instanceof NumberValue) && matchesNumber(value, (NumberValue) indexValue);
+        case QUANTITY:
+            return (indexValue instanceof QuantityValue) && matchesQuantity(value, (QuantityValue) indexValue);
+        case COMPOSITE:
+            return (indexValue instanceof CompositeValue) && matchesComposite(value, (CompositeValue) indexValue);
+        default:
+            throw buildNotSupportedException("Parm type not yet supported: " + queryParm.getType().value());
+        }
+    }
+
+    private boolean matchesString(Modifier modifier, QueryParameterValue value, StringValue indexValue) {
+        if (Modifier.EXACT.equals(modifier)) {
+            return value.getValueString().equals(indexValue.getValue());
+        }
+        String searchValue = SearchUtil.normalizeForSearch(value.getValueString());
+        if (Modifier.CONTAINS.equals(modifier)) {
+            return indexValue.getNormalized().contains(searchValue);
+        }
+        return indexValue.getNormalized().startsWith(searchValue);
+    }
+
+    private boolean matchesUri(Modifier modifier, QueryParameterValue value, StringValue indexValue) {
+        String searchValue = value.getValueString();
+        String uri = indexValue.getValue();
+        if (Modifier.BELOW.equals(modifier)) {
+            return uri.equals(searchValue) || uri.startsWith(searchValue + "/");
+        }
+        if (Modifier.ABOVE.equals(modifier) && searchValue.contains("://")) {
+            // the uri matches if it is one of the parent paths of the search value
+            int queryIndex = searchValue.indexOf('?');
+            if (queryIndex != -1) {
+                searchValue = searchValue.substring(0, queryIndex);
+            }
+            int start = searchValue.indexOf("://") + 3;
+            String[] segments = searchValue.substring(start).split("/");
+            StringBuilder prefix = new StringBuilder(searchValue.substring(0, start));
+            for (int i = 0; i < segments.length; i++) {
+                if (i > 0) {
+                    prefix.append('/');
+                }
+                prefix.append(segments[i]);
+                if (uri.equals(prefix.toString())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return uri.equals(searchValue);
+    }
+
+    private boolean matchesToken(QueryParameterValue value, TokenValue indexValue) {
+        if (value.getValueCode() == null || !value.getValueCode().equals(indexValue.getCode())) {
+            return false;
+        }
+        String system = value.getValueSystem();
+        return system == null || system.isEmpty() || system.equals(indexValue.getSystem());
+    }
+
+    private boolean matchesReference(QueryParameter queryParm, QueryParameterValue value, ReferenceValue indexValue) {
+        String searchValue = value.getValueString();
+        String targetType = null;
+        String[] parts = searchValue.split("/");
+        if (parts.length == 2) {
+            targetType = parts[0];
+            searchValue = parts[1];
+        } else if (Modifier.TYPE.equals(queryParm.getModifier())) {
+            targetType = queryParm.getModifierResourceTypeName();
+        }
+        return searchValue.equals(indexValue.getValue())
+                && (targetType == null || targetType.equals(indexValue.getTargetResourceType()));
+    }
+
+    private boolean matchesDate(QueryParameterValue value, DateValue indexValue) {
+        Instant lower = value.getValueDateLowerBound();
+        Instant upper = value.getValueDateUpperBound();
+        Instant start = indexValue.getStart();
+        Instant end = indexValue.getEnd();
+        Prefix prefix = (value.getPrefix() != null) ? value.getPrefix() : Prefix.EQ;
+        switch (prefix) {
+        case EB:
+            return end.isBefore(lower);
+        case SA:
+            return start.isAfter(upper);
+        case GE:
+            return !end.isBefore(lower);
+        case GT:
+            return end.isAfter(lower);
+        case LE:
+            return !start.isAfter(upper);
+        case LT:
+            return start.isBefore(upper);
+        case NE:
+            return start.isBefore(lower) || end.isAfter(upper);
+        case AP:
+        case EQ:
+        default:
+            return !start.isBefore(lower) && !end.isAfter(upper);
+        }
+    }
+
+    private boolean matchesLastUpdated(Instant lastUpdated, QueryParameterValue value) {
+        Instant lower = value.getValueDateLowerBound();
+        Instant upper = value.getValueDateUpperBound();
+        Prefix prefix = (value.getPrefix() != null) ? value.getPrefix() : Prefix.EQ;
+        switch (prefix) {
+        case EB:
+        case LT:
+            return lastUpdated.isBefore(lower);
+        case SA:
+        case GT:
+            return lastUpdated.isAfter(upper);
+        case GE:
+            return !lastUpdated.isBefore(lower);
+        case LE:
+            return !lastUpdated.isAfter(upper);
+        case NE:
+            return lastUpdated.isBefore(lower) || lastUpdated.isAfter(upper);
+        case AP:
+        case EQ:
+        default:
+            return !lastUpdated.isBefore(lower) && !lastUpdated.isAfter(upper);
+        }
+    }
+
+    private boolean matchesNumber(QueryParameterValue value, NumberValue indexValue) {
+        BigDecimal searchValue = value.getValueNumber();
+        BigDecimal lowerBound = SearchIndexer.generateLowerBound(searchValue);
+        BigDecimal upperBound = SearchIndexer.generateUpperBound(searchValue);
+        BigDecimal number = indexValue.getNumber();
+        BigDecimal low = indexValue.getLow();
+        BigDecimal high = indexValue.getHigh();
+        Prefix prefix = (value.getPrefix() != null) ? value.getPrefix() : Prefix.EQ;
+        switch (prefix) {
+        case EB:
+            return lt(high, searchValue);
+        case SA:
+            return gt(low, searchValue);
+        case GE:
+            return ge(number, searchValue) || ge(high, searchValue);
+        case GT:
+            return gt(number, searchValue) || gt(high, searchValue);
+        case LE:
+            return le(number, searchValue) || le(low, searchValue);
+        case LT:
+            return lt(number, searchValue) || lt(low, searchValue);
+        case AP:
+            BigDecimal factor = searchValue.multiply(new BigDecimal("0.1"));
+            return (ge(number, lowerBound.subtract(factor)) && lt(number, upperBound.add(factor)))
+                    || (le(low, upperBound) && ge(high, lowerBound));
+        case NE:
+            return lt(number, lowerBound) || ge(number, upperBound) || lt(low, lowerBound) || gt(high, upperBound);
+        case EQ:
+        default:
+            return (ge(number, lowerBound) && lt(number, upperBound)) || (ge(low, lowerBound) && le(high, upperBound));
+        }
+    }
+
+    private boolean matchesQuantity(QueryParameterValue value, QuantityValue indexValue) {
+        if (!matchesNumber(value, indexValue)) {
+            return false;
+        }
+        String system = value.getValueSystem();
+        if (system != null && !system.isEmpty() && !system.equals(indexValue.getSystem())) {
+            return false;
+        }
+        String code = value.getValueCode();
+        return code == null || code.isEmpty() || code.equals(indexValue.getCode());
+    }
+
+    private boolean matchesComposite(QueryParameterValue value, CompositeValue indexValue) throws FHIRPersistenceException {
+        List<QueryParameter> components = value.getComponent();
+        List<IndexValue> indexComponents = indexValue.getComponents();
+        if (components.size() != indexComponents.size()) {
+            return false;
+        }
+        for (int i = 0; i < components.size(); i++) {
+            QueryParameter component = components.get(i);
+            boolean matched = false;
+            for (QueryParameterValue componentValue : component.getValues()) {
+                if (matches(component, componentValue, indexComponents.get(i))) {
+                    matched = true;
+                    break;
+                }
+            }
+            if (!matched) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private ResourceVersion getCurrent(String resourceType, String logicalId) {
+        ResourceTable table = store.findTable(resourceType);
+        LogicalResource logicalResource = (table != null) ? table.get(logicalId) : null;
+        ResourceVersion current = (logicalResource != null) ? logicalResource.getCurrent() : null;
+        return (current != null && !current.isDeleted()) ? current : null;
+    }
+
+    // comparisons against a missing (null) value never match, as in SQL
+
+    private static boolean lt(BigDecimal a, BigDecimal b) {
+        return a != null && a.compareTo(b) < 0;
+    }
+
+    private static boolean le(BigDecimal a, BigDecimal b) {
+        return a != null && a.compareTo(b) <= 0;
+    }
+
+    private static boolean gt(BigDecimal a, BigDecimal b) {
+        return a != null && a.compareTo(b) > 0;
+    }
+
+    private static boolean ge(BigDecimal a, BigDecimal b) {
+        return a != null && a.compareTo(b) >= 0;
+    }
+}
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2016,2019
+ * (C) Copyright IBM Corp. 2016,2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -7,14 +7,17 @@
 package com.ibm.fhir.persistence.util;
 
 import java.time.ZonedDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
+import com.ibm.fhir.model.resource.OperationOutcome;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.type.DateTime;
 import com.ibm.fhir.model.type.Instant;
 import com.ibm.fhir.model.type.Meta;
+import com.ibm.fhir.persistence.FHIRPersistence;
 import com.ibm.fhir.persistence.context.FHIRHistoryContext;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContextFactory;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
@@ -50,6 +53,8 @@ public class FHIRPersistenceUtil {
                     else {
                         throw new FHIRPersistenceException("The '_since' parameter must be a fully specified ISO 8601 date/time");
                     }
+                } else if ("_cursor".equals(name)) {
+                    context.setCursor(first);
                 } else if ("_format".equals(name)) {
                     // safely ignore
                     continue;
@@ -94,4 +99,33 @@ public class FHIRPersistenceUtil {
                     + deletedResource.getClass().getSimpleName());
         }
     }
+
+    /**
+     * Create the exception thrown by a search whose result can't carry an OperationOutcome
+     * (e.g. {@link FHIRPersistence#searchPayloads}) when the search was not successful,
+     * for example because the paging parameters are invalid and the search is not lenient
+     *
+     * @param resourceType the resource type which is the target of the search
+     * @param issues the issues explaining why the search failed
+     * @return the exception carrying the issues
+     */
+    public static FHIRPersistenceException searchFailed(Class<? extends Resource> resourceType, Collection<OperationOutcome.Issue> issues) {
+        return new FHIRPersistenceException("Search for resource type '" + resourceType.getSimpleName() + "' failed")
+                .withIssue(issues);
+    }
+
+    /**
+     * Create the exception thrown by {@link FHIRPersistence#historyPayloads} when the history was not successful,
+     * for example because the paging parameters are invalid and the history is not lenient
+     *
+     * @param resourceType the resource type of the resource
+     * @param logicalId the logical id of the resource
+     * @param issues the issues explaining why the history failed
+     * @return the exception carrying the issues
+     */
+    public static FHIRPersistenceException historyFailed(Class<? extends Resource> resourceType, String logicalId,
+            Collection<OperationOutcome.Issue> issues) {
+        return new FHIRPersistenceException("History for resource '" + resourceType.getSimpleName() + "/" + logicalId + "' failed")
+                .withIssue(issues);
+    }
 }
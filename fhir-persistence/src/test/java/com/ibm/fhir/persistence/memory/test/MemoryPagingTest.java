@@ -0,0 +1,19 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.memory.test;
+
+import com.ibm.fhir.persistence.FHIRPersistence;
+import com.ibm.fhir.persistence.memory.FHIRPersistenceMemoryImpl;
+import com.ibm.fhir.persistence.test.common.AbstractPagingTest;
+
+public class MemoryPagingTest extends AbstractPagingTest {
+
+    @Override
+    public FHIRPersistence getPersistenceImpl() throws Exception {
+        return new FHIRPersistenceMemoryImpl();
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.memory.test;
+
+import static com.ibm.fhir.model.type.String.string;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.HumanName;
+import com.ibm.fhir.model.type.Identifier;
+import com.ibm.fhir.model.type.Uri;
+import com.ibm.fhir.persistence.FHIRPersistence;
+import com.ibm.fhir.persistence.memory.FHIRPersistenceMemoryImpl;
+import com.ibm.fhir.persistence.memory.MemoryStore;
+import com.ibm.fhir.persistence.test.common.AbstractPersistenceTest;
+
+/**
+ * Tests that the inverted index of the in-memory persistence layer follows the current version of each resource.
+ */
+public class MemorySearchIndexTest extends AbstractPersistenceTest {
+    private final MemoryStore store = new MemoryStore();
+
+    @Override
+    public FHIRPersistence getPersistenceImpl() throws Exception {
+        return new FHIRPersistenceMemoryImpl(store);
+    }
+
+    @Test
+    public void testIndexFollowsCurrentVersion() throws Exception {
+        Patient patient = persistence.create(getDefaultPersistenceContext(), patient("index-a", "Indexed")).getResource();
+        String logicalId = patient.getId();
+        assertEquals(store.getTable("Patient").lookup("identifier", "index-a"), Collections.singleton(logicalId));
+        assertIds(runQueryTest(Patient.class, "identifier", "http://example.com|index-a"), logicalId);
+
+        // the update replaces the postings of the previous version
+        persistence.update(getDefaultPersistenceContext(), logicalId, patient("index-b", "Indexed").toBuilder().id(logicalId).build());
+        assertTrue(store.getTable("Patient").lookup("identifier", "index-a").isEmpty());
+        assertEquals(store.getTable("Patient").lookup("identifier", "index-b"), Collections.singleton(logicalId));
+        assertTrue(runQueryTest(Patient.class, "identifier", "index-a").isEmpty());
+        assertIds(runQueryTest(Patient.class, "identifier", "index-b"), logicalId);
+
+        // deleted versions are not indexed
+        persistence.delete(getDefaultPersistenceContext(), Patient.class, logicalId);
+        assertTrue(store.getTable("Patient").lookup("identifier", "index-b").isEmpty());
+        assertTrue(runQueryTest(Patient.class, "identifier", "index-b").isEmpty());
+    }
+
+    @Test
+    public void testCandidatesAreFullyMatched() throws Exception {
+        Patient patient1 = persistence.create(getDefaultPersistenceContext(), patient("index-c", "Candidate")).getResource();
+        persistence.create(getDefaultPersistenceContext(), patient("index-c", "Other")).getResource();
+
+        // both patients are candidates for the identifier, the exact family name narrows them to one
+        assertEquals(store.getTable("Patient").lookup("identifier", "index-c").size(), 2);
+        assertIds(runQueryTest(Patient.class, "identifier", "index-c"), null, 2);
+        assertIds(runQueryTest(Patient.class, "family:exact", "Candidate"), patient1.getId());
+
+        // the index ignores the system, which is checked by the full match
+        assertTrue(runQueryTest(Patient.class, "identifier", "http://example.org|index-c").isEmpty());
+    }
+
+    private static Patient patient(String identifier, String family) {
+        return Patient.builder()
+                .identifier(Identifier.builder()
+                    .system(Uri.of("http://example.com"))
+                    .value(string(identifier))
+                    .build())
+                .name(HumanName.builder()
+                    .family(string(family))
+                    .build())
+                .build();
+    }
+
+    private static void assertIds(List<Resource> resources, String logicalId) {
+        assertIds(resources, logicalId, 1);
+    }
+
+    private static void assertIds(List<Resource> resources, String logicalId, int count) {
+        assertEquals(resources.size(), count);
+        if (logicalId != null) {
+            assertEquals(resources.get(0).getId(), logicalId);
+        }
+    }
+}
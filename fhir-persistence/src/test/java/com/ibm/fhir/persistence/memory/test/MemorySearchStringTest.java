@@ -0,0 +1,38 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.memory.test;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.persistence.FHIRPersistence;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceNotSupportedException;
+import com.ibm.fhir.persistence.memory.FHIRPersistenceMemoryImpl;
+import com.ibm.fhir.persistence.search.test.AbstractSearchStringTest;
+
+public class MemorySearchStringTest extends AbstractSearchStringTest {
+
+    @Override
+    public FHIRPersistence getPersistenceImpl() throws Exception {
+        return new FHIRPersistenceMemoryImpl();
+    }
+
+    /*
+     * Currently, documented in our conformance statement. We do not support
+     * modifiers on chained parameters.
+     * https://ibm.github.io/FHIR/Conformance#search-modifiers
+     * Refer to https://github.com/IBM/FHIR/issues/473 to track the issue.
+     */
+    @Override
+    @Test(expectedExceptions = FHIRPersistenceNotSupportedException.class)
+    public void testSearchString_string_chained_missing() throws Exception {
+        assertSearchReturnsComposition("subject:Basic.string:missing", "false");
+        assertSearchDoesntReturnComposition("subject:Basic.string:missing", "true");
+
+        assertSearchReturnsComposition("subject:Basic.missing-string:missing", "true");
+        assertSearchDoesntReturnComposition("subject:Basic.missing-string:missing", "false");
+    }
+}
@@ -9,6 +9,7 @@ package com.ibm.fhir.persistence.search.test;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
+import java.math.BigDecimal;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -19,6 +20,8 @@ import org.testng.annotations.Test;
 import com.ibm.fhir.config.FHIRRequestContext;
 import com.ibm.fhir.model.resource.Basic;
 import com.ibm.fhir.model.test.TestUtil;
+import com.ibm.fhir.model.ucum.util.UCUMConversion;
+import com.ibm.fhir.model.ucum.util.UCUMUtil;
 
 /**
  * <a href="https://hl7.org/fhir/r4/search.html#quantity">FHIR Specification:
@@ -416,6 +419,31 @@ public abstract class AbstractSearchQuantityTest extends AbstractPLSearchTest {
         assertSearchReturnsSavedResource("Quantity-withExponent", "120");
     }
 
+    @Test
+    public void testSearchQuantity_CanonicalUnit() throws Exception {
+        // UCUM quantities are also found when searched in another unit of the same kind
+        assertSearchReturnsSavedResource("Quantity", "25000|http://unitsofmeasure.org|ms");
+        assertSearchReturnsSavedResource("Quantity", "lt1|http://unitsofmeasure.org|min");
+        assertSearchDoesntReturnSavedResource("Quantity", "gt1|http://unitsofmeasure.org|min");
+        assertSearchReturnsSavedResource("Range", "ge4000|http://unitsofmeasure.org|ms");
+
+        assertSearchReturnsSavedResource("Quantity-withExponent", "120|http://unitsofmeasure.org|mm[Hg]");
+        assertSearchReturnsSavedResource("Quantity-withExponent", "16|http://unitsofmeasure.org|kPa");
+        assertSearchDoesntReturnSavedResource("Quantity-withExponent", "15|http://unitsofmeasure.org|kPa");
+    }
+
+    @Test
+    public void testSearchQuantity_CanonicalValueOnlyForUcumSearch() throws Exception {
+        // the canonical value of 120 mm[Hg] is only seen by searches with the UCUM system
+        UCUMConversion conversion = UCUMUtil.getCanonicalConversion("mm[Hg]");
+        String canonicalValue = conversion.convert(new BigDecimal("120")).toPlainString();
+        String canonicalUnit = conversion.getCanonicalUnit();
+        assertSearchReturnsSavedResource("Quantity-withExponent", canonicalValue + "|http://unitsofmeasure.org|" + canonicalUnit);
+        assertSearchDoesntReturnSavedResource("Quantity-withExponent", canonicalValue);
+        assertSearchDoesntReturnSavedResource("Quantity-withExponent", canonicalValue + "||" + canonicalUnit);
+        assertSearchDoesntReturnSavedResource("Quantity-withExponent", canonicalValue + "|http://unitsofmeasure.org|");
+    }
+
     @Test
     public void testSearchQuantity_Quantity_chained_missing() throws Exception {
         assertSearchReturnsComposition("subject:Basic.Quantity:missing", "false");
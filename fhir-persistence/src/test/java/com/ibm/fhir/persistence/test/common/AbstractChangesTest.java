@@ -0,0 +1,125 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.test.common;
+
+import static com.ibm.fhir.model.type.String.string;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.Device;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.Instant;
+import com.ibm.fhir.persistence.context.FHIRHistoryContext;
+import com.ibm.fhir.persistence.context.FHIRPersistenceContextFactory;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
+
+/**
+ * Tests for the change feed behind type and system level history.
+ */
+public abstract class AbstractChangesTest extends AbstractPersistenceTest {
+
+    // only the changes made by this class are read
+    private Instant since;
+
+    private String deviceId1;
+    private String deviceId2;
+    private String patientId;
+
+    @BeforeClass
+    public void createResources() throws Exception {
+        since = Instant.of(ZonedDateTime.now());
+
+        // Must have a transaction in place because this done before the class test methods
+        persistence.getTransaction().begin();
+        try {
+            Device device1 = persistence.create(getDefaultPersistenceContext(), Device.builder().manufacturer(string("changes-test")).build()).getResource();
+            persistence.update(getDefaultPersistenceContext(), device1.getId(), device1);
+            Device device2 = persistence.create(getDefaultPersistenceContext(), Device.builder().manufacturer(string("changes-test")).build()).getResource();
+            persistence.delete(getDefaultPersistenceContext(), Device.class, device2.getId());
+            Patient patient = persistence.create(getDefaultPersistenceContext(), Patient.builder().active(com.ibm.fhir.model.type.Boolean.TRUE).build()).getResource();
+
+            this.deviceId1 = device1.getId();
+            this.deviceId2 = device2.getId();
+            this.patientId = patient.getId();
+        } finally {
+            persistence.getTransaction().end();
+        }
+    }
+
+    private FHIRHistoryContext historyContext(int pageSize, String cursor) {
+        FHIRHistoryContext historyContext = FHIRPersistenceContextFactory.createHistoryContext();
+        historyContext.setPageSize(pageSize);
+        historyContext.setSince(since);
+        historyContext.setCursor(cursor);
+        return historyContext;
+    }
+
+    private static List<String> versions(List<? extends Resource> resources) {
+        List<String> result = new ArrayList<>();
+        for (Resource resource: resources) {
+            result.add(resource.getClass().getSimpleName() + "/" + resource.getId() + "/" + resource.getMeta().getVersionId().getValue());
+        }
+        return result;
+    }
+
+    @Test
+    public void testChangesSupported() {
+        assertTrue(persistence.isChangesSupported());
+    }
+
+    @Test
+    public void testTypeChanges() throws Exception {
+        FHIRHistoryContext historyContext = historyContext(2, null);
+        List<Device> page = persistence.changes(getPersistenceContextForHistory(historyContext), Device.class).getResource();
+        assertEquals(versions(page), Arrays.asList("Device/" + deviceId1 + "/1", "Device/" + deviceId1 + "/2"));
+        assertNotNull(historyContext.getNextCursor());
+
+        // the next page continues after the cursor
+        historyContext = historyContext(2, historyContext.getNextCursor());
+        page = persistence.changes(getPersistenceContextForHistory(historyContext), Device.class).getResource();
+        assertEquals(versions(page), Arrays.asList("Device/" + deviceId2 + "/1", "Device/" + deviceId2 + "/2"));
+        assertEquals(historyContext.getDeletedResources().get("Device/" + deviceId2), Collections.singletonList(2));
+        assertNotNull(historyContext.getNextCursor());
+
+        // an empty page resumes from where it started, so the client can poll for later changes
+        String lastCursor = historyContext.getNextCursor();
+        historyContext = historyContext(2, lastCursor);
+        page = persistence.changes(getPersistenceContextForHistory(historyContext), Device.class).getResource();
+        assertTrue(page.isEmpty());
+        assertEquals(historyContext.getNextCursor(), lastCursor);
+    }
+
+    @Test
+    public void testSystemChanges() throws Exception {
+        FHIRHistoryContext historyContext = historyContext(10, null);
+        List<Resource> page = persistence.changes(getPersistenceContextForHistory(historyContext), Resource.class).getResource();
+        assertEquals(versions(page), Arrays.asList("Device/" + deviceId1 + "/1", "Device/" + deviceId1 + "/2",
+            "Device/" + deviceId2 + "/1", "Device/" + deviceId2 + "/2", "Patient/" + patientId + "/1"));
+
+        // the page isn't full, but it still gives the cursor of its last change to resume from
+        assertNotNull(historyContext.getNextCursor());
+        historyContext = historyContext(10, historyContext.getNextCursor());
+        page = persistence.changes(getPersistenceContextForHistory(historyContext), Resource.class).getResource();
+        assertTrue(page.isEmpty());
+    }
+
+    @Test(expectedExceptions = FHIRPersistenceException.class)
+    public void testInvalidCursor() throws Exception {
+        persistence.changes(getPersistenceContextForHistory(historyContext(10, "not-a-cursor")), Device.class);
+    }
+}
@@ -10,6 +10,7 @@ import static org.testng.AssertJUnit.assertEquals;
 import static org.testng.AssertJUnit.assertNotNull;
 import static org.testng.AssertJUnit.assertTrue;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 
@@ -20,6 +21,7 @@ import com.ibm.fhir.model.resource.Encounter;
 import com.ibm.fhir.model.resource.Observation;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.test.TestUtil;
+import com.ibm.fhir.persistence.MultiResourceResult;
 import com.ibm.fhir.persistence.SingleResourceResult;
 
 /**
@@ -78,6 +80,18 @@ public abstract class AbstractMultiResourceTest extends AbstractPersistenceTest
         assertTrue(result.getResource() instanceof Observation);
     }
     
+    /**
+     * Tests a multi-id read when a different resource type has the same id
+     */
+    @Test
+    public void testReadMany() throws Exception {
+        MultiResourceResult<Encounter> result = persistence.readMany(getDefaultPersistenceContext(), Encounter.class,
+                Arrays.asList(commonId, UUID.randomUUID().toString()));
+        assertTrue(result.isSuccess());
+        assertEquals(1, result.getResource().size());
+        assertEquals(commonId, result.getResource().get(0).getId());
+    }
+    
     /**
      * Tests searching by id when a different resource type has the same id
      */
@@ -9,9 +9,14 @@ package com.ibm.fhir.persistence.test.common;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 import static org.testng.AssertJUnit.assertNotNull;
 import static com.ibm.fhir.model.test.TestUtil.isResourceInResponse;
 
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -22,6 +27,8 @@ import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
 import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
 import com.ibm.fhir.model.resource.Basic;
 import com.ibm.fhir.model.resource.OperationOutcome;
 import com.ibm.fhir.model.resource.Resource;
@@ -35,9 +42,11 @@ import com.ibm.fhir.model.type.Meta;
 import com.ibm.fhir.model.type.code.IssueSeverity;
 import com.ibm.fhir.model.type.code.IssueType;
 import com.ibm.fhir.persistence.MultiResourceResult;
+import com.ibm.fhir.persistence.ResourcePayload;
 import com.ibm.fhir.persistence.context.FHIRHistoryContext;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContextFactory;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
 import com.ibm.fhir.search.context.FHIRSearchContext;
 import com.ibm.fhir.search.util.SearchUtil;
 
@@ -120,6 +129,92 @@ public abstract class AbstractPagingTest extends AbstractPersistenceTest {
         assertTrue(isResourceInResponse(resource3, results));
     }
     
+    @Test
+    public void testSearchPayloads() throws Exception {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        queryParameters.put("_sort", Collections.singletonList("integer"));
+        queryParameters.put("_tag", Collections.singletonList("pagingTest"));
+        FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(Basic.class, queryParameters);
+        searchContext.setPageSize(2);
+        FHIRPersistenceContext persistenceContext = getPersistenceContextForSearch(searchContext);
+
+        List<ResourcePayload> payloads = persistence.searchPayloads(persistenceContext, Basic.class);
+        assertEquals(searchContext.getTotalCount(), 3);
+        assertEquals(payloads.size(), 2, "expected number of results");
+        assertEquals(payloads.get(0).getLogicalId(), resource1.getId());
+        assertEquals(payloads.get(1).getLogicalId(), resource2.getId());
+
+        // each payload is the single-line JSON of the current version of the resource
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        payloads.get(1).writeTo(out);
+        String json = out.toString("UTF-8");
+        assertFalse(json.contains("\n"));
+        assertEquals(FHIRParser.parser(Format.JSON).parse(new StringReader(json)), resource2);
+    }
+
+    @Test
+    public void testSearchPayloadsStreamed() throws Exception {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        queryParameters.put("_tag", Collections.singletonList("pagingTest"));
+        FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(Basic.class, queryParameters);
+        searchContext.setPageSize(2);
+        FHIRPersistenceContext persistenceContext = getPersistenceContextForSearch(searchContext);
+
+        // the total count is known before the first payload is passed, so the links can be written ahead of it
+        List<java.lang.Integer> totalCounts = new ArrayList<>();
+        List<ResourcePayload> payloads = new ArrayList<>();
+        persistence.searchPayloads(persistenceContext, Basic.class, payload -> {
+            totalCounts.add(searchContext.getTotalCount());
+            payloads.add(payload);
+        });
+        assertEquals(payloads.size(), 2, "expected number of results");
+        assertEquals(totalCounts, Arrays.asList(3, 3));
+    }
+
+    @Test
+    public void testHistoryPayloads() throws Exception {
+        FHIRHistoryContext historyContext = FHIRPersistenceContextFactory.createHistoryContext();
+        historyContext.setPageSize(2);
+        historyContext.setPageNumber(1);
+        FHIRPersistenceContext context = getPersistenceContextForHistory(historyContext);
+
+        List<String> jsons = new ArrayList<>();
+        persistence.historyPayloads(context, Basic.class, resource3.getId(), payload -> {
+            assertEquals(historyContext.getTotalCount(), 3);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            payload.writeTo(out);
+            jsons.add(out.toString("UTF-8"));
+        });
+
+        // like history, the newest versions come first
+        assertEquals(jsons.size(), 2, "expected number of results");
+        Basic version = FHIRParser.parser(Format.JSON).parse(new StringReader(jsons.get(0)));
+        assertEquals(version.getMeta().getVersionId().getValue(), "3", "expected version");
+        version = FHIRParser.parser(Format.JSON).parse(new StringReader(jsons.get(1)));
+        assertEquals(version.getMeta().getVersionId().getValue(), "2", "expected version");
+    }
+
+    @Test
+    public void testSearchPayloadsInvalidPage() throws Exception {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        queryParameters.put("_tag", Collections.singletonList("pagingTest"));
+        FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(Basic.class, queryParameters);
+        searchContext.setLenient(false);
+        searchContext.setPageSize(1);
+        searchContext.setPageNumber(4);
+        FHIRPersistenceContext persistenceContext = getPersistenceContextForSearch(searchContext);
+
+        // like search, the page beyond the last page is an error instead of an empty result
+        try {
+            persistence.searchPayloads(persistenceContext, Basic.class);
+            fail("expected FHIRPersistenceException");
+        } catch (FHIRPersistenceException e) {
+            assertEquals(e.getIssues().size(), 1);
+            assertEquals(e.getIssues().get(0).getSeverity(), IssueSeverity.ERROR);
+            assertEquals(e.getIssues().get(0).getCode(), IssueType.INVALID);
+        }
+    }
+
     // history results should be sorted with oldest versions last
     @Test
     public void testHistoryPaging() throws Exception {
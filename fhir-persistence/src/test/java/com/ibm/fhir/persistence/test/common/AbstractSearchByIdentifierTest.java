@@ -0,0 +1,91 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.test.common;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.type.Identifier;
+import com.ibm.fhir.model.type.Uri;
+import com.ibm.fhir.persistence.MultiResourceResult;
+
+/**
+ * Tests for the direct identifier lookup used by conditional create.
+ */
+public abstract class AbstractSearchByIdentifierTest extends AbstractPersistenceTest {
+    private static final String SYSTEM = "http://example.com/fhir/identifier";
+
+    // unique per run so that resources left behind by earlier runs don't match
+    private final String value = UUID.randomUUID().toString();
+
+    private String patientId;
+
+    @BeforeClass
+    public void createResources() throws Exception {
+        Patient patient = Patient.builder()
+                .identifier(Identifier.builder()
+                    .system(Uri.of(SYSTEM))
+                    .value(com.ibm.fhir.model.type.String.of(value))
+                    .build())
+                .build();
+
+        // Must have a transaction in place because this done before the class test methods
+        persistence.getTransaction().begin();
+        try {
+            patient = persistence.create(getDefaultPersistenceContext(), patient).getResource();
+            // a second version, which must not produce a second match
+            patient = persistence.update(getDefaultPersistenceContext(), patient.getId(), patient).getResource();
+        } finally {
+            persistence.getTransaction().end();
+        }
+        assertNotNull(patient.getId());
+        this.patientId = patient.getId();
+    }
+
+    private List<Patient> searchByIdentifier(String system, String value, boolean lock) throws Exception {
+        MultiResourceResult<Patient> result = persistence.searchByIdentifier(getDefaultPersistenceContext(), Patient.class, system, value, 2, lock);
+        assertTrue(result.isSuccess());
+        return result.getResource();
+    }
+
+    @Test
+    public void testIdentifierSearchSupported() {
+        assertTrue(persistence.isIdentifierSearchSupported());
+    }
+
+    @Test
+    public void testSearchByIdentifier() throws Exception {
+        List<Patient> matches = searchByIdentifier(SYSTEM, value, false);
+        assertEquals(matches.size(), 1);
+        assertEquals(matches.get(0).getId(), patientId);
+        assertEquals(matches.get(0).getMeta().getVersionId().getValue(), "2");
+    }
+
+    @Test
+    public void testSearchByIdentifierWithLock() throws Exception {
+        List<Patient> matches = searchByIdentifier(SYSTEM, value, true);
+        assertEquals(matches.size(), 1);
+        assertEquals(matches.get(0).getId(), patientId);
+    }
+
+    @Test
+    public void testSearchByIdentifierNoMatch() throws Exception {
+        assertTrue(searchByIdentifier(SYSTEM, UUID.randomUUID().toString(), false).isEmpty());
+        assertTrue(searchByIdentifier("http://example.com/fhir/other", value, false).isEmpty());
+
+        // the lock creates the token value if needed, but there's still nothing to find
+        assertTrue(searchByIdentifier(SYSTEM, UUID.randomUUID().toString(), true).isEmpty());
+    }
+}
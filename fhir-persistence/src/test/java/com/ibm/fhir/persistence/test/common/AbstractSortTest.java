@@ -7,6 +7,7 @@
 package com.ibm.fhir.persistence.test.common;
 
 import static com.ibm.fhir.model.type.String.string;
+import static org.testng.AssertJUnit.assertEquals;
 import static org.testng.AssertJUnit.assertFalse;
 import static org.testng.AssertJUnit.assertNotNull;
 import static org.testng.AssertJUnit.assertTrue;
@@ -53,6 +54,8 @@ public abstract class AbstractSortTest extends AbstractPersistenceTest {
     Basic resource1b;
     Basic resource2b;
     Basic resource3b;
+    Basic resourceSeconds;
+    Basic resourceMinutes;
     
     @BeforeClass
     public void createResources() throws Exception {
@@ -100,11 +103,19 @@ public abstract class AbstractSortTest extends AbstractPersistenceTest {
         resource2b = persistence.create(getDefaultPersistenceContext(), resource2Builder.meta(tag("b")).build()).getResource();
         resource3a = persistence.create(getDefaultPersistenceContext(), resource3Builder.meta(tag("a")).build()).getResource();
         resource3b = persistence.create(getDefaultPersistenceContext(), resource3Builder.meta(tag("b")).build()).getResource();
+        
+        // UCUM quantities whose order differs from the order of their canonical values (100 s < 2 min)
+        resourceSeconds = persistence.create(getDefaultPersistenceContext(), resource.toBuilder()
+                .extension(extension("http://example.org/Quantity", ucumQuantity(100, "s")))
+                .meta(tag("ucum")).build()).getResource();
+        resourceMinutes = persistence.create(getDefaultPersistenceContext(), resource.toBuilder()
+                .extension(extension("http://example.org/Quantity", ucumQuantity(2, "min")))
+                .meta(tag("ucum")).build()).getResource();
     }
     
     @AfterClass
     public void removeSavedResourcesAndResetTenant() throws Exception {
-        Resource[] resources = {resource1a, resource1b, resource2a, resource2b, resource3a, resource3b};
+        Resource[] resources = {resource1a, resource1b, resource2a, resource2b, resource3a, resource3b, resourceSeconds, resourceMinutes};
         if (persistence.isDeleteSupported()) {
             if (persistence.isTransactional()) {
                 persistence.getTransaction().begin();
@@ -146,6 +157,17 @@ public abstract class AbstractSortTest extends AbstractPersistenceTest {
         assertAscendingOrder(results);
     }
     @Test
+    public void testQuantitySortUsesRecordedValues() throws Exception {
+        // the canonical values indexed for unit-agnostic search (2 min = 120 s) don't take part in sorting
+        Map<String, List<String>> queryParms = new HashMap<>();
+        queryParms.put("_tag", Collections.singletonList("ucum"));
+        queryParms.put("_sort", Collections.singletonList("-Quantity"));
+        List<Resource> results = runQueryTest(Basic.class, queryParms, 100);
+        assertEquals(2, results.size());
+        assertEquals(resourceSeconds.getId(), results.get(0).getId());
+        assertEquals(resourceMinutes.getId(), results.get(1).getId());
+    }
+    @Test
     public void testUriSort() throws Exception {
         List<Resource> results;
         
@@ -337,6 +359,14 @@ public abstract class AbstractSortTest extends AbstractPersistenceTest {
                        .build();
     }
     
+    private Quantity ucumQuantity(double value, String code) {
+        return Quantity.builder()
+                       .value(Decimal.of(value))
+                       .system(Uri.of("http://unitsofmeasure.org"))
+                       .code(Code.of(code))
+                       .build();
+    }
+    
     private Extension extension(String url, Element value) {
         return Extension.builder()
                         .url(url)
@@ -0,0 +1,35 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.provider;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MultivaluedMap;
+
+/**
+ * A response entity which writes its resources as newline-delimited JSON while they are read, instead of
+ * holding them in a Bundle; written by the {@link FHIRNdjsonProvider}.
+ */
+@FunctionalInterface
+public interface FHIRNdjsonOutput {
+
+    /**
+     * Write the resources to the passed entity stream, one resource per line.
+     *
+     * @param httpHeaders
+     *     the headers of the response, which can be added to until the first byte is written
+     * @param entityStream
+     *     the entity stream of the response
+     * @throws IOException
+     *     if the entity stream could not be written
+     * @throws WebApplicationException
+     *     if the resources could not be read; its response replaces this one if nothing was written yet
+     */
+    void write(MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException, WebApplicationException;
+}
@@ -0,0 +1,51 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.provider;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.logging.Logger;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.ext.MessageBodyWriter;
+
+import com.ibm.fhir.core.FHIRMediaType;
+
+/**
+ * Writes a {@link FHIRNdjsonOutput} entity, which streams the resources of a search or history response as
+ * newline-delimited JSON.
+ */
+@Produces({ FHIRMediaType.APPLICATION_NDJSON })
+public class FHIRNdjsonProvider implements MessageBodyWriter<FHIRNdjsonOutput> {
+    private static final Logger log = Logger.getLogger(FHIRNdjsonProvider.class.getName());
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return FHIRNdjsonOutput.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public void writeTo(FHIRNdjsonOutput t, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+            MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException, WebApplicationException {
+        log.entering(this.getClass().getName(), "writeTo");
+        try {
+            t.write(httpHeaders, entityStream);
+        } finally {
+            log.exiting(this.getClass().getName(), "writeTo");
+        }
+    }
+
+    @Override
+    public long getSize(FHIRNdjsonOutput t, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return -1;
+    }
+}
@@ -8,6 +8,7 @@ package com.ibm.fhir.provider;
 
 import static com.ibm.fhir.model.util.FHIRUtil.buildOperationOutcome;
 import static com.ibm.fhir.model.util.FHIRUtil.buildOperationOutcomeIssue;
+import static com.ibm.fhir.provider.util.FHIRProviderUtil.addLinkHeaders;
 import static com.ibm.fhir.provider.util.FHIRProviderUtil.buildResponse;
 import static com.ibm.fhir.provider.util.FHIRProviderUtil.getMediaType;
 
@@ -46,6 +47,7 @@ import com.ibm.fhir.model.generator.FHIRGenerator;
 import com.ibm.fhir.model.generator.exception.FHIRGeneratorException;
 import com.ibm.fhir.model.parser.FHIRParser;
 import com.ibm.fhir.model.parser.exception.FHIRParserException;
+import com.ibm.fhir.model.resource.Bundle;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.type.code.IssueSeverity;
 import com.ibm.fhir.model.type.code.IssueType;
@@ -53,7 +55,7 @@ import com.ibm.fhir.model.type.code.IssueType;
 @Consumes({ FHIRMediaType.APPLICATION_FHIR_JSON, MediaType.APPLICATION_JSON, FHIRMediaType.APPLICATION_FHIR_XML,
         MediaType.APPLICATION_XML })
 @Produces({ FHIRMediaType.APPLICATION_FHIR_JSON, MediaType.APPLICATION_JSON, FHIRMediaType.APPLICATION_FHIR_XML,
-        MediaType.APPLICATION_XML })
+        MediaType.APPLICATION_XML, FHIRMediaType.APPLICATION_NDJSON })
 public class FHIRProvider implements MessageBodyReader<Resource>, MessageBodyWriter<Resource> {
     private static final Logger log = Logger.getLogger(FHIRProvider.class.getName());
 
@@ -116,7 +118,11 @@ public class FHIRProvider implements MessageBodyReader<Resource>, MessageBodyWri
             OutputStream entityStream) throws IOException, WebApplicationException {
         log.entering(this.getClass().getName(), "writeTo");
         try {
-            FHIRGenerator.generator(getFormat(mediaType), isPretty(requestHeaders, uriInfo)).generate(t, entityStream);
+            if (mediaType != null && mediaType.isCompatible(FHIRMediaType.APPLICATION_FHIR_NDJSON_TYPE)) {
+                writeNdjson(t, httpHeaders, entityStream);
+            } else {
+                FHIRGenerator.generator(getFormat(mediaType), isPretty(requestHeaders, uriInfo)).generate(t, entityStream);
+            }
         } catch (FHIRGeneratorException e) {
             // log the error but don't throw because that seems to block to original IOException from bubbling for some reason
             log.log(Level.WARNING, "an error occurred during resource serialization", e);
@@ -134,6 +140,33 @@ public class FHIRProvider implements MessageBodyReader<Resource>, MessageBodyWri
         }
     }
 
+    /**
+     * Writes the resources of the passed bundle (or the passed resource itself if it is not a bundle) as
+     * newline-delimited JSON, one resource per line, using a single generator for the whole response.
+     * The links of a bundle are returned as Link headers since the body has no place for them.
+     *
+     * <p>The bundle is complete before it gets here, so this saves the bundle serialization but not the memory
+     * held for the page. Searches and history requests which don't need the complete bundle (no after search/history
+     * interceptors are registered) are instead streamed by a {@link FHIRNdjsonOutput}.
+     */
+    private void writeNdjson(Resource resource, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream)
+            throws IOException, FHIRGeneratorException {
+        FHIRGenerator generator = FHIRGenerator.generator(Format.JSON, false);
+        if (resource instanceof Bundle) {
+            Bundle bundle = (Bundle) resource;
+            addLinkHeaders(bundle.getLink(), httpHeaders);
+            for (Bundle.Entry entry : bundle.getEntry()) {
+                if (entry.getResource() != null) {
+                    generator.generate(entry.getResource(), entityStream);
+                    entityStream.write('\n');
+                }
+            }
+        } else {
+            generator.generate(resource, entityStream);
+            entityStream.write('\n');
+        }
+    }
+
     protected static boolean isPretty(HttpHeaders httpHeaders, UriInfo uriInfo) {
         // Header evaluation
         String value = httpHeaders.getHeaderString(FHIRConfiguration.DEFAULT_PRETTY_RESPONSE_HEADER_NAME);
@@ -166,7 +199,8 @@ public class FHIRProvider implements MessageBodyReader<Resource>, MessageBodyWri
     private Format getFormat(MediaType mediaType) {
         if (mediaType != null) {
             if (mediaType.isCompatible(FHIRMediaType.APPLICATION_FHIR_JSON_TYPE) ||
-                    mediaType.isCompatible(FHIRMediaType.APPLICATION_JSON_TYPE)) {
+                    mediaType.isCompatible(FHIRMediaType.APPLICATION_JSON_TYPE) ||
+                    mediaType.isCompatible(FHIRMediaType.APPLICATION_FHIR_NDJSON_TYPE)) {
                 return Format.JSON;
             } else if (mediaType.isCompatible(FHIRMediaType.APPLICATION_FHIR_XML_TYPE) ||
                     mediaType.isCompatible(FHIRMediaType.APPLICATION_XML_TYPE)) {
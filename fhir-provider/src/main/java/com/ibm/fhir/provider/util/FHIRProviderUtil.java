@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019
+ * (C) Copyright IBM Corp. 2019, 2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -14,6 +14,7 @@ import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
 
 import com.ibm.fhir.core.FHIRMediaType;
+import com.ibm.fhir.model.resource.Bundle;
 import com.ibm.fhir.model.resource.OperationOutcome;
 
 public final class FHIRProviderUtil {
@@ -58,6 +59,16 @@ public final class FHIRProviderUtil {
         return response;
     }
     
+    /**
+     * Add the passed bundle links to the passed response headers as Link headers; used for the responses whose
+     * body has no place for the links (e.g. newline-delimited JSON).
+     */
+    public static void addLinkHeaders(List<Bundle.Link> links, MultivaluedMap<String, Object> httpHeaders) {
+        for (Bundle.Link link : links) {
+            httpHeaders.add(HttpHeaders.LINK, "<" + link.getUrl().getValue() + ">; rel=\"" + link.getRelation().getValue() + "\"");
+        }
+    }
+
     public static void dumpHeaders(MultivaluedMap<String, ?> httpHeaders) {
         for (String key : httpHeaders.keySet()) {
             List<?> values = httpHeaders.get(key);
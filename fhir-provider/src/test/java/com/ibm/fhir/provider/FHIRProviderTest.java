@@ -6,9 +6,12 @@
 
 package com.ibm.fhir.provider;
 
+import static com.ibm.fhir.model.type.String.string;
+import static org.testng.AssertJUnit.assertEquals;
 import static org.testng.AssertJUnit.assertFalse;
 import static org.testng.AssertJUnit.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.net.URI;
 import java.util.Collection;
 import java.util.Date;
@@ -18,6 +21,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import javax.ws.rs.RuntimeType;
 import javax.ws.rs.core.Cookie;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
@@ -30,6 +34,11 @@ import javax.ws.rs.core.UriInfo;
 import org.testng.annotations.Test;
 
 import com.ibm.fhir.config.FHIRConfiguration;
+import com.ibm.fhir.core.FHIRMediaType;
+import com.ibm.fhir.model.resource.Bundle;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.type.Url;
+import com.ibm.fhir.model.type.code.BundleType;
 
 public class FHIRProviderTest {
     
@@ -271,6 +280,24 @@ public class FHIRProviderTest {
         assertFalse(FHIRProvider.isPretty(headers, generatePrettyParameterUriInfo("false")));
     }
 
+    @Test
+    public void writeNdjsonBundle() throws Exception {
+        Bundle bundle = Bundle.builder()
+                .type(BundleType.SEARCHSET)
+                .link(Bundle.Link.builder().relation(string("next")).url(Url.of("https://example.com/Patient?_page=2")).build())
+                .entry(Bundle.Entry.builder().resource(Patient.builder().id("1").build()).build())
+                .entry(Bundle.Entry.builder().resource(Patient.builder().id("2").build()).build())
+                .build();
+        MultivaluedMap<String, Object> responseHeaders = new MultivaluedHashMap<>();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        new FHIRProvider(RuntimeType.SERVER).writeTo(bundle, Bundle.class, null, null,
+                FHIRMediaType.APPLICATION_FHIR_NDJSON_TYPE, responseHeaders, out);
+
+        assertEquals("{\"resourceType\":\"Patient\",\"id\":\"1\"}\n{\"resourceType\":\"Patient\",\"id\":\"2\"}\n", out.toString("UTF-8"));
+        assertEquals("<https://example.com/Patient?_page=2>; rel=\"next\"", responseHeaders.getFirst(HttpHeaders.LINK));
+    }
+
     private static HttpHeaders createHeaders() {
         return new HttpHeaders() {
             private MultivaluedMap<String, String> headers = new MultivaluedHashMap<>();
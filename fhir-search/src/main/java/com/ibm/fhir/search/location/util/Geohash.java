@@ -0,0 +1,201 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.search.location.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Geohash encoding of latitude/longitude positions into base32 cell ids.
+ * <br>
+ * Each geohash identifies a cell on a regular grid, and every position within
+ * that cell has a geohash which starts with the cell id. This means a set of
+ * cells covering a bounding box can be searched as a set of string ranges on
+ * an ordinary b-tree index, without any spatial extensions in the database.
+ *
+ * @see <a href="https://en.wikipedia.org/wiki/Geohash">Geohash</a>
+ */
+public class Geohash {
+
+    // The number of characters stored per position, about 3.7cm x 1.9cm at the equator
+    public static final int MAX_PRECISION = 12;
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    private Geohash() {
+        // No Operation
+    }
+
+    /**
+     * encode the position as a geohash of the given precision.
+     *
+     * @param latitude
+     * @param longitude
+     * @param precision the number of characters in the geohash, 1 to {@link #MAX_PRECISION}
+     * @return
+     */
+    public static String encode(double latitude, double longitude, int precision) {
+        if (precision < 1 || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Invalid geohash precision: " + precision);
+        }
+        int bits = precision * 5;
+        int lngBits = (bits + 1) / 2;
+        int latBits = bits / 2;
+        return toGeohash(cellIndex(longitude, -180.0, 360.0, lngBits), cellIndex(latitude, -90.0, 180.0, latBits), precision);
+    }
+
+    /**
+     * compute the geohash ranges covering the bounding box, using the finest
+     * precision at which the box is covered by no more than maxCells cells. Adjacent
+     * cells are merged into a single range.
+     *
+     * @param minLatitude
+     * @param maxLatitude
+     * @param minLongitude
+     * @param maxLongitude
+     * @param maxCells
+     * @return the covering ranges, or an empty list if even the coarsest cells exceed maxCells
+     */
+    public static List<Range> coveringRanges(double minLatitude, double maxLatitude, double minLongitude,
+            double maxLongitude, int maxCells) {
+        List<Range> result = new ArrayList<>();
+        for (int precision = MAX_PRECISION; precision > 0; precision--) {
+            int bits = precision * 5;
+            int lngBits = (bits + 1) / 2;
+            int latBits = bits / 2;
+            long lngLow = cellIndex(minLongitude, -180.0, 360.0, lngBits);
+            long lngHigh = cellIndex(maxLongitude, -180.0, 360.0, lngBits);
+            long latLow = cellIndex(minLatitude, -90.0, 180.0, latBits);
+            long latHigh = cellIndex(maxLatitude, -90.0, 180.0, latBits);
+
+            if ((lngHigh - lngLow + 1) * (latHigh - latLow + 1) <= maxCells) {
+                // The cells sort in z-order, so neighbours frequently form a contiguous range
+                TreeSet<String> cells = new TreeSet<>();
+                for (long lng = lngLow; lng <= lngHigh; lng++) {
+                    for (long lat = latLow; lat <= latHigh; lat++) {
+                        cells.add(toGeohash(lng, lat, precision));
+                    }
+                }
+
+                Range current = null;
+                for (String cell : cells) {
+                    if (current != null && follows(current.high, cell)) {
+                        current.high = successor(cell);
+                    } else {
+                        current = new Range(cell, successor(cell));
+                        result.add(current);
+                    }
+                }
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * the index of the cell containing the value when the range is divided into 2^bits cells
+     */
+    private static long cellIndex(double value, double min, double span, int bits) {
+        long cells = 1L << bits;
+        long index = (long) Math.floor((value - min) / span * cells);
+        return Math.max(0, Math.min(cells - 1, index));
+    }
+
+    /**
+     * interleave the cell indexes (longitude first) and encode as base32
+     */
+    private static String toGeohash(long lngIndex, long latIndex, int precision) {
+        int bits = precision * 5;
+        int lngBit = (bits + 1) / 2;
+        int latBit = bits / 2;
+
+        char[] result = new char[precision];
+        int value = 0;
+        for (int i = 0; i < bits; i++) {
+            long bit;
+            if (i % 2 == 0) {
+                bit = (lngIndex >> --lngBit) & 1;
+            } else {
+                bit = (latIndex >> --latBit) & 1;
+            }
+            value = (value << 1) | (int) bit;
+            if (i % 5 == 4) {
+                result[i / 5] = BASE32[value];
+                value = 0;
+            }
+        }
+        return new String(result);
+    }
+
+    /**
+     * the smallest geohash prefix which sorts after every geohash starting with
+     * the given cell, or null if there is none
+     */
+    private static String successor(String cell) {
+        char[] chars = cell.toCharArray();
+        for (int i = chars.length - 1; i >= 0; i--) {
+            int pos = indexOf(chars[i]);
+            if (pos < BASE32.length - 1) {
+                chars[i] = BASE32[pos + 1];
+                return new String(chars, 0, i + 1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * true if no geohash sorts between the (exclusive) range end and the cell
+     */
+    private static boolean follows(String high, String cell) {
+        if (high == null || !cell.startsWith(high)) {
+            return false;
+        }
+        for (int i = high.length(); i < cell.length(); i++) {
+            if (cell.charAt(i) != BASE32[0]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(char c) {
+        for (int i = 0; i < BASE32.length; i++) {
+            if (BASE32[i] == c) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Invalid geohash character: " + c);
+    }
+
+    /**
+     * A half-open range of geohash values [low, high). A null high value means the range
+     * has no upper bound.
+     */
+    public static class Range {
+        private final String low;
+        private String high;
+
+        public Range(String low, String high) {
+            this.low = low;
+            this.high = high;
+        }
+
+        public String getLow() {
+            return low;
+        }
+
+        public String getHigh() {
+            return high;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + low + ", " + high + ")";
+        }
+    }
+}
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019
+ * (C) Copyright IBM Corp. 2019, 2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -8,6 +8,8 @@ package com.ibm.fhir.search.location.util;
 
 import java.util.List;
 
+import com.ibm.fhir.config.FHIRConfigHelper;
+import com.ibm.fhir.config.FHIRConfiguration;
 import com.ibm.fhir.model.resource.Location;
 import com.ibm.fhir.search.exception.FHIRSearchException;
 import com.ibm.fhir.search.exception.SearchExceptionUtil;
@@ -128,4 +130,15 @@ public class LocationUtil {
             throw SearchExceptionUtil.buildNewInvalidSearchException("improper latitude sent - must be < 90 or > -90");
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Check the configuration to see if near searches should use the stored
+     * geohash cell ids. Defaults to false because existing data must be reindexed
+     * (see $reindex custom operation) to generate the cell ids.
+     * 
+     * @return
+     */
+    public static boolean useSpatialIndex() {
+        return FHIRConfigHelper.getBooleanProperty(FHIRConfiguration.PROPERTY_SEARCH_USE_SPATIAL_INDEX, false);
+    }
+}
@@ -43,8 +43,11 @@ import com.ibm.fhir.model.type.code.ResourceType;
 import com.ibm.fhir.model.type.code.SearchComparator;
 import com.ibm.fhir.model.type.code.SearchModifierCode;
 import com.ibm.fhir.model.type.code.SearchParamType;
+import com.ibm.fhir.model.ucum.util.UCUMConversion;
+import com.ibm.fhir.model.ucum.util.UCUMUtil;
 import com.ibm.fhir.model.util.JsonSupport;
 import com.ibm.fhir.model.util.ModelSupport;
+import com.ibm.fhir.model.util.ValidationSupport;
 import com.ibm.fhir.path.FHIRPathNode;
 import com.ibm.fhir.path.evaluator.FHIRPathEvaluator;
 import com.ibm.fhir.path.evaluator.FHIRPathEvaluator.EvaluationContext;
@@ -1284,6 +1287,17 @@ public class SearchUtil {
         return FHIRConfigHelper.getBooleanProperty(FHIRConfiguration.PROPERTY_USE_STORED_COMPARTMENT_PARAM, false);
     }
 
+    /**
+     * Check the configuration to see if compartment searches should read the
+     * compartment membership table maintained by the persistence layer instead
+     * of matching the inclusion criteria. Defaults to false because existing data
+     * must be reindexed (see $reindex custom operation) to populate the table.
+     * @return
+     */
+    public static boolean useCompartmentMembershipIndex() {
+        return FHIRConfigHelper.getBooleanProperty(FHIRConfiguration.PROPERTY_USE_COMPARTMENT_MEMBERSHIP_INDEX, false);
+    }
+
     /**
      * @param lenient
      *                Whether to ignore unknown or unsupported parameter
@@ -2254,4 +2268,45 @@ public class SearchUtil {
         }
         return result;
     }
-}
\ No newline at end of file
+
+    /**
+     * Create the special parameter name under which the values of the given quantity search parameter are indexed
+     * in their canonical UCUM unit (e.g. mol.m-3 for mmol/L). Keeping them apart from the values as recorded means
+     * that only quantity searches with a UCUM system (see {@link #getCanonicalQuantityValue(QueryParameterValue)})
+     * see them; searches without a system and _sort only see the values as recorded.
+     *
+     * @param code
+     *     the code of the quantity search parameter
+     * @return
+     *     the parameter name of the canonical values
+     */
+    public static String makeCanonicalQuantityParamName(String code) {
+        return "ibm-internal-" + code + "-Canonical";
+    }
+
+    /**
+     * Convert a quantity search parameter value with a UCUM system to its canonical unit, which is how it is matched
+     * against the values indexed under {@link #makeCanonicalQuantityParamName(String)}.
+     *
+     * @param value
+     *     the quantity search parameter value
+     * @return
+     *     the value converted to the canonical unit, or null if the value has no UCUM system or its unit can't be
+     *     converted
+     */
+    public static QueryParameterValue getCanonicalQuantityValue(QueryParameterValue value) {
+        if (!ValidationSupport.UCUM_CODE_SYSTEM_URL.equals(value.getValueSystem()) || value.getValueNumber() == null) {
+            return null;
+        }
+        UCUMConversion conversion = UCUMUtil.getCanonicalConversion(value.getValueCode());
+        if (conversion == null) {
+            return null;
+        }
+        QueryParameterValue canonicalValue = new QueryParameterValue();
+        canonicalValue.setPrefix(value.getPrefix());
+        canonicalValue.setValueNumber(conversion.convertKeepingPrecision(value.getValueNumber()));
+        canonicalValue.setValueSystem(value.getValueSystem());
+        canonicalValue.setValueCode(conversion.getCanonicalUnit());
+        return canonicalValue;
+    }
+}
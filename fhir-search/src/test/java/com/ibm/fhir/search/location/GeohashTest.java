@@ -0,0 +1,80 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.search.location;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.search.location.util.Geohash;
+import com.ibm.fhir.search.location.util.Geohash.Range;
+
+public class GeohashTest {
+
+    @Test
+    public void testEncode() {
+        assertEquals(Geohash.encode(42.6, -5.6, 5), "ezs42");
+        assertEquals(Geohash.encode(57.64911, 10.40744, 11), "u4pruydqqvj");
+    }
+
+    @Test
+    public void testEncodeLimits() {
+        assertEquals(Geohash.encode(-90, -180, 3), "000");
+        assertEquals(Geohash.encode(90, 180, 3), "zzz");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testEncodeInvalidPrecision() {
+        Geohash.encode(0, 0, Geohash.MAX_PRECISION + 1);
+    }
+
+    @Test
+    public void testCoveringRangesContainPoint() {
+        // 10km box around the Location example position
+        double lat = 42.25475478;
+        double lng = -83.6945691;
+        List<Range> ranges = Geohash.coveringRanges(lat - 0.09, lat + 0.09, lng - 0.12, lng + 0.12, 32);
+        assertFalse(ranges.isEmpty());
+        assertTrue(ranges.size() <= 32);
+        assertTrue(contains(ranges, Geohash.encode(lat, lng, Geohash.MAX_PRECISION)));
+
+        // Corners of the box are covered too
+        assertTrue(contains(ranges, Geohash.encode(lat - 0.09, lng - 0.12, Geohash.MAX_PRECISION)));
+        assertTrue(contains(ranges, Geohash.encode(lat + 0.09, lng + 0.12, Geohash.MAX_PRECISION)));
+
+        // A point well outside the box is not
+        assertFalse(contains(ranges, Geohash.encode(-lat, -lng, Geohash.MAX_PRECISION)));
+    }
+
+    @Test
+    public void testCoveringRangesMerged() {
+        // The whole world at precision 1 is 32 adjacent cells, merged into one unbounded range
+        List<Range> ranges = Geohash.coveringRanges(-90, 90, -180, 180, 32);
+        assertEquals(ranges.size(), 1);
+        assertEquals(ranges.get(0).getLow(), "0");
+        assertNull(ranges.get(0).getHigh());
+    }
+
+    @Test
+    public void testCoveringRangesTooMany() {
+        assertTrue(Geohash.coveringRanges(-90, 90, -180, 180, 16).isEmpty());
+    }
+
+    private boolean contains(List<Range> ranges, String geohash) {
+        for (Range range : ranges) {
+            if (geohash.compareTo(range.getLow()) >= 0 && (range.getHigh() == null || geohash.compareTo(range.getHigh()) < 0)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -17,6 +17,7 @@ import com.ibm.fhir.config.FHIRConfigHelper;
 import com.ibm.fhir.config.FHIRConfiguration;
 import com.ibm.fhir.provider.FHIRJsonPatchProvider;
 import com.ibm.fhir.provider.FHIRJsonProvider;
+import com.ibm.fhir.provider.FHIRNdjsonProvider;
 import com.ibm.fhir.provider.FHIRProvider;
 import com.ibm.fhir.server.resources.Batch;
 import com.ibm.fhir.server.resources.Capabilities;
@@ -82,6 +83,7 @@ public class FHIRApplication extends Application {
                 singletons.add(new FHIRProvider(RuntimeType.SERVER));
                 singletons.add(new FHIRJsonProvider(RuntimeType.SERVER));
                 singletons.add(new FHIRJsonPatchProvider(RuntimeType.SERVER));
+                singletons.add(new FHIRNdjsonProvider());
             }
             return singletons;
         } finally {
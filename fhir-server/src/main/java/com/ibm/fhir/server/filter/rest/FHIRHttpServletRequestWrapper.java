@@ -113,6 +113,9 @@ public class FHIRHttpServletRequestWrapper extends HttpServletRequestWrapper {
         _formatShortcuts.put("json", FHIRMediaType.APPLICATION_FHIR_JSON);
         _formatShortcuts.put("application/json", FHIRMediaType.APPLICATION_FHIR_JSON);
         _formatShortcuts.put("application/fhir+json", FHIRMediaType.APPLICATION_FHIR_JSON);
+        _formatShortcuts.put("ndjson", FHIRMediaType.APPLICATION_NDJSON);
+        _formatShortcuts.put("application/ndjson", FHIRMediaType.APPLICATION_NDJSON);
+        _formatShortcuts.put("application/fhir+ndjson", FHIRMediaType.APPLICATION_NDJSON);
     }
 
     /**
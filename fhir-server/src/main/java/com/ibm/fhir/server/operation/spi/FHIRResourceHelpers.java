@@ -7,15 +7,21 @@
 package com.ibm.fhir.server.operation.spi;
 
 import java.time.Instant;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import javax.ws.rs.core.MultivaluedMap;
 
+import com.ibm.fhir.exception.FHIROperationException;
 import com.ibm.fhir.model.patch.FHIRPatch;
 import com.ibm.fhir.model.resource.Bundle;
 import com.ibm.fhir.model.resource.OperationOutcome;
 import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.code.IssueType;
+import com.ibm.fhir.model.util.FHIRUtil;
 import com.ibm.fhir.persistence.FHIRPersistenceTransaction;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceResourceDeletedException;
 
 /**
  * This interface describes the set of helper methods from the FHIR REST layer that are used by custom operation
@@ -159,6 +165,32 @@ public interface FHIRResourceHelpers {
      */
     public Resource doRead(String type, String id, boolean throwExcOnNull, boolean includeDeleted, Map<String, String> requestProperties, Resource contextResource) throws Exception;
 
+    /**
+     * Performs a 'read' operation to retrieve several Resources of the same type. Ids which do not exist are skipped,
+     * as are deleted resources unless includeDeleted is set.
+     *
+     * @param type
+     *            the resource type associated with the Resources to be retrieved
+     * @param ids
+     *            the ids of the Resources to be retrieved
+     * @return the Resources that were found, keyed by id
+     * @throws Exception
+     */
+    default Map<String, Resource> doReadMany(String type, Collection<String> ids, boolean includeDeleted, Map<String, String> requestProperties) throws Exception {
+        Map<String, Resource> resources = new LinkedHashMap<>();
+        for (String id : ids) {
+            try {
+                Resource resource = doRead(type, id, false, includeDeleted, requestProperties, null);
+                if (resource != null) {
+                    resources.put(id, resource);
+                }
+            } catch (FHIRPersistenceResourceDeletedException e) {
+                // deleted resources are skipped
+            }
+        }
+        return resources;
+    }
+
     /**
      * Performs a 'vread' operation by retrieving the specified version of a Resource.
      *
@@ -189,6 +221,24 @@ public interface FHIRResourceHelpers {
      */
     public Bundle doHistory(String type, String id, MultivaluedMap<String, String> queryParameters, String requestUri, Map<String, String> requestProperties) throws Exception;
 
+    /**
+     * Performs the work of retrieving the versions of all the Resources of a type, or of all types, in the
+     * order they were stored. Pages continue from the opaque cursor given by the '_cursor' parameter.
+     *
+     * @param type
+     *            the resource type associated with the Resources to be retrieved, or null for all types
+     * @param queryParameters
+     *            a Map containing the query parameters from the request URL
+     * @param requestUri
+     * @param requestProperties
+     * @return a Bundle containing a page of the history of the Resources
+     * @throws Exception
+     */
+    default Bundle doHistory(String type, MultivaluedMap<String, String> queryParameters, String requestUri, Map<String, String> requestProperties) throws Exception {
+        throw new FHIROperationException("Type and system level history are not supported")
+            .withIssue(FHIRUtil.buildOperationOutcomeIssue("Type and system level history are not supported", IssueType.NOT_SUPPORTED));
+    }
+
     /**
      * Performs heavy lifting associated with a 'search' operation.
      *
@@ -184,8 +184,16 @@ public class Capabilities extends FHIRResource {
         // Retrieve the "resources" config property group.
         PropertyGroup rsrcsGroup = FHIRConfigHelper.getPropertyGroup(FHIRConfiguration.PROPERTY_RESOURCES);
 
+        // Type and system level history are only available if the persistence layer provides a change feed
+        boolean changesSupported = false;
+        try {
+            changesSupported = getPersistenceImpl().isChangesSupported();
+        } catch (Throwable t) {
+            log.log(Level.WARNING, "Unexpected error while checking whether type and system level history are supported", t);
+        }
+
         // Build the list of interactions, searchIncludes, and searchRevIncludes supported for each resource type by default.
-        List<Rest.Resource.Interaction> defaultInteractions = buildInteractions(ALL_INTERACTIONS);
+        List<Rest.Resource.Interaction> defaultInteractions = buildInteractions(ALL_INTERACTIONS, changesSupported);
         List<com.ibm.fhir.model.type.String> defaultSearchIncludes = Collections.emptyList();
         List<com.ibm.fhir.model.type.String> defaultSearchRevIncludes = Collections.emptyList();
         if (rsrcsGroup != null) {
@@ -193,7 +201,7 @@ public class Capabilities extends FHIRResource {
             if (parentResourcePropGroup != null) {
                 List<String> interactionConfig = parentResourcePropGroup.getStringListProperty(FHIRConfiguration.PROPERTY_FIELD_RESOURCES_INTERACTIONS);
                 if (interactionConfig != null) {
-                    defaultInteractions = buildInteractions(interactionConfig);
+                    defaultInteractions = buildInteractions(interactionConfig, changesSupported);
                 }
                 List<String> searchIncludeConfig = parentResourcePropGroup.getStringListProperty(FHIRConfiguration.PROPERTY_FIELD_RESOURCES_SEARCH_INCLUDES);
                 if (searchIncludeConfig != null) {
@@ -278,7 +286,7 @@ public class Capabilities extends FHIRResource {
                     List<String> resourceInteractionConfig =
                             resourcePropGroup.getStringListProperty(FHIRConfiguration.PROPERTY_FIELD_RESOURCES_INTERACTIONS);
                     if (resourceInteractionConfig != null) {
-                        interactions = buildInteractions(resourceInteractionConfig);
+                        interactions = buildInteractions(resourceInteractionConfig, changesSupported);
                     }
                     List<String> searchIncludeConfig = resourcePropGroup.getStringListProperty(FHIRConfiguration.PROPERTY_FIELD_RESOURCES_SEARCH_INCLUDES);
                     if (searchIncludeConfig != null) {
@@ -321,6 +329,12 @@ public class Capabilities extends FHIRResource {
             log.log(Level.WARNING, "Unexpected error while reading server transaction mode setting", t);
         }
 
+        List<CapabilityStatement.Rest.Interaction> systemInteractions = new ArrayList<>();
+        systemInteractions.add(CapabilityStatement.Rest.Interaction.builder().code(transactionMode).build());
+        if (changesSupported) {
+            systemInteractions.add(CapabilityStatement.Rest.Interaction.builder().code(SystemRestfulInteraction.HISTORY_SYSTEM).build());
+        }
+
         CapabilityStatement.Rest.Security.Builder securityBuilder = CapabilityStatement.Rest.Security.builder()
                 .cors(com.ibm.fhir.model.type.Boolean.of(FHIRConfigHelper.getBooleanProperty(FHIRConfiguration.PROPERTY_SECURITY_CORS, true)));
 
@@ -382,9 +396,7 @@ public class Capabilities extends FHIRResource {
                 .mode(RestfulCapabilityMode.SERVER)
                 .security(securityBuilder.build())
                 .resource(addSupportedProfilesToResources(resources))
-                .interaction(CapabilityStatement.Rest.Interaction.builder()
-                    .code(transactionMode)
-                    .build())
+                .interaction(systemInteractions)
                 .operation(mapOperationDefinitionsToRestOperations(systemOps))
                 .build();
 
@@ -436,10 +448,11 @@ public class Capabilities extends FHIRResource {
     /**
      * @param interactionConfig a list of strings that represent the RESTful interactions to support for this resource type
      *                          (create, read, vread, update, patch, delete, history, and/or search)
+     * @param changesSupported true if the persistence layer supports type level history
      * @return a list of Rest.Resource.Interaction objects to include in the CapabilityStatement
      * @throws FHIRPersistenceException
      */
-    private List<Rest.Resource.Interaction> buildInteractions(List<String> interactionConfig) throws Exception {
+    private List<Rest.Resource.Interaction> buildInteractions(List<String> interactionConfig, boolean changesSupported) throws Exception {
         if (interactionConfig == null) return null;
 
         List<Rest.Resource.Interaction> interactions = new ArrayList<>();
@@ -450,6 +463,9 @@ public class Capabilities extends FHIRResource {
             } else if ("history".equals(interactionString)){
                 // special case for search since the value set uses "history-instance" instead of just "history"
                 interactions.add(buildInteractionStatement(TypeRestfulInteraction.HISTORY_INSTANCE));
+                if (changesSupported) {
+                    interactions.add(buildInteractionStatement(TypeRestfulInteraction.HISTORY_TYPE));
+                }
             } else if ("delete".equals(interactionString)) {
                 // special case for delete since we shouldn't advertise it if the PL doesn't support it
                 interactions.add(buildInteractionStatement(TypeRestfulInteraction.DELETE));
@@ -28,6 +28,7 @@ import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
@@ -38,6 +39,7 @@ import com.ibm.fhir.config.FHIRConfigHelper;
 import com.ibm.fhir.config.FHIRConfiguration;
 import com.ibm.fhir.config.FHIRRequestContext;
 import com.ibm.fhir.config.PropertyGroup;
+import com.ibm.fhir.core.FHIRMediaType;
 import com.ibm.fhir.exception.FHIROperationException;
 import com.ibm.fhir.model.format.Format;
 import com.ibm.fhir.model.generator.FHIRGenerator;
@@ -98,6 +100,9 @@ public class FHIRResource {
     @Context
     protected SecurityContext securityContext;
 
+    @Context
+    protected HttpHeaders httpHeaders;
+
     protected PropertyGroup fhirConfig = null;
 
     /**
@@ -210,6 +215,20 @@ public class FHIRResource {
                 .lastModified(Date.from(resource.getMeta().getLastUpdated().getValue().toInstant()));
     }
 
+    /**
+     * @return true if the media type most preferred by the Accept header (which the _format parameter sets) is
+     *     newline-delimited JSON
+     */
+    protected boolean isNdjsonRequested() {
+        List<MediaType> acceptableMediaTypes = httpHeaders.getAcceptableMediaTypes();
+        if (acceptableMediaTypes.isEmpty()) {
+            return false;
+        }
+        MediaType mediaType = acceptableMediaTypes.get(0);
+        return !mediaType.isWildcardType() && !mediaType.isWildcardSubtype()
+                && mediaType.isCompatible(FHIRMediaType.APPLICATION_FHIR_NDJSON_TYPE);
+    }
+
     private String getEtagValue(Resource resource) {
         return "W/\"" + resource.getMeta().getVersionId().getValue() + "\"";
     }
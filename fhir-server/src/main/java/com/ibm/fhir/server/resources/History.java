@@ -36,7 +36,7 @@ import com.ibm.fhir.server.util.RestAuditLogger;
 @Consumes({ FHIRMediaType.APPLICATION_FHIR_JSON, MediaType.APPLICATION_JSON,
         FHIRMediaType.APPLICATION_FHIR_XML, MediaType.APPLICATION_XML })
 @Produces({ FHIRMediaType.APPLICATION_FHIR_JSON, MediaType.APPLICATION_JSON,
-        FHIRMediaType.APPLICATION_FHIR_XML, MediaType.APPLICATION_XML })
+        FHIRMediaType.APPLICATION_FHIR_XML, MediaType.APPLICATION_XML, FHIRMediaType.APPLICATION_NDJSON })
 @RolesAllowed("FHIRUsers")
 @RequestScoped
 public class History extends FHIRResource {
@@ -64,6 +64,11 @@ public class History extends FHIRResource {
             checkInitComplete();
 
             FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl());
+            if (isNdjsonRequested() && helper.isHistoryStreamingSupported()) {
+                status = Status.OK;
+                return Response.ok(helper.doHistoryNdjson(type, id, uriInfo.getQueryParameters(), getRequestUri(), null),
+                        FHIRMediaType.APPLICATION_FHIR_NDJSON_TYPE).build();
+            }
             bundle = helper.doHistory(type, id, uriInfo.getQueryParameters(), getRequestUri(), null);
             status = Status.OK;
             return Response.status(status).entity(bundle).build();
@@ -84,4 +89,58 @@ public class History extends FHIRResource {
             log.exiting(this.getClass().getName(), "history(String,String)");
         }
     }
+
+    @GET
+    @Path("{type}/_history")
+    public Response history(@PathParam("type") String type) {
+        log.entering(this.getClass().getName(), "history(String)");
+        try {
+            return changes(type);
+        } finally {
+            log.exiting(this.getClass().getName(), "history(String)");
+        }
+    }
+
+    @GET
+    @Path("_history")
+    public Response history() {
+        log.entering(this.getClass().getName(), "history()");
+        try {
+            return changes(null);
+        } finally {
+            log.exiting(this.getClass().getName(), "history()");
+        }
+    }
+
+    /**
+     * Type or system level history, read from the change feed of the persistence layer
+     * @param type the resource type, or null for all types
+     */
+    private Response changes(String type) {
+        Date startTime = new Date();
+        Response.Status status = null;
+        Bundle bundle = null;
+
+        try {
+            checkInitComplete();
+
+            FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl());
+            bundle = helper.doHistory(type, uriInfo.getQueryParameters(), getRequestUri(), null);
+            status = Status.OK;
+            return Response.status(status).entity(bundle).build();
+        } catch (FHIROperationException e) {
+            status = issueListToStatus(e.getIssues());
+            return exceptionResponse(e, status);
+        } catch (Exception e) {
+            status = Status.INTERNAL_SERVER_ERROR;
+            return exceptionResponse(e, status);
+        } finally {
+            try {
+                RestAuditLogger.logHistory(httpServletRequest, bundle,
+                        startTime, new Date(), status);
+            } catch (Exception e) {
+                log.log(Level.SEVERE, AUDIT_LOGGING_ERR_MSG, e);
+            }
+        }
+    }
 }
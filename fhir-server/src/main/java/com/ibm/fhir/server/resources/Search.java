@@ -38,7 +38,7 @@ import com.ibm.fhir.server.util.RestAuditLogger;
 @Consumes({ FHIRMediaType.APPLICATION_FHIR_JSON, MediaType.APPLICATION_JSON,
         FHIRMediaType.APPLICATION_FHIR_XML, MediaType.APPLICATION_XML })
 @Produces({ FHIRMediaType.APPLICATION_FHIR_JSON, MediaType.APPLICATION_JSON,
-        FHIRMediaType.APPLICATION_FHIR_XML, MediaType.APPLICATION_XML })
+        FHIRMediaType.APPLICATION_FHIR_XML, MediaType.APPLICATION_XML, FHIRMediaType.APPLICATION_NDJSON })
 @RolesAllowed("FHIRUsers")
 @RequestScoped
 public class Search extends FHIRResource {
@@ -68,6 +68,11 @@ public class Search extends FHIRResource {
 
             queryParameters = uriInfo.getQueryParameters();
             FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl());
+            Response streamed = streamedSearchResponse(helper, type, null, null, queryParameters);
+            if (streamed != null) {
+                status = Status.OK;
+                return streamed;
+            }
             bundle = helper.doSearch(type, null, null, queryParameters, getRequestUri(), null, null);
             status = Status.OK;
             return Response.status(status).entity(bundle).build();
@@ -104,6 +109,11 @@ public class Search extends FHIRResource {
 
             queryParameters = uriInfo.getQueryParameters();
             FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl());
+            Response streamed = streamedSearchResponse(helper, type, compartment, compartmentId, queryParameters);
+            if (streamed != null) {
+                status = Status.OK;
+                return streamed;
+            }
             bundle = helper.doSearch(type, compartment, compartmentId, queryParameters, getRequestUri(), null, null);
             status = Status.OK;
             return Response.status(status).entity(bundle).build();
@@ -140,6 +150,11 @@ public class Search extends FHIRResource {
 
             queryParameters = uriInfo.getQueryParameters();
             FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl());
+            Response streamed = streamedSearchResponse(helper, type, null, null, queryParameters);
+            if (streamed != null) {
+                status = Status.OK;
+                return streamed;
+            }
             bundle = helper.doSearch(type, null, null, queryParameters, getRequestUri(), null, null);
             status = Status.OK;
             return Response.status(status).entity(bundle).build();
@@ -186,6 +201,11 @@ public class Search extends FHIRResource {
 
             queryParameters = uriInfo.getQueryParameters();
             FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl());
+            Response streamed = streamedSearchResponse(helper, "Resource", null, null, queryParameters);
+            if (streamed != null) {
+                status = Status.OK;
+                return streamed;
+            }
             bundle = helper.doSearch("Resource", null, null, queryParameters, getRequestUri(), null, null);
             status = Status.OK;
             return Response.status(status).entity(bundle).build();
@@ -206,4 +226,17 @@ public class Search extends FHIRResource {
             log.exiting(this.getClass().getName(), "doSearchAll");
         }
     }
+
+    /**
+     * @return the response whose NDJSON entity streams the search page from the persistence layer, or null if the
+     *     search result bundle must be built because NDJSON was not requested or an interceptor needs the bundle
+     */
+    private Response streamedSearchResponse(FHIRRestHelper helper, String type, String compartment, String compartmentId,
+            MultivaluedMap<String, String> queryParameters) throws Exception {
+        if (!isNdjsonRequested() || !helper.isSearchStreamingSupported()) {
+            return null;
+        }
+        return Response.ok(helper.doSearchNdjson(type, compartment, compartmentId, queryParameters, getRequestUri(), null),
+                FHIRMediaType.APPLICATION_FHIR_NDJSON_TYPE).build();
+    }
 }
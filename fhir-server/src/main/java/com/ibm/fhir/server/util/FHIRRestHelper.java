@@ -13,15 +13,20 @@ import static javax.servlet.http.HttpServletResponse.SC_GONE;
 import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
 import static javax.servlet.http.HttpServletResponse.SC_OK;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
 import java.time.Instant;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -31,6 +36,7 @@ import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
@@ -41,6 +47,7 @@ import com.ibm.fhir.config.FHIRConfigHelper;
 import com.ibm.fhir.config.FHIRConfiguration;
 import com.ibm.fhir.config.FHIRRequestContext;
 import com.ibm.fhir.core.FHIRConstants;
+import com.ibm.fhir.core.FHIRMediaType;
 import com.ibm.fhir.core.HTTPHandlingPreference;
 import com.ibm.fhir.core.HTTPReturnPreference;
 import com.ibm.fhir.core.context.FHIRPagingContext;
@@ -52,10 +59,12 @@ import com.ibm.fhir.model.resource.OperationOutcome;
 import com.ibm.fhir.model.resource.OperationOutcome.Issue;
 import com.ibm.fhir.model.resource.Parameters;
 import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.resource.SearchParameter;
 import com.ibm.fhir.model.resource.StructureDefinition;
 import com.ibm.fhir.model.type.Code;
 import com.ibm.fhir.model.type.CodeableConcept;
 import com.ibm.fhir.model.type.Extension;
+import com.ibm.fhir.model.type.Meta;
 import com.ibm.fhir.model.type.UnsignedInt;
 import com.ibm.fhir.model.type.Uri;
 import com.ibm.fhir.model.type.Url;
@@ -63,11 +72,13 @@ import com.ibm.fhir.model.type.code.BundleType;
 import com.ibm.fhir.model.type.code.HTTPVerb;
 import com.ibm.fhir.model.type.code.IssueSeverity;
 import com.ibm.fhir.model.type.code.IssueType;
+import com.ibm.fhir.model.type.code.SearchParamType;
 import com.ibm.fhir.model.util.FHIRUtil;
 import com.ibm.fhir.model.util.ModelSupport;
 import com.ibm.fhir.model.util.ReferenceMappingVisitor;
 import com.ibm.fhir.persistence.FHIRPersistence;
 import com.ibm.fhir.persistence.FHIRPersistenceTransaction;
+import com.ibm.fhir.persistence.ResourcePayloadConsumer;
 import com.ibm.fhir.persistence.SingleResourceResult;
 import com.ibm.fhir.persistence.context.FHIRHistoryContext;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
@@ -81,6 +92,8 @@ import com.ibm.fhir.persistence.interceptor.impl.FHIRPersistenceInterceptorMgr;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDataAccessException;
 import com.ibm.fhir.persistence.util.FHIRPersistenceUtil;
 import com.ibm.fhir.profile.ProfileSupport;
+import com.ibm.fhir.provider.FHIRNdjsonOutput;
+import com.ibm.fhir.provider.util.FHIRProviderUtil;
 import com.ibm.fhir.provider.util.FHIRUrlParser;
 import com.ibm.fhir.search.SearchConstants;
 import com.ibm.fhir.search.SummaryValueSet;
@@ -106,6 +119,7 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
 
     public static final String EXTENSION_URL = "http://ibm.com/fhir/extension";
     private static final String LOCAL_REF_PREFIX = "urn:";
+    private static final String IDENTIFIER = "identifier";
     private static final com.ibm.fhir.model.type.String SC_BAD_REQUEST_STRING = string(Integer.toString(SC_BAD_REQUEST));
     private static final com.ibm.fhir.model.type.String SC_GONE_STRING = string(Integer.toString(SC_GONE));
     private static final com.ibm.fhir.model.type.String SC_NOT_FOUND_STRING = string(Integer.toString(SC_NOT_FOUND));
@@ -162,13 +176,21 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
                 if (log.isLoggable(Level.FINE)) {
                     log.fine("Performing conditional create with search criteria: " + ifNoneExist);
                 }
-                Bundle responseBundle = null;
+                List<Resource> matches = new ArrayList<>();
 
                 // Perform the search using the "If-None-Exist" header value.
                 try {
                     MultivaluedMap<String, String> searchParameters = getQueryParameterMap(ifNoneExist);
-                    responseBundle =
-                            doSearch(type, null, null, searchParameters, null, requestProperties, resource);
+                    String[] identifier = getIdentifierCriteria(type, searchParameters);
+                    Bundle responseBundle;
+                    if (identifier != null) {
+                        responseBundle = doIdentifierSearch(type, searchParameters, identifier, requestProperties, resource);
+                    } else {
+                        responseBundle = doSearch(type, null, null, searchParameters, null, requestProperties, resource);
+                    }
+                    for (Bundle.Entry entry : responseBundle.getEntry()) {
+                        matches.add(entry.getResource());
+                    }
                 } catch (FHIROperationException e) {
                     throw e;
                 } catch (Throwable t) {
@@ -179,7 +201,7 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
                 }
 
                 // Check the search results to determine whether or not to perform the create operation.
-                int resultCount = responseBundle.getEntry().size();
+                int resultCount = matches.size();
                 if (log.isLoggable(Level.FINE)) {
                     log.fine("Conditional create search yielded " + resultCount + " results.");
                 }
@@ -189,7 +211,7 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
                 } else if (resultCount == 1) {
                     // If we found a single match, bypass the 'create' request and return information
                     // for the matched resource.
-                    Resource matchedResource = responseBundle.getEntry().get(0).getResource();
+                    Resource matchedResource = matches.get(0);
                     ior.setLocationURI(FHIRUtil.buildLocationURI(type, matchedResource));
                     ior.setStatus(Response.Status.OK);
                     ior.setResource(matchedResource);
@@ -684,6 +706,19 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
     public Resource doRead(String type, String id, boolean throwExcOnNull, boolean includeDeleted,
             Map<String, String> requestProperties, Resource contextResource, MultivaluedMap<String, String> queryParameters)
             throws Exception {
+        return doRead(type, id, throwExcOnNull, includeDeleted, requestProperties, contextResource, queryParameters, null);
+    }
+
+    /**
+     * Performs a 'read' operation, using the passed resource (if any) in place of the persistence layer read. The
+     * 'beforeRead' and 'afterRead' interceptor methods are invoked in either case.
+     *
+     * @param prefetchedResource
+     *            the resource already read from the persistence layer, or null to read it now
+     */
+    private Resource doRead(String type, String id, boolean throwExcOnNull, boolean includeDeleted,
+            Map<String, String> requestProperties, Resource contextResource, MultivaluedMap<String, String> queryParameters,
+            Resource prefetchedResource) throws Exception {
         log.entering(this.getClass().getName(), "doRead");
 
         // Start a new txn in the persistence layer if one is not already active.
@@ -716,7 +751,8 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
 
             FHIRPersistenceContext persistenceContext =
                     FHIRPersistenceContextFactory.createPersistenceContext(event, includeDeleted, searchContext);
-            resource = persistence.read(persistenceContext, resourceType, id).getResource();
+            resource = (prefetchedResource != null)
+                    ? prefetchedResource : persistence.read(persistenceContext, resourceType, id).getResource();
             if (resource == null && throwExcOnNull) {
                 throw new FHIRPersistenceResourceNotFoundException("Resource '" + type + "/" + id + "' not found.");
             }
@@ -744,6 +780,81 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
         }
     }
 
+    /**
+     * Performs a 'read' operation to retrieve several Resources of the same type with a single persistence layer
+     * call. The 'beforeRead' and 'afterRead' interceptor methods are still invoked once per id.
+     *
+     * @param type
+     *            the resource type associated with the Resources to be retrieved
+     * @param ids
+     *            the ids of the Resources to be retrieved
+     * @param requestProperties
+     *            additional request properties which supplement the HTTP headers associated with this request
+     * @return the Resources that were found, keyed by id
+     * @throws Exception
+     */
+    @Override
+    public Map<String, Resource> doReadMany(String type, Collection<String> ids, boolean includeDeleted,
+            Map<String, String> requestProperties) throws Exception {
+        log.entering(this.getClass().getName(), "doReadMany");
+
+        // Start a new txn in the persistence layer if one is not already active.
+        FHIRTransactionHelper txn = new FHIRTransactionHelper(getTransaction());
+        txn.begin();
+
+        // Save the current request context.
+        FHIRRequestContext requestContext = FHIRRequestContext.get();
+
+        try {
+            String resourceTypeName = type;
+            if (!ModelSupport.isResourceType(type)) {
+                throw buildUnsupportedResourceTypeException(type);
+            }
+
+            Class<? extends Resource> resourceType = getResourceType(resourceTypeName);
+
+            // First, invoke the 'beforeRead' interceptor methods for each id.
+            Map<String, FHIRPersistenceEvent> events = new LinkedHashMap<>();
+            for (String id : ids) {
+                FHIRPersistenceEvent event =
+                        new FHIRPersistenceEvent(null, buildPersistenceEventProperties(type, id, null, requestProperties));
+                getInterceptorMgr().fireBeforeReadEvent(event);
+                events.put(id, event);
+            }
+
+            FHIRPersistenceEvent event =
+                    new FHIRPersistenceEvent(null, buildPersistenceEventProperties(type, null, null, requestProperties));
+            FHIRPersistenceContext persistenceContext =
+                    FHIRPersistenceContextFactory.createPersistenceContext(event, includeDeleted);
+            Map<String, Resource> resources = new LinkedHashMap<>();
+            for (Resource resource : persistence.readMany(persistenceContext, resourceType, events.keySet()).getResource()) {
+                resources.put(resource.getId(), resource);
+            }
+
+            // Invoke the 'afterRead' interceptor methods for each id.
+            for (Map.Entry<String, FHIRPersistenceEvent> entry : events.entrySet()) {
+                entry.getValue().setFhirResource(resources.get(entry.getKey()));
+                getInterceptorMgr().fireAfterReadEvent(entry.getValue());
+            }
+
+            // Commit our transaction if we started one before.
+            txn.commit();
+            txn = null;
+
+            return resources;
+        } finally {
+            // Restore the original request context.
+            FHIRRequestContext.set(requestContext);
+
+            // If we previously started a transaction and it's still active, we need to rollback due to an error.
+            if (txn != null) {
+                txn.rollback();
+            }
+
+            log.exiting(this.getClass().getName(), "doReadMany");
+        }
+    }
+
     /**
      * Performs a 'vread' operation by retrieving the specified version of a Resource.
      *
@@ -866,8 +977,7 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
                     FHIRPersistenceContextFactory.createPersistenceContext(event, historyContext);
             List<? extends Resource> resources =
                     persistence.history(persistenceContext, resourceType, id).getResource();
-            bundle = createHistoryBundle(resources, historyContext, type);
-            bundle = addLinks(historyContext, bundle, requestUri);
+            bundle = createHistoryBundle(resources, historyContext, type, requestUri);
 
             event.setFhirResource(bundle);
 
@@ -892,6 +1002,70 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
         }
     }
 
+    @Override
+    public Bundle doHistory(String type, MultivaluedMap<String, String> queryParameters, String requestUri,
+            Map<String, String> requestProperties) throws Exception {
+        log.entering(this.getClass().getName(), "doHistory(String,MultivaluedMap,String,Map)");
+
+        // Start a new txn in the persistence layer if one is not already active.
+        FHIRTransactionHelper txn = new FHIRTransactionHelper(getTransaction());
+        txn.begin();
+
+        Bundle bundle = null;
+
+        // Save the current request context.
+        FHIRRequestContext requestContext = FHIRRequestContext.get();
+
+        try {
+            Class<? extends Resource> resourceType = Resource.class;
+            if (type != null) {
+                if (!ModelSupport.isResourceType(type)) {
+                    throw buildUnsupportedResourceTypeException(type);
+                }
+                resourceType = getResourceType(type);
+            }
+            if (!persistence.isChangesSupported()) {
+                throw buildRestException("Type and system level history are not supported by the persistence layer",
+                        IssueType.NOT_SUPPORTED);
+            }
+
+            FHIRHistoryContext historyContext =
+                    FHIRPersistenceUtil.parseHistoryParameters(queryParameters, HTTPHandlingPreference.LENIENT.equals(requestContext.getHandlingPreference()));
+
+            // First, invoke the 'beforeHistory' interceptor methods.
+            FHIRPersistenceEvent event =
+                    new FHIRPersistenceEvent(null, buildPersistenceEventProperties(type, null, null, requestProperties));
+            getInterceptorMgr().fireBeforeHistoryEvent(event);
+
+            FHIRPersistenceContext persistenceContext =
+                    FHIRPersistenceContextFactory.createPersistenceContext(event, historyContext);
+            List<? extends Resource> resources =
+                    persistence.changes(persistenceContext, resourceType).getResource();
+            bundle = createChangesBundle(resources, historyContext, type, requestUri);
+
+            event.setFhirResource(bundle);
+
+            // Invoke the 'afterHistory' interceptor methods.
+            getInterceptorMgr().fireAfterHistoryEvent(event);
+
+            // Commit our transaction if we started one before.
+            txn.commit();
+            txn = null;
+
+            return bundle;
+        } finally {
+            // Restore the original request context.
+            FHIRRequestContext.set(requestContext);
+
+            // If we previously started a transaction and it's still active, we need to rollback due to an error.
+            if (txn != null) {
+                txn.rollback();
+            }
+
+            log.exiting(this.getClass().getName(), "doHistory(String,MultivaluedMap,String,Map)");
+        }
+    }
+
     /**
      * Performs heavy lifting associated with a 'search' operation.
      *
@@ -944,10 +1118,7 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
             List<Resource> resources =
                     persistence.search(persistenceContext, resourceType).getResource();
 
-            bundle = createSearchBundle(resources, searchContext, type);
-            if (requestUri != null) {
-                bundle = addLinks(searchContext, bundle, requestUri);
-            }
+            bundle = createSearchBundle(resources, searchContext, type, requestUri);
             event.setFhirResource(bundle);
 
             // Invoke the 'afterSearch' interceptor methods.
@@ -971,6 +1142,209 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
         }
     }
 
+    /**
+     * @return true if {@link #doSearchNdjson} can be used for a search whose result is requested as newline-delimited
+     *     JSON; false if a registered interceptor needs the search result bundle, which must then be built by
+     *     {@link #doSearch}
+     */
+    public boolean isSearchStreamingSupported() {
+        return !getInterceptorMgr().hasAfterSearchInterceptors();
+    }
+
+    /**
+     * @return true if {@link #doHistoryNdjson} can be used for a history whose result is requested as
+     *     newline-delimited JSON; false if a registered interceptor needs the history bundle, which must then be
+     *     built by {@link #doHistory(String, String, MultivaluedMap, String, Map)}
+     */
+    public boolean isHistoryStreamingSupported() {
+        return !getInterceptorMgr().hasAfterHistoryInterceptors();
+    }
+
+    /**
+     * Prepares a search whose page is written as newline-delimited JSON from the payloads read by the persistence
+     * layer, one resource at a time, instead of being built as a Bundle. The 'beforeSearch' interceptor methods are
+     * invoked and the query parameters are parsed now; the search itself runs (in its own transaction) when the
+     * returned output is written. Only for use when {@link #isSearchStreamingSupported()}, since the 'afterSearch'
+     * interceptor methods are not invoked.
+     *
+     * @param type
+     *            the resource type associated with the search
+     * @param compartment
+     *            the compartment type of a compartment search, or null
+     * @param compartmentId
+     *            the compartment id of a compartment search, or null
+     * @param queryParameters
+     *            a Map containing the query parameters from the request URL
+     * @param requestUri
+     *            the request URI used to construct the paging links
+     * @param requestProperties
+     *            additional request properties which supplement the HTTP headers associated with this request
+     * @return the output which runs the search and writes its page, with the paging links as Link headers
+     * @throws Exception
+     */
+    public FHIRNdjsonOutput doSearchNdjson(String type, String compartment, String compartmentId,
+            MultivaluedMap<String, String> queryParameters, String requestUri, Map<String, String> requestProperties) throws Exception {
+        log.entering(this.getClass().getName(), "doSearchNdjson");
+
+        // Save the current request context.
+        FHIRRequestContext requestContext = FHIRRequestContext.get();
+
+        try {
+            if (!ModelSupport.isResourceType(type)) {
+                throw buildUnsupportedResourceTypeException(type);
+            }
+            Class<? extends Resource> resourceType = getResourceType(type);
+
+            // First, invoke the 'beforeSearch' interceptor methods.
+            FHIRPersistenceEvent event =
+                    new FHIRPersistenceEvent(null, buildPersistenceEventProperties(type, null, null, requestProperties));
+            getInterceptorMgr().fireBeforeSearchEvent(event);
+
+            FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(compartment, compartmentId, resourceType, queryParameters,
+                    HTTPHandlingPreference.LENIENT.equals(requestContext.getHandlingPreference()));
+            FHIRPersistenceContext persistenceContext =
+                    FHIRPersistenceContextFactory.createPersistenceContext(event, searchContext);
+
+            return new PayloadOutput(consumer -> persistence.searchPayloads(persistenceContext, resourceType, consumer),
+                    searchContext, requestUri);
+        } finally {
+            // Restore the original request context.
+            FHIRRequestContext.set(requestContext);
+
+            log.exiting(this.getClass().getName(), "doSearchNdjson");
+        }
+    }
+
+    /**
+     * Prepares the history of a resource whose page is written as newline-delimited JSON from the payloads read by
+     * the persistence layer, one version at a time, instead of being built as a Bundle. The 'beforeHistory'
+     * interceptor methods are invoked and the query parameters are parsed now; the history itself is read (in its own
+     * transaction) when the returned output is written. Only for use when {@link #isHistoryStreamingSupported()},
+     * since the 'afterHistory' interceptor methods are not invoked.
+     *
+     * @param type
+     *            the resource type associated with the Resource to be retrieved
+     * @param id
+     *            the id of the Resource to be retrieved
+     * @param queryParameters
+     *            a Map containing the query parameters from the request URL
+     * @param requestUri
+     *            the request URI used to construct the paging links
+     * @param requestProperties
+     *            additional request properties which supplement the HTTP headers associated with this request
+     * @return the output which reads the history and writes its page, with the paging links as Link headers
+     * @throws Exception
+     */
+    public FHIRNdjsonOutput doHistoryNdjson(String type, String id, MultivaluedMap<String, String> queryParameters,
+            String requestUri, Map<String, String> requestProperties) throws Exception {
+        log.entering(this.getClass().getName(), "doHistoryNdjson");
+
+        // Save the current request context.
+        FHIRRequestContext requestContext = FHIRRequestContext.get();
+
+        try {
+            if (!ModelSupport.isResourceType(type)) {
+                throw buildUnsupportedResourceTypeException(type);
+            }
+            Class<? extends Resource> resourceType = getResourceType(type);
+            FHIRHistoryContext historyContext =
+                    FHIRPersistenceUtil.parseHistoryParameters(queryParameters, HTTPHandlingPreference.LENIENT.equals(requestContext.getHandlingPreference()));
+
+            // First, invoke the 'beforeHistory' interceptor methods.
+            FHIRPersistenceEvent event =
+                    new FHIRPersistenceEvent(null, buildPersistenceEventProperties(type, id, null, requestProperties));
+            getInterceptorMgr().fireBeforeHistoryEvent(event);
+
+            FHIRPersistenceContext persistenceContext =
+                    FHIRPersistenceContextFactory.createPersistenceContext(event, historyContext);
+
+            return new PayloadOutput(consumer -> persistence.historyPayloads(persistenceContext, resourceType, id, consumer),
+                    historyContext, requestUri);
+        } finally {
+            // Restore the original request context.
+            FHIRRequestContext.set(requestContext);
+
+            log.exiting(this.getClass().getName(), "doHistoryNdjson");
+        }
+    }
+
+    /**
+     * Reads the payloads of a page from the persistence layer.
+     */
+    @FunctionalInterface
+    private interface PayloadReader {
+        void read(ResourcePayloadConsumer consumer) throws FHIRPersistenceException, IOException;
+    }
+
+    /**
+     * Writes the payloads of a search or history page as newline-delimited JSON while the persistence layer reads
+     * them. The paging links depend on the total count, which the persistence layer sets before the first payload,
+     * so they are added as Link headers just before the first line is written.
+     */
+    private class PayloadOutput implements FHIRNdjsonOutput {
+        private final PayloadReader reader;
+        private final FHIRPagingContext pagingContext;
+        private final String requestUri;
+
+        private PayloadOutput(PayloadReader reader, FHIRPagingContext pagingContext, String requestUri) {
+            this.reader = reader;
+            this.pagingContext = pagingContext;
+            this.requestUri = requestUri;
+        }
+
+        @Override
+        public void write(MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException {
+            log.entering(this.getClass().getName(), "write");
+
+            boolean[] linksAdded = { false };
+            FHIRTransactionHelper txn = new FHIRTransactionHelper(persistence.getTransaction());
+            try {
+                txn.begin();
+                reader.read(payload -> {
+                    if (!linksAdded[0]) {
+                        addLinkHeaders(httpHeaders);
+                        linksAdded[0] = true;
+                    }
+                    payload.writeTo(entityStream);
+                    entityStream.write('\n');
+                });
+                if (!linksAdded[0]) {
+                    addLinkHeaders(httpHeaders);
+                }
+
+                txn.commit();
+                txn = null;
+            } catch (FHIRPersistenceException e) {
+                Status status = IssueTypeToHttpStatusMapper.issueListToStatus(e.getIssues());
+                log.log(status.getFamily() == Status.Family.SERVER_ERROR ? Level.SEVERE : Level.INFO, e.getMessage(), e);
+                throw new WebApplicationException(e, Response.status(status)
+                        .type(FHIRMediaType.APPLICATION_FHIR_JSON_TYPE)
+                        .entity(FHIRUtil.buildOperationOutcome(e, false))
+                        .build());
+            } finally {
+                // If we previously started a transaction and it's still active, we need to rollback due to an error.
+                if (txn != null) {
+                    try {
+                        txn.rollback();
+                    } catch (FHIRPersistenceException e) {
+                        log.log(Level.WARNING, "Unable to roll back the transaction of a streamed response", e);
+                    }
+                }
+                log.exiting(this.getClass().getName(), "write");
+            }
+        }
+
+        private void addLinkHeaders(MultivaluedMap<String, Object> httpHeaders) {
+            try {
+                Bundle.Builder bundleBuilder = Bundle.builder().type(BundleType.SEARCHSET);
+                addLinks(pagingContext, bundleBuilder, requestUri);
+                FHIRProviderUtil.addLinkHeaders(bundleBuilder.build().getLink(), httpHeaders);
+            } catch (Exception e) {
+                log.log(Level.WARNING, "Unable to construct the paging links of a streamed response", e);
+            }
+        }
+    }
+
     /**
      * Helper method which invokes a custom operation.
      *
@@ -1585,6 +1959,11 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
                 }
             }
 
+            // For GET requests, read the resources targeted by plain 'Type/id' requests with one call per resource type.
+            // Not done for a transaction bundle: a failed prefetch would mark its transaction for rollback.
+            Map<String, Resource> prefetchedResources = httpMethod.equals(HTTPVerb.GET) && !failFast
+                    ? prefetchBundleReads(requestBundle, responseBundle, entryIndices, bundleRequestProperties) : Collections.emptyMap();
+
             // Now visit each of the request entries using the list of indices obtained above.
             // Use hashmap to store both the index and the accordingly updated response bundle entry.
             Map<Integer, Bundle.Entry> responseIndexAndEntries = new HashMap<Integer, Bundle.Entry>();
@@ -1627,7 +2006,7 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
                         String absoluteUri = getAbsoluteUri(getRequestUri(), request.getUrl().getValue());
 
                         if (request.getMethod().equals(HTTPVerb.GET)) {
-                            processEntryForGet(responseEntry, responseIndexAndEntries, entryIndex, requestURL, absoluteUri, requestDescription.toString(), initialTime);
+                            processEntryForGet(responseEntry, responseIndexAndEntries, entryIndex, requestURL, absoluteUri, requestDescription.toString(), initialTime, prefetchedResources, bundleRequestProperties);
                         } else if (request.getMethod().equals(HTTPVerb.POST)) {
                             processEntryForPost(requestEntry, responseEntry, responseIndexAndEntries, entryIndex, localRefMap, requestURL, absoluteUri, requestDescription.toString(), initialTime);
                         } else if (request.getMethod().equals(HTTPVerb.PUT)) {
@@ -1688,6 +2067,73 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
         }
     }
 
+    /**
+     * Reads the resources targeted by the 'read' requests (GET Type/id) among the specified request entries,
+     * using a single persistence layer call for each resource type with more than one such request.
+     *
+     * <p>No interceptor methods are invoked here: each entry is still processed by a single 'read', which invokes
+     * the 'beforeRead' and 'afterRead' interceptor methods and uses the prefetched resource in place of its own
+     * persistence layer call. Ids that are not prefetched (not found, deleted, or because the read of their
+     * resource type failed) are read on their own, so that their errors are reported for their entry only.
+     * Must not be called within an active transaction, since the rollback after a failed read would mark that
+     * transaction as rollback only.
+     *
+     * @param requestBundle
+     *            the bundle containing the request entries
+     * @param responseBundle
+     *            the bundle containing the corresponding response entries
+     * @param entryIndices
+     *            the indices of the GET request entries to be processed
+     * @param requestProperties
+     *            the bundle request properties
+     * @return
+     *            the resources that were found, keyed by 'Type/id'
+     * @throws Exception
+     */
+    private Map<String, Resource> prefetchBundleReads(Bundle requestBundle, Bundle responseBundle, List<Integer> entryIndices,
+        Map<String, String> requestProperties) throws Exception {
+        Map<String, Set<String>> idsByType = new LinkedHashMap<>();
+        for (Integer entryIndex : entryIndices) {
+            Bundle.Entry.Request request = requestBundle.getEntry().get(entryIndex).getRequest();
+            Bundle.Entry.Response response = responseBundle.getEntry().get(entryIndex).getResponse();
+            if (!response.getStatus().equals(SC_OK_STRING) || !request.getMethod().equals(HTTPVerb.GET)) {
+                continue;
+            }
+            String[] pathTokens = new FHIRUrlParser(request.getUrl().getValue()).getPathTokens();
+            if (pathTokens.length == 2 && !pathTokens[1].startsWith("$") && ModelSupport.isResourceType(pathTokens[0])) {
+                idsByType.computeIfAbsent(pathTokens[0], k -> new LinkedHashSet<>()).add(pathTokens[1]);
+            }
+        }
+
+        Map<String, Resource> resources = new HashMap<>();
+        for (Map.Entry<String, Set<String>> entry : idsByType.entrySet()) {
+            if (entry.getValue().size() < 2) {
+                continue;
+            }
+            String type = entry.getKey();
+            FHIRTransactionHelper txn = new FHIRTransactionHelper(getTransaction());
+            txn.begin();
+            try {
+                FHIRPersistenceEvent event =
+                        new FHIRPersistenceEvent(null, buildPersistenceEventProperties(type, null, null, requestProperties));
+                FHIRPersistenceContext persistenceContext = FHIRPersistenceContextFactory.createPersistenceContext(event);
+                for (Resource resource : persistence.readMany(persistenceContext, getResourceType(type), entry.getValue()).getResource()) {
+                    resources.put(type + "/" + resource.getId(), resource);
+                }
+                txn.commit();
+                txn = null;
+            } catch (Exception e) {
+                // Each entry of this type is read on its own instead.
+                log.log(Level.WARNING, "Unable to read the " + type + " resources of the bundle with a single call", e);
+            } finally {
+                if (txn != null) {
+                    txn.rollback();
+                }
+            }
+        }
+        return resources;
+    }
+
     /**
      * Processes a request entry with a request method of GET.
      *
@@ -1705,10 +2151,15 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
      *            a description of the request
      * @param initialTime
      *            the time the bundle entry processing started
+     * @param prefetchedResources
+     *            the resources already read for 'read' requests of the bundle, keyed by 'Type/id'
+     * @param requestProperties
+     *            the bundle request properties
      * @throws Exception
      */
     private void processEntryForGet(Bundle.Entry responseEntry, Map<Integer, Bundle.Entry> responseIndexAndEntries, Integer entryIndex,
-        FHIRUrlParser requestURL, String absoluteUri, String requestDescription, long initialTime) throws Exception {
+        FHIRUrlParser requestURL, String absoluteUri, String requestDescription, long initialTime, Map<String, Resource> prefetchedResources,
+        Map<String, String> requestProperties) throws Exception {
 
         String[] pathTokens = requestURL.getPathTokens();
         MultivaluedMap<String, String> queryParams = requestURL.getQueryParameters();
@@ -1748,8 +2199,9 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
                 resource = doSearch(pathTokens[0], null, null, queryParams, absoluteUri, null, null);
             }
         } else if (pathTokens.length == 2) {
-            // This is a 'read' request.
-            resource = doRead(pathTokens[0], pathTokens[1], true, false, null, null);
+            // This is a 'read' request; if the resource wasn't prefetched, the single read also reports not found/deleted.
+            resource = doRead(pathTokens[0], pathTokens[1], true, false, requestProperties, null, null,
+                prefetchedResources.get(pathTokens[0] + "/" + pathTokens[1]));
         } else if (pathTokens.length == 3) {
             if ("_history".equals(pathTokens[2])) {
                 // This is a 'history' request.
@@ -2168,6 +2620,89 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
         return result;
     }
 
+    /**
+     * Search for the matches of a conditional create whose criteria is a single identifier=system|value with a
+     * direct lookup of the identifier. Like {@link #doSearch}, the 'beforeSearch' and 'afterSearch' interceptors are
+     * invoked and the matches are returned in a search Bundle, so that the interceptors may check or reject them.
+     *
+     * @param type
+     *            the resource type of the conditional create
+     * @param searchParameters
+     *            the parsed criteria
+     * @param identifier
+     *            the system and value of the identifier, as returned by {@link #getIdentifierCriteria}
+     * @param requestProperties
+     *            additional request properties which supplement the HTTP headers associated with this request
+     * @param contextResource
+     *            the resource to be created
+     * @return a Bundle containing at most two matches, which is enough to tell zero, one or many matches apart
+     * @throws Exception
+     */
+    private Bundle doIdentifierSearch(String type, MultivaluedMap<String, String> searchParameters, String[] identifier,
+            Map<String, String> requestProperties, Resource contextResource) throws Exception {
+        Class<? extends Resource> resourceType = getResourceType(type);
+
+        // First, invoke the 'beforeSearch' interceptor methods.
+        FHIRPersistenceEvent event =
+                new FHIRPersistenceEvent(contextResource, buildPersistenceEventProperties(type, null, null, requestProperties));
+        getInterceptorMgr().fireBeforeSearchEvent(event);
+
+        FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(null, null, resourceType, searchParameters,
+                HTTPHandlingPreference.LENIENT.equals(FHIRRequestContext.get().getHandlingPreference()));
+
+        FHIRPersistenceContext persistenceContext = FHIRPersistenceContextFactory.createPersistenceContext(event, searchContext);
+        boolean lock = FHIRConfigHelper.getBooleanProperty(FHIRConfiguration.PROPERTY_CONDITIONAL_CREATE_IDENTIFIER_LOCK, Boolean.FALSE);
+        List<Resource> resources = new ArrayList<>(persistence.searchByIdentifier(persistenceContext, resourceType,
+                identifier[0], identifier[1], 2, lock).getResource());
+        searchContext.setTotalCount(resources.size());
+
+        Bundle bundle = createSearchBundle(resources, searchContext, type, null);
+        event.setFhirResource(bundle);
+
+        // Invoke the 'afterSearch' interceptor methods.
+        getInterceptorMgr().fireAfterSearchEvent(event);
+
+        return bundle;
+    }
+
+    /**
+     * Check if the conditional create criteria is a single identifier=system|value, which the persistence
+     * layer can look up directly instead of running a full search.
+     *
+     * @param type
+     *            the resource type of the conditional create
+     * @param searchParameters
+     *            the parsed criteria
+     * @return the system and value of the identifier, or null if a regular search is needed
+     * @throws Exception
+     */
+    private String[] getIdentifierCriteria(String type, MultivaluedMap<String, String> searchParameters) throws Exception {
+        if (!persistence.isIdentifierSearchSupported() || searchParameters.size() != 1
+                || !FHIRConfigHelper.getBooleanProperty(FHIRConfiguration.PROPERTY_CONDITIONAL_CREATE_IDENTIFIER_LOOKUP, Boolean.TRUE)) {
+            return null;
+        }
+
+        // Anything with modifiers, multiple values or escapes goes through the search
+        List<String> values = searchParameters.get(IDENTIFIER);
+        if (values == null || values.size() != 1) {
+            return null;
+        }
+        String value = values.get(0);
+        int delimiter = value.indexOf('|');
+        if (delimiter <= 0 || delimiter == value.length() - 1 || value.indexOf('|', delimiter + 1) >= 0
+                || value.indexOf(',') >= 0 || value.indexOf('\\') >= 0) {
+            return null;
+        }
+
+        // The identifier parameter may have been filtered out or redefined for this tenant
+        SearchParameter searchParameter = SearchUtil.getSearchParameter(type, IDENTIFIER);
+        if (searchParameter == null || !SearchParamType.TOKEN.equals(searchParameter.getType())) {
+            return null;
+        }
+
+        return new String[] { value.substring(0, delimiter), value.substring(delimiter + 1) };
+    }
+
     /**
      * This method will build a mapping of local identifiers to external identifiers for bundle entries
      * which specify local identifiers and which have a request method of POST or PUT.
@@ -2372,10 +2907,12 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
      *            the FHIRSearchContext object associated with the search
      * @param type
      *            the name of the resource type being searched
+     * @param requestUri
+     *            the request URI used to construct the paging links, or null if no links should be added
      * @return the bundle
      * @throws Exception
      */
-    private Bundle createSearchBundle(List<Resource> resources, FHIRSearchContext searchContext, String type)
+    private Bundle createSearchBundle(List<Resource> resources, FHIRSearchContext searchContext, String type, String requestUri)
         throws Exception {
 
         // throws if we have a count of more than 2,147,483,647 resources
@@ -2397,16 +2934,19 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
             bundleBuider.entry(entry);
         }
 
-        Bundle bundle = bundleBuider.build();
+        if (requestUri != null) {
+            addLinks(searchContext, bundleBuider, requestUri);
+        }
 
         // Add the SUBSETTED tag, if the _elements search result parameter was applied to limit elements included in
         // returned resources or _summary is required.
+        // The links and the tag are added to the builder so that the (possibly large) bundle is only built once.
         if (searchContext.hasElementsParameters()
                 || (searchContext.hasSummaryParameter() && !searchContext.getSummaryParameter().equals(SummaryValueSet.FALSE))) {
-            bundle = FHIRUtil.addTag(bundle, SearchConstants.SUBSETTED_TAG);
+            bundleBuider.meta(Meta.builder().tag(SearchConstants.SUBSETTED_TAG).build());
         }
 
-        return bundle;
+        return bundleBuider.build();
     }
 
     /**
@@ -2418,11 +2958,13 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
      *            the FHIRHistoryContext associated with the history operation
      * @param type
      *            the name of the resource type on which the history operation was requested
+     * @param requestUri
+     *            the request URI used to construct the paging links
      * @return the bundle
      * @throws Exception
      */
-    private Bundle createHistoryBundle(List<? extends Resource> resources, FHIRHistoryContext historyContext, String type)
-            throws Exception {
+    private Bundle createHistoryBundle(List<? extends Resource> resources, FHIRHistoryContext historyContext, String type,
+            String requestUri) throws Exception {
 
         // throws if we have a count of more than 2,147,483,647 resources
         UnsignedInt totalCount = UnsignedInt.of(historyContext.getTotalCount());
@@ -2432,6 +2974,51 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
                                              .id(UUID.randomUUID().toString())
                                              .total(totalCount);
 
+        addHistoryEntries(resources, historyContext, type, bundleBuilder);
+        addLinks(historyContext, bundleBuilder, requestUri);
+
+        return bundleBuilder.build();
+    }
+
+    /**
+     * Builds the bundle for a page of type or system level history. The changes aren't counted, so there is
+     * no total, and the next link continues from the cursor set by the persistence layer. The feed has
+     * no last page, because more changes can be stored at any time, so every page has a next link.
+     */
+    private Bundle createChangesBundle(List<? extends Resource> resources, FHIRHistoryContext historyContext, String type,
+            String requestUri) throws Exception {
+        Bundle.Builder bundleBuilder = Bundle.builder()
+                                             .type(BundleType.HISTORY)
+                                             .id(UUID.randomUUID().toString());
+
+        addHistoryEntries(resources, historyContext, type, bundleBuilder);
+
+        bundleBuilder.link(Bundle.Link.builder().relation(string("self")).url(Url.of(requestUri)).build());
+        // replace the _cursor parameter of the request; _since no longer matters once there is a cursor
+        // (there is none only when the page was empty and started at the beginning of the feed)
+        String nextCursor = historyContext.getNextCursor();
+        StringBuilder nextLinkUrl = new StringBuilder();
+        int queryStart = requestUri.indexOf('?');
+        nextLinkUrl.append(queryStart == -1 ? requestUri : requestUri.substring(0, queryStart));
+        String separator = "?";
+        if (queryStart != -1) {
+            for (String parameter : requestUri.substring(queryStart + 1).split("&")) {
+                if (!parameter.isEmpty() && !parameter.startsWith("_cursor=") && !parameter.startsWith("_since=")) {
+                    nextLinkUrl.append(separator).append(parameter);
+                    separator = "&";
+                }
+            }
+        }
+        if (nextCursor != null) {
+            nextLinkUrl.append(separator).append("_cursor=").append(nextCursor);
+        }
+        bundleBuilder.link(Bundle.Link.builder().relation(string("next")).url(Url.of(nextLinkUrl.toString())).build());
+
+        return bundleBuilder.build();
+    }
+
+    private void addHistoryEntries(List<? extends Resource> resources, FHIRHistoryContext historyContext, String type,
+            Bundle.Builder bundleBuilder) throws Exception {
         Map<String, List<Integer>> deletedResourcesMap = historyContext.getDeletedResources();
 
         for (int i = 0; i < resources.size(); i++) {
@@ -2445,6 +3032,10 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
             String logicalId = resource.getId();
             String resourceType = ModelSupport.getTypeName(resource.getClass());
             List<Integer> deletedVersions = deletedResourcesMap.get(logicalId);
+            if (deletedVersions == null) {
+                // type and system level history key the deleted versions by type and logical id
+                deletedVersions = deletedResourcesMap.get(resourceType + "/" + logicalId);
+            }
 
             // Determine the correct method to include in this history entry (POST, PUT, DELETE).
             HTTPVerb method;
@@ -2473,8 +3064,6 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
 
             bundleBuilder.entry(entry);
         }
-
-        return bundleBuilder.build();
     }
 
     /**
@@ -2484,10 +3073,9 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
         return FHIRPersistenceInterceptorMgr.getInstance();
     }
 
-    private Bundle addLinks(FHIRPagingContext context, Bundle responseBundle, String requestUri) throws Exception {
+    private void addLinks(FHIRPagingContext context, Bundle.Builder bundleBuilder, String requestUri) throws Exception {
         String selfUri = null;
         SummaryValueSet summaryParameter = null;
-        Bundle.Builder bundleBuilder = responseBundle.toBuilder();
 
         if (context instanceof FHIRSearchContext) {
             FHIRSearchContext searchContext = (FHIRSearchContext) context;
@@ -2568,8 +3156,6 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
                 bundleBuilder.link(prevLink);
             }
         }
-
-        return bundleBuilder.build();
     }
 
     /**
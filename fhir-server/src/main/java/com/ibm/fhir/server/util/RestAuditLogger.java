@@ -229,6 +229,9 @@ public class RestAuditLogger {
         if (bundle != null) {
             if (bundle.getTotal() != null) {
                 totalHistory = bundle.getTotal().getValue().longValue();
+            } else {
+                // type and system level history pages aren't counted
+                totalHistory = bundle.getEntry().size();
             }
             entry.getContext().setBatch(Batch.builder().resourcesRead(totalHistory).build());
         }
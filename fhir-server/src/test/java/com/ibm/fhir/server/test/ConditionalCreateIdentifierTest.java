@@ -0,0 +1,175 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.ibm.fhir.server.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.ws.rs.core.Response;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.config.FHIRConfiguration;
+import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.exception.FHIRException;
+import com.ibm.fhir.model.resource.Bundle;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.Id;
+import com.ibm.fhir.model.type.Instant;
+import com.ibm.fhir.model.type.Meta;
+import com.ibm.fhir.model.type.code.IssueType;
+import com.ibm.fhir.model.util.FHIRUtil;
+import com.ibm.fhir.persistence.MultiResourceResult;
+import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
+import com.ibm.fhir.persistence.interceptor.FHIRPersistenceEvent;
+import com.ibm.fhir.persistence.interceptor.FHIRPersistenceInterceptor;
+import com.ibm.fhir.persistence.interceptor.FHIRPersistenceInterceptorException;
+import com.ibm.fhir.persistence.interceptor.impl.FHIRPersistenceInterceptorMgr;
+import com.ibm.fhir.server.operation.spi.FHIRRestOperationResponse;
+import com.ibm.fhir.server.util.FHIRRestHelper;
+
+/**
+ * Tests the direct identifier lookup of a conditional create, which is enabled for the tenant of this class.
+ */
+public class ConditionalCreateIdentifierTest {
+    private static final String IF_NONE_EXIST = "identifier=http://example.com|12345";
+    private static final Patient PATIENT = Patient.builder().active(com.ibm.fhir.model.type.Boolean.TRUE).build();
+
+    private IdentifierPersistence persistence;
+    private FHIRRestHelper helper;
+
+    @BeforeClass
+    void setup() throws FHIRException {
+        FHIRConfiguration.setConfigHome("src/test/resources");
+        FHIRRequestContext.get().setTenantId("conditionalCreateIdentifierTest");
+        FHIRRequestContext.get().setOriginalRequestUri("test");
+        persistence = new IdentifierPersistence();
+        helper = new FHIRRestHelper(persistence);
+        SearchCheckingInterceptor.register();
+    }
+
+    @AfterClass
+    void tearDown() throws FHIRException {
+        FHIRConfiguration.setConfigHome("");
+        FHIRRequestContext.get().setTenantId("default");
+    }
+
+    /**
+     * Test that the identifier lookup finds the match and is seen by the search interceptors.
+     */
+    @Test
+    public void testIdentifierLookupMatch() throws Exception {
+        persistence.lookups.clear();
+        FHIRRestOperationResponse response;
+        try {
+            SearchCheckingInterceptor.active = true;
+            response = helper.doCreate("Patient", PATIENT, IF_NONE_EXIST, null, false);
+        } finally {
+            SearchCheckingInterceptor.active = false;
+        }
+
+        assertEquals(response.getStatus(), Response.Status.OK);
+        assertEquals(response.getResource().getId(), "match-1");
+        assertEquals(persistence.lookups, Collections.singletonList("http://example.com|12345"));
+        assertEquals(SearchCheckingInterceptor.events, 2);
+    }
+
+    /**
+     * Test that an interceptor which rejects the matches of the search also rejects the conditional create.
+     */
+    @Test
+    public void testInterceptorRejectsMatch() throws Exception {
+        persistence.lookups.clear();
+        try {
+            SearchCheckingInterceptor.active = true;
+            SearchCheckingInterceptor.rejected = "match-1";
+            helper.doCreate("Patient", PATIENT, IF_NONE_EXIST, null, false);
+            fail("the match was not checked by the interceptor");
+        } catch (FHIRPersistenceInterceptorException e) {
+            assertEquals(e.getIssues().get(0).getCode(), IssueType.FORBIDDEN);
+        } finally {
+            SearchCheckingInterceptor.active = false;
+            SearchCheckingInterceptor.rejected = null;
+        }
+        assertEquals(persistence.lookups, Collections.singletonList("http://example.com|12345"));
+    }
+
+    /**
+     * A persistence layer which finds a single Patient for any identifier, and no resources for any other search.
+     */
+    private static class IdentifierPersistence extends MockPersistenceImpl {
+        private final List<String> lookups = new ArrayList<>();
+
+        @Override
+        public boolean isIdentifierSearchSupported() {
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public <T extends Resource> MultiResourceResult<T> searchByIdentifier(FHIRPersistenceContext context, Class<T> resourceType,
+                String system, String value, int maxResults, boolean lock) throws FHIRPersistenceException {
+            lookups.add(system + "|" + value);
+            Meta meta = Meta.builder().versionId(Id.of("1")).lastUpdated(Instant.now()).build();
+            List<T> resources = new ArrayList<>();
+            resources.add((T) Patient.builder().id("match-1").meta(meta).build());
+            return new MultiResourceResult.Builder<T>()
+                    .success(true)
+                    .resource(resources)
+                    .build();
+        }
+    }
+
+    /**
+     * Counts the search events and, while active, rejects a search Bundle which contains the resource whose id is
+     * set in 'rejected'; it stays registered with the interceptor manager once added, so it does nothing while
+     * inactive.
+     */
+    private static class SearchCheckingInterceptor implements FHIRPersistenceInterceptor {
+        private static volatile boolean active;
+        private static volatile String rejected;
+        private static int events;
+        private static boolean registered;
+
+        private static synchronized void register() {
+            if (!registered) {
+                FHIRPersistenceInterceptorMgr.getInstance().addInterceptor(new SearchCheckingInterceptor());
+                registered = true;
+            }
+        }
+
+        @Override
+        public void beforeSearch(FHIRPersistenceEvent event) throws FHIRPersistenceInterceptorException {
+            if (active) {
+                events = 1;
+            }
+        }
+
+        @Override
+        public void afterSearch(FHIRPersistenceEvent event) throws FHIRPersistenceInterceptorException {
+            if (!active) {
+                return;
+            }
+            events++;
+            assertTrue(event.getFhirResource() instanceof Bundle);
+            for (Bundle.Entry entry : ((Bundle) event.getFhirResource()).getEntry()) {
+                if (entry.getResource().getId().equals(rejected)) {
+                    throw new FHIRPersistenceInterceptorException("search result rejected")
+                            .withIssue(FHIRUtil.buildOperationOutcomeIssue("search result rejected", IssueType.FORBIDDEN));
+                }
+            }
+        }
+    }
+}
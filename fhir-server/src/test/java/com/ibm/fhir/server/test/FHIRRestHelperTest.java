@@ -9,8 +9,14 @@ package com.ibm.fhir.server.test;
 import static com.ibm.fhir.model.type.String.string;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
 import javax.ws.rs.core.Response;
 
 import org.testng.annotations.Test;
@@ -27,9 +33,13 @@ import com.ibm.fhir.model.resource.Patient;
 import com.ibm.fhir.model.resource.Practitioner;
 import com.ibm.fhir.model.resource.Practitioner.Qualification;
 import com.ibm.fhir.model.resource.Procedure;
+import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.type.Code;
 import com.ibm.fhir.model.type.CodeableConcept;
 import com.ibm.fhir.model.type.Coding;
+import com.ibm.fhir.model.type.Id;
+import com.ibm.fhir.model.type.Instant;
+import com.ibm.fhir.model.type.Meta;
 import com.ibm.fhir.model.type.Narrative;
 import com.ibm.fhir.model.type.Reference;
 import com.ibm.fhir.model.type.Uri;
@@ -41,7 +51,16 @@ import com.ibm.fhir.model.type.code.IssueSeverity;
 import com.ibm.fhir.model.type.code.IssueType;
 import com.ibm.fhir.model.type.code.NarrativeStatus;
 import com.ibm.fhir.model.type.code.ProcedureStatus;
+import com.ibm.fhir.model.util.FHIRUtil;
 import com.ibm.fhir.persistence.FHIRPersistence;
+import com.ibm.fhir.persistence.MultiResourceResult;
+import com.ibm.fhir.persistence.SingleResourceResult;
+import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
+import com.ibm.fhir.persistence.interceptor.FHIRPersistenceEvent;
+import com.ibm.fhir.persistence.interceptor.FHIRPersistenceInterceptor;
+import com.ibm.fhir.persistence.interceptor.FHIRPersistenceInterceptorException;
+import com.ibm.fhir.persistence.interceptor.impl.FHIRPersistenceInterceptorMgr;
 import com.ibm.fhir.server.util.FHIRRestHelper;
 
 public class FHIRRestHelperTest {
@@ -1959,4 +1978,168 @@ public class FHIRRestHelperTest {
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * Test a batch bundle of reads: the reads of each type are prefetched with one call, a failure of that call falls
+     * back to single reads, and an interceptor rejecting one read only fails that entry.
+     */
+    @Test
+    public void testBatchBundleReads() throws Exception {
+        ReadCountingPersistence persistence = new ReadCountingPersistence();
+        FHIRRestHelper helper = new FHIRRestHelper(persistence);
+        ReadCountingInterceptor.register();
+
+        Bundle.Builder requestBundleBuilder = Bundle.builder()
+                .id("bundle1")
+                .type(BundleType.BATCH);
+        for (String url : Arrays.asList("Patient/read-1", "Patient/read-2", "Patient/read-rejected",
+                "Practitioner/read-3", "Practitioner/read-4")) {
+            requestBundleBuilder.entry(Bundle.Entry.builder()
+                .request(Bundle.Entry.Request.builder()
+                    .method(HTTPVerb.GET)
+                    .url(Uri.of(url))
+                    .build())
+                .build());
+        }
+
+        // Process bundle
+        FHIRRequestContext.get().setOriginalRequestUri("test");
+        FHIRRequestContext.get().setReturnPreference(HTTPReturnPreference.REPRESENTATION);
+        Bundle responseBundle;
+        try {
+            ReadCountingInterceptor.active = true;
+            responseBundle = helper.doBundle(requestBundleBuilder.build(), null);
+        } finally {
+            ReadCountingInterceptor.active = false;
+        }
+
+        // Validate results
+        assertNotNull(responseBundle);
+        assertEquals(5, responseBundle.getEntry().size());
+        List<String> statuses = new ArrayList<>();
+        for (Bundle.Entry entry : responseBundle.getEntry()) {
+            statuses.add(entry.getResponse().getStatus().getValue());
+        }
+        assertEquals(statuses, Arrays.asList("200", "200", "403", "200", "200"));
+        assertEquals(responseBundle.getEntry().get(0).getResource().getId(), "read-1");
+        assertEquals(responseBundle.getEntry().get(4).getResource().getId(), "read-4");
+
+        // the Patients were read with one call; the failed Practitioner call fell back to single reads
+        assertEquals(persistence.readManyTypes, Arrays.asList("Patient", "Practitioner"));
+        assertEquals(persistence.singleReads, Arrays.asList("Practitioner/read-3", "Practitioner/read-4"));
+
+        // the interceptors were invoked once per read
+        assertEquals(ReadCountingInterceptor.beforeReads, Arrays.asList("Patient/read-1", "Patient/read-2", "Patient/read-rejected",
+            "Practitioner/read-3", "Practitioner/read-4"));
+    }
+
+    /**
+     * Test a transaction bundle of reads: the reads are not prefetched, so that a failed prefetch cannot mark the
+     * transaction of the bundle for rollback.
+     */
+    @Test
+    public void testTransactionBundleReads() throws Exception {
+        ReadCountingPersistence persistence = new ReadCountingPersistence();
+        FHIRRestHelper helper = new FHIRRestHelper(persistence);
+
+        Bundle.Builder requestBundleBuilder = Bundle.builder()
+                .id("bundle1")
+                .type(BundleType.TRANSACTION);
+        for (String url : Arrays.asList("Practitioner/read-3", "Practitioner/read-4")) {
+            requestBundleBuilder.entry(Bundle.Entry.builder()
+                .request(Bundle.Entry.Request.builder()
+                    .method(HTTPVerb.GET)
+                    .url(Uri.of(url))
+                    .build())
+                .build());
+        }
+
+        // Process bundle
+        FHIRRequestContext.get().setOriginalRequestUri("test");
+        FHIRRequestContext.get().setReturnPreference(HTTPReturnPreference.REPRESENTATION);
+        Bundle responseBundle = helper.doBundle(requestBundleBuilder.build(), null);
+
+        // Validate results
+        assertNotNull(responseBundle);
+        assertEquals(2, responseBundle.getEntry().size());
+        for (Bundle.Entry entry : responseBundle.getEntry()) {
+            assertEquals(entry.getResponse().getStatus().getValue(), "200");
+        }
+        assertTrue(persistence.readManyTypes.isEmpty());
+        assertEquals(persistence.singleReads, Arrays.asList("Practitioner/read-3", "Practitioner/read-4"));
+    }
+
+    /**
+     * A persistence layer whose multi-id read fails for Practitioner resources.
+     */
+    private static class ReadCountingPersistence extends MockPersistenceImpl {
+        private final List<String> readManyTypes = new ArrayList<>();
+        private final List<String> singleReads = new ArrayList<>();
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public <T extends Resource> SingleResourceResult<T> read(FHIRPersistenceContext context, Class<T> resourceType, String logicalId)
+                throws FHIRPersistenceException {
+            singleReads.add(resourceType.getSimpleName() + "/" + logicalId);
+            return new SingleResourceResult.Builder<T>()
+                    .success(true)
+                    .resource((T) build(resourceType, logicalId))
+                    .build();
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public <T extends Resource> MultiResourceResult<T> readMany(FHIRPersistenceContext context, Class<T> resourceType,
+                Collection<String> logicalIds) throws FHIRPersistenceException {
+            readManyTypes.add(resourceType.getSimpleName());
+            if (Practitioner.class.equals(resourceType)) {
+                throw new FHIRPersistenceException("readMany failure");
+            }
+            List<T> resources = new ArrayList<>();
+            for (String logicalId : logicalIds) {
+                resources.add((T) build(resourceType, logicalId));
+            }
+            return new MultiResourceResult.Builder<T>()
+                    .success(true)
+                    .resource(resources)
+                    .build();
+        }
+
+        private static Resource build(Class<? extends Resource> resourceType, String logicalId) {
+            Meta meta = Meta.builder().versionId(Id.of("1")).lastUpdated(Instant.now()).build();
+            if (Practitioner.class.equals(resourceType)) {
+                return Practitioner.builder().id(logicalId).meta(meta).build();
+            }
+            return Patient.builder().id(logicalId).meta(meta).build();
+        }
+    }
+
+    /**
+     * Records the 'beforeRead' events and rejects the read of 'read-rejected' while active; it stays registered with
+     * the interceptor manager once added, so it does nothing while inactive.
+     */
+    private static class ReadCountingInterceptor implements FHIRPersistenceInterceptor {
+        private static final List<String> beforeReads = new ArrayList<>();
+        private static volatile boolean active;
+        private static boolean registered;
+
+        private static synchronized void register() {
+            if (!registered) {
+                FHIRPersistenceInterceptorMgr.getInstance().addInterceptor(new ReadCountingInterceptor());
+                registered = true;
+            }
+            beforeReads.clear();
+        }
+
+        @Override
+        public void beforeRead(FHIRPersistenceEvent event) throws FHIRPersistenceInterceptorException {
+            if (!active) {
+                return;
+            }
+            beforeReads.add(event.getFhirResourceType() + "/" + event.getFhirResourceId());
+            if ("read-rejected".equals(event.getFhirResourceId())) {
+                throw new FHIRPersistenceInterceptorException("read rejected")
+                        .withIssue(FHIRUtil.buildOperationOutcomeIssue("read rejected", IssueType.FORBIDDEN));
+            }
+        }
+    }
+}
@@ -0,0 +1,586 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.term.index;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.ibm.fhir.model.resource.CodeSystem.Concept;
+import com.ibm.fhir.model.type.Boolean;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.Coding;
+import com.ibm.fhir.model.type.DateTime;
+import com.ibm.fhir.model.type.Decimal;
+import com.ibm.fhir.model.type.Element;
+import com.ibm.fhir.model.type.Integer;
+import com.ibm.fhir.model.type.String;
+import com.ibm.fhir.model.type.Uri;
+
+/**
+ * A read-only, memory-mapped index over the concepts of a single code system (version).
+ *
+ * <p>The index file is produced by {@link CodeSystemIndexBuilder} and contains:
+ * <ul>
+ * <li>an open-addressing hash table from code to concept id</li>
+ * <li>a fixed-width concept table (code, display, parents, children, ancestors, designations)</li>
+ * <li>one column per code system property holding the property values of each concept</li>
+ * <li>the sorted transitive closure (ancestors) of each concept, so is-a checks are a binary search</li>
+ * </ul>
+ *
+ * <p>Nothing is decoded until it is asked for, so the heap footprint is independent of the size of the
+ * code system; the operating system pages the file in and out as needed. Instances are thread-safe.
+ */
+public final class CodeSystemIndex {
+    static final int MAGIC = 0x46484958;
+    static final int FORMAT_VERSION = 1;
+
+    static final int FLAG_CASE_SENSITIVE = 1;
+    static final int FLAG_HIERARCHY_IS_A = 2;
+
+    // header layout (all values are big-endian ints)
+    static final int HEADER_MAGIC = 0;
+    static final int HEADER_FORMAT_VERSION = 4;
+    static final int HEADER_FLAGS = 8;
+    static final int HEADER_CONCEPT_COUNT = 12;
+    static final int HEADER_URL = 16;
+    static final int HEADER_VERSION = 20;
+    static final int HEADER_NAME = 24;
+    static final int HEADER_PROPERTY_COUNT = 28;
+    static final int HEADER_PROPERTY_TABLE = 32;
+    static final int HEADER_CONCEPT_TABLE = 36;
+    static final int HEADER_HASH_TABLE = 40;
+    static final int HEADER_HASH_TABLE_SIZE = 44;
+    static final int HEADER_SIZE = 64;
+
+    // concept record layout
+    static final int CONCEPT_CODE = 0;
+    static final int CONCEPT_KEY = 4;
+    static final int CONCEPT_DISPLAY = 8;
+    static final int CONCEPT_PARENTS = 12;
+    static final int CONCEPT_CHILDREN = 16;
+    static final int CONCEPT_ANCESTORS = 20;
+    static final int CONCEPT_DESIGNATIONS = 24;
+    static final int CONCEPT_RECORD_SIZE = 28;
+
+    // property record layout
+    static final int PROPERTY_CODE = 0;
+    static final int PROPERTY_TYPE = 4;
+    static final int PROPERTY_COLUMN = 8;
+    static final int PROPERTY_RECORD_SIZE = 12;
+
+    // the offset used for absent strings and lists
+    static final int NULL = -1;
+
+    private static final int[] EMPTY = new int[0];
+
+    private final Path path;
+    private final ByteBuffer buffer;
+    private final int flags;
+    private final int conceptCount;
+    private final int conceptTable;
+    private final int hashTable;
+    private final int hashMask;
+    private final java.lang.String url;
+    private final java.lang.String version;
+    private final java.lang.String name;
+    private final java.lang.String[] propertyCodes;
+    private final java.lang.String[] propertyTypes;
+    private final int[] propertyColumns;
+    private final Map<java.lang.String, java.lang.Integer> propertyIndexes;
+
+    private CodeSystemIndex(Path path, ByteBuffer buffer) throws IOException {
+        this.path = path;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(HEADER_MAGIC) != MAGIC) {
+            throw new IOException("Not a code system index: " + path);
+        }
+        if (buffer.getInt(HEADER_FORMAT_VERSION) != FORMAT_VERSION) {
+            throw new IOException("Unsupported code system index format version " + buffer.getInt(HEADER_FORMAT_VERSION) + ": " + path);
+        }
+        flags = buffer.getInt(HEADER_FLAGS);
+        conceptCount = buffer.getInt(HEADER_CONCEPT_COUNT);
+        conceptTable = buffer.getInt(HEADER_CONCEPT_TABLE);
+        hashTable = buffer.getInt(HEADER_HASH_TABLE);
+        hashMask = buffer.getInt(HEADER_HASH_TABLE_SIZE) - 1;
+        url = readString(buffer.getInt(HEADER_URL));
+        version = readString(buffer.getInt(HEADER_VERSION));
+        name = readString(buffer.getInt(HEADER_NAME));
+
+        int propertyCount = buffer.getInt(HEADER_PROPERTY_COUNT);
+        int propertyTable = buffer.getInt(HEADER_PROPERTY_TABLE);
+        propertyCodes = new java.lang.String[propertyCount];
+        propertyTypes = new java.lang.String[propertyCount];
+        propertyColumns = new int[propertyCount];
+        propertyIndexes = new HashMap<>(propertyCount * 2);
+        for (int i = 0; i < propertyCount; i++) {
+            int record = propertyTable + i * PROPERTY_RECORD_SIZE;
+            propertyCodes[i] = readString(buffer.getInt(record + PROPERTY_CODE));
+            propertyTypes[i] = readString(buffer.getInt(record + PROPERTY_TYPE));
+            propertyColumns[i] = buffer.getInt(record + PROPERTY_COLUMN);
+            propertyIndexes.put(propertyCodes[i], i);
+        }
+    }
+
+    /**
+     * Memory-map the code system index at the given path
+     *
+     * @param path
+     *     the path of an index file created by {@link CodeSystemIndexBuilder}
+     * @return
+     *     the index
+     * @throws IOException
+     *     if the file cannot be mapped or is not a code system index
+     */
+    public static CodeSystemIndex open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > java.lang.Integer.MAX_VALUE) {
+                throw new IOException("Code system index exceeds 2GB: " + path);
+            }
+            // the mapping remains valid after the channel is closed
+            return new CodeSystemIndex(path, channel.map(MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @return
+     *     the path of the index file
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return
+     *     the canonical url of the indexed code system
+     */
+    public java.lang.String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return
+     *     the version of the indexed code system, or null if it has no version
+     */
+    public java.lang.String getVersion() {
+        return version;
+    }
+
+    /**
+     * @return
+     *     the name of the indexed code system, or null if it has no name
+     */
+    public java.lang.String getName() {
+        return name;
+    }
+
+    /**
+     * @return
+     *     true if codes in the indexed code system are case sensitive
+     */
+    public boolean isCaseSensitive() {
+        return (flags & FLAG_CASE_SENSITIVE) != 0;
+    }
+
+    /**
+     * @return
+     *     true if the hierarchy of the indexed code system has is-a meaning
+     */
+    public boolean isHierarchyIsA() {
+        return (flags & FLAG_HIERARCHY_IS_A) != 0;
+    }
+
+    /**
+     * @return
+     *     the number of concepts in the index
+     */
+    public int getConceptCount() {
+        return conceptCount;
+    }
+
+    /**
+     * Find the id of the concept with the given code
+     *
+     * @param code
+     *     the code
+     * @return
+     *     the concept id, or -1 if the code is not in the index
+     */
+    public int find(java.lang.String code) {
+        if (code == null || conceptCount == 0) {
+            return -1;
+        }
+        java.lang.String key = isCaseSensitive() ? code : code.toLowerCase(Locale.ROOT);
+        byte[] bytes = key.getBytes(UTF_8);
+        int i = spread(key.hashCode()) & hashMask;
+        int slot;
+        while ((slot = buffer.getInt(hashTable + i * 4)) != 0) {
+            int id = slot - 1;
+            if (stringEquals(buffer.getInt(record(id) + CONCEPT_KEY), bytes)) {
+                return id;
+            }
+            i = (i + 1) & hashMask;
+        }
+        return -1;
+    }
+
+    /**
+     * @param id
+     *     the concept id
+     * @return
+     *     the code of the concept
+     */
+    public java.lang.String getCode(int id) {
+        return readString(buffer.getInt(record(id) + CONCEPT_CODE));
+    }
+
+    /**
+     * @param id
+     *     the concept id
+     * @return
+     *     the display of the concept, or null if it has no display
+     */
+    public java.lang.String getDisplay(int id) {
+        return readString(buffer.getInt(record(id) + CONCEPT_DISPLAY));
+    }
+
+    /**
+     * @param id
+     *     the concept id
+     * @return
+     *     the ids of the direct parents of the concept
+     */
+    public int[] getParents(int id) {
+        return readList(buffer.getInt(record(id) + CONCEPT_PARENTS));
+    }
+
+    /**
+     * @param id
+     *     the concept id
+     * @return
+     *     the ids of the direct children of the concept
+     */
+    public int[] getChildren(int id) {
+        return readList(buffer.getInt(record(id) + CONCEPT_CHILDREN));
+    }
+
+    /**
+     * @param id
+     *     the concept id
+     * @return
+     *     the ids of all (transitive) ancestors of the concept in ascending order
+     */
+    public int[] getAncestors(int id) {
+        return readList(buffer.getInt(record(id) + CONCEPT_ANCESTORS));
+    }
+
+    /**
+     * Determine whether the concept with id {@code id} is the same as, or a descendant of, the concept with
+     * id {@code ancestorId}
+     *
+     * @param id
+     *     the concept id
+     * @param ancestorId
+     *     the candidate ancestor concept id
+     * @return
+     *     true if {@code id} is-a {@code ancestorId}, false otherwise
+     */
+    public boolean isA(int id, int ancestorId) {
+        if (id == ancestorId) {
+            return true;
+        }
+        return listContains(buffer.getInt(record(id) + CONCEPT_ANCESTORS), ancestorId);
+    }
+
+    /**
+     * Determine whether the concept with id {@code parentId} is a direct parent of the concept with id {@code id}
+     *
+     * @param id
+     *     the concept id
+     * @param parentId
+     *     the candidate parent concept id
+     * @return
+     *     true if {@code parentId} is a direct parent of {@code id}, false otherwise
+     */
+    public boolean hasParent(int id, int parentId) {
+        int offset = buffer.getInt(record(id) + CONCEPT_PARENTS);
+        if (offset != NULL) {
+            int count = buffer.getInt(offset);
+            for (int i = 0; i < count; i++) {
+                if (buffer.getInt(offset + 4 + i * 4) == parentId) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the concept and all of its descendants in depth-first (pre-order) order, each concept appearing
+     * only once even if it is reachable along multiple paths
+     *
+     * @param id
+     *     the concept id
+     * @return
+     *     the ids of the concept and its descendants
+     */
+    public int[] getDescendantsAndSelf(int id) {
+        BitSet visited = new BitSet(conceptCount);
+        int[] result = new int[16];
+        int size = 0;
+        Deque<java.lang.Integer> stack = new ArrayDeque<>();
+        stack.push(id);
+        while (!stack.isEmpty()) {
+            int current = stack.pop();
+            if (visited.get(current)) {
+                continue;
+            }
+            visited.set(current);
+            if (size == result.length) {
+                result = Arrays.copyOf(result, size * 2);
+            }
+            result[size++] = current;
+            int[] children = getChildren(current);
+            for (int i = children.length - 1; i >= 0; i--) {
+                if (!visited.get(children[i])) {
+                    stack.push(children[i]);
+                }
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Indicates whether the code system declares a property with the given code
+     *
+     * @param property
+     *     the property code
+     * @return
+     *     true if the property is declared, false otherwise
+     */
+    public boolean hasProperty(java.lang.String property) {
+        return propertyIndexes.containsKey(property);
+    }
+
+    /**
+     * Indicates whether the concept has at least one value for the given property
+     *
+     * @param id
+     *     the concept id
+     * @param property
+     *     the property code
+     * @return
+     *     true if the concept has a value for the property, false otherwise
+     */
+    public boolean hasPropertyValue(int id, java.lang.String property) {
+        java.lang.Integer index = propertyIndexes.get(property);
+        return index != null && buffer.getInt(propertyColumns[index] + id * 4) != NULL;
+    }
+
+    /**
+     * Get the values of the given property for the concept
+     *
+     * @param id
+     *     the concept id
+     * @param property
+     *     the property code
+     * @return
+     *     the property values, or an empty list if the concept has no value for the property
+     */
+    public List<Element> getPropertyValues(int id, java.lang.String property) {
+        java.lang.Integer index = propertyIndexes.get(property);
+        if (index == null) {
+            return Collections.emptyList();
+        }
+        int[] refs = readList(buffer.getInt(propertyColumns[index] + id * 4));
+        List<Element> values = new ArrayList<>(refs.length);
+        for (int ref : refs) {
+            values.add(toElement(readString(ref), propertyTypes[index]));
+        }
+        return values;
+    }
+
+    /**
+     * Materialize the concept with the given id, including its designations and properties but not its children
+     *
+     * @param id
+     *     the concept id
+     * @return
+     *     the concept
+     */
+    public Concept getConcept(int id) {
+        Concept.Builder builder = Concept.builder()
+                .code(Code.of(getCode(id)));
+
+        java.lang.String display = getDisplay(id);
+        if (display != null) {
+            builder.display(String.of(display));
+        }
+
+        int[] designations = readList(buffer.getInt(record(id) + CONCEPT_DESIGNATIONS));
+        for (int i = 0; i + 3 < designations.length; i += 4) {
+            java.lang.String language = readString(designations[i]);
+            java.lang.String useSystem = readString(designations[i + 1]);
+            java.lang.String useCode = readString(designations[i + 2]);
+            Concept.Designation.Builder designation = Concept.Designation.builder()
+                    .value(String.of(readString(designations[i + 3])));
+            if (language != null) {
+                designation.language(Code.of(language));
+            }
+            if (useCode != null) {
+                designation.use(Coding.builder()
+                    .system((useSystem != null) ? Uri.of(useSystem) : null)
+                    .code(Code.of(useCode))
+                    .build());
+            }
+            builder.designation(designation.build());
+        }
+
+        for (int i = 0; i < propertyCodes.length; i++) {
+            for (int ref : readList(buffer.getInt(propertyColumns[i] + id * 4))) {
+                builder.property(Concept.Property.builder()
+                    .code(Code.of(propertyCodes[i]))
+                    .value(toElement(readString(ref), propertyTypes[i]))
+                    .build());
+            }
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Materialize a concept containing just the code and display of the concept with the given id
+     *
+     * @param id
+     *     the concept id
+     * @return
+     *     the concept
+     */
+    public Concept getConceptSummary(int id) {
+        java.lang.String display = getDisplay(id);
+        return Concept.builder()
+                .code(Code.of(getCode(id)))
+                .display((display != null) ? String.of(display) : null)
+                .build();
+    }
+
+    @Override
+    public java.lang.String toString() {
+        return (version != null) ? url + "|" + version : url;
+    }
+
+    /**
+     * Convert a property value from its index representation to a FHIR element
+     */
+    static Element toElement(java.lang.String value, java.lang.String type) {
+        switch (type) {
+        case "code":
+            return Code.of(value);
+        case "Coding":
+            int separator = value.indexOf('|');
+            return Coding.builder()
+                    .system((separator > 0) ? Uri.of(value.substring(0, separator)) : null)
+                    .code(Code.of(value.substring(separator + 1)))
+                    .build();
+        case "integer":
+            return Integer.of(value);
+        case "boolean":
+            return Boolean.of(value);
+        case "dateTime":
+            return DateTime.of(value);
+        case "decimal":
+            return Decimal.of(value);
+        default:
+            return String.of(value);
+        }
+    }
+
+    static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private int record(int id) {
+        if (id < 0 || id >= conceptCount) {
+            throw new IndexOutOfBoundsException("Invalid concept id: " + id);
+        }
+        return conceptTable + id * CONCEPT_RECORD_SIZE;
+    }
+
+    private java.lang.String readString(int offset) {
+        if (offset == NULL) {
+            return null;
+        }
+        int length = buffer.getInt(offset);
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + 4 + i);
+        }
+        return new java.lang.String(bytes, UTF_8);
+    }
+
+    private boolean stringEquals(int offset, byte[] bytes) {
+        if (buffer.getInt(offset) != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (buffer.get(offset + 4 + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int[] readList(int offset) {
+        if (offset == NULL) {
+            return EMPTY;
+        }
+        int count = buffer.getInt(offset);
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = buffer.getInt(offset + 4 + i * 4);
+        }
+        return result;
+    }
+
+    /**
+     * Binary search of a sorted list
+     */
+    private boolean listContains(int offset, int value) {
+        if (offset == NULL) {
+            return false;
+        }
+        int low = 0;
+        int high = buffer.getInt(offset) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midValue = buffer.getInt(offset + 4 + mid * 4);
+            if (midValue < value) {
+                low = mid + 1;
+            } else if (midValue > value) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+}
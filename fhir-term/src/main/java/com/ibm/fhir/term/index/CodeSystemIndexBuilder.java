@@ -0,0 +1,590 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.term.index;
+
+import static com.ibm.fhir.term.index.CodeSystemIndex.CONCEPT_RECORD_SIZE;
+import static com.ibm.fhir.term.index.CodeSystemIndex.FLAG_CASE_SENSITIVE;
+import static com.ibm.fhir.term.index.CodeSystemIndex.FLAG_HIERARCHY_IS_A;
+import static com.ibm.fhir.term.index.CodeSystemIndex.FORMAT_VERSION;
+import static com.ibm.fhir.term.index.CodeSystemIndex.HEADER_SIZE;
+import static com.ibm.fhir.term.index.CodeSystemIndex.MAGIC;
+import static com.ibm.fhir.term.index.CodeSystemIndex.NULL;
+import static com.ibm.fhir.term.index.CodeSystemIndex.PROPERTY_RECORD_SIZE;
+import static com.ibm.fhir.term.index.CodeSystemIndex.spread;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.parser.exception.FHIRParserException;
+import com.ibm.fhir.model.resource.CodeSystem;
+import com.ibm.fhir.model.resource.CodeSystem.Concept;
+import com.ibm.fhir.model.type.Boolean;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.Coding;
+import com.ibm.fhir.model.type.DateTime;
+import com.ibm.fhir.model.type.Decimal;
+import com.ibm.fhir.model.type.Element;
+import com.ibm.fhir.model.type.Integer;
+import com.ibm.fhir.model.type.String;
+import com.ibm.fhir.model.type.code.CodeSystemHierarchyMeaning;
+
+/**
+ * Builds a {@link CodeSystemIndex} file from one or more CodeSystem resources.
+ *
+ * <p>Very large code systems are usually distributed in fragments, so {@link #add(CodeSystem)} may be called
+ * any number of times with resources for the same url and version; the concepts are merged. The hierarchy
+ * is taken from both concept nesting and the standard "parent" and "child" concept properties, which means
+ * fragments may reference concepts defined in other fragments.
+ *
+ * <p>Usage from the command line:
+ * <pre>
+ * java -cp ... com.ibm.fhir.term.index.CodeSystemIndexBuilder &lt;CodeSystem.json | CodeSystems.ndjson&gt; &lt;index-file&gt;
+ * </pre>
+ */
+public class CodeSystemIndexBuilder {
+    private static final Logger logger = Logger.getLogger(CodeSystemIndexBuilder.class.getName());
+
+    private static final java.lang.String PARENT = "parent";
+    private static final java.lang.String CHILD = "child";
+
+    private java.lang.String url;
+    private java.lang.String version;
+    private java.lang.String name;
+    private boolean caseSensitive;
+    private boolean hierarchyIsA;
+
+    // property code -> property type, in declaration order
+    private final Map<java.lang.String, java.lang.String> properties = new LinkedHashMap<>();
+
+    // concepts in document order, and the lookup key (code, normalized for case) -> concept id
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<java.lang.String, java.lang.Integer> ids = new HashMap<>();
+
+    // (parent code, child code) pairs resolved once all fragments have been added
+    private final List<java.lang.String[]> edges = new ArrayList<>();
+
+    /**
+     * Add the concepts of the given code system (or code system fragment) to the index
+     *
+     * @param codeSystem
+     *     the code system
+     * @return
+     *     this builder
+     * @throws IllegalArgumentException
+     *     if the code system has a different url or version than code systems previously added
+     */
+    public CodeSystemIndexBuilder add(CodeSystem codeSystem) {
+        java.lang.String url = (codeSystem.getUrl() != null) ? codeSystem.getUrl().getValue() : null;
+        java.lang.String version = (codeSystem.getVersion() != null) ? codeSystem.getVersion().getValue() : null;
+        if (url == null) {
+            throw new IllegalArgumentException("CodeSystem url is required");
+        }
+        if (this.url == null) {
+            this.url = url;
+            this.version = version;
+            this.name = (codeSystem.getName() != null) ? codeSystem.getName().getValue() : null;
+            this.caseSensitive = codeSystem.getCaseSensitive() != null && java.lang.Boolean.TRUE.equals(codeSystem.getCaseSensitive().getValue());
+            this.hierarchyIsA = CodeSystemHierarchyMeaning.IS_A.equals(codeSystem.getHierarchyMeaning());
+        } else if (!this.url.equals(url) || (this.version == null ? version != null : !this.version.equals(version))) {
+            throw new IllegalArgumentException("CodeSystem " + url + "|" + version + " does not match " + this.url + "|" + this.version);
+        }
+
+        for (CodeSystem.Property property : codeSystem.getProperty()) {
+            java.lang.String type = (property.getType() != null) ? property.getType().getValue() : "string";
+            properties.putIfAbsent(property.getCode().getValue(), type);
+        }
+
+        for (Concept concept : codeSystem.getConcept()) {
+            add(null, concept);
+        }
+        return this;
+    }
+
+    private void add(java.lang.String parent, Concept concept) {
+        java.lang.String code = concept.getCode().getValue();
+        Entry entry = getOrCreate(code);
+        if (entry.display == null && concept.getDisplay() != null) {
+            entry.display = concept.getDisplay().getValue();
+        }
+        for (Concept.Designation designation : concept.getDesignation()) {
+            entry.designations.add(designation);
+        }
+        for (Concept.Property property : concept.getProperty()) {
+            java.lang.String propertyCode = property.getCode().getValue();
+            if (PARENT.equals(propertyCode) && property.getValue().is(Code.class)) {
+                edges.add(new java.lang.String[] { property.getValue().as(Code.class).getValue(), code });
+            } else if (CHILD.equals(propertyCode) && property.getValue().is(Code.class)) {
+                edges.add(new java.lang.String[] { code, property.getValue().as(Code.class).getValue() });
+            }
+            properties.putIfAbsent(propertyCode, typeOf(property.getValue()));
+            entry.properties.computeIfAbsent(propertyCode, k -> new ArrayList<>()).add(toString(property.getValue()));
+        }
+        if (parent != null) {
+            edges.add(new java.lang.String[] { parent, code });
+        }
+        for (Concept child : concept.getConcept()) {
+            add(code, child);
+        }
+    }
+
+    private Entry getOrCreate(java.lang.String code) {
+        java.lang.String key = key(code);
+        java.lang.Integer id = ids.get(key);
+        if (id != null) {
+            return entries.get(id);
+        }
+        Entry entry = new Entry(code, key);
+        ids.put(key, entries.size());
+        entries.add(entry);
+        return entry;
+    }
+
+    private java.lang.String key(java.lang.String code) {
+        return caseSensitive ? code : code.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Write the index file
+     *
+     * @param path
+     *     the path of the index file to create (or replace)
+     * @throws IOException
+     *     if the file cannot be written
+     * @throws IllegalStateException
+     *     if no code system has been added
+     */
+    public void write(Path path) throws IOException {
+        if (url == null) {
+            throw new IllegalStateException("No CodeSystem has been added");
+        }
+
+        int count = entries.size();
+        int[][] parents = resolveParents();
+        int[][] children = invert(parents);
+        int[][] ancestors = computeAncestors(parents);
+        java.lang.String[] propertyCodes = properties.keySet().toArray(new java.lang.String[0]);
+
+        int[] header;
+        try (Output out = new Output(Files.newOutputStream(path))) {
+            out.skip(HEADER_SIZE);
+
+            // string pool
+            Map<java.lang.String, java.lang.Integer> strings = new HashMap<>();
+            int urlRef = out.string(strings, url);
+            int versionRef = out.string(strings, version);
+            int nameRef = out.string(strings, name);
+            int[] propertyCodeRefs = new int[propertyCodes.length];
+            int[] propertyTypeRefs = new int[propertyCodes.length];
+            for (int i = 0; i < propertyCodes.length; i++) {
+                propertyCodeRefs[i] = out.string(strings, propertyCodes[i]);
+                propertyTypeRefs[i] = out.string(strings, properties.get(propertyCodes[i]));
+            }
+
+            // per-concept lists
+            int[][] records = new int[count][];
+            for (int id = 0; id < count; id++) {
+                Entry entry = entries.get(id);
+                int codeRef = out.string(strings, entry.code);
+                int keyRef = out.string(strings, entry.key);
+                int displayRef = out.string(strings, entry.display);
+                int[] designationRefs = new int[entry.designations.size() * 4];
+                int i = 0;
+                for (Concept.Designation designation : entry.designations) {
+                    Coding use = designation.getUse();
+                    designationRefs[i++] = out.string(strings, (designation.getLanguage() != null) ? designation.getLanguage().getValue() : null);
+                    designationRefs[i++] = out.string(strings, (use != null && use.getSystem() != null) ? use.getSystem().getValue() : null);
+                    designationRefs[i++] = out.string(strings, (use != null && use.getCode() != null) ? use.getCode().getValue() : null);
+                    designationRefs[i++] = out.string(strings, designation.getValue().getValue());
+                }
+                records[id] = new int[] {
+                    codeRef,
+                    keyRef,
+                    displayRef,
+                    out.list(parents[id]),
+                    out.list(children[id]),
+                    out.list(ancestors[id]),
+                    out.list(designationRefs)
+                };
+            }
+
+            // property columns
+            int[] columnOffsets = new int[propertyCodes.length];
+            for (int p = 0; p < propertyCodes.length; p++) {
+                int[] column = new int[count];
+                for (int id = 0; id < count; id++) {
+                    List<java.lang.String> values = entries.get(id).properties.get(propertyCodes[p]);
+                    if (values == null) {
+                        column[id] = NULL;
+                    } else {
+                        int[] valueRefs = new int[values.size()];
+                        for (int i = 0; i < valueRefs.length; i++) {
+                            valueRefs[i] = out.string(strings, values.get(i));
+                        }
+                        column[id] = out.list(valueRefs);
+                    }
+                }
+                columnOffsets[p] = out.position();
+                for (int ref : column) {
+                    out.writeInt(ref);
+                }
+            }
+
+            int propertyTable = out.position();
+            for (int p = 0; p < propertyCodes.length; p++) {
+                out.writeInt(propertyCodeRefs[p]);
+                out.writeInt(propertyTypeRefs[p]);
+                out.writeInt(columnOffsets[p]);
+            }
+            assert out.position() - propertyTable == propertyCodes.length * PROPERTY_RECORD_SIZE;
+
+            int conceptTable = out.position();
+            for (int[] record : records) {
+                for (int value : record) {
+                    out.writeInt(value);
+                }
+            }
+            assert out.position() - conceptTable == count * CONCEPT_RECORD_SIZE;
+
+            // open-addressing hash table of (concept id + 1), load factor <= 0.5
+            int hashTableSize = Math.max(2, java.lang.Integer.highestOneBit(Math.max(1, count * 2 - 1)) << 1);
+            int[] slots = new int[hashTableSize];
+            int mask = hashTableSize - 1;
+            for (int id = 0; id < count; id++) {
+                int i = spread(entries.get(id).key.hashCode()) & mask;
+                while (slots[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                slots[i] = id + 1;
+            }
+            int hashTable = out.position();
+            for (int slot : slots) {
+                out.writeInt(slot);
+            }
+
+            header = new int[] {
+                MAGIC,
+                FORMAT_VERSION,
+                (caseSensitive ? FLAG_CASE_SENSITIVE : 0) | (hierarchyIsA ? FLAG_HIERARCHY_IS_A : 0),
+                count,
+                urlRef,
+                versionRef,
+                nameRef,
+                propertyCodes.length,
+                propertyTable,
+                conceptTable,
+                hashTable,
+                hashTableSize
+            };
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            for (int value : header) {
+                file.writeInt(value);
+            }
+        }
+    }
+
+    private int[][] resolveParents() {
+        List<Set<java.lang.Integer>> parents = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            parents.add(null);
+        }
+        for (java.lang.String[] edge : edges) {
+            java.lang.Integer parent = ids.get(key(edge[0]));
+            java.lang.Integer child = ids.get(key(edge[1]));
+            if (parent == null || child == null) {
+                logger.warning("Ignoring hierarchy relationship to unknown concept: " + edge[0] + " -> " + edge[1]);
+                continue;
+            }
+            if (parent.equals(child)) {
+                continue;
+            }
+            Set<java.lang.Integer> set = parents.get(child);
+            if (set == null) {
+                set = new LinkedHashSet<>();
+                parents.set(child, set);
+            }
+            set.add(parent);
+        }
+        int[][] result = new int[entries.size()][];
+        for (int id = 0; id < result.length; id++) {
+            result[id] = toArray(parents.get(id));
+        }
+        return result;
+    }
+
+    private static int[][] invert(int[][] parents) {
+        int[] counts = new int[parents.length];
+        for (int[] p : parents) {
+            for (int parent : p) {
+                counts[parent]++;
+            }
+        }
+        int[][] children = new int[parents.length][];
+        for (int id = 0; id < parents.length; id++) {
+            children[id] = new int[counts[id]];
+            counts[id] = 0;
+        }
+        // iterating in id order keeps the children in document order
+        for (int id = 0; id < parents.length; id++) {
+            for (int parent : parents[id]) {
+                children[parent][counts[parent]++] = id;
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Compute the sorted transitive closure of the parents of each concept. Hierarchies can be deep, so this
+     * uses an explicit stack rather than recursion; cycles (which are invalid, but happen) are broken.
+     */
+    private static int[][] computeAncestors(int[][] parents) {
+        int[][] ancestors = new int[parents.length][];
+        boolean[] visiting = new boolean[parents.length];
+        int[] stack = new int[16];
+        for (int root = 0; root < parents.length; root++) {
+            if (ancestors[root] != null) {
+                continue;
+            }
+            int top = 0;
+            stack[top++] = root;
+            while (top > 0) {
+                int id = stack[top - 1];
+                if (ancestors[id] != null) {
+                    // pushed more than once via different children
+                    top--;
+                    continue;
+                }
+                visiting[id] = true;
+                boolean ready = true;
+                for (int parent : parents[id]) {
+                    if (ancestors[parent] == null && !visiting[parent]) {
+                        if (top == stack.length) {
+                            stack = Arrays.copyOf(stack, top * 2);
+                        }
+                        stack[top++] = parent;
+                        ready = false;
+                    }
+                }
+                if (ready) {
+                    Set<java.lang.Integer> set = new LinkedHashSet<>();
+                    for (int parent : parents[id]) {
+                        set.add(parent);
+                        if (ancestors[parent] != null) {
+                            for (int ancestor : ancestors[parent]) {
+                                set.add(ancestor);
+                            }
+                        }
+                    }
+                    set.remove(id);
+                    int[] result = toArray(set);
+                    Arrays.sort(result);
+                    ancestors[id] = result;
+                    visiting[id] = false;
+                    top--;
+                }
+            }
+        }
+        return ancestors;
+    }
+
+    private static int[] toArray(Set<java.lang.Integer> set) {
+        if (set == null) {
+            return new int[0];
+        }
+        int[] result = new int[set.size()];
+        int i = 0;
+        for (java.lang.Integer value : set) {
+            result[i++] = value;
+        }
+        return result;
+    }
+
+    private static java.lang.String typeOf(Element value) {
+        if (value.is(Code.class)) {
+            return "code";
+        }
+        if (value.is(Coding.class)) {
+            return "Coding";
+        }
+        if (value.is(Integer.class)) {
+            return "integer";
+        }
+        if (value.is(Boolean.class)) {
+            return "boolean";
+        }
+        if (value.is(DateTime.class)) {
+            return "dateTime";
+        }
+        if (value.is(Decimal.class)) {
+            return "decimal";
+        }
+        return "string";
+    }
+
+    private static java.lang.String toString(Element value) {
+        if (value.is(Code.class)) {
+            return value.as(Code.class).getValue();
+        }
+        if (value.is(Coding.class)) {
+            Coding coding = value.as(Coding.class);
+            java.lang.String code = (coding.getCode() != null) ? coding.getCode().getValue() : "";
+            return (coding.getSystem() != null) ? coding.getSystem().getValue() + "|" + code : code;
+        }
+        if (value.is(Integer.class)) {
+            return value.as(Integer.class).getValue().toString();
+        }
+        if (value.is(Boolean.class)) {
+            return value.as(Boolean.class).getValue().toString();
+        }
+        if (value.is(DateTime.class)) {
+            return DateTime.PARSER_FORMATTER.format(value.as(DateTime.class).getValue());
+        }
+        if (value.is(Decimal.class)) {
+            return value.as(Decimal.class).getValue().toString();
+        }
+        if (value.is(String.class)) {
+            return value.as(String.class).getValue();
+        }
+        throw new IllegalArgumentException("Unsupported concept property value type: " + value.getClass().getSimpleName());
+    }
+
+    /**
+     * Build an index file from a CodeSystem JSON file, or an NDJSON file of CodeSystem resources (fragments)
+     *
+     * @param args
+     *     the input file and the index file to create
+     */
+    public static void main(java.lang.String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: CodeSystemIndexBuilder <CodeSystem.json | CodeSystems.ndjson> <index-file>");
+            System.exit(1);
+        }
+        Path input = Paths.get(args[0]);
+        Path output = Paths.get(args[1]);
+
+        long start = System.nanoTime();
+        CodeSystemIndexBuilder builder = new CodeSystemIndexBuilder();
+        FHIRParser parser = FHIRParser.parser(Format.JSON);
+        try (BufferedReader reader = Files.newBufferedReader(input, UTF_8)) {
+            if (args[0].endsWith(".ndjson")) {
+                java.lang.String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.trim().isEmpty()) {
+                        builder.add(parse(parser, new StringReader(line)));
+                    }
+                }
+            } else {
+                builder.add(parse(parser, reader));
+            }
+        }
+        builder.write(output);
+        logger.info(java.lang.String.format("Indexed %d concepts from %s into %s in %d ms", builder.entries.size(), input, output,
+            (System.nanoTime() - start) / 1000000));
+    }
+
+    private static CodeSystem parse(FHIRParser parser, Reader reader) throws FHIRParserException {
+        return parser.parse(reader);
+    }
+
+    /**
+     * A concept being indexed
+     */
+    private static class Entry {
+        private final java.lang.String code;
+        private final java.lang.String key;
+        private java.lang.String display;
+        private final List<Concept.Designation> designations = new ArrayList<>(0);
+        private final Map<java.lang.String, List<java.lang.String>> properties = new LinkedHashMap<>();
+
+        private Entry(java.lang.String code, java.lang.String key) {
+            this.code = code;
+            this.key = key;
+        }
+    }
+
+    /**
+     * Sequential writer which tracks the file offset of everything it writes
+     */
+    private static class Output implements AutoCloseable {
+        private final DataOutputStream out;
+
+        private Output(OutputStream file) {
+            this.out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16));
+        }
+
+        private int position() throws IOException {
+            int position = out.size();
+            if (position == java.lang.Integer.MAX_VALUE) {
+                throw new IOException("Code system index exceeds 2GB");
+            }
+            return position;
+        }
+
+        private void skip(int bytes) throws IOException {
+            out.write(new byte[bytes]);
+        }
+
+        private void writeInt(int value) throws IOException {
+            out.writeInt(value);
+        }
+
+        private int string(Map<java.lang.String, java.lang.Integer> strings, java.lang.String value) throws IOException {
+            if (value == null) {
+                return NULL;
+            }
+            java.lang.Integer offset = strings.get(value);
+            if (offset == null) {
+                offset = position();
+                byte[] bytes = value.getBytes(UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                strings.put(value, offset);
+            }
+            return offset;
+        }
+
+        private int list(int[] values) throws IOException {
+            if (values.length == 0) {
+                return NULL;
+            }
+            int offset = position();
+            out.writeInt(values.length);
+            for (int value : values) {
+                out.writeInt(value);
+            }
+            return offset;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -6,21 +6,16 @@
 
 package com.ibm.fhir.term.service.provider;
 
-import static com.ibm.fhir.core.util.LRUCache.createLRUCache;
 import static com.ibm.fhir.model.type.String.string;
 import static com.ibm.fhir.model.util.FHIRUtil.STRING_DATA_ABSENT_REASON_UNKNOWN;
 import static com.ibm.fhir.term.util.CodeSystemSupport.findConcept;
+import static com.ibm.fhir.term.util.CodeSystemSupport.getClosureIndex;
 import static com.ibm.fhir.term.util.CodeSystemSupport.getCodeSystem;
-import static com.ibm.fhir.term.util.CodeSystemSupport.getConcepts;
 import static com.ibm.fhir.term.util.CodeSystemSupport.isCaseSensitive;
-import static com.ibm.fhir.term.util.ValueSetSupport.getContains;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -33,8 +28,6 @@ import com.ibm.fhir.model.resource.ConceptMap.Group;
 import com.ibm.fhir.model.resource.ConceptMap.Group.Element;
 import com.ibm.fhir.model.resource.ConceptMap.Group.Element.Target;
 import com.ibm.fhir.model.resource.ValueSet;
-import com.ibm.fhir.model.resource.ValueSet.Expansion;
-import com.ibm.fhir.model.resource.ValueSet.Expansion.Contains;
 import com.ibm.fhir.model.type.Boolean;
 import com.ibm.fhir.model.type.Code;
 import com.ibm.fhir.model.type.CodeableConcept;
@@ -53,6 +46,8 @@ import com.ibm.fhir.term.spi.TranslationOutcome.Match;
 import com.ibm.fhir.term.spi.TranslationParameters;
 import com.ibm.fhir.term.spi.ValidationOutcome;
 import com.ibm.fhir.term.spi.ValidationParameters;
+import com.ibm.fhir.term.util.ClosureIndex;
+import com.ibm.fhir.term.util.ValueSetIndex;
 import com.ibm.fhir.term.util.ValueSetSupport;
 
 /**
@@ -61,8 +56,6 @@ import com.ibm.fhir.term.util.ValueSetSupport;
 public class DefaultTermServiceProvider implements FHIRTermServiceProvider {
     private static final Logger log = Logger.getLogger(DefaultTermServiceProvider.class.getName());
 
-    private static final String VERSION_UNKNOWN = "<version unknown>";
-    private static final Map<String, Map<String, Set<String>>> CODE_SET_MAP_CACHE = createLRUCache(1024);
 
     @Override
     public boolean isExpandable(ValueSet valueSet) {
@@ -89,31 +82,57 @@ public class DefaultTermServiceProvider implements FHIRTermServiceProvider {
         return null;
     }
 
-    private LookupOutcome lookup(CodeSystem codeSystem, Code code) {
+    /**
+     * Lookup the concept with the given code in the provided code system
+     *
+     * @param codeSystem
+     *     the code system
+     * @param code
+     *     the code
+     * @return
+     *     the outcome of the lookup, or null if the code system has no such concept
+     */
+    protected LookupOutcome lookup(CodeSystem codeSystem, Code code) {
         Concept concept = findConcept(codeSystem, code);
         if (concept != null) {
-            return LookupOutcome.builder()
-                    .name((codeSystem.getName() != null) ? codeSystem.getName() : STRING_DATA_ABSENT_REASON_UNKNOWN)
-                    .version(codeSystem.getVersion())
-                    .display((concept.getDisplay() != null) ? concept.getDisplay() : STRING_DATA_ABSENT_REASON_UNKNOWN)
-                    .property(concept.getProperty().stream()
-                        .map(property -> Property.builder()
-                            .code(property.getCode())
-                            .value(property.getValue())
-                            .build())
-                        .collect(Collectors.toList()))
-                    .designation(concept.getDesignation().stream()
-                        .map(designation -> Designation.builder()
-                            .language(designation.getLanguage())
-                            .use(designation.getUse())
-                            .value(designation.getValue())
-                            .build())
-                        .collect(Collectors.toList()))
-                    .build();
+            return lookup(codeSystem.getName(), codeSystem.getVersion(), concept);
         }
         return null;
     }
 
+    /**
+     * Build the lookup outcome for a concept
+     *
+     * @param name
+     *     the name of the code system, or null
+     * @param version
+     *     the version of the code system, or null
+     * @param concept
+     *     the concept
+     * @return
+     *     the outcome of the lookup
+     */
+    protected LookupOutcome lookup(com.ibm.fhir.model.type.String name, com.ibm.fhir.model.type.String version, Concept concept) {
+        return LookupOutcome.builder()
+                .name((name != null) ? name : STRING_DATA_ABSENT_REASON_UNKNOWN)
+                .version(version)
+                .display((concept.getDisplay() != null) ? concept.getDisplay() : STRING_DATA_ABSENT_REASON_UNKNOWN)
+                .property(concept.getProperty().stream()
+                    .map(property -> Property.builder()
+                        .code(property.getCode())
+                        .value(property.getValue())
+                        .build())
+                    .collect(Collectors.toList()))
+                .designation(concept.getDesignation().stream()
+                    .map(designation -> Designation.builder()
+                        .language(designation.getLanguage())
+                        .use(designation.getUse())
+                        .value(designation.getValue())
+                        .build())
+                    .collect(Collectors.toList()))
+                .build();
+    }
+
     @Override
     public ConceptSubsumptionOutcome subsumes(Coding codingA, Coding codingB) {
         Uri systemA = codingA.getSystem();
@@ -136,17 +155,14 @@ public class DefaultTermServiceProvider implements FHIRTermServiceProvider {
 
             CodeSystem codeSystem = getCodeSystem(url);
             if (codeSystem != null && CodeSystemHierarchyMeaning.IS_A.equals(codeSystem.getHierarchyMeaning())) {
-                Concept conceptA = findConcept(codeSystem, codeA);
-                if (conceptA != null) {
-                    Concept conceptB = findConcept(codeSystem, conceptA, codeB);
-                    if (conceptB != null) {
+                ClosureIndex index = getClosureIndex(codeSystem);
+                Concept conceptA = index.findConcept(codeA);
+                Concept conceptB = index.findConcept(codeB);
+                if (conceptA != null && conceptB != null) {
+                    if (index.subsumes(codeA, codeB)) {
                         return conceptA.equals(conceptB) ? ConceptSubsumptionOutcome.EQUIVALENT : ConceptSubsumptionOutcome.SUBSUMES;
                     }
-                    conceptB = findConcept(codeSystem, codeB);
-                    if (conceptB != null) {
-                        conceptA = findConcept(codeSystem, conceptB, codeA);
-                        return (conceptA != null) ? ConceptSubsumptionOutcome.SUBSUMED_BY : ConceptSubsumptionOutcome.NOT_SUBSUMED;
-                    }
+                    return index.subsumes(codeB, codeA) ? ConceptSubsumptionOutcome.SUBSUMED_BY : ConceptSubsumptionOutcome.NOT_SUBSUMED;
                 }
             }
         }
@@ -164,9 +180,10 @@ public class DefaultTermServiceProvider implements FHIRTermServiceProvider {
             String url = (version != null) ? system.getValue() + "|" + version : system.getValue();
             CodeSystem codeSystem = getCodeSystem(url);
             if (codeSystem != null && CodeSystemHierarchyMeaning.IS_A.equals(codeSystem.getHierarchyMeaning())) {
-                Concept concept = findConcept(codeSystem, code);
+                ClosureIndex index = getClosureIndex(codeSystem);
+                Concept concept = index.findConcept(code);
                 if (concept != null) {
-                    return getConcepts(concept);
+                    return index.getDescendantsAndSelf(concept);
                 }
             }
         }
@@ -193,22 +210,22 @@ public class DefaultTermServiceProvider implements FHIRTermServiceProvider {
 
     @Override
     public ValidationOutcome validateCode(ValueSet valueSet, Code code, ValidationParameters parameters) {
-        boolean result = validateCode(getCodeSetMap(valueSet), code);
+        boolean result = validateCode(getIndex(valueSet), code);
         return validateCode(null, Coding.builder().code(code).build(), result, null);
     }
 
     @Override
     public ValidationOutcome validateCode(ValueSet valueSet, Coding coding, ValidationParameters parameters) {
-        boolean result = validateCode(getCodeSetMap(valueSet), coding);
+        boolean result = validateCode(getIndex(valueSet), coding);
         LookupOutcome outcome = result ? lookup(coding) : null;
         return validateCode(coding, result, outcome);
     }
 
     @Override
     public ValidationOutcome validateCode(ValueSet valueSet, CodeableConcept codeableConcept, ValidationParameters parameters) {
-        Map<String, Set<String>> codeSetMap = getCodeSetMap(valueSet);
+        ValueSetIndex index = getIndex(valueSet);
         for (Coding coding : codeableConcept.getCoding()) {
-            boolean result = validateCode(codeSetMap, coding);
+            boolean result = validateCode(index, coding);
             if (result) {
                 LookupOutcome outcome = lookup(coding);
                 return validateCode(coding, result, outcome);
@@ -268,7 +285,19 @@ public class DefaultTermServiceProvider implements FHIRTermServiceProvider {
                 .build();
     }
 
-    private ValidationOutcome validateCode(Coding coding, boolean result, LookupOutcome outcome) {
+    /**
+     * Build the outcome of validating the given coding
+     *
+     * @param coding
+     *     the coding that was validated, or null
+     * @param result
+     *     the result of the validation
+     * @param outcome
+     *     the outcome of looking up the coding, used to check the display, or null
+     * @return
+     *     the outcome of validation
+     */
+    protected ValidationOutcome validateCode(Coding coding, boolean result, LookupOutcome outcome) {
         return validateCode(null, coding, result, outcome);
     }
 
@@ -300,116 +329,26 @@ public class DefaultTermServiceProvider implements FHIRTermServiceProvider {
                 .build();
     }
 
-    private boolean validateCode(Map<String, Set<String>> codeSetMap, Code code) {
-        String codeString = (code != null) ? code.getValue() : null;
-        if (codeString != null) {
-            for (Set<String> codeSet : codeSetMap.values()) {
-                if (codeSet.contains(codeString) || codeSet.contains(codeString.toLowerCase())) {
-                    return true;
-                }
-            }
-        }
-        return false;
+    private boolean validateCode(ValueSetIndex index, Code code) {
+        return index.contains((code != null) ? code.getValue() : null);
     }
 
-    private boolean validateCode(Map<String, Set<String>> codeSetMap, Coding coding) {
+    private boolean validateCode(ValueSetIndex index, Coding coding) {
         String system = (coding.getSystem() != null) ? coding.getSystem().getValue() : null;
         String version = (coding.getVersion() != null) ? coding.getVersion().getValue() : null;
         String code = (coding.getCode() != null) ? coding.getCode().getValue() : null;
-        return validateCode(codeSetMap, system, version, code);
+        return index.contains(system, version, code);
     }
 
-    /**
-     * Determine whether the provided code is in the codeSet associated with the provided system and version.
-     *
-     * <p>If the system or code is null, return false. If the version is non-null, it is concatenated with the
-     * system to form a key into the codeSetMap. If not found, then the system is concatenated with the
-     * "VERSION_UNKNOWN" constant (in cases where the expanded value set did not have a version available during the
-     * expansion). If only the system is non-null, then the codeSetMap keys are checked for startsWith(system).
-     * 
-     * <p>If the system and version are non-null, then they are concatenated to form a key into the codeSetMap. If
-     * not found, then the system is concatenated with the "VERSION_UNKNOWN" constant (in cases where the expanded
-     * value set did not have a version available during the expansion). If only the system is non-null, then the
-     * codeSetMap keys are checked for startsWith(system). Finally, if both system and version are null, map keys
-     * are ignored and the values of the map are checked directly.
-     *
-     * @param codeSetMap
-     *     the code set map
-     * @param system
-     *     the system of the focal coded element
-     * @param version
-     *     the version of the focal coded element (can be null)
-     * @param code
-     *     the code used in the membership check
-     * @return
-     *     true if a codeSet is found and the provided code is a member of that codeSet, false otherwise
-     */
-    private boolean validateCode(Map<String, Set<String>> codeSetMap, String system, String version, String code) {
-        if (system == null || code == null) {
-            return false;
-        }
-        String url = (version != null) ? system + "|" + version : system;
-        if (!isCaseSensitive(url)) {
-            code = code.toLowerCase();
-        }
-        if (version != null) {
-            Set<String> codeSet = codeSetMap.get(system + "|" + version);
-            if (codeSet != null) {
-                if (codeSet.contains(code)) {
-                    return true;
-                } else {
-                    codeSet = codeSetMap.get(system + "|" + VERSION_UNKNOWN);
-                    if (codeSet != null) {
-                        return codeSet.contains(code);
-                    }
-                }
-            }
-        } else {
-            String prefix = system + "|";
-            for (String key : codeSetMap.keySet()) {
-                if (key.startsWith(prefix)) {
-                    return codeSetMap.get(key).contains(code);
-                }
-            }
-        }
-        return false;
-    }
-
-    private Map<String, Set<String>> getCodeSetMap(ValueSet valueSet) {
-        if (valueSet.getUrl() == null || valueSet.getVersion() == null) {
-            return computeCodeSetMap(valueSet);
-        }
-        String url = valueSet.getUrl().getValue() + "|" + valueSet.getVersion().getValue();
-        return CODE_SET_MAP_CACHE.computeIfAbsent(url, k -> computeCodeSetMap(valueSet));
-    }
-
-    private Map<String, Set<String>> computeCodeSetMap(ValueSet valueSet) {
+    private ValueSetIndex getIndex(ValueSet valueSet) {
         try {
-            ValueSet expanded = expand(valueSet);
-            if (expanded == null || expanded.getExpansion() == null) {
-                return Collections.emptyMap();
-            }
-            Map<String, Set<String>> codeSetMap = new LinkedHashMap<>();
-            Expansion expansion = expanded.getExpansion();
-            for (Contains contains : getContains(expansion)) {
-                String system = (contains.getSystem() != null) ? contains.getSystem().getValue() : null;
-                String version = (contains.getVersion() != null && contains.getVersion().getValue() != null) ? contains.getVersion().getValue() : VERSION_UNKNOWN;
-                String code = (contains.getCode() != null) ? contains.getCode().getValue() : null;
-                if (system != null && code != null) {
-                    String url = !VERSION_UNKNOWN.equals(version) ? system + "|" + version : system;
-                    if (!isCaseSensitive(url)) {
-                        code = code.toLowerCase();
-                    }
-                    codeSetMap.computeIfAbsent(system + "|" + version, k -> new LinkedHashSet<>()).add(code);
-                }
-            }
-            return codeSetMap;
+            return ValueSetSupport.getIndex(valueSet);
         } catch (Exception e) {
             String url = (valueSet.getUrl() != null) ? valueSet.getUrl().getValue() : "<no url>";
             String version = (valueSet.getVersion() != null) ? valueSet.getVersion().getValue() : "<no version>";
             log.log(Level.WARNING, String.format("Unable to expand value set with url: %s and version: %s", url, version), e);
         }
-        return Collections.emptyMap();
+        return ValueSetIndex.EMPTY;
     }
 
     private Uri getSource(ConceptMap conceptMap) {
@@ -0,0 +1,490 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.term.service.provider;
+
+import static com.ibm.fhir.model.type.String.string;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import com.ibm.fhir.model.resource.CodeSystem;
+import com.ibm.fhir.model.resource.CodeSystem.Concept;
+import com.ibm.fhir.model.resource.ValueSet;
+import com.ibm.fhir.model.resource.ValueSet.Compose;
+import com.ibm.fhir.model.resource.ValueSet.Compose.Include;
+import com.ibm.fhir.model.resource.ValueSet.Compose.Include.Filter;
+import com.ibm.fhir.model.type.Boolean;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.CodeableConcept;
+import com.ibm.fhir.model.type.Coding;
+import com.ibm.fhir.model.type.DateTime;
+import com.ibm.fhir.model.type.Decimal;
+import com.ibm.fhir.model.type.Element;
+import com.ibm.fhir.model.type.Integer;
+import com.ibm.fhir.model.type.code.ConceptSubsumptionOutcome;
+import com.ibm.fhir.model.type.code.FilterOperator;
+import com.ibm.fhir.registry.FHIRRegistry;
+import com.ibm.fhir.term.index.CodeSystemIndex;
+import com.ibm.fhir.term.spi.LookupOutcome;
+import com.ibm.fhir.term.spi.LookupParameters;
+import com.ibm.fhir.term.spi.ValidationOutcome;
+import com.ibm.fhir.term.spi.ValidationParameters;
+
+/**
+ * An implementation of the FHIRTermServiceProvider interface which answers lookup, subsumes, closure and
+ * validate-code requests for large code systems (e.g. LOINC or SNOMED CT) from pre-built, memory-mapped
+ * {@link CodeSystemIndex} files instead of CodeSystem resources in the registry.
+ *
+ * <p>Value set membership is evaluated directly against the index (concept lists and filters) when the value set
+ * has not been expanded and only references indexed code systems, so these value sets never need to be expanded.
+ * Everything else, including code systems without an index, is handled by the {@link DefaultTermServiceProvider}.
+ *
+ * <p>When loaded through the ServiceLoader, the index files are taken from the
+ * {@value #PROPERTY_INDEX_PATH} system property: a list of index files or directories (containing *.idx
+ * files) separated by the platform path separator.
+ */
+public class IndexedTermServiceProvider extends DefaultTermServiceProvider {
+    private static final Logger log = Logger.getLogger(IndexedTermServiceProvider.class.getName());
+
+    public static final java.lang.String PROPERTY_INDEX_PATH = "com.ibm.fhir.term.index.path";
+
+    private static final java.lang.String INDEX_FILE_GLOB = "*.idx";
+
+    // regex filter value -> compiled pattern; the filters come from the (finite) set of registered value sets
+    private static final Map<java.lang.String, Pattern> PATTERN_CACHE = new ConcurrentHashMap<>();
+
+    // url|version -> index, plus url -> index for the latest (or only) version
+    private final Map<java.lang.String, CodeSystemIndex> indexes;
+
+    public IndexedTermServiceProvider() {
+        this(loadIndexes(System.getProperty(PROPERTY_INDEX_PATH)));
+    }
+
+    public IndexedTermServiceProvider(Collection<CodeSystemIndex> indexes) {
+        this.indexes = buildIndexMap(indexes);
+    }
+
+    /**
+     * Get the index for the given code system url and version
+     *
+     * @param system
+     *     the code system url
+     * @param version
+     *     the code system version, or null for the latest version
+     * @return
+     *     the index, or null if the code system (version) has not been indexed
+     */
+    public CodeSystemIndex getIndex(java.lang.String system, java.lang.String version) {
+        if (system == null) {
+            return null;
+        }
+        return indexes.get((version != null) ? system + "|" + version : system);
+    }
+
+    @Override
+    public LookupOutcome lookup(Coding coding, LookupParameters parameters) {
+        CodeSystemIndex index = getIndex(coding);
+        if (index == null) {
+            return super.lookup(coding, parameters);
+        }
+        return lookup(index, (coding.getCode() != null) ? coding.getCode().getValue() : null);
+    }
+
+    @Override
+    protected LookupOutcome lookup(CodeSystem codeSystem, Code code) {
+        CodeSystemIndex index = getIndex(
+            (codeSystem.getUrl() != null) ? codeSystem.getUrl().getValue() : null,
+            (codeSystem.getVersion() != null) ? codeSystem.getVersion().getValue() : null);
+        if (index == null) {
+            return super.lookup(codeSystem, code);
+        }
+        return lookup(index, (code != null) ? code.getValue() : null);
+    }
+
+    private LookupOutcome lookup(CodeSystemIndex index, java.lang.String code) {
+        int id = index.find(code);
+        if (id < 0) {
+            return null;
+        }
+        return lookup(
+            (index.getName() != null) ? string(index.getName()) : null,
+            (index.getVersion() != null) ? string(index.getVersion()) : null,
+            index.getConcept(id));
+    }
+
+    @Override
+    public ConceptSubsumptionOutcome subsumes(Coding codingA, Coding codingB) {
+        java.lang.String systemA = (codingA.getSystem() != null) ? codingA.getSystem().getValue() : null;
+        java.lang.String versionA = (codingA.getVersion() != null) ? codingA.getVersion().getValue() : null;
+        java.lang.String systemB = (codingB.getSystem() != null) ? codingB.getSystem().getValue() : null;
+        java.lang.String versionB = (codingB.getVersion() != null) ? codingB.getVersion().getValue() : null;
+
+        if (systemA == null || !systemA.equals(systemB) || codingA.getCode() == null || codingB.getCode() == null) {
+            return super.subsumes(codingA, codingB);
+        }
+        if (versionA != null && versionB != null && !versionA.equals(versionB)) {
+            return null;
+        }
+
+        CodeSystemIndex index = getIndex(systemA, (versionA != null) ? versionA : versionB);
+        if (index == null) {
+            return super.subsumes(codingA, codingB);
+        }
+        if (!index.isHierarchyIsA()) {
+            return null;
+        }
+
+        int idA = index.find(codingA.getCode().getValue());
+        int idB = index.find(codingB.getCode().getValue());
+        if (idA < 0 || idB < 0) {
+            return null;
+        }
+        if (idA == idB) {
+            return ConceptSubsumptionOutcome.EQUIVALENT;
+        }
+        if (index.isA(idB, idA)) {
+            return ConceptSubsumptionOutcome.SUBSUMES;
+        }
+        if (index.isA(idA, idB)) {
+            return ConceptSubsumptionOutcome.SUBSUMED_BY;
+        }
+        return ConceptSubsumptionOutcome.NOT_SUBSUMED;
+    }
+
+    @Override
+    public Set<Concept> closure(Coding coding) {
+        CodeSystemIndex index = getIndex(coding);
+        if (index == null) {
+            return super.closure(coding);
+        }
+        int id = index.find((coding.getCode() != null) ? coding.getCode().getValue() : null);
+        if (id < 0 || !index.isHierarchyIsA()) {
+            return Collections.emptySet();
+        }
+        Set<Concept> result = new LinkedHashSet<>();
+        for (int descendant : index.getDescendantsAndSelf(id)) {
+            result.add(index.getConceptSummary(descendant));
+        }
+        return result;
+    }
+
+    @Override
+    public ValidationOutcome validateCode(ValueSet valueSet, Coding coding, ValidationParameters parameters) {
+        java.lang.Boolean result = contains(valueSet, coding);
+        if (result == null) {
+            return super.validateCode(valueSet, coding, parameters);
+        }
+        LookupOutcome outcome = result ? lookup(coding) : null;
+        return validateCode(coding, result, outcome);
+    }
+
+    @Override
+    public ValidationOutcome validateCode(ValueSet valueSet, CodeableConcept codeableConcept, ValidationParameters parameters) {
+        for (Coding coding : codeableConcept.getCoding()) {
+            ValidationOutcome outcome = validateCode(valueSet, coding, parameters);
+            if (Boolean.TRUE.equals(outcome.getResult())) {
+                return outcome;
+            }
+        }
+        return validateCode(null, false, null);
+    }
+
+    /**
+     * Determine whether the coding is a member of the value set using only the code system indexes
+     *
+     * @return
+     *     the result, or null if the value set cannot be evaluated against the indexes
+     */
+    private java.lang.Boolean contains(ValueSet valueSet, Coding coding) {
+        Compose compose = valueSet.getCompose();
+        if (valueSet.getExpansion() != null || compose == null || coding.getSystem() == null || coding.getCode() == null) {
+            return null;
+        }
+
+        java.lang.String system = coding.getSystem().getValue();
+        java.lang.String version = (coding.getVersion() != null) ? coding.getVersion().getValue() : null;
+        java.lang.String code = coding.getCode().getValue();
+
+        boolean included = false;
+        for (Include include : compose.getInclude()) {
+            java.lang.Boolean matches = matches(include, system, version, code);
+            if (matches == null) {
+                return null;
+            }
+            if (matches) {
+                included = true;
+                break;
+            }
+        }
+        if (!included) {
+            return false;
+        }
+
+        for (Include exclude : compose.getExclude()) {
+            java.lang.Boolean matches = matches(exclude, system, version, code);
+            if (matches == null) {
+                return null;
+            }
+            if (matches) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private java.lang.Boolean matches(Include include, java.lang.String system, java.lang.String version, java.lang.String code) {
+        if (!include.getValueSet().isEmpty() || include.getSystem() == null) {
+            return null;
+        }
+        if (!system.equals(include.getSystem().getValue())) {
+            return false;
+        }
+
+        java.lang.String includeVersion = (include.getVersion() != null) ? include.getVersion().getValue() : null;
+        if (includeVersion != null && version != null && !includeVersion.equals(version)) {
+            return false;
+        }
+
+        CodeSystemIndex index = getIndex(system, (includeVersion != null) ? includeVersion : version);
+        if (index == null) {
+            return null;
+        }
+
+        if (!include.getConcept().isEmpty()) {
+            for (Include.Concept concept : include.getConcept()) {
+                if (concept.getCode() != null && codeEquals(index, concept.getCode().getValue(), code)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        int id = index.find(code);
+        if (id < 0) {
+            return false;
+        }
+        for (Filter filter : include.getFilter()) {
+            java.lang.Boolean accept = accept(index, filter, id);
+            if (accept == null) {
+                return null;
+            }
+            if (!accept) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Evaluate a value set filter against the concept with the given id, with the same semantics as the
+     * filters used by ValueSetSupport when expanding a value set
+     *
+     * @return
+     *     the result, or null if the filter is not supported
+     */
+    private java.lang.Boolean accept(CodeSystemIndex index, Filter filter, int id) {
+        java.lang.String property = filter.getProperty().getValue();
+        java.lang.String value = filter.getValue().getValue();
+        FilterOperator.ValueSet op = FilterOperator.ValueSet.from(filter.getOp().getValue());
+        switch (op) {
+        case IS_A:
+        case IS_NOT_A:
+        case DESCENDENT_OF:
+        case GENERALIZES: {
+            if (!"concept".equals(property) || !index.isHierarchyIsA()) {
+                return null;
+            }
+            int target = index.find(value);
+            if (target < 0) {
+                return null;
+            }
+            switch (op) {
+            case IS_A:
+                return index.isA(id, target);
+            case IS_NOT_A:
+                return !index.isA(id, target);
+            case DESCENDENT_OF:
+                return id != target && index.isA(id, target);
+            default:
+                return index.isA(target, id);
+            }
+        }
+        case EQUALS:
+            if ("parent".equals(property) || "child".equals(property)) {
+                int target = index.find(value);
+                if (target < 0) {
+                    return false;
+                }
+                return "parent".equals(property) ? index.hasParent(id, target) : index.hasParent(target, id);
+            }
+            if (!index.hasProperty(property)) {
+                return null;
+            }
+            for (Element element : index.getPropertyValues(id, property)) {
+                if (element.is(Coding.class)) {
+                    // the filter value is a code, optionally qualified by its system
+                    if (codingEquals(element.as(Coding.class), value)) {
+                        return true;
+                    }
+                } else if (element.equals(convert(value, element.getClass()))) {
+                    return true;
+                }
+            }
+            return false;
+        case EXISTS:
+            if (!index.hasProperty(property) || !("true".equals(value) || "false".equals(value))) {
+                return null;
+            }
+            return index.hasPropertyValue(id, property) == "true".equals(value);
+        case IN:
+        case NOT_IN: {
+            if (!"concept".equals(property) && !index.hasProperty(property)) {
+                return null;
+            }
+            boolean in = false;
+            List<java.lang.String> values = Arrays.asList(value.split(","));
+            if ("concept".equals(property)) {
+                in = values.contains(index.getCode(id));
+            } else {
+                List<Element> elements = index.getPropertyValues(id, property);
+                if (!elements.isEmpty() && elements.get(0).is(Code.class)) {
+                    in = values.contains(elements.get(0).as(Code.class).getValue());
+                }
+            }
+            return (op == FilterOperator.ValueSet.IN) ? in : !in;
+        }
+        case REGEX:
+            if (!index.hasProperty(property)) {
+                return null;
+            }
+            List<Element> elements = index.getPropertyValues(id, property);
+            if (!elements.isEmpty() && elements.get(0).is(com.ibm.fhir.model.type.String.class)) {
+                return PATTERN_CACHE.computeIfAbsent(value, Pattern::compile).matcher(elements.get(0).as(com.ibm.fhir.model.type.String.class).getValue()).matches();
+            }
+            return false;
+        default:
+            return null;
+        }
+    }
+
+    private CodeSystemIndex getIndex(Coding coding) {
+        return getIndex(
+            (coding.getSystem() != null) ? coding.getSystem().getValue() : null,
+            (coding.getVersion() != null) ? coding.getVersion().getValue() : null);
+    }
+
+    private static boolean codingEquals(Coding coding, java.lang.String value) {
+        java.lang.String code = (coding.getCode() != null) ? coding.getCode().getValue() : null;
+        if (value.equals(code)) {
+            return true;
+        }
+        return coding.getSystem() != null && value.equals(coding.getSystem().getValue() + "|" + code);
+    }
+
+    private static boolean codeEquals(CodeSystemIndex index, java.lang.String a, java.lang.String b) {
+        return index.isCaseSensitive() ? a.equals(b) : a.equalsIgnoreCase(b);
+    }
+
+    private static Element convert(java.lang.String value, Class<?> targetType) {
+        if (Code.class.equals(targetType)) {
+            return Code.of(value);
+        }
+        if (Integer.class.equals(targetType)) {
+            return Integer.of(value);
+        }
+        if (Boolean.class.equals(targetType)) {
+            return Boolean.of(value);
+        }
+        if (DateTime.class.equals(targetType)) {
+            return DateTime.of(value);
+        }
+        if (Decimal.class.equals(targetType)) {
+            return Decimal.of(value);
+        }
+        return string(value);
+    }
+
+    private static Map<java.lang.String, CodeSystemIndex> buildIndexMap(Collection<CodeSystemIndex> indexes) {
+        Map<java.lang.String, CodeSystemIndex> result = new HashMap<>();
+        Map<java.lang.String, List<CodeSystemIndex>> byUrl = new HashMap<>();
+        for (CodeSystemIndex index : indexes) {
+            if (index.getVersion() != null) {
+                result.put(index.getUrl() + "|" + index.getVersion(), index);
+            }
+            byUrl.computeIfAbsent(index.getUrl(), k -> new ArrayList<>()).add(index);
+        }
+        for (Map.Entry<java.lang.String, List<CodeSystemIndex>> entry : byUrl.entrySet()) {
+            List<CodeSystemIndex> versions = entry.getValue();
+            CodeSystemIndex latest = versions.get(versions.size() - 1);
+            if (versions.size() > 1) {
+                // prefer the version the registry considers to be the latest
+                java.lang.String latestVersion = FHIRRegistry.getInstance().getLatestVersion(entry.getKey(), CodeSystem.class);
+                for (CodeSystemIndex index : versions) {
+                    if (latestVersion != null && latestVersion.equals(index.getVersion())) {
+                        latest = index;
+                    }
+                }
+            }
+            result.put(entry.getKey(), latest);
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    private static List<CodeSystemIndex> loadIndexes(java.lang.String indexPath) {
+        List<CodeSystemIndex> result = new ArrayList<>();
+        if (indexPath == null || indexPath.trim().isEmpty()) {
+            log.warning("No code system indexes configured; set the " + PROPERTY_INDEX_PATH + " system property");
+            return result;
+        }
+        for (java.lang.String element : indexPath.split(File.pathSeparator)) {
+            if (element.trim().isEmpty()) {
+                continue;
+            }
+            Path path = Paths.get(element.trim());
+            if (Files.isDirectory(path)) {
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, INDEX_FILE_GLOB)) {
+                    for (Path file : stream) {
+                        open(file, result);
+                    }
+                } catch (IOException e) {
+                    log.log(Level.WARNING, "Unable to list code system indexes in " + path, e);
+                }
+            } else {
+                open(path, result);
+            }
+        }
+        return result;
+    }
+
+    private static void open(Path path, List<CodeSystemIndex> result) {
+        try {
+            CodeSystemIndex index = CodeSystemIndex.open(path);
+            log.info(java.lang.String.format("Loaded code system index for %s with %d concepts from %s", index, index.getConceptCount(), path));
+            result.add(index);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Unable to open code system index " + path, e);
+        }
+    }
+}
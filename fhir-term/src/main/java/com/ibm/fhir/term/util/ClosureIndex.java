@@ -0,0 +1,246 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.term.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.ibm.fhir.model.resource.CodeSystem;
+import com.ibm.fhir.model.resource.CodeSystem.Concept;
+import com.ibm.fhir.model.type.Code;
+
+/**
+ * A nested-set (interval) labeling of the concept hierarchy of a code system.
+ *
+ * <p>Concepts are numbered in depth-first (pre-order) order, so the descendants of a concept are exactly the
+ * concepts numbered from its own position up to (but not including) the end of its subtree. Ancestor and
+ * descendant checks are two integer comparisons, and the descendants of a concept are a range of the
+ * pre-order array rather than a walk of the tree.
+ *
+ * <p>Concepts are located by code (in O(1)) or by identity, which means the concept instances passed in must be
+ * the ones from the indexed code system. A code which appears more than once in the hierarchy has one interval
+ * for each occurrence.
+ */
+public final class ClosureIndex {
+    private static final int[] NONE = new int[0];
+
+    private final boolean caseSensitive;
+
+    // concepts in pre-order; end[i] is the (exclusive) end of the subtree rooted at concepts[i]
+    private final Concept[] concepts;
+    private final int[] end;
+
+    // positions by code (normalized for case) and by concept instance
+    private final Map<String, int[]> positionsByCode;
+    private final Map<Concept, int[]> positionsByConcept;
+
+    private ClosureIndex(boolean caseSensitive, Concept[] concepts, int[] end, Map<String, int[]> positionsByCode, Map<Concept, int[]> positionsByConcept) {
+        this.caseSensitive = caseSensitive;
+        this.concepts = concepts;
+        this.end = end;
+        this.positionsByCode = positionsByCode;
+        this.positionsByConcept = positionsByConcept;
+    }
+
+    /**
+     * Build the closure index for the given code system
+     *
+     * @param codeSystem
+     *     the code system
+     * @return
+     *     the closure index
+     */
+    public static ClosureIndex of(CodeSystem codeSystem) {
+        boolean caseSensitive = CodeSystemSupport.isCaseSensitive(codeSystem);
+        List<Concept> concepts = new ArrayList<>();
+        List<int[]> ranges = new ArrayList<>();
+        for (Concept concept : codeSystem.getConcept()) {
+            label(concept, concepts, ranges);
+        }
+
+        int[] end = new int[concepts.size()];
+        Map<String, int[]> positionsByCode = new HashMap<>(concepts.size() * 2);
+        Map<Concept, int[]> positionsByConcept = new IdentityHashMap<>(concepts.size());
+        for (int i = 0; i < end.length; i++) {
+            end[i] = ranges.get(i)[0];
+            Concept concept = concepts.get(i);
+            positionsByConcept.merge(concept, new int[] { i }, ClosureIndex::append);
+            if (concept.getCode() != null && concept.getCode().getValue() != null) {
+                positionsByCode.merge(key(caseSensitive, concept.getCode().getValue()), new int[] { i }, ClosureIndex::append);
+            }
+        }
+
+        return new ClosureIndex(caseSensitive, concepts.toArray(new Concept[0]), end, positionsByCode, positionsByConcept);
+    }
+
+    /**
+     * Pre-order traversal; the (mutable) range for each concept is filled in with its subtree end on the way out
+     */
+    private static void label(Concept concept, List<Concept> concepts, List<int[]> ranges) {
+        int[] range = new int[1];
+        concepts.add(concept);
+        ranges.add(range);
+        for (Concept child : concept.getConcept()) {
+            label(child, concepts, ranges);
+        }
+        range[0] = concepts.size();
+    }
+
+    private static int[] append(int[] a, int[] b) {
+        int[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    private static String key(boolean caseSensitive, String code) {
+        return caseSensitive ? code : code.toLowerCase();
+    }
+
+    /**
+     * @return
+     *     the number of concepts (occurrences) in the hierarchy
+     */
+    public int size() {
+        return concepts.length;
+    }
+
+    /**
+     * Find the first concept (in pre-order) with the given code
+     *
+     * @param code
+     *     the code
+     * @return
+     *     the concept, or null if the code system has no such concept
+     */
+    public Concept findConcept(Code code) {
+        int[] positions = positions(code);
+        return (positions.length > 0) ? concepts[positions[0]] : null;
+    }
+
+    /**
+     * Find the first concept (in pre-order) with the given code in the tree rooted by the given concept
+     *
+     * @param root
+     *     the root of the tree to search
+     * @param code
+     *     the code
+     * @return
+     *     the concept, or null if the tree has no such concept
+     */
+    public Concept findConcept(Concept root, Code code) {
+        for (int start : positions(root)) {
+            for (int position : positions(code)) {
+                if (start <= position && position < end[start]) {
+                    return concepts[position];
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Indicates whether the given concept is part of the indexed hierarchy
+     *
+     * @param concept
+     *     the concept
+     * @return
+     *     true if the concept instance is indexed, false otherwise
+     */
+    public boolean contains(Concept concept) {
+        return positionsByConcept.containsKey(concept);
+    }
+
+    /**
+     * Determine whether concept {@code a} is the same as, or an ancestor of, concept {@code b}
+     *
+     * @param a
+     *     the candidate ancestor
+     * @param b
+     *     the candidate descendant
+     * @return
+     *     true if {@code a} subsumes {@code b}, false otherwise
+     */
+    public boolean subsumes(Concept a, Concept b) {
+        return subsumes(positions(a), positions(b));
+    }
+
+    /**
+     * Determine whether the concept with code {@code a} is the same as, or an ancestor of, the concept with code
+     * {@code b}
+     *
+     * @param a
+     *     the code of the candidate ancestor
+     * @param b
+     *     the code of the candidate descendant
+     * @return
+     *     true if {@code a} subsumes {@code b}, false otherwise
+     */
+    public boolean subsumes(Code a, Code b) {
+        return subsumes(positions(a), positions(b));
+    }
+
+    private boolean subsumes(int[] ancestors, int[] descendants) {
+        for (int a : ancestors) {
+            for (int b : descendants) {
+                if (a <= b && b < end[a]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the concept and all of its descendants in pre-order
+     *
+     * @param concept
+     *     the concept
+     * @return
+     *     the concept and its descendants
+     */
+    public Set<Concept> getDescendantsAndSelf(Concept concept) {
+        int[] positions = positions(concept);
+        if (positions.length == 0) {
+            return Collections.emptySet();
+        }
+        Set<Concept> result = new LinkedHashSet<>();
+        for (int start : positions) {
+            result.addAll(Arrays.asList(concepts).subList(start, end[start]));
+        }
+        return result;
+    }
+
+    /**
+     * Get all concepts in the hierarchy in pre-order
+     *
+     * @return
+     *     an unmodifiable list of the concepts
+     */
+    public List<Concept> getConcepts() {
+        return Collections.unmodifiableList(Arrays.asList(concepts));
+    }
+
+    private int[] positions(Concept concept) {
+        int[] positions = (concept != null) ? positionsByConcept.get(concept) : null;
+        return (positions != null) ? positions : NONE;
+    }
+
+    private int[] positions(Code code) {
+        if (code == null || code.getValue() == null) {
+            return NONE;
+        }
+        int[] positions = positionsByCode.get(key(caseSensitive, code.getValue()));
+        return (positions != null) ? positions : NONE;
+    }
+}
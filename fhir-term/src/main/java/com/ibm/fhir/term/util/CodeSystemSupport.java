@@ -24,6 +24,7 @@ import com.ibm.fhir.registry.FHIRRegistry;
  */
 public final class CodeSystemSupport {
     private static final Map<String, Boolean> CASE_SENSITIVITY_CACHE = createLRUCache(2048);
+    private static final Map<String, ClosureIndexEntry> CLOSURE_INDEX_CACHE = createLRUCache(128);
 
     private CodeSystemSupport() { }
 
@@ -38,14 +39,7 @@ public final class CodeSystemSupport {
      *     the code system concept that matches the specified code, or null if no such concept exists
      */
     public static Concept findConcept(CodeSystem codeSystem, Code code) {
-        Concept result = null;
-        for (Concept concept : codeSystem.getConcept()) {
-            result = findConcept(codeSystem, concept, code);
-            if (result != null) {
-                break;
-            }
-        }
-        return result;
+        return getClosureIndex(codeSystem).findConcept(code);
     }
 
     /**
@@ -61,12 +55,20 @@ public final class CodeSystemSupport {
      *     the code system concept that matches the specified code, or null if not such concept exists
      */
     public static Concept findConcept(CodeSystem codeSystem, Concept concept, Code code) {
+        ClosureIndex index = getClosureIndex(codeSystem);
+        if (index.contains(concept)) {
+            return index.findConcept(concept, code);
+        }
+        return searchConcept(codeSystem, concept, code);
+    }
+
+    private static Concept searchConcept(CodeSystem codeSystem, Concept concept, Code code) {
         if (concept.getCode().equals(code) || (!isCaseSensitive(codeSystem)) && concept.getCode().getValue().equalsIgnoreCase(code.getValue())) {
             return concept;
         }
         Concept result = null;
         for (Concept child : concept.getConcept()) {
-            result = findConcept(codeSystem, child, code);
+            result = searchConcept(codeSystem, child, code);
             if (result != null) {
                 break;
             }
@@ -101,6 +103,31 @@ public final class CodeSystemSupport {
         return false;
     }
 
+    /**
+     * Get the closure index for the concept hierarchy of the given code system. Indexes are built the first time
+     * a code system is used and cached by url and version.
+     *
+     * @param codeSystem
+     *     the code system
+     * @return
+     *     the closure index
+     */
+    public static ClosureIndex getClosureIndex(CodeSystem codeSystem) {
+        if (codeSystem.getUrl() == null || codeSystem.getUrl().getValue() == null) {
+            return ClosureIndex.of(codeSystem);
+        }
+        String key = codeSystem.getUrl().getValue();
+        if (codeSystem.getVersion() != null && codeSystem.getVersion().getValue() != null) {
+            key = key + "|" + codeSystem.getVersion().getValue();
+        }
+        ClosureIndexEntry entry = CLOSURE_INDEX_CACHE.get(key);
+        if (entry == null || !entry.matches(codeSystem)) {
+            entry = new ClosureIndexEntry(codeSystem, ClosureIndex.of(codeSystem));
+            CLOSURE_INDEX_CACHE.put(key, entry);
+        }
+        return entry.index;
+    }
+
     /**
      * Get the code system associated with the given url from the FHIR registry.
      *
@@ -233,4 +260,21 @@ public final class CodeSystemSupport {
     public static boolean hasConceptProperty(Concept concept, Code code) {
         return getConceptProperty(concept, code) != null;
     }
-}
\ No newline at end of file
+
+    private static class ClosureIndexEntry {
+        private final CodeSystem codeSystem;
+        private final ClosureIndex index;
+
+        public ClosureIndexEntry(CodeSystem codeSystem, ClosureIndex index) {
+            this.codeSystem = codeSystem;
+            this.index = index;
+        }
+
+        /**
+         * The index is only valid for the code system instance it was built from, since concepts are located by identity
+         */
+        public boolean matches(CodeSystem codeSystem) {
+            return this.codeSystem == codeSystem;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.term.util;
+
+import java.util.Collection;
+
+/**
+ * An immutable set of strings backed by a single open-addressing hash table.
+ *
+ * <p>Membership checks are O(1) and, unlike a HashSet, there is no per-entry node
+ * object, so large code sets take a fraction of the memory.
+ */
+public final class CompactStringSet {
+    private static final CompactStringSet EMPTY = new CompactStringSet(new String[1], 0);
+
+    private final String[] table;
+    private final int mask;
+    private final int size;
+
+    private CompactStringSet(String[] table, int size) {
+        this.table = table;
+        this.mask = table.length - 1;
+        this.size = size;
+    }
+
+    /**
+     * Create a set containing the given (non-null) values
+     *
+     * @param values
+     *     the values
+     * @return
+     *     the set
+     */
+    public static CompactStringSet of(Collection<String> values) {
+        if (values.isEmpty()) {
+            return EMPTY;
+        }
+
+        // keep the load factor at or below 0.5 so probe sequences stay short
+        int capacity = Integer.highestOneBit(values.size() * 2 - 1) << 1;
+        String[] table = new String[capacity];
+        int mask = capacity - 1;
+        int size = 0;
+        for (String value : values) {
+            int i = spread(value.hashCode()) & mask;
+            while (table[i] != null && !table[i].equals(value)) {
+                i = (i + 1) & mask;
+            }
+            if (table[i] == null) {
+                table[i] = value;
+                size++;
+            }
+        }
+        return new CompactStringSet(table, size);
+    }
+
+    /**
+     * Determine whether the set contains the given value
+     *
+     * @param value
+     *     the value
+     * @return
+     *     true if the value is a member of this set, false otherwise
+     */
+    public boolean contains(String value) {
+        if (value == null) {
+            return false;
+        }
+        int i = spread(value.hashCode()) & mask;
+        String entry;
+        while ((entry = table[i]) != null) {
+            if (entry.equals(value)) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * @return
+     *     the number of values in this set
+     */
+    public int size() {
+        return size;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.term.util;
+
+import static com.ibm.fhir.term.util.CodeSystemSupport.isCaseSensitive;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.ibm.fhir.model.resource.ValueSet.Expansion;
+
+/**
+ * An immutable code membership index for an expanded value set.
+ *
+ * <p>Codes are indexed by system|version, by system alone, and across all systems, so
+ * membership checks are O(1) regardless of how the code is qualified. Codes from code
+ * systems which are not case sensitive are stored (and looked up) in lower case.
+ */
+public final class ValueSetIndex {
+    public static final String VERSION_UNKNOWN = "<version unknown>";
+
+    public static final ValueSetIndex EMPTY = new ValueSetIndex(Collections.emptyMap(), Collections.emptyMap(), CompactStringSet.of(Collections.emptySet()));
+
+    private final Map<String, CompactStringSet> systemVersionCodes;
+    private final Map<String, CompactStringSet> systemCodes;
+    private final CompactStringSet codes;
+
+    private ValueSetIndex(Map<String, CompactStringSet> systemVersionCodes, Map<String, CompactStringSet> systemCodes, CompactStringSet codes) {
+        this.systemVersionCodes = systemVersionCodes;
+        this.systemCodes = systemCodes;
+        this.codes = codes;
+    }
+
+    /**
+     * Build an index from the (flattened) contains of a value set expansion
+     *
+     * @param contains
+     *     the contains of the expansion
+     * @return
+     *     the index
+     */
+    public static ValueSetIndex of(Set<Expansion.Contains> contains) {
+        Map<String, Set<String>> systemVersionCodeSets = new HashMap<>();
+        Map<String, Set<String>> systemCodeSets = new HashMap<>();
+        Set<String> allCodes = new LinkedHashSet<>();
+        for (Expansion.Contains c : contains) {
+            String system = (c.getSystem() != null) ? c.getSystem().getValue() : null;
+            String version = (c.getVersion() != null && c.getVersion().getValue() != null) ? c.getVersion().getValue() : VERSION_UNKNOWN;
+            String code = (c.getCode() != null) ? c.getCode().getValue() : null;
+            if (system != null && code != null) {
+                String url = !VERSION_UNKNOWN.equals(version) ? system + "|" + version : system;
+                if (!isCaseSensitive(url)) {
+                    code = code.toLowerCase();
+                }
+                systemVersionCodeSets.computeIfAbsent(system + "|" + version, k -> new LinkedHashSet<>()).add(code);
+                systemCodeSets.computeIfAbsent(system, k -> new LinkedHashSet<>()).add(code);
+                allCodes.add(code);
+            }
+        }
+        if (allCodes.isEmpty()) {
+            return EMPTY;
+        }
+        return new ValueSetIndex(compact(systemVersionCodeSets), compact(systemCodeSets), CompactStringSet.of(allCodes));
+    }
+
+    private static Map<String, CompactStringSet> compact(Map<String, Set<String>> codeSets) {
+        Map<String, CompactStringSet> result = new HashMap<>(codeSets.size() * 2);
+        for (Map.Entry<String, Set<String>> entry : codeSets.entrySet()) {
+            result.put(entry.getKey(), CompactStringSet.of(entry.getValue()));
+        }
+        return result;
+    }
+
+    /**
+     * @return
+     *     true if the index contains no codes
+     */
+    public boolean isEmpty() {
+        return codes.size() == 0;
+    }
+
+    /**
+     * Determine whether the code is a member of the value set, ignoring the code system
+     *
+     * @param code
+     *     the code
+     * @return
+     *     true if the code (or its lower case form) is in the value set, false otherwise
+     */
+    public boolean contains(String code) {
+        return code != null && (codes.contains(code) || codes.contains(code.toLowerCase()));
+    }
+
+    /**
+     * Determine whether the code from the given system and version is a member of the value set.
+     *
+     * <p>If the system or code is null, return false. If the version is non-null, it is concatenated with the
+     * system to find the codes for that version of the code system. If not found there, the codes for that
+     * system which had no version during the expansion are checked. If the version is null, the codes for
+     * all versions of the system are checked.
+     *
+     * @param system
+     *     the system of the focal coded element
+     * @param version
+     *     the version of the focal coded element (can be null)
+     * @param code
+     *     the code used in the membership check
+     * @return
+     *     true if the code is a member of the value set, false otherwise
+     */
+    public boolean contains(String system, String version, String code) {
+        if (system == null || code == null) {
+            return false;
+        }
+        String url = (version != null) ? system + "|" + version : system;
+        if (!isCaseSensitive(url)) {
+            code = code.toLowerCase();
+        }
+        if (version != null) {
+            CompactStringSet codeSet = systemVersionCodes.get(url);
+            if (codeSet != null) {
+                if (codeSet.contains(code)) {
+                    return true;
+                }
+                codeSet = systemVersionCodes.get(system + "|" + VERSION_UNKNOWN);
+                return codeSet != null && codeSet.contains(code);
+            }
+            return false;
+        }
+        CompactStringSet codeSet = systemCodes.get(system);
+        return codeSet != null && codeSet.contains(code);
+    }
+}
@@ -6,8 +6,10 @@
 
 package com.ibm.fhir.term.util;
 
+import static com.ibm.fhir.core.util.LRUCache.createLRUCache;
 import static com.ibm.fhir.model.type.String.string;
 import static com.ibm.fhir.term.util.CodeSystemSupport.findConcept;
+import static com.ibm.fhir.term.util.CodeSystemSupport.getClosureIndex;
 import static com.ibm.fhir.term.util.CodeSystemSupport.getCodeSystem;
 import static com.ibm.fhir.term.util.CodeSystemSupport.getConceptPropertyValue;
 import static com.ibm.fhir.term.util.CodeSystemSupport.getConcepts;
@@ -20,6 +22,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.logging.Level;
@@ -56,6 +59,8 @@ import com.ibm.fhir.registry.FHIRRegistry;
 public final class ValueSetSupport {
     private static final Logger log = Logger.getLogger(ValueSetSupport.class.getName());
 
+    private static final Map<java.lang.String, IndexEntry> INDEX_CACHE = createLRUCache(1024);
+
     private ValueSetSupport() { }
 
     /**
@@ -80,6 +85,51 @@ public final class ValueSetSupport {
         return valueSet;
     }
 
+    /**
+     * Get a code membership index for the given value set. The index is built from the expansion
+     * of the value set (without building an Expansion element) and memoized by canonical url plus
+     * content hash, so value sets with and without a version are only expanded once.
+     *
+     * @param valueSet
+     *     the value set
+     * @return
+     *     the membership index, which is empty if the value set is not expanded and unable to be expanded
+     */
+    public static ValueSetIndex getIndex(ValueSet valueSet) {
+        java.lang.String key = getIndexKey(valueSet);
+        if (key == null) {
+            return computeIndex(valueSet);
+        }
+        IndexEntry entry = INDEX_CACHE.get(key);
+        if (entry == null || !entry.matches(valueSet)) {
+            // computed outside the cache lock because expansion can be expensive
+            entry = new IndexEntry(valueSet, computeIndex(valueSet));
+            INDEX_CACHE.put(key, entry);
+        }
+        return entry.index;
+    }
+
+    private static java.lang.String getIndexKey(ValueSet valueSet) {
+        if (valueSet.getUrl() == null || valueSet.getUrl().getValue() == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(valueSet.getUrl().getValue());
+        if (valueSet.getVersion() != null && valueSet.getVersion().getValue() != null) {
+            sb.append("|").append(valueSet.getVersion().getValue());
+        }
+        return sb.append("#").append(valueSet.hashCode()).toString();
+    }
+
+    private static ValueSetIndex computeIndex(ValueSet valueSet) {
+        if (isExpanded(valueSet)) {
+            return ValueSetIndex.of(getContains(valueSet.getExpansion()));
+        }
+        if (isExpandable(valueSet)) {
+            return ValueSetIndex.of(unwrap(expand(valueSet.getCompose())));
+        }
+        return ValueSetIndex.EMPTY;
+    }
+
     public static boolean isExpanded(ValueSet valueSet) {
         return valueSet != null && valueSet.getExpansion() != null;
     }
@@ -177,6 +227,21 @@ public final class ValueSetSupport {
         return FHIRRegistry.getInstance().getResource(url, ValueSet.class);
     }
 
+    /**
+     * Hierarchy filters narrow the concepts to a range of the closure index, so only that range needs to be
+     * scanned; otherwise every concept in the code system is a candidate
+     */
+    private static Set<Concept> getCandidates(CodeSystem codeSystem, List<ConceptFilter> conceptFilters) {
+        Set<Concept> candidates = null;
+        for (ConceptFilter conceptFilter : conceptFilters) {
+            Set<Concept> set = conceptFilter.candidates();
+            if (set != null && (candidates == null || set.size() < candidates.size())) {
+                candidates = set;
+            }
+        }
+        return (candidates != null) ? candidates : getConcepts(codeSystem);
+    }
+
     private static boolean accept(List<ConceptFilter> conceptFilters, Concept concept) {
         for (ConceptFilter conceptFilter : conceptFilters) {
             if (!conceptFilter.accept(concept)) {
@@ -276,7 +341,7 @@ public final class ValueSetSupport {
         if ("concept".equals(filter.getProperty().getValue()) && CodeSystemHierarchyMeaning.IS_A.equals(codeSystem.getHierarchyMeaning())) {
             Concept concept = findConcept(codeSystem, code(filter.getValue()));
             if (concept != null) {
-                return new DescendentOfFilter(concept);
+                return new DescendentOfFilter(getClosureIndex(codeSystem), concept);
             }
         }
         return null;
@@ -305,7 +370,7 @@ public final class ValueSetSupport {
         if ("concept".equals(filter.getProperty().getValue()) && CodeSystemHierarchyMeaning.IS_A.equals(codeSystem.getHierarchyMeaning())) {
             Concept concept = findConcept(codeSystem, code(filter.getValue()));
             if (concept != null) {
-                return new GeneralizesFilter(concept);
+                return new GeneralizesFilter(getClosureIndex(codeSystem), concept);
             }
         }
         return null;
@@ -325,7 +390,7 @@ public final class ValueSetSupport {
         if ("concept".equals(filter.getProperty().getValue()) && CodeSystemHierarchyMeaning.IS_A.equals(codeSystem.getHierarchyMeaning())) {
             Concept concept = findConcept(codeSystem, code(filter.getValue()));
             if (concept != null) {
-                return new IsAFilter(concept);
+                return new IsAFilter(getClosureIndex(codeSystem), concept);
             }
         }
         return null;
@@ -335,7 +400,7 @@ public final class ValueSetSupport {
         if ("concept".equals(filter.getProperty().getValue()) && CodeSystemHierarchyMeaning.IS_A.equals(codeSystem.getHierarchyMeaning())) {
             Concept concept = findConcept(codeSystem, code(filter.getValue()));
             if (concept != null) {
-                return new IsNotAFilter(concept);
+                return new IsNotAFilter(getClosureIndex(codeSystem), concept);
             }
         }
         return null;
@@ -408,7 +473,7 @@ public final class ValueSetSupport {
                 if (hasResource(url, CodeSystem.class)) {
                     CodeSystem codeSystem = getCodeSystem(url);
                     List<ConceptFilter> conceptFilters = buildConceptFilters(codeSystem, includeOrExclude.getFilter());
-                    for (Concept concept : getConcepts(codeSystem)) {
+                    for (Concept concept : getCandidates(codeSystem, conceptFilters)) {
                         if (accept(conceptFilters, concept)) {
                             Contains contains = buildContains(system, version, concept);
                             if (contains != null) {
@@ -464,20 +529,33 @@ public final class ValueSetSupport {
 
     private interface ConceptFilter {
         boolean accept(Concept concept);
+
+        /**
+         * @return
+         *     a superset of the concepts accepted by this filter, or null if any concept might be accepted
+         */
+        default Set<Concept> candidates() {
+            return null;
+        }
     }
 
     private static class DescendentOfFilter implements ConceptFilter {
-        private final Set<Concept> descendants;
+        private final ClosureIndex index;
+        private final Concept concept;
 
-        public DescendentOfFilter(Concept concept) {
-            Set<Concept> descendants = getConcepts(concept);
-            descendants.remove(concept);
-            this.descendants = descendants;
+        public DescendentOfFilter(ClosureIndex index, Concept concept) {
+            this.index = index;
+            this.concept = concept;
         }
 
         @Override
         public boolean accept(Concept concept) {
-            return descendants.contains(concept);
+            return this.concept != concept && index.subsumes(this.concept, concept);
+        }
+
+        @Override
+        public Set<Concept> candidates() {
+            return index.getDescendantsAndSelf(concept);
         }
     }
 
@@ -536,15 +614,17 @@ public final class ValueSetSupport {
     }
 
     private static class GeneralizesFilter implements ConceptFilter {
+        private final ClosureIndex index;
         private final Concept concept;
 
-        public GeneralizesFilter(Concept concept) {
+        public GeneralizesFilter(ClosureIndex index, Concept concept) {
+            this.index = index;
             this.concept = concept;
         }
 
         @Override
         public boolean accept(Concept concept) {
-            return getConcepts(concept).contains(this.concept);
+            return index.subsumes(concept, this.concept);
         }
     }
 
@@ -566,27 +646,39 @@ public final class ValueSetSupport {
     }
 
     private static class IsAFilter implements ConceptFilter {
-        protected final Set<Concept> descendantsAndSelf;
+        protected final ClosureIndex index;
+        protected final Concept concept;
 
-        public IsAFilter(Concept concept) {
-            descendantsAndSelf = getConcepts(concept);
+        public IsAFilter(ClosureIndex index, Concept concept) {
+            this.index = index;
+            this.concept = concept;
         }
 
         @Override
         public boolean accept(Concept concept) {
-            return descendantsAndSelf.contains(concept);
+            return index.subsumes(this.concept, concept);
+        }
+
+        @Override
+        public Set<Concept> candidates() {
+            return index.getDescendantsAndSelf(concept);
         }
     }
 
     private static class IsNotAFilter extends IsAFilter {
-        public IsNotAFilter(Concept concept) {
-            super(concept);
+        public IsNotAFilter(ClosureIndex index, Concept concept) {
+            super(index, concept);
         }
 
         @Override
         public boolean accept(Concept concept) {
             return !super.accept(concept);
         }
+
+        @Override
+        public Set<Concept> candidates() {
+            return null;
+        }
     }
 
     private static class NotInFilter extends InFilter {
@@ -641,6 +733,23 @@ public final class ValueSetSupport {
             .collect(Collectors.toCollection(LinkedHashSet::new));
     }
 
+    private static class IndexEntry {
+        private final ValueSet valueSet;
+        private final ValueSetIndex index;
+
+        public IndexEntry(ValueSet valueSet, ValueSetIndex index) {
+            this.valueSet = valueSet;
+            this.index = index;
+        }
+
+        /**
+         * Guard against hash collisions; almost always the same instance from the registry
+         */
+        public boolean matches(ValueSet valueSet) {
+            return this.valueSet == valueSet || this.valueSet.equals(valueSet);
+        }
+    }
+
     private static class Contains {
         private final Expansion.Contains contains;
         private final int hashCode;
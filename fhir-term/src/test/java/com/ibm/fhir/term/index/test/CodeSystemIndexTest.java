@@ -0,0 +1,258 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.term.index.test;
+
+import static com.ibm.fhir.model.type.String.string;
+import static com.ibm.fhir.term.util.CodeSystemSupport.getCodeSystem;
+import static com.ibm.fhir.term.util.ValueSetSupport.getValueSet;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.CodeSystem;
+import com.ibm.fhir.model.resource.CodeSystem.Concept;
+import com.ibm.fhir.model.resource.ValueSet;
+import com.ibm.fhir.model.resource.ValueSet.Compose;
+import com.ibm.fhir.model.resource.ValueSet.Compose.Include;
+import com.ibm.fhir.model.resource.ValueSet.Compose.Include.Filter;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.Coding;
+import com.ibm.fhir.model.type.Uri;
+import com.ibm.fhir.model.type.code.CodeSystemContentMode;
+import com.ibm.fhir.model.type.code.CodeSystemHierarchyMeaning;
+import com.ibm.fhir.model.type.code.ConceptSubsumptionOutcome;
+import com.ibm.fhir.model.type.code.FilterOperator;
+import com.ibm.fhir.model.type.code.PublicationStatus;
+import com.ibm.fhir.term.index.CodeSystemIndex;
+import com.ibm.fhir.term.index.CodeSystemIndexBuilder;
+import com.ibm.fhir.term.service.provider.IndexedTermServiceProvider;
+import com.ibm.fhir.term.spi.LookupOutcome;
+import com.ibm.fhir.term.spi.ValidationOutcome;
+
+public class CodeSystemIndexTest {
+    private static final String CS5 = "http://ibm.com/fhir/CodeSystem/cs5";
+
+    private Path file;
+    private CodeSystemIndex index;
+    private IndexedTermServiceProvider provider;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        file = Files.createTempFile("cs5", ".idx");
+        new CodeSystemIndexBuilder()
+            .add(getCodeSystem(CS5 + "|1.0.0"))
+            .write(file);
+        index = CodeSystemIndex.open(file);
+        provider = new IndexedTermServiceProvider(Collections.singletonList(index));
+    }
+
+    @AfterClass
+    public void tearDown() throws Exception {
+        // the file may still be mapped, so this can fail on some platforms
+        file.toFile().deleteOnExit();
+    }
+
+    @Test
+    public void testIndex() throws Exception {
+        assertEquals(index.getUrl(), CS5);
+        assertEquals(index.getVersion(), "1.0.0");
+        assertEquals(index.getConceptCount(), 9);
+        assertTrue(index.isHierarchyIsA());
+
+        int m = index.find("m");
+        int q = index.find("q");
+        assertEquals(index.getCode(m), "m");
+        assertTrue(index.isA(q, m));
+        assertFalse(index.isA(m, q));
+        assertEquals(index.find("x"), -1);
+        assertEquals(index.find(null), -1);
+
+        List<String> descendants = Arrays.stream(index.getDescendantsAndSelf(m))
+                .mapToObj(index::getCode)
+                .collect(Collectors.toList());
+        assertEquals(descendants, Arrays.asList("m", "p", "q", "r"));
+
+        int t = index.find("t");
+        assertTrue(index.hasPropertyValue(t, "property1"));
+        assertEquals(index.getPropertyValues(t, "property1"), Collections.singletonList(string("value1")));
+        assertFalse(index.hasPropertyValue(m, "property1"));
+    }
+
+    @Test
+    public void testFragments() throws Exception {
+        // the same hierarchy split across two fragments, linked with the parent property
+        CodeSystem codeSystem = CodeSystem.builder()
+                .url(Uri.of("http://ibm.com/fhir/CodeSystem/fragments"))
+                .status(PublicationStatus.ACTIVE)
+                .content(CodeSystemContentMode.FRAGMENT)
+                .hierarchyMeaning(CodeSystemHierarchyMeaning.IS_A)
+                .build();
+        CodeSystem fragment1 = codeSystem.toBuilder()
+                .concept(Concept.builder()
+                    .code(Code.of("a"))
+                    .concept(Concept.builder().code(Code.of("b")).build())
+                    .build())
+                .build();
+        CodeSystem fragment2 = codeSystem.toBuilder()
+                .concept(Concept.builder()
+                    .code(Code.of("c"))
+                    .property(Concept.Property.builder()
+                        .code(Code.of("parent"))
+                        .value(Code.of("b"))
+                        .build())
+                    .build())
+                .build();
+
+        Path fragments = Files.createTempFile("fragments", ".idx");
+        try {
+            new CodeSystemIndexBuilder().add(fragment1).add(fragment2).write(fragments);
+            CodeSystemIndex index = CodeSystemIndex.open(fragments);
+            assertEquals(index.getConceptCount(), 3);
+            assertFalse(index.isCaseSensitive());
+            assertEquals(index.find("C"), index.find("c"));
+            assertTrue(index.isA(index.find("c"), index.find("a")));
+            assertTrue(index.hasParent(index.find("c"), index.find("b")));
+        } finally {
+            fragments.toFile().deleteOnExit();
+        }
+    }
+
+    @Test
+    public void testLookup() throws Exception {
+        LookupOutcome outcome = provider.lookup(coding("t"));
+        assertNotNull(outcome);
+        assertTrue(outcome.getProperty().stream().anyMatch(property -> "property1".equals(property.getCode().getValue())));
+        assertNull(provider.lookup(coding("x")));
+    }
+
+    @Test
+    public void testSubsumes() throws Exception {
+        assertEquals(provider.subsumes(coding("t"), coding("t")), ConceptSubsumptionOutcome.EQUIVALENT);
+        assertEquals(provider.subsumes(coding("t"), coding("u")), ConceptSubsumptionOutcome.SUBSUMES);
+        assertEquals(provider.subsumes(coding("u"), coding("t")), ConceptSubsumptionOutcome.SUBSUMED_BY);
+        assertEquals(provider.subsumes(coding("o"), coding("t")), ConceptSubsumptionOutcome.NOT_SUBSUMED);
+    }
+
+    @Test
+    public void testClosure() throws Exception {
+        List<String> actual = provider.closure(coding("m")).stream()
+                .map(concept -> concept.getCode().getValue())
+                .collect(Collectors.toList());
+        assertEquals(actual, Arrays.asList("m", "p", "q", "r"));
+    }
+
+    @Test
+    public void testValidateCode() throws Exception {
+        // vs5 uses generalizes, parent =, regex and is-a filters on cs5
+        for (String code : Arrays.asList("m", "p", "q", "s", "o", "t", "u")) {
+            ValidationOutcome outcome = provider.validateCode(getValueSet("http://ibm.com/fhir/ValueSet/vs5|1.0.0"), coding(code));
+            assertEquals(outcome.getResult(), com.ibm.fhir.model.type.Boolean.TRUE, code);
+        }
+        for (String code : Arrays.asList("r", "n", "x")) {
+            ValidationOutcome outcome = provider.validateCode(getValueSet("http://ibm.com/fhir/ValueSet/vs5|1.0.0"), coding(code));
+            assertEquals(outcome.getResult(), com.ibm.fhir.model.type.Boolean.FALSE, code);
+        }
+    }
+
+    @Test
+    public void testCodingPropertyFilter() throws Exception {
+        String url = "http://ibm.com/fhir/CodeSystem/coding-property";
+        CodeSystem codeSystem = CodeSystem.builder()
+                .url(Uri.of(url))
+                .status(PublicationStatus.ACTIVE)
+                .content(CodeSystemContentMode.COMPLETE)
+                .concept(Concept.builder()
+                    .code(Code.of("a"))
+                    .property(Concept.Property.builder()
+                        .code(Code.of("unit"))
+                        .value(Coding.builder().system(Uri.of("http://unitsofmeasure.org")).code(Code.of("mg")).build())
+                        .build())
+                    .build())
+                .concept(Concept.builder()
+                    .code(Code.of("b"))
+                    .property(Concept.Property.builder()
+                        .code(Code.of("unit"))
+                        .value(Coding.builder().system(Uri.of("http://unitsofmeasure.org")).code(Code.of("g")).build())
+                        .build())
+                    .build())
+                .build();
+
+        Path path = Files.createTempFile("coding-property", ".idx");
+        try {
+            new CodeSystemIndexBuilder().add(codeSystem).write(path);
+            IndexedTermServiceProvider provider = new IndexedTermServiceProvider(Collections.singletonList(CodeSystemIndex.open(path)));
+            for (String value : Arrays.asList("mg", "http://unitsofmeasure.org|mg")) {
+                ValueSet valueSet = ValueSet.builder()
+                        .status(PublicationStatus.ACTIVE)
+                        .compose(Compose.builder()
+                            .include(Include.builder()
+                                .system(Uri.of(url))
+                                .filter(Filter.builder()
+                                    .property(Code.of("unit"))
+                                    .op(FilterOperator.EQUALS)
+                                    .value(string(value))
+                                    .build())
+                                .build())
+                            .build())
+                        .build();
+                Coding a = Coding.builder().system(Uri.of(url)).code(Code.of("a")).build();
+                Coding b = Coding.builder().system(Uri.of(url)).code(Code.of("b")).build();
+                assertEquals(provider.validateCode(valueSet, a).getResult(), com.ibm.fhir.model.type.Boolean.TRUE, value);
+                assertEquals(provider.validateCode(valueSet, b).getResult(), com.ibm.fhir.model.type.Boolean.FALSE, value);
+            }
+        } finally {
+            path.toFile().deleteOnExit();
+        }
+    }
+
+    @Test
+    public void testCaseInsensitiveFindIgnoresDefaultLocale() throws Exception {
+        CodeSystem codeSystem = CodeSystem.builder()
+                .url(Uri.of("http://ibm.com/fhir/CodeSystem/locale"))
+                .status(PublicationStatus.ACTIVE)
+                .content(CodeSystemContentMode.COMPLETE)
+                .concept(Concept.builder().code(Code.of("TITLE")).build())
+                .build();
+
+        Locale defaultLocale = Locale.getDefault();
+        Path path = Files.createTempFile("locale", ".idx");
+        try {
+            // in Turkish, "I".toLowerCase() is a dotless i
+            Locale.setDefault(new Locale("tr", "TR"));
+            new CodeSystemIndexBuilder().add(codeSystem).write(path);
+            Locale.setDefault(Locale.ROOT);
+            CodeSystemIndex index = CodeSystemIndex.open(path);
+            assertTrue(index.find("title") >= 0);
+            assertEquals(index.find("TITLE"), index.find("title"));
+        } finally {
+            Locale.setDefault(defaultLocale);
+            path.toFile().deleteOnExit();
+        }
+    }
+
+    private static Coding coding(String code) {
+        return Coding.builder()
+                .system(Uri.of(CS5))
+                .version(string("1.0.0"))
+                .code(Code.of(code))
+                .build();
+    }
+}
@@ -13,9 +13,13 @@ import static com.ibm.fhir.term.util.ConceptMapSupport.getConceptMap;
 import static com.ibm.fhir.term.util.ValueSetSupport.getContains;
 import static com.ibm.fhir.term.util.ValueSetSupport.getValueSet;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -40,6 +44,11 @@ import com.ibm.fhir.term.spi.LookupOutcome;
 import com.ibm.fhir.term.spi.TranslationOutcome;
 import com.ibm.fhir.term.spi.TranslationOutcome.Match;
 import com.ibm.fhir.term.spi.ValidationOutcome;
+import com.ibm.fhir.term.util.ClosureIndex;
+import com.ibm.fhir.term.util.CodeSystemSupport;
+import com.ibm.fhir.term.util.CompactStringSet;
+import com.ibm.fhir.term.util.ValueSetIndex;
+import com.ibm.fhir.term.util.ValueSetSupport;
 
 public class FHIRTermServiceTest {
     @Test
@@ -204,6 +213,30 @@ public class FHIRTermServiceTest {
         assertEquals(actual, Arrays.asList("m", "p", "q", "r"));
     }
 
+    @Test
+    public void testClosureIndex() throws Exception {
+        CodeSystem codeSystem = getCodeSystem("http://ibm.com/fhir/CodeSystem/cs5|1.0.0");
+        ClosureIndex index = CodeSystemSupport.getClosureIndex(codeSystem);
+
+        assertSame(CodeSystemSupport.getClosureIndex(codeSystem), index);
+        assertEquals(index.size(), 9);
+
+        Concept m = index.findConcept(Code.of("m"));
+        Concept q = index.findConcept(Code.of("q"));
+        assertTrue(index.subsumes(m, q));
+        assertTrue(index.subsumes(q, q));
+        assertFalse(index.subsumes(q, m));
+        assertFalse(index.subsumes(Code.of("n"), Code.of("q")));
+        assertNull(index.findConcept(Code.of("x")));
+        assertSame(index.findConcept(m, Code.of("r")), index.findConcept(Code.of("r")));
+        assertNull(index.findConcept(m, Code.of("s")));
+
+        List<String> actual = index.getDescendantsAndSelf(m).stream()
+                .map(concept -> concept.getCode().getValue())
+                .collect(Collectors.toList());
+        assertEquals(actual, Arrays.asList("m", "p", "q", "r"));
+    }
+
     @Test
     public void testValidateCode1() throws Exception {
         Coding coding = Coding.builder()
@@ -549,4 +582,63 @@ public class FHIRTermServiceTest {
 
         assertEquals(outcome, expected);
     }
+
+    @Test
+    public void testValueSetIndex() throws Exception {
+        ValueSet valueSet = getValueSet("http://ibm.com/fhir/ValueSet/vs1|1.0.0");
+
+        ValueSetIndex index = ValueSetSupport.getIndex(valueSet);
+        assertTrue(index.contains("http://ibm.com/fhir/CodeSystem/cs1", null, "a"));
+        assertTrue(index.contains("http://ibm.com/fhir/CodeSystem/cs1", "1.0.0", "c"));
+        assertFalse(index.contains("http://ibm.com/fhir/CodeSystem/cs1", "1.0.0", "x"));
+        assertFalse(index.contains("http://ibm.com/fhir/CodeSystem/cs2", null, "a"));
+        assertTrue(index.contains("b"));
+
+        // memoized
+        assertSame(ValueSetSupport.getIndex(valueSet), index);
+    }
+
+    @Test
+    public void testValueSetIndexNoVersion() throws Exception {
+        // same content without a version is still only expanded once
+        ValueSet valueSet = getValueSet("http://ibm.com/fhir/ValueSet/vs1|1.0.0").toBuilder()
+                .version(null)
+                .build();
+
+        ValueSetIndex index = ValueSetSupport.getIndex(valueSet);
+        assertTrue(index.contains("http://ibm.com/fhir/CodeSystem/cs1", null, "a"));
+        assertSame(ValueSetSupport.getIndex(valueSet), index);
+
+        // but a different value set with the same url is not confused with it
+        ValueSet other = valueSet.toBuilder()
+                .compose(valueSet.getCompose().toBuilder()
+                    .include(Collections.singletonList(valueSet.getCompose().getInclude().get(0).toBuilder()
+                        .concept(Collections.singletonList(ValueSet.Compose.Include.Concept.builder()
+                            .code(Code.of("b"))
+                            .build()))
+                        .build()))
+                    .build())
+                .build();
+        ValueSetIndex otherIndex = ValueSetSupport.getIndex(other);
+        assertFalse(otherIndex.contains("http://ibm.com/fhir/CodeSystem/cs1", null, "a"));
+        assertTrue(otherIndex.contains("http://ibm.com/fhir/CodeSystem/cs1", null, "b"));
+    }
+
+    @Test
+    public void testCompactStringSet() throws Exception {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            values.add("code" + i);
+        }
+        values.add("code0");
+
+        CompactStringSet set = CompactStringSet.of(values);
+        assertEquals(set.size(), 1000);
+        for (String value : values) {
+            assertTrue(set.contains(value));
+        }
+        assertFalse(set.contains("code1000"));
+        assertFalse(set.contains(null));
+        assertFalse(CompactStringSet.of(Collections.emptyList()).contains("code0"));
+    }
 }
@@ -2607,7 +2607,7 @@ public class CodeGenerator {
         cb._case("XMLStreamReader.END_ELEMENT")
             ._if("reader.getLocalName().equals(elementName)")
                 .invoke("stackPop", args())
-                ._return("builder.build()")
+                ._return(("String".equals(generatedClassName) || "Uri".equals(generatedClassName)) ? "intern(builder.build())" : "builder.build()")
             ._end()
             ._break();
 
@@ -2790,7 +2790,7 @@ public class CodeGenerator {
             ._if("FHIRParser.PROPERTY_IGNORE_UNRECOGNIZED_ELEMENTS.equals(name)")
                 ._return("true")
             ._end()
-            ._return("false")
+            ._return("super.isPropertySupported(name)")
         .end();
         cb.newLine();
 
@@ -3124,7 +3124,7 @@ public class CodeGenerator {
         }
 
         cb.invoke("stackPop", args());
-        cb._return("builder.build()");
+        cb._return(("String".equals(generatedClassName) || "Uri".equals(generatedClassName)) ? "intern(builder.build())" : "builder.build()");
         cb.end().newLine();
 
         if ("String".equals(generatedClassName) || "Uri".equals(generatedClassName) || "Integer".equals(generatedClassName)) {
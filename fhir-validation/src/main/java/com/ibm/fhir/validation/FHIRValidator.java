@@ -421,19 +421,12 @@ public class FHIRValidator {
         private List<FHIRPathResourceNode> getResourceNodes(FHIRPathNode node) {
             List<FHIRPathResourceNode> resourceNodes = new ArrayList<>();
 
-            if (node.isResourceNode()) {
-                resourceNodes.add(node.asResourceNode());
-            }
-
-            String path = node.path();
-            int index = path.lastIndexOf(".");
-            while (index != -1) {
-                path = path.substring(0, index);
-                node = evaluationContext.getTree().getNode(path);
+            FHIRPathTree tree = evaluationContext.getTree();
+            while (node != null) {
                 if (node.isResourceNode()) {
                     resourceNodes.add(node.asResourceNode());
                 }
-                index = path.lastIndexOf(".");
+                node = tree.getParent(node);
             }
             return resourceNodes;
         }
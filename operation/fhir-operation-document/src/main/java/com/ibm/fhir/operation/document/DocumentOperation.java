@@ -12,8 +12,11 @@ import java.io.InputStream;
 import java.net.URI;
 import java.time.ZoneOffset;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import com.ibm.fhir.exception.FHIROperationException;
@@ -116,37 +119,64 @@ public class DocumentOperation extends AbstractOperation {
         //document.getEntry().add(bundleEntry);
         documentBuilder.entry(entryBuilder.build());
         
-        Map<String, Resource> resources = new HashMap<String, Resource>();
+        // First collect the references of the Composition, in document order and without duplicates
+        Set<String> referenceValues = new LinkedHashSet<>();
         
         // Composition.subject
-        addBundleEntry(operationContext, documentBuilder, composition.getSubject(), resourceHelper, resources);
+        collectReference(composition.getSubject(), referenceValues);
         
         // Composition.author
         for (Reference author : composition.getAuthor()) {
-            addBundleEntry(operationContext, documentBuilder, author, resourceHelper, resources);
+            collectReference(author, referenceValues);
         }
         
         // Composition.attester.party
         for (Composition.Attester attester : composition.getAttester()) {
-            addBundleEntry(operationContext, documentBuilder, attester.getParty(), resourceHelper, resources);
+            collectReference(attester.getParty(), referenceValues);
         }
         
         // Composition.custodian
-        addBundleEntry(operationContext, documentBuilder, composition.getCustodian(), resourceHelper, resources);
+        collectReference(composition.getCustodian(), referenceValues);
         
         // Composition.event.detail
         for (Composition.Event event : composition.getEvent()) {
             for (Reference detail : event.getDetail()) {
-                addBundleEntry(operationContext, documentBuilder, detail, resourceHelper, resources);
+                collectReference(detail, referenceValues);
             }
         }
         
         // Composition.encounter
-        addBundleEntry(operationContext, documentBuilder, composition.getEncounter(), resourceHelper, resources);
+        collectReference(composition.getEncounter(), referenceValues);
         
         // Composition.section.entry
-        addBundleEntries(operationContext, documentBuilder, composition.getSection(), resourceHelper, resources);
+        collectReferences(composition.getSection(), referenceValues);
         
+        // then read the referenced resources with one multi-id read per resource type
+        Map<String, Set<String>> idsByType = new LinkedHashMap<>();
+        for (String referenceValue : referenceValues) {
+            String[] referenceTokens = referenceValue.split("/");
+            idsByType.computeIfAbsent(referenceTokens[0], k -> new LinkedHashSet<>()).add(referenceTokens[1]);
+        }
+        Map<String, Map<String, Resource>> resourcesByType = new HashMap<>();
+        for (Map.Entry<String, Set<String>> entry : idsByType.entrySet()) {
+            resourcesByType.put(entry.getKey(), resourceHelper.doReadMany(entry.getKey(), entry.getValue(), false, null));
+        }
+        
+        // and add a bundle entry for each of them
+        for (String referenceValue : referenceValues) {
+            String[] referenceTokens = referenceValue.split("/");
+            Resource resource = resourcesByType.get(referenceTokens[0]).get(referenceTokens[1]);
+            if (resource == null) {
+                throw new FHIROperationException("Could not find resource for reference value: " + referenceValue);
+            }
+            
+            Bundle.Entry.Builder referenceEntryBuilder = Entry.builder();
+            referenceEntryBuilder.resource(resource);
+            
+            setFullUrl(operationContext, referenceEntryBuilder, referenceValue);
+            
+            documentBuilder.entry(referenceEntryBuilder.build());
+        }
         
         return documentBuilder.timestamp(Instant.now(ZoneOffset.UTC))
                 .identifier(Identifier.builder()
@@ -156,7 +186,7 @@ public class DocumentOperation extends AbstractOperation {
                 .build();
     }
 
-    private void addBundleEntry(FHIROperationContext operationContext, Bundle.Builder documentBuilder, Reference reference, FHIRResourceHelpers resourceHelper, Map<String, Resource> resources) throws Exception {;
+    private void collectReference(Reference reference, Set<String> referenceValues) throws Exception {
         if (reference == null) {
             return;
         }
@@ -170,52 +200,23 @@ public class DocumentOperation extends AbstractOperation {
             throw new FHIROperationException("Empty reference value is not allowed");
         }
         
-        Resource resource = resources.get(referenceValue);
-        
-        if (resource == null) {
-            String[] referenceTokens = referenceValue.split("/");
-            
-            // assumption: references will be relative {resourceTypeName}/{logicalId}
-            if (referenceTokens.length != 2) {
-                throw new FHIROperationException("Could not parse reference value: " + referenceValue);
-            }
-            
-            String resourceTypeName = referenceTokens[0];
-            String logicalId = referenceTokens[1];
-            
-            resource = resourceHelper.doRead(resourceTypeName, logicalId, false, false, null, null);
-            
-            if (resource == null) {
-                throw new FHIROperationException("Could not find resource for reference value: " + referenceValue);
-            }
-            
-            resources.put(referenceValue, resource);
-            
-            // create a bundle entry for the resource
-            //BundleEntry bundleEntry = factory.createBundleEntry();
-            
-            //ResourceContainer container = factory.createResourceContainer();
-            //FHIRUtil.setResourceContainerResource(container, resource);
-            
-            Bundle.Entry.Builder entryBuilder = Entry.builder(); //createBundleEntry();
-            entryBuilder.resource(resource);
-            
-            setFullUrl(operationContext, entryBuilder, referenceValue);
-            
-            //document.getEntry().add(bundleEntry);
-            documentBuilder.entry(entryBuilder.build());
+        // assumption: references will be relative {resourceTypeName}/{logicalId}
+        if (referenceValue.split("/").length != 2) {
+            throw new FHIROperationException("Could not parse reference value: " + referenceValue);
         }
+        
+        referenceValues.add(referenceValue);
     }
 
-    private void addBundleEntries(FHIROperationContext operationContext, Bundle.Builder documentBuilder, List<Composition.Section> sections, FHIRResourceHelpers resourceHelper, Map<String, Resource> resources) throws Exception {
+    private void collectReferences(List<Composition.Section> sections, Set<String> referenceValues) throws Exception {
         for (Composition.Section section : sections) {                
             // process entries for this section
             for (Reference entry : section.getEntry()) {
-                addBundleEntry(operationContext, documentBuilder, entry, resourceHelper, resources);
+                collectReference(entry, referenceValues);
             }
             
             // process subsections
-            addBundleEntries(operationContext, documentBuilder, section.getSection(), resourceHelper, resources);
+            collectReferences(section.getSection(), referenceValues);
         }
     }
     